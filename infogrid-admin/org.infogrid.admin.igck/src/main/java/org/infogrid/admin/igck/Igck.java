@@ -15,12 +15,31 @@
 package org.infogrid.admin.igck;
 
 import com.mysql.jdbc.jdbc2.optional.MysqlDataSource;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.text.ParseException;
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import org.infogrid.mesh.MeshObject;
@@ -31,15 +50,19 @@ import org.infogrid.mesh.a.AMeshObject;
 import org.infogrid.mesh.a.AMeshObjectNeighborManager;
 import org.infogrid.meshbase.MeshBaseError;
 import org.infogrid.meshbase.MeshBaseErrorListener;
+import org.infogrid.meshbase.MeshObjectIdentifierFactory;
 import org.infogrid.model.primitives.EntityType;
 import org.infogrid.model.primitives.RoleType;
 import org.infogrid.model.primitives.TimeStampValue;
 import org.infogrid.store.IterableStore;
 import org.infogrid.store.sql.mysql.MysqlStore;
 import org.infogrid.util.ArrayHelper;
+import org.infogrid.util.CursorIterator;
 //import org.infogrid.store.sql.postgresql.PostgresqlStore;
 import org.infogrid.util.HasIdentifier;
 import org.infogrid.util.Identifier;
+import org.infogrid.util.NamedThreadFactory;
+import org.infogrid.util.ResourceHelper;
 import org.infogrid.util.logging.Log;
 import org.infogrid.util.text.StringRepresentationParseException;
 //import org.postgresql.ds.PGSimpleDataSource;
@@ -252,6 +275,29 @@ public class Igck
         theVerbose = newValue;
     }
 
+    /**
+     * Set the number of threads that check MeshObjects in parallel.
+     * 
+     * @param newValue the new value
+     */
+    public void setThreads(
+            int newValue )
+    {
+        theThreads = newValue;
+    }
+
+    /**
+     * Set the file into which progress is saved, so an interrupted run can be resumed.
+     * If the file exists when the run starts, the run resumes where the previous one left off.
+     * 
+     * @param newValue the new value
+     */
+    public void setCheckpointFile(
+            File newValue )
+    {
+        theCheckpointFile = newValue;
+    }
+
     /**
      * Run the operation.
      */
@@ -259,37 +305,391 @@ public class Igck
     {
         theMeshBase.addDirectErrorListener( this );
 
-        theMeshObjectCount = 0;
-        theErrorCount      = 0;
-        theFixedCount      = 0;
+        theMeshObjectCount.set( 0 );
+        theErrorCount.set( 0 );
+        theErroneousCount.set( 0 );
+        theFixedCount.set( 0 );
 
-        theMeshBase.iterator().batchForEach(
-                512,
-                (MeshObject current) -> runOne( current ));
+        if( theThreads > 1 || theCheckpointFile != null ) {
+            try {
+                runPartitioned();
+
+            } catch( IOException ex ) {
+                log.error( ex );
+                System.err.println( "ERROR: cannot read or write checkpoint file " + theCheckpointFile + ": " + ex.getMessage() );
+                theMeshBase.removeErrorListener( this );
+                return;
+
+            } catch( InterruptedException ex ) {
+                log.error( ex );
+                theMeshBase.removeErrorListener( this );
+                return;
+            }
 
-        if( theErroneousCount == 0 ) {
+        } else {
+            theMeshBase.iterator().batchForEach(
+                    BATCH_SIZE,
+                    (MeshObject current) -> runOne( current ));
+        }
+
+        long meshObjectCount = theMeshObjectCount.get();
+        long erroneousCount  = theErroneousCount.get();
+
+        if( erroneousCount == 0 ) {
             System.out.printf(
                     "Congratulations, no errors found in %d MeshObjects.\n",
-                    theMeshObjectCount );
+                    meshObjectCount );
 
-        } else if( theFixedCount > 0 ) {
+        } else if( theFixedCount.get() > 0 ) {
             System.out.printf("Found %d erroneous out of %d MeshObjects (%02.1f%%), %d errors total, fixed %d.\n",
-                    theErroneousCount,
-                    theMeshObjectCount,
-                    100.f * theErroneousCount / theMeshObjectCount,
-                    theErrorCount,
-                    theFixedCount );
+                    erroneousCount,
+                    meshObjectCount,
+                    100.f * erroneousCount / meshObjectCount,
+                    theErrorCount.get(),
+                    theFixedCount.get() );
 
         } else {
             System.out.printf("Found %d erroneous out of %d MeshObjects (%02.1f%%), %d errors total.\n",
-                    theErroneousCount,
-                    theMeshObjectCount,
-                    100.f * theErroneousCount / theMeshObjectCount,
-                    theErrorCount );
+                    erroneousCount,
+                    meshObjectCount,
+                    100.f * erroneousCount / meshObjectCount,
+                    theErrorCount.get() );
         }
         theMeshBase.removeErrorListener( this );
     }
 
+    /**
+     * Check all MeshObjects by partitioning the key space of the underlying Store,
+     * and checking the partitions in parallel. Progress is saved to the checkpoint file,
+     * if one has been given, and reported periodically.
+     *
+     * @throws IOException thrown if the checkpoint file could not be read or written
+     * @throws InterruptedException thrown if the run was interrupted
+     */
+    protected void runPartitioned()
+        throws
+            IOException,
+            InterruptedException
+    {
+        List<Partition> partitions = null;
+        if( theCheckpointFile != null && theCheckpointFile.exists() ) {
+            partitions = readCheckpoint();
+        }
+        if( partitions == null ) {
+            partitions = createPartitions( Math.max( 1, theThreads ));
+        }
+        final List<Partition> finalPartitions = partitions;
+        final long            total           = theMeshBase.size();
+        final long            resumedAt       = theMeshObjectCount.get();
+
+        Thread checkpointHook = null;
+        if( theCheckpointFile != null ) {
+            checkpointHook = new Thread( () -> {
+                    try {
+                        writeCheckpoint( finalPartitions );
+                    } catch( IOException ex ) {
+                        log.error( ex );
+                    }
+            });
+            Runtime.getRuntime().addShutdownHook( checkpointHook ); // save progress upon Ctrl-C
+        }
+
+        ExecutorService          workers  = Executors.newFixedThreadPool( Math.max( 1, theThreads ), new NamedThreadFactory( "Igck" ));
+        ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor( new NamedThreadFactory( "Igck-progress" ));
+
+        try {
+            final long startTime = System.currentTimeMillis();
+
+            reporter.scheduleWithFixedDelay(
+                    () -> reportProgress( finalPartitions, total, resumedAt, startTime ),
+                    PROGRESS_INTERVAL,
+                    PROGRESS_INTERVAL,
+                    TimeUnit.MILLISECONDS );
+
+            List<Future<?>> futures = new ArrayList<>( partitions.size() );
+            for( Partition current : partitions ) {
+                if( !current.theIsDone ) {
+                    futures.add( workers.submit( () -> runPartition( current )));
+                }
+            }
+            for( Future<?> current : futures ) {
+                try {
+                    current.get();
+                } catch( ExecutionException ex ) {
+                    log.error( ex.getCause() );
+                }
+            }
+
+        } finally {
+            workers.shutdownNow();
+            reporter.shutdownNow();
+            reporter.awaitTermination( PROGRESS_INTERVAL, TimeUnit.MILLISECONDS );
+
+            if( checkpointHook != null ) {
+                Runtime.getRuntime().removeShutdownHook( checkpointHook );
+            }
+        }
+
+        if( theCheckpointFile != null ) {
+            boolean allDone = true;
+            for( Partition current : partitions ) {
+                allDone &= current.theIsDone;
+            }
+            if( allDone ) {
+                Files.deleteIfExists( theCheckpointFile.toPath() );
+            } else {
+                writeCheckpoint( partitions );
+            }
+        }
+    }
+
+    /**
+     * Partition the key space of the underlying Store into roughly equal-sized ranges.
+     *
+     * @param n the desired number of partitions
+     * @return the partitions
+     */
+    protected List<Partition> createPartitions(
+            int n )
+    {
+        int size   = theMeshBase.size();
+        int stride = size / n;
+        if( n > 1 && stride < BATCH_SIZE ) {
+            log.warn( "Checking", size, "MeshObjects in one partition instead of", n, ": fewer than", BATCH_SIZE, "MeshObjects per partition" );
+            n      = 1; // not worth it
+            stride = size;
+        }
+
+        String [] starts = new String[ n ];
+
+        CursorIterator<MeshObjectIdentifier> cursor = theMeshBase.identifierIterator();
+        cursor.moveToBeforeFirst();
+
+        for( int i=1 ; i<n ; ++i ) {
+            try {
+                cursor.moveBy( stride );
+                starts[i] = cursor.peekNext().toExternalForm();
+
+            } catch( NoSuchElementException ex ) {
+                // the Store shrank since we determined its size
+                log.warn( "Checking in", i, "partitions instead of", n, ": Store shrank while partitioning" );
+                starts = ArrayHelper.copyIntoNewArray( starts, 0, i, String.class );
+                break;
+            }
+        }
+
+        List<Partition> ret = new ArrayList<>( starts.length );
+        for( int i=0 ; i<starts.length ; ++i ) {
+            ret.add( new Partition( starts[i], i+1 < starts.length ? starts[i+1] : null ));
+        }
+        return ret;
+    }
+
+    /**
+     * Check all MeshObjects in one Partition. Stores iterate over their keys in different orders,
+     * so keys are only ever compared for equality: the Partition ends right before the MeshObject
+     * whose key is the end key. If that MeshObject has been deleted since the Partitions were
+     * created, the Partition runs on to the end of the Store. Some MeshObjects are then checked
+     * twice, but none is skipped.
+     *
+     * @param partition the Partition
+     */
+    protected void runPartition(
+            Partition partition )
+    {
+        try {
+            CursorIterator<MeshObjectIdentifier> cursor = theMeshBase.identifierIterator();
+
+            positionCursor( cursor, partition );
+
+            outer:
+            while( !Thread.currentThread().isInterrupted() ) {
+                int batchSize = BATCH_SIZE;
+                while( batchSize > 0 ) {
+                    if( cursor.hasNext( batchSize ) ) {
+                        break;
+                    }
+                    batchSize /= 2;
+                }
+                if( batchSize == 0 ) {
+                    break;
+                }
+                MeshObjectIdentifier [] batch = cursor.next( batchSize );
+                MeshObjectIdentifier    last  = null;
+                int                     count = 0;
+
+                for( MeshObjectIdentifier current : batch ) {
+                    if( partition.theEndKey != null && partition.theEndKey.equals( current.toExternalForm() )) {
+                        partition.batchDone( last, count );
+                        break outer;
+                    }
+                    MeshObject found = theMeshBase.findMeshObjectByIdentifier( current );
+                    if( found != null ) {
+                        runOne( found );
+                    }
+                    last = current;
+                    ++count;
+                }
+                partition.batchDone( last, count );
+            }
+            if( !Thread.currentThread().isInterrupted() ) {
+                partition.theIsDone = true;
+            }
+
+        } catch( ParseException ex ) {
+            log.error( "Cannot resume partition", partition, ex );
+        }
+    }
+
+    /**
+     * Position a cursor where checking a Partition starts or resumes. If the MeshObject at
+     * which to resume has been deleted, the Partition is checked again from its start; if the
+     * MeshObject at its start has been deleted, too, from the beginning of the Store.
+     *
+     * @param cursor the cursor
+     * @param partition the Partition
+     * @throws ParseException thrown if a key of the Partition could not be parsed
+     */
+    protected void positionCursor(
+            CursorIterator<MeshObjectIdentifier> cursor,
+            Partition                            partition )
+        throws
+            ParseException
+    {
+        MeshObjectIdentifierFactory idFact = theMeshBase.getMeshObjectIdentifierFactory();
+
+        if( partition.theLastDoneKey != null ) {
+            try {
+                cursor.moveToAfter( idFact.fromExternalForm( partition.theLastDoneKey ));
+                return;
+
+            } catch( NoSuchElementException ex ) {
+                log.warn( "Last checked MeshObject has been deleted, checking again from the start:", partition );
+                partition.restart();
+            }
+        }
+        if( partition.theStartKey != null ) {
+            try {
+                cursor.moveToBefore( idFact.fromExternalForm( partition.theStartKey ));
+                return;
+
+            } catch( NoSuchElementException ex ) {
+                log.warn( "First MeshObject has been deleted, checking from the beginning of the Store:", partition );
+            }
+        }
+        cursor.moveToBeforeFirst();
+    }
+
+    /**
+     * Report progress, and save it to the checkpoint file if one has been given.
+     *
+     * @param partitions the Partitions
+     * @param total the total number of MeshObjects
+     * @param resumedAt the number of MeshObjects that had been checked already when this run started
+     * @param startTime the time this run started
+     */
+    protected void reportProgress(
+            List<Partition> partitions,
+            long            total,
+            long            resumedAt,
+            long            startTime )
+    {
+        long checked = 0;
+        for( Partition current : partitions ) {
+            checked += current.theCheckedCount;
+        }
+        long   elapsed = System.currentTimeMillis() - startTime;
+        double rate    = elapsed > 0 ? 1000. * ( theMeshObjectCount.get() - resumedAt ) / elapsed : 0.;
+
+        String eta;
+        if( rate > 0 && total > checked ) {
+            long seconds = (long) (( total - checked ) / rate );
+            eta = String.format( "%d:%02d:%02d", seconds / 3600, ( seconds / 60 ) % 60, seconds % 60 );
+        } else {
+            eta = "unknown";
+        }
+
+        System.out.printf( "Checked %d of about %d MeshObjects (%02.1f%%), %.0f per second, %d errors so far, ETA %s.\n",
+                checked,
+                total,
+                total > 0 ? 100.f * checked / total : 100.f,
+                rate,
+                theErrorCount.get(),
+                eta );
+
+        if( theCheckpointFile != null ) {
+            try {
+                writeCheckpoint( partitions );
+            } catch( IOException ex ) {
+                log.error( ex );
+            }
+        }
+    }
+
+    /**
+     * Save progress to the checkpoint file. The file is replaced atomically, so an interruption
+     * while writing it does not lose the previous checkpoint.
+     *
+     * @param partitions the Partitions
+     * @throws IOException thrown if the checkpoint file could not be written
+     */
+    protected synchronized void writeCheckpoint(
+            List<Partition> partitions )
+        throws
+            IOException
+    {
+        Properties props = new Properties();
+        props.setProperty( "partitions",      String.valueOf( partitions.size() ));
+        props.setProperty( "meshObjectCount", String.valueOf( theMeshObjectCount.get() ));
+        props.setProperty( "errorCount",      String.valueOf( theErrorCount.get() ));
+        props.setProperty( "erroneousCount",  String.valueOf( theErroneousCount.get() ));
+        props.setProperty( "fixedCount",      String.valueOf( theFixedCount.get() ));
+
+        for( int i=0 ; i<partitions.size() ; ++i ) {
+            partitions.get( i ).save( props, "partition." + i + "." );
+        }
+
+        File temp = new File( theCheckpointFile.getPath() + ".tmp" );
+        try( OutputStream out = new FileOutputStream( temp )) {
+            props.store( out, "Igck checkpoint" );
+        }
+        Files.move( temp.toPath(), theCheckpointFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE );
+    }
+
+    /**
+     * Read the checkpoint file, and restore the counters.
+     *
+     * @return the Partitions, or null if the checkpoint file could not be parsed
+     * @throws IOException thrown if the checkpoint file could not be read
+     */
+    protected List<Partition> readCheckpoint()
+        throws
+            IOException
+    {
+        Properties props = new Properties();
+        try( InputStream in = new FileInputStream( theCheckpointFile )) {
+            props.load( in );
+        }
+        try {
+            int             n   = Integer.parseInt( props.getProperty( "partitions" ));
+            List<Partition> ret = new ArrayList<>( n );
+            for( int i=0 ; i<n ; ++i ) {
+                ret.add( Partition.load( props, "partition." + i + "." ));
+            }
+            theMeshObjectCount.set( Long.parseLong( props.getProperty( "meshObjectCount" )));
+            theErrorCount.set(      Long.parseLong( props.getProperty( "errorCount" )));
+            theErroneousCount.set(  Long.parseLong( props.getProperty( "erroneousCount" )));
+            theFixedCount.set(      Long.parseLong( props.getProperty( "fixedCount" )));
+
+            System.out.printf( "Resuming from checkpoint %s after %d MeshObjects.\n", theCheckpointFile, theMeshObjectCount.get() );
+            return ret;
+
+        } catch( NumberFormatException ex ) {
+            log.error( "Cannot parse checkpoint file, starting over", theCheckpointFile, ex );
+            return null;
+        }
+    }
+
     /**
      * Check a single MeshObject.
      * 
@@ -298,7 +698,7 @@ public class Igck
     protected void runOne(
             MeshObject current )
     {
-        ++theMeshObjectCount;
+        theMeshObjectCount.incrementAndGet();
 
         if( theCheckMissingNeighbors ) {
             MeshObjectIdentifier []   neighborIds = current.getNeighborMeshObjectIdentifiers();
@@ -337,11 +737,13 @@ public class Igck
             }
             if( theRemoveMissingNeighbors && toRemove != null && !toRemove.isEmpty() ) {
                 if( current instanceof AMeshObject ) {
-                    for( MeshObjectIdentifier id : toRemove ) {
-                        try {
-                            NM.removeNeighbor( (AMeshObject) current, id );
-                        } catch( NotRelatedException ex ) {
-                            log.error( ex );
+                    synchronized( current ) { // same lock as the NeighborManager's, so no other thread sees it half-fixed
+                        for( MeshObjectIdentifier id : toRemove ) {
+                            try {
+                                NM.removeNeighbor( (AMeshObject) current, id );
+                            } catch( NotRelatedException ex ) {
+                                log.error( ex );
+                            }
                         }
                     }
                     theHaveBeenFixed.add( current.getIdentifier() );
@@ -409,13 +811,15 @@ public class Igck
             }            
         }
         if( theHaveBeenFixed.remove( current.getIdentifier() )) {
-            theMeshBase.flush( current );
-            ++theFixedCount;
+            synchronized( current ) {
+                theMeshBase.flush( current );
+            }
+            theFixedCount.incrementAndGet();
         }
-        Integer haveErrors = theHaveErrors.get( current.getIdentifier() );
+        Integer haveErrors = theHaveErrors.remove( current.getIdentifier() );
         if( haveErrors != null && haveErrors > 0 ) {
-            theErrorCount += haveErrors;
-            ++theErroneousCount;
+            theErrorCount.addAndGet( haveErrors );
+            theErroneousCount.incrementAndGet();
         }
     }
     
@@ -636,12 +1040,7 @@ public class Igck
     protected void addToHaveErrors(
             MeshObjectIdentifier id )
     {
-        Integer found = theHaveErrors.get( id );
-        if( found != null ) {
-            theHaveErrors.put( id, found + 1 );
-        } else {
-            theHaveErrors.put( id, 1 );
-        }    
+        theHaveErrors.merge( id, 1, Integer::sum ); // atomic, errors may be reported by several threads
     }
 
     /**
@@ -701,40 +1100,192 @@ public class Igck
      */
     protected int theVerbose;
     
+    /**
+     * The number of threads that check MeshObjects in parallel.
+     */
+    protected int theThreads = 1;
+
+    /**
+     * The file into which progress is saved, if any.
+     */
+    protected File theCheckpointFile;
+
     /**
      * Running counter for examined MeshObjects.
      */
-    protected int theMeshObjectCount;
+    protected final AtomicLong theMeshObjectCount = new AtomicLong();
     
     /**
      * Running counter for errors.
      */
-    protected int theErrorCount;
+    protected final AtomicLong theErrorCount = new AtomicLong();
 
     /**
      * Running counter for MeshObjects with at least one error.
      */
-    protected int theErroneousCount;
+    protected final AtomicLong theErroneousCount = new AtomicLong();
     
     /**
      * Running counter for the number of MeshObjects that were fixed.
      */
-    protected int theFixedCount;
+    protected final AtomicLong theFixedCount = new AtomicLong();
 
     /**
      * Flag errors from callbacks. Keep those around until the main processing
      * loop comes around to catch up with processing MeshObjects that had errors
      * upon deserialization from disk.
      */
-    protected Map<MeshObjectIdentifier,Integer> theHaveErrors = new HashMap<>();
+    protected Map<MeshObjectIdentifier,Integer> theHaveErrors = new ConcurrentHashMap<>();
     
     /**
      * Mark a MeshObject has having to be written back to disk
      */
-    protected Set<MeshObjectIdentifier> theHaveBeenFixed = new HashSet<>();
+    protected Set<MeshObjectIdentifier> theHaveBeenFixed = Collections.newSetFromMap( new ConcurrentHashMap<>() );
 
     /**
      * The NeighborManager to use.
      */
     protected static AMeshObjectNeighborManager NM = AMeshObjectNeighborManager.SINGLETON;
+
+    /**
+     * Our ResourceHelper.
+     */
+    private static final ResourceHelper theResourceHelper = ResourceHelper.getInstance( Igck.class );
+
+    /**
+     * The number of MeshObjects read from the Store at a time.
+     */
+    public static final int BATCH_SIZE = theResourceHelper.getResourceIntegerOrDefault( "BatchSize", 512 );
+
+    /**
+     * The interval, in milliseconds, in which progress is reported and saved.
+     */
+    public static final long PROGRESS_INTERVAL = theResourceHelper.getResourceLongOrDefault( "ProgressInterval", 30000L );
+
+    /**
+     * A contiguous range of MeshObjects, in the order in which the underlying Store iterates
+     * over them, checked by one thread.
+     * A Partition can be saved to, and restored from, a checkpoint.
+     */
+    protected static class Partition
+    {
+        /**
+         * Constructor.
+         *
+         * @param startKey the key of the first MeshObject in this Partition, or null if it starts at the beginning
+         * @param endKey the key of the first MeshObject after this Partition, or null if it extends to the end
+         */
+        public Partition(
+                String startKey,
+                String endKey )
+        {
+            theStartKey = startKey;
+            theEndKey   = endKey;
+        }
+
+        /**
+         * Restore a Partition from a checkpoint.
+         *
+         * @param props the checkpoint
+         * @param prefix the prefix of the properties of this Partition
+         * @return the restored Partition
+         * @throws NumberFormatException thrown if the checkpoint is corrupted
+         */
+        public static Partition load(
+                Properties props,
+                String     prefix )
+            throws
+                NumberFormatException
+        {
+            Partition ret = new Partition( props.getProperty( prefix + "start" ), props.getProperty( prefix + "end" ));
+            ret.theLastDoneKey  = props.getProperty( prefix + "last" );
+            ret.theCheckedCount = Long.parseLong( props.getProperty( prefix + "checked" ));
+            ret.theIsDone       = Boolean.parseBoolean( props.getProperty( prefix + "done" ));
+            return ret;
+        }
+
+        /**
+         * Save this Partition to a checkpoint.
+         *
+         * @param props the checkpoint
+         * @param prefix the prefix of the properties of this Partition
+         */
+        public synchronized void save(
+                Properties props,
+                String     prefix )
+        {
+            if( theStartKey != null ) {
+                props.setProperty( prefix + "start", theStartKey );
+            }
+            if( theEndKey != null ) {
+                props.setProperty( prefix + "end", theEndKey );
+            }
+            if( theLastDoneKey != null ) {
+                props.setProperty( prefix + "last", theLastDoneKey );
+            }
+            props.setProperty( prefix + "checked", String.valueOf( theCheckedCount ));
+            props.setProperty( prefix + "done",    String.valueOf( theIsDone ));
+        }
+
+        /**
+         * Forget the progress made, so this Partition is checked again from its start.
+         */
+        public synchronized void restart()
+        {
+            theLastDoneKey  = null;
+            theCheckedCount = 0;
+        }
+
+        /**
+         * A batch of MeshObjects has been checked completely.
+         *
+         * @param last the identifier of the last MeshObject in the batch, or null if the batch was empty
+         * @param count the number of MeshObjects in the batch
+         */
+        public synchronized void batchDone(
+                MeshObjectIdentifier last,
+                int                  count )
+        {
+            if( last != null ) {
+                theLastDoneKey = last.toExternalForm();
+            }
+            theCheckedCount += count;
+        }
+
+        /**
+         * Convert to String, for debugging.
+         *
+         * @return String representation
+         */
+        @Override
+        public String toString()
+        {
+            return "Partition [" + theStartKey + ", " + theEndKey + ") at " + theLastDoneKey;
+        }
+
+        /**
+         * Key of the first MeshObject in this Partition, or null.
+         */
+        protected final String theStartKey;
+
+        /**
+         * Key of the first MeshObject after this Partition, or null.
+         */
+        protected final String theEndKey;
+
+        /**
+         * Key of the last MeshObject that has been checked, or null.
+         */
+        protected volatile String theLastDoneKey;
+
+        /**
+         * The number of MeshObjects in this Partition checked so far.
+         */
+        protected volatile long theCheckedCount;
+
+        /**
+         * True once all MeshObjects in this Partition have been checked.
+         */
+        protected volatile boolean theIsDone;
+    }
 }
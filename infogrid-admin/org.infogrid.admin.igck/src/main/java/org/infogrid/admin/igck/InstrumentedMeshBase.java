@@ -15,7 +15,9 @@
 package org.infogrid.admin.igck;
 
 import org.infogrid.mesh.MeshObject;
+import org.infogrid.mesh.MeshObjectIdentifier;
 import org.infogrid.meshbase.IterableMeshBase;
+import org.infogrid.util.CursorIterator;
 
 /**
  * Adds methods for instrumentation of StoreMeshBase and NetStoreMeshBase.
@@ -31,4 +33,13 @@ public interface InstrumentedMeshBase
      */
     public void flush(
             MeshObject obj );
+
+    /**
+     * Obtain a CursorIterator over the identifiers of all MeshObjects in the underlying Store,
+     * in the order of the Store's keys. Unlike the iterator over the MeshObjects, this
+     * CursorIterator can be positioned at a given MeshObjectIdentifier.
+     *
+     * @return the CursorIterator
+     */
+    public CursorIterator<MeshObjectIdentifier> identifierIterator();
 }
@@ -61,6 +61,7 @@ import org.infogrid.store.StoreKeyDoesNotExistException;
 import org.infogrid.store.StoreValue;
 import org.infogrid.store.prefixing.IterablePrefixingStore;
 import org.infogrid.store.util.IterableStoreBackedSwappingHashMap;
+import org.infogrid.util.CursorIterator;
 import org.infogrid.util.FactoryException;
 import org.infogrid.util.context.Context;
 import org.infogrid.util.context.SimpleContext;
@@ -225,6 +226,17 @@ public class InstrumentedNetStoreMeshBase
         
         map.flush( obj );
     }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public CursorIterator<MeshObjectIdentifier> identifierIterator()
+    {
+        MyMap map = (MyMap) theCache;
+
+        return map.keysIterator( MeshObjectIdentifier.class, MeshObject.class );
+    }
     
     /**
      * Make some methods more accessible.
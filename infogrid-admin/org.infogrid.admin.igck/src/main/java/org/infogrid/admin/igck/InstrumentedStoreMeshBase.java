@@ -32,6 +32,7 @@ import org.infogrid.modelbase.ModelBaseSingleton;
 import org.infogrid.store.IterableStore;
 import org.infogrid.store.Store;
 import org.infogrid.store.StoreEntryMapper;
+import org.infogrid.util.CursorIterator;
 import org.infogrid.util.context.Context;
 import org.infogrid.util.context.SimpleContext;
 import org.infogrid.util.logging.Log;
@@ -122,6 +123,17 @@ public class InstrumentedStoreMeshBase
         
         map.flush( obj );
     }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public CursorIterator<MeshObjectIdentifier> identifierIterator()
+    {
+        MyMap map = (MyMap) theCache;
+
+        return map.keysIterator( MeshObjectIdentifier.class, MeshObject.class );
+    }
     
     /**
      * Make some methods more accessible.
@@ -52,6 +52,8 @@ public class Main {
         String  dbConnectString                      = null;
         boolean isNetMeshBase                        = false;
         int     verbose                              = 1;
+        int     threads                              = 1;
+        String  checkpoint                           = null;
         
         try {
             for( int i = 0; i < args.length ; ++i ) {
@@ -145,6 +147,23 @@ public class Main {
                             synopsisQuit();
                         }
                         break;
+                    case "--threads":
+                        try {
+                            threads = Integer.parseInt( args[++i] );
+                        } catch( NumberFormatException ex ) {
+                            synopsisQuit();
+                        }
+                        if( threads < 1 ) {
+                            synopsisQuit();
+                        }
+                        break;
+                    case "--checkpoint":
+                        if( checkpoint == null ) {
+                            checkpoint = args[++i];
+                        } else {
+                            synopsisQuit();
+                        }
+                        break;
                     case "-n":
                     case "--netmeshbase":
                         isNetMeshBase = true;
@@ -237,6 +256,10 @@ public class Main {
             theObj.setAssignDefaultsToMandatoryNulls(       assignDefaultsToMandatoryNulls );
             theObj.setAssignDefaultsIfIncompatibleDataType( assignDefaultsIfIncompatibleDataType );
             theObj.setVerbose(                              verbose );
+            theObj.setThreads(                              threads );
+            if( checkpoint != null ) {
+                theObj.setCheckpointFile( new File( checkpoint ));
+            }
 
             theObj.run();
 
@@ -270,6 +293,8 @@ public class Main {
         System.err.println( "    [--password <pass>]                      : the database password to use" );
         System.err.println( "    [--netmeshbase]                          : instantiate a NetMeshBase instead of a MeshBase" );
         System.err.println( "    [--logfile <log4jconfig>]                : alternate log4j config file" );
+        System.err.println( "    [--threads <n>]                          : check with n threads in parallel (default: 1)" );
+        System.err.println( "    [--checkpoint <file>]                    : save progress to this file, and resume from it if it exists" );
         System.err.println( "    [--verbose] | [--quiet]                  : increase or decrease verbosity level" );
         System.err.println( "    jdbc:<engine>://<host>/<database         : the JDBC database connection string" );
         
@@ -0,0 +1,176 @@
+//
+// This file is part of InfoGrid(tm). You may not use this file except in
+// compliance with the InfoGrid license. The InfoGrid license and important
+// disclaimers are contained in the file LICENSE.InfoGrid.txt that you should
+// have received with InfoGrid. If you have not received LICENSE.InfoGrid.txt
+// or you do not consent to all aspects of the license and the disclaimers,
+// no license is granted; do not use this file.
+//
+// For more information about InfoGrid go to http://infogrid.org/
+//
+// Copyright 1998-2015 by Johannes Ernst
+// All rights reserved.
+//
+
+package org.infogrid.admin.igck.test;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.diet4j.core.ModuleRegistry;
+import org.diet4j.core.ModuleRequirement;
+import org.diet4j.inclasspath.InClasspathModuleRegistry;
+import org.infogrid.admin.igck.Igck;
+import org.infogrid.admin.igck.InstrumentedMeshBase;
+import org.infogrid.admin.igck.InstrumentedStoreMeshBase;
+import org.infogrid.mesh.MeshObject;
+import org.infogrid.meshbase.MeshBaseLifecycleManager;
+import org.infogrid.meshbase.transaction.Transaction;
+import org.infogrid.store.m.MStore;
+import org.infogrid.testharness.AbstractTest;
+import org.infogrid.util.CursorIterator;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+
+/**
+ * Factors out common functionality of IgckTests. The tests run against an MStore,
+ * which iterates over its keys in no particular order.
+ */
+public abstract class AbstractIgckTest
+        extends
+            AbstractTest
+{
+    /**
+     * Initialize Module Framework.
+     *
+     * @throws Exception all sorts of things may go wrong in tests
+     */
+    @BeforeClass
+    public static void initialize()
+        throws
+            Exception
+    {
+        ClassLoader    cl       = AbstractIgckTest.class.getClassLoader();
+        ModuleRegistry registry = InClasspathModuleRegistry.instantiateOrGet( cl );
+
+        registry.resolve( registry.determineSingleResolutionCandidate( ModuleRequirement.create( "org.infogrid", "org.infogrid.kernel" ))).activateRecursively();
+    }
+
+    /**
+     * Setup.
+     *
+     * @throws Exception all sorts of things may go wrong in tests
+     */
+    @Before
+    public void setup()
+        throws
+            Exception
+    {
+        theMeshBase = InstrumentedStoreMeshBase.create( "test", MStore.create() );
+
+        MeshBaseLifecycleManager life = theMeshBase.getMeshBaseLifecycleManager();
+
+        Transaction tx = theMeshBase.createTransactionNow();
+        for( int i=0 ; i<test_SIZE ; ++i ) {
+            life.createMeshObject();
+        }
+        tx.commitTransaction();
+
+        theVisits.clear();
+    }
+
+    /**
+     * Clean up.
+     */
+    @After
+    public void cleanup()
+    {
+        theMeshBase.die();
+    }
+
+    /**
+     * Check that every MeshObject in the MeshBase has been visited exactly once.
+     */
+    protected void checkVisitedOnce()
+    {
+        checkEquals( theMeshBase.size(), test_SIZE + 1, "Wrong number of MeshObjects" ); // plus home object
+
+        int                        found = 0;
+        CursorIterator<MeshObject> iter  = theMeshBase.iterator();
+        while( iter.hasNext() ) {
+            MeshObject    current = iter.next();
+            AtomicInteger visits  = theVisits.get( current.getIdentifier().toExternalForm() );
+
+            checkEquals( visits != null ? visits.get() : 0, 1, "Wrong number of visits: " + current.getIdentifier() );
+            ++found;
+        }
+        checkEquals( found, test_SIZE + 1, "Wrong number of MeshObjects found" );
+        checkEquals( theVisits.size(), found, "Visited MeshObjects that do not exist" );
+    }
+
+    /**
+     * The MeshBase to check.
+     */
+    protected InstrumentedStoreMeshBase theMeshBase;
+
+    /**
+     * The number of times each MeshObject was checked, keyed by the external form of its identifier.
+     */
+    protected final ConcurrentHashMap<String,AtomicInteger> theVisits = new ConcurrentHashMap<>();
+
+    /**
+     * The number of MeshObjects to create. This must be enough for several partitions.
+     */
+    protected static final int test_SIZE = 4 * Igck.BATCH_SIZE + 17;
+
+    /**
+     * An Igck that records which MeshObjects it checked.
+     */
+    protected class RecordingIgck
+            extends
+                Igck
+    {
+        /**
+         * Constructor.
+         *
+         * @param mb the MeshBase to check
+         * @param interruptAfter interrupt the checking thread after this many MeshObjects, or -1
+         */
+        public RecordingIgck(
+                InstrumentedMeshBase mb,
+                int                  interruptAfter )
+        {
+            super( mb );
+
+            theInterruptAfter = interruptAfter;
+        }
+
+        /**
+         * Record, then check.
+         *
+         * @param current the MeshObject to check
+         */
+        @Override
+        protected void runOne(
+                MeshObject current )
+        {
+            theVisits.computeIfAbsent( current.getIdentifier().toExternalForm(), (String k) -> new AtomicInteger() ).incrementAndGet();
+
+            super.runOne( current );
+
+            if( theRecorded.incrementAndGet() == theInterruptAfter ) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        /**
+         * Interrupt the checking thread after this many MeshObjects, or -1.
+         */
+        protected final int theInterruptAfter;
+
+        /**
+         * The number of MeshObjects checked by this Igck.
+         */
+        protected final AtomicInteger theRecorded = new AtomicInteger();
+    }
+}
@@ -0,0 +1,48 @@
+//
+// This file is part of InfoGrid(tm). You may not use this file except in
+// compliance with the InfoGrid license. The InfoGrid license and important
+// disclaimers are contained in the file LICENSE.InfoGrid.txt that you should
+// have received with InfoGrid. If you have not received LICENSE.InfoGrid.txt
+// or you do not consent to all aspects of the license and the disclaimers,
+// no license is granted; do not use this file.
+//
+// For more information about InfoGrid go to http://infogrid.org/
+//
+// Copyright 1998-2015 by Johannes Ernst
+// All rights reserved.
+//
+
+package org.infogrid.admin.igck.test;
+
+import org.infogrid.util.logging.Log;
+import org.junit.Test;
+
+/**
+ * Tests that checking with several threads visits every MeshObject exactly once.
+ */
+public class IgckTest1
+        extends
+            AbstractIgckTest
+{
+    /**
+     * Run the test.
+     *
+     * @throws Exception all sorts of things may go wrong during a test
+     */
+    @Test
+    public void run()
+        throws
+            Exception
+    {
+        log.info( "Checking with several threads" );
+
+        RecordingIgck igck = new RecordingIgck( theMeshBase, -1 );
+        igck.setThreads( 3 );
+        igck.run();
+
+        checkVisitedOnce();
+    }
+
+    // Our Logger
+    private static Log log = Log.getLogInstance( IgckTest1.class );
+}
@@ -0,0 +1,74 @@
+//
+// This file is part of InfoGrid(tm). You may not use this file except in
+// compliance with the InfoGrid license. The InfoGrid license and important
+// disclaimers are contained in the file LICENSE.InfoGrid.txt that you should
+// have received with InfoGrid. If you have not received LICENSE.InfoGrid.txt
+// or you do not consent to all aspects of the license and the disclaimers,
+// no license is granted; do not use this file.
+//
+// For more information about InfoGrid go to http://infogrid.org/
+//
+// Copyright 1998-2015 by Johannes Ernst
+// All rights reserved.
+//
+
+package org.infogrid.admin.igck.test;
+
+import java.io.File;
+import org.infogrid.util.logging.Log;
+import org.junit.Test;
+
+/**
+ * Tests that a checking run that was interrupted, and resumed from its checkpoint,
+ * visits every MeshObject exactly once.
+ */
+public class IgckTest2
+        extends
+            AbstractIgckTest
+{
+    /**
+     * Run the test.
+     *
+     * @throws Exception all sorts of things may go wrong during a test
+     */
+    @Test
+    public void run()
+        throws
+            Exception
+    {
+        File checkpoint = File.createTempFile( "IgckTest2", ".checkpoint" );
+        checkpoint.delete();
+
+        try {
+            log.info( "Checking until interrupted" );
+
+            RecordingIgck first = new RecordingIgck( theMeshBase, test_SIZE / 2 );
+            first.setThreads( 3 );
+            first.setCheckpointFile( checkpoint );
+            first.run();
+
+            checkCondition( checkpoint.exists(), "No checkpoint written" );
+            checkCondition( theVisits.size() < test_SIZE, "Not interrupted" );
+
+            //
+
+            log.info( "Resuming from checkpoint" );
+
+            RecordingIgck second = new RecordingIgck( theMeshBase, -1 );
+            second.setThreads( 3 );
+            second.setCheckpointFile( checkpoint );
+            second.run();
+
+            checkCondition( !checkpoint.exists(), "Checkpoint not deleted after completion" );
+            checkCondition( second.theRecorded.get() > 0, "Nothing checked after resuming" );
+
+            checkVisitedOnce();
+
+        } finally {
+            checkpoint.delete();
+        }
+    }
+
+    // Our Logger
+    private static Log log = Log.getLogInstance( IgckTest2.class );
+}
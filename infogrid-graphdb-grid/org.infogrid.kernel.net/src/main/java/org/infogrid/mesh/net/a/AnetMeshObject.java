@@ -33,6 +33,7 @@ import org.infogrid.mesh.RoleTypeBlessedAlreadyException;
 import org.infogrid.mesh.RoleTypeNotBlessedException;
 import org.infogrid.mesh.RoleTypeRequiresEntityTypeException;
 import org.infogrid.mesh.a.AMeshObject;
+import org.infogrid.mesh.a.AMeshObjectNeighborSnapshot;
 import org.infogrid.mesh.net.DoNotHaveLockException;
 import org.infogrid.mesh.net.HomeReplicaChangedEvent;
 import org.infogrid.mesh.net.LockChangedEvent;
@@ -62,6 +63,7 @@ import org.infogrid.meshbase.net.transaction.NetMeshObjectRoleRemovedEvent;
 import org.infogrid.meshbase.net.transaction.NetMeshObjectTypeAddedEvent;
 import org.infogrid.meshbase.net.transaction.NetMeshObjectTypeRemovedEvent;
 import org.infogrid.meshbase.transaction.MeshObjectStateEvent;
+import org.infogrid.meshbase.transaction.NeighborIdentifiersSnapshot;
 import org.infogrid.meshbase.transaction.Transaction;
 import org.infogrid.meshbase.transaction.TransactionException;
 import org.infogrid.model.primitives.EntityType;
@@ -1687,48 +1689,22 @@ public class AnetMeshObject
         AnetMeshObjectNeighborManager nMgr = getNeighborManager();
 
         // first see whether we have it already
-        boolean found = false;
+        if( !nMgr.isRelated( this, newNeighborIdentifier )) {
+            AMeshObjectNeighborSnapshot oldNeighborIdentifiers = nMgr.getNeighborIdentifiersSnapshot( this );
 
-        NetMeshObjectIdentifier [] oldNeighborIdentifiers;
-        if( nMgr.hasNeighbors( this )) {
-            oldNeighborIdentifiers = nMgr.getNeighborIdentifiers( this );
-            for( int i=0 ; i<oldNeighborIdentifiers.length ; ++i ) {
-                if( newNeighborIdentifier.equals( oldNeighborIdentifiers[i] )) {
-                    found = true;
-                    break;
-                }
-            }
-        } else {
-            oldNeighborIdentifiers = new NetMeshObjectIdentifier[]{};
-        }
-
-        if( !found ) {
             nMgr.appendNeighbor( this, newNeighborIdentifier, null );
-            fireNeighborAdded( null, oldNeighborIdentifiers, newNeighborIdentifier, nMgr.getNeighborIdentifiers( this ), theMeshBase );
+            fireNeighborAdded( null, oldNeighborIdentifiers, newNeighborIdentifier, nMgr.getNeighborIdentifiersSnapshot( this ), theMeshBase );
         }
 
         NetMeshObject neighbor = ((NetMeshBase)theMeshBase).findMeshObjectByIdentifier( newNeighborIdentifier );
         if( neighbor != null ) {
             AnetMeshObject realNeighbor = (AnetMeshObject) neighbor;
 
-            boolean neighborFound = false;
-
-            NetMeshObjectIdentifier [] oldNeighborNeighborIdentifiers;
-            if( nMgr.hasNeighbors( realNeighbor )) {
-                oldNeighborNeighborIdentifiers = nMgr.getNeighborIdentifiers( realNeighbor );
-                for( int i=0 ; i<oldNeighborNeighborIdentifiers.length ; ++i ) {
-                    if( theIdentifier.equals( oldNeighborNeighborIdentifiers[i] )) {
-                        neighborFound = true;
-                        break;
-                    }
-                }
-            } else {
-                oldNeighborNeighborIdentifiers = new NetMeshObjectIdentifier[]{};
-            }
+            if( !nMgr.isRelated( realNeighbor, theIdentifier )) {
+                AMeshObjectNeighborSnapshot oldNeighborNeighborIdentifiers = nMgr.getNeighborIdentifiersSnapshot( realNeighbor );
 
-            if( !neighborFound ) {
                 nMgr.appendNeighbor( realNeighbor, theIdentifier, null );
-                realNeighbor.fireNeighborAdded( null, oldNeighborNeighborIdentifiers, theIdentifier, nMgr.getNeighborIdentifiers( realNeighbor ), theMeshBase );
+                realNeighbor.fireNeighborAdded( null, oldNeighborNeighborIdentifiers, theIdentifier, nMgr.getNeighborIdentifiersSnapshot( realNeighbor ), theMeshBase );
             }
         }
 
@@ -2030,8 +2006,8 @@ public class AnetMeshObject
                     theTimeRead,
                     theTimeExpires,
                     theMeshTypes != null ? theMeshTypes.keySet() : null,
-                    theNeighborIdentifiers,
-                    theNeighborRoleTypes,
+                    getNeighborManager().getNeighborIdentifiers( this ),
+                    getNeighborManager().getRoleTypes( this ),
                     theMeshBase != null ? theMeshBase.getIdentifier().toExternalForm() : null
                 });
     }
@@ -2257,6 +2233,69 @@ public class AnetMeshObject
         firePropertyChange( theEvent );
     }
 
+    /**
+     * Fire an event indicating a change in the set of neighbors of this MeshObject, whose
+     * neighbors are only determined if somebody asks.
+     *
+     * @param addedRoleTypes the newly added RoleTypes, if any
+     * @param oldValue the MeshObjectIdentifiers of the neighbors prior to the change
+     * @param added the added MeshObjectIdentifier
+     * @param newValue the MeshObjectIdentifiers of the neighbors now, after the change
+     * @param mb the MeshBase to use
+     */
+    @Override
+    protected void fireNeighborAdded(
+            RoleType []                 addedRoleTypes,
+            NeighborIdentifiersSnapshot oldValue,
+            MeshObjectIdentifier        added,
+            NeighborIdentifiersSnapshot newValue,
+            MeshBase                    mb )
+    {
+        NetMeshObjectNeighborAddedEvent theEvent
+                = new NetMeshObjectNeighborAddedEvent(
+                        this,
+                        addedRoleTypes,
+                        oldValue,
+                        (NetMeshObjectIdentifier) added,
+                        newValue,
+                        determineIncomingProxyIdentifier( theMeshBase ),
+                        theTimeUpdated );
+
+        mb.getCurrentTransaction().addChange( theEvent );
+
+        firePropertyChange( theEvent );
+    }
+
+    /**
+     * Fire an event indicating a change in the set of neighbors of this MeshObject, whose
+     * neighbors are only determined if somebody asks.
+     *
+     * @param oldValue the MeshObjectIdentifiers of the neighbors prior to the change
+     * @param removed the removed Identifier
+     * @param newValue the MeshObjectIdentifiers of the neighbors now, after the change
+     * @param mb the MeshBase to use
+     */
+    @Override
+    protected void fireNeighborRemoved(
+            NeighborIdentifiersSnapshot oldValue,
+            MeshObjectIdentifier        removed,
+            NeighborIdentifiersSnapshot newValue,
+            MeshBase                    mb )
+    {
+        NetMeshObjectNeighborRemovedEvent theEvent
+                = new NetMeshObjectNeighborRemovedEvent(
+                        this,
+                        oldValue,
+                        (NetMeshObjectIdentifier) removed,
+                        newValue,
+                        determineIncomingProxyIdentifier( theMeshBase ),
+                        theTimeUpdated );
+
+        mb.getCurrentTransaction().addChange( theEvent );
+
+        firePropertyChange( theEvent );
+    }
+
     /**
      * Fire an event indicating that one or more MeshTypes have been added to this MeshObject.
      *
@@ -14,6 +14,7 @@
 
 package org.infogrid.mesh.net.a;
 
+import java.util.Arrays;
 import org.infogrid.mesh.MeshObjectIdentifier;
 import org.infogrid.mesh.NotRelatedException;
 import org.infogrid.mesh.RelatedAlreadyException;
@@ -86,6 +87,17 @@ public class AnetMeshObjectNeighborManager
 
         if( subject.theRelationshipProxies == null ) {
             subject.theRelationshipProxies = new Proxy[][] { relationshipProxies };
+
+        } else if( isIndexed( subject )) {
+            // grow with spare capacity, like the neighbors in the index
+            int count = getNeighborCount( subject );
+            if( subject.theRelationshipProxies.length < count ) {
+                subject.theRelationshipProxies = Arrays.copyOf(
+                        subject.theRelationshipProxies,
+                        Math.max( count, 2 * subject.theRelationshipProxies.length ));
+            }
+            subject.theRelationshipProxies[ count-1 ] = relationshipProxies;
+
         } else {
             subject.theRelationshipProxies = ArrayHelper.append( subject.theRelationshipProxies, relationshipProxies, Proxy[].class );
         }
@@ -103,10 +115,25 @@ public class AnetMeshObjectNeighborManager
             int         index )
     {
         AnetMeshObject realSubject = (AnetMeshObject) subject;
+        boolean        wasIndexed  = isIndexed( realSubject );
+        int            last        = getNeighborCount( realSubject ) - 1;
 
         super.internalRemoveNeighbor( realSubject, index );
 
-        realSubject.theRelationshipProxies = ArrayHelper.remove( realSubject.theRelationshipProxies, index, Proxy[].class );
+        if( wasIndexed ) {
+            Proxy [][] relationshipProxies = realSubject.theRelationshipProxies;
+            if( relationshipProxies != null ) {
+                // the last neighbor has moved into the index
+                relationshipProxies[ index ] = relationshipProxies[ last ];
+                relationshipProxies[ last ]  = null;
+
+                if( !isIndexed( realSubject )) {
+                    realSubject.theRelationshipProxies = Arrays.copyOf( relationshipProxies, last );
+                }
+            }
+        } else {
+            realSubject.theRelationshipProxies = ArrayHelper.remove( realSubject.theRelationshipProxies, index, Proxy[].class );
+        }
     }
 
     /**
@@ -146,7 +173,15 @@ public class AnetMeshObjectNeighborManager
     public Proxy [][] getRelationshipProxies(
             AnetMeshObject subject )
     {
-        return subject.theRelationshipProxies;
+        synchronized( subject ) {
+            Proxy [][] ret   = subject.theRelationshipProxies;
+            int        count = getNeighborCount( subject );
+
+            if( ret != null && ret.length > count ) {
+                ret = Arrays.copyOf( ret, count ); // without the spare capacity
+            }
+            return ret;
+        }
     }
 
     /**
@@ -14,6 +14,7 @@
 
 package org.infogrid.meshbase.net;
 
+import java.util.concurrent.CompletableFuture;
 import org.infogrid.mesh.MeshObjectIdentifier;
 import org.infogrid.mesh.NotPermittedException;
 import org.infogrid.mesh.net.NetMeshObject;
@@ -403,6 +404,89 @@ public interface NetMeshBase
             NetMeshObjectAccessException,
             NotPermittedException;
 
+    /**
+     * <p>Asynchronously obtain a local replica of a named NetMeshObject held by a possibly remote NetMeshBase
+     * identified by its NetMeshBaseIdentifier.
+     * This call does not obtain update rights for the obtained replica.</p>
+     * <p>The returned CompletableFuture completes exceptionally with a NetMeshObjectAccessException
+     * or a NotPermittedException where the corresponding accessLocally method would throw one.
+     * Cancelling it stops waiting for the response; replicas that arrive later are still added
+     * to this NetMeshBase.</p>
+     *
+     * @param remoteLocation the NetMeshBaseIdentifier for the location from where to obtain
+     *        a replica of the remote MeshObject
+     * @param objectIdentifier the NetMeshObjectIdentifier of the remote NetMeshObject
+     * @return the CompletableFuture for the locally replicated NetMeshObject, or null if not found
+     */
+    public abstract CompletableFuture<NetMeshObject> accessLocallyAsync(
+            NetMeshBaseIdentifier   remoteLocation,
+            NetMeshObjectIdentifier objectIdentifier );
+
+    /**
+     * <p>Asynchronously obtain a local replica of a named NetMeshObject held by a possibly remote NetMeshBase
+     * identified by its NetMeshBaseIdentifier.
+     * Specify a non-default timeout.
+     * This call does not obtain update rights for the obtained replica.</p>
+     *
+     * @param remoteLocation the NetMeshBaseIdentifier for the location from where to obtain
+     *        a replica of the remote MeshObject
+     * @param objectIdentifier the NetMeshObjectIdentifier of the remote NetMeshObject
+     * @param timeoutInMillis the timeout parameter for this call, in milli-seconds
+     * @return the CompletableFuture for the locally replicated NetMeshObject, or null if not found
+     */
+    public abstract CompletableFuture<NetMeshObject> accessLocallyAsync(
+            NetMeshBaseIdentifier   remoteLocation,
+            NetMeshObjectIdentifier objectIdentifier,
+            long                    timeoutInMillis );
+
+    /**
+     * <p>Asynchronously obtain a local replica of a NetMeshObject using a NetMeshObjectAccessSpecification.
+     * This call does not obtain update rights for the obtained replica.</p>
+     *
+     * @param pathToObject the NetMeshObjectAccessSpecification indicating the location and path to use to access the remote NetMeshObject
+     * @return the CompletableFuture for the locally replicated NetMeshObject, or null if not found
+     */
+    public abstract CompletableFuture<NetMeshObject> accessLocallyAsync(
+            NetMeshObjectAccessSpecification pathToObject );
+
+    /**
+     * <p>Asynchronously obtain a local replica of a NetMeshObject using a NetMeshObjectAccessSpecification.
+     * Specify a non-default timeout.
+     * This call does not obtain update rights for the obtained replica.</p>
+     *
+     * @param pathToObject the NetMeshObjectAccessSpecification indicating the location and path to use to access the remote NetMeshObject
+     * @param timeoutInMillis the timeout parameter for this call, in milli-seconds
+     * @return the CompletableFuture for the locally replicated NetMeshObject, or null if not found
+     */
+    public abstract CompletableFuture<NetMeshObject> accessLocallyAsync(
+            NetMeshObjectAccessSpecification pathToObject,
+            long                             timeoutInMillis );
+
+    /**
+     * <p>Asynchronously obtain N local replicas of N NetMeshObjects using N NetMeshObjectAccessSpecifications.
+     * This call does not obtain update rights for the obtained replicas.</p>
+     * <p>The requests to all involved NetMeshBases are sent in parallel before this call returns.</p>
+     *
+     * @param pathsToObjects the NetMeshObjectAccessSpecifications indicating the location and paths to use to access the remote NetMeshObjects
+     * @return the CompletableFuture for the locally replicated NetMeshObjects, or null if not found
+     */
+    public abstract CompletableFuture<NetMeshObject []> accessLocallyAsync(
+            NetMeshObjectAccessSpecification [] pathsToObjects );
+
+    /**
+     * <p>Asynchronously obtain N local replicas of N NetMeshObjects using N NetMeshObjectAccessSpecifications.
+     * Specify a non-default timeout.
+     * This call does not obtain update rights for the obtained replicas.</p>
+     * <p>The requests to all involved NetMeshBases are sent in parallel before this call returns.</p>
+     *
+     * @param pathsToObjects the NetMeshObjectAccessSpecifications indicating the location and paths to use to access the remote NetMeshObjects
+     * @param timeoutInMillis the timeout parameter for this call, in milli-seconds
+     * @return the CompletableFuture for the locally replicated NetMeshObjects, or null if not found
+     */
+    public abstract CompletableFuture<NetMeshObject []> accessLocallyAsync(
+            NetMeshObjectAccessSpecification [] pathsToObjects,
+            long                                timeoutInMillis );
+
     /**
      * <p>Obtain a manager for NetMeshObject lifecycles.</p>
      * 
@@ -16,6 +16,11 @@ package org.infogrid.meshbase.net.a;
 
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import org.infogrid.mesh.MeshObject;
 import org.infogrid.mesh.MeshObjectIdentifier;
 import org.infogrid.mesh.NotPermittedException;
@@ -47,6 +52,7 @@ import org.infogrid.util.ArrayHelper;
 import org.infogrid.util.CachingMap;
 import org.infogrid.util.CursorIterator;
 import org.infogrid.util.FactoryException;
+import org.infogrid.util.NamedThreadFactory;
 import org.infogrid.util.NameServer;
 import org.infogrid.util.RemoteQueryTimeoutException;
 import org.infogrid.util.ResourceHelper;
@@ -618,16 +624,288 @@ public abstract class AnetMeshBase
 //            throw new IllegalStateException( "You must not invoke accessLocally while your Thread has a Transaction open" );
 //        }
 
+        AccessLocallyState state = createAccessLocallyState( pathsToObjects );
+
+        // return if it looks like we are done
+        if( state.theStillToGet == 0 ) {
+            return state.theResults;
+        }
+
+        // make sure caller has permission
+        if( theAccessManager != null ) {
+            NetAccessManager realAccessManager = (NetAccessManager) theAccessManager;
+            realAccessManager.checkPermittedAccessLocally( this, state.theCorrectRemotePaths ); // may throw exception
+        }
+
+        boolean ok;
+        try {
+            theAccessLocallySynchronizer.beginTransaction();
+
+            long realTimeout = sendAccessLocallyQueries( state, timeoutInMillis );
+
+            ok = theAccessLocallySynchronizer.join( realTimeout );
+
+            if( !ok && !state.theHasCause ) {
+                log.warn( this + ".accessLocally() timed out trying to reach " + ArrayHelper.arrayToString( pathsToObjects ) + ", timeout: " + realTimeout );
+            }
+
+            if( realTimeout < 0L ) {
+                ok = true;
+            }
+            theAccessLocallySynchronizer.endTransaction();
+
+        } catch( ReturnSynchronizerException ex ) {
+            log.error( ex );
+            ok = false;
+
+        } catch( InterruptedException ex ) {
+            log.error( ex );
+            ok = false;
+        }
+
+        return collectAccessLocallyResults( state, ok );
+    }
+
+    /**
+     * <p>Asynchronously obtain a local replica of a named NetMeshObject held by a possibly remote NetMeshBase
+     * identified by its NetMeshBaseIdentifier.
+     * This call does not obtain update rights for the obtained replica.</p>
+     *
+     * @param remoteLocation the NetMeshBaseIdentifier for the location from where to obtain
+     *        a replica of the remote MeshObject
+     * @param objectIdentifier the NetMeshObjectIdentifier of the remote NetMeshObject
+     * @return the CompletableFuture for the locally replicated NetMeshObject, or null if not found
+     */
+    public CompletableFuture<NetMeshObject> accessLocallyAsync(
+            NetMeshBaseIdentifier   remoteLocation,
+            NetMeshObjectIdentifier objectIdentifier )
+    {
+        return accessLocallyAsync( remoteLocation, objectIdentifier, -1L );
+    }
+
+    /**
+     * <p>Asynchronously obtain a local replica of a named NetMeshObject held by a possibly remote NetMeshBase
+     * identified by its NetMeshBaseIdentifier.
+     * Specify a non-default timeout.
+     * This call does not obtain update rights for the obtained replica.</p>
+     *
+     * @param remoteLocation the NetMeshBaseIdentifier for the location from where to obtain
+     *        a replica of the remote MeshObject
+     * @param objectIdentifier the NetMeshObjectIdentifier of the remote NetMeshObject
+     * @param timeoutInMillis the timeout parameter for this call, in milli-seconds. -1 means "use default".
+     * @return the CompletableFuture for the locally replicated NetMeshObject, or null if not found
+     */
+    public CompletableFuture<NetMeshObject> accessLocallyAsync(
+            NetMeshBaseIdentifier   remoteLocation,
+            NetMeshObjectIdentifier objectIdentifier,
+            long                    timeoutInMillis )
+    {
+        NetMeshObjectAccessSpecification path = theNetMeshObjectAccessSpecificationFactory.obtain(
+                remoteLocation,
+                objectIdentifier );
+
+        return accessLocallyAsync( path, timeoutInMillis );
+    }
+
+    /**
+     * <p>Asynchronously obtain a local replica of a NetMeshObject using a NetMeshObjectAccessSpecification.
+     * This call does not obtain update rights for the obtained replica.</p>
+     *
+     * @param pathToObject the NetMeshObjectAccessSpecification indicating the location and path to use to access the remote NetMeshObject
+     * @return the CompletableFuture for the locally replicated NetMeshObject, or null if not found
+     */
+    public CompletableFuture<NetMeshObject> accessLocallyAsync(
+            NetMeshObjectAccessSpecification pathToObject )
+    {
+        return accessLocallyAsync( pathToObject, -1L );
+    }
+
+    /**
+     * <p>Asynchronously obtain a local replica of a NetMeshObject using a NetMeshObjectAccessSpecification.
+     * Specify a non-default timeout.
+     * This call does not obtain update rights for the obtained replica.</p>
+     *
+     * @param pathToObject the NetMeshObjectAccessSpecification indicating the location and path to use to access the remote NetMeshObject
+     * @param timeoutInMillis the timeout parameter for this call, in milli-seconds. -1 means "use default".
+     * @return the CompletableFuture for the locally replicated NetMeshObject, or null if not found
+     */
+    public CompletableFuture<NetMeshObject> accessLocallyAsync(
+            NetMeshObjectAccessSpecification pathToObject,
+            long                             timeoutInMillis )
+    {
+        CompletableFuture<NetMeshObject []> all = accessLocallyAsync( new NetMeshObjectAccessSpecification[] { pathToObject }, timeoutInMillis );
+        CompletableFuture<NetMeshObject>    ret = all.thenApply( ( NetMeshObject [] found ) -> found[0] );
+
+        ret.whenComplete( ( NetMeshObject found, Throwable t ) -> all.cancel( false )); // pass on cancellation by the caller; no-op otherwise
+
+        return ret;
+    }
+
+    /**
+     * <p>Asynchronously obtain N local replicas of N NetMeshObjects using N NetMeshObjectAccessSpecifications.
+     * This call does not obtain update rights for the obtained replicas.</p>
+     *
+     * @param pathsToObjects the NetMeshObjectAccessSpecifications indicating the location and paths to use to access the remote NetMeshObjects
+     * @return the CompletableFuture for the locally replicated NetMeshObjects, or null if not found
+     */
+    public CompletableFuture<NetMeshObject []> accessLocallyAsync(
+            NetMeshObjectAccessSpecification [] pathsToObjects )
+    {
+        return accessLocallyAsync( pathsToObjects, -1L );
+    }
+
+    /**
+     * <p>Asynchronously obtain N local replicas of N NetMeshObjects using N NetMeshObjectAccessSpecifications.
+     * Specify a non-default timeout.
+     * This call does not obtain update rights for the obtained replicas.</p>
+     * <p>The requests are sent to all Proxies involved before this call returns, but the
+     * calling Thread does not wait for the responses. The returned CompletableFuture completes
+     * on a Thread of the ScheduledExecutorService returned by {@link #getAccessLocallyExecutor}.</p>
+     *
+     * @param pathsToObjects the NetMeshObjectAccessSpecifications indicating the location and paths to use to access the remote NetMeshObjects
+     * @param timeoutInMillis the timeout parameter for this call, in milli-seconds. -1 means "use default".
+     * @return the CompletableFuture for the locally replicated NetMeshObjects, or null if not found
+     */
+    public CompletableFuture<NetMeshObject []> accessLocallyAsync(
+            NetMeshObjectAccessSpecification [] pathsToObjects,
+            long                                timeoutInMillis )
+    {
+        if( log.isDebugEnabled() ) {
+            log.debug(
+                    this
+                    + ".accessLocallyAsync( "
+                    + ArrayHelper.arrayToString( pathsToObjects )
+                    + ", "
+                    + timeoutInMillis
+                    + " )" );
+        }
+
+        CompletableFuture<NetMeshObject []> ret = new CompletableFuture<>();
+
+        if( pathsToObjects == null ) {
+            ret.complete( null );
+            return ret;
+        }
+        if( pathsToObjects.length == 0 ) {
+            ret.complete( new NetMeshObject[0] );
+            return ret;
+        }
+
+        try {
+            AccessLocallyState state = createAccessLocallyState( pathsToObjects );
+
+            if( state.theStillToGet == 0 ) {
+                ret.complete( state.theResults );
+                return ret;
+            }
+
+            if( theAccessManager != null ) {
+                NetAccessManager realAccessManager = (NetAccessManager) theAccessManager;
+                realAccessManager.checkPermittedAccessLocally( this, state.theCorrectRemotePaths ); // may throw exception
+            }
+
+            theAccessLocallySynchronizer.beginTransaction();
+
+            long    realTimeout;
+            boolean sent = false;
+            try {
+                realTimeout = sendAccessLocallyQueries( state, timeoutInMillis );
+                sent        = true;
+
+            } finally {
+                if( !sent ) {
+                    theAccessLocallySynchronizer.endTransaction(); // do not leave it open on this thread
+                }
+            }
+            CompletableFuture<Boolean> detached = theAccessLocallySynchronizer.detachTransaction();
+
+            ScheduledExecutorService exec = getAccessLocallyExecutor();
+
+            if( realTimeout < 0L ) {
+                // same as the synchronous version: do not wait
+                exec.execute( () -> completeAccessLocallyAsync( state, true, ret ));
+
+            } else {
+                detached.thenAcceptAsync( ( Boolean ok ) -> completeAccessLocallyAsync( state, ok, ret ), exec );
+
+                if( realTimeout > 0L ) {
+                    ScheduledFuture<?> deadline = exec.schedule(
+                            () -> completeAccessLocallyAsync( state, false, ret ),
+                            realTimeout,
+                            TimeUnit.MILLISECONDS );
+
+                    ret.whenComplete( ( NetMeshObject [] found, Throwable t ) -> deadline.cancel( false ));
+                }
+            }
+
+            // also taken when the caller cancels
+            ret.whenComplete( ( NetMeshObject [] found, Throwable t ) -> theAccessLocallySynchronizer.endDetachedTransaction( detached ));
+
+        } catch( NotPermittedException ex ) {
+            ret.completeExceptionally( ex );
+
+        } catch( ReturnSynchronizerException ex ) {
+            log.error( ex );
+            ret.completeExceptionally( ex );
+
+        } catch( RuntimeException ex ) {
+            log.error( ex );
+            ret.completeExceptionally( ex );
+        }
+        return ret;
+    }
+
+    /**
+     * Complete an asynchronous accessLocally operation, unless it has been completed already.
+     *
+     * @param state the state of the operation
+     * @param ok if true, all queries returned
+     * @param future the CompletableFuture to complete
+     */
+    protected void completeAccessLocallyAsync(
+            AccessLocallyState                  state,
+            boolean                             ok,
+            CompletableFuture<NetMeshObject []> future )
+    {
+        if( future.isDone() ) {
+            return; // cancelled, or timed out earlier
+        }
+        if( !ok && !state.theHasCause ) {
+            log.warn( this + ".accessLocallyAsync() timed out trying to reach " + ArrayHelper.arrayToString( state.thePathsToObjects ));
+        }
+        try {
+            future.complete( collectAccessLocallyResults( state, ok ));
+
+        } catch( NetMeshObjectAccessException ex ) {
+            future.completeExceptionally( ex );
+
+        } catch( Throwable t ) {
+            log.error( t );
+            future.completeExceptionally( t );
+        }
+    }
+
+    /**
+     * Set up the state of an accessLocally operation, and look for the requested
+     * NetMeshObjects locally.
+     *
+     * @param pathsToObjects the NetMeshObjectAccessSpecifications indicating the location and paths to use to access the remote NetMeshObjects
+     * @return the state of the operation
+     */
+    protected AccessLocallyState createAccessLocallyState(
+            NetMeshObjectAccessSpecification [] pathsToObjects )
+    {
+        AccessLocallyState state = new AccessLocallyState( pathsToObjects );
+
         // strip out cyclical and non-sensical items from path
-        NetMeshObjectAccessSpecification [] correctRemotePaths = new NetMeshObjectAccessSpecification[ pathsToObjects.length ];
+        NetMeshObjectAccessSpecification [] correctRemotePaths = state.theCorrectRemotePaths;
         for( int i=0 ; i<pathsToObjects.length ; ++i ) {
             correctRemotePaths[i] = correctPath( pathsToObjects[i] );
         }
-        
-        NetMeshObject [] ret       = new NetMeshObject[ correctRemotePaths.length ];
-        boolean       [] foundRet  = new boolean[ ret.length ]; // we keep a separate array to keep track of which we found already
-                                                                // (or know to be null for sure, which is the same) and which not
-        boolean       [] sentQuery = new boolean[ ret.length ]; // we keep a separate array to keep track of which we sent a query already
+
+        NetMeshObject [] ret       = state.theResults;
+        boolean       [] foundRet  = state.theFound;
+        boolean       [] sentQuery = state.theSentQuery;
 
         // first check whether we have any of them already
         int stillToGet = ret.length;
@@ -663,140 +941,147 @@ public abstract class AnetMeshBase
                 }
             }
         }
+        state.theStillToGet = stillToGet;
 
-        // return if it looks like we are done
-        if( stillToGet == 0 ) {
-            return ret;
-        }
-
-        // make sure caller has permission
-        if( theAccessManager != null ) {
-            NetAccessManager realAccessManager = (NetAccessManager) theAccessManager;
-            realAccessManager.checkPermittedAccessLocally( this, correctRemotePaths ); // may throw exception
-        }
-
-        // we collect all exceptions here, in the same sequence as the pathsToObjects
-        Throwable []                        causes          = new Throwable[ pathsToObjects.length ];
-        NetMeshObjectAccessSpecification [] redirectedPaths = new NetMeshObjectAccessSpecification[ pathsToObjects.length ];
-        boolean                             hasCause        = false;
-
-        boolean ok;
-        try {
-            theAccessLocallySynchronizer.beginTransaction();
+        return state;
+    }
 
-            // now break down the still remaining objects into chunks, one chunk per
-            // different proxy, and get them until we have everything.
-            long    realTimeout = 0L; //
+    /**
+     * Send the queries for the NetMeshObjects of an accessLocally operation that were not
+     * found locally, one chunk per Proxy. This must be invoked within a transaction
+     * of the AccessLocallySynchronizer.
+     *
+     * @param state the state of the operation
+     * @param timeoutInMillis the timeout parameter for this call, in milli-seconds. -1 means "use default".
+     * @return the timeout to wait for responses, in milli-seconds
+     */
+    protected long sendAccessLocallyQueries(
+            AccessLocallyState state,
+            long               timeoutInMillis )
+    {
+        NetMeshObjectAccessSpecification [] pathsToObjects     = state.thePathsToObjects;
+        NetMeshObjectAccessSpecification [] correctRemotePaths = state.theCorrectRemotePaths;
+        boolean                          [] foundRet           = state.theFound;
+        boolean                          [] sentQuery          = state.theSentQuery;
 
-            int pivotIndex = 0;
-            Proxy [] proxyKeeper = new Proxy[ stillToGet ]; // keep Proxies from being garbage collected while queries are ongoing
-            int proxyKeeperCount = 0;
+        int stillToGet = state.theStillToGet;
 
-            while( stillToGet > 0 ) {
-                // find the first one we have not gotten yet
-                for( ; foundRet[pivotIndex] || sentQuery[pivotIndex] ; ++pivotIndex )
-                {}
+        // now break down the still remaining objects into chunks, one chunk per
+        // different proxy, and get them until we have everything.
+        long    realTimeout = 0L; //
 
-                int runningIndex = pivotIndex;
+        int pivotIndex = 0;
+        Proxy [] proxyKeeper = new Proxy[ stillToGet ]; // keep Proxies from being garbage collected while queries are ongoing
+        int proxyKeeperCount = 0;
 
-                // now find all that have the same first NetMeshBaseIdentifier element
-                NetMeshBaseAccessSpecification pivot     = correctRemotePaths[ runningIndex ].getAccessPath()[0];
-                NetMeshBaseIdentifier          pivotName = pivot.getNetMeshBaseIdentifier();
-                ProxyParameters                pivotPars = ProxyParameters.create( pivot.getCoherenceSpecification());
+        while( stillToGet > 0 ) {
+            // find the first one we have not gotten yet
+            for( ; foundRet[pivotIndex] || sentQuery[pivotIndex] ; ++pivotIndex )
+            {}
 
-                // obtain a new set of object names that we still need to get
-                NetMeshObjectAccessSpecification [] nextObjectPaths = new NetMeshObjectAccessSpecification[ stillToGet ]; // potentially over-allocated
+            int runningIndex = pivotIndex;
 
-                nextObjectPaths[0] = theNetMeshObjectAccessSpecificationFactory.obtain(
-                        ArrayHelper.subarray( correctRemotePaths[ runningIndex ].getAccessPath(), 1, NetMeshBaseAccessSpecification.class ),
-                        correctRemotePaths[ runningIndex ].getNetMeshObjectIdentifier() );
+            // now find all that have the same first NetMeshBaseIdentifier element
+            NetMeshBaseAccessSpecification pivot     = correctRemotePaths[ runningIndex ].getAccessPath()[0];
+            NetMeshBaseIdentifier          pivotName = pivot.getNetMeshBaseIdentifier();
+            ProxyParameters                pivotPars = ProxyParameters.create( pivot.getCoherenceSpecification());
 
-                sentQuery[ runningIndex ] = true;
-                int nextObjectCount = 1;
+            // obtain a new set of object names that we still need to get
+            NetMeshObjectAccessSpecification [] nextObjectPaths = new NetMeshObjectAccessSpecification[ stillToGet ]; // potentially over-allocated
 
-                for( ++runningIndex ; runningIndex < correctRemotePaths.length ; ++runningIndex ) {
-                    if( foundRet[runningIndex] || sentQuery[runningIndex] ) {
-                        continue; // skip
-                    }
-
-                    if( ! pivotName.equals( correctRemotePaths[runningIndex].getAccessPath()[0].getNetMeshBaseIdentifier() )) {
-                        continue; // has different pivot
-                    }
-
-                    nextObjectPaths[ nextObjectCount ] = theNetMeshObjectAccessSpecificationFactory.obtain(
-                            ArrayHelper.subarray( correctRemotePaths[ runningIndex ].getAccessPath(), 1, NetMeshBaseAccessSpecification.class ),
-                            correctRemotePaths[ runningIndex ].getNetMeshObjectIdentifier() );
+            nextObjectPaths[0] = theNetMeshObjectAccessSpecificationFactory.obtain(
+                    ArrayHelper.subarray( correctRemotePaths[ runningIndex ].getAccessPath(), 1, NetMeshBaseAccessSpecification.class ),
+                    correctRemotePaths[ runningIndex ].getNetMeshObjectIdentifier() );
 
-                    sentQuery[ runningIndex ] = true;
+            sentQuery[ runningIndex ] = true;
+            int nextObjectCount = 1;
 
-                    ++nextObjectCount;
+            for( ++runningIndex ; runningIndex < correctRemotePaths.length ; ++runningIndex ) {
+                if( foundRet[runningIndex] || sentQuery[runningIndex] ) {
+                    continue; // skip
                 }
 
-                // we may have over-allocated, so reduce if necessary
-                if( nextObjectCount < nextObjectPaths.length ) {
-                    nextObjectPaths = ArrayHelper.subarray( nextObjectPaths, 0, nextObjectCount, NetMeshObjectAccessSpecification.class );
+                if( ! pivotName.equals( correctRemotePaths[runningIndex].getAccessPath()[0].getNetMeshBaseIdentifier() )) {
+                    continue; // has different pivot
                 }
 
-                Proxy theProxy = null;
-                try {
-                    theProxy = obtainProxyFor( pivotName, pivotPars ); // this triggers the Shadow creation in the right subclasses
-                    if( theProxy != null ) {
-                        long requestedTimeout = theProxy.obtainReplicas( nextObjectPaths, timeoutInMillis ); // FIXME? Should we use a different timeout here?
-                        realTimeout = Math.max( realTimeout, requestedTimeout );
-                    }
+                nextObjectPaths[ nextObjectCount ] = theNetMeshObjectAccessSpecificationFactory.obtain(
+                        ArrayHelper.subarray( correctRemotePaths[ runningIndex ].getAccessPath(), 1, NetMeshBaseAccessSpecification.class ),
+                        correctRemotePaths[ runningIndex ].getNetMeshObjectIdentifier() );
 
-                } catch( FactoryException ex ) {
-                    NetMeshObjectAccessSpecification [] attemptedThisTime = withPrefix( pivot, nextObjectPaths );
+                sentQuery[ runningIndex ] = true;
 
-                    Throwable toAdd = ex.getCause() != null ? ex.getCause() : ex;
-                    NetMeshObjectAccessSpecification redirect;
-                    if( toAdd instanceof NetMeshBaseRedirectException ) {
-                        redirect = theNetMeshObjectAccessSpecificationFactory.obtain( ((NetMeshBaseRedirectException)toAdd).getNewId());
-                    } else {
-                        redirect = null;
-                    }
+                ++nextObjectCount;
+            }
 
-                    for( int i=0 ; i<pathsToObjects.length ; ++i ) {
-                        if( ArrayHelper.isIn( pathsToObjects[i], attemptedThisTime, true )) {
-                            if( causes[i] != null ) {
-                                log.error( "Already have cause", toAdd, causes[i] );
-                            }
-                            causes[i] = toAdd;
-                            hasCause  = true;
+            // we may have over-allocated, so reduce if necessary
+            if( nextObjectCount < nextObjectPaths.length ) {
+                nextObjectPaths = ArrayHelper.subarray( nextObjectPaths, 0, nextObjectCount, NetMeshObjectAccessSpecification.class );
+            }
 
-                            redirectedPaths[i] = redirect;
-                        }
-                    }
+            Proxy theProxy = null;
+            try {
+                theProxy = obtainProxyFor( pivotName, pivotPars ); // this triggers the Shadow creation in the right subclasses
+                if( theProxy != null ) {
+                    long requestedTimeout = theProxy.obtainReplicas( nextObjectPaths, timeoutInMillis ); // FIXME? Should we use a different timeout here?
+                    realTimeout = Math.max( realTimeout, requestedTimeout );
                 }
-                proxyKeeper[ proxyKeeperCount++ ] = theProxy;
-                stillToGet -= nextObjectPaths.length;
-            }
 
-            if( timeoutInMillis > 0 ) { // if something has been specified
-                realTimeout = timeoutInMillis;
-            }
+            } catch( FactoryException ex ) {
+                NetMeshObjectAccessSpecification [] attemptedThisTime = withPrefix( pivot, nextObjectPaths );
 
-            ok = theAccessLocallySynchronizer.join( realTimeout );
+                Throwable toAdd = ex.getCause() != null ? ex.getCause() : ex;
+                NetMeshObjectAccessSpecification redirect;
+                if( toAdd instanceof NetMeshBaseRedirectException ) {
+                    redirect = theNetMeshObjectAccessSpecificationFactory.obtain( ((NetMeshBaseRedirectException)toAdd).getNewId());
+                } else {
+                    redirect = null;
+                }
 
-            if( !ok && !hasCause ) {
-                log.warn( this + ".accessLocally() timed out trying to reach " + ArrayHelper.arrayToString( pathsToObjects ) + ", timeout: " + realTimeout );
-            }
+                for( int i=0 ; i<pathsToObjects.length ; ++i ) {
+                    if( ArrayHelper.isIn( pathsToObjects[i], attemptedThisTime, true )) {
+                        if( state.theCauses[i] != null ) {
+                            log.error( "Already have cause", toAdd, state.theCauses[i] );
+                        }
+                        state.theCauses[i] = toAdd;
+                        state.theHasCause  = true;
 
-            if( realTimeout < 0L ) {
-                ok = true;
+                        state.theRedirectedPaths[i] = redirect;
+                    }
+                }
             }
-            theAccessLocallySynchronizer.endTransaction();
-
-        } catch( ReturnSynchronizerException ex ) {
-            log.error( ex );
-            ok = false;
+            proxyKeeper[ proxyKeeperCount++ ] = theProxy;
+            stillToGet -= nextObjectPaths.length;
+        }
+        state.theProxies = proxyKeeper;
 
-        } catch( InterruptedException ex ) {
-            log.error( ex );
-            ok = false;
+        if( timeoutInMillis > 0 ) { // if something has been specified
+            realTimeout = timeoutInMillis;
         }
+        return realTimeout;
+    }
+
+    /**
+     * Collect the results of an accessLocally operation once all queries have returned,
+     * or the operation timed out.
+     *
+     * @param state the state of the operation
+     * @param ok if true, all queries returned
+     * @return the locally replicated NetMeshObjects, or null if not found
+     * @throws NetMeshObjectAccessException thrown if something went wrong attempting to access the NetMeshObject
+     */
+    protected NetMeshObject [] collectAccessLocallyResults(
+            AccessLocallyState state,
+            boolean            ok )
+        throws
+            NetMeshObjectAccessException
+    {
+        NetMeshObjectAccessSpecification [] pathsToObjects     = state.thePathsToObjects;
+        NetMeshObjectAccessSpecification [] correctRemotePaths = state.theCorrectRemotePaths;
+        NetMeshObject                    [] ret                = state.theResults;
+        boolean                          [] foundRet           = state.theFound;
 
-        if( hasCause ) {
+        if( state.theHasCause ) {
             ok = false;
         }
 
@@ -825,13 +1110,13 @@ public abstract class AnetMeshBase
         } else if( allFound ) { // we timed out, but we have the answer anyway
             return ret;
 
-        } else if( !hasCause ) { // we timed out, but have a partial result, future results still incoming
+        } else if( !state.theHasCause ) { // we timed out, but have a partial result, future results still incoming
             throw new NetMeshObjectAccessException(
                     this,
                     pathsToObjects,
                     ret,
-                    redirectedPaths,
-                    causes,
+                    state.theRedirectedPaths,
+                    state.theCauses,
                     new RemoteQueryTimeoutException.QueryIsOngoing( this, someFound, ret ));
 
         } else {
@@ -839,8 +1124,8 @@ public abstract class AnetMeshBase
                     this,
                     pathsToObjects,
                     ret,
-                    redirectedPaths,
-                    causes );
+                    state.theRedirectedPaths,
+                    state.theCauses );
         }
     }
     
@@ -1092,6 +1377,56 @@ public abstract class AnetMeshBase
         return theAccessLocallySynchronizer;
     }
 
+    /**
+     * Set the ScheduledExecutorService on which asynchronous accessLocally operations
+     * complete and time out. If not set, a shared default is used.
+     *
+     * @param newValue the new value
+     */
+    public void setAccessLocallyExecutor(
+            ScheduledExecutorService newValue )
+    {
+        theAccessLocallyExecutor = newValue;
+    }
+
+    /**
+     * Obtain the ScheduledExecutorService on which asynchronous accessLocally operations
+     * complete and time out.
+     *
+     * @return the ScheduledExecutorService
+     */
+    public ScheduledExecutorService getAccessLocallyExecutor()
+    {
+        ScheduledExecutorService ret = theAccessLocallyExecutor;
+        if( ret == null ) {
+            ret = getDefaultAccessLocallyExecutor();
+        }
+        return ret;
+    }
+
+    /**
+     * Obtain the ScheduledExecutorService shared by all AnetMeshBases that have not been given their own.
+     *
+     * @return the ScheduledExecutorService
+     */
+    protected static synchronized ScheduledExecutorService getDefaultAccessLocallyExecutor()
+    {
+        if( theDefaultAccessLocallyExecutor == null ) {
+            NamedThreadFactory factory = new NamedThreadFactory( AnetMeshBase.class.getName() + "-accessLocallyAsync" );
+
+            ScheduledThreadPoolExecutor exec = new ScheduledThreadPoolExecutor(
+                    theResourceHelper.getResourceIntegerOrDefault( "AccessLocallyAsyncThreads", 1 ),
+                    ( Runnable r ) -> {
+                        Thread ret = factory.newThread( r );
+                        ret.setDaemon( true ); // must not keep the VM from exiting
+                        return ret;
+                    } );
+            exec.setRemoveOnCancelPolicy( true ); // most deadlines are cancelled because the responses arrived
+            theDefaultAccessLocallyExecutor = exec;
+        }
+        return theDefaultAccessLocallyExecutor;
+    }
+
     /**
      * <p>Attempt to update the set of NetMeshObjects to their most current state. Usually, InfoGrid manages
      * this automatically and on its own schedule. However, under some circumstances the user may
@@ -1380,4 +1715,90 @@ public abstract class AnetMeshBase
     static final boolean ALLOW_NON_LOCAL_MESHOBJECT_CREATION = theResourceHelper.getResourceBooleanOrDefault(
             "AllowNonLocalMeshObjectCreation",
             false );
+
+    /**
+     * The ScheduledExecutorService on which asynchronous accessLocally operations complete and
+     * time out. If null, the shared default is used.
+     */
+    protected ScheduledExecutorService theAccessLocallyExecutor;
+
+    /**
+     * The ScheduledExecutorService shared by all AnetMeshBases that have not been given their own.
+     * Allocated when first needed.
+     */
+    private static ScheduledExecutorService theDefaultAccessLocallyExecutor;
+
+    /**
+     * Collects the state of an ongoing accessLocally operation, so it can be completed
+     * by a different Thread than the one that started it.
+     */
+    protected static class AccessLocallyState
+    {
+        /**
+         * Constructor.
+         *
+         * @param pathsToObjects the NetMeshObjectAccessSpecifications as given by the caller
+         */
+        protected AccessLocallyState(
+                NetMeshObjectAccessSpecification [] pathsToObjects )
+        {
+            thePathsToObjects     = pathsToObjects;
+            theCorrectRemotePaths = new NetMeshObjectAccessSpecification[ pathsToObjects.length ];
+            theResults            = new NetMeshObject[ pathsToObjects.length ];
+            theFound              = new boolean[ pathsToObjects.length ];
+            theSentQuery          = new boolean[ pathsToObjects.length ];
+            theCauses             = new Throwable[ pathsToObjects.length ];
+            theRedirectedPaths    = new NetMeshObjectAccessSpecification[ pathsToObjects.length ];
+        }
+
+        /**
+         * The NetMeshObjectAccessSpecifications as given by the caller.
+         */
+        protected NetMeshObjectAccessSpecification [] thePathsToObjects;
+
+        /**
+         * The NetMeshObjectAccessSpecifications, stripped of cyclical and non-sensical items.
+         */
+        protected NetMeshObjectAccessSpecification [] theCorrectRemotePaths;
+
+        /**
+         * The results, in the same sequence as thePathsToObjects.
+         */
+        protected NetMeshObject [] theResults;
+
+        /**
+         * Keeps track of which we found already (or know to be null for sure, which is the same) and which not.
+         */
+        protected boolean [] theFound;
+
+        /**
+         * Keeps track of which we sent a query for already.
+         */
+        protected boolean [] theSentQuery;
+
+        /**
+         * The number of NetMeshObjects that were not found locally.
+         */
+        protected int theStillToGet;
+
+        /**
+         * The exceptions that occurred, in the same sequence as thePathsToObjects.
+         */
+        protected Throwable [] theCauses;
+
+        /**
+         * The paths to which we were redirected, in the same sequence as thePathsToObjects.
+         */
+        protected NetMeshObjectAccessSpecification [] theRedirectedPaths;
+
+        /**
+         * True if at least one exception occurred.
+         */
+        protected boolean theHasCause;
+
+        /**
+         * Keeps Proxies from being garbage collected while queries are ongoing.
+         */
+        protected Proxy [] theProxies;
+    }
 }
@@ -20,6 +20,7 @@ import org.infogrid.meshbase.net.NetMeshBase;
 import org.infogrid.meshbase.net.NetMeshBaseIdentifier;
 import org.infogrid.meshbase.net.NetMeshBaseNameServer;
 import org.infogrid.meshbase.net.xpriso.XprisoMessage;
+import org.infogrid.meshbase.net.xpriso.XprisoMessageHelper;
 import org.infogrid.meshbase.net.proxy.ProxyMessageEndpoint;
 import org.infogrid.meshbase.net.proxy.ProxyMessageEndpointFactory;
 import org.infogrid.util.AbstractFactory;
@@ -130,6 +131,51 @@ public class MPingPongNetMessageEndpointFactory
         theNameServer = nameServer;
     }
 
+    /**
+     * Determine whether the created ProxyMessageEndpoints shall coalesce XprisoMessages
+     * that are waiting to be sent into a single XprisoMessage.
+     *
+     * @param newValue if true, coalesce
+     */
+    public void setCoalesceMessages(
+            boolean newValue )
+    {
+        theCoalesceMessages = newValue;
+    }
+
+    /**
+     * Determine whether the created ProxyMessageEndpoints coalesce XprisoMessages.
+     *
+     * @return true if they coalesce
+     */
+    public boolean getCoalesceMessages()
+    {
+        return theCoalesceMessages;
+    }
+
+    /**
+     * Set the number of queued XprisoMessages at which the created ProxyMessageEndpoints
+     * send without waiting for their regular response time. 0 disables the threshold.
+     *
+     * @param newValue the new value
+     */
+    public void setSendThreshold(
+            int newValue )
+    {
+        theSendThreshold = newValue;
+    }
+
+    /**
+     * Obtain the number of queued XprisoMessages at which the created ProxyMessageEndpoints
+     * send without waiting for their regular response time.
+     *
+     * @return the threshold, or 0 if disabled
+     */
+    public int getSendThreshold()
+    {
+        return theSendThreshold;
+    }
+
     /**
      * Factory method.
      *
@@ -156,6 +202,11 @@ public class MPingPongNetMessageEndpointFactory
                 theRandomVariation,
                 theExecService );
 
+        if( theCoalesceMessages ) {
+            ret.setMessageCoalescer( XprisoMessageHelper::consolidate );
+        }
+        ret.setSendThreshold( theSendThreshold );
+
         return ret;
     }
     
@@ -190,6 +241,11 @@ public class MPingPongNetMessageEndpointFactory
                 lastMessagesSent,
                 messagesToBeSent );
 
+        if( theCoalesceMessages ) {
+            ret.setMessageCoalescer( XprisoMessageHelper::consolidate );
+        }
+        ret.setSendThreshold( theSendThreshold );
+
         return ret;
     }
     
@@ -232,4 +288,14 @@ public class MPingPongNetMessageEndpointFactory
      * Random variation, as percentage, of the respond and recover times.
      */
     protected double theRandomVariation;
+
+    /**
+     * If true, the created ProxyMessageEndpoints coalesce queued XprisoMessages.
+     */
+    protected boolean theCoalesceMessages = theResourceHelper.getResourceBooleanOrDefault( "CoalesceMessages", false );
+
+    /**
+     * Number of queued XprisoMessages at which the created ProxyMessageEndpoints send right away.
+     */
+    protected int theSendThreshold = theResourceHelper.getResourceIntegerOrDefault( "SendThreshold", 0 );
 }
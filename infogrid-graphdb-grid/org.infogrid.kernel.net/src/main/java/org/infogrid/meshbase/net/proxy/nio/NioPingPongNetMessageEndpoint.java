@@ -0,0 +1,309 @@
+//
+// This file is part of InfoGrid(tm). You may not use this file except in
+// compliance with the InfoGrid license. The InfoGrid license and important
+// disclaimers are contained in the file LICENSE.InfoGrid.txt that you should
+// have received with InfoGrid. If you have not received LICENSE.InfoGrid.txt
+// or you do not consent to all aspects of the license and the disclaimers,
+// no license is granted; do not use this file.
+// 
+// For more information about InfoGrid go to http://infogrid.org/
+//
+// Copyright 1998-2015 by Johannes Ernst
+// All rights reserved.
+//
+
+package org.infogrid.meshbase.net.proxy.nio;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import org.infogrid.comm.MessageEndpointIsDeadException;
+import org.infogrid.comm.MessageSendException;
+import org.infogrid.comm.pingpong.m.MPingPongMessageEndpoint;
+import org.infogrid.meshbase.net.NetMeshBaseIdentifier;
+import org.infogrid.meshbase.net.proxy.ProxyMessageEndpoint;
+import org.infogrid.meshbase.net.xpriso.XprisoMessage;
+import org.infogrid.util.logging.Log;
+
+/**
+ * Subclass of MPingPongMessageEndpoint to be used for Proxy communication that
+ * does not persist its own data and communicates via the ping-pong protocol with
+ * a partner NetMeshBase in another process, through a NioPingPongNetMessageTransport.
+ */
+public class NioPingPongNetMessageEndpoint
+        extends
+            MPingPongMessageEndpoint<XprisoMessage>
+        implements
+            ProxyMessageEndpoint
+{
+    private static final Log log = Log.getLogInstance( NioPingPongNetMessageEndpoint.class ); // our own, private logger
+
+    /**
+     * Factory method.
+     *
+     * @param name the name of the PingPongMessageEndpoint (for debugging only)
+     * @param partnerIdentifier identifier of the partner NetMeshBase
+     * @param myIdentifier identifier of the NetMeshBase on whose behalf this endpoint communicates
+     * @param transport the transport through which to communicate with the partner NetMeshBase
+     * @param deltaRespondNoMessage the number of milliseconds until this PingPongMessageEndpoint returns the token if no message is in the queue
+     * @param deltaRespondWithMessage the number of milliseconds until this PingPongMessageEndpoint returns the token if a message is in the queue
+     * @param deltaResend  the number of milliseconds until this PingPongMessageEndpoint resends the token if sending the token failed
+     * @param deltaRecover the number of milliseconds until this PingPongMessageEndpoint decides that the token
+     *                     was not received by the partner PingPongMessageEndpoint, and resends
+     * @param randomVariation the random component to add to the various times
+     * @param exec the ScheduledExecutorService to schedule timed tasks
+     * @return the created NioPingPongNetMessageEndpoint
+     */
+    public static NioPingPongNetMessageEndpoint create(
+            String                         name,
+            NetMeshBaseIdentifier          partnerIdentifier,
+            NetMeshBaseIdentifier          myIdentifier,
+            NioPingPongNetMessageTransport transport,
+            long                           deltaRespondNoMessage,
+            long                           deltaRespondWithMessage,
+            long                           deltaResend,
+            long                           deltaRecover,
+            double                         randomVariation,
+            ScheduledExecutorService       exec )
+    {
+        NioPingPongNetMessageEndpoint ret = new NioPingPongNetMessageEndpoint(
+                name,
+                partnerIdentifier,
+                myIdentifier,
+                transport,
+                deltaRespondNoMessage,
+                deltaRespondWithMessage,
+                deltaResend,
+                deltaRecover,
+                randomVariation,
+                exec,
+                -1,
+                -1,
+                null,
+                new ArrayList<XprisoMessage>() );
+
+        if( log.isTraceEnabled() ) {
+            log.traceMethodCallEntry( NioPingPongNetMessageEndpoint.class, "create" );
+        }
+        return ret;
+    }
+
+    /**
+     * Factory method.
+     *
+     * @param name the name of the PingPongMessageEndpoint (for debugging only)
+     * @param partnerIdentifier identifier of the partner NetMeshBase
+     * @param myIdentifier identifier of the NetMeshBase on whose behalf this endpoint communicates
+     * @param transport the transport through which to communicate with the partner NetMeshBase
+     * @param deltaRespondNoMessage the number of milliseconds until this PingPongMessageEndpoint returns the token if no message is in the queue
+     * @param deltaRespondWithMessage the number of milliseconds until this PingPongMessageEndpoint returns the token if a message is in the queue
+     * @param deltaResend  the number of milliseconds until this PingPongMessageEndpoint resends the token if sending the token failed
+     * @param deltaRecover the number of milliseconds until this PingPongMessageEndpoint decides that the token
+     *                     was not received by the partner PingPongMessageEndpoint, and resends
+     * @param randomVariation the random component to add to the various times
+     * @param exec the ScheduledExecutorService to schedule timed tasks
+     * @param lastSentToken the last token sent in a previous instantiation of this MessageEndpoint
+     * @param lastReceivedToken the last token received in a previous instantiation of this MessageEndpoint
+     * @param messagesSentLast the last set of Messages sent in a previous instantiation of this MessageEndpoint
+     * @param messagesToBeSent outgoing message queue (may or may not be empty)
+     * @return the created NioPingPongNetMessageEndpoint
+     */
+    public static NioPingPongNetMessageEndpoint restore(
+            String                         name,
+            NetMeshBaseIdentifier          partnerIdentifier,
+            NetMeshBaseIdentifier          myIdentifier,
+            NioPingPongNetMessageTransport transport,
+            long                           deltaRespondNoMessage,
+            long                           deltaRespondWithMessage,
+            long                           deltaResend,
+            long                           deltaRecover,
+            double                         randomVariation,
+            ScheduledExecutorService       exec,
+            long                           lastSentToken,
+            long                           lastReceivedToken,
+            List<XprisoMessage>            messagesSentLast,
+            List<XprisoMessage>            messagesToBeSent )
+    {
+        NioPingPongNetMessageEndpoint ret = new NioPingPongNetMessageEndpoint(
+                name,
+                partnerIdentifier,
+                myIdentifier,
+                transport,
+                deltaRespondNoMessage,
+                deltaRespondWithMessage,
+                deltaResend,
+                deltaRecover,
+                randomVariation,
+                exec,
+                lastSentToken,
+                lastReceivedToken,
+                messagesSentLast,
+                messagesToBeSent );
+
+        if( log.isTraceEnabled() ) {
+            log.traceMethodCallEntry( NioPingPongNetMessageEndpoint.class, "restore" );
+        }
+        return ret;
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param name the name of the PingPongMessageEndpoint (for debugging only)
+     * @param partnerIdentifier identifier of the partner NetMeshBase
+     * @param myIdentifier identifier of the NetMeshBase on whose behalf this endpoint communicates
+     * @param transport the transport through which to communicate with the partner NetMeshBase
+     * @param deltaRespondNoMessage the number of milliseconds until this PingPongMessageEndpoint returns the token if no message is in the queue
+     * @param deltaRespondWithMessage the number of milliseconds until this PingPongMessageEndpoint returns the token if a message is in the queue
+     * @param deltaResend  the number of milliseconds until this PingPongMessageEndpoint resends the token if sending the token failed
+     * @param deltaRecover the number of milliseconds until this PingPongMessageEndpoint decides that the token
+     *                     was not received by the partner PingPongMessageEndpoint, and resends
+     * @param randomVariation the random component to add to the various times
+     * @param exec the ScheduledExecutorService to schedule timed tasks
+     * @param lastSentToken the last token sent in a previous instantiation of this MessageEndpoint
+     * @param lastReceivedToken the last token received in a previous instantiation of this MessageEndpoint
+     * @param messagesSentLast the last set of Messages sent in a previous instantiation of this MessageEndpoint
+     * @param messagesToBeSent outgoing message queue (may or may not be empty)
+     */
+    protected NioPingPongNetMessageEndpoint(
+            String                         name,
+            NetMeshBaseIdentifier          partnerIdentifier,
+            NetMeshBaseIdentifier          myIdentifier,
+            NioPingPongNetMessageTransport transport,
+            long                           deltaRespondNoMessage,
+            long                           deltaRespondWithMessage,
+            long                           deltaResend,
+            long                           deltaRecover,
+            double                         randomVariation,
+            ScheduledExecutorService       exec,
+            long                           lastSentToken,
+            long                           lastReceivedToken,
+            List<XprisoMessage>            messagesSentLast,
+            List<XprisoMessage>            messagesToBeSent )
+    {
+        super(  name,
+                deltaRespondNoMessage,
+                deltaRespondWithMessage,
+                deltaResend,
+                deltaRecover,
+                randomVariation,
+                exec,
+                lastSentToken,
+                lastReceivedToken,
+                messagesSentLast,
+                messagesToBeSent );
+
+        if( partnerIdentifier.equals( myIdentifier )) {
+            throw new IllegalArgumentException( "Cannot talk to myself: " + myIdentifier.toExternalForm() );
+        }
+
+        thePartnerIdentifier = partnerIdentifier;
+        theMyIdentifier      = myIdentifier;
+        theTransport         = transport;
+    }
+
+    /**
+     * Determine the NetMeshBaseIdentifier of the partner MeshBase.
+     *
+     * @return the NetMeshBaseIdentifier of the partner MeshBase
+     */
+    public NetMeshBaseIdentifier getNetworkIdentifierOfPartner()
+    {
+        return thePartnerIdentifier;
+    }
+
+    /**
+     * Do the message send.
+     *
+     * @param token the token of the message
+     * @param content the content to send.
+     * @throws MessageSendException thrown if the message could not be sent
+     */
+    @Override
+    protected void sendMessage(
+            long                           token,
+            List<XprisoMessage> content )
+        throws
+            MessageSendException
+    {
+        if( content != null && !content.isEmpty() && log.isInfoEnabled() ) {
+            log.info( this, "sendMessage", token, content );
+        } else if( log.isTraceEnabled() ) {
+            log.traceMethodCallEntry( this, "sendMessage", token, content );
+        }
+
+        theTransport.sendMessage( theMyIdentifier, thePartnerIdentifier, token, content );
+    }
+
+    /**
+     * Send a message to the partner indicating that we'd like to have the token back as quickly as possible.
+     */
+    @Override
+    protected void sendGrabTokenMessage()
+    {
+        theTransport.sendGrabTokenMessage( theMyIdentifier, thePartnerIdentifier );
+    }
+
+    /**
+     * Invoked by the transport when a message from the partner has arrived.
+     *
+     * @param token the token of the message
+     * @param content the content of the message, if any
+     * @throws MessageEndpointIsDeadException thrown if the MessageEndpoint is dead
+     * @throws MessageSendException thrown if the message could not be sent
+     */
+    protected void messageReceived(
+            long                           token,
+            List<XprisoMessage> content )
+        throws
+            MessageEndpointIsDeadException,
+            MessageSendException
+    {
+        incomingMessage( token, content );
+    }
+
+    /**
+     * Invoked by the transport when the partner would like to have the token back as quickly as possible.
+     */
+    protected void grabTokenMessageReceived()
+    {
+        TimedTask t = theFutureTask;
+        if( t instanceof RespondTask ) {
+            t.cancel();
+            schedule( t, theDeltaRespondWithMessage );
+        }
+    }
+
+    /**
+     * Convert to String, for debugging only.
+     *
+     * @return String representation
+     */
+    @Override
+    public String toString()
+    {
+        StringBuilder buf = new StringBuilder();
+        buf.append( super.toString() );
+        buf.append( "{ " );
+        buf.append( theMyIdentifier.toExternalForm() );
+        buf.append( " -> " );
+        buf.append( thePartnerIdentifier.toExternalForm() );
+        buf.append( " }" );
+        return buf.toString();
+    }
+
+    /**
+     * Identifier of the local MeshBase.
+     */
+    protected NetMeshBaseIdentifier theMyIdentifier;
+
+    /**
+     * Identifier of the partner MeshBase.
+     */
+    protected NetMeshBaseIdentifier thePartnerIdentifier;
+
+    /**
+     * The transport through which we communicate with the partner MeshBase.
+     */
+    protected NioPingPongNetMessageTransport theTransport;
+}
@@ -0,0 +1,306 @@
+//
+// This file is part of InfoGrid(tm). You may not use this file except in
+// compliance with the InfoGrid license. The InfoGrid license and important
+// disclaimers are contained in the file LICENSE.InfoGrid.txt that you should
+// have received with InfoGrid. If you have not received LICENSE.InfoGrid.txt
+// or you do not consent to all aspects of the license and the disclaimers,
+// no license is granted; do not use this file.
+// 
+// For more information about InfoGrid go to http://infogrid.org/
+//
+// Copyright 1998-2015 by Johannes Ernst
+// All rights reserved.
+//
+
+package org.infogrid.meshbase.net.proxy.nio;
+
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import org.infogrid.meshbase.net.NetMeshBaseIdentifier;
+import org.infogrid.meshbase.net.proxy.ProxyMessageEndpoint;
+import org.infogrid.meshbase.net.proxy.ProxyMessageEndpointFactory;
+import org.infogrid.meshbase.net.xpriso.XprisoMessage;
+import org.infogrid.meshbase.net.xpriso.XprisoMessageHelper;
+import org.infogrid.util.AbstractFactory;
+import org.infogrid.util.FactoryException;
+import org.infogrid.util.ResourceHelper;
+
+/**
+ * Manufactures MessageEndpoints that communicate via the ping-pong protocol with
+ * NetMeshBases in other processes, through a NioPingPongNetMessageTransport.
+ */
+public class NioPingPongNetMessageEndpointFactory
+        extends
+            AbstractFactory<NetMeshBaseIdentifier,ProxyMessageEndpoint,NetMeshBaseIdentifier>
+        implements
+            ProxyMessageEndpointFactory
+{
+    /**
+     * Factory method.
+     *
+     * @param transport the NioPingPongNetMessageTransport to use
+     * @param exec the ScheduledExecutorService to schedule communication-related events
+     * @return the created NioPingPongNetMessageEndpointFactory
+     */
+    public static NioPingPongNetMessageEndpointFactory create(
+            NioPingPongNetMessageTransport transport,
+            ScheduledExecutorService       exec )
+    {
+        long   deltaRespondNoMessage   = theResourceHelper.getResourceLongOrDefault(   "DeltaRespondNoMessage",   60L * 1000L ); // 1 minute
+        long   deltaRespondWithMessage = theResourceHelper.getResourceLongOrDefault(   "DeltaRespondWithMessage", 10L ); // quickly but still deterministic
+        long   deltaResend             = theResourceHelper.getResourceLongOrDefault(   "DeltaResend",             500L );
+        long   deltaRecover            = theResourceHelper.getResourceLongOrDefault(   "DeltaRecover",            deltaRespondNoMessage * 5L ); // 5 times longer
+        double randomVariation         = theResourceHelper.getResourceDoubleOrDefault( "RandomVariation",         0.02 ); // 2%
+
+        return new NioPingPongNetMessageEndpointFactory(
+                transport,
+                deltaRespondNoMessage,
+                deltaRespondWithMessage,
+                deltaResend,
+                deltaRecover,
+                randomVariation,
+                exec );
+    }
+
+    /**
+     * Factory method.
+     *
+     * @param transport the NioPingPongNetMessageTransport to use
+     * @param deltaRespondNoMessage the number of milliseconds until this PingPongMessageEndpoint returns the token if no message is in the queue
+     * @param deltaRespondWithMessage the number of milliseconds until this PingPongMessageEndpoint returns the token if a message is in the queue
+     * @param deltaResend  the number of milliseconds until this PingPongMessageEndpoint resends the token if sending the token failed
+     * @param deltaRecover the number of milliseconds until this PingPongMessageEndpoint decides that the token
+     *                     was not received by the partner PingPongMessageEndpoint, and resends
+     * @param randomVariation the random component to add to the various times
+     * @param exec the ScheduledExecutorService to schedule communication-related events
+     * @return the created NioPingPongNetMessageEndpointFactory
+     */
+    public static NioPingPongNetMessageEndpointFactory create(
+            NioPingPongNetMessageTransport transport,
+            long                           deltaRespondNoMessage,
+            long                           deltaRespondWithMessage,
+            long                           deltaResend,
+            long                           deltaRecover,
+            double                         randomVariation,
+            ScheduledExecutorService       exec )
+    {
+        return new NioPingPongNetMessageEndpointFactory(
+                transport,
+                deltaRespondNoMessage,
+                deltaRespondWithMessage,
+                deltaResend,
+                deltaRecover,
+                randomVariation,
+                exec );
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param transport the NioPingPongNetMessageTransport to use
+     * @param deltaRespondNoMessage the number of milliseconds until this PingPongMessageEndpoint returns the token if no message is in the queue
+     * @param deltaRespondWithMessage the number of milliseconds until this PingPongMessageEndpoint returns the token if a message is in the queue
+     * @param deltaResend  the number of milliseconds until this PingPongMessageEndpoint resends the token if sending the token failed
+     * @param deltaRecover the number of milliseconds until this PingPongMessageEndpoint decides that the token
+     *                     was not received by the partner PingPongMessageEndpoint, and resends
+     * @param randomVariation the random component to add to the various times
+     * @param exec the ScheduledExecutorService to schedule communication-related events
+     */
+    protected NioPingPongNetMessageEndpointFactory(
+            NioPingPongNetMessageTransport transport,
+            long                           deltaRespondNoMessage,
+            long                           deltaRespondWithMessage,
+            long                           deltaResend,
+            long                           deltaRecover,
+            double                         randomVariation,
+            ScheduledExecutorService       exec )
+    {
+        theTransport = transport;
+
+        theDeltaRespondNoMessage   = deltaRespondNoMessage;
+        theDeltaRespondWithMessage = deltaRespondWithMessage;
+        theDeltaResend             = deltaResend;
+        theDeltaRecover            = deltaRecover;
+        theRandomVariation         = randomVariation;
+
+        theExecService = exec;
+    }
+
+    /**
+     * Obtain the NioPingPongNetMessageTransport used by the created MessageEndpoints.
+     *
+     * @return the NioPingPongNetMessageTransport
+     */
+    public NioPingPongNetMessageTransport getTransport()
+    {
+        return theTransport;
+    }
+
+    /**
+     * Determine whether the created ProxyMessageEndpoints shall coalesce XprisoMessages
+     * that are waiting to be sent into a single XprisoMessage.
+     *
+     * @param newValue if true, coalesce
+     */
+    public void setCoalesceMessages(
+            boolean newValue )
+    {
+        theCoalesceMessages = newValue;
+    }
+
+    /**
+     * Determine whether the created ProxyMessageEndpoints coalesce XprisoMessages.
+     *
+     * @return true if they coalesce
+     */
+    public boolean getCoalesceMessages()
+    {
+        return theCoalesceMessages;
+    }
+
+    /**
+     * Set the number of queued XprisoMessages at which the created ProxyMessageEndpoints
+     * send without waiting for their regular response time. 0 disables the threshold.
+     *
+     * @param newValue the new value
+     */
+    public void setSendThreshold(
+            int newValue )
+    {
+        theSendThreshold = newValue;
+    }
+
+    /**
+     * Obtain the number of queued XprisoMessages at which the created ProxyMessageEndpoints
+     * send without waiting for their regular response time.
+     *
+     * @return the threshold, or 0 if disabled
+     */
+    public int getSendThreshold()
+    {
+        return theSendThreshold;
+    }
+
+    /**
+     * Factory method.
+     *
+     * @param partnerIdentifier the key information required for object creation
+     * @param myIdentifier any argument-style information required for object creation
+     * @return the created object
+     * @throws FactoryException catch-all Exception, consider its cause
+     */
+    public NioPingPongNetMessageEndpoint obtainFor(
+            NetMeshBaseIdentifier partnerIdentifier,
+            NetMeshBaseIdentifier myIdentifier )
+        throws
+            FactoryException
+    {
+        NioPingPongNetMessageEndpoint ret = NioPingPongNetMessageEndpoint.create(
+                "Endpoint " + myIdentifier.toExternalForm() + " -> " + partnerIdentifier.toExternalForm(),
+                partnerIdentifier,
+                myIdentifier,
+                theTransport,
+                theDeltaRespondNoMessage,
+                theDeltaRespondWithMessage,
+                theDeltaResend,
+                theDeltaRecover,
+                theRandomVariation,
+                theExecService );
+
+        if( theCoalesceMessages ) {
+            ret.setMessageCoalescer( XprisoMessageHelper::consolidate );
+        }
+        ret.setSendThreshold( theSendThreshold );
+
+        return ret;
+    }
+
+    /**
+     * Restore a ProxyMessageEndpoint from storage.
+     *
+     * @throws FactoryException catch-all Exception, consider its cause
+     */
+    public ProxyMessageEndpoint restoreNetMessageEndpoint(
+            NetMeshBaseIdentifier partnerIdentifier,
+            NetMeshBaseIdentifier myIdentifier,
+            long                  lastTokenSent,
+            long                  lastTokenReceived,
+            List<XprisoMessage>   lastMessagesSent,
+            List<XprisoMessage>   messagesToBeSent )
+        throws
+            FactoryException
+    {
+        NioPingPongNetMessageEndpoint ret = NioPingPongNetMessageEndpoint.restore(
+                "Endpoint " + myIdentifier.toExternalForm() + " -> " + partnerIdentifier.toExternalForm(),
+                partnerIdentifier,
+                myIdentifier,
+                theTransport,
+                theDeltaRespondNoMessage,
+                theDeltaRespondWithMessage,
+                theDeltaResend,
+                theDeltaRecover,
+                theRandomVariation,
+                theExecService,
+                lastTokenSent,
+                lastTokenReceived,
+                lastMessagesSent,
+                messagesToBeSent );
+
+        if( theCoalesceMessages ) {
+            ret.setMessageCoalescer( XprisoMessageHelper::consolidate );
+        }
+        ret.setSendThreshold( theSendThreshold );
+
+        return ret;
+    }
+
+    /**
+     * The transport through which the created MessageEndpoints communicate.
+     */
+    protected NioPingPongNetMessageTransport theTransport;
+
+    /**
+     * The ScheduledExecutorService to use.
+     */
+    protected ScheduledExecutorService theExecService;
+
+    /**
+     * Our ResourceHelper.
+     */
+    protected static final ResourceHelper theResourceHelper = ResourceHelper.getInstance( NioPingPongNetMessageEndpointFactory.class );
+
+    /**
+     * Milliseconds from ping to pong if no message is in the queue.
+     */
+    protected long theDeltaRespondNoMessage;
+
+    /**
+     * Milliseconds from ping to pong if a message is in the queue.
+     */
+    protected long theDeltaRespondWithMessage;
+
+    /**
+     * Millisecond until we attempt to resend failed messages.
+     */
+    protected long theDeltaResend;
+
+    /**
+     * Millisecond until we attempt to recover.
+     */
+    protected long theDeltaRecover;
+
+    /**
+     * Random variation, as percentage, of the respond and recover times.
+     */
+    protected double theRandomVariation;
+
+    /**
+     * If true, the created ProxyMessageEndpoints coalesce queued XprisoMessages.
+     */
+    protected boolean theCoalesceMessages = theResourceHelper.getResourceBooleanOrDefault( "CoalesceMessages", false );
+
+    /**
+     * Number of queued XprisoMessages at which the created ProxyMessageEndpoints send right away.
+     */
+    protected int theSendThreshold = theResourceHelper.getResourceIntegerOrDefault( "SendThreshold", 0 );
+}
@@ -0,0 +1,1436 @@
+//
+// This file is part of InfoGrid(tm). You may not use this file except in
+// compliance with the InfoGrid license. The InfoGrid license and important
+// disclaimers are contained in the file LICENSE.InfoGrid.txt that you should
+// have received with InfoGrid. If you have not received LICENSE.InfoGrid.txt
+// or you do not consent to all aspects of the license and the disclaimers,
+// no license is granted; do not use this file.
+// 
+// For more information about InfoGrid go to http://infogrid.org/
+//
+// Copyright 1998-2015 by Johannes Ernst
+// All rights reserved.
+//
+
+package org.infogrid.meshbase.net.proxy.nio;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.text.ParseException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.infogrid.comm.MessageEndpointIsDeadException;
+import org.infogrid.comm.MessageSendException;
+import org.infogrid.meshbase.net.NetMeshBase;
+import org.infogrid.meshbase.net.NetMeshBaseIdentifier;
+import org.infogrid.meshbase.net.NetMeshBaseIdentifierFactory;
+import org.infogrid.meshbase.net.proxy.Proxy;
+import org.infogrid.meshbase.net.proxy.ProxyMessageEndpoint;
+import org.infogrid.meshbase.net.xpriso.XprisoMessage;
+import org.infogrid.meshbase.net.xpriso.binary.XprisoMessageBinaryEncoder;
+import org.infogrid.meshbase.net.xpriso.xml.XprisoMessageXmlEncoder;
+import org.infogrid.model.primitives.externalized.DecodingException;
+import org.infogrid.model.primitives.externalized.EncodingException;
+import org.infogrid.util.FactoryException;
+import org.infogrid.util.NameServer;
+import org.infogrid.util.ResourceHelper;
+import org.infogrid.util.logging.CanBeDumped;
+import org.infogrid.util.logging.Dumper;
+import org.infogrid.util.logging.Log;
+
+/**
+ * <p>Carries the ping-pong messages of NioPingPongNetMessageEndpoints between processes, using
+ *    non-blocking sockets served by a single selector Thread.</p>
+ * <p>Each frame on the wire is prefixed by its length, and carries the identifiers of the sending
+ *    and the receiving NetMeshBase, so the Proxies of many pairs of NetMeshBases can share one socket.
+ *    There is at most one socket per partner address; a socket accepted from a partner is reused
+ *    to talk back to it.</p>
+ * <p>Back-pressure: if too many bytes are waiting to be written to a socket, sending fails with a
+ *    MessageSendException and the ping-pong protocol resends later. If too many received frames are
+ *    waiting to be delivered, the socket is not read until they have been delivered, which slows
+ *    down the sender.</p>
+ * <p>Each side starts a socket with a hello frame that lists the codecs it understands. XprisoMessages
+ *    are sent with the XprisoMessageBinaryEncoder if the partner understands it, and this transport
+ *    has not been told otherwise; with the XprisoMessageXmlEncoder otherwise. The binary codec keeps
+ *    a dictionary per socket, so frames must be encoded in the order in which they are written.</p>
+ */
+public class NioPingPongNetMessageTransport
+        implements
+            CanBeDumped
+{
+    private static final Log log = Log.getLogInstance( NioPingPongNetMessageTransport.class ); // our own, private logger
+
+    /**
+     * Factory method.
+     *
+     * @param identifierFactory knows how to parse the NetMeshBaseIdentifiers in received frames
+     * @param nameServer finds the local NetMeshBases to which received frames are delivered
+     * @param deliveryExecutor the Executor on which received frames are delivered
+     * @return the created NioPingPongNetMessageTransport
+     * @throws IOException thrown if the selector could not be opened
+     */
+    public static NioPingPongNetMessageTransport create(
+            NetMeshBaseIdentifierFactory                            identifierFactory,
+            NameServer<NetMeshBaseIdentifier,? extends NetMeshBase> nameServer,
+            Executor                                                deliveryExecutor )
+        throws
+            IOException
+    {
+        return create(
+                identifierFactory,
+                nameServer,
+                deliveryExecutor,
+                DEFAULT_MAX_PENDING_BYTES,
+                DEFAULT_MAX_PENDING_FRAMES,
+                DEFAULT_MAX_FRAME_SIZE );
+    }
+
+    /**
+     * Factory method.
+     *
+     * @param identifierFactory knows how to parse the NetMeshBaseIdentifiers in received frames
+     * @param nameServer finds the local NetMeshBases to which received frames are delivered
+     * @param deliveryExecutor the Executor on which received frames are delivered
+     * @param maxPendingBytes the maximum number of bytes waiting to be written to a socket
+     * @param maxPendingFrames the maximum number of received frames waiting to be delivered from a socket
+     * @param maxFrameSize the maximum size of a frame, in bytes
+     * @return the created NioPingPongNetMessageTransport
+     * @throws IOException thrown if the selector could not be opened
+     */
+    public static NioPingPongNetMessageTransport create(
+            NetMeshBaseIdentifierFactory                            identifierFactory,
+            NameServer<NetMeshBaseIdentifier,? extends NetMeshBase> nameServer,
+            Executor                                                deliveryExecutor,
+            int                                                     maxPendingBytes,
+            int                                                     maxPendingFrames,
+            int                                                     maxFrameSize )
+        throws
+            IOException
+    {
+        NioPingPongNetMessageTransport ret = new NioPingPongNetMessageTransport(
+                identifierFactory,
+                nameServer,
+                deliveryExecutor,
+                maxPendingBytes,
+                maxPendingFrames,
+                maxFrameSize,
+                Selector.open() );
+
+        ret.theSelectorThread.start();
+
+        return ret;
+    }
+
+    /**
+     * Constructor, use factory method.
+     *
+     * @param identifierFactory knows how to parse the NetMeshBaseIdentifiers in received frames
+     * @param nameServer finds the local NetMeshBases to which received frames are delivered
+     * @param deliveryExecutor the Executor on which received frames are delivered
+     * @param maxPendingBytes the maximum number of bytes waiting to be written to a socket
+     * @param maxPendingFrames the maximum number of received frames waiting to be delivered from a socket
+     * @param maxFrameSize the maximum size of a frame, in bytes
+     * @param selector the Selector to use
+     */
+    protected NioPingPongNetMessageTransport(
+            NetMeshBaseIdentifierFactory                            identifierFactory,
+            NameServer<NetMeshBaseIdentifier,? extends NetMeshBase> nameServer,
+            Executor                                                deliveryExecutor,
+            int                                                     maxPendingBytes,
+            int                                                     maxPendingFrames,
+            int                                                     maxFrameSize,
+            Selector                                                selector )
+    {
+        theIdentifierFactory = identifierFactory;
+        theNameServer        = nameServer;
+        theDeliveryExecutor  = deliveryExecutor;
+        theMaxPendingBytes   = maxPendingBytes;
+        theMaxPendingFrames  = maxPendingFrames;
+        theMaxFrameSize      = maxFrameSize;
+        theSelector          = selector;
+
+        theSelectorThread = new Thread( this::runSelector, getClass().getSimpleName() + " selector" );
+        theSelectorThread.setDaemon( true );
+    }
+
+    /**
+     * Start accepting connections from partners at this address.
+     *
+     * @param address the local address, with port 0 to pick any free port
+     * @return the address at which connections are accepted
+     * @throws IOException thrown if the address could not be bound
+     */
+    public InetSocketAddress listen(
+            InetSocketAddress address )
+        throws
+            IOException
+    {
+        final ServerSocketChannel server = ServerSocketChannel.open();
+        server.configureBlocking( false );
+        server.bind( address );
+
+        theServerChannels.add( server );
+
+        runOnSelectorThread( () -> {
+            try {
+                server.register( theSelector, SelectionKey.OP_ACCEPT );
+
+            } catch( IOException ex ) {
+                log.error( ex );
+            }
+        });
+
+        return (InetSocketAddress) server.getLocalAddress();
+    }
+
+    /**
+     * Specify the address at which the partner NetMeshBase with this identifier can be reached.
+     *
+     * @param partnerIdentifier identifier of the partner NetMeshBase
+     * @param address the address at which the partner's transport accepts connections
+     */
+    public void setPartnerAddress(
+            NetMeshBaseIdentifier partnerIdentifier,
+            InetSocketAddress     address )
+    {
+        thePartnerAddresses.put( partnerIdentifier, address );
+    }
+
+    /**
+     * Specify whether XprisoMessages should be sent with the XprisoMessageBinaryEncoder to
+     * partners that understand it. This applies to sockets opened or accepted afterwards.
+     *
+     * @param newValue the new value
+     */
+    public void setUseBinaryCodec(
+            boolean newValue )
+    {
+        theUseBinaryCodec = newValue;
+    }
+
+    /**
+     * Determine whether XprisoMessages are sent with the XprisoMessageBinaryEncoder to
+     * partners that understand it.
+     *
+     * @return true if the binary codec is used
+     */
+    public boolean getUseBinaryCodec()
+    {
+        return theUseBinaryCodec;
+    }
+
+    /**
+     * Send a ping-pong message from a local NetMeshBase to its partner.
+     *
+     * @param senderIdentifier identifier of the local, sending NetMeshBase
+     * @param receiverIdentifier identifier of the partner, receiving NetMeshBase
+     * @param token the ping-pong token
+     * @param content the XprisoMessages to send, if any
+     * @throws MessageSendException thrown if the message could not be sent
+     */
+    public void sendMessage(
+            NetMeshBaseIdentifier senderIdentifier,
+            NetMeshBaseIdentifier receiverIdentifier,
+            long                  token,
+            List<XprisoMessage>   content )
+        throws
+            MessageSendException
+    {
+        Connection conn = obtainConnectionFor( receiverIdentifier, content );
+
+        conn.send( MESSAGE_FRAME, senderIdentifier, receiverIdentifier, token, content );
+    }
+
+    /**
+     * Ask the partner NetMeshBase to return the token as quickly as possible. This is done
+     * on a best-effort basis.
+     *
+     * @param senderIdentifier identifier of the local, sending NetMeshBase
+     * @param receiverIdentifier identifier of the partner, receiving NetMeshBase
+     */
+    public void sendGrabTokenMessage(
+            NetMeshBaseIdentifier senderIdentifier,
+            NetMeshBaseIdentifier receiverIdentifier )
+    {
+        try {
+            Connection conn = obtainConnectionFor( receiverIdentifier, null );
+
+            conn.send( GRAB_TOKEN_FRAME, senderIdentifier, receiverIdentifier, -1L, null );
+
+        } catch( Throwable t ) {
+            if( log.isDebugEnabled() ) {
+                log.debug( this + ": failed to send grab token message to " + receiverIdentifier, t );
+            }
+        }
+    }
+
+    /**
+     * Find or open the connection to the partner NetMeshBase.
+     *
+     * @param partnerIdentifier identifier of the partner NetMeshBase
+     * @param content the content to be sent, for error reporting
+     * @return the Connection
+     * @throws MessageSendException thrown if no connection could be found or opened
+     */
+    protected Connection obtainConnectionFor(
+            NetMeshBaseIdentifier partnerIdentifier,
+            List<XprisoMessage>   content )
+        throws
+            MessageSendException
+    {
+        if( isDead ) {
+            throw new MessageEndpointIsDeadException();
+        }
+        Connection ret = theConnectionsByPartner.get( partnerIdentifier );
+        if( ret != null && !ret.isClosed() ) {
+            return ret;
+        }
+
+        InetSocketAddress address = thePartnerAddresses.get( partnerIdentifier );
+        if( address == null ) {
+            throw new MessageSendException( content, "Do not know the address of NetMeshBase " + partnerIdentifier.toExternalForm() );
+        }
+
+        synchronized( theConnectionsByAddress ) {
+            ret = theConnectionsByAddress.get( address );
+            if( ret == null || ret.isClosed() ) {
+                try {
+                    ret = openConnection( address );
+
+                } catch( IOException ex ) {
+                    throw new MessageSendException( content, ex );
+                }
+                theConnectionsByAddress.put( address, ret );
+            }
+        }
+        theConnectionsByPartner.put( partnerIdentifier, ret );
+
+        return ret;
+    }
+
+    /**
+     * Open a new connection to a partner address.
+     *
+     * @param address the address
+     * @return the Connection
+     * @throws IOException thrown if the connection could not be opened
+     */
+    protected Connection openConnection(
+            InetSocketAddress address )
+        throws
+            IOException
+    {
+        SocketChannel channel = SocketChannel.open();
+        channel.configureBlocking( false );
+        channel.setOption( StandardSocketOptions.TCP_NODELAY, true );
+
+        final Connection ret       = new Connection( channel, address );
+        final boolean    connected = channel.connect( address );
+
+        ret.sendHello();
+
+        runOnSelectorThread( () -> ret.register( connected ? SelectionKey.OP_READ : SelectionKey.OP_CONNECT ));
+
+        theConnectionsOpened.incrementAndGet();
+
+        return ret;
+    }
+
+    /**
+     * Run a task on the selector Thread, which is the only Thread that may register
+     * channels or change their interest sets.
+     *
+     * @param task the task
+     */
+    protected void runOnSelectorThread(
+            Runnable task )
+    {
+        theSelectorTasks.add( task );
+        theSelector.wakeup();
+    }
+
+    /**
+     * The main loop of the selector Thread.
+     */
+    protected void runSelector()
+    {
+        try {
+            while( !isDead ) {
+                Runnable task;
+                while( ( task = theSelectorTasks.poll() ) != null ) {
+                    task.run();
+                }
+
+                theSelector.select();
+
+                Iterator<SelectionKey> iter = theSelector.selectedKeys().iterator();
+                while( iter.hasNext() ) {
+                    SelectionKey key = iter.next();
+                    iter.remove();
+
+                    if( !key.isValid() ) {
+                        continue;
+                    }
+                    if( key.isAcceptable() ) {
+                        accept( (ServerSocketChannel) key.channel() );
+                        continue;
+                    }
+
+                    Connection conn = (Connection) key.attachment();
+                    try {
+                        if( key.isConnectable() ) {
+                            conn.finishConnect();
+                        }
+                        if( key.isValid() && key.isReadable() ) {
+                            conn.read();
+                        }
+                        if( key.isValid() && key.isWritable() ) {
+                            conn.write();
+                        }
+
+                    } catch( IOException ex ) {
+                        if( log.isInfoEnabled() ) {
+                            log.info( this + ": closing connection " + conn, ex );
+                        }
+                        conn.close();
+                    }
+                }
+            }
+
+        } catch( ClosedSelectorException ex ) {
+            // we are done
+
+        } catch( Throwable t ) {
+            log.error( t );
+
+        } finally {
+            closeAll();
+        }
+    }
+
+    /**
+     * Accept an incoming connection.
+     *
+     * @param server the ServerSocketChannel that has a connection ready
+     */
+    protected void accept(
+            ServerSocketChannel server )
+    {
+        try {
+            SocketChannel channel = server.accept();
+            if( channel == null ) {
+                return;
+            }
+            channel.configureBlocking( false );
+            channel.setOption( StandardSocketOptions.TCP_NODELAY, true );
+
+            Connection conn = new Connection( channel, null );
+            conn.sendHello();
+            conn.register( SelectionKey.OP_READ );
+
+            theConnectionsAccepted.incrementAndGet();
+
+        } catch( IOException ex ) {
+            log.error( ex );
+        }
+    }
+
+    /**
+     * Deliver a received frame to the right NioPingPongNetMessageEndpoint. This is invoked
+     * on the delivery Executor, for the frames of one Connection one after the other.
+     *
+     * @param conn the Connection through which the frame was received
+     * @param frame the frame, without the length prefix
+     */
+    protected void deliver(
+            Connection conn,
+            byte []    frame )
+    {
+        try {
+            DataInputStream in = new DataInputStream( new ByteArrayInputStream( frame ));
+
+            byte                  type     = in.readByte();
+            NetMeshBaseIdentifier sender   = theIdentifierFactory.fromExternalForm( in.readUTF() );
+            NetMeshBaseIdentifier receiver = theIdentifierFactory.fromExternalForm( in.readUTF() );
+
+            theConnectionsByPartner.putIfAbsent( sender, conn ); // talk back through the same socket
+
+            NetMeshBase receiverBase = theNameServer.get( receiver );
+
+            long                token   = -1L;
+            List<XprisoMessage> content = null;
+            if( type == MESSAGE_FRAME ) {
+                // decode, or at least skip, even if we cannot deliver, to keep the binary dictionary in sync
+                token   = in.readLong();
+                content = decodeContent( in, receiverBase, conn );
+            }
+
+            if( receiverBase == null ) {
+                log.warn( this + ": cannot find NetMeshBase " + receiver.toExternalForm() );
+                return;
+            }
+            Proxy                proxy    = receiverBase.obtainProxyFor( sender, null );
+            ProxyMessageEndpoint endpoint = proxy != null ? proxy.getMessageEndpoint() : null;
+            if( !( endpoint instanceof NioPingPongNetMessageEndpoint )) {
+                log.error( this + ": cannot deliver to endpoint", endpoint, sender, receiver );
+                return;
+            }
+            NioPingPongNetMessageEndpoint realEndpoint = (NioPingPongNetMessageEndpoint) endpoint;
+
+            if( type == GRAB_TOKEN_FRAME ) {
+                realEndpoint.grabTokenMessageReceived();
+
+            } else if( type == MESSAGE_FRAME ) {
+                realEndpoint.messageReceived( token, content );
+
+            } else {
+                log.error( this + ": unknown frame type " + type );
+            }
+
+        } catch( MessageEndpointIsDeadException ex ) {
+            if( log.isDebugEnabled() ) {
+                log.debug( this + ": endpoint is dead", ex );
+            }
+        } catch( ParseException ex ) {
+            log.error( ex );
+        } catch( FactoryException ex ) {
+            log.error( ex );
+        } catch( DecodingException ex ) {
+            log.error( ex );
+        } catch( Throwable ex ) {
+            log.error( ex );
+        }
+    }
+
+    /**
+     * Encode a frame, including its length prefix.
+     *
+     * @param type the type of frame
+     * @param senderIdentifier identifier of the sending NetMeshBase
+     * @param receiverIdentifier identifier of the receiving NetMeshBase
+     * @param token the ping-pong token
+     * @param content the XprisoMessages, if any
+     * @param conn the Connection whose encoders to use
+     * @param useBinary if true, use the binary codec
+     * @return the frame
+     * @throws EncodingException thrown if an XprisoMessage could not be encoded
+     * @throws IOException thrown if an I/O problem occurred
+     */
+    protected byte [] encodeFrame(
+            byte                  type,
+            NetMeshBaseIdentifier senderIdentifier,
+            NetMeshBaseIdentifier receiverIdentifier,
+            long                  token,
+            List<XprisoMessage>   content,
+            Connection            conn,
+            boolean               useBinary )
+        throws
+            EncodingException,
+            IOException
+    {
+        ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        DataOutputStream      out = new DataOutputStream( buf );
+
+        out.writeInt( 0 ); // placeholder for the length
+        out.writeByte( type );
+        out.writeUTF( senderIdentifier.toExternalForm() );
+        out.writeUTF( receiverIdentifier.toExternalForm() );
+
+        if( type == MESSAGE_FRAME ) {
+            out.writeLong( token );
+            encodeContent( content, out, conn, useBinary );
+        }
+        out.flush();
+
+        byte [] ret = buf.toByteArray();
+        int     len = ret.length - 4;
+
+        if( len > theMaxFrameSize ) {
+            throw new IOException( "Frame too large: " + len );
+        }
+        ret[0] = (byte) ( len >>> 24 );
+        ret[1] = (byte) ( len >>> 16 );
+        ret[2] = (byte) ( len >>>  8 );
+        ret[3] = (byte) len;
+
+        return ret;
+    }
+
+    /**
+     * Encode the XprisoMessages of a frame.
+     *
+     * @param content the XprisoMessages, if any
+     * @param out the stream to write to
+     * @param conn the Connection whose encoders to use
+     * @param useBinary if true, use the binary codec
+     * @throws EncodingException thrown if an XprisoMessage could not be encoded
+     * @throws IOException thrown if an I/O problem occurred
+     */
+    protected void encodeContent(
+            List<XprisoMessage> content,
+            DataOutputStream    out,
+            Connection          conn,
+            boolean             useBinary )
+        throws
+            EncodingException,
+            IOException
+    {
+        out.writeByte( useBinary ? CODEC_BINARY : CODEC_XML );
+
+        if( content == null ) {
+            out.writeInt( -1 );
+            return;
+        }
+        out.writeInt( content.size() );
+
+        for( XprisoMessage current : content ) {
+            byte [] bytes;
+            if( useBinary ) {
+                ByteArrayOutputStream buf = new ByteArrayOutputStream();
+                conn.theBinaryEncoder.encodeXprisoMessage( current, buf );
+                bytes = buf.toByteArray();
+
+            } else {
+                StringBuilder buf = new StringBuilder();
+                conn.theXmlEncoder.appendXprisoMessage( current, buf );
+                bytes = buf.toString().getBytes( ENCODING );
+            }
+            out.writeInt( bytes.length );
+            out.write( bytes );
+        }
+    }
+
+    /**
+     * Decode the XprisoMessages of a frame.
+     *
+     * @param in the stream to read from
+     * @param receiverBase the NetMeshBase that receives the XprisoMessages, or null if there is none
+     * @param conn the Connection whose decoders to use
+     * @return the XprisoMessages, or null
+     * @throws DecodingException thrown if an XprisoMessage could not be decoded
+     * @throws IOException thrown if an I/O problem occurred
+     */
+    protected List<XprisoMessage> decodeContent(
+            DataInputStream in,
+            NetMeshBase     receiverBase,
+            Connection      conn )
+        throws
+            DecodingException,
+            IOException
+    {
+        byte codec = in.readByte();
+        int  count = in.readInt();
+        if( count < 0 ) {
+            return null;
+        }
+        List<XprisoMessage> ret    = new ArrayList<>( count );
+        DecodingException   failed = null;
+        for( int i=0 ; i<count ; ++i ) {
+            byte [] bytes = new byte[ in.readInt() ];
+            in.readFully( bytes );
+
+            if( codec == CODEC_BINARY ) {
+                if( receiverBase == null || failed != null ) {
+                    conn.theBinaryDecoder.skipXprisoMessage( new ByteArrayInputStream( bytes ));
+                } else {
+                    try {
+                        ret.add( conn.theBinaryDecoder.decodeXprisoMessage( new ByteArrayInputStream( bytes ), receiverBase ));
+                    } catch( DecodingException ex ) {
+                        failed = ex; // keep going, so all dictionary additions are seen
+                    }
+                }
+
+            } else if( codec == CODEC_XML ) {
+                if( receiverBase != null ) {
+                    ret.add( conn.theXmlDecoder.decodeXprisoMessage( new ByteArrayInputStream( bytes ), receiverBase ));
+                }
+
+            } else {
+                throw new DecodingException( "Unknown codec " + codec );
+            }
+        }
+        if( failed != null ) {
+            throw failed;
+        }
+        return ret;
+    }
+
+    /**
+     * Stop communicating, and close all sockets.
+     */
+    public void die()
+    {
+        isDead = true;
+
+        theSelector.wakeup();
+        try {
+            theSelectorThread.join( DIE_TIMEOUT );
+
+        } catch( InterruptedException ex ) {
+            // ignore
+        }
+    }
+
+    /**
+     * Close all channels and the selector. This is invoked on the selector Thread as it exits.
+     */
+    protected void closeAll()
+    {
+        for( ServerSocketChannel current : theServerChannels ) {
+            try {
+                current.close();
+            } catch( IOException ex ) {
+                // ignore
+            }
+        }
+        for( SelectionKey key : theSelector.keys() ) {
+            if( key.attachment() instanceof Connection ) {
+                ((Connection) key.attachment()).close();
+            }
+        }
+        try {
+            theSelector.close();
+        } catch( IOException ex ) {
+            log.error( ex );
+        }
+    }
+
+    /**
+     * Determine the number of sockets currently open to partners.
+     *
+     * @return the number of sockets
+     */
+    public int getConnectionCount()
+    {
+        return theOpenConnections.get();
+    }
+
+    /**
+     * Determine the number of sockets this transport opened to partners.
+     *
+     * @return the number of sockets
+     */
+    public long getConnectionsOpenedCount()
+    {
+        return theConnectionsOpened.get();
+    }
+
+    /**
+     * Determine the number of sockets this transport accepted from partners.
+     *
+     * @return the number of sockets
+     */
+    public long getConnectionsAcceptedCount()
+    {
+        return theConnectionsAccepted.get();
+    }
+
+    /**
+     * Determine the number of frames sent.
+     *
+     * @return the number of frames
+     */
+    public long getFramesSentCount()
+    {
+        return theFramesSent.get();
+    }
+
+    /**
+     * Determine the number of frames received.
+     *
+     * @return the number of frames
+     */
+    public long getFramesReceivedCount()
+    {
+        return theFramesReceived.get();
+    }
+
+    /**
+     * Determine the number of frames that could not be sent because too many bytes
+     * were waiting to be written.
+     *
+     * @return the number of frames
+     */
+    public long getFramesRejectedCount()
+    {
+        return theFramesRejected.get();
+    }
+
+    /**
+     * Determine the number of frames sent whose XprisoMessages were encoded with the binary codec.
+     *
+     * @return the number of frames
+     */
+    public long getBinaryFramesSentCount()
+    {
+        return theBinaryFramesSent.get();
+    }
+
+    /**
+     * Dump this object.
+     *
+     * @param d the Dumper to dump to
+     */
+    public void dump(
+            Dumper d )
+    {
+        d.dump( this,
+                new String[] {
+                    "partnerAddresses",
+                    "connections",
+                    "framesSent",
+                    "binaryFramesSent",
+                    "framesReceived",
+                    "framesRejected"
+                },
+                new Object[] {
+                    thePartnerAddresses,
+                    theOpenConnections.get(),
+                    theFramesSent.get(),
+                    theBinaryFramesSent.get(),
+                    theFramesReceived.get(),
+                    theFramesRejected.get()
+                });
+    }
+
+    /**
+     * A socket to a partner transport, with the frames waiting to be written to it and
+     * the frames waiting to be delivered from it.
+     */
+    protected class Connection
+    {
+        /**
+         * Constructor.
+         *
+         * @param channel the SocketChannel
+         * @param address the address of the partner, or null if the partner connected to us
+         */
+        protected Connection(
+                SocketChannel     channel,
+                InetSocketAddress address )
+        {
+            theChannel = channel;
+            theAddress = address;
+
+            theOpenConnections.incrementAndGet();
+        }
+
+        /**
+         * Register with the selector. Invoked on the selector Thread.
+         *
+         * @param ops the initial interest set
+         */
+        protected void register(
+                int ops )
+        {
+            try {
+                synchronized( this ) {
+                    if( !theOutgoing.isEmpty() && ops == SelectionKey.OP_READ ) {
+                        ops |= SelectionKey.OP_WRITE;
+                    }
+                    theKey = theChannel.register( theSelector, ops, this );
+                }
+
+            } catch( IOException ex ) {
+                log.error( ex );
+                close();
+            }
+        }
+
+        /**
+         * Tell the partner which codecs we understand. This is the first frame on every socket.
+         */
+        protected void sendHello()
+        {
+            byte [] frame = new byte[] { 0, 0, 0, 2, HELLO_FRAME, theOwnCodecs };
+
+            synchronized( this ) {
+                theOutgoing.add( ByteBuffer.wrap( frame ));
+                thePendingBytes += frame.length;
+            }
+        }
+
+        /**
+         * Encode a frame and enqueue it for writing. Encoding happens while holding the lock,
+         * so frames are written in the order in which they were encoded, as the binary codec requires.
+         *
+         * @param type the type of frame
+         * @param senderIdentifier identifier of the sending NetMeshBase
+         * @param receiverIdentifier identifier of the receiving NetMeshBase
+         * @param token the ping-pong token
+         * @param content the XprisoMessages, if any
+         * @throws MessageSendException thrown if the connection is closed, too many bytes are waiting already, or encoding failed
+         */
+        protected void send(
+                byte                  type,
+                NetMeshBaseIdentifier senderIdentifier,
+                NetMeshBaseIdentifier receiverIdentifier,
+                long                  token,
+                List<XprisoMessage>   content )
+            throws
+                MessageSendException
+        {
+            synchronized( this ) {
+                if( isClosed ) {
+                    throw new MessageSendException( content, "Connection closed" );
+                }
+                if( thePendingBytes >= theMaxPendingBytes ) {
+                    theFramesRejected.incrementAndGet();
+                    throw new MessageSendException( content, "Too many bytes waiting to be sent: " + thePendingBytes );
+                }
+                boolean useBinary = ( theOwnCodecs & thePartnerCodecs & CODEC_BINARY ) != 0;
+                byte [] frame;
+                try {
+                    frame = encodeFrame( type, senderIdentifier, receiverIdentifier, token, content, this, useBinary );
+
+                } catch( EncodingException | IOException ex ) {
+                    if( useBinary ) {
+                        // the dictionary may have moved ahead of what the partner will see; start over
+                        closeLater();
+                    }
+                    throw new MessageSendException( content, ex );
+                }
+                theOutgoing.add( ByteBuffer.wrap( frame ));
+                thePendingBytes += frame.length;
+                theFramesSent.incrementAndGet();
+                if( useBinary && type == MESSAGE_FRAME ) {
+                    theBinaryFramesSent.incrementAndGet();
+                }
+
+                if( isWriteRequested ) {
+                    return;
+                }
+                isWriteRequested = true;
+            }
+
+            runOnSelectorThread( this::enableWrite );
+        }
+
+        /**
+         * Close this Connection on the selector Thread.
+         */
+        protected void closeLater()
+        {
+            runOnSelectorThread( this::close );
+        }
+
+        /**
+         * Add writing to the interest set. Invoked on the selector Thread.
+         */
+        protected void enableWrite()
+        {
+            SelectionKey key = theKey;
+            if( key != null && key.isValid() && ( key.interestOps() & SelectionKey.OP_CONNECT ) == 0 ) {
+                key.interestOps( key.interestOps() | SelectionKey.OP_WRITE );
+            }
+        }
+
+        /**
+         * Complete the connection. Invoked on the selector Thread.
+         *
+         * @throws IOException thrown if the connection could not be completed
+         */
+        protected void finishConnect()
+            throws
+                IOException
+        {
+            if( theChannel.finishConnect() ) {
+                synchronized( this ) {
+                    int ops = SelectionKey.OP_READ;
+                    if( !theOutgoing.isEmpty() ) {
+                        ops |= SelectionKey.OP_WRITE;
+                    }
+                    theKey.interestOps( ops );
+                }
+            }
+        }
+
+        /**
+         * Write as many waiting frames as the socket accepts. Invoked on the selector Thread.
+         *
+         * @throws IOException thrown if writing failed
+         */
+        protected void write()
+            throws
+                IOException
+        {
+            synchronized( this ) {
+                while( !theOutgoing.isEmpty() ) {
+                    ByteBuffer [] buffers = theOutgoing.toArray( new ByteBuffer[ theOutgoing.size() ] );
+
+                    long written = theChannel.write( buffers ); // gathering write: many frames in one system call
+                    thePendingBytes -= written;
+
+                    while( !theOutgoing.isEmpty() && !theOutgoing.peekFirst().hasRemaining() ) {
+                        theOutgoing.pollFirst();
+                    }
+                    if( written == 0 ) {
+                        break; // socket buffer is full
+                    }
+                }
+                if( theOutgoing.isEmpty() ) {
+                    theKey.interestOps( theKey.interestOps() & ~SelectionKey.OP_WRITE );
+                    isWriteRequested = false;
+                }
+            }
+        }
+
+        /**
+         * Read from the socket, and collect complete frames. Invoked on the selector Thread.
+         *
+         * @throws IOException thrown if reading failed
+         */
+        protected void read()
+            throws
+                IOException
+        {
+            int n = theChannel.read( theReadBuffer );
+            if( n < 0 ) {
+                throw new IOException( "Connection closed by partner" );
+            }
+            theReadBuffer.flip();
+
+            while( true ) {
+                if( theFrame == null ) {
+                    if( theReadBuffer.remaining() < 4 ) {
+                        break;
+                    }
+                    int len = theReadBuffer.getInt();
+                    if( len <= 0 || len > theMaxFrameSize ) {
+                        throw new IOException( "Invalid frame size: " + len );
+                    }
+                    theFrame      = new byte[ len ];
+                    theFrameIndex = 0;
+                }
+                int chunk = Math.min( theReadBuffer.remaining(), theFrame.length - theFrameIndex );
+                theReadBuffer.get( theFrame, theFrameIndex, chunk );
+                theFrameIndex += chunk;
+
+                if( theFrameIndex < theFrame.length ) {
+                    break;
+                }
+                received( theFrame );
+                theFrame = null;
+            }
+            theReadBuffer.compact();
+        }
+
+        /**
+         * A complete frame has been received. Invoked on the selector Thread.
+         *
+         * @param frame the frame, without the length prefix
+         */
+        protected void received(
+                byte [] frame )
+        {
+            if( frame[0] == HELLO_FRAME ) {
+                if( frame.length > 1 ) {
+                    thePartnerCodecs = frame[1];
+                }
+                return;
+            }
+            theFramesReceived.incrementAndGet();
+
+            boolean startDelivering = false;
+            synchronized( this ) {
+                theIncoming.add( frame );
+
+                if( theIncoming.size() >= theMaxPendingFrames && !isReadSuspended ) {
+                    isReadSuspended = true; // back-pressure on the sender
+                    theKey.interestOps( theKey.interestOps() & ~SelectionKey.OP_READ );
+                }
+                if( !isDelivering ) {
+                    isDelivering    = true;
+                    startDelivering = true;
+                }
+            }
+            if( startDelivering ) {
+                try {
+                    theDeliveryExecutor.execute( this::deliverAll );
+
+                } catch( RejectedExecutionException ex ) {
+                    if( log.isDebugEnabled() ) {
+                        log.debug( this + ": cannot deliver", ex );
+                    }
+                    synchronized( this ) {
+                        isDelivering = false;
+                    }
+                }
+            }
+        }
+
+        /**
+         * Deliver the received frames, one after the other. Invoked on the delivery Executor.
+         */
+        protected void deliverAll()
+        {
+            while( true ) {
+                byte [] frame;
+                synchronized( this ) {
+                    frame = theIncoming.pollFirst();
+                    if( frame == null ) {
+                        isDelivering = false;
+                        return;
+                    }
+                    if( isReadSuspended && theIncoming.size() <= theMaxPendingFrames / 2 ) {
+                        isReadSuspended = false;
+                        runOnSelectorThread( this::enableRead );
+                    }
+                }
+                deliver( this, frame );
+            }
+        }
+
+        /**
+         * Add reading to the interest set. Invoked on the selector Thread.
+         */
+        protected void enableRead()
+        {
+            SelectionKey key = theKey;
+            if( key != null && key.isValid() ) {
+                key.interestOps( key.interestOps() | SelectionKey.OP_READ );
+            }
+        }
+
+        /**
+         * Determine whether this Connection has been closed.
+         *
+         * @return true if it has been closed
+         */
+        protected synchronized boolean isClosed()
+        {
+            return isClosed;
+        }
+
+        /**
+         * Close this Connection, and forget about it.
+         */
+        protected void close()
+        {
+            synchronized( this ) {
+                if( isClosed ) {
+                    return;
+                }
+                isClosed = true;
+                theOutgoing.clear();
+                thePendingBytes = 0;
+            }
+            theOpenConnections.decrementAndGet();
+
+            if( theKey != null ) {
+                theKey.cancel();
+            }
+            try {
+                theChannel.close();
+            } catch( IOException ex ) {
+                // ignore
+            }
+            theConnectionsByPartner.values().remove( this );
+            if( theAddress != null ) {
+                synchronized( theConnectionsByAddress ) {
+                    theConnectionsByAddress.remove( theAddress, this );
+                }
+            }
+        }
+
+        /**
+         * Convert to String, for debugging only.
+         *
+         * @return String representation
+         */
+        @Override
+        public String toString()
+        {
+            return "Connection " + theChannel;
+        }
+
+        /**
+         * The underlying SocketChannel.
+         */
+        protected final SocketChannel theChannel;
+
+        /**
+         * The address of the partner, if we connected to it.
+         */
+        protected final InetSocketAddress theAddress;
+
+        /**
+         * Our key with the Selector.
+         */
+        protected SelectionKey theKey;
+
+        /**
+         * The frames waiting to be written, including their length prefixes.
+         */
+        protected final ArrayDeque<ByteBuffer> theOutgoing = new ArrayDeque<>();
+
+        /**
+         * The number of bytes waiting to be written.
+         */
+        protected long thePendingBytes;
+
+        /**
+         * True if writing has been added to the interest set.
+         */
+        protected boolean isWriteRequested;
+
+        /**
+         * The received frames waiting to be delivered.
+         */
+        protected final ArrayDeque<byte []> theIncoming = new ArrayDeque<>();
+
+        /**
+         * True if a task on the delivery Executor is delivering received frames.
+         */
+        protected boolean isDelivering;
+
+        /**
+         * True if reading has been suspended because too many frames are waiting to be delivered.
+         */
+        protected boolean isReadSuspended;
+
+        /**
+         * True if this Connection has been closed.
+         */
+        protected boolean isClosed;
+
+        /**
+         * Buffer for reading from the socket.
+         */
+        protected final ByteBuffer theReadBuffer = ByteBuffer.allocate( READ_BUFFER_SIZE );
+
+        /**
+         * The frame currently being read, if any.
+         */
+        protected byte [] theFrame;
+
+        /**
+         * The number of bytes of the current frame read so far.
+         */
+        protected int theFrameIndex;
+
+        /**
+         * The codecs we told the partner about.
+         */
+        protected final byte theOwnCodecs = theUseBinaryCodec ? (byte) ( CODEC_XML | CODEC_BINARY ) : CODEC_XML;
+
+        /**
+         * The codecs the partner told us about. Until we know, we assume XML only.
+         */
+        protected volatile byte thePartnerCodecs = CODEC_XML;
+
+        /**
+         * Encodes the sent XprisoMessages as XML. Only used while holding the lock.
+         */
+        protected final XprisoMessageXmlEncoder theXmlEncoder = new XprisoMessageXmlEncoder();
+
+        /**
+         * Encodes the sent XprisoMessages in binary. Only used while holding the lock.
+         */
+        protected final XprisoMessageBinaryEncoder theBinaryEncoder = XprisoMessageBinaryEncoder.create();
+
+        /**
+         * Decodes the received XML XprisoMessages. Only used by one delivery task at a time.
+         */
+        protected final XprisoMessageXmlEncoder theXmlDecoder = new XprisoMessageXmlEncoder();
+
+        /**
+         * Decodes the received binary XprisoMessages. Only used by one delivery task at a time.
+         */
+        protected final XprisoMessageBinaryEncoder theBinaryDecoder = XprisoMessageBinaryEncoder.create();
+    }
+
+    /**
+     * Knows how to parse NetMeshBaseIdentifiers.
+     */
+    protected final NetMeshBaseIdentifierFactory theIdentifierFactory;
+
+    /**
+     * Finds the local NetMeshBases.
+     */
+    protected final NameServer<NetMeshBaseIdentifier,? extends NetMeshBase> theNameServer;
+
+    /**
+     * Delivers the received frames.
+     */
+    protected final Executor theDeliveryExecutor;
+
+    /**
+     * The maximum number of bytes waiting to be written to a socket.
+     */
+    protected final int theMaxPendingBytes;
+
+    /**
+     * The maximum number of received frames waiting to be delivered from a socket.
+     */
+    protected final int theMaxPendingFrames;
+
+    /**
+     * The maximum size of a frame.
+     */
+    protected final int theMaxFrameSize;
+
+    /**
+     * The Selector.
+     */
+    protected final Selector theSelector;
+
+    /**
+     * The Thread running the Selector.
+     */
+    protected final Thread theSelectorThread;
+
+    /**
+     * Tasks to be run on the selector Thread.
+     */
+    protected final ConcurrentLinkedQueue<Runnable> theSelectorTasks = new ConcurrentLinkedQueue<>();
+
+    /**
+     * The sockets on which we accept connections.
+     */
+    protected final ConcurrentLinkedQueue<ServerSocketChannel> theServerChannels = new ConcurrentLinkedQueue<>();
+
+    /**
+     * The addresses of the partner NetMeshBases.
+     */
+    protected final ConcurrentHashMap<NetMeshBaseIdentifier,InetSocketAddress> thePartnerAddresses = new ConcurrentHashMap<>();
+
+    /**
+     * The Connections through which the partner NetMeshBases are reached.
+     */
+    protected final ConcurrentHashMap<NetMeshBaseIdentifier,Connection> theConnectionsByPartner = new ConcurrentHashMap<>();
+
+    /**
+     * The Connections we opened, keyed by partner address.
+     */
+    protected final ConcurrentHashMap<InetSocketAddress,Connection> theConnectionsByAddress = new ConcurrentHashMap<>();
+
+    /**
+     * Number of open Connections.
+     */
+    protected final AtomicInteger theOpenConnections = new AtomicInteger();
+
+    /**
+     * Number of Connections we opened.
+     */
+    protected final AtomicLong theConnectionsOpened = new AtomicLong();
+
+    /**
+     * Number of Connections we accepted.
+     */
+    protected final AtomicLong theConnectionsAccepted = new AtomicLong();
+
+    /**
+     * Number of frames sent.
+     */
+    protected final AtomicLong theFramesSent = new AtomicLong();
+
+    /**
+     * Number of frames received.
+     */
+    protected final AtomicLong theFramesReceived = new AtomicLong();
+
+    /**
+     * Number of frames rejected because of back-pressure.
+     */
+    protected final AtomicLong theFramesRejected = new AtomicLong();
+
+    /**
+     * Number of frames sent with the binary codec.
+     */
+    protected final AtomicLong theBinaryFramesSent = new AtomicLong();
+
+    /**
+     * If true, send XprisoMessages with the binary codec to partners that understand it.
+     */
+    protected volatile boolean theUseBinaryCodec = DEFAULT_USE_BINARY_CODEC;
+
+    /**
+     * True once this transport has died.
+     */
+    protected volatile boolean isDead;
+
+    /**
+     * Frame type for a ping-pong message.
+     */
+    protected static final byte MESSAGE_FRAME = 1;
+
+    /**
+     * Frame type for a request to return the token quickly.
+     */
+    protected static final byte GRAB_TOKEN_FRAME = 2;
+
+    /**
+     * Frame type for the list of codecs understood by the sender. It carries no identifiers.
+     */
+    protected static final byte HELLO_FRAME = 3;
+
+    /**
+     * Codec flag for the XprisoMessageXmlEncoder.
+     */
+    protected static final byte CODEC_XML = 1;
+
+    /**
+     * Codec flag for the XprisoMessageBinaryEncoder.
+     */
+    protected static final byte CODEC_BINARY = 2;
+
+    /**
+     * The character encoding of the XprisoMessages.
+     */
+    protected static final String ENCODING = "UTF-8";
+
+    /**
+     * The size of the per-Connection read buffer.
+     */
+    protected static final int READ_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * The time in milliseconds that die() waits for the selector Thread to finish.
+     */
+    protected static final long DIE_TIMEOUT = 5000L;
+
+    /**
+     * Our ResourceHelper.
+     */
+    private static final ResourceHelper theResourceHelper = ResourceHelper.getInstance( NioPingPongNetMessageTransport.class );
+
+    /**
+     * The default maximum number of bytes waiting to be written to a socket.
+     */
+    public static final int DEFAULT_MAX_PENDING_BYTES = theResourceHelper.getResourceIntegerOrDefault( "MaxPendingBytes", 4 * 1024 * 1024 );
+
+    /**
+     * The default maximum number of received frames waiting to be delivered from a socket.
+     */
+    public static final int DEFAULT_MAX_PENDING_FRAMES = theResourceHelper.getResourceIntegerOrDefault( "MaxPendingFrames", 256 );
+
+    /**
+     * The default maximum size of a frame.
+     */
+    public static final int DEFAULT_MAX_FRAME_SIZE = theResourceHelper.getResourceIntegerOrDefault( "MaxFrameSize", 64 * 1024 * 1024 );
+
+    /**
+     * By default, send XprisoMessages with the binary codec to partners that understand it.
+     */
+    public static final boolean DEFAULT_USE_BINARY_CODEC = theResourceHelper.getResourceBooleanOrDefault( "UseBinaryCodec", true );
+}
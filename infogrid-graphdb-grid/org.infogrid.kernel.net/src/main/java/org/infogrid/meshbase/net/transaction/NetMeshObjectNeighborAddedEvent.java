@@ -23,6 +23,7 @@ import org.infogrid.meshbase.net.NetMeshBaseIdentifier;
 import org.infogrid.meshbase.net.proxy.Proxy;
 import org.infogrid.meshbase.transaction.CannotApplyChangeException;
 import org.infogrid.meshbase.transaction.MeshObjectNeighborAddedEvent;
+import org.infogrid.meshbase.transaction.NeighborIdentifiersSnapshot;
 import org.infogrid.meshbase.transaction.Transaction;
 import org.infogrid.meshbase.transaction.TransactionException;
 import org.infogrid.model.primitives.MeshTypeIdentifier;
@@ -233,6 +234,40 @@ public class NetMeshObjectNeighborAddedEvent
         theOriginNetworkIdentifier = originIdentifier;
     }
 
+    /**
+     * Constructor for NetMeshObjects that determine the identifiers of their neighbors
+     * only when asked.
+     *
+     * @param meshObject the MeshObject that is the source of the event
+     * @param roleTypes the RoleTypes affected on the source MeshObject, with respect to the deltaNeighbors
+     * @param oldNeighborIdentifiers the identifiers of the neighbor MeshObjects prior to the event
+     * @param deltaNeighborIdentifier the identifier of the neighbor MeshObject affected by this event
+     * @param newNeighborIdentifiers the identifiers of the neighbor MeshObjects after the event
+     * @param originIdentifier identifier of the NetMeshBase from where this NetChange arrived, if any
+     * @param timeEventOccurred the time at which the event occurred, in <code>System.currentTimeMillis</code> format
+     */
+    public NetMeshObjectNeighborAddedEvent(
+            NetMeshObject               meshObject,
+            RoleType []                 roleTypes,
+            NeighborIdentifiersSnapshot oldNeighborIdentifiers,
+            NetMeshObjectIdentifier     deltaNeighborIdentifier,
+            NeighborIdentifiersSnapshot newNeighborIdentifiers,
+            NetMeshBaseIdentifier       originIdentifier,
+            long                        timeEventOccurred )
+    {
+        super(  meshObject,
+                meshObject.getIdentifier(),
+                roleTypes,
+                MeshTypeUtils.meshTypeIdentifiersOrNull( roleTypes ),
+                oldNeighborIdentifiers,
+                new NetMeshObjectIdentifier[] { deltaNeighborIdentifier },
+                newNeighborIdentifiers,
+                timeEventOccurred,
+                meshObject.getMeshBase() );
+
+        theOriginNetworkIdentifier = originIdentifier;
+    }
+
     /**
      * Obtain the MeshObject affected by this Change.
      *
@@ -27,6 +27,7 @@ import org.infogrid.meshbase.net.transaction.NetMeshObjectRoleAddedEvent;
 import org.infogrid.meshbase.net.transaction.NetMeshObjectRoleRemovedEvent;
 import org.infogrid.meshbase.net.transaction.NetMeshObjectTypeAddedEvent;
 import org.infogrid.meshbase.net.transaction.NetMeshObjectTypeRemovedEvent;
+import org.infogrid.util.ArrayHelper;
 import org.infogrid.util.logging.Log;
 
 /**
@@ -94,6 +95,7 @@ public abstract class XprisoMessageHelper
         // we can merge if:
         // 1. sender and receiver are the same
         // 2. only one of the two messages carries request and/or response ids
+        // Requests for the same NetMeshObject in both messages are only made once.
 
         try {
             if( !first.getSenderIdentifier().equals( second.getSenderIdentifier() )) {
@@ -151,12 +153,7 @@ public abstract class XprisoMessageHelper
             NetMeshObjectAccessSpecification [] firstRequestedFirstTime  = first.getRequestedFirstTimeObjects();
             NetMeshObjectAccessSpecification [] secondRequestedFirstTime = second.getRequestedFirstTimeObjects();
             try {
-                ret.addRequestedFirstTimeObjects( firstRequestedFirstTime );
-            } catch( IllegalStateException ex ) {
-                log.warn( ex );
-            }
-            try {
-                ret.addRequestedFirstTimeObjects( secondRequestedFirstTime );
+                ret.addRequestedFirstTimeObjects( ArrayHelper.appendWithoutDuplicates( firstRequestedFirstTime, secondRequestedFirstTime, true, NetMeshObjectAccessSpecification.class ));
             } catch( IllegalStateException ex ) {
                 log.warn( ex );
             }
@@ -166,12 +163,7 @@ public abstract class XprisoMessageHelper
             NetMeshObjectIdentifier [] firstRequestedCanceled  = first.getRequestedCanceledObjects();
             NetMeshObjectIdentifier [] secondRequestedCanceled = second.getRequestedCanceledObjects();
             try {
-                ret.addRequestedCanceledObjects( firstRequestedCanceled );
-            } catch( IllegalStateException ex ) {
-                log.warn( ex );
-            }
-            try {
-                ret.addRequestedCanceledObjects( secondRequestedCanceled );
+                ret.addRequestedCanceledObjects( ArrayHelper.appendWithoutDuplicates( firstRequestedCanceled, secondRequestedCanceled, true, NetMeshObjectIdentifier.class ));
             } catch( IllegalStateException ex ) {
                 log.warn( ex );
             }
@@ -181,12 +173,7 @@ public abstract class XprisoMessageHelper
             NetMeshObjectIdentifier [] firstRequestedFreshen  = first.getRequestedFreshenReplicas();
             NetMeshObjectIdentifier [] secondRequestedFreshen = second.getRequestedFreshenReplicas();
             try {
-                ret.addRequestedFreshenReplicas( firstRequestedFreshen );
-            } catch( IllegalStateException ex ) {
-                log.warn( ex );
-            }
-            try {
-                ret.addRequestedFreshenReplicas( secondRequestedFreshen );
+                ret.addRequestedFreshenReplicas( ArrayHelper.appendWithoutDuplicates( firstRequestedFreshen, secondRequestedFreshen, true, NetMeshObjectIdentifier.class ));
             } catch( IllegalStateException ex ) {
                 log.warn( ex );
             }
@@ -196,12 +183,7 @@ public abstract class XprisoMessageHelper
             NetMeshObjectIdentifier [] firstRequestedResync  = first.getRequestedResynchronizeReplicas();
             NetMeshObjectIdentifier [] secondRequestedResync = second.getRequestedResynchronizeReplicas();
             try {
-                ret.addRequestedResynchronizeReplicas( firstRequestedResync );
-            } catch( IllegalStateException ex ) {
-                log.warn( ex );
-            }
-            try {
-                ret.addRequestedResynchronizeReplicas( secondRequestedResync );
+                ret.addRequestedResynchronizeReplicas( ArrayHelper.appendWithoutDuplicates( firstRequestedResync, secondRequestedResync, true, NetMeshObjectIdentifier.class ));
             } catch( IllegalStateException ex ) {
                 log.warn( ex );
             }
@@ -211,12 +193,7 @@ public abstract class XprisoMessageHelper
             NetMeshObjectIdentifier [] firstRequestedLocks  = first.getRequestedLockObjects();
             NetMeshObjectIdentifier [] secondRequestedLocks = second.getRequestedLockObjects();
             try {
-                ret.addRequestedLockObjects( firstRequestedLocks );
-            } catch( IllegalStateException ex ) {
-                log.warn( ex );
-            }
-            try {
-                ret.addRequestedLockObjects( secondRequestedLocks );
+                ret.addRequestedLockObjects( ArrayHelper.appendWithoutDuplicates( firstRequestedLocks, secondRequestedLocks, true, NetMeshObjectIdentifier.class ));
             } catch( IllegalStateException ex ) {
                 log.warn( ex );
             }
@@ -226,12 +203,7 @@ public abstract class XprisoMessageHelper
             NetMeshObjectIdentifier [] firstPushLocks  = first.getPushLockObjects();
             NetMeshObjectIdentifier [] secondPushLocks = second.getPushLockObjects();
             try {
-                ret.addPushLockObjects( firstPushLocks );
-            } catch( IllegalStateException ex ) {
-                log.warn( ex );
-            }
-            try {
-                ret.addPushLockObjects( secondPushLocks );
+                ret.addPushLockObjects( ArrayHelper.appendWithoutDuplicates( firstPushLocks, secondPushLocks, true, NetMeshObjectIdentifier.class ));
             } catch( IllegalStateException ex ) {
                 log.warn( ex );
             }
@@ -241,12 +213,7 @@ public abstract class XprisoMessageHelper
             NetMeshObjectIdentifier [] firstReclaimedLocks  = first.getReclaimedLockObjects();
             NetMeshObjectIdentifier [] secondReclaimedLocks = second.getReclaimedLockObjects();
             try {
-                ret.addReclaimedLockObjects( firstReclaimedLocks );
-            } catch( IllegalStateException ex ) {
-                log.warn( ex );
-            }
-            try {
-                ret.addReclaimedLockObjects( secondReclaimedLocks );
+                ret.addReclaimedLockObjects( ArrayHelper.appendWithoutDuplicates( firstReclaimedLocks, secondReclaimedLocks, true, NetMeshObjectIdentifier.class ));
             } catch( IllegalStateException ex ) {
                 log.warn( ex );
             }
@@ -256,12 +223,7 @@ public abstract class XprisoMessageHelper
             NetMeshObjectIdentifier [] firstRequestedHome  = first.getRequestedHomeReplicas();
             NetMeshObjectIdentifier [] secondRequestedHome = second.getRequestedHomeReplicas();
             try {
-                ret.addRequestedHomeReplicas( firstRequestedHome );
-            } catch( IllegalStateException ex ) {
-                log.warn( ex );
-            }
-            try {
-                ret.addRequestedHomeReplicas( secondRequestedHome );
+                ret.addRequestedHomeReplicas( ArrayHelper.appendWithoutDuplicates( firstRequestedHome, secondRequestedHome, true, NetMeshObjectIdentifier.class ));
             } catch( IllegalStateException ex ) {
                 log.warn( ex );
             }
@@ -271,12 +233,7 @@ public abstract class XprisoMessageHelper
             NetMeshObjectIdentifier [] firstPushHome  = first.getPushHomeReplicas();
             NetMeshObjectIdentifier [] secondPushHome = second.getPushHomeReplicas();
             try {
-                ret.addPushHomeReplicas( firstPushHome );
-            } catch( IllegalStateException ex ) {
-                log.warn( ex );
-            }
-            try {
-                ret.addPushHomeReplicas( secondPushHome );
+                ret.addPushHomeReplicas( ArrayHelper.appendWithoutDuplicates( firstPushHome, secondPushHome, true, NetMeshObjectIdentifier.class ));
             } catch( IllegalStateException ex ) {
                 log.warn( ex );
             }
@@ -0,0 +1,1516 @@
+//
+// This file is part of InfoGrid(tm). You may not use this file except in
+// compliance with the InfoGrid license. The InfoGrid license and important
+// disclaimers are contained in the file LICENSE.InfoGrid.txt that you should
+// have received with InfoGrid. If you have not received LICENSE.InfoGrid.txt
+// or you do not consent to all aspects of the license and the disclaimers,
+// no license is granted; do not use this file.
+// 
+// For more information about InfoGrid go to http://infogrid.org/
+//
+// Copyright 1998-2015 by Johannes Ernst
+// All rights reserved.
+//
+
+package org.infogrid.meshbase.net.xpriso.binary;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import org.infogrid.mesh.net.NetMeshObjectIdentifier;
+import org.infogrid.mesh.net.externalized.ExternalizedNetMeshObject;
+import org.infogrid.mesh.net.externalized.ParserFriendlyExternalizedNetMeshObject;
+import org.infogrid.meshbase.net.NetMeshBase;
+import org.infogrid.meshbase.net.NetMeshBaseIdentifier;
+import org.infogrid.meshbase.net.NetMeshObjectAccessSpecification;
+import org.infogrid.meshbase.net.NetMeshObjectIdentifierFactory;
+import org.infogrid.meshbase.net.transaction.NetMeshObjectDeletedEvent;
+import org.infogrid.meshbase.net.transaction.NetMeshObjectNeighborAddedEvent;
+import org.infogrid.meshbase.net.transaction.NetMeshObjectNeighborRemovedEvent;
+import org.infogrid.meshbase.net.transaction.NetMeshObjectPropertyChangeEvent;
+import org.infogrid.meshbase.net.transaction.NetMeshObjectRoleAddedEvent;
+import org.infogrid.meshbase.net.transaction.NetMeshObjectRoleRemovedEvent;
+import org.infogrid.meshbase.net.transaction.NetMeshObjectTypeAddedEvent;
+import org.infogrid.meshbase.net.transaction.NetMeshObjectTypeRemovedEvent;
+import org.infogrid.meshbase.net.xpriso.ParserFriendlyXprisoMessage;
+import org.infogrid.meshbase.net.xpriso.XprisoMessage;
+import org.infogrid.model.primitives.BlobDataType;
+import org.infogrid.model.primitives.BlobValue;
+import org.infogrid.model.primitives.BooleanValue;
+import org.infogrid.model.primitives.ColorValue;
+import org.infogrid.model.primitives.CurrencyValue;
+import org.infogrid.model.primitives.EnumeratedValue;
+import org.infogrid.model.primitives.ExtentValue;
+import org.infogrid.model.primitives.FloatValue;
+import org.infogrid.model.primitives.IntegerValue;
+import org.infogrid.model.primitives.MeshTypeIdentifier;
+import org.infogrid.model.primitives.MultiplicityValue;
+import org.infogrid.model.primitives.PointValue;
+import org.infogrid.model.primitives.PropertyValue;
+import org.infogrid.model.primitives.StringValue;
+import org.infogrid.model.primitives.TimePeriodValue;
+import org.infogrid.model.primitives.TimeStampValue;
+import org.infogrid.model.primitives.externalized.DecodingException;
+import org.infogrid.model.primitives.externalized.EncodingException;
+import org.infogrid.modelbase.MeshTypeIdentifierFactory;
+import org.infogrid.util.ResourceHelper;
+
+/**
+ * <p>Encodes and decodes XprisoMessages to and from a compact binary representation. This
+ *    carries the same information as the XprisoMessageXmlEncoder, but is much smaller and
+ *    faster to process.</p>
+ * <p>Identifiers, type names and other frequently repeated Strings are sent only once: each
+ *    encoded XprisoMessage starts with the Strings that the receiver has not seen yet, and
+ *    afterwards refers to all of them by number. That makes instances of this class stateful:
+ *    the XprisoMessages encoded by one instance must be decoded, or at least skipped, by one
+ *    other instance in the same sequence, such as over a single socket. An instance keeps
+ *    separate state for encoding and for decoding, so it can serve both directions of one socket.</p>
+ * <p>Integers are encoded as variable-length numbers. The body of a large XprisoMessage is
+ *    compressed.</p>
+ */
+public class XprisoMessageBinaryEncoder
+{
+    /**
+     * Factory method, using default settings.
+     *
+     * @return the created XprisoMessageBinaryEncoder
+     */
+    public static XprisoMessageBinaryEncoder create()
+    {
+        return new XprisoMessageBinaryEncoder( DEFAULT_MAX_DICTIONARY_SIZE, DEFAULT_COMPRESSION_THRESHOLD, DEFAULT_MAX_BODY_SIZE );
+    }
+
+    /**
+     * Factory method.
+     *
+     * @param maxDictionarySize the maximum number of Strings to remember; others are sent in full every time
+     * @param compressionThreshold the minimum size, in bytes, of a message body for it to be compressed; negative to never compress
+     * @return the created XprisoMessageBinaryEncoder
+     */
+    public static XprisoMessageBinaryEncoder create(
+            int maxDictionarySize,
+            int compressionThreshold )
+    {
+        return new XprisoMessageBinaryEncoder( maxDictionarySize, compressionThreshold, DEFAULT_MAX_BODY_SIZE );
+    }
+
+    /**
+     * Factory method.
+     *
+     * @param maxDictionarySize the maximum number of Strings to remember; others are sent in full every time
+     * @param compressionThreshold the minimum size, in bytes, of a message body for it to be compressed; negative to never compress
+     * @param maxBodySize the maximum size, in bytes, of a received message body, before and after decompression
+     * @return the created XprisoMessageBinaryEncoder
+     */
+    public static XprisoMessageBinaryEncoder create(
+            int maxDictionarySize,
+            int compressionThreshold,
+            int maxBodySize )
+    {
+        return new XprisoMessageBinaryEncoder( maxDictionarySize, compressionThreshold, maxBodySize );
+    }
+
+    /**
+     * Constructor, use factory method.
+     *
+     * @param maxDictionarySize the maximum number of Strings to remember; others are sent in full every time
+     * @param compressionThreshold the minimum size, in bytes, of a message body for it to be compressed; negative to never compress
+     * @param maxBodySize the maximum size, in bytes, of a received message body, before and after decompression
+     */
+    protected XprisoMessageBinaryEncoder(
+            int maxDictionarySize,
+            int compressionThreshold,
+            int maxBodySize )
+    {
+        theMaxDictionarySize    = maxDictionarySize;
+        theCompressionThreshold = compressionThreshold;
+        theMaxBodySize          = maxBodySize;
+    }
+
+    /**
+     * Serialize an XprisoMessage to an OutputStream.
+     *
+     * @param msg the XprisoMessage
+     * @param out the OutputStream to which to append the XprisoMessage
+     * @throws EncodingException thrown if a problem occurred during encoding
+     * @throws IOException thrown if an I/O error occurred
+     */
+    public synchronized void encodeXprisoMessage(
+            XprisoMessage msg,
+            OutputStream  out )
+        throws
+            EncodingException,
+            IOException
+    {
+        thePendingStrings.clear();
+        thePendingIndexes.clear();
+
+        ByteArrayOutputStream bodyBuf = new ByteArrayOutputStream( 256 );
+        DataOutputStream      body    = new DataOutputStream( bodyBuf );
+
+        try {
+            encodeBody( msg, body );
+            body.flush();
+
+        } catch( EncodingException ex ) {
+            thePendingStrings.clear(); // the receiver will never see them
+            thePendingIndexes.clear();
+            throw ex;
+        }
+
+        byte [] raw    = bodyBuf.toByteArray();
+        byte [] stored = raw;
+        int     flags  = 0;
+
+        if( theCompressionThreshold >= 0 && raw.length >= theCompressionThreshold ) {
+            byte [] compressed = compress( raw );
+            if( compressed.length < raw.length ) {
+                stored = compressed;
+                flags |= COMPRESSED_FLAG;
+            }
+        }
+
+        DataOutputStream dataOut = new DataOutputStream( out );
+        dataOut.writeByte( flags );
+        writeVarLong( thePendingStrings.size(), dataOut );
+        for( String current : thePendingStrings ) {
+            writeLiteral( current, dataOut );
+        }
+        if( ( flags & COMPRESSED_FLAG ) != 0 ) {
+            writeVarLong( raw.length, dataOut );
+        }
+        writeVarLong( stored.length, dataOut );
+        dataOut.write( stored );
+        dataOut.flush();
+
+        // the receiver will learn about these Strings from this message
+        for( String current : thePendingStrings ) {
+            theEncodingDictionary.put( current, theEncodingDictionary.size() );
+        }
+        thePendingStrings.clear();
+        thePendingIndexes.clear();
+    }
+
+    /**
+     * Deserialize an XprisoMessage from a stream.
+     *
+     * @param in the stream from which to read the XprisoMessage
+     * @param mb the NetMeshBase on whose behalf the decoding is performed
+     * @return return the just-instantiated XprisoMessage
+     * @throws DecodingException thrown if a problem occurred during decoding
+     * @throws IOException thrown if an I/O error occurred
+     */
+    public synchronized XprisoMessage decodeXprisoMessage(
+            InputStream in,
+            NetMeshBase mb )
+        throws
+            DecodingException,
+            IOException
+    {
+        byte [] raw = readHeaderAndBody( in );
+
+        try {
+            return decodeBody( ByteBuffer.wrap( raw ), mb );
+
+        } catch( BufferUnderflowException ex ) {
+            throw new DecodingException( "Truncated XprisoMessage", ex );
+        } catch( IndexOutOfBoundsException ex ) {
+            throw new DecodingException( "Invalid dictionary reference", ex );
+        } catch( IllegalArgumentException ex ) {
+            throw new DecodingException( ex );
+        }
+    }
+
+    /**
+     * Skip an XprisoMessage in a stream, without decoding it. This keeps this
+     * XprisoMessageBinaryEncoder in sync with the sending XprisoMessageBinaryEncoder
+     * when an XprisoMessage cannot be delivered.
+     *
+     * @param in the stream from which to read the XprisoMessage
+     * @throws DecodingException thrown if a problem occurred during decoding
+     * @throws IOException thrown if an I/O error occurred
+     */
+    public synchronized void skipXprisoMessage(
+            InputStream in )
+        throws
+            DecodingException,
+            IOException
+    {
+        DataInputStream dataIn = new DataInputStream( in );
+
+        int flags = dataIn.readUnsignedByte();
+        readDictionaryAdditions( dataIn );
+
+        if( ( flags & COMPRESSED_FLAG ) != 0 ) {
+            readBodyLength( dataIn );
+        }
+        int storedLength = readBodyLength( dataIn );
+        dataIn.skipBytes( storedLength );
+    }
+
+    /**
+     * Determine the number of Strings currently known to the encoding side.
+     *
+     * @return the number of Strings
+     */
+    public synchronized int getEncodingDictionarySize()
+    {
+        return theEncodingDictionary.size();
+    }
+
+    /**
+     * Determine the number of Strings currently known to the decoding side.
+     *
+     * @return the number of Strings
+     */
+    public synchronized int getDecodingDictionarySize()
+    {
+        return theDecodingDictionary.size();
+    }
+
+    /**
+     * Encode the body of an XprisoMessage.
+     *
+     * @param msg the XprisoMessage
+     * @param out the stream to write to
+     * @throws EncodingException thrown if a problem occurred during encoding
+     * @throws IOException thrown if an I/O error occurred
+     */
+    protected void encodeBody(
+            XprisoMessage    msg,
+            DataOutputStream out )
+        throws
+            EncodingException,
+            IOException
+    {
+        writeZigZag( msg.getRequestId(),  out );
+        writeZigZag( msg.getResponseId(), out );
+        writeNetMeshBaseIdentifier( msg.getSenderIdentifier(),   out );
+        writeNetMeshBaseIdentifier( msg.getReceiverIdentifier(), out );
+        out.writeBoolean( msg.getCeaseCommunications() );
+
+        NetMeshObjectAccessSpecification [] requestedFirstTimeObjects = msg.getRequestedFirstTimeObjects();
+        writeCount( requestedFirstTimeObjects, out );
+        if( requestedFirstTimeObjects != null ) {
+            for( NetMeshObjectAccessSpecification current : requestedFirstTimeObjects ) {
+                writeString( current.toExternalForm(), out );
+            }
+        }
+
+        writeIdentifiers( msg.getRequestedCanceledObjects(),         out );
+        writeIdentifiers( msg.getRequestedFreshenReplicas(),         out );
+        writeIdentifiers( msg.getRequestedResynchronizeReplicas(),   out );
+        writeIdentifiers( msg.getRequestedLockObjects(),             out );
+        writeIdentifiers( msg.getPushLockObjects(),                  out );
+        writeIdentifiers( msg.getReclaimedLockObjects(),             out );
+        writeIdentifiers( msg.getRequestedHomeReplicas(),            out );
+        writeIdentifiers( msg.getPushHomeReplicas(),                 out );
+
+        NetMeshObjectDeletedEvent [] deletions = msg.getDeletions();
+        writeCount( deletions, out );
+        if( deletions != null ) {
+            for( NetMeshObjectDeletedEvent current : deletions ) {
+                writeString( current.getAffectedMeshObjectIdentifier().toExternalForm(), out );
+                writeZigZag( current.getTimeEventOccurred(), out );
+            }
+        }
+
+        ExternalizedNetMeshObject [] conveyedMeshObjects = msg.getConveyedMeshObjects();
+        writeCount( conveyedMeshObjects, out );
+        if( conveyedMeshObjects != null ) {
+            for( ExternalizedNetMeshObject current : conveyedMeshObjects ) {
+                encodeExternalizedNetMeshObject( current, out );
+            }
+        }
+
+        NetMeshObjectNeighborAddedEvent [] neighborAdditions = msg.getNeighborAdditions();
+        writeCount( neighborAdditions, out );
+        if( neighborAdditions != null ) {
+            for( NetMeshObjectNeighborAddedEvent current : neighborAdditions ) {
+                writeString( current.getAffectedMeshObjectIdentifier().toExternalForm(), out );
+                writeString( current.getNeighborMeshObjectIdentifier().toExternalForm(), out );
+                writeZigZag( current.getTimeEventOccurred(), out );
+                writeMeshTypeIdentifiers( current.getAffectedRoleTypeIdentifiers(), out );
+            }
+        }
+
+        NetMeshObjectNeighborRemovedEvent [] neighborRemovals = msg.getNeighborRemovals();
+        writeCount( neighborRemovals, out );
+        if( neighborRemovals != null ) {
+            for( NetMeshObjectNeighborRemovedEvent current : neighborRemovals ) {
+                writeString( current.getAffectedMeshObjectIdentifier().toExternalForm(), out );
+                writeString( current.getNeighborMeshObjectIdentifier().toExternalForm(), out );
+                writeZigZag( current.getTimeEventOccurred(), out );
+            }
+        }
+
+        NetMeshObjectPropertyChangeEvent [] propertyChanges = msg.getPropertyChanges();
+        writeCount( propertyChanges, out );
+        if( propertyChanges != null ) {
+            for( NetMeshObjectPropertyChangeEvent current : propertyChanges ) {
+                writeString( current.getAffectedMeshObjectIdentifier().toExternalForm(), out );
+                writeString( current.getPropertyTypeIdentifier().toExternalForm(), out );
+                writeZigZag( current.getTimeEventOccurred(), out );
+                writePropertyValue( current.getDeltaValue(), out );
+            }
+        }
+
+        NetMeshObjectRoleAddedEvent [] roleAdditions = msg.getRoleAdditions();
+        writeCount( roleAdditions, out );
+        if( roleAdditions != null ) {
+            for( NetMeshObjectRoleAddedEvent current : roleAdditions ) {
+                writeString( current.getAffectedMeshObjectIdentifier().toExternalForm(), out );
+                writeString( current.getNeighborMeshObjectIdentifier().toExternalForm(), out );
+                writeZigZag( current.getTimeEventOccurred(), out );
+                writeMeshTypeIdentifiers( current.getAffectedRoleTypeIdentifiers(), out );
+            }
+        }
+
+        NetMeshObjectRoleRemovedEvent [] roleRemovals = msg.getRoleRemovals();
+        writeCount( roleRemovals, out );
+        if( roleRemovals != null ) {
+            for( NetMeshObjectRoleRemovedEvent current : roleRemovals ) {
+                writeString( current.getAffectedMeshObjectIdentifier().toExternalForm(), out );
+                writeString( current.getNeighborMeshObjectIdentifier().toExternalForm(), out );
+                writeZigZag( current.getTimeEventOccurred(), out );
+                writeMeshTypeIdentifiers( current.getAffectedRoleTypeIdentifiers(), out );
+            }
+        }
+
+        NetMeshObjectTypeAddedEvent [] typeAdditions = msg.getTypeAdditions();
+        writeCount( typeAdditions, out );
+        if( typeAdditions != null ) {
+            for( NetMeshObjectTypeAddedEvent current : typeAdditions ) {
+                writeString( current.getAffectedMeshObjectIdentifier().toExternalForm(), out );
+                writeZigZag( current.getTimeEventOccurred(), out );
+                writeMeshTypeIdentifiers( current.getEntityTypeIdentifiers(), out );
+            }
+        }
+
+        NetMeshObjectTypeRemovedEvent [] typeRemovals = msg.getTypeRemovals();
+        writeCount( typeRemovals, out );
+        if( typeRemovals != null ) {
+            for( NetMeshObjectTypeRemovedEvent current : typeRemovals ) {
+                writeString( current.getAffectedMeshObjectIdentifier().toExternalForm(), out );
+                writeZigZag( current.getTimeEventOccurred(), out );
+                writeMeshTypeIdentifiers( current.getEntityTypeIdentifiers(), out );
+            }
+        }
+    }
+
+    /**
+     * Encode an ExternalizedNetMeshObject.
+     *
+     * @param obj the ExternalizedNetMeshObject
+     * @param out the stream to write to
+     * @throws EncodingException thrown if a problem occurred during encoding
+     * @throws IOException thrown if an I/O error occurred
+     */
+    protected void encodeExternalizedNetMeshObject(
+            ExternalizedNetMeshObject obj,
+            DataOutputStream          out )
+        throws
+            EncodingException,
+            IOException
+    {
+        writeString( obj.getIdentifier().toExternalForm(), out );
+        writeZigZag( obj.getTimeCreated(), out );
+        writeZigZag( obj.getTimeUpdated(), out );
+        writeZigZag( obj.getTimeRead(),    out );
+        writeZigZag( obj.getTimeExpires(), out );
+
+        int flags = 0;
+        if( obj.getGiveUpLock() ) {
+            flags |= GIVE_UP_LOCK_FLAG;
+        }
+        if( obj.getGiveUpHomeReplica() ) {
+            flags |= GIVE_UP_HOME_FLAG;
+        }
+        out.writeByte( flags );
+
+        writeMeshTypeIdentifiers( obj.getExternalTypeIdentifiers(), out );
+
+        MeshTypeIdentifier [] propertyTypes  = obj.getPropertyTypes();
+        PropertyValue []      propertyValues = obj.getPropertyValues();
+        writeCount( propertyTypes, out );
+        if( propertyTypes != null ) {
+            for( int i=0 ; i<propertyTypes.length ; ++i ) {
+                writeString( propertyTypes[i].toExternalForm(), out );
+                writePropertyValue( propertyValues[i], out );
+            }
+        }
+
+        NetMeshObjectIdentifier [] neighbors = obj.getNeighbors();
+        writeCount( neighbors, out );
+        if( neighbors != null ) {
+            for( NetMeshObjectIdentifier current : neighbors ) {
+                writeString( current.toExternalForm(), out );
+                writeMeshTypeIdentifiers( obj.getRoleTypesFor( current ), out );
+
+                NetMeshBaseIdentifier [] relationshipProxies = obj.getRelationshipProxyIdentifiersFor( current );
+                writeCount( relationshipProxies, out );
+                if( relationshipProxies != null ) {
+                    for( NetMeshBaseIdentifier proxy : relationshipProxies ) {
+                        writeNetMeshBaseIdentifier( proxy, out );
+                    }
+                }
+            }
+        }
+
+        NetMeshBaseIdentifier [] proxies   = obj.getProxyIdentifiers();
+        NetMeshBaseIdentifier    homeProxy = obj.getProxyTowardsHomeNetworkIdentifier();
+        NetMeshBaseIdentifier    lockProxy = obj.getProxyTowardsLockNetworkIdentifier();
+        writeCount( proxies, out );
+        if( proxies != null ) {
+            for( NetMeshBaseIdentifier current : proxies ) {
+                writeNetMeshBaseIdentifier( current, out );
+
+                int proxyFlags = 0;
+                if( current.equals( homeProxy )) {
+                    proxyFlags |= PROXY_TOWARDS_HOME_FLAG;
+                }
+                if( current.equals( lockProxy )) {
+                    proxyFlags |= PROXY_TOWARDS_LOCK_FLAG;
+                }
+                out.writeByte( proxyFlags );
+            }
+        }
+    }
+
+    /**
+     * Encode a PropertyValue, prefixed by its type.
+     *
+     * @param value the PropertyValue, may be null
+     * @param out the stream to write to
+     * @throws EncodingException thrown if a problem occurred during encoding
+     * @throws IOException thrown if an I/O error occurred
+     */
+    protected void writePropertyValue(
+            PropertyValue    value,
+            DataOutputStream out )
+        throws
+            EncodingException,
+            IOException
+    {
+        if( value == null ) {
+            out.writeByte( NULL_VALUE );
+
+        } else if( value instanceof BlobValue ) {
+            BlobValue realValue = (BlobValue) value;
+            String    mime      = realValue.getMimeType();
+            if( mime == null ) {
+                mime = "?/?";
+            }
+            if( realValue.delayedLoadingFrom() != null ) {
+                out.writeByte( BLOB_DELAYED_VALUE );
+                writeString( mime, out );
+                writeLiteral( realValue.delayedLoadingFrom(), out );
+
+            } else if( mime.startsWith( "text/" )) {
+                out.writeByte( BLOB_TEXT_VALUE );
+                writeString( mime, out );
+                writeLiteral( realValue.getAsString(), out );
+
+            } else {
+                byte [] bytes = realValue.value();
+                out.writeByte( BLOB_BYTES_VALUE );
+                writeString( mime, out );
+                writeVarLong( bytes.length, out );
+                out.write( bytes );
+            }
+
+        } else if( value instanceof BooleanValue ) {
+            out.writeByte( ((BooleanValue)value).value() ? BOOLEAN_TRUE_VALUE : BOOLEAN_FALSE_VALUE );
+
+        } else if( value instanceof ColorValue ) {
+            out.writeByte( COLOR_VALUE );
+            out.writeInt( ((ColorValue)value).getRGB() );
+
+        } else if( value instanceof CurrencyValue ) {
+            out.writeByte( CURRENCY_VALUE );
+            writeLiteral( ((CurrencyValue)value).value(), out );
+
+        } else if( value instanceof EnumeratedValue ) {
+            out.writeByte( ENUMERATED_VALUE );
+            writeString( ((EnumeratedValue)value).value(), out );
+
+        } else if( value instanceof ExtentValue ) {
+            ExtentValue realValue = (ExtentValue) value;
+            out.writeByte( EXTENT_VALUE );
+            out.writeDouble( realValue.getWidth() );
+            out.writeDouble( realValue.getHeight() );
+
+        } else if( value instanceof FloatValue ) {
+            out.writeByte( FLOAT_VALUE );
+            out.writeDouble( ((FloatValue)value).value() );
+
+        } else if( value instanceof IntegerValue ) {
+            out.writeByte( INTEGER_VALUE );
+            writeZigZag( ((IntegerValue)value).value(), out );
+
+        } else if( value instanceof MultiplicityValue ) {
+            MultiplicityValue realValue = (MultiplicityValue) value;
+            out.writeByte( MULTIPLICITY_VALUE );
+            writeZigZag( realValue.getMinimum(), out );
+            writeZigZag( realValue.getMaximum(), out );
+
+        } else if( value instanceof PointValue ) {
+            PointValue realValue = (PointValue) value;
+            out.writeByte( POINT_VALUE );
+            out.writeDouble( realValue.getX() );
+            out.writeDouble( realValue.getY() );
+
+        } else if( value instanceof StringValue ) {
+            out.writeByte( STRING_VALUE );
+            writeLiteral( ((StringValue)value).value(), out );
+
+        } else if( value instanceof TimePeriodValue ) {
+            TimePeriodValue realValue = (TimePeriodValue) value;
+            out.writeByte( TIME_PERIOD_VALUE );
+            writeZigZag( realValue.getYear(),   out );
+            writeZigZag( realValue.getMonth(),  out );
+            writeZigZag( realValue.getDay(),    out );
+            writeZigZag( realValue.getHour(),   out );
+            writeZigZag( realValue.getMinute(), out );
+            out.writeFloat( realValue.getSecond() );
+
+        } else if( value instanceof TimeStampValue ) {
+            out.writeByte( TIME_STAMP_VALUE );
+            writeZigZag( ((TimeStampValue)value).getAsMillis(), out );
+
+        } else {
+            throw new EncodingException( "Cannot encode PropertyValue of type " + value.getClass().getName() );
+        }
+    }
+
+    /**
+     * Decode the body of an XprisoMessage.
+     *
+     * @param in the buffer to read from
+     * @param mb the NetMeshBase on whose behalf the decoding is performed
+     * @return the decoded XprisoMessage
+     * @throws DecodingException thrown if a problem occurred during decoding
+     */
+    protected XprisoMessage decodeBody(
+            ByteBuffer  in,
+            NetMeshBase mb )
+        throws
+            DecodingException
+    {
+        long                  requestId  = readZigZag( in );
+        long                  responseId = readZigZag( in );
+        NetMeshBaseIdentifier sender     = readNetMeshBaseIdentifier( in, mb );
+        NetMeshBaseIdentifier receiver   = readNetMeshBaseIdentifier( in, mb );
+
+        ParserFriendlyXprisoMessage ret = ParserFriendlyXprisoMessage.create( sender, receiver );
+        ret.setRequestId( requestId );
+        ret.setResponseId( responseId );
+        if( in.get() != 0 ) {
+            ret.setCeaseCommunications( true );
+        }
+
+        try {
+            for( int i = readCount( in ) ; i>0 ; --i ) {
+                ret.addRequestedFirstTimeObject( mb.getNetMeshObjectAccessSpecificationFactory().fromExternalForm( readString( in )));
+            }
+        } catch( ParseException ex ) {
+            throw new DecodingException( ex );
+        }
+
+        for( int i = readCount( in ) ; i>0 ; --i ) {
+            ret.addRequestedCanceledObject( readNetMeshObjectIdentifier( in, mb ));
+        }
+        for( int i = readCount( in ) ; i>0 ; --i ) {
+            ret.addRequestedFreshenReplica( readNetMeshObjectIdentifier( in, mb ));
+        }
+        for( int i = readCount( in ) ; i>0 ; --i ) {
+            ret.addRequestedResynchronizeReplica( readNetMeshObjectIdentifier( in, mb ));
+        }
+        for( int i = readCount( in ) ; i>0 ; --i ) {
+            ret.addRequestedLockObject( readNetMeshObjectIdentifier( in, mb ));
+        }
+        for( int i = readCount( in ) ; i>0 ; --i ) {
+            ret.addPushLockObject( readNetMeshObjectIdentifier( in, mb ));
+        }
+        for( int i = readCount( in ) ; i>0 ; --i ) {
+            ret.addReclaimedLockObject( readNetMeshObjectIdentifier( in, mb ));
+        }
+        for( int i = readCount( in ) ; i>0 ; --i ) {
+            ret.addRequestedHomeReplica( readNetMeshObjectIdentifier( in, mb ));
+        }
+        for( int i = readCount( in ) ; i>0 ; --i ) {
+            ret.addPushHomeReplica( readNetMeshObjectIdentifier( in, mb ));
+        }
+
+        for( int i = readCount( in ) ; i>0 ; --i ) {
+            NetMeshObjectIdentifier ref  = readNetMeshObjectIdentifier( in, mb );
+            long                    time = readZigZag( in );
+            ret.addDeleteChange( new NetMeshObjectDeletedEvent( null, sender, null, ref, sender, null, time ));
+        }
+
+        for( int i = readCount( in ) ; i>0 ; --i ) {
+            ret.addConveyedMeshObject( decodeExternalizedNetMeshObject( in, mb ));
+        }
+
+        for( int i = readCount( in ) ; i>0 ; --i ) {
+            NetMeshObjectIdentifier ref      = readNetMeshObjectIdentifier( in, mb );
+            NetMeshObjectIdentifier neighbor = readNetMeshObjectIdentifier( in, mb );
+            long                    time     = readZigZag( in );
+            MeshTypeIdentifier []   types    = readMeshTypeIdentifiers( in, mb );
+            ret.addNeighborAddition( new NetMeshObjectNeighborAddedEvent( ref, types, neighbor, sender, time, null ));
+        }
+        for( int i = readCount( in ) ; i>0 ; --i ) {
+            NetMeshObjectIdentifier ref      = readNetMeshObjectIdentifier( in, mb );
+            NetMeshObjectIdentifier neighbor = readNetMeshObjectIdentifier( in, mb );
+            long                    time     = readZigZag( in );
+            ret.addNeighborRemoval( new NetMeshObjectNeighborRemovedEvent( ref, neighbor, sender, time, null ));
+        }
+        for( int i = readCount( in ) ; i>0 ; --i ) {
+            NetMeshObjectIdentifier ref   = readNetMeshObjectIdentifier( in, mb );
+            MeshTypeIdentifier      type  = readMeshTypeIdentifier( in, mb );
+            long                    time  = readZigZag( in );
+            PropertyValue           value = readPropertyValue( in );
+            ret.addPropertyChange( new NetMeshObjectPropertyChangeEvent( ref, type, value, sender, time, null ));
+        }
+        for( int i = readCount( in ) ; i>0 ; --i ) {
+            NetMeshObjectIdentifier ref      = readNetMeshObjectIdentifier( in, mb );
+            NetMeshObjectIdentifier neighbor = readNetMeshObjectIdentifier( in, mb );
+            long                    time     = readZigZag( in );
+            MeshTypeIdentifier []   types    = readMeshTypeIdentifiers( in, mb );
+            ret.addRoleAddition( new NetMeshObjectRoleAddedEvent( ref, types, neighbor, sender, time, null ));
+        }
+        for( int i = readCount( in ) ; i>0 ; --i ) {
+            NetMeshObjectIdentifier ref      = readNetMeshObjectIdentifier( in, mb );
+            NetMeshObjectIdentifier neighbor = readNetMeshObjectIdentifier( in, mb );
+            long                    time     = readZigZag( in );
+            MeshTypeIdentifier []   types    = readMeshTypeIdentifiers( in, mb );
+            ret.addRoleRemoval( new NetMeshObjectRoleRemovedEvent( ref, types, neighbor, sender, time, null ));
+        }
+        for( int i = readCount( in ) ; i>0 ; --i ) {
+            NetMeshObjectIdentifier ref   = readNetMeshObjectIdentifier( in, mb );
+            long                    time  = readZigZag( in );
+            MeshTypeIdentifier []   types = readMeshTypeIdentifiers( in, mb );
+            ret.addTypeAddition( new NetMeshObjectTypeAddedEvent( ref, types, sender, time, null ));
+        }
+        for( int i = readCount( in ) ; i>0 ; --i ) {
+            NetMeshObjectIdentifier ref   = readNetMeshObjectIdentifier( in, mb );
+            long                    time  = readZigZag( in );
+            MeshTypeIdentifier []   types = readMeshTypeIdentifiers( in, mb );
+            ret.addTypeRemoval( new NetMeshObjectTypeRemovedEvent( ref, types, sender, time, null ));
+        }
+
+        if( in.hasRemaining() ) {
+            throw new DecodingException( "Unexpected data after end of XprisoMessage: " + in.remaining() + " bytes" );
+        }
+        return ret;
+    }
+
+    /**
+     * Decode an ExternalizedNetMeshObject.
+     *
+     * @param in the buffer to read from
+     * @param mb the NetMeshBase on whose behalf the decoding is performed
+     * @return the decoded ExternalizedNetMeshObject
+     * @throws DecodingException thrown if a problem occurred during decoding
+     */
+    protected ExternalizedNetMeshObject decodeExternalizedNetMeshObject(
+            ByteBuffer  in,
+            NetMeshBase mb )
+        throws
+            DecodingException
+    {
+        ParserFriendlyExternalizedNetMeshObject ret
+                = (ParserFriendlyExternalizedNetMeshObject) mb.getMeshBaseLifecycleManager().createParserFriendlyExternalizedMeshObject();
+
+        ret.setIdentifier( readNetMeshObjectIdentifier( in, mb ));
+        ret.setTimeCreated( readZigZag( in ));
+        ret.setTimeUpdated( readZigZag( in ));
+        ret.setTimeRead(    readZigZag( in ));
+        ret.setTimeExpires( readZigZag( in ));
+
+        int flags = in.get();
+        if( ( flags & GIVE_UP_LOCK_FLAG ) != 0 ) {
+            ret.setGiveUpLock( true );
+        }
+        if( ( flags & GIVE_UP_HOME_FLAG ) != 0 ) {
+            ret.setGiveUpHome( true );
+        }
+
+        for( int i = readCount( in ) ; i>0 ; --i ) {
+            ret.addMeshType( readMeshTypeIdentifier( in, mb ));
+        }
+        for( int i = readCount( in ) ; i>0 ; --i ) {
+            ret.addPropertyType( readMeshTypeIdentifier( in, mb ));
+            ret.addPropertyValue( readPropertyValue( in ));
+        }
+        for( int i = readCount( in ) ; i>0 ; --i ) {
+            ParserFriendlyExternalizedNetMeshObject.RelationshipWithRelationshipProxies relationship
+                    = new ParserFriendlyExternalizedNetMeshObject.RelationshipWithRelationshipProxies(
+                            ret.getIdentifier(),
+                            readNetMeshObjectIdentifier( in, mb ),
+                            -1L );
+
+            for( int j = readCount( in ) ; j>0 ; --j ) {
+                relationship.addType( readMeshTypeIdentifier( in, mb ));
+            }
+            for( int j = readCount( in ) ; j>0 ; --j ) {
+                relationship.addRelationshipProxyIdentifier( readNetMeshBaseIdentifier( in, mb ));
+            }
+            ret.addRelationship( relationship );
+        }
+        for( int i = readCount( in ) ; i>0 ; --i ) {
+            NetMeshBaseIdentifier proxy      = readNetMeshBaseIdentifier( in, mb );
+            int                   proxyFlags = in.get();
+
+            ret.addProxyNetworkIdentifier(
+                    proxy,
+                    ( proxyFlags & PROXY_TOWARDS_HOME_FLAG ) != 0,
+                    ( proxyFlags & PROXY_TOWARDS_LOCK_FLAG ) != 0 );
+        }
+        return ret;
+    }
+
+    /**
+     * Decode a PropertyValue.
+     *
+     * @param in the buffer to read from
+     * @return the decoded PropertyValue, may be null
+     * @throws DecodingException thrown if a problem occurred during decoding
+     */
+    protected PropertyValue readPropertyValue(
+            ByteBuffer in )
+        throws
+            DecodingException
+    {
+        byte type = in.get();
+        switch( type ) {
+            case NULL_VALUE:
+                return null;
+
+            case BLOB_DELAYED_VALUE: {
+                String mime = readString( in );
+                return BlobDataType.theAnyType.createBlobValueByLoadingFrom( readLiteral( in ), mime );
+            }
+            case BLOB_TEXT_VALUE: {
+                String mime = readString( in );
+                return BlobDataType.theAnyType.createBlobValue( readLiteral( in ), mime );
+                    // This needs to be patched later once we have the instance of BlobDataType, as with XML
+            }
+            case BLOB_BYTES_VALUE: {
+                String  mime  = readString( in );
+                byte [] bytes = new byte[ (int) readVarLong( in ) ];
+                in.get( bytes );
+                return BlobDataType.theAnyType.createBlobValue( bytes, mime );
+            }
+            case BOOLEAN_FALSE_VALUE:
+                return BooleanValue.FALSE;
+
+            case BOOLEAN_TRUE_VALUE:
+                return BooleanValue.TRUE;
+
+            case COLOR_VALUE:
+                return ColorValue.create( in.getInt() );
+
+            case CURRENCY_VALUE:
+                try {
+                    return CurrencyValue.parseCurrencyValue( readLiteral( in ));
+                } catch( ParseException ex ) {
+                    throw new DecodingException( ex );
+                }
+
+            case ENUMERATED_VALUE:
+                return EnumeratedValue.create( null, readString( in ), null, null );
+                    // This needs to be patched later once we have the instance of EnumeratedDataType, as with XML
+
+            case EXTENT_VALUE: {
+                double width  = in.getDouble();
+                double height = in.getDouble();
+                return ExtentValue.create( width, height );
+            }
+            case FLOAT_VALUE:
+                return FloatValue.create( in.getDouble() );
+
+            case INTEGER_VALUE:
+                return IntegerValue.create( readZigZag( in ));
+
+            case MULTIPLICITY_VALUE: {
+                int min = (int) readZigZag( in );
+                int max = (int) readZigZag( in );
+                return MultiplicityValue.create( min, max );
+            }
+            case POINT_VALUE: {
+                double x = in.getDouble();
+                double y = in.getDouble();
+                return PointValue.create( x, y );
+            }
+            case STRING_VALUE:
+                return StringValue.create( readLiteral( in ));
+
+            case TIME_PERIOD_VALUE: {
+                short year   = (short) readZigZag( in );
+                short month  = (short) readZigZag( in );
+                short day    = (short) readZigZag( in );
+                short hour   = (short) readZigZag( in );
+                short minute = (short) readZigZag( in );
+                float second = in.getFloat();
+                return TimePeriodValue.create( year, month, day, hour, minute, second );
+            }
+            case TIME_STAMP_VALUE:
+                return TimeStampValue.create( readZigZag( in ));
+
+            default:
+                throw new DecodingException( "Unknown PropertyValue type " + type );
+        }
+    }
+
+    /**
+     * Write a count of elements in an array, treating null as empty.
+     *
+     * @param array the array, may be null
+     * @param out the stream to write to
+     * @throws IOException thrown if an I/O error occurred
+     */
+    protected void writeCount(
+            Object []        array,
+            DataOutputStream out )
+        throws
+            IOException
+    {
+        writeVarLong( array != null ? array.length : 0, out );
+    }
+
+    /**
+     * Read a count of elements.
+     *
+     * @param in the buffer to read from
+     * @return the count
+     * @throws DecodingException thrown if the count is invalid
+     */
+    protected int readCount(
+            ByteBuffer in )
+        throws
+            DecodingException
+    {
+        long ret = readVarLong( in );
+        if( ret < 0 || ret > in.remaining() ) { // each element needs at least one byte
+            throw new DecodingException( "Invalid count: " + ret );
+        }
+        return (int) ret;
+    }
+
+    /**
+     * Write an array of identifiers.
+     *
+     * @param ids the identifiers, may be null
+     * @param out the stream to write to
+     * @throws IOException thrown if an I/O error occurred
+     */
+    protected void writeIdentifiers(
+            NetMeshObjectIdentifier [] ids,
+            DataOutputStream           out )
+        throws
+            IOException
+    {
+        writeCount( ids, out );
+        if( ids != null ) {
+            for( NetMeshObjectIdentifier current : ids ) {
+                writeString( current.toExternalForm(), out );
+            }
+        }
+    }
+
+    /**
+     * Write an array of MeshTypeIdentifiers.
+     *
+     * @param ids the identifiers, may be null
+     * @param out the stream to write to
+     * @throws IOException thrown if an I/O error occurred
+     */
+    protected void writeMeshTypeIdentifiers(
+            MeshTypeIdentifier [] ids,
+            DataOutputStream      out )
+        throws
+            IOException
+    {
+        writeCount( ids, out );
+        if( ids != null ) {
+            for( MeshTypeIdentifier current : ids ) {
+                writeString( current.toExternalForm(), out );
+            }
+        }
+    }
+
+    /**
+     * Write a NetMeshBaseIdentifier.
+     *
+     * @param id the identifier, may be null
+     * @param out the stream to write to
+     * @throws IOException thrown if an I/O error occurred
+     */
+    protected void writeNetMeshBaseIdentifier(
+            NetMeshBaseIdentifier id,
+            DataOutputStream      out )
+        throws
+            IOException
+    {
+        writeString( id != null ? id.getCanonicalForm() : null, out );
+    }
+
+    /**
+     * Read a NetMeshObjectIdentifier.
+     *
+     * @param in the buffer to read from
+     * @param mb the NetMeshBase on whose behalf the decoding is performed
+     * @return the identifier
+     * @throws DecodingException thrown if a problem occurred during decoding
+     */
+    protected NetMeshObjectIdentifier readNetMeshObjectIdentifier(
+            ByteBuffer  in,
+            NetMeshBase mb )
+        throws
+            DecodingException
+    {
+        String s = readString( in );
+        try {
+            return ((NetMeshObjectIdentifierFactory) mb.getMeshObjectIdentifierFactory()).guessFromExternalForm( s );
+
+        } catch( ParseException ex ) {
+            throw new DecodingException( ex );
+        }
+    }
+
+    /**
+     * Read a NetMeshBaseIdentifier.
+     *
+     * @param in the buffer to read from
+     * @param mb the NetMeshBase on whose behalf the decoding is performed
+     * @return the identifier, or null
+     * @throws DecodingException thrown if a problem occurred during decoding
+     */
+    protected NetMeshBaseIdentifier readNetMeshBaseIdentifier(
+            ByteBuffer  in,
+            NetMeshBase mb )
+        throws
+            DecodingException
+    {
+        String s = readString( in );
+        if( s == null ) {
+            return null;
+        }
+        try {
+            return mb.getMeshBaseIdentifierFactory().guessFromExternalForm( s );
+
+        } catch( ParseException ex ) {
+            throw new DecodingException( ex );
+        }
+    }
+
+    /**
+     * Read a MeshTypeIdentifier.
+     *
+     * @param in the buffer to read from
+     * @param mb the NetMeshBase on whose behalf the decoding is performed
+     * @return the identifier
+     * @throws DecodingException thrown if a problem occurred during decoding
+     */
+    protected MeshTypeIdentifier readMeshTypeIdentifier(
+            ByteBuffer  in,
+            NetMeshBase mb )
+        throws
+            DecodingException
+    {
+        MeshTypeIdentifierFactory factory = mb.getModelBase().getMeshTypeIdentifierFactory();
+
+        return factory.fromExternalForm( readString( in ));
+    }
+
+    /**
+     * Read an array of MeshTypeIdentifiers.
+     *
+     * @param in the buffer to read from
+     * @param mb the NetMeshBase on whose behalf the decoding is performed
+     * @return the identifiers
+     * @throws DecodingException thrown if a problem occurred during decoding
+     */
+    protected MeshTypeIdentifier [] readMeshTypeIdentifiers(
+            ByteBuffer  in,
+            NetMeshBase mb )
+        throws
+            DecodingException
+    {
+        MeshTypeIdentifier [] ret = new MeshTypeIdentifier[ readCount( in ) ];
+        for( int i=0 ; i<ret.length ; ++i ) {
+            ret[i] = readMeshTypeIdentifier( in, mb );
+        }
+        return ret;
+    }
+
+    /**
+     * Write a frequently repeated String, using the dictionary.
+     *
+     * @param s the String, may be null
+     * @param out the stream to write to
+     * @throws IOException thrown if an I/O error occurred
+     */
+    protected void writeString(
+            String           s,
+            DataOutputStream out )
+        throws
+            IOException
+    {
+        if( s == null ) {
+            writeVarLong( NULL_STRING_REF, out );
+            return;
+        }
+        Integer index = theEncodingDictionary.get( s );
+        if( index == null ) {
+            index = thePendingIndexes.get( s );
+            if( index == null && theEncodingDictionary.size() + thePendingStrings.size() < theMaxDictionarySize ) {
+                index = theEncodingDictionary.size() + thePendingStrings.size();
+                thePendingStrings.add( s );
+                thePendingIndexes.put( s, index );
+            }
+        }
+        if( index != null ) {
+            writeVarLong( index + FIRST_DICTIONARY_REF, out );
+        } else {
+            writeVarLong( LITERAL_STRING_REF, out );
+            writeLiteral( s, out );
+        }
+    }
+
+    /**
+     * Read a frequently repeated String, using the dictionary.
+     *
+     * @param in the buffer to read from
+     * @return the String, or null
+     * @throws DecodingException thrown if a problem occurred during decoding
+     */
+    protected String readString(
+            ByteBuffer in )
+        throws
+            DecodingException
+    {
+        long ref = readVarLong( in );
+        if( ref == NULL_STRING_REF ) {
+            return null;
+        }
+        if( ref == LITERAL_STRING_REF ) {
+            return readLiteral( in );
+        }
+        return theDecodingDictionary.get( (int) ( ref - FIRST_DICTIONARY_REF ));
+    }
+
+    /**
+     * Read the Strings that the sender added to the dictionary with this XprisoMessage,
+     * and add them to our dictionary. The sender must not use a larger maximum dictionary
+     * size than we do.
+     *
+     * @param in the stream to read from
+     * @throws DecodingException thrown if the additions would make the dictionary too large
+     * @throws IOException thrown if an I/O error occurred
+     */
+    protected void readDictionaryAdditions(
+            DataInputStream in )
+        throws
+            DecodingException,
+            IOException
+    {
+        long n = readVarLong( in );
+        if( n < 0 || theDecodingDictionary.size() + n > theMaxDictionarySize ) {
+            throw new DecodingException( "Dictionary would exceed its maximum size of " + theMaxDictionarySize + ": " + theDecodingDictionary.size() + " + " + n );
+        }
+        for( long i=0 ; i<n ; ++i ) {
+            byte [] bytes = new byte[ readBodyLength( in ) ];
+            in.readFully( bytes );
+            theDecodingDictionary.add( new String( bytes, StandardCharsets.UTF_8 ));
+        }
+    }
+
+    /**
+     * Read the header of an XprisoMessage, update the dictionary and return the uncompressed body.
+     *
+     * @param in the stream to read from
+     * @return the body
+     * @throws DecodingException thrown if a problem occurred during decoding
+     * @throws IOException thrown if an I/O error occurred
+     */
+    protected byte [] readHeaderAndBody(
+            InputStream in )
+        throws
+            DecodingException,
+            IOException
+    {
+        DataInputStream dataIn = new DataInputStream( in );
+
+        int flags = dataIn.readUnsignedByte();
+        readDictionaryAdditions( dataIn );
+
+        int rawLength = -1;
+        if( ( flags & COMPRESSED_FLAG ) != 0 ) {
+            rawLength = readBodyLength( dataIn );
+        }
+        byte [] stored = new byte[ readBodyLength( dataIn ) ];
+        dataIn.readFully( stored );
+
+        if( rawLength < 0 ) {
+            return stored;
+        }
+        return decompress( stored, rawLength );
+    }
+
+    /**
+     * Read the length of a message body, and make sure we are willing to allocate it.
+     *
+     * @param in the stream to read from
+     * @return the length
+     * @throws DecodingException thrown if the length is negative or exceeds the maximum
+     * @throws IOException thrown if an I/O error occurred
+     */
+    protected int readBodyLength(
+            DataInputStream in )
+        throws
+            DecodingException,
+            IOException
+    {
+        long ret = readVarLong( in );
+        if( ret < 0 || ret > theMaxBodySize ) {
+            throw new DecodingException( "XprisoMessage body would exceed its maximum size of " + theMaxBodySize + ": " + ret );
+        }
+        return (int) ret;
+    }
+
+    /**
+     * Compress a message body.
+     *
+     * @param raw the uncompressed body
+     * @return the compressed body
+     */
+    protected byte [] compress(
+            byte [] raw )
+    {
+        Deflater deflater = new Deflater( Deflater.BEST_SPEED, true );
+        try {
+            deflater.setInput( raw );
+            deflater.finish();
+
+            ByteArrayOutputStream ret = new ByteArrayOutputStream( raw.length / 2 + 16 );
+            byte []               buf = new byte[ 8192 ];
+            while( !deflater.finished() ) {
+                int n = deflater.deflate( buf );
+                ret.write( buf, 0, n );
+            }
+            return ret.toByteArray();
+
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Decompress a message body.
+     *
+     * @param stored the compressed body
+     * @param rawLength the length of the uncompressed body
+     * @return the uncompressed body
+     * @throws DecodingException thrown if the body could not be decompressed
+     */
+    protected byte [] decompress(
+            byte [] stored,
+            int     rawLength )
+        throws
+            DecodingException
+    {
+        if( rawLength < 0 || rawLength > theMaxBodySize ) {
+            throw new DecodingException( "XprisoMessage body would exceed its maximum size of " + theMaxBodySize + ": " + rawLength );
+        }
+        Inflater inflater = new Inflater( true );
+        try {
+            inflater.setInput( stored );
+
+            byte [] ret = new byte[ rawLength ];
+            int     n   = 0;
+            while( n < rawLength ) {
+                int found = inflater.inflate( ret, n, rawLength - n );
+                if( found == 0 && ( inflater.finished() || inflater.needsInput() )) {
+                    break;
+                }
+                n += found;
+            }
+            if( n != rawLength ) {
+                throw new DecodingException( "Compressed XprisoMessage has wrong length: " + n + " vs. " + rawLength );
+            }
+            return ret;
+
+        } catch( DataFormatException ex ) {
+            throw new DecodingException( ex );
+
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /**
+     * Write a String in full, without using the dictionary.
+     *
+     * @param s the String
+     * @param out the stream to write to
+     * @throws IOException thrown if an I/O error occurred
+     */
+    protected static void writeLiteral(
+            String           s,
+            DataOutputStream out )
+        throws
+            IOException
+    {
+        byte [] bytes = s.getBytes( StandardCharsets.UTF_8 );
+        writeVarLong( bytes.length, out );
+        out.write( bytes );
+    }
+
+    /**
+     * Read a String written in full.
+     *
+     * @param in the buffer to read from
+     * @return the String
+     * @throws DecodingException thrown if a problem occurred during decoding
+     */
+    protected static String readLiteral(
+            ByteBuffer in )
+        throws
+            DecodingException
+    {
+        long length = readVarLong( in );
+        if( length < 0 || length > in.remaining() ) {
+            throw new DecodingException( "Invalid String length: " + length );
+        }
+        String ret = new String( in.array(), in.arrayOffset() + in.position(), (int) length, StandardCharsets.UTF_8 );
+        in.position( in.position() + (int) length );
+        return ret;
+    }
+
+    /**
+     * Write a non-negative number using as few bytes as possible: seven bits per byte,
+     * with the high bit indicating that more bytes follow.
+     *
+     * @param value the number
+     * @param out the stream to write to
+     * @throws IOException thrown if an I/O error occurred
+     */
+    protected static void writeVarLong(
+            long             value,
+            DataOutputStream out )
+        throws
+            IOException
+    {
+        while( ( value & ~0x7FL ) != 0 ) {
+            out.writeByte( (int) ( ( value & 0x7F ) | 0x80 ));
+            value >>>= 7;
+        }
+        out.writeByte( (int) value );
+    }
+
+    /**
+     * Write a number that may be negative, mapping small negative numbers to small positive ones.
+     *
+     * @param value the number
+     * @param out the stream to write to
+     * @throws IOException thrown if an I/O error occurred
+     */
+    protected static void writeZigZag(
+            long             value,
+            DataOutputStream out )
+        throws
+            IOException
+    {
+        writeVarLong( ( value << 1 ) ^ ( value >> 63 ), out );
+    }
+
+    /**
+     * Read a number written by writeVarLong.
+     *
+     * @param in the buffer to read from
+     * @return the number
+     * @throws DecodingException thrown if the number is malformed
+     */
+    protected static long readVarLong(
+            ByteBuffer in )
+        throws
+            DecodingException
+    {
+        long ret   = 0;
+        int  shift = 0;
+        while( shift < 64 ) {
+            byte b = in.get();
+            ret |= (long) ( b & 0x7F ) << shift;
+            if( ( b & 0x80 ) == 0 ) {
+                return ret;
+            }
+            shift += 7;
+        }
+        throw new DecodingException( "Malformed variable-length number" );
+    }
+
+    /**
+     * Read a number written by writeVarLong.
+     *
+     * @param in the stream to read from
+     * @return the number
+     * @throws IOException thrown if an I/O error occurred, or the number is malformed
+     */
+    protected static long readVarLong(
+            DataInputStream in )
+        throws
+            IOException
+    {
+        long ret   = 0;
+        int  shift = 0;
+        while( shift < 64 ) {
+            byte b = in.readByte();
+            ret |= (long) ( b & 0x7F ) << shift;
+            if( ( b & 0x80 ) == 0 ) {
+                return ret;
+            }
+            shift += 7;
+        }
+        throw new IOException( "Malformed variable-length number" );
+    }
+
+    /**
+     * Read a number written by writeZigZag.
+     *
+     * @param in the buffer to read from
+     * @return the number
+     * @throws DecodingException thrown if the number is malformed
+     */
+    protected static long readZigZag(
+            ByteBuffer in )
+        throws
+            DecodingException
+    {
+        long raw = readVarLong( in );
+        return ( raw >>> 1 ) ^ -( raw & 1 );
+    }
+
+    /**
+     * The maximum number of Strings in the dictionary.
+     */
+    protected final int theMaxDictionarySize;
+
+    /**
+     * The minimum size of a message body for it to be compressed.
+     */
+    protected final int theCompressionThreshold;
+
+    /**
+     * The maximum size of a received message body, before and after decompression.
+     */
+    protected final int theMaxBodySize;
+
+    /**
+     * The Strings already known to the receiver, and their index.
+     */
+    protected final HashMap<String,Integer> theEncodingDictionary = new HashMap<>();
+
+    /**
+     * The Strings that the XprisoMessage currently being encoded adds to the dictionary.
+     */
+    protected final List<String> thePendingStrings = new ArrayList<>();
+
+    /**
+     * The index in the dictionary of each of thePendingStrings.
+     */
+    protected final HashMap<String,Integer> thePendingIndexes = new HashMap<>();
+
+    /**
+     * The Strings received so far, by index.
+     */
+    protected final List<String> theDecodingDictionary = new ArrayList<>();
+
+    /**
+     * Our ResourceHelper.
+     */
+    private static final ResourceHelper theResourceHelper = ResourceHelper.getInstance( XprisoMessageBinaryEncoder.class );
+
+    /**
+     * The default maximum number of Strings in the dictionary.
+     */
+    public static final int DEFAULT_MAX_DICTIONARY_SIZE = theResourceHelper.getResourceIntegerOrDefault( "MaxDictionarySize", 64 * 1024 );
+
+    /**
+     * The default minimum size of a message body for it to be compressed.
+     */
+    public static final int DEFAULT_COMPRESSION_THRESHOLD = theResourceHelper.getResourceIntegerOrDefault( "CompressionThreshold", 1024 );
+
+    /**
+     * The default maximum size of a received message body, before and after decompression.
+     * This is the same as the default maximum frame size of NioPingPongNetMessageTransport.
+     */
+    public static final int DEFAULT_MAX_BODY_SIZE = theResourceHelper.getResourceIntegerOrDefault( "MaxBodySize", 64 * 1024 * 1024 );
+
+    /**
+     * Flag in the header indicating that the body is compressed.
+     */
+    protected static final int COMPRESSED_FLAG = 1;
+
+    /**
+     * String reference indicating null.
+     */
+    protected static final long NULL_STRING_REF = 0;
+
+    /**
+     * String reference indicating that the String follows in full.
+     */
+    protected static final long LITERAL_STRING_REF = 1;
+
+    /**
+     * String reference of the first String in the dictionary.
+     */
+    protected static final long FIRST_DICTIONARY_REF = 2;
+
+    /**
+     * Flags on an ExternalizedNetMeshObject.
+     */
+    protected static final int GIVE_UP_LOCK_FLAG = 1;
+    protected static final int GIVE_UP_HOME_FLAG = 2;
+
+    /**
+     * Flags on a Proxy of an ExternalizedNetMeshObject.
+     */
+    protected static final int PROXY_TOWARDS_HOME_FLAG = 1;
+    protected static final int PROXY_TOWARDS_LOCK_FLAG = 2;
+
+    /**
+     * Type tags of PropertyValues.
+     */
+    protected static final byte NULL_VALUE          = 0;
+    protected static final byte BLOB_BYTES_VALUE    = 1;
+    protected static final byte BLOB_TEXT_VALUE     = 2;
+    protected static final byte BLOB_DELAYED_VALUE  = 3;
+    protected static final byte BOOLEAN_FALSE_VALUE = 4;
+    protected static final byte BOOLEAN_TRUE_VALUE  = 5;
+    protected static final byte COLOR_VALUE         = 6;
+    protected static final byte CURRENCY_VALUE      = 7;
+    protected static final byte ENUMERATED_VALUE    = 8;
+    protected static final byte EXTENT_VALUE        = 9;
+    protected static final byte FLOAT_VALUE         = 10;
+    protected static final byte INTEGER_VALUE       = 11;
+    protected static final byte MULTIPLICITY_VALUE  = 12;
+    protected static final byte POINT_VALUE         = 13;
+    protected static final byte STRING_VALUE        = 14;
+    protected static final byte TIME_PERIOD_VALUE   = 15;
+    protected static final byte TIME_STAMP_VALUE    = 16;
+}
@@ -0,0 +1,158 @@
+//
+// This file is part of InfoGrid(tm). You may not use this file except in
+// compliance with the InfoGrid license. The InfoGrid license and important
+// disclaimers are contained in the file LICENSE.InfoGrid.txt that you should
+// have received with InfoGrid. If you have not received LICENSE.InfoGrid.txt
+// or you do not consent to all aspects of the license and the disclaimers,
+// no license is granted; do not use this file.
+// 
+// For more information about InfoGrid go to http://infogrid.org/
+//
+// Copyright 1998-2015 by Johannes Ernst
+// All rights reserved.
+//
+
+package org.infogrid.kernel.net.test.xpriso;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import org.infogrid.meshbase.net.xpriso.XprisoMessage;
+import org.infogrid.meshbase.net.xpriso.binary.XprisoMessageBinaryEncoder;
+import org.infogrid.util.logging.Log;
+import org.junit.Test;
+
+/**
+ * Tests XprisoMessage serialization with the XprisoMessageBinaryEncoder, using the
+ * same XprisoMessages as XprisoMessageSerializationTest1.
+ */
+public class XprisoMessageSerializationTest2
+        extends
+            XprisoMessageSerializationTest1
+{
+    /**
+     * Run the test.
+     *
+     * @throws Exception all sorts of things may go wrong during a test
+     */
+    @Test
+    @Override
+    public void run()
+        throws
+            Exception
+    {
+        XprisoMessage [] testMessages = constructTestMessages();
+
+        //
+
+        log.info( "Encoding and decoding all messages" );
+
+        theSender   = XprisoMessageBinaryEncoder.create();
+        theReceiver = XprisoMessageBinaryEncoder.create();
+
+        int [] firstSizes = new int[ testMessages.length ];
+        for( int i=0 ; i<testMessages.length ; ++i ) {
+            firstSizes[i] = runOneWithSize( i, testMessages[i] );
+        }
+        checkCondition( theSender.getEncodingDictionarySize() > 0, "Dictionary is empty" );
+        checkEquals( theSender.getEncodingDictionarySize(), theReceiver.getDecodingDictionarySize(), "Dictionaries out of sync" );
+
+        //
+
+        log.info( "Encoding and decoding all messages again, now with a full dictionary" );
+
+        int firstTotal  = 0;
+        int secondTotal = 0;
+        for( int i=0 ; i<testMessages.length ; ++i ) {
+            int secondSize = runOneWithSize( i, testMessages[i] );
+
+            checkCondition( secondSize <= firstSizes[i], "Message " + i + " grew: " + firstSizes[i] + " vs. " + secondSize );
+            firstTotal  += firstSizes[i];
+            secondTotal += secondSize;
+        }
+        checkCondition( secondTotal < firstTotal, "Dictionary did not help: " + firstTotal + " vs. " + secondTotal );
+
+        //
+
+        log.info( "Skipping messages on a fresh connection" );
+
+        theSender   = XprisoMessageBinaryEncoder.create();
+        theReceiver = XprisoMessageBinaryEncoder.create();
+
+        for( int i=0 ; i<testMessages.length ; ++i ) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            theSender.encodeXprisoMessage( testMessages[i], out );
+
+            if( i % 2 == 0 ) {
+                theReceiver.skipXprisoMessage( new ByteArrayInputStream( out.toByteArray() ));
+            } else {
+                XprisoMessage recovered = theReceiver.decodeXprisoMessage( new ByteArrayInputStream( out.toByteArray() ), theNetMeshBase );
+                checkEquals( testMessages[i], recovered, "Recovered XprisoMessage not the same after skipping" );
+            }
+        }
+        for( int i=0 ; i<testMessages.length ; ++i ) {
+            runOne( i, testMessages[i] );
+        }
+    }
+
+    /**
+     * Run a single test.
+     *
+     * @param index the index of the test
+     * @param message the XprisoMessage to test
+     * @throws Exception all sorts of things may go wrong during a test
+     */
+    @Override
+    protected void runOne(
+            int           index,
+            XprisoMessage message )
+        throws
+            Exception
+    {
+        runOneWithSize( index, message );
+    }
+
+    /**
+     * Run a single test, and return the size of the encoded message.
+     *
+     * @param index the index of the test
+     * @param message the XprisoMessage to test
+     * @return the size of the encoded message, in bytes
+     * @throws Exception all sorts of things may go wrong during a test
+     */
+    protected int runOneWithSize(
+            int           index,
+            XprisoMessage message )
+        throws
+            Exception
+    {
+        log.info( "Now running test " + index );
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        theSender.encodeXprisoMessage( message, out );
+
+        byte [] encodedMessage = out.toByteArray();
+
+        log.debug( "Serialized message has " + encodedMessage.length + " bytes" );
+
+        XprisoMessage recovered = theReceiver.decodeXprisoMessage(
+                new ByteArrayInputStream( encodedMessage ),
+                theNetMeshBase );
+
+        checkEquals( message, recovered, "Recovered XprisoMessage not the same" );
+
+        return encodedMessage.length;
+    }
+
+    // Our Logger
+    private static final Log log = Log.getLogInstance( XprisoMessageSerializationTest2.class );
+
+    /**
+     * The encoder on the sending side.
+     */
+    protected XprisoMessageBinaryEncoder theSender;
+
+    /**
+     * The encoder on the receiving side.
+     */
+    protected XprisoMessageBinaryEncoder theReceiver;
+}
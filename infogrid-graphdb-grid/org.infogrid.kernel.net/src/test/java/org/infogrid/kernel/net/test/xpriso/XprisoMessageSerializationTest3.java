@@ -0,0 +1,261 @@
+//
+// This file is part of InfoGrid(tm). You may not use this file except in
+// compliance with the InfoGrid license. The InfoGrid license and important
+// disclaimers are contained in the file LICENSE.InfoGrid.txt that you should
+// have received with InfoGrid. If you have not received LICENSE.InfoGrid.txt
+// or you do not consent to all aspects of the license and the disclaimers,
+// no license is granted; do not use this file.
+// 
+// For more information about InfoGrid go to http://infogrid.org/
+//
+// Copyright 1998-2015 by Johannes Ernst
+// All rights reserved.
+//
+
+package org.infogrid.kernel.net.test.xpriso;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import org.infogrid.mesh.net.NetMeshObjectIdentifier;
+import org.infogrid.mesh.net.externalized.SimpleExternalizedNetMeshObject;
+import org.infogrid.meshbase.net.NetMeshBaseIdentifier;
+import org.infogrid.meshbase.net.transaction.NetMeshObjectPropertyChangeEvent;
+import org.infogrid.meshbase.net.xpriso.ParserFriendlyXprisoMessage;
+import org.infogrid.meshbase.net.xpriso.XprisoMessage;
+import org.infogrid.meshbase.net.xpriso.binary.XprisoMessageBinaryEncoder;
+import org.infogrid.meshbase.net.xpriso.xml.XprisoMessageXmlEncoder;
+import org.infogrid.model.primitives.BooleanValue;
+import org.infogrid.model.primitives.FloatValue;
+import org.infogrid.model.primitives.IntegerValue;
+import org.infogrid.model.primitives.MeshTypeIdentifier;
+import org.infogrid.model.primitives.PropertyValue;
+import org.infogrid.model.primitives.StringValue;
+import org.infogrid.model.primitives.TimeStampValue;
+import org.infogrid.model.primitives.externalized.DecodingException;
+import org.infogrid.util.logging.Log;
+import org.junit.Test;
+
+/**
+ * Compares the XprisoMessageBinaryEncoder with the XprisoMessageXmlEncoder on a large
+ * XprisoMessage with many conveyed MeshObjects and property changes.
+ */
+public class XprisoMessageSerializationTest3
+        extends
+            XprisoMessageSerializationTest1
+{
+    /**
+     * Run the test.
+     *
+     * @throws Exception all sorts of things may go wrong during a test
+     */
+    @Test
+    @Override
+    public void run()
+        throws
+            Exception
+    {
+        XprisoMessage message = constructLargeMessage();
+
+        //
+
+        log.info( "Encoding and decoding as XML" );
+
+        XprisoMessageXmlEncoder xmlEncoder = new XprisoMessageXmlEncoder();
+
+        byte [] xml = null;
+        long    xmlStart = System.currentTimeMillis();
+        for( int i=0 ; i<theRounds ; ++i ) {
+            StringBuilder buf = new StringBuilder();
+            xmlEncoder.appendXprisoMessage( message, buf );
+            xml = buf.toString().getBytes( "UTF-8" );
+
+            XprisoMessage recovered = xmlEncoder.decodeXprisoMessage( new ByteArrayInputStream( xml ), theNetMeshBase );
+            checkEquals( message, recovered, "Recovered XprisoMessage not the same with XML" );
+        }
+        long xmlDuration = System.currentTimeMillis() - xmlStart;
+
+        //
+
+        log.info( "Encoding and decoding as binary" );
+
+        XprisoMessageBinaryEncoder sender   = XprisoMessageBinaryEncoder.create();
+        XprisoMessageBinaryEncoder receiver = XprisoMessageBinaryEncoder.create();
+
+        byte [] first    = null;
+        byte [] binary   = null;
+        long    binStart = System.currentTimeMillis();
+        for( int i=0 ; i<theRounds ; ++i ) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            sender.encodeXprisoMessage( message, out );
+            binary = out.toByteArray();
+            if( first == null ) {
+                first = binary;
+            }
+
+            XprisoMessage recovered = receiver.decodeXprisoMessage( new ByteArrayInputStream( binary ), theNetMeshBase );
+            checkEquals( message, recovered, "Recovered XprisoMessage not the same with binary" );
+        }
+        long binDuration = System.currentTimeMillis() - binStart;
+
+        //
+
+        log.info( "XML: " + xml.length + " bytes, " + xmlDuration + " msec for " + theRounds + " rounds" );
+        log.info( "Binary: " + first.length + " bytes first, " + binary.length + " bytes later, " + binDuration + " msec for " + theRounds + " rounds" );
+
+        checkCondition( first.length < xml.length, "Binary not smaller than XML: " + first.length + " vs. " + xml.length );
+        checkCondition( binary.length <= first.length, "Binary grew with dictionary: " + binary.length + " vs. " + first.length );
+
+        //
+
+        log.info( "Limiting the dictionary" );
+
+        XprisoMessageBinaryEncoder smallSender   = XprisoMessageBinaryEncoder.create( theSmallDictionarySize, -1 );
+        XprisoMessageBinaryEncoder smallReceiver = XprisoMessageBinaryEncoder.create( theSmallDictionarySize, -1 );
+
+        for( int i=0 ; i<2 ; ++i ) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            smallSender.encodeXprisoMessage( message, out );
+
+            XprisoMessage recovered = smallReceiver.decodeXprisoMessage( new ByteArrayInputStream( out.toByteArray() ), theNetMeshBase );
+            checkEquals( message, recovered, "Recovered XprisoMessage not the same with small dictionary" );
+        }
+        checkEquals( smallSender.getEncodingDictionarySize(),   theSmallDictionarySize, "Wrong size of encoding dictionary" );
+        checkEquals( smallReceiver.getDecodingDictionarySize(), theSmallDictionarySize, "Wrong size of decoding dictionary" );
+
+        try {
+            XprisoMessageBinaryEncoder.create( theSmallDictionarySize, -1 ).decodeXprisoMessage( new ByteArrayInputStream( first ), theNetMeshBase );
+            reportError( "Dictionary exceeding the maximum size accepted" );
+
+        } catch( DecodingException ex ) {
+            // expected
+        }
+
+        //
+
+        log.info( "Limiting the body size" );
+
+        try {
+            XprisoMessageBinaryEncoder.create( XprisoMessageBinaryEncoder.DEFAULT_MAX_DICTIONARY_SIZE, -1, first.length / 2 ).decodeXprisoMessage( new ByteArrayInputStream( first ), theNetMeshBase );
+            reportError( "Body exceeding the maximum size accepted" );
+
+        } catch( DecodingException ex ) {
+            // expected
+        }
+
+        byte [] forged = {
+                1,    // compressed
+                0,    // no dictionary additions
+                (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x07, // uncompressed length Integer.MAX_VALUE
+                0     // compressed length
+        };
+        try {
+            XprisoMessageBinaryEncoder.create().decodeXprisoMessage( new ByteArrayInputStream( forged ), theNetMeshBase );
+            reportError( "Forged uncompressed length accepted" );
+
+        } catch( DecodingException ex ) {
+            // expected
+        }
+    }
+
+    /**
+     * Construct a large XprisoMessage.
+     *
+     * @return the XprisoMessage
+     * @throws Exception all sorts of things may go wrong during a test
+     */
+    protected XprisoMessage constructLargeMessage()
+        throws
+            Exception
+    {
+        NetMeshBaseIdentifier sender   = theMeshBaseIdentifierFactory.fromExternalForm( "http://sender.example.com/" );
+        NetMeshBaseIdentifier receiver = theMeshBaseIdentifierFactory.fromExternalForm( "http://receiver.example.com/" );
+
+        MeshTypeIdentifier [] types = {
+                theMeshTypeIdentifierFactory.fromExternalForm( "org.infogrid.model.Test/A" ),
+                theMeshTypeIdentifierFactory.fromExternalForm( "org.infogrid.model.Test/B" )
+        };
+        MeshTypeIdentifier [] propertyTypes = {
+                theMeshTypeIdentifierFactory.fromExternalForm( "org.infogrid.model.Test/A_X" ),
+                theMeshTypeIdentifierFactory.fromExternalForm( "org.infogrid.model.Test/A_XX" ),
+                theMeshTypeIdentifierFactory.fromExternalForm( "org.infogrid.model.Test/B_Y" ),
+                theMeshTypeIdentifierFactory.fromExternalForm( "org.infogrid.model.Test/B_Z" ),
+                theMeshTypeIdentifierFactory.fromExternalForm( "org.infogrid.model.Test/B_U" )
+        };
+        MeshTypeIdentifier [] roleTypes = {
+                theMeshTypeIdentifierFactory.fromExternalForm( "org.infogrid.model.Test/R-S" )
+        };
+
+        NetMeshObjectIdentifier [] ids = new NetMeshObjectIdentifier[ theTestSize ];
+        for( int i=0 ; i<ids.length ; ++i ) {
+            ids[i] = theNetMeshObjectIdentifierFactory.fromExternalForm( "http://sender.example.com/#object-" + i );
+        }
+
+        ParserFriendlyXprisoMessage ret = ParserFriendlyXprisoMessage.create( sender, receiver );
+        ret.setRequestId( 1234 );
+        ret.setResponseId( 5678 );
+
+        for( int i=0 ; i<ids.length ; ++i ) {
+            ret.addConveyedMeshObject( SimpleExternalizedNetMeshObject.create(
+                    ids[i], // identifier
+                    types, // typeNames
+                    1000L + i, // timeCreated
+                    2000L + i, // timeUpdated
+                    3000L + i, // timeRead
+                    -1L, // timeExpires
+                    propertyTypes, // propertyTypes
+                    new PropertyValue[] {
+                            StringValue.create( "Some string value " + i ),
+                            FloatValue.create( i * 1.5 ),
+                            IntegerValue.create( i * 1000L ),
+                            BooleanValue.create( i % 2 == 0 ),
+                            TimeStampValue.create( 1400000000000L + i )
+                    }, // propertyValues
+                    new NetMeshObjectIdentifier[] {
+                            ids[ ( i+1 ) % ids.length ]
+                    }, // neighbors
+                    new MeshTypeIdentifier [][] {
+                            roleTypes
+                    }, // roleTypes
+                    false, // giveUpHomeReplica
+                    false, // giveUpLock
+                    new NetMeshBaseIdentifier[] {
+                            sender
+                    }, // proxyNames
+                    0, // proxyTowardsHomeIndex
+                    0, // proxyTowardsLockIndex
+                    new NetMeshBaseIdentifier[][] {
+                            null
+                    })); // relationshipProxyNames
+        }
+
+        for( int i=0 ; i<ids.length * 4 ; ++i ) {
+            ret.addPropertyChange( new NetMeshObjectPropertyChangeEvent(
+                    ids[ i % ids.length ],
+                    propertyTypes[0],
+                    StringValue.create( "Old value " + i ),
+                    StringValue.create( "New value " + i ),
+                    sender,
+                    4000L + i,
+                    null ) );
+        }
+        return ret;
+    }
+
+    /**
+     * The number of conveyed MeshObjects in the large XprisoMessage.
+     */
+    protected int theTestSize = 500;
+
+    /**
+     * The maximum size of the dictionary when testing the limit.
+     */
+    protected int theSmallDictionarySize = 16;
+
+    /**
+     * The number of times each encoder encodes and decodes the large XprisoMessage.
+     */
+    protected int theRounds = 5;
+
+    // Our Logger
+    private static final Log log = Log.getLogInstance( XprisoMessageSerializationTest3.class );
+}
@@ -0,0 +1,254 @@
+//
+// This file is part of InfoGrid(tm). You may not use this file except in
+// compliance with the InfoGrid license. The InfoGrid license and important
+// disclaimers are contained in the file LICENSE.InfoGrid.txt that you should
+// have received with InfoGrid. If you have not received LICENSE.InfoGrid.txt
+// or you do not consent to all aspects of the license and the disclaimers,
+// no license is granted; do not use this file.
+//
+// For more information about InfoGrid go to http://infogrid.org/
+//
+// Copyright 1998-2015 by Johannes Ernst
+// All rights reserved.
+//
+
+package org.infogrid.kernel.net.test.xpriso;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.concurrent.ScheduledExecutorService;
+import org.infogrid.mesh.net.NetMeshObject;
+import org.infogrid.meshbase.net.NetMeshBase;
+import org.infogrid.meshbase.net.NetMeshBaseIdentifier;
+import org.infogrid.meshbase.net.NetMeshBaseLifecycleManager;
+import org.infogrid.meshbase.net.m.NetMMeshBase;
+import org.infogrid.meshbase.net.m.NetMMeshBaseNameServer;
+import org.infogrid.meshbase.net.proxy.nio.NioPingPongNetMessageEndpointFactory;
+import org.infogrid.meshbase.net.proxy.nio.NioPingPongNetMessageTransport;
+import org.infogrid.meshbase.transaction.Transaction;
+import org.infogrid.model.Test.TestSubjectArea;
+import org.infogrid.model.primitives.StringValue;
+import org.infogrid.util.logging.Log;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests replication between NetMeshBases that only know each other through sockets on the
+ * loopback interface, as if they were in different processes. mb1 is on its own; mb2 and mb3
+ * share a NioPingPongNetMessageTransport, and thus their socket to mb1.
+ */
+public class XprisoTest17
+        extends
+            AbstractXprisoTest
+{
+    /**
+     * Run the test.
+     *
+     * @throws Exception all kinds of things can go wrong in tests
+     */
+    @Test
+    public void run()
+        throws
+            Exception
+    {
+        log.info( "Setting up entity" );
+
+        Transaction tx = mb1.createTransactionAsap();
+
+        NetMeshBaseLifecycleManager life1 = mb1.getMeshBaseLifecycleManager();
+
+        NetMeshObject obj1_mb1 = life1.createMeshObject(
+                mb1.getMeshObjectIdentifierFactory().fromExternalForm( "#1" ),
+                TestSubjectArea.AA );
+        obj1_mb1.setPropertyValue( TestSubjectArea.A_X, StringValue.create( "This is obj1." ));
+
+        tx.commitTransaction();
+
+        checkProxies( obj1_mb1, null, null, null, "obj1_mb1 has proxies" );
+
+        //
+
+        log.info( "replicating into mb2" );
+
+        NetMeshObject obj1_mb2 = mb2.accessLocally(
+                mb1.getIdentifier(),
+                obj1_mb1.getIdentifier(),
+                60000L ); // long for debugging
+
+        checkObject( obj1_mb2, "accessLocally() did not work for mb2" );
+        checkEquals( obj1_mb2.getPropertyValue( TestSubjectArea.A_X ), obj1_mb1.getPropertyValue( TestSubjectArea.A_X ), "wrong property in mb2" );
+
+        //
+
+        log.info( "replicating into mb3" );
+
+        NetMeshObject obj1_mb3 = mb3.accessLocally(
+                mb1.getIdentifier(),
+                obj1_mb1.getIdentifier(),
+                60000L ); // long for debugging
+
+        checkObject( obj1_mb3, "accessLocally() did not work for mb3" );
+        checkEquals( obj1_mb3.getPropertyValue( TestSubjectArea.A_X ), obj1_mb1.getPropertyValue( TestSubjectArea.A_X ), "wrong property in mb3" );
+
+        checkProxies( obj1_mb1, new NetMeshBase[] { mb2, mb3 }, null, null, "obj1_mb1 has wrong proxies" );
+        checkProxies( obj1_mb2, new NetMeshBase[] { mb1 },      mb1,  mb1,  "obj1_mb2 has wrong proxies" );
+        checkProxies( obj1_mb3, new NetMeshBase[] { mb1 },      mb1,  mb1,  "obj1_mb3 has wrong proxies" );
+
+        //
+
+        log.info( "checking that both Proxies share one socket" );
+
+        checkEquals( transport2.getConnectionsOpenedCount(),   1L, "wrong number of connections opened by transport2" );
+        checkEquals( transport1.getConnectionsAcceptedCount(), 1L, "wrong number of connections accepted by transport1" );
+        checkEquals( transport1.getConnectionsOpenedCount(),   0L, "transport1 should have talked back through the accepted connection" );
+        checkCondition( transport1.getFramesReceivedCount() > 0, "transport1 received nothing" );
+        checkCondition( transport2.getFramesReceivedCount() > 0, "transport2 received nothing" );
+
+        //
+
+        log.info( "changing the property in mb1" );
+
+        tx = mb1.createTransactionAsap();
+
+        obj1_mb1.setPropertyValue( TestSubjectArea.A_X, StringValue.create( "This is the changed obj1." ));
+
+        tx.commitTransaction();
+
+        sleepFor( PINGPONG_ROUNDTRIP_DURATION * 2 );
+
+        checkEquals( obj1_mb2.getPropertyValue( TestSubjectArea.A_X ), obj1_mb1.getPropertyValue( TestSubjectArea.A_X ), "change not propagated to mb2" );
+        checkEquals( obj1_mb3.getPropertyValue( TestSubjectArea.A_X ), obj1_mb1.getPropertyValue( TestSubjectArea.A_X ), "change not propagated to mb3" );
+
+        //
+
+        log.info( "checking codecs" );
+
+        checkCodecs();
+    }
+
+    /**
+     * Check which codecs the transports used.
+     *
+     * @throws Exception all kinds of things can go wrong in tests
+     */
+    protected void checkCodecs()
+        throws
+            Exception
+    {
+        checkCondition( transport1.getBinaryFramesSentCount() > 0, "transport1 did not use the binary codec" );
+        checkCondition( transport2.getBinaryFramesSentCount() > 0, "transport2 did not use the binary codec" );
+    }
+
+    /**
+     * Setup.
+     *
+     * @throws Exception all kinds of things can go wrong in tests
+     */
+    @Before
+    @Override
+    public void setup()
+        throws
+            Exception
+    {
+        super.setup();
+
+        net1 = theMeshBaseIdentifierFactory.fromExternalForm( "http://one.example.com/" );
+        net2 = theMeshBaseIdentifierFactory.fromExternalForm( "http://two.example.com/" );
+        net3 = theMeshBaseIdentifierFactory.fromExternalForm( "http://three.example.com/" );
+
+        // the "other process" has its own name server and its own transport. Use real schemes, as the
+        // identifiers are parsed again on the receiving side
+        theNameServer2 = NetMMeshBaseNameServer.create();
+
+        transport1 = NioPingPongNetMessageTransport.create( theMeshBaseIdentifierFactory, theNameServer,  exec );
+        transport2 = NioPingPongNetMessageTransport.create( theMeshBaseIdentifierFactory, theNameServer2, exec );
+
+        InetSocketAddress address1 = transport1.listen( new InetSocketAddress( InetAddress.getLoopbackAddress(), 0 ));
+        InetSocketAddress address2 = transport2.listen( new InetSocketAddress( InetAddress.getLoopbackAddress(), 0 ));
+
+        transport1.setPartnerAddress( net2, address2 );
+        transport1.setPartnerAddress( net3, address2 );
+        transport2.setPartnerAddress( net1, address1 );
+
+        NioPingPongNetMessageEndpointFactory endpointFactory1 = NioPingPongNetMessageEndpointFactory.create( transport1, exec );
+        NioPingPongNetMessageEndpointFactory endpointFactory2 = NioPingPongNetMessageEndpointFactory.create( transport2, exec );
+
+        mb1 = NetMMeshBase.create( net1, theModelBase, null, endpointFactory1, rootContext );
+        mb2 = NetMMeshBase.create( net2, theModelBase, null, endpointFactory2, rootContext );
+        mb3 = NetMMeshBase.create( net3, theModelBase, null, endpointFactory2, rootContext );
+
+        theNameServer.put(  mb1.getIdentifier(), mb1 );
+        theNameServer2.put( mb2.getIdentifier(), mb2 );
+        theNameServer2.put( mb3.getIdentifier(), mb3 );
+    }
+
+    /**
+     * Clean up after the test.
+     */
+    @After
+    public void cleanup()
+    {
+        mb1.die();
+        mb2.die();
+        mb3.die();
+
+        transport1.die();
+        transport2.die();
+
+        exec.shutdown();
+    }
+
+    /**
+     * The first NetMeshBaseIdentifier.
+     */
+    protected NetMeshBaseIdentifier net1;
+
+    /**
+     * The second NetMeshBaseIdentifier.
+     */
+    protected NetMeshBaseIdentifier net2;
+
+    /**
+     * The third NetMeshBaseIdentifier.
+     */
+    protected NetMeshBaseIdentifier net3;
+
+    /**
+     * The first NetMeshBase.
+     */
+    protected NetMeshBase mb1;
+
+    /**
+     * The second NetMeshBase.
+     */
+    protected NetMeshBase mb2;
+
+    /**
+     * The third NetMeshBase.
+     */
+    protected NetMeshBase mb3;
+
+    /**
+     * The name server of the "other process".
+     */
+    protected NetMMeshBaseNameServer<NetMeshBaseIdentifier,NetMeshBase> theNameServer2;
+
+    /**
+     * The transport used by mb1.
+     */
+    protected NioPingPongNetMessageTransport transport1;
+
+    /**
+     * The transport shared by mb2 and mb3.
+     */
+    protected NioPingPongNetMessageTransport transport2;
+
+    /**
+     * Our ThreadPool.
+     */
+    protected ScheduledExecutorService exec = createThreadPool( 2 );
+
+    // Our Logger
+    private static Log log = Log.getLogInstance( XprisoTest17.class );
+}
@@ -0,0 +1,56 @@
+//
+// This file is part of InfoGrid(tm). You may not use this file except in
+// compliance with the InfoGrid license. The InfoGrid license and important
+// disclaimers are contained in the file LICENSE.InfoGrid.txt that you should
+// have received with InfoGrid. If you have not received LICENSE.InfoGrid.txt
+// or you do not consent to all aspects of the license and the disclaimers,
+// no license is granted; do not use this file.
+// 
+// For more information about InfoGrid go to http://infogrid.org/
+//
+// Copyright 1998-2015 by Johannes Ernst
+// All rights reserved.
+//
+
+package org.infogrid.kernel.net.test.xpriso;
+
+import org.junit.Before;
+
+/**
+ * Like XprisoTest17, but mb1's transport does not offer the binary codec, so both
+ * sides have to fall back to XML.
+ */
+public class XprisoTest18
+        extends
+            XprisoTest17
+{
+    /**
+     * Setup.
+     *
+     * @throws Exception all kinds of things can go wrong in tests
+     */
+    @Before
+    @Override
+    public void setup()
+        throws
+            Exception
+    {
+        super.setup();
+
+        transport1.setUseBinaryCodec( false ); // no sockets have been opened yet
+    }
+
+    /**
+     * Check which codecs the transports used.
+     *
+     * @throws Exception all kinds of things can go wrong in tests
+     */
+    @Override
+    protected void checkCodecs()
+        throws
+            Exception
+    {
+        checkEquals( transport1.getBinaryFramesSentCount(), 0L, "transport1 used the binary codec" );
+        checkEquals( transport2.getBinaryFramesSentCount(), 0L, "transport2 used the binary codec although transport1 does not offer it" );
+    }
+}
@@ -0,0 +1,174 @@
+//
+// This file is part of InfoGrid(tm). You may not use this file except in
+// compliance with the InfoGrid license. The InfoGrid license and important
+// disclaimers are contained in the file LICENSE.InfoGrid.txt that you should
+// have received with InfoGrid. If you have not received LICENSE.InfoGrid.txt
+// or you do not consent to all aspects of the license and the disclaimers,
+// no license is granted; do not use this file.
+// 
+// For more information about InfoGrid go to http://infogrid.org/
+//
+// Copyright 1998-2015 by Johannes Ernst
+// All rights reserved.
+//
+
+
+package org.infogrid.kernel.net.test.xpriso;
+
+import java.util.concurrent.ScheduledExecutorService;
+import org.infogrid.comm.pingpong.PingPongMessageEndpoint;
+import org.infogrid.mesh.net.NetMeshObject;
+import org.infogrid.meshbase.net.NetMeshBase;
+import org.infogrid.meshbase.net.NetMeshBaseIdentifier;
+import org.infogrid.meshbase.net.NetMeshBaseLifecycleManager;
+import org.infogrid.meshbase.net.m.NetMMeshBase;
+import org.infogrid.meshbase.net.proxy.m.MPingPongNetMessageEndpointFactory;
+import org.infogrid.meshbase.transaction.Transaction;
+import org.infogrid.model.Test.TestSubjectArea;
+import org.infogrid.model.primitives.StringValue;
+import org.infogrid.util.logging.Log;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests that successive changes to the same property are coalesced into fewer XprisoMessages
+ * without changing the outcome at the replica.
+ */
+public class XprisoTest19
+        extends
+            AbstractXprisoTest
+{
+    /**
+     * Run the test.
+     *
+     * @throws Exception all kinds of things can go wrong in tests
+     */
+    @Test
+    public void run()
+        throws
+            Exception
+    {
+        log.info( "Setting up entity" );
+
+        Transaction tx = mb1.createTransactionAsap();
+
+        NetMeshBaseLifecycleManager life1 = mb1.getMeshBaseLifecycleManager();
+
+        NetMeshObject obj1_mb1 = life1.createMeshObject(
+                mb1.getMeshObjectIdentifierFactory().fromExternalForm( "obj1" ),
+                TestSubjectArea.AA );
+        obj1_mb1.setPropertyValue( TestSubjectArea.A_X, StringValue.create( "initial" ));
+
+        tx.commitTransaction();
+
+        //
+
+        log.info( "Replicating" );
+
+        NetMeshObject obj1_mb2 = mb2.accessLocally(
+                mb1.getIdentifier(),
+                obj1_mb1.getIdentifier(),
+                60000L ); // long for debugging
+
+        checkObject( obj1_mb2, "accessLocally() did not work" );
+        checkEquals( obj1_mb2.getPropertyValue( TestSubjectArea.A_X ), StringValue.create( "initial" ), "wrong initial value" );
+
+        //
+
+        log.info( "Changing property repeatedly" );
+
+        for( int i=0 ; i<theChangeCount ; ++i ) {
+            tx = mb1.createTransactionAsap();
+            obj1_mb1.setPropertyValue( TestSubjectArea.A_X, StringValue.create( "value " + i ));
+            tx.commitTransaction();
+        }
+
+        sleepFor( 2 * PINGPONG_ROUNDTRIP_DURATION );
+
+        //
+
+        log.info( "Checking replica" );
+
+        checkEquals( obj1_mb2.getPropertyValue( TestSubjectArea.A_X ), StringValue.create( "value " + ( theChangeCount-1 )), "wrong final value" );
+
+        PingPongMessageEndpoint<?> endpoint1 = (PingPongMessageEndpoint<?>) mb1.getProxyFor( mb2.getIdentifier() ).getMessageEndpoint();
+
+        checkCondition( endpoint1.getMessagesCoalescedCount() > 0, "No messages coalesced" );
+        checkEquals( endpoint1.getQueueDepth(), 0, "Messages left in queue" );
+
+        log.info( "Coalesced " + endpoint1.getMessagesCoalescedCount() + " messages, average round trip " + endpoint1.getAverageRoundTripTime() + " msec" );
+    }
+
+    /**
+     * Setup.
+     *
+     * @throws Exception all kinds of things can go wrong in tests
+     */
+    @Before
+    public void setup()
+        throws
+            Exception
+    {
+        super.setup();
+
+        net1 = theMeshBaseIdentifierFactory.fromExternalForm( "test://one.local" );
+        net2 = theMeshBaseIdentifierFactory.fromExternalForm( "test://two.local" );
+
+        MPingPongNetMessageEndpointFactory endpointFactory = MPingPongNetMessageEndpointFactory.create( exec );
+        endpointFactory.setNameServer( theNameServer );
+        endpointFactory.setCoalesceMessages( true );
+        endpointFactory.setSendThreshold( theChangeCount );
+
+        mb1 = NetMMeshBase.create( net1, theModelBase, null, endpointFactory, rootContext );
+        mb2 = NetMMeshBase.create( net2, theModelBase, null, endpointFactory, rootContext );
+
+        theNameServer.put( mb1.getIdentifier(), mb1 );
+        theNameServer.put( mb2.getIdentifier(), mb2 );
+    }
+
+    /**
+     * Clean up after the test.
+     */
+    @After
+    public void cleanup()
+    {
+        mb1.die();
+        mb2.die();
+
+        exec.shutdown();
+    }
+
+    /**
+     * The number of successive changes.
+     */
+    protected int theChangeCount = 5;
+
+    /**
+     * The first NetMeshBaseIdentifier.
+     */
+    protected NetMeshBaseIdentifier net1;
+
+    /**
+     * The second NetMeshBaseIdentifier.
+     */
+    protected NetMeshBaseIdentifier net2;
+
+    /**
+     * The first NetMeshBase.
+     */
+    protected NetMeshBase mb1;
+
+    /**
+     * The second NetMeshBase.
+     */
+    protected NetMeshBase mb2;
+
+    /**
+     * Our ThreadPool.
+     */
+    protected ScheduledExecutorService exec = createThreadPool( 1 );
+
+    // Our Logger
+    private static Log log = Log.getLogInstance( XprisoTest19.class );
+}
@@ -0,0 +1,237 @@
+//
+// This file is part of InfoGrid(tm). You may not use this file except in
+// compliance with the InfoGrid license. The InfoGrid license and important
+// disclaimers are contained in the file LICENSE.InfoGrid.txt that you should
+// have received with InfoGrid. If you have not received LICENSE.InfoGrid.txt
+// or you do not consent to all aspects of the license and the disclaimers,
+// no license is granted; do not use this file.
+// 
+// For more information about InfoGrid go to http://infogrid.org/
+//
+// Copyright 1998-2015 by Johannes Ernst
+// All rights reserved.
+//
+
+
+package org.infogrid.kernel.net.test.xpriso;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.infogrid.mesh.net.NetMeshObject;
+import org.infogrid.meshbase.net.NetMeshBase;
+import org.infogrid.meshbase.net.NetMeshBaseIdentifier;
+import org.infogrid.meshbase.net.NetMeshBaseLifecycleManager;
+import org.infogrid.meshbase.net.NetMeshObjectAccessException;
+import org.infogrid.meshbase.net.NetMeshObjectAccessSpecification;
+import org.infogrid.meshbase.net.NetMeshObjectAccessSpecificationFactory;
+import org.infogrid.meshbase.net.m.NetMMeshBase;
+import org.infogrid.meshbase.net.proxy.m.MPingPongNetMessageEndpointFactory;
+import org.infogrid.meshbase.transaction.Transaction;
+import org.infogrid.util.logging.Log;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests accessLocallyAsync: fan-out to several NetMeshBases, not blocking the caller,
+ * cancellation, and deadlines.
+ */
+public class XprisoTest20
+        extends
+            AbstractXprisoTest
+{
+    /**
+     * Run the test.
+     *
+     * @throws Exception all kinds of things can go wrong in tests
+     */
+    @Test
+    public void run()
+        throws
+            Exception
+    {
+        log.info( "Setting up entities in mb1 and mb2" );
+
+        Transaction tx = mb1.createTransactionAsap();
+
+        NetMeshBaseLifecycleManager life1 = mb1.getMeshBaseLifecycleManager();
+
+        NetMeshObject obj1_mb1 = life1.createMeshObject( mb1.getMeshObjectIdentifierFactory().fromExternalForm( "obj1" ));
+        NetMeshObject obj2_mb1 = life1.createMeshObject( mb1.getMeshObjectIdentifierFactory().fromExternalForm( "obj2" ));
+
+        tx.commitTransaction();
+
+        tx = mb2.createTransactionAsap();
+
+        NetMeshObject obj3_mb2 = mb2.getMeshBaseLifecycleManager().createMeshObject( mb2.getMeshObjectIdentifierFactory().fromExternalForm( "obj3" ));
+
+        tx.commitTransaction();
+
+        //
+
+        log.info( "Accessing from mb3 asynchronously" );
+
+        NetMeshObjectAccessSpecificationFactory fact = mb3.getNetMeshObjectAccessSpecificationFactory();
+
+        long start = System.currentTimeMillis();
+
+        CompletableFuture<NetMeshObject []> all = mb3.accessLocallyAsync(
+                new NetMeshObjectAccessSpecification[] {
+                        fact.obtain( mb1.getIdentifier(), obj1_mb1.getIdentifier() ),
+                        fact.obtain( mb2.getIdentifier(), obj3_mb2.getIdentifier() ),
+                        fact.obtain( mb1.getIdentifier(), obj2_mb1.getIdentifier() )
+                },
+                60000L ); // long for debugging
+
+        // the same Thread can issue another one right away
+        CompletableFuture<NetMeshObject> cancelled = mb3.accessLocallyAsync(
+                net4,
+                mb3.getMeshObjectIdentifierFactory().fromExternalForm( net4.toExternalForm() + "#obj5" ),
+                60000L );
+
+        long afterCall = System.currentTimeMillis();
+
+        checkCondition( afterCall - start < PINGPONG_ROUNDTRIP_DURATION, "accessLocallyAsync blocked: " + ( afterCall - start ));
+
+        cancelled.cancel( false );
+
+        NetMeshObject [] found = all.get( 10000L, TimeUnit.MILLISECONDS );
+
+        checkEquals( found.length, 3, "wrong number of results" );
+        checkEquals( found[0].getIdentifier(), obj1_mb1.getIdentifier(), "wrong obj1" );
+        checkEquals( found[1].getIdentifier(), obj3_mb2.getIdentifier(), "wrong obj3" );
+        checkEquals( found[2].getIdentifier(), obj2_mb1.getIdentifier(), "wrong obj2" );
+        checkCondition( found[0].getMeshBase() == mb3, "not replicated into mb3" );
+
+        checkCondition( cancelled.isCancelled(), "not cancelled" );
+        try {
+            cancelled.get();
+            reportError( "cancelled future returned a result" );
+        } catch( CancellationException ex ) {
+            // expected
+        }
+
+        //
+
+        log.info( "Accessing a local replica completes right away" );
+
+        CompletableFuture<NetMeshObject> local = mb3.accessLocallyAsync( mb1.getIdentifier(), obj1_mb1.getIdentifier() );
+
+        checkCondition( local.isDone(), "not done" );
+        checkIdentity( local.get(), found[0], "wrong local replica" );
+
+        //
+
+        log.info( "Accessing an unreachable NetMeshBase times out" );
+
+        start = System.currentTimeMillis();
+
+        CompletableFuture<NetMeshObject> unreachable = mb3.accessLocallyAsync(
+                net4,
+                mb3.getMeshObjectIdentifierFactory().fromExternalForm( net4.toExternalForm() + "#obj4" ),
+                2 * PINGPONG_ROUNDTRIP_DURATION );
+
+        checkCondition( !unreachable.isDone(), "done too early" );
+
+        try {
+            unreachable.get( 10000L, TimeUnit.MILLISECONDS );
+            reportError( "unreachable NetMeshBase returned a result" );
+
+        } catch( ExecutionException ex ) {
+            checkCondition( ex.getCause() instanceof NetMeshObjectAccessException, "wrong cause: " + ex.getCause() );
+        }
+        long duration = System.currentTimeMillis() - start;
+
+        checkInRange( duration, 2 * PINGPONG_ROUNDTRIP_DURATION, 4 * PINGPONG_ROUNDTRIP_DURATION, "wrong deadline" );
+
+        checkCondition( mb3.getAccessLocallySynchronizer().areAllQueriesComplete(), "synchronizer has open transactions left" );
+    }
+
+    /**
+     * Setup.
+     *
+     * @throws Exception all kinds of things can go wrong in tests
+     */
+    @Before
+    public void setup()
+        throws
+            Exception
+    {
+        super.setup();
+
+        net1 = theMeshBaseIdentifierFactory.fromExternalForm( "test://one.local" );
+        net2 = theMeshBaseIdentifierFactory.fromExternalForm( "test://two.local" );
+        net3 = theMeshBaseIdentifierFactory.fromExternalForm( "test://three.local" );
+        net4 = theMeshBaseIdentifierFactory.fromExternalForm( "http://four.local/" ); // not registered
+
+        MPingPongNetMessageEndpointFactory endpointFactory = MPingPongNetMessageEndpointFactory.create( exec );
+        endpointFactory.setNameServer( theNameServer );
+
+        mb1 = NetMMeshBase.create( net1, theModelBase, null, endpointFactory, rootContext );
+        mb2 = NetMMeshBase.create( net2, theModelBase, null, endpointFactory, rootContext );
+        mb3 = NetMMeshBase.create( net3, theModelBase, null, endpointFactory, rootContext );
+
+        theNameServer.put( mb1.getIdentifier(), mb1 );
+        theNameServer.put( mb2.getIdentifier(), mb2 );
+        theNameServer.put( mb3.getIdentifier(), mb3 );
+    }
+
+    /**
+     * Clean up after the test.
+     */
+    @After
+    public void cleanup()
+    {
+        mb1.die();
+        mb2.die();
+        mb3.die();
+
+        exec.shutdown();
+    }
+
+    /**
+     * The first NetMeshBaseIdentifier.
+     */
+    protected NetMeshBaseIdentifier net1;
+
+    /**
+     * The second NetMeshBaseIdentifier.
+     */
+    protected NetMeshBaseIdentifier net2;
+
+    /**
+     * The third NetMeshBaseIdentifier.
+     */
+    protected NetMeshBaseIdentifier net3;
+
+    /**
+     * The NetMeshBaseIdentifier of a NetMeshBase that does not exist.
+     */
+    protected NetMeshBaseIdentifier net4;
+
+    /**
+     * The first NetMeshBase.
+     */
+    protected NetMeshBase mb1;
+
+    /**
+     * The second NetMeshBase.
+     */
+    protected NetMeshBase mb2;
+
+    /**
+     * The third NetMeshBase.
+     */
+    protected NetMeshBase mb3;
+
+    /**
+     * Our ThreadPool.
+     */
+    protected ScheduledExecutorService exec = createThreadPool( 1 );
+
+    // Our Logger
+    private static Log log = Log.getLogInstance( XprisoTest20.class );
+}
@@ -0,0 +1,217 @@
+//
+// This file is part of InfoGrid(tm). You may not use this file except in
+// compliance with the InfoGrid license. The InfoGrid license and important
+// disclaimers are contained in the file LICENSE.InfoGrid.txt that you should
+// have received with InfoGrid. If you have not received LICENSE.InfoGrid.txt
+// or you do not consent to all aspects of the license and the disclaimers,
+// no license is granted; do not use this file.
+//
+// For more information about InfoGrid go to http://infogrid.org/
+//
+// Copyright 1998-2015 by Johannes Ernst
+// All rights reserved.
+//
+
+package org.infogrid.kernel.net.test.xpriso;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.infogrid.mesh.net.NetMeshObject;
+import org.infogrid.meshbase.net.CoherenceSpecification;
+import org.infogrid.meshbase.net.NetMeshBase;
+import org.infogrid.meshbase.net.NetMeshBaseIdentifier;
+import org.infogrid.meshbase.net.m.NetMMeshBase;
+import org.infogrid.meshbase.net.proxy.NiceAndTrustingProxyPolicy;
+import org.infogrid.meshbase.net.proxy.NiceAndTrustingProxyPolicyFactory;
+import org.infogrid.meshbase.net.proxy.m.MPingPongNetMessageEndpointFactory;
+import org.infogrid.meshbase.transaction.Transaction;
+import org.infogrid.util.FactoryException;
+import org.infogrid.util.logging.Log;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests that accessLocallyAsync does not leave its transaction open on the calling Thread
+ * if sending the queries fails with a RuntimeException.
+ */
+public class XprisoTest21
+        extends
+            AbstractXprisoTest
+{
+    /**
+     * Run the test.
+     *
+     * @throws Exception all kinds of things can go wrong in tests
+     */
+    @Test
+    public void run()
+        throws
+            Exception
+    {
+        log.info( "Setting up entities in mb1" );
+
+        Transaction tx = mb1.createTransactionAsap();
+
+        NetMeshObject obj1_mb1 = mb1.getMeshBaseLifecycleManager().createMeshObject( mb1.getMeshObjectIdentifierFactory().fromExternalForm( "obj1" ));
+
+        tx.commitTransaction();
+
+        //
+
+        log.info( "Accessing a NetMeshBase whose Proxy cannot be created" );
+
+        CompletableFuture<NetMeshObject> failed = mb2.accessLocallyAsync(
+                net3,
+                mb2.getMeshObjectIdentifierFactory().fromExternalForm( net3.toExternalForm() + "#obj2" ),
+                60000L ); // long for debugging
+
+        checkCondition( failed.isDone(), "not done" );
+        try {
+            failed.get();
+            reportError( "failed access returned a result" );
+
+        } catch( ExecutionException ex ) {
+            checkCondition( ex.getCause() instanceof IllegalStateException, "wrong cause: " + ex.getCause() );
+        }
+        checkCondition( mb2.getAccessLocallySynchronizer().areAllQueriesComplete(), "synchronizer has open transactions left" );
+
+        //
+
+        log.info( "Accessing again from the same Thread" );
+
+        CompletableFuture<NetMeshObject> again = mb2.accessLocallyAsync(
+                net1,
+                obj1_mb1.getIdentifier(),
+                60000L ); // long for debugging
+
+        NetMeshObject obj1_mb2 = again.get( 10000L, TimeUnit.MILLISECONDS );
+
+        checkObject( obj1_mb2, "obj1 not found" );
+        checkEquals( obj1_mb2.getIdentifier(), obj1_mb1.getIdentifier(), "wrong obj1" );
+
+        NetMeshObject home = mb2.accessLocally( net1 );
+
+        checkObject( home, "home object not found" );
+    }
+
+    /**
+     * Setup.
+     *
+     * @throws Exception all kinds of things can go wrong in tests
+     */
+    @Before
+    public void setup()
+        throws
+            Exception
+    {
+        super.setup();
+
+        net1 = theMeshBaseIdentifierFactory.fromExternalForm( "test://one.local" );
+        net2 = theMeshBaseIdentifierFactory.fromExternalForm( "test://two.local" );
+        net3 = theMeshBaseIdentifierFactory.fromExternalForm( "http://three.local/" ); // cannot be talked to
+
+        MPingPongNetMessageEndpointFactory endpointFactory = MPingPongNetMessageEndpointFactory.create( exec );
+        endpointFactory.setNameServer( theNameServer );
+
+        mb1 = NetMMeshBase.create( net1, theModelBase, null, endpointFactory, rootContext );
+        mb2 = NetMMeshBase.create( net2, theModelBase, null, endpointFactory, new FailingProxyPolicyFactory( net3 ), rootContext );
+
+        theNameServer.put( mb1.getIdentifier(), mb1 );
+        theNameServer.put( mb2.getIdentifier(), mb2 );
+    }
+
+    /**
+     * Clean up after the test.
+     */
+    @After
+    public void cleanup()
+    {
+        mb1.die();
+        mb2.die();
+
+        exec.shutdown();
+    }
+
+    /**
+     * The first NetMeshBaseIdentifier.
+     */
+    protected NetMeshBaseIdentifier net1;
+
+    /**
+     * The second NetMeshBaseIdentifier.
+     */
+    protected NetMeshBaseIdentifier net2;
+
+    /**
+     * The NetMeshBaseIdentifier of a NetMeshBase for which no Proxy can be created.
+     */
+    protected NetMeshBaseIdentifier net3;
+
+    /**
+     * The first NetMeshBase.
+     */
+    protected NetMeshBase mb1;
+
+    /**
+     * The second NetMeshBase.
+     */
+    protected NetMeshBase mb2;
+
+    /**
+     * Our ThreadPool.
+     */
+    protected ScheduledExecutorService exec = createThreadPool( 1 );
+
+    // Our Logger
+    private static Log log = Log.getLogInstance( XprisoTest21.class );
+
+    /**
+     * A ProxyPolicyFactory that throws a RuntimeException for one NetMeshBase.
+     */
+    protected static class FailingProxyPolicyFactory
+            extends
+                NiceAndTrustingProxyPolicyFactory
+    {
+        /**
+         * Constructor.
+         *
+         * @param failFor the NetMeshBaseIdentifier of the NetMeshBase for which to throw
+         */
+        public FailingProxyPolicyFactory(
+                NetMeshBaseIdentifier failFor )
+        {
+            super( true );
+
+            theFailFor = failFor;
+        }
+
+        /**
+         * Factory method.
+         *
+         * @param key the key information required for object creation, if any
+         * @param argument any argument-style information required for object creation, if any
+         * @return the created object
+         * @throws FactoryException catch-all Exception, consider its cause
+         */
+        @Override
+        public NiceAndTrustingProxyPolicy obtainFor(
+                NetMeshBaseIdentifier  key,
+                CoherenceSpecification argument )
+            throws
+                FactoryException
+        {
+            if( theFailFor.equals( key )) {
+                throw new IllegalStateException( "Cannot create ProxyPolicy for " + key );
+            }
+            return super.obtainFor( key, argument );
+        }
+
+        /**
+         * The NetMeshBaseIdentifier of the NetMeshBase for which to throw.
+         */
+        protected NetMeshBaseIdentifier theFailFor;
+    }
+}
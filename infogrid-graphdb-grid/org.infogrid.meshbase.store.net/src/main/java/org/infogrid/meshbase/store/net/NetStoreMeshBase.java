@@ -345,13 +345,7 @@ public class NetStoreMeshBase
         }
         theReplicationChangedObjectsToBeStored.clear();
         
-        for( Map.Entry<MeshObjectIdentifier,MeshObject> current : toWrite.entrySet() ) {
-            if( current.getValue() != null ) {
-                map.saveValueToStorageUponCommit( current.getKey(), current.getValue() );
-            } else {
-                map.removeValueFromStorageUponCommit( current.getKey() );
-            }
-        }
+        map.writeToStorageUponCommit( toWrite );
         map.transactionDone();
     }
 
@@ -0,0 +1,392 @@
+//
+// This file is part of InfoGrid(tm). You may not use this file except in
+// compliance with the InfoGrid license. The InfoGrid license and important
+// disclaimers are contained in the file LICENSE.InfoGrid.txt that you should
+// have received with InfoGrid. If you have not received LICENSE.InfoGrid.txt
+// or you do not consent to all aspects of the license and the disclaimers,
+// no license is granted; do not use this file.
+//
+// For more information about InfoGrid go to http://infogrid.org/
+//
+// Copyright 1998-2015 by Johannes Ernst
+// All rights reserved.
+//
+
+package org.infogrid.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import org.diet4j.core.ModuleRegistry;
+import org.diet4j.core.ModuleRequirement;
+import org.diet4j.inclasspath.InClasspathModuleRegistry;
+import org.infogrid.mesh.MeshObject;
+import org.infogrid.mesh.MeshObjectIdentifier;
+import org.infogrid.meshbase.DefaultMeshBaseIdentifierFactory;
+import org.infogrid.meshbase.MeshBase;
+import org.infogrid.meshbase.MeshBaseIdentifierFactory;
+import org.infogrid.meshbase.MeshBaseLifecycleManager;
+import org.infogrid.meshbase.transaction.Transaction;
+import org.infogrid.model.primitives.EntityType;
+import org.infogrid.model.primitives.PropertyType;
+import org.infogrid.model.primitives.RoleType;
+import org.infogrid.model.primitives.StringValue;
+import org.infogrid.model.primitives.text.ModelPrimitivesStringRepresentationDirectorySingleton;
+import org.infogrid.modelbase.ModelBase;
+import org.infogrid.modelbase.ModelBaseSingleton;
+import org.infogrid.util.context.Context;
+import org.infogrid.util.context.SimpleContext;
+import org.infogrid.util.logging.Log;
+import org.infogrid.util.logging.log4j.Log4jLog;
+import org.infogrid.util.logging.log4j.Log4jLogFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Factors out the graph setup and the benchmarks common to all MeshBase implementations.
+ * Subclasses only need to know how to instantiate the MeshBase under test.
+ *
+ * <p>The graph consists of <code>graphSize</code> hub MeshObjects blessed with
+ * <code>org.infogrid.model.Test/AA</code>, each of which is related to <code>fanOut</code>
+ * leaf MeshObjects blessed with <code>org.infogrid.model.Test/B</code> through
+ * <code>org.infogrid.model.Test/R</code>.</p>
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS )
+@Measurement( iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS )
+@Fork( 1 )
+public abstract class AbstractMeshBaseBenchmark
+{
+    /**
+     * Initialize the Module Framework, and initialize statics. This only needs to happen
+     * once per JVM, regardless of how many benchmarks are run.
+     *
+     * @throws Exception all sorts of things may go wrong during initialization
+     */
+    protected static synchronized void initialize()
+        throws
+            Exception
+    {
+        if( theIsInitialized ) {
+            return;
+        }
+        ClassLoader    cl       = AbstractMeshBaseBenchmark.class.getClassLoader();
+        ModuleRegistry registry = InClasspathModuleRegistry.instantiateOrGet( cl );
+
+        registry.resolve( registry.determineSingleResolutionCandidate( ModuleRequirement.create( "org.infogrid", "org.infogrid.kernel" ))).activateRecursively();
+        registry.resolve( registry.determineSingleResolutionCandidate( ModuleRequirement.create( "org.infogrid", "org.infogrid.model.Test" ))).activateRecursively();
+
+        Log4jLog.configure( "org/infogrid/benchmarks/Log.properties", cl );
+        Log.setLogFactory( new Log4jLogFactory());
+
+        ModelPrimitivesStringRepresentationDirectorySingleton.initialize();
+
+        theIsInitialized = true;
+    }
+
+    /**
+     * Create the MeshBase and populate it with the benchmark graph.
+     *
+     * @throws Exception all sorts of things may go wrong during setup
+     */
+    @Setup( Level.Trial )
+    public void setupGraph()
+        throws
+            Exception
+    {
+        initialize();
+
+        theTypeA    = theModelBase.findEntityType(       "org.infogrid.model.Test", "A" );
+        theTypeAA   = theModelBase.findEntityType(       "org.infogrid.model.Test", "AA" );
+        theTypeB    = theModelBase.findEntityType(       "org.infogrid.model.Test", "B" );
+        thePropX    = theModelBase.findPropertyType(     "org.infogrid.model.Test", "A", "X" );
+        theRoleRSrc = theModelBase.findRelationshipType( "org.infogrid.model.Test", "R" ).getSource();
+
+        theMeshBase = createMeshBase();
+
+        MeshBaseLifecycleManager life = theMeshBase.getMeshBaseLifecycleManager();
+
+        theHubIdentifiers   = new MeshObjectIdentifier[ graphSize ];
+        theSpareIdentifiers = new MeshObjectIdentifier[ graphSize ];
+
+        // populate in chunks, so no single Transaction becomes unreasonably large
+        int hubsPerTx = Math.max( 1, TX_CHUNK_SIZE / ( fanOut + 2 ));
+
+        for( int start=0 ; start<graphSize ; start += hubsPerTx ) {
+            Transaction tx = theMeshBase.createTransactionNow();
+
+            for( int i=start ; i<graphSize && i<start+hubsPerTx ; ++i ) {
+                MeshObject hub = life.createMeshObject( theTypeAA );
+                hub.setPropertyValue( thePropX, StringValue.create( "Hub " + i ));
+
+                for( int j=0 ; j<fanOut ; ++j ) {
+                    MeshObject leaf = life.createMeshObject( theTypeB );
+                    hub.relateAndBless( theRoleRSrc, leaf );
+                }
+                MeshObject spare = life.createMeshObject( theTypeB );
+
+                theHubIdentifiers[i]   = hub.getIdentifier();
+                theSpareIdentifiers[i] = spare.getIdentifier();
+            }
+            tx.commitTransaction();
+        }
+        theCounter = 0;
+    }
+
+    /**
+     * Clean up.
+     *
+     * @throws Exception all sorts of things may go wrong during cleanup
+     */
+    @TearDown( Level.Trial )
+    public void cleanupGraph()
+        throws
+            Exception
+    {
+        if( theMeshBase != null ) {
+            theMeshBase.die();
+            theMeshBase = null;
+        }
+        cleanupStorage();
+    }
+
+    /**
+     * Instantiate the MeshBase under test.
+     *
+     * @return the MeshBase
+     * @throws Exception all sorts of things may go wrong
+     */
+    protected abstract MeshBase createMeshBase()
+        throws
+            Exception;
+
+    /**
+     * Overridden by subclasses to release storage after the MeshBase has died.
+     *
+     * @throws Exception all sorts of things may go wrong
+     */
+    protected void cleanupStorage()
+        throws
+            Exception
+    {
+        // noop on this level
+    }
+
+    /**
+     * Determine the index of the hub to use for the next invocation.
+     *
+     * @return the index
+     */
+    protected int nextIndex()
+    {
+        int ret = theCounter++;
+        if( theCounter >= graphSize ) {
+            theCounter = 0;
+        }
+        return ret;
+    }
+
+    /**
+     * Look up a MeshObject by its MeshObjectIdentifier.
+     *
+     * @return the found MeshObject
+     */
+    @Benchmark
+    public MeshObject findMeshObjectByIdentifier()
+    {
+        return theMeshBase.findMeshObjectByIdentifier( theHubIdentifiers[ nextIndex() ] );
+    }
+
+    /**
+     * Create and commit an empty Transaction. This measures the Transaction acquisition and
+     * commit overhead by itself.
+     *
+     * @throws Exception all sorts of things may go wrong
+     */
+    @Benchmark
+    public void emptyTransaction()
+        throws
+            Exception
+    {
+        Transaction tx = theMeshBase.createTransactionAsap();
+        tx.commitTransaction();
+    }
+
+    /**
+     * Create a MeshObject, bless it and set a property, in its own Transaction.
+     *
+     * @return the created MeshObject
+     * @throws Exception all sorts of things may go wrong
+     */
+    @Benchmark
+    public MeshObject createBlessCommit()
+        throws
+            Exception
+    {
+        Transaction tx  = theMeshBase.createTransactionAsap();
+        MeshObject  ret = theMeshBase.getMeshBaseLifecycleManager().createMeshObject();
+
+        ret.bless( theTypeAA );
+        ret.setPropertyValue( thePropX, StringValue.create( "Created" ));
+
+        tx.commitTransaction();
+        return ret;
+    }
+
+    /**
+     * Set a property on an existing hub and commit.
+     *
+     * @throws Exception all sorts of things may go wrong
+     */
+    @Benchmark
+    public void setPropertyCommit()
+        throws
+            Exception
+    {
+        int        index = nextIndex();
+        MeshObject hub   = theMeshBase.findMeshObjectByIdentifier( theHubIdentifiers[ index ] );
+
+        Transaction tx = theMeshBase.createTransactionAsap();
+        hub.setPropertyValue( thePropX, StringValue.create( "Changed " + index ));
+        tx.commitTransaction();
+    }
+
+    /**
+     * Relate and bless a hub with a spare leaf, then unrelate it again, and commit.
+     * The hub's degree stays at <code>fanOut</code> from invocation to invocation.
+     *
+     * @throws Exception all sorts of things may go wrong
+     */
+    @Benchmark
+    public void relateUnrelateCommit()
+        throws
+            Exception
+    {
+        int        index = nextIndex();
+        MeshObject hub   = theMeshBase.findMeshObjectByIdentifier( theHubIdentifiers[ index ] );
+        MeshObject spare = theMeshBase.findMeshObjectByIdentifier( theSpareIdentifiers[ index ] );
+
+        Transaction tx = theMeshBase.createTransactionAsap();
+        hub.relateAndBless( theRoleRSrc, spare );
+        hub.unrelate( spare );
+        tx.commitTransaction();
+    }
+
+    /**
+     * Traverse from a hub to its leaves by RoleType.
+     *
+     * @param bh the Blackhole that consumes the result
+     */
+    @Benchmark
+    public void traverseByRoleType(
+            Blackhole bh )
+    {
+        MeshObject hub = theMeshBase.findMeshObjectByIdentifier( theHubIdentifiers[ nextIndex() ] );
+
+        bh.consume( hub.traverse( theRoleRSrc ).size() );
+    }
+
+    /**
+     * Traverse from a hub to the MeshObjectIdentifiers of its leaves by RoleType.
+     *
+     * @return the found MeshObjectIdentifiers
+     */
+    @Benchmark
+    public MeshObjectIdentifier [] traverseToIdentifiers()
+    {
+        MeshObject hub = theMeshBase.findMeshObjectByIdentifier( theHubIdentifiers[ nextIndex() ] );
+
+        return hub.traverseToIdentifiers( theRoleRSrc );
+    }
+
+    /**
+     * Determine whether a hub is blessed with the (abstract) supertype of its EntityType.
+     *
+     * @return true if blessed
+     */
+    @Benchmark
+    public boolean isBlessedBy()
+    {
+        MeshObject hub = theMeshBase.findMeshObjectByIdentifier( theHubIdentifiers[ nextIndex() ] );
+
+        return hub.isBlessedBy( theTypeA );
+    }
+
+    /**
+     * Number of hub MeshObjects in the graph.
+     */
+    @Param( { "100", "1000" } )
+    public int graphSize;
+
+    /**
+     * Number of leaf MeshObjects related to each hub.
+     */
+    @Param( { "1", "10", "100" } )
+    public int fanOut;
+
+    /**
+     * The MeshBase under test.
+     */
+    protected MeshBase theMeshBase;
+
+    /**
+     * The MeshObjectIdentifiers of the hub MeshObjects.
+     */
+    protected MeshObjectIdentifier [] theHubIdentifiers;
+
+    /**
+     * The MeshObjectIdentifiers of unrelated MeshObjects, one per hub.
+     */
+    protected MeshObjectIdentifier [] theSpareIdentifiers;
+
+    /**
+     * Rotates through the hubs.
+     */
+    protected int theCounter;
+
+    /**
+     * The EntityTypes, PropertyTypes and RoleTypes used by the benchmarks.
+     */
+    protected EntityType   theTypeA;
+    protected EntityType   theTypeAA;
+    protected EntityType   theTypeB;
+    protected PropertyType thePropX;
+    protected RoleType     theRoleRSrc;
+
+    /**
+     * Approximate number of MeshObjects created per Transaction during setup.
+     */
+    protected static final int TX_CHUNK_SIZE = 1000;
+
+    /**
+     * The ModelBase.
+     */
+    protected final ModelBase theModelBase = ModelBaseSingleton.getSingleton();
+
+    /**
+     * Factory for MeshBaseIdentifiers.
+     */
+    protected final MeshBaseIdentifierFactory theMeshBaseIdentifierFactory = DefaultMeshBaseIdentifierFactory.create();
+
+    /**
+     * The root context for the benchmarks.
+     */
+    protected static final Context rootContext = SimpleContext.createRoot( "root-context" );
+
+    /**
+     * Flag that remembers whether statics have been initialized.
+     */
+    private static boolean theIsInitialized = false;
+}
@@ -0,0 +1,43 @@
+//
+// This file is part of InfoGrid(tm). You may not use this file except in
+// compliance with the InfoGrid license. The InfoGrid license and important
+// disclaimers are contained in the file LICENSE.InfoGrid.txt that you should
+// have received with InfoGrid. If you have not received LICENSE.InfoGrid.txt
+// or you do not consent to all aspects of the license and the disclaimers,
+// no license is granted; do not use this file.
+//
+// For more information about InfoGrid go to http://infogrid.org/
+//
+// Copyright 1998-2015 by Johannes Ernst
+// All rights reserved.
+//
+
+package org.infogrid.benchmarks;
+
+import org.infogrid.meshbase.MeshBase;
+import org.infogrid.meshbase.m.MMeshBase;
+
+/**
+ * Runs the kernel benchmarks against the in-memory MMeshBase.
+ */
+public class MMeshBaseBenchmark
+        extends
+            AbstractMeshBaseBenchmark
+{
+    /**
+     * Instantiate the MeshBase under test.
+     *
+     * @return the MeshBase
+     * @throws Exception all sorts of things may go wrong
+     */
+    protected MeshBase createMeshBase()
+        throws
+            Exception
+    {
+        return MMeshBase.create(
+                theMeshBaseIdentifierFactory.fromExternalForm( "MeshBase" ),
+                theModelBase,
+                null,
+                rootContext );
+    }
+}
@@ -0,0 +1,123 @@
+//
+// This file is part of InfoGrid(tm). You may not use this file except in
+// compliance with the InfoGrid license. The InfoGrid license and important
+// disclaimers are contained in the file LICENSE.InfoGrid.txt that you should
+// have received with InfoGrid. If you have not received LICENSE.InfoGrid.txt
+// or you do not consent to all aspects of the license and the disclaimers,
+// no license is granted; do not use this file.
+//
+// For more information about InfoGrid go to http://infogrid.org/
+//
+// Copyright 1998-2015 by Johannes Ernst
+// All rights reserved.
+//
+
+package org.infogrid.benchmarks;
+
+import java.io.File;
+import java.nio.file.Files;
+import org.infogrid.mesh.MeshObject;
+import org.infogrid.meshbase.MeshBase;
+import org.infogrid.meshbase.store.StoreMeshBase;
+import org.infogrid.store.Store;
+import org.infogrid.store.filesystem.FilesystemStore;
+import org.infogrid.store.m.MStore;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+
+/**
+ * Runs the kernel benchmarks against a StoreMeshBase, backed either by an MStore or
+ * a FilesystemStore in a temporary directory. In addition to the common benchmarks,
+ * this measures loading MeshObjects from the Store after the memory cache was cleared.
+ */
+public class StoreMeshBaseBenchmark
+        extends
+            AbstractMeshBaseBenchmark
+{
+    /**
+     * Instantiate the MeshBase under test.
+     *
+     * @return the MeshBase
+     * @throws Exception all sorts of things may go wrong
+     */
+    protected MeshBase createMeshBase()
+        throws
+            Exception
+    {
+        if( STORE_M.equals( storeType )) {
+            theStore = MStore.create();
+
+        } else if( STORE_FILESYSTEM.equals( storeType )) {
+            theStoreDirectory = Files.createTempDirectory( "infogrid-benchmarks" ).toFile();
+            theStore          = FilesystemStore.create( theStoreDirectory );
+
+        } else {
+            throw new IllegalArgumentException( "Unknown storeType: " + storeType );
+        }
+        theStore.initializeHard();
+
+        return StoreMeshBase.create(
+                theMeshBaseIdentifierFactory.fromExternalForm( "MeshBase" ),
+                theModelBase,
+                null,
+                theStore,
+                rootContext );
+    }
+
+    /**
+     * Release storage after the MeshBase has died.
+     *
+     * @throws Exception all sorts of things may go wrong
+     */
+    @Override
+    protected void cleanupStorage()
+        throws
+            Exception
+    {
+        theStore = null;
+
+        if( theStoreDirectory != null ) {
+            FilesystemStore.deleteRecursively( theStoreDirectory );
+            theStoreDirectory = null;
+        }
+    }
+
+    /**
+     * Clear the memory cache and load a hub MeshObject back from the Store.
+     *
+     * @return the loaded MeshObject
+     */
+    @Benchmark
+    public MeshObject loadFromStore()
+    {
+        theMeshBase.clearMemoryCache();
+
+        return theMeshBase.findMeshObjectByIdentifier( theHubIdentifiers[ nextIndex() ] );
+    }
+
+    /**
+     * The type of Store to back the StoreMeshBase with.
+     */
+    @Param( { STORE_M, STORE_FILESYSTEM } )
+    public String storeType;
+
+    /**
+     * The Store.
+     */
+    protected Store theStore;
+
+    /**
+     * The directory used by the FilesystemStore, if any.
+     */
+    protected File theStoreDirectory;
+
+    /**
+     * Value of storeType for an MStore.
+     */
+    public static final String STORE_M = "MStore";
+
+    /**
+     * Value of storeType for a FilesystemStore.
+     */
+    public static final String STORE_FILESYSTEM = "FilesystemStore";
+}
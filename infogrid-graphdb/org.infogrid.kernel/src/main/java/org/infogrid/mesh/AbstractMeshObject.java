@@ -24,6 +24,7 @@ import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
 import org.infogrid.mesh.security.PropertyReadOnlyException;
+import org.infogrid.meshbase.AbstractMeshBase;
 import org.infogrid.meshbase.MeshBase;
 import org.infogrid.meshbase.security.AccessManager;
 import org.infogrid.meshbase.transaction.MeshObjectBecameDeadStateEvent;
@@ -34,6 +35,7 @@ import org.infogrid.meshbase.transaction.MeshObjectRoleAddedEvent;
 import org.infogrid.meshbase.transaction.MeshObjectRoleRemovedEvent;
 import org.infogrid.meshbase.transaction.MeshObjectTypeAddedEvent;
 import org.infogrid.meshbase.transaction.MeshObjectTypeRemovedEvent;
+import org.infogrid.meshbase.transaction.NeighborIdentifiersSnapshot;
 import org.infogrid.meshbase.transaction.NotWithinTransactionBoundariesException;
 import org.infogrid.meshbase.transaction.Transaction;
 import org.infogrid.meshbase.transaction.TransactionException;
@@ -491,6 +493,7 @@ public abstract class AbstractMeshObject
         }
 
         checkTransaction();
+        lockForUpdate();
         // it appears that if we do checkTransaction we don't need to do synchronized
 
         if( isMaster ) {
@@ -848,6 +851,7 @@ public abstract class AbstractMeshObject
         }
 
         theMeshBase.checkTransaction();
+        lockForUpdate();
         //  if we do checkTransaction, it does not seem we need to do synchronized
 
         if( isMaster ) {
@@ -1019,6 +1023,7 @@ public abstract class AbstractMeshObject
             return;
         }
         theMeshBase.checkTransaction();
+        lockForUpdate();
 
         if( isMaster ) {
             checkPermittedUnbless( types );
@@ -1794,6 +1799,68 @@ public abstract class AbstractMeshObject
         firePropertyChange( theEvent );
     }
 
+    /**
+     * Fire an event indicating a change in the set of neighbors of this MeshObject, whose
+     * neighbors are only determined if somebody asks.
+     *
+     * @param addedRoleTypes the newly added RoleTypes, if any
+     * @param oldValue the MeshObjectIdentifiers of the neighbors prior to the change
+     * @param added the added MeshObjectIdentifier
+     * @param newValue the MeshObjectIdentifiers of the neighbors now, after the change
+     * @param mb the MeshBase to use
+     */
+    protected void fireNeighborAdded(
+            RoleType []                 addedRoleTypes,
+            NeighborIdentifiersSnapshot oldValue,
+            MeshObjectIdentifier        added,
+            NeighborIdentifiersSnapshot newValue,
+            MeshBase                    mb )
+    {
+        if( addedRoleTypes == null ) {
+            addedRoleTypes = new RoleType[0];
+        }
+        MeshObjectNeighborAddedEvent theEvent
+                = new MeshObjectNeighborAddedEvent(
+                        this,
+                        addedRoleTypes,
+                        oldValue,
+                        added,
+                        newValue,
+                        theTimeUpdated );
+
+        mb.getCurrentTransaction().addChange( theEvent );
+
+        firePropertyChange( theEvent );
+    }
+
+    /**
+     * Fire an event indicating a change in the set of neighbors of this MeshObject, whose
+     * neighbors are only determined if somebody asks.
+     *
+     * @param oldValue the MeshObjectIdentifiers of the neighbors prior to the change
+     * @param removed the removed Identifier
+     * @param newValue the MeshObjectIdentifiers of the neighbors now, after the change
+     * @param mb the MeshBase to use
+     */
+    protected void fireNeighborRemoved(
+            NeighborIdentifiersSnapshot oldValue,
+            MeshObjectIdentifier        removed,
+            NeighborIdentifiersSnapshot newValue,
+            MeshBase                    mb )
+    {
+        MeshObjectNeighborRemovedEvent theEvent
+                = new MeshObjectNeighborRemovedEvent(
+                        this,
+                        oldValue,
+                        removed,
+                        newValue,
+                        theTimeUpdated );
+
+        mb.getCurrentTransaction().addChange( theEvent );
+
+        firePropertyChange( theEvent );
+    }
+
     /**
      * Fire an event indicating that one or more MeshTypes have been added to this MeshObject.
      *
@@ -1976,6 +2043,33 @@ public abstract class AbstractMeshObject
         internalCheckTransaction( theMeshBase );
     }
 
+    /**
+     * Helper to obtain the locks on this MeshObject, and on the MeshObjects with the given
+     * identifiers, before they are modified. This only has an effect if the MeshBase
+     * runs several Transactions concurrently.
+     *
+     * @param others identifiers of other MeshObjects to lock, if any
+     * @throws TransactionException thrown if the locks could not be obtained
+     */
+    protected final void lockForUpdate(
+            MeshObjectIdentifier ... others )
+        throws
+            TransactionException
+    {
+        if( !( theMeshBase instanceof AbstractMeshBase )) {
+            return;
+        }
+        AbstractMeshBase realBase = (AbstractMeshBase) theMeshBase;
+        if( realBase.getMeshObjectLockManager() == null ) {
+            return;
+        }
+        if( others.length == 0 ) {
+            realBase.lockForUpdate( theIdentifier );
+        } else {
+            realBase.lockForUpdate( ArrayHelper.append( theIdentifier, others, MeshObjectIdentifier.class ));
+        }
+    }
+
     /**
      * Internal helper to check that we are within the proper Transaction boundaries.
      * We pass in the MeshBase, because this may be invokved when the member variable has been zero'd out already.
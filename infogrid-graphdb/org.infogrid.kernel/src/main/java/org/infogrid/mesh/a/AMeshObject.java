@@ -16,6 +16,7 @@ package org.infogrid.mesh.a;
 
 import java.lang.ref.WeakReference;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.Set;
 import org.infogrid.mesh.AbstractMeshObject;
@@ -32,6 +33,7 @@ import org.infogrid.mesh.RoleTypeNotBlessedException;
 import org.infogrid.mesh.TypeInitializer;
 import org.infogrid.mesh.TypedMeshObjectFacade;
 import org.infogrid.mesh.externalized.SimpleExternalizedMeshObject;
+import org.infogrid.mesh.set.MeshObjectIdentifierIndex;
 import org.infogrid.mesh.set.MeshObjectSet;
 import org.infogrid.mesh.text.MeshStringRepresentationParameters;
 import org.infogrid.meshbase.MeshBase;
@@ -188,7 +190,10 @@ public class AMeshObject
         } else {
             AMeshObject [] almost = new AMeshObject[ n ];
 
-            int max = 0;
+            int                       max  = 0;
+            MeshObjectIdentifierIndex seen = n >= MeshObjectIdentifierIndex.THRESHOLD
+                    ? MeshObjectIdentifierIndex.create( n )
+                    : null;
             for( int s=0 ; s<neighborIdentifiers.length ; ++s ) {
                 if( neighborIdentifiers[s] == null ) {
                     continue;
@@ -203,7 +208,7 @@ public class AMeshObject
                             log.debug( "Could not find related object " + neighborIdentifiers[s][i] );
                         }
 
-                    } else if( !ArrayHelper.isIn( add[i], almost, 0, max, false )) {
+                    } else if( seen != null ? seen.addMeshObject( add[i] ) : !ArrayHelper.isIn( add[i], almost, 0, max, false )) {
                         almost[ max++ ] = (AMeshObject) add[i];
                     }
                 }
@@ -268,8 +273,8 @@ public class AMeshObject
     {
         checkAlive();
 
-        // That avoids a synchronized
-        MeshObjectIdentifier [] neighborIdentifiers = theNeighborIdentifiers;
+        // That avoids a synchronized, unless the neighbors need to be assembled first
+        MeshObjectIdentifier [] neighborIdentifiers = getNeighborManager().getNeighborIdentifiers( this );
         if( neighborIdentifiers == null ) {
             return null;
         }
@@ -348,14 +353,16 @@ public class AMeshObject
             realNeighbor.checkPermittedRelate( this );
         }
 
-        MeshObjectIdentifier [] oldNeighborIdentifiers         = createMeshObjectIdentifierArray( 0 );
-        MeshObjectIdentifier [] oldNeighborNeighborIdentifiers = createMeshObjectIdentifierArray( 0 );
+        AMeshObjectNeighborSnapshot oldNeighborIdentifiers         = null;
+        AMeshObjectNeighborSnapshot oldNeighborNeighborIdentifiers = null;
 
         AMeshObjectNeighborManager nMgr = getNeighborManager();
 
         Object neighborSyncObject = neighbor != null ? neighbor : neighborIdentifier;
                 // if there is no neighbor, we don't really need to sync, but Java is inflexible and so we just pick something
 
+        lockForUpdate( neighborIdentifier ); // before synchronizing, so we never wait for a lock while holding a monitor
+
         synchronized( this ) {
             synchronized( neighborSyncObject ) {
 
@@ -365,30 +372,24 @@ public class AMeshObject
                 boolean thereAlready = false;
 
                 // do what can throw exceptions first
-                if( nMgr.hasNeighbors( this )) {
-                    for( MeshObjectIdentifier hereNeighborIdentifier : nMgr.getNeighborIdentifiers( this )) {
-                        if( neighborIdentifier.equals( hereNeighborIdentifier )) {
-                            if( forgiving ) {
-                                hereAlready = true;
-                            } else {
-                                throw new RelatedAlreadyException( this, neighborIdentifier );
-                            }
-                        }
+                if( nMgr.isRelated( this, neighborIdentifier )) {
+                    if( forgiving ) {
+                        hereAlready = true;
+                    } else {
+                        throw new RelatedAlreadyException( this, neighborIdentifier );
                     }
                 }
-                oldNeighborIdentifiers = nMgr.getNeighborIdentifiers( this );
-
-                if( realNeighbor != null && nMgr.hasNeighbors( realNeighbor )) {
-                    for( MeshObjectIdentifier thereNeighborIdentifier : nMgr.getNeighborIdentifiers( realNeighbor )) {
-                        if( here.equals( thereNeighborIdentifier )) {
-                            if( forgiving ) {
-                                thereAlready = true;
-                            } else {
-                                throw new RelatedAlreadyException( realNeighbor, this );
-                            }
+                oldNeighborIdentifiers = nMgr.getNeighborIdentifiersSnapshot( this );
+
+                if( realNeighbor != null ) {
+                    if( nMgr.isRelated( realNeighbor, here )) {
+                        if( forgiving ) {
+                            thereAlready = true;
+                        } else {
+                            throw new RelatedAlreadyException( realNeighbor, this );
                         }
                     }
-                    oldNeighborNeighborIdentifiers = nMgr.getNeighborIdentifiers( realNeighbor );
+                    oldNeighborNeighborIdentifiers = nMgr.getNeighborIdentifiersSnapshot( realNeighbor );
                 }
 
                 if( !hereAlready ) {
@@ -398,10 +399,10 @@ public class AMeshObject
                     nMgr.appendNeighbor( realNeighbor, here, null );
                 }
                 if( !hereAlready ) {
-                    fireNeighborAdded( null, oldNeighborIdentifiers, neighborIdentifier, nMgr.getNeighborIdentifiers( this ), theMeshBase );
+                    fireNeighborAdded( null, oldNeighborIdentifiers, neighborIdentifier, nMgr.getNeighborIdentifiersSnapshot( this ), theMeshBase );
                 }
                 if( realNeighbor != null && !thereAlready ) {
-                    realNeighbor.fireNeighborAdded( null, oldNeighborNeighborIdentifiers, here, nMgr.getNeighborIdentifiers( realNeighbor ), theMeshBase );
+                    realNeighbor.fireNeighborAdded( null, oldNeighborNeighborIdentifiers, here, nMgr.getNeighborIdentifiersSnapshot( realNeighbor ), theMeshBase );
                 }
             }
         }
@@ -477,8 +478,8 @@ public class AMeshObject
             realNeighbor.checkPermittedUnrelate( this );
         }
 
-        MeshObjectIdentifier [] oldNeighborIdentifiers         = {};
-        MeshObjectIdentifier [] oldNeighborNeighborIdentifiers = {};
+        AMeshObjectNeighborSnapshot oldNeighborIdentifiers         = null;
+        AMeshObjectNeighborSnapshot oldNeighborNeighborIdentifiers = null;
         RoleType [] roleTypes         = null;
         RoleType [] neighborRoleTypes = null;
 
@@ -487,6 +488,8 @@ public class AMeshObject
         Object neighborSyncObject = neighbor != null ? neighbor : neighborIdentifier;
                 // if there is no neighbor, we don't really need to sync, but Java is inflexible and so we just pick something
 
+        lockForUpdate( neighborIdentifier );
+
         synchronized( this ) {
             synchronized( neighborSyncObject ) {
 
@@ -499,11 +502,11 @@ public class AMeshObject
                     throw new NotRelatedException( realNeighbor, this );
                 }
 
-                oldNeighborIdentifiers = nMgr.getNeighborIdentifiers( this );
+                oldNeighborIdentifiers = nMgr.getNeighborIdentifiersSnapshot( this );
                 roleTypes              = nMgr.getRoleTypesFor(        this, neighborIdentifier ); // will throw NotRelatedException
 
                 if( realNeighbor != null ) {
-                    oldNeighborNeighborIdentifiers = nMgr.getNeighborIdentifiers( realNeighbor );
+                    oldNeighborNeighborIdentifiers = nMgr.getNeighborIdentifiersSnapshot( realNeighbor );
                     neighborRoleTypes              = nMgr.getRoleTypesFor(        realNeighbor, here ); // will throw NotRelatedException
                 }
 
@@ -538,9 +541,9 @@ public class AMeshObject
                     nMgr.removeNeighbor( realNeighbor, here );
                 }
 
-                fireNeighborRemoved( oldNeighborIdentifiers, neighborIdentifier, nMgr.getNeighborIdentifiers( this ), theMeshBase );
+                fireNeighborRemoved( oldNeighborIdentifiers, neighborIdentifier, nMgr.getNeighborIdentifiersSnapshot( this ), theMeshBase );
                 if( realNeighbor != null ) {
-                    realNeighbor.fireNeighborRemoved( oldNeighborNeighborIdentifiers, here, nMgr.getNeighborIdentifiers( realNeighbor ), theMeshBase );
+                    realNeighbor.fireNeighborRemoved( oldNeighborNeighborIdentifiers, here, nMgr.getNeighborIdentifiersSnapshot( realNeighbor ), theMeshBase );
                 }
             }
         }
@@ -703,6 +706,8 @@ public class AMeshObject
         Object neighborSyncObject = neighbor != null ? neighbor : neighborIdentifier;
                 // if there is no neighbor, we don't really need to sync, but Java is inflexible and so we just pick something
 
+        lockForUpdate( neighborIdentifier );
+
         synchronized( this ) {
             synchronized( neighborSyncObject ) {
 
@@ -774,6 +779,9 @@ public class AMeshObject
 
                             } else if( toAdd.isSpecializationOfOrEquals( roleTypes[i] )) {
                                 roleTypes[i] = toAdd;
+                                if( theNeighborIndex != null ) {
+                                    theNeighborIndex.roleTypesChanged( neighborIdentifier, roleTypes );
+                                }
                                 break;
                             }
                         }
@@ -790,6 +798,9 @@ public class AMeshObject
 
                             } else if( neighborToAdd.isSpecializationOfOrEquals( neighborRoleTypes[i] )) {
                                 neighborRoleTypes[i] = neighborToAdd;
+                                if( realNeighbor.theNeighborIndex != null ) {
+                                    realNeighbor.theNeighborIndex.roleTypesChanged( here, neighborRoleTypes );
+                                }
                                 return;
                             }
                         }
@@ -904,6 +915,8 @@ public class AMeshObject
         }
 
         AMeshObjectNeighborManager nMgr = getNeighborManager();
+        lockForUpdate( neighborIdentifier );
+
         synchronized( this ) {
             synchronized( neighborSyncObject ) {
 
@@ -1046,10 +1059,20 @@ public class AMeshObject
         MeshObjectIdentifier [][] neighborIdentifiers = createMeshObjectIdentifierArrayArray( starts.length );
         RoleType [][][]           roleTypes           = new RoleType[ starts.length ][][];
 
+        MeshObjectIdentifier [] matching = null; // set if the neighbor index could tell us directly
+
         int n = 0;
         for( int s=0 ; s<starts.length ; ++s ) {
             AMeshObject current = (AMeshObject) starts[s];
             synchronized( current ) {
+                if( starts.length == 1 ) {
+                    Collection<MeshObjectIdentifier> found = nMgr.getNeighborIdentifiersFor( current, type );
+                    if( found != null ) {
+                        matching = found.toArray( createMeshObjectIdentifierArray( found.size() ));
+                        n        = nMgr.getNeighborCount( current );
+                        continue; // no need to assemble all neighbors
+                    }
+                }
                 neighborIdentifiers[s] = nMgr.getNeighborIdentifiers( current );
                 roleTypes[s]           = nMgr.getRoleTypes( current );
             }
@@ -1062,19 +1085,26 @@ public class AMeshObject
         if( n == 0 ) {
             ret = realBase.getMeshObjectSetFactory().obtainEmptyImmutableMeshObjectSet();
         } else {
-            MeshObjectIdentifier [] almost = createMeshObjectIdentifierArray( n );
-            int                     max    = 0;
-
-            // it's more efficient to first assemble all possible neighbors, and then subset based on permissions
-            for( int s=0 ; s<neighborIdentifiers.length ; ++s ) {
+            MeshObjectIdentifier []   almost = matching != null ? matching        : createMeshObjectIdentifierArray( n );
+            int                       max    = matching != null ? matching.length : 0;
+            MeshObjectIdentifierIndex seen   = n >= MeshObjectIdentifierIndex.THRESHOLD && matching == null
+                    ? MeshObjectIdentifierIndex.create( n )
+                    : null; // high-degree MeshObjects: avoid quadratic duplicate check
+
+            // it's more efficient to first assemble all possible neighbors, and then subset based on permissions.
+            // Not needed if the neighbor index has found the matching neighbors already.
+            for( int s=0 ; matching == null && s<neighborIdentifiers.length ; ++s ) {
                 for( int i=0 ; i<neighborIdentifiers[s].length ; ++i ) {
                     if( roleTypes[s][i] != null ) {
                         for( int j=0 ; j<roleTypes[s][i].length ; ++j ) {
                             if( roleTypes[s][i][j].isSpecializationOfOrEquals( type ) ) {
-                                if( !ArrayHelper.isIn( neighborIdentifiers[s][i], almost, 0, max, true )) {
+                                boolean isNew = seen != null
+                                        ? seen.addIdentifier( neighborIdentifiers[s][i] )
+                                        : !ArrayHelper.isIn( neighborIdentifiers[s][i], almost, 0, max, true );
+                                if( isNew ) {
                                     almost[max++] = neighborIdentifiers[s][i];
-                                    break;
                                 }
+                                break;
                             }
                         }
                     }
@@ -1130,10 +1160,20 @@ public class AMeshObject
         MeshObjectIdentifier [][] neighborIdentifiers = createMeshObjectIdentifierArrayArray( starts.length );
         RoleType [][][]           roleTypes           = new RoleType[ starts.length ][][];
 
+        MeshObjectIdentifier [] matching = null; // set if the neighbor index could tell us directly
+
         int n = 0;
         for( int s=0 ; s<starts.length ; ++s ) {
             AMeshObject current = (AMeshObject) starts[s];
             synchronized( current ) {
+                if( starts.length == 1 ) {
+                    Collection<MeshObjectIdentifier> found = nMgr.getNeighborIdentifiersFor( current, theTraverseSpec );
+                    if( found != null ) {
+                        matching = found.toArray( createMeshObjectIdentifierArray( found.size() ));
+                        n        = nMgr.getNeighborCount( current );
+                        continue; // no need to assemble all neighbors
+                    }
+                }
                 neighborIdentifiers[s] = nMgr.getNeighborIdentifiers( current );
                 roleTypes[s]           = nMgr.getRoleTypes( current );
             }
@@ -1146,19 +1186,26 @@ public class AMeshObject
         if( n == 0 ) {
             ret = new MeshObjectIdentifier[0];
         } else {
-            MeshObjectIdentifier [] almost = createMeshObjectIdentifierArray( n );
-            int                     max    = 0;
-
-            // it's more efficient to first assemble all possible neighbors, and then subset based on permissions
-            for( int s=0 ; s<neighborIdentifiers.length ; ++s ) {
+            MeshObjectIdentifier []   almost = matching != null ? matching        : createMeshObjectIdentifierArray( n );
+            int                       max    = matching != null ? matching.length : 0;
+            MeshObjectIdentifierIndex seen   = n >= MeshObjectIdentifierIndex.THRESHOLD && matching == null
+                    ? MeshObjectIdentifierIndex.create( n )
+                    : null; // high-degree MeshObjects: avoid quadratic duplicate check
+
+            // it's more efficient to first assemble all possible neighbors, and then subset based on permissions.
+            // Not needed if the neighbor index has found the matching neighbors already.
+            for( int s=0 ; matching == null && s<neighborIdentifiers.length ; ++s ) {
                 for( int i=0 ; i<neighborIdentifiers[s].length ; ++i ) {
                     if( roleTypes[s][i] != null ) {
                         for( int j=0 ; j<roleTypes[s][i].length ; ++j ) {
                             if( roleTypes[s][i][j].isSpecializationOfOrEquals( theTraverseSpec ) ) {
-                                if( !ArrayHelper.isIn( neighborIdentifiers[s][i], almost, 0, max, true )) {
+                                boolean isNew = seen != null
+                                        ? seen.addIdentifier( neighborIdentifiers[s][i] )
+                                        : !ArrayHelper.isIn( neighborIdentifiers[s][i], almost, 0, max, true );
+                                if( isNew ) {
                                     almost[max++] = neighborIdentifiers[s][i];
-                                    break;
                                 }
+                                break;
                             }
                         }
                     }
@@ -1871,6 +1918,12 @@ public class AMeshObject
      */
     protected RoleType [][] theNeighborRoleTypes;
 
+    /**
+     * Index over the neighbors, if this MeshObject has many. This is maintained by the
+     * AMeshObjectNeighborManager.
+     */
+    protected AMeshObjectNeighborIndex theNeighborIndex;
+
     /**
      * String representing the home object if no other UserVisibleString could be found.
      */
@@ -0,0 +1,411 @@
+//
+// This file is part of InfoGrid(tm). You may not use this file except in
+// compliance with the InfoGrid license. The InfoGrid license and important
+// disclaimers are contained in the file LICENSE.InfoGrid.txt that you should
+// have received with InfoGrid. If you have not received LICENSE.InfoGrid.txt
+// or you do not consent to all aspects of the license and the disclaimers,
+// no license is granted; do not use this file.
+//
+// For more information about InfoGrid go to http://infogrid.org/
+//
+// Copyright 1998-2015 by Johannes Ernst
+// All rights reserved.
+//
+
+package org.infogrid.mesh.a;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import org.infogrid.mesh.MeshObjectIdentifier;
+import org.infogrid.model.primitives.RoleType;
+import org.infogrid.util.ArrayHelper;
+
+/**
+ * <p>Holds the neighbors of an AMeshObject with many neighbors, in place of the
+ *    AMeshObject's neighbor arrays. Neighbors are kept in growable lists, and a neighbor
+ *    is removed by moving the last neighbor into its position, so relating and unrelating
+ *    take constant time regardless of the number of neighbors.</p>
+ *
+ * <p>It also maps the MeshObjectIdentifier of each neighbor to its position, and keeps,
+ *    for each RoleType, the neighbors related by that RoleType. Array copies of the
+ *    neighbors, and snapshots for events, are only assembled when needed.
+ *    Instances are only accessed while holding the AMeshObject's monitor.</p>
+ */
+public class AMeshObjectNeighborIndex
+{
+    /**
+     * Factory method.
+     *
+     * @param neighborIdentifiers the identifiers of the neighbors
+     * @param neighborRoleTypes the RoleTypes of the neighbors, in the same sequence
+     * @return the created AMeshObjectNeighborIndex
+     */
+    @SuppressWarnings( "unchecked" )
+    public static AMeshObjectNeighborIndex create(
+            MeshObjectIdentifier [] neighborIdentifiers,
+            RoleType [][]           neighborRoleTypes )
+    {
+        AMeshObjectNeighborIndex ret = new AMeshObjectNeighborIndex(
+                (Class<? extends MeshObjectIdentifier>) neighborIdentifiers.getClass().getComponentType(),
+                neighborIdentifiers.length );
+
+        for( int i=0 ; i<neighborIdentifiers.length ; ++i ) {
+            ret.theIdentifiers.add( neighborIdentifiers[i] );
+            ret.theRoleTypes.add( neighborRoleTypes != null ? neighborRoleTypes[i] : null );
+            ret.thePositions.put( neighborIdentifiers[i], i );
+            ret.roleTypesChanged( neighborIdentifiers[i], neighborRoleTypes != null ? neighborRoleTypes[i] : null );
+        }
+        ret.theSnapshot = AMeshObjectNeighborSnapshot.create( neighborIdentifiers, ret.theIdentifierType );
+
+        return ret;
+    }
+
+    /**
+     * Constructor, use factory method.
+     *
+     * @param identifierType the component type of arrays of identifiers of the neighbors
+     * @param expectedSize the number of neighbors expected
+     */
+    protected AMeshObjectNeighborIndex(
+            Class<? extends MeshObjectIdentifier> identifierType,
+            int                                   expectedSize )
+    {
+        theIdentifierType   = identifierType;
+        theIdentifiers      = new ArrayList<>( expectedSize * 2 );
+        theRoleTypes        = new ArrayList<>( expectedSize * 2 );
+        thePositions        = new HashMap<>( expectedSize * 2 );
+        theIndexedRoleTypes = new HashMap<>();
+        theByRoleType       = new HashMap<>();
+    }
+
+    /**
+     * Determine the number of neighbors.
+     *
+     * @return the number of neighbors
+     */
+    public int size()
+    {
+        return theIdentifiers.size();
+    }
+
+    /**
+     * Determine the position of a neighbor.
+     *
+     * @param neighborIdentifier identifier of the neighbor
+     * @return the position, or -1 if not a neighbor
+     */
+    public int indexOf(
+            MeshObjectIdentifier neighborIdentifier )
+    {
+        Integer ret = thePositions.get( neighborIdentifier );
+        return ret != null ? ret : -1;
+    }
+
+    /**
+     * Obtain the identifier of the neighbor at a position.
+     *
+     * @param position the position
+     * @return the identifier of the neighbor
+     */
+    public MeshObjectIdentifier getNeighborIdentifier(
+            int position )
+    {
+        return theIdentifiers.get( position );
+    }
+
+    /**
+     * Obtain the RoleTypes of the neighbor at a position.
+     *
+     * @param position the position
+     * @return the RoleTypes, if any
+     */
+    public RoleType [] getRoleTypes(
+            int position )
+    {
+        return theRoleTypes.get( position );
+    }
+
+    /**
+     * Set the RoleTypes of the neighbor at a position.
+     *
+     * @param position the position
+     * @param roleTypes the RoleTypes, if any
+     */
+    public void setRoleTypes(
+            int         position,
+            RoleType [] roleTypes )
+    {
+        theRoleTypes.set( position, roleTypes );
+
+        roleTypesChanged( theIdentifiers.get( position ), roleTypes );
+    }
+
+    /**
+     * Append a neighbor.
+     *
+     * @param neighborIdentifier identifier of the neighbor
+     * @param roleTypes the RoleTypes of the neighbor, if any
+     */
+    public void appendNeighbor(
+            MeshObjectIdentifier neighborIdentifier,
+            RoleType []          roleTypes )
+    {
+        thePositions.put( neighborIdentifier, theIdentifiers.size() );
+        theIdentifiers.add( neighborIdentifier );
+        theRoleTypes.add( roleTypes );
+
+        roleTypesChanged( neighborIdentifier, roleTypes );
+
+        theSnapshot = advanceSnapshot( theSnapshot.withAdded( neighborIdentifier ));
+    }
+
+    /**
+     * Remove the neighbor at a position. The last neighbor moves into its position.
+     *
+     * @param position the position of the neighbor
+     */
+    public void removeNeighbor(
+            int position )
+    {
+        MeshObjectIdentifier neighborIdentifier = theIdentifiers.get( position );
+        int                  last               = theIdentifiers.size()-1;
+
+        thePositions.remove( neighborIdentifier );
+        roleTypesChanged( neighborIdentifier, null );
+
+        MeshObjectIdentifier movedIdentifier = theIdentifiers.remove( last );
+        RoleType []          movedRoleTypes  = theRoleTypes.remove( last );
+        if( position < last ) {
+            theIdentifiers.set( position, movedIdentifier );
+            theRoleTypes.set( position, movedRoleTypes );
+            thePositions.put( movedIdentifier, position );
+        }
+
+        theSnapshot = advanceSnapshot( theSnapshot.withRemoved( neighborIdentifier ));
+    }
+
+    /**
+     * The RoleTypes of the relationship with a neighbor have changed. This re-reads all
+     * of them, as callers may have modified the RoleType array of the neighbor in place.
+     *
+     * @param neighborIdentifier identifier of the neighbor
+     * @param roleTypes the current RoleTypes of the neighbor, if any
+     */
+    public void roleTypesChanged(
+            MeshObjectIdentifier neighborIdentifier,
+            RoleType []          roleTypes )
+    {
+        RoleType [] old = theIndexedRoleTypes.remove( neighborIdentifier );
+        if( old != null ) {
+            for( RoleType current : old ) {
+                RoleTypeNeighbors found = theByRoleType.get( current );
+                if( found != null ) {
+                    found.remove( neighborIdentifier );
+                    if( found.isEmpty() ) {
+                        theByRoleType.remove( current );
+                    }
+                }
+            }
+        }
+        if( roleTypes == null || roleTypes.length == 0 ) {
+            return;
+        }
+        for( RoleType current : roleTypes ) {
+            RoleTypeNeighbors found = theByRoleType.get( current );
+            if( found == null ) {
+                found = new RoleTypeNeighbors();
+                theByRoleType.put( current, found );
+            }
+            found.add( neighborIdentifier );
+        }
+        theIndexedRoleTypes.put( neighborIdentifier, roleTypes.clone() );
+    }
+
+    /**
+     * Obtain the identifiers of the neighbors related by a RoleType, or by one of
+     * its specializations. Only the neighbors related by matching RoleTypes are visited.
+     * The returned Collection must not be modified.
+     *
+     * @param type the RoleType
+     * @return the identifiers of the neighbors, without duplicates
+     */
+    public Collection<MeshObjectIdentifier> getNeighborIdentifiersFor(
+            RoleType type )
+    {
+        Collection<MeshObjectIdentifier> ret    = null;
+        Set<MeshObjectIdentifier>        merged = null;
+
+        for( Map.Entry<RoleType,RoleTypeNeighbors> current : theByRoleType.entrySet() ) {
+            if( !current.getKey().isSpecializationOfOrEquals( type )) {
+                continue;
+            }
+            if( ret == null ) {
+                ret = current.getValue().theIdentifiers;
+            } else {
+                if( merged == null ) {
+                    merged = new LinkedHashSet<>( ret ); // do not modify our own
+                    ret    = merged;
+                }
+                merged.addAll( current.getValue().theIdentifiers );
+            }
+        }
+        if( ret == null ) {
+            ret = Collections.emptySet();
+        }
+        return ret;
+    }
+
+    /**
+     * Obtain the identifiers of all neighbors as a new array.
+     *
+     * @return the identifiers, in the sequence of their positions
+     */
+    public MeshObjectIdentifier [] copyNeighborIdentifiers()
+    {
+        MeshObjectIdentifier [] ret = theIdentifiers.toArray( ArrayHelper.createArray( theIdentifierType, theIdentifiers.size() ));
+
+        if( theSnapshot.getDepth() > 0 ) {
+            // we have done the work already, so the next snapshots can start from here
+            theSnapshot = AMeshObjectNeighborSnapshot.create( ret, theIdentifierType );
+        }
+        return ret;
+    }
+
+    /**
+     * Obtain the RoleTypes of all neighbors as a new array.
+     *
+     * @return the RoleTypes, in the sequence of the positions of the neighbors
+     */
+    public RoleType [][] copyRoleTypes()
+    {
+        return theRoleTypes.toArray( new RoleType[ theRoleTypes.size() ][] );
+    }
+
+    /**
+     * Obtain a snapshot of the identifiers of the neighbors as they are now.
+     *
+     * @return the snapshot
+     */
+    public AMeshObjectNeighborSnapshot getSnapshot()
+    {
+        return theSnapshot;
+    }
+
+    /**
+     * Make sure snapshots do not build up an unbounded history. Once a snapshot is more
+     * changes away from a known state than there are neighbors, start over from the
+     * current neighbors; this copy is paid for by the changes since the last one.
+     *
+     * @param candidate the snapshot reflecting the most recent change
+     * @return the snapshot to use
+     */
+    protected AMeshObjectNeighborSnapshot advanceSnapshot(
+            AMeshObjectNeighborSnapshot candidate )
+    {
+        if( candidate.getDepth() <= theIdentifiers.size() ) {
+            return candidate;
+        }
+        return AMeshObjectNeighborSnapshot.create(
+                theIdentifiers.toArray( ArrayHelper.createArray( theIdentifierType, theIdentifiers.size() )),
+                theIdentifierType );
+    }
+
+    /**
+     * The component type of arrays of identifiers of the neighbors.
+     */
+    protected final Class<? extends MeshObjectIdentifier> theIdentifierType;
+
+    /**
+     * The identifiers of the neighbors.
+     */
+    protected final ArrayList<MeshObjectIdentifier> theIdentifiers;
+
+    /**
+     * The RoleTypes of the neighbors, in the same sequence.
+     */
+    protected final ArrayList<RoleType[]> theRoleTypes;
+
+    /**
+     * Maps the identifiers of the neighbors to their position.
+     */
+    protected final HashMap<MeshObjectIdentifier,Integer> thePositions;
+
+    /**
+     * The RoleTypes of each blessed neighbor, as they were last indexed.
+     */
+    protected final HashMap<MeshObjectIdentifier,RoleType[]> theIndexedRoleTypes;
+
+    /**
+     * Maps RoleTypes to the neighbors related by that RoleType.
+     */
+    protected final HashMap<RoleType,RoleTypeNeighbors> theByRoleType;
+
+    /**
+     * The snapshot of the identifiers of the neighbors as they are now.
+     */
+    protected AMeshObjectNeighborSnapshot theSnapshot;
+
+    /**
+     * The identifiers of the neighbors related by one RoleType. A neighbor is removed
+     * by moving the last one into its position.
+     */
+    protected static class RoleTypeNeighbors
+    {
+        /**
+         * Add a neighbor, unless present already.
+         *
+         * @param neighborIdentifier identifier of the neighbor
+         */
+        public void add(
+                MeshObjectIdentifier neighborIdentifier )
+        {
+            if( thePositions.putIfAbsent( neighborIdentifier, theIdentifiers.size() ) == null ) {
+                theIdentifiers.add( neighborIdentifier );
+            }
+        }
+
+        /**
+         * Remove a neighbor, if present.
+         *
+         * @param neighborIdentifier identifier of the neighbor
+         */
+        public void remove(
+                MeshObjectIdentifier neighborIdentifier )
+        {
+            Integer position = thePositions.remove( neighborIdentifier );
+            if( position == null ) {
+                return;
+            }
+            MeshObjectIdentifier moved = theIdentifiers.remove( theIdentifiers.size()-1 );
+            if( position < theIdentifiers.size() ) {
+                theIdentifiers.set( position, moved );
+                thePositions.put( moved, position );
+            }
+        }
+
+        /**
+         * Determine whether there are no neighbors.
+         *
+         * @return true if there are none
+         */
+        public boolean isEmpty()
+        {
+            return theIdentifiers.isEmpty();
+        }
+
+        /**
+         * The identifiers of the neighbors.
+         */
+        protected final ArrayList<MeshObjectIdentifier> theIdentifiers = new ArrayList<>();
+
+        /**
+         * Maps the identifiers of the neighbors to their position in theIdentifiers.
+         */
+        protected final HashMap<MeshObjectIdentifier,Integer> thePositions = new HashMap<>();
+    }
+}
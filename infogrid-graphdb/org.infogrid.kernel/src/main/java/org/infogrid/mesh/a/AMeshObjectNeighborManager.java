@@ -14,17 +14,27 @@
 
 package org.infogrid.mesh.a;
 
+import java.util.Collection;
 import org.infogrid.mesh.MeshObjectIdentifier;
 import org.infogrid.mesh.NotRelatedException;
 import org.infogrid.mesh.RelatedAlreadyException;
 import org.infogrid.model.primitives.RoleType;
 import org.infogrid.util.ArrayHelper;
+import org.infogrid.util.ResourceHelper;
 
 /**
  * Abstraction to managers neighbors and associated information
  * in an AMeshObject. Instances of this type do not actually store any
  * information; that is provided by the AMeshObject provided as argument
  * into each method call.
+ *
+ * <p>Neighbors are kept in compact parallel arrays. Once a MeshObject has at least
+ * NEIGHBOR_INDEX_THRESHOLD neighbors, they are kept in an AMeshObjectNeighborIndex instead,
+ * so neighbors can be found, added and removed without scanning or copying the arrays.
+ * The arrays are then only assembled from the AMeshObjectNeighborIndex when asked for,
+ * and neighbors may change their position when other neighbors are removed.
+ * Once the number of neighbors has dropped below half of NEIGHBOR_INDEX_THRESHOLD,
+ * the arrays are used again.</p>
  */
 public class AMeshObjectNeighborManager
 {
@@ -46,15 +56,38 @@ public class AMeshObjectNeighborManager
     public boolean hasNeighbors(
             AMeshObject subject )
     {
-        MeshObjectIdentifier [] neighborIdentifiers = subject.theNeighborIdentifiers;
+        return getNeighborCount( subject ) > 0;
+    }
 
-        if( neighborIdentifiers == null ) {
-            return false;
-        }
-        if( neighborIdentifiers.length == 0 ) {
-            return false;
+    /**
+     * Determine the number of neighbors of a MeshObject.
+     *
+     * @param subject the MeshObject in question
+     * @return the number of neighbors
+     */
+    public int getNeighborCount(
+            AMeshObject subject )
+    {
+        synchronized( subject ) {
+            if( subject.theNeighborIndex != null ) {
+                return subject.theNeighborIndex.size();
+            }
+            MeshObjectIdentifier [] neighborIdentifiers = subject.theNeighborIdentifiers;
+            return neighborIdentifiers != null ? neighborIdentifiers.length : 0;
         }
-        return true;
+    }
+
+    /**
+     * Determine whether a MeshObject's neighbors are kept in an AMeshObjectNeighborIndex.
+     * Must be invoked while holding the MeshObject's monitor.
+     *
+     * @param subject the MeshObject in question
+     * @return true if they are
+     */
+    protected boolean isIndexed(
+            AMeshObject subject )
+    {
+        return subject.theNeighborIndex != null;
     }
 
     /**
@@ -69,8 +102,12 @@ public class AMeshObjectNeighborManager
             AMeshObject          subject,
             MeshObjectIdentifier neighborIdentifier )
     {
+        AMeshObjectNeighborIndex index = obtainIndex( subject );
+        if( index != null ) {
+            return index.indexOf( neighborIdentifier );
+        }
         MeshObjectIdentifier [] neighborIdentifiers = subject.theNeighborIdentifiers;
-        if( neighborIdentifiers == null || neighborIdentifiers.length == 0 ) {
+        if( neighborIdentifiers == null ) {
             return -1;
         }
         for( int i=0 ; i<neighborIdentifiers.length ; ++i ) {
@@ -81,6 +118,28 @@ public class AMeshObjectNeighborManager
         return -1;
     }
 
+    /**
+     * Obtain the AMeshObjectNeighborIndex of a MeshObject, creating it if the MeshObject
+     * has enough neighbors. Must be invoked while holding the MeshObject's monitor.
+     *
+     * @param subject the MeshObject in question
+     * @return the AMeshObjectNeighborIndex, or null if the MeshObject has too few neighbors
+     */
+    protected AMeshObjectNeighborIndex obtainIndex(
+            AMeshObject subject )
+    {
+        AMeshObjectNeighborIndex ret = subject.theNeighborIndex;
+        if( ret == null ) {
+            MeshObjectIdentifier [] neighborIdentifiers = subject.theNeighborIdentifiers;
+
+            if( neighborIdentifiers != null && neighborIdentifiers.length >= NEIGHBOR_INDEX_THRESHOLD ) {
+                ret = AMeshObjectNeighborIndex.create( neighborIdentifiers, subject.theNeighborRoleTypes );
+                subject.theNeighborIndex = ret;
+            }
+        }
+        return ret;
+    }
+
     /**
      * Determine whether a MeshObject is related to another.
      *
@@ -92,8 +151,10 @@ public class AMeshObjectNeighborManager
             AMeshObject          subject,
             MeshObjectIdentifier neighborIdentifier )
     {
-        int index = determineRelationshipIndex( subject, neighborIdentifier );
-        return index >= 0;
+        synchronized( subject ) {
+            int index = determineRelationshipIndex( subject, neighborIdentifier );
+            return index >= 0;
+        }
     }
 
     /**
@@ -106,9 +167,37 @@ public class AMeshObjectNeighborManager
             AMeshObject subject )
     {
         MeshObjectIdentifier [] ret = subject.theNeighborIdentifiers;
+        if( ret == null ) {
+            synchronized( subject ) {
+                assembleArrays( subject );
+                ret = subject.theNeighborIdentifiers;
+            }
+        }
         return ret;
     }
 
+    /**
+     * Obtain a snapshot of the identifiers of neighbor MeshObjects as they are now,
+     * without assembling them unless somebody asks.
+     *
+     * @param subject the MeshObject in question
+     * @return the snapshot
+     */
+    public AMeshObjectNeighborSnapshot getNeighborIdentifiersSnapshot(
+            AMeshObject subject )
+    {
+        synchronized( subject ) {
+            if( subject.theNeighborIndex != null ) {
+                return subject.theNeighborIndex.getSnapshot();
+            }
+            @SuppressWarnings( "unchecked" )
+            Class<? extends MeshObjectIdentifier> identifierType
+                    = (Class<? extends MeshObjectIdentifier>) subject.createMeshObjectIdentifierArray( 0 ).getClass().getComponentType();
+
+            return AMeshObjectNeighborSnapshot.create( subject.theNeighborIdentifiers, identifierType );
+        }
+    }
+
     /**
      * Obtain the set of RoleTypes for all neighbors.
      *
@@ -119,9 +208,32 @@ public class AMeshObjectNeighborManager
             AMeshObject subject )
     {
         RoleType [][] ret = subject.theNeighborRoleTypes;
+        if( ret == null ) {
+            synchronized( subject ) {
+                assembleArrays( subject );
+                ret = subject.theNeighborRoleTypes;
+            }
+        }
         return ret;
     }
 
+    /**
+     * If a MeshObject's neighbors are kept in an AMeshObjectNeighborIndex, and its neighbor
+     * arrays have not been assembled since the last change, assemble them.
+     * Must be invoked while holding the MeshObject's monitor.
+     *
+     * @param subject the MeshObject in question
+     */
+    protected void assembleArrays(
+            AMeshObject subject )
+    {
+        AMeshObjectNeighborIndex index = subject.theNeighborIndex;
+        if( index != null && subject.theNeighborIdentifiers == null ) {
+            subject.theNeighborRoleTypes   = index.copyRoleTypes();
+            subject.theNeighborIdentifiers = index.copyNeighborIdentifiers();
+        }
+    }
+
     /**
      * Obtain the set of RoleTypes for a particular neighbor.
      *
@@ -136,20 +248,10 @@ public class AMeshObjectNeighborManager
         throws
             NotRelatedException
     {
-        MeshObjectIdentifier [] neighborIdentifiers;
-        RoleType [][]           neighborRoleTypes;
-
         synchronized( subject ) {
-            neighborIdentifiers = subject.theNeighborIdentifiers;
-            neighborRoleTypes   = subject.theNeighborRoleTypes;
-        }
-
-        if( neighborIdentifiers != null && neighborIdentifiers.length > 0 ) {
-            for( int i=0 ; i<neighborIdentifiers.length ; ++i ) {
-                if( neighborIdentifier.equals( neighborIdentifiers[i] )) {
-                    // found
-                    return neighborRoleTypes[i];
-                }
+            int found = determineRelationshipIndex( subject, neighborIdentifier );
+            if( found >= 0 ) {
+                return getRoleTypesAt( subject, found );
             }
         }
         throw new NotRelatedException(
@@ -161,6 +263,28 @@ public class AMeshObjectNeighborManager
                 neighborIdentifier );
     }
 
+    /**
+     * Obtain the identifiers of the neighbors that a MeshObject is related to with
+     * a given RoleType, or one of its specializations, if this can be determined without
+     * visiting all neighbors. Must be invoked while holding the MeshObject's monitor;
+     * the returned Collection must be copied before the monitor is released, and must not
+     * be modified.
+     *
+     * @param subject the MeshObject in question
+     * @param type the RoleType
+     * @return the identifiers of the neighbors, or null if all neighbors need to be visited instead
+     */
+    public Collection<MeshObjectIdentifier> getNeighborIdentifiersFor(
+            AMeshObject subject,
+            RoleType    type )
+    {
+        AMeshObjectNeighborIndex index = obtainIndex( subject );
+        if( index == null ) {
+            return null;
+        }
+        return index.getNeighborIdentifiersFor( type );
+    }
+
     /**
      * Append a new neighbor and associated RoleTypes to a MeshObject.
      * 
@@ -200,7 +324,12 @@ public class AMeshObjectNeighborManager
             throw new RelatedAlreadyException( subject, neighborIdentifier );
         }
 
-        if( subject.theNeighborIdentifiers == null || subject.theNeighborIdentifiers.length == 0 ) {
+        if( subject.theNeighborIndex != null ) {
+            subject.theNeighborIndex.appendNeighbor( neighborIdentifier, neighborRoleTypes );
+            subject.theNeighborIdentifiers = null; // assembled when needed
+            subject.theNeighborRoleTypes   = null;
+
+        } else if( subject.theNeighborIdentifiers == null || subject.theNeighborIdentifiers.length == 0 ) {
             subject.theNeighborIdentifiers = makeMeshObjectIdentifiers( neighborIdentifier );
             subject.theNeighborRoleTypes   = new RoleType[][] { neighborRoleTypes };
         } else {
@@ -233,6 +362,8 @@ public class AMeshObjectNeighborManager
 
     /**
      * Helper method to remove a neighbor and associated RoleTypes, at a given index.
+     * If the MeshObject's neighbors are kept in an AMeshObjectNeighborIndex, the last
+     * neighbor moves into the given index.
      *
      * @param subject the MeshObject in question
      * @param index index at which the neighbor is found
@@ -241,8 +372,22 @@ public class AMeshObjectNeighborManager
             AMeshObject subject,
             int         index )
     {
-        subject.theNeighborIdentifiers = removeMeshObjectIdentifier( subject.theNeighborIdentifiers, index );
-        subject.theNeighborRoleTypes   = ArrayHelper.remove( subject.theNeighborRoleTypes, index, RoleType[].class );
+        AMeshObjectNeighborIndex neighborIndex = subject.theNeighborIndex;
+        if( neighborIndex != null ) {
+            neighborIndex.removeNeighbor( index );
+
+            if( neighborIndex.size() < NEIGHBOR_INDEX_THRESHOLD / 2 ) {
+                subject.theNeighborIdentifiers = neighborIndex.copyNeighborIdentifiers();
+                subject.theNeighborRoleTypes   = neighborIndex.copyRoleTypes();
+                subject.theNeighborIndex       = null;
+            } else {
+                subject.theNeighborIdentifiers = null; // assembled when needed
+                subject.theNeighborRoleTypes   = null;
+            }
+        } else {
+            subject.theNeighborIdentifiers = removeMeshObjectIdentifier( subject.theNeighborIdentifiers, index );
+            subject.theNeighborRoleTypes   = ArrayHelper.remove( subject.theNeighborRoleTypes, index, RoleType[].class );
+        }
     }
 
     /**
@@ -299,10 +444,11 @@ public class AMeshObjectNeighborManager
             int         index,
             RoleType [] toAdd )
     {
-        if( subject.theNeighborRoleTypes[index] == null ) {
-            subject.theNeighborRoleTypes[index] = toAdd;
+        RoleType [] roleTypes = getRoleTypesAt( subject, index );
+        if( roleTypes == null ) {
+            setRoleTypesAt( subject, index, toAdd );
         } else {
-            subject.theNeighborRoleTypes[index] = ArrayHelper.append( subject.theNeighborRoleTypes[index], toAdd, RoleType.class );
+            setRoleTypesAt( subject, index, ArrayHelper.append( roleTypes, toAdd, RoleType.class ));
         }
     }
 
@@ -342,10 +488,50 @@ public class AMeshObjectNeighborManager
             int         index,
             RoleType    toRemove )
     {
-        subject.theNeighborRoleTypes[index] = ArrayHelper.remove( subject.theNeighborRoleTypes[index], toRemove, false, RoleType.class );
+        RoleType [] roleTypes = ArrayHelper.remove( getRoleTypesAt( subject, index ), toRemove, false, RoleType.class );
+
+        if( roleTypes.length == 0 ) {
+            roleTypes = null;
+        }
+        setRoleTypesAt( subject, index, roleTypes );
+    }
+
+    /**
+     * Helper method to obtain the RoleTypes of the neighbor at a given index.
+     * Must be invoked while holding the MeshObject's monitor.
+     *
+     * @param subject the MeshObject in question
+     * @param index index at which the neighbor is found
+     * @return the RoleTypes, if any
+     */
+    protected RoleType [] getRoleTypesAt(
+            AMeshObject subject,
+            int         index )
+    {
+        if( subject.theNeighborIndex != null ) {
+            return subject.theNeighborIndex.getRoleTypes( index );
+        }
+        return subject.theNeighborRoleTypes[index];
+    }
 
-        if( subject.theNeighborRoleTypes[index].length == 0 ) {
-            subject.theNeighborRoleTypes[index] = null;
+    /**
+     * Helper method to set the RoleTypes of the neighbor at a given index.
+     * Must be invoked while holding the MeshObject's monitor.
+     *
+     * @param subject the MeshObject in question
+     * @param index index at which the neighbor is found
+     * @param roleTypes the RoleTypes, if any
+     */
+    protected void setRoleTypesAt(
+            AMeshObject subject,
+            int         index,
+            RoleType [] roleTypes )
+    {
+        if( subject.theNeighborIndex != null ) {
+            subject.theNeighborIndex.setRoleTypes( index, roleTypes );
+        }
+        if( subject.theNeighborRoleTypes != null ) {
+            subject.theNeighborRoleTypes[index] = roleTypes;
         }
     }
 
@@ -397,4 +583,16 @@ public class AMeshObjectNeighborManager
      */
     public static final AMeshObjectNeighborManager SINGLETON
             = new AMeshObjectNeighborManager();
+
+    /**
+     * Our ResourceHelper.
+     */
+    private static final ResourceHelper theResourceHelper = ResourceHelper.getInstance( AMeshObjectNeighborManager.class );
+
+    /**
+     * The number of neighbors from which on a MeshObject's neighbors are indexed.
+     */
+    public static final int NEIGHBOR_INDEX_THRESHOLD = theResourceHelper.getResourceIntegerOrDefault(
+            "NeighborIndexThreshold",
+            64 );
 }
@@ -0,0 +1,212 @@
+//
+// This file is part of InfoGrid(tm). You may not use this file except in
+// compliance with the InfoGrid license. The InfoGrid license and important
+// disclaimers are contained in the file LICENSE.InfoGrid.txt that you should
+// have received with InfoGrid. If you have not received LICENSE.InfoGrid.txt
+// or you do not consent to all aspects of the license and the disclaimers,
+// no license is granted; do not use this file.
+//
+// For more information about InfoGrid go to http://infogrid.org/
+//
+// Copyright 1998-2015 by Johannes Ernst
+// All rights reserved.
+//
+
+package org.infogrid.mesh.a;
+
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import org.infogrid.mesh.MeshObjectIdentifier;
+import org.infogrid.meshbase.transaction.NeighborIdentifiersSnapshot;
+import org.infogrid.util.ArrayHelper;
+
+/**
+ * <p>The identifiers of the neighbors of an AMeshObject at a given point in time.</p>
+ *
+ * <p>A snapshot either knows its identifiers, or it knows the snapshot before it and
+ *    the one neighbor that was added or removed since. In the latter case, the identifiers
+ *    are only assembled when somebody asks for them. This lets AMeshObjects with many
+ *    neighbors relate and unrelate without copying all neighbors each time.</p>
+ */
+public class AMeshObjectNeighborSnapshot
+        implements
+            NeighborIdentifiersSnapshot,
+            Serializable
+{
+    private static final long serialVersionUID = 1L; // helps with serialization
+
+    /**
+     * Factory method for a snapshot whose identifiers are known.
+     *
+     * @param neighborIdentifiers the identifiers of the neighbors, or null if none
+     * @param identifierType the component type of arrays of identifiers of the neighbors
+     * @return the created AMeshObjectNeighborSnapshot
+     */
+    public static AMeshObjectNeighborSnapshot create(
+            MeshObjectIdentifier []               neighborIdentifiers,
+            Class<? extends MeshObjectIdentifier> identifierType )
+    {
+        return new AMeshObjectNeighborSnapshot( neighborIdentifiers, identifierType, null, null, false, 0 );
+    }
+
+    /**
+     * Constructor, use factory methods.
+     *
+     * @param neighborIdentifiers the identifiers of the neighbors, if known
+     * @param identifierType the component type of arrays of identifiers of the neighbors
+     * @param base the snapshot prior to this one, if the identifiers are not known
+     * @param delta the identifier of the neighbor added or removed since the base, if the identifiers are not known
+     * @param deltaAdded if true, the delta neighbor was added; if false, it was removed
+     * @param depth the number of snapshots from here to the closest one whose identifiers were known when created
+     */
+    protected AMeshObjectNeighborSnapshot(
+            MeshObjectIdentifier []               neighborIdentifiers,
+            Class<? extends MeshObjectIdentifier> identifierType,
+            AMeshObjectNeighborSnapshot           base,
+            MeshObjectIdentifier                  delta,
+            boolean                               deltaAdded,
+            int                                   depth )
+    {
+        theNeighborIdentifiers = neighborIdentifiers;
+        theIdentifierType      = identifierType;
+        theBase                = base;
+        theDelta               = delta;
+        theDeltaAdded          = deltaAdded;
+        theDepth               = depth;
+    }
+
+    /**
+     * Create the snapshot after a neighbor has been added.
+     *
+     * @param added the identifier of the added neighbor
+     * @return the created AMeshObjectNeighborSnapshot
+     */
+    public AMeshObjectNeighborSnapshot withAdded(
+            MeshObjectIdentifier added )
+    {
+        return new AMeshObjectNeighborSnapshot( null, theIdentifierType, this, added, true, theDepth+1 );
+    }
+
+    /**
+     * Create the snapshot after a neighbor has been removed.
+     *
+     * @param removed the identifier of the removed neighbor
+     * @return the created AMeshObjectNeighborSnapshot
+     */
+    public AMeshObjectNeighborSnapshot withRemoved(
+            MeshObjectIdentifier removed )
+    {
+        return new AMeshObjectNeighborSnapshot( null, theIdentifierType, this, removed, false, theDepth+1 );
+    }
+
+    /**
+     * Determine the number of snapshots from here to the closest one whose identifiers
+     * were known when it was created. This is the maximum amount of work required
+     * to assemble the identifiers, in addition to copying them.
+     *
+     * @return the number of snapshots
+     */
+    public int getDepth()
+    {
+        return theDepth;
+    }
+
+    /**
+     * Obtain the identifiers of the neighbors at the time the snapshot was taken.
+     * The returned array must not be modified.
+     *
+     * @return the identifiers of the neighbors, or null if there were none
+     */
+    @Override
+    public synchronized MeshObjectIdentifier [] getNeighborIdentifiers()
+    {
+        if( theBase != null ) {
+            // walk back to a snapshot that knows its identifiers, then replay the changes since
+            ArrayList<MeshObjectIdentifier> deltas      = new ArrayList<>( theDepth );
+            ArrayList<Boolean>              deltasAdded = new ArrayList<>( theDepth );
+            MeshObjectIdentifier []         known       = null;
+
+            AMeshObjectNeighborSnapshot current = this;
+            while( current != null ) {
+                synchronized( current ) {
+                    if( current.theBase == null ) {
+                        known = current.theNeighborIdentifiers;
+                        break;
+                    }
+                    deltas.add( current.theDelta );
+                    deltasAdded.add( current.theDeltaAdded );
+                    current = current.theBase;
+                }
+            }
+
+            LinkedHashSet<MeshObjectIdentifier> almost = new LinkedHashSet<>();
+            if( known != null ) {
+                Collections.addAll( almost, known );
+            }
+            for( int i=deltas.size()-1 ; i>=0 ; --i ) {
+                if( deltasAdded.get( i )) {
+                    almost.add( deltas.get( i ));
+                } else {
+                    almost.remove( deltas.get( i ));
+                }
+            }
+
+            theNeighborIdentifiers = almost.toArray( ArrayHelper.createArray( theIdentifierType, almost.size() ));
+            theBase                = null; // let go of the history
+            theDelta               = null;
+        }
+        return theNeighborIdentifiers;
+    }
+
+    /**
+     * Assemble the identifiers before serializing, so the history is not serialized.
+     *
+     * @param out the stream to write to
+     * @throws IOException thrown if an I/O error occurred
+     */
+    private void writeObject(
+            ObjectOutputStream out )
+        throws
+            IOException
+    {
+        getNeighborIdentifiers();
+
+        synchronized( this ) {
+            out.defaultWriteObject();
+        }
+    }
+
+    /**
+     * The identifiers of the neighbors, if known.
+     */
+    protected MeshObjectIdentifier [] theNeighborIdentifiers;
+
+    /**
+     * The component type of arrays of identifiers of the neighbors.
+     */
+    protected final Class<? extends MeshObjectIdentifier> theIdentifierType;
+
+    /**
+     * The snapshot prior to this one, if the identifiers are not known yet.
+     */
+    protected AMeshObjectNeighborSnapshot theBase;
+
+    /**
+     * The identifier of the neighbor added or removed since the base, if the identifiers are not known yet.
+     */
+    protected MeshObjectIdentifier theDelta;
+
+    /**
+     * If true, the delta neighbor was added; if false, it was removed.
+     */
+    protected final boolean theDeltaAdded;
+
+    /**
+     * The number of snapshots from here to the closest one whose identifiers were known when created.
+     */
+    protected final int theDepth;
+}
@@ -0,0 +1,407 @@
+//
+// This file is part of InfoGrid(tm). You may not use this file except in
+// compliance with the InfoGrid license. The InfoGrid license and important
+// disclaimers are contained in the file LICENSE.InfoGrid.txt that you should
+// have received with InfoGrid. If you have not received LICENSE.InfoGrid.txt
+// or you do not consent to all aspects of the license and the disclaimers,
+// no license is granted; do not use this file.
+//
+// For more information about InfoGrid go to http://infogrid.org/
+//
+// Copyright 1998-2015 by Johannes Ernst
+// All rights reserved.
+//
+
+package org.infogrid.mesh.externalized.binary;
+
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import org.infogrid.mesh.MeshObjectIdentifier;
+import org.infogrid.mesh.externalized.ExternalizedMeshObject;
+import org.infogrid.mesh.externalized.ExternalizedMeshObjectEncoder;
+import org.infogrid.mesh.externalized.ParserFriendlyExternalizedMeshObject;
+import org.infogrid.meshbase.MeshBase;
+import org.infogrid.model.primitives.MeshTypeIdentifier;
+import org.infogrid.model.primitives.PropertyValue;
+import org.infogrid.model.primitives.externalized.DecodingException;
+import org.infogrid.model.primitives.externalized.EncodingException;
+import org.infogrid.model.primitives.externalized.binary.PropertyValueBinaryEncoder;
+import org.infogrid.modelbase.MeshTypeIdentifierFactory;
+
+/**
+ * Utility methods to encode/decode an ExternalizedMeshObject to/from a compact binary format.
+ * All MeshTypeIdentifiers used by an ExternalizedMeshObject are written once into a dictionary
+ * at the beginning of the record, and referred to by index thereafter.
+ *
+ * <p>The layout of version 1 is:
+ * <pre>
+ * marker 'M', version
+ * identifier, timeCreated, timeUpdated, timeRead, timeExpires
+ * dictionary size, dictionary entries
+ * number of types, type indices
+ * number of properties, (property type index, PropertyValue)*
+ * number of neighbors, (neighbor identifier, number of role types, role type indices)*
+ * </pre>
+ */
+public class ExternalizedMeshObjectBinaryEncoder
+        extends
+            PropertyValueBinaryEncoder
+        implements
+            ExternalizedMeshObjectEncoder
+{
+    /**
+     * Constructor.
+     */
+    public ExternalizedMeshObjectBinaryEncoder()
+    {
+        // no op
+    }
+
+    /**
+     * Serialize an ExternalizedMeshObject to an OutputStream.
+     *
+     * @param obj the input ExternalizedMeshObject
+     * @param out the OutputStream to which to append the ExternalizedMeshObject
+     * @throws EncodingException thrown if a problem occurred during encoding
+     * @throws IOException thrown if an I/O error occurred
+     */
+    public void encodeExternalizedMeshObject(
+            ExternalizedMeshObject obj,
+            OutputStream           out )
+        throws
+            EncodingException,
+            IOException
+    {
+        DataOutputStream dataOut = new DataOutputStream( out );
+
+        writeHeader( MESHOBJECT_MARKER, dataOut );
+        writeExternalizedMeshObject( obj, dataOut );
+        dataOut.flush();
+    }
+
+    /**
+     * Write the body of an ExternalizedMeshObject.
+     *
+     * @param obj the ExternalizedMeshObject to encode
+     * @param out the DataOutput to write to
+     * @throws EncodingException thrown if a problem occurred during encoding
+     * @throws IOException thrown if an I/O error occurred
+     */
+    protected void writeExternalizedMeshObject(
+            ExternalizedMeshObject obj,
+            DataOutput             out )
+        throws
+            EncodingException,
+            IOException
+    {
+        MeshTypeIdentifier []   allTypes          = obj.getExternalTypeIdentifiers();
+        MeshTypeIdentifier []   allPropertyTypes  = obj.getPropertyTypes();
+        PropertyValue []        allPropertyValues = obj.getPropertyValues();
+        MeshObjectIdentifier [] neighbors         = obj.getNeighbors();
+        MeshTypeIdentifier [][] roleTypes         = null;
+
+        Dictionary dict = new Dictionary();
+        dict.addAll( allTypes );
+        dict.addAll( allPropertyTypes );
+        if( neighbors != null ) {
+            roleTypes = new MeshTypeIdentifier[ neighbors.length ][];
+            for( int i=0 ; i<neighbors.length ; ++i ) {
+                roleTypes[i] = obj.getRoleTypesFor( neighbors[i] );
+                dict.addAll( roleTypes[i] );
+            }
+        }
+
+        writeString( obj.getIdentifier().toExternalForm(), out );
+        writeSignedVarLong( obj.getTimeCreated(), out );
+        writeSignedVarLong( obj.getTimeUpdated(), out );
+        writeSignedVarLong( obj.getTimeRead(),    out );
+        writeSignedVarLong( obj.getTimeExpires(), out );
+
+        writeVarLong( dict.theExternalForms.size(), out );
+        for( String current : dict.theExternalForms ) {
+            writeString( current, out );
+        }
+
+        dict.writeIndices( allTypes, out );
+
+        if( allPropertyTypes != null ) {
+            writeVarLong( allPropertyTypes.length, out );
+            for( int i=0 ; i<allPropertyTypes.length ; ++i ) {
+                dict.writeIndex( allPropertyTypes[i], out );
+                writePropertyValue( allPropertyValues[i], out );
+            }
+        } else {
+            writeVarLong( 0, out );
+        }
+
+        if( neighbors != null ) {
+            writeVarLong( neighbors.length, out );
+            for( int i=0 ; i<neighbors.length ; ++i ) {
+                writeString( neighbors[i].toExternalForm(), out );
+                dict.writeIndices( roleTypes[i], out );
+            }
+        } else {
+            writeVarLong( 0, out );
+        }
+
+        writeExternalizedMeshObjectEncodingHook( obj, out );
+    }
+
+    /**
+     * Hook to enable subclasses to add to the encoding of an ExternalizedMeshObject.
+     *
+     * @param obj the ExternalizedMeshObject to encode
+     * @param out the DataOutput to write to
+     * @throws EncodingException thrown if a problem occurred during encoding
+     * @throws IOException thrown if an I/O error occurred
+     */
+    protected void writeExternalizedMeshObjectEncodingHook(
+            ExternalizedMeshObject obj,
+            DataOutput             out )
+        throws
+            EncodingException,
+            IOException
+    {
+        // noop on this level
+    }
+
+    /**
+     * Deserialize an ExternalizedMeshObject from a stream.
+     *
+     * @param contentAsStream the byte [] stream in which the ExternalizedMeshObject is encoded
+     * @param mb the MeshBase on whose behalf the decoding is performed
+     * @return return the just-instantiated ExternalizedMeshObject
+     * @throws DecodingException thrown if a problem occurred during decoding
+     * @throws IOException thrown if an I/O error occurred
+     */
+    public ExternalizedMeshObject decodeExternalizedMeshObject(
+            InputStream contentAsStream,
+            MeshBase    mb )
+        throws
+            DecodingException,
+            IOException
+    {
+        DataInputStream dataIn = new DataInputStream( contentAsStream );
+
+        int version = readHeader( MESHOBJECT_MARKER, dataIn );
+
+        ParserFriendlyExternalizedMeshObject ret = mb.getMeshBaseLifecycleManager().createParserFriendlyExternalizedMeshObject();
+
+        readExternalizedMeshObject( ret, version, dataIn, mb );
+
+        return ret;
+    }
+
+    /**
+     * Read the body of an ExternalizedMeshObject.
+     *
+     * @param ret the ParserFriendlyExternalizedMeshObject to fill in
+     * @param version the format version found in the header
+     * @param in the DataInput to read from
+     * @param mb the MeshBase on whose behalf the decoding is performed
+     * @throws DecodingException thrown if a problem occurred during decoding
+     * @throws IOException thrown if an I/O error occurred
+     */
+    protected void readExternalizedMeshObject(
+            ParserFriendlyExternalizedMeshObject ret,
+            int                                  version,
+            DataInput                            in,
+            MeshBase                             mb )
+        throws
+            DecodingException,
+            IOException
+    {
+        MeshObjectIdentifier identifier = readMeshObjectIdentifier( in, mb );
+
+        ret.setIdentifier(  identifier );
+        ret.setTimeCreated( readSignedVarLong( in ));
+        ret.setTimeUpdated( readSignedVarLong( in ));
+        ret.setTimeRead(    readSignedVarLong( in ));
+        ret.setTimeExpires( readSignedVarLong( in ));
+
+        MeshTypeIdentifierFactory typeIdFact = mb.getModelBase().getMeshTypeIdentifierFactory();
+
+        MeshTypeIdentifier [] dict = new MeshTypeIdentifier[ readVarInt( Integer.MAX_VALUE, in ) ];
+        for( int i=0 ; i<dict.length ; ++i ) {
+            dict[i] = typeIdFact.fromExternalForm( readString( in ));
+        }
+
+        int nTypes = readVarInt( Integer.MAX_VALUE, in );
+        for( int i=0 ; i<nTypes ; ++i ) {
+            ret.addMeshType( dict[ readVarInt( dict.length, in ) ] );
+        }
+
+        int nProperties = readVarInt( Integer.MAX_VALUE, in );
+        for( int i=0 ; i<nProperties ; ++i ) {
+            ret.addPropertyType( dict[ readVarInt( dict.length, in ) ] );
+            ret.addPropertyValue( readPropertyValue( in ));
+        }
+
+        int nNeighbors = readVarInt( Integer.MAX_VALUE, in );
+        for( int i=0 ; i<nNeighbors ; ++i ) {
+            ParserFriendlyExternalizedMeshObject.Relationship rel = createRelationship(
+                    identifier,
+                    readMeshObjectIdentifier( in, mb ),
+                    -1L );
+
+            int nRoleTypes = readVarInt( Integer.MAX_VALUE, in );
+            for( int j=0 ; j<nRoleTypes ; ++j ) {
+                rel.addType( dict[ readVarInt( dict.length, in ) ] );
+            }
+            ret.addRelationship( rel );
+        }
+
+        readExternalizedMeshObjectDecodingHook( ret, version, in, mb );
+    }
+
+    /**
+     * Hook to enable subclasses to add to the decoding of an ExternalizedMeshObject.
+     *
+     * @param ret the ParserFriendlyExternalizedMeshObject to fill in
+     * @param version the format version found in the header
+     * @param in the DataInput to read from
+     * @param mb the MeshBase on whose behalf the decoding is performed
+     * @throws DecodingException thrown if a problem occurred during decoding
+     * @throws IOException thrown if an I/O error occurred
+     */
+    protected void readExternalizedMeshObjectDecodingHook(
+            ParserFriendlyExternalizedMeshObject ret,
+            int                                  version,
+            DataInput                            in,
+            MeshBase                             mb )
+        throws
+            DecodingException,
+            IOException
+    {
+        // noop on this level
+    }
+
+    /**
+     * Read a MeshObjectIdentifier.
+     *
+     * @param in the DataInput to read from
+     * @param mb the MeshBase on whose behalf the decoding is performed
+     * @return the MeshObjectIdentifier
+     * @throws DecodingException thrown if the identifier could not be parsed
+     * @throws IOException thrown if an I/O error occurred
+     */
+    protected MeshObjectIdentifier readMeshObjectIdentifier(
+            DataInput in,
+            MeshBase  mb )
+        throws
+            DecodingException,
+            IOException
+    {
+        String raw = readString( in );
+        try {
+            return mb.getMeshObjectIdentifierFactory().guessFromExternalForm( raw );
+
+        } catch( ParseException ex ) {
+            throw new DecodingException( "Invalid MeshObjectIdentifier " + raw, ex );
+        }
+    }
+
+    /**
+     * Factors out the creation of Relationship instances, so subclasses can override it.
+     *
+     * @param identifier the MeshObjectIdentifier on this side of the relationship
+     * @param neighborIdentifier the MeshObjectIdentifier on the other side of the relationship
+     * @param timeUpdated the time it was last updated
+     * @return the created Relationship object
+     */
+    protected ParserFriendlyExternalizedMeshObject.Relationship createRelationship(
+            MeshObjectIdentifier identifier,
+            MeshObjectIdentifier neighborIdentifier,
+            long                 timeUpdated )
+    {
+        return new ParserFriendlyExternalizedMeshObject.Relationship( identifier, neighborIdentifier, timeUpdated );
+    }
+
+    /**
+     * Marker byte at the beginning of an encoded ExternalizedMeshObject.
+     */
+    protected static final byte MESHOBJECT_MARKER = 'M';
+
+    /**
+     * Collects the distinct MeshTypeIdentifiers of an ExternalizedMeshObject during encoding.
+     */
+    protected static class Dictionary
+    {
+        /**
+         * Add MeshTypeIdentifiers to the dictionary, unless present already.
+         *
+         * @param ids the MeshTypeIdentifiers, may be null
+         */
+        public void addAll(
+                MeshTypeIdentifier [] ids )
+        {
+            if( ids == null ) {
+                return;
+            }
+            for( MeshTypeIdentifier current : ids ) {
+                String external = current.toExternalForm();
+                if( !theIndices.containsKey( external )) {
+                    theIndices.put( external, theExternalForms.size() );
+                    theExternalForms.add( external );
+                }
+            }
+        }
+
+        /**
+         * Write the index of a MeshTypeIdentifier previously added.
+         *
+         * @param id the MeshTypeIdentifier
+         * @param out the DataOutput to write to
+         * @throws IOException thrown if an I/O error occurred
+         */
+        public void writeIndex(
+                MeshTypeIdentifier id,
+                DataOutput         out )
+            throws
+                IOException
+        {
+            writeVarLong( theIndices.get( id.toExternalForm() ), out );
+        }
+
+        /**
+         * Write the number of, and the indices of MeshTypeIdentifiers previously added.
+         *
+         * @param ids the MeshTypeIdentifiers, may be null
+         * @param out the DataOutput to write to
+         * @throws IOException thrown if an I/O error occurred
+         */
+        public void writeIndices(
+                MeshTypeIdentifier [] ids,
+                DataOutput            out )
+            throws
+                IOException
+        {
+            if( ids == null ) {
+                writeVarLong( 0, out );
+                return;
+            }
+            writeVarLong( ids.length, out );
+            for( MeshTypeIdentifier current : ids ) {
+                writeIndex( current, out );
+            }
+        }
+
+        /**
+         * The external forms of the MeshTypeIdentifiers, in the sequence of their indices.
+         */
+        protected final ArrayList<String> theExternalForms = new ArrayList<>();
+
+        /**
+         * Maps external forms of MeshTypeIdentifiers to their indices.
+         */
+        protected final HashMap<String,Integer> theIndices = new HashMap<>();
+    }
+}
@@ -228,15 +228,7 @@ public abstract class AbstractMeshObjectSet
         }
 
         for( MeshObject current2 : subset ) {
-            boolean found = false;
-
-            for( MeshObject current1 : this ) {
-                if( current2.equals( current1 )) {
-                    found = true;
-                    break;
-                }
-            }
-            if( !found ) {
+            if( !contains( current2 )) { // subclasses may be able to do this faster than by iterating
                 return false;
             }
         }
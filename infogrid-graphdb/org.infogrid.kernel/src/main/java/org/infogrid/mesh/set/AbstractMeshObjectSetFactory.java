@@ -269,14 +269,24 @@ public abstract class AbstractMeshObjectSetFactory
 
         MeshObject [] objs = ArrayHelper.createArray( theComponentClass, count );
 
+        MeshObjectIdentifierIndex seen = objs.length >= MeshObjectIdentifierIndex.THRESHOLD
+                ? MeshObjectIdentifierIndex.create( objs.length )
+                : null;
+
         count = 0;
         for( int i=0 ; i<inputSets.length ; ++i ) {
             MeshObject [] candidates = inputSets[i].getMeshObjects();
 
             for( int j=0 ; j<candidates.length ; ++j ) {
-                if( !ArrayHelper.isIn( candidates[j], objs, 0, count, false )) {
+                boolean found = seen != null
+                        ? seen.containsMeshObject( candidates[j] )
+                        : ArrayHelper.isIn( candidates[j], objs, 0, count, false );
+                if( !found ) {
                     if( selector == null || selector.accepts( candidates[j] )) {
                         objs[ count++ ] = candidates[j];
+                        if( seen != null ) {
+                            seen.addMeshObject( candidates[j] );
+                        }
                     }
                 }
             }
@@ -307,12 +317,19 @@ public abstract class AbstractMeshObjectSetFactory
         int takenOut = 0;
         for( int i=1; i<inputSets.length ; ++i ) {
             MeshObject [] thisContent = inputSets[i].getMeshObjects();
+            MeshObjectIdentifierIndex thisIndex = thisContent.length >= MeshObjectIdentifierIndex.THRESHOLD
+                    ? MeshObjectIdentifierIndex.create( thisContent )
+                    : null;
+
             for( int j=0 ; j<ret.length ; ++j ) {
                 MeshObject testObject = ret[j];
                 if( testObject == null ) {
                     continue; // was removed previously
                 }
-                if( !ArrayHelper.isIn( testObject, thisContent, false )) {
+                boolean found = thisIndex != null
+                        ? thisIndex.containsMeshObject( testObject )
+                        : ArrayHelper.isIn( testObject, thisContent, false );
+                if( !found ) {
                     if( selector == null || !selector.accepts( testObject )) { // note this is !accepts
                         ret[j] = null;
                         ++takenOut;
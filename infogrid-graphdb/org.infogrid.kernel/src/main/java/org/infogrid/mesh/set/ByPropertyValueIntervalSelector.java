@@ -149,6 +149,56 @@ public class ByPropertyValueIntervalSelector
         return false;
     }
 
+    /**
+     * Obtain the PropertyType for the comparison.
+     *
+     * @return the PropertyType for the comparison
+     */
+    public PropertyType getPropertyType()
+    {
+        return thePropertyType;
+    }
+
+    /**
+     * Obtain the lower bound of the interval.
+     *
+     * @return the lower bound of the interval
+     */
+    public PropertyValue getLowerValue()
+    {
+        return theLowerValue;
+    }
+
+    /**
+     * Obtain the upper bound of the interval.
+     *
+     * @return the upper bound of the interval
+     */
+    public PropertyValue getUpperValue()
+    {
+        return theUpperValue;
+    }
+
+    /**
+     * Obtain whether the value may equal the lower bound to be selected.
+     *
+     * @return whether the value may equal the lower bound to be selected
+     */
+    public boolean getLowerMayEqual()
+    {
+        return theLowerMayEqual;
+    }
+
+    /**
+     * Obtain whether the value may equal the upper bound to be selected.
+     *
+     * @return whether the value may equal the upper bound to be selected
+     */
+    public boolean getUpperMayEqual()
+    {
+        return theUpperMayEqual;
+    }
+
     /**
      * Determine equality.
      *
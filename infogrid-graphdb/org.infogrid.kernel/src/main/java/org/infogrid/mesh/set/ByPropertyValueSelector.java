@@ -92,6 +92,36 @@ public class ByPropertyValueSelector
         return false;
     }
 
+    /**
+     * Obtain the PropertyType for the comparison.
+     *
+     * @return the PropertyType for the comparison
+     */
+    public PropertyType getPropertyType()
+    {
+        return thePropertyType;
+    }
+
+    /**
+     * Obtain the value to which the property is being compared.
+     *
+     * @return the value to which the property is being compared
+     */
+    public PropertyValue getComparisonValue()
+    {
+        return theComparisonValue;
+    }
+
+    /**
+     * Obtain the type of comparison to be made.
+     *
+     * @return the type of comparison to be made
+     */
+    public PropertyComparisonOperator getOperator()
+    {
+        return theOperator;
+    }
+
     /**
      * Determine equality.
      *
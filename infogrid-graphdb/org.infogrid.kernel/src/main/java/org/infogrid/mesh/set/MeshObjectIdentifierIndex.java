@@ -0,0 +1,312 @@
+//
+// This file is part of InfoGrid(tm). You may not use this file except in
+// compliance with the InfoGrid license. The InfoGrid license and important
+// disclaimers are contained in the file LICENSE.InfoGrid.txt that you should
+// have received with InfoGrid. If you have not received LICENSE.InfoGrid.txt
+// or you do not consent to all aspects of the license and the disclaimers,
+// no license is granted; do not use this file.
+// 
+// For more information about InfoGrid go to http://infogrid.org/
+//
+// Copyright 1998-2015 by Johannes Ernst
+// All rights reserved.
+//
+
+package org.infogrid.mesh.set;
+
+import org.infogrid.mesh.MeshObject;
+import org.infogrid.mesh.MeshObjectIdentifier;
+import org.infogrid.util.Identifier;
+import org.infogrid.util.ResourceHelper;
+
+/**
+ * <p>An open-addressing hash index over MeshObjectIdentifiers. It is used by the in-memory
+ *    MeshObjectSets and by the MeshObjectSetFactories to make membership tests and duplicate
+ *    detection constant-time instead of linear in the size of the set.</p>
+ *
+ * <p>Entries are either MeshObjects, which are indexed by their MeshObjectIdentifier, or
+ *    MeshObjectIdentifiers by themselves. The hash codes of the keys are kept, so
+ *    MeshObjectIdentifiers whose hash code is expensive to calculate only need to calculate
+ *    it once. Entries cannot be removed.</p>
+ *
+ * <p>For small sets, a linear scan is faster than building an index; callers should consult
+ *    {@link #THRESHOLD} before creating one.</p>
+ *
+ * <p>This class is not thread-safe.</p>
+ */
+public class MeshObjectIdentifierIndex
+{
+    /**
+     * Factory method for an empty index.
+     *
+     * @param expectedSize the number of entries expected to be added
+     * @return the created MeshObjectIdentifierIndex
+     */
+    public static MeshObjectIdentifierIndex create(
+            int expectedSize )
+    {
+        return new MeshObjectIdentifierIndex( expectedSize );
+    }
+
+    /**
+     * Factory method for an index that contains the provided MeshObjects.
+     *
+     * @param content the MeshObjects to be indexed
+     * @return the created MeshObjectIdentifierIndex
+     */
+    public static MeshObjectIdentifierIndex create(
+            MeshObject [] content )
+    {
+        MeshObjectIdentifierIndex ret = new MeshObjectIdentifierIndex( content.length );
+        for( int i=0 ; i<content.length ; ++i ) {
+            ret.addMeshObject( content[i] );
+        }
+        return ret;
+    }
+
+    /**
+     * Constructor, use factory methods.
+     *
+     * @param expectedSize the number of entries expected to be added
+     */
+    protected MeshObjectIdentifierIndex(
+            int expectedSize )
+    {
+        int capacity = MIN_CAPACITY;
+        while( capacity < expectedSize * 2 && capacity < MAX_CAPACITY ) {
+            capacity <<= 1;
+        }
+        allocate( capacity );
+    }
+
+    /**
+     * Add a MeshObject to this index, unless this very MeshObject has been added already.
+     * Another MeshObject instance with the same MeshObjectIdentifier is added in addition.
+     *
+     * @param obj the MeshObject
+     * @return true if the MeshObject was added, false if it was present already
+     */
+    public boolean addMeshObject(
+            MeshObject obj )
+    {
+        MeshObjectIdentifier key  = obj.getIdentifier();
+        int                  hash = spread( key.hashCode() );
+        int                  mask = theKeys.length - 1;
+
+        int i = hash & mask;
+        while( theKeys[i] != null ) {
+            if( theValues[i] == obj ) {
+                return false;
+            }
+            i = ( i+1 ) & mask;
+        }
+        insertAt( i, key, obj, hash );
+        return true;
+    }
+
+    /**
+     * Add a MeshObjectIdentifier to this index, unless an equal MeshObjectIdentifier
+     * has been added already, either by itself or as the identifier of a MeshObject.
+     *
+     * @param key the MeshObjectIdentifier
+     * @return true if the MeshObjectIdentifier was added, false if it was present already
+     */
+    public boolean addIdentifier(
+            MeshObjectIdentifier key )
+    {
+        int hash = spread( key.hashCode() );
+        int mask = theKeys.length - 1;
+
+        int i = hash & mask;
+        while( theKeys[i] != null ) {
+            if( theHashes[i] == hash && ( theKeys[i] == key || theKeys[i].equals( key ))) {
+                return false;
+            }
+            i = ( i+1 ) & mask;
+        }
+        insertAt( i, key, null, hash );
+        return true;
+    }
+
+    /**
+     * Determine whether this very MeshObject instance has been added to this index.
+     *
+     * @param obj the MeshObject
+     * @return true if the MeshObject has been added
+     */
+    public boolean containsMeshObject(
+            MeshObject obj )
+    {
+        int hash = spread( obj.getIdentifier().hashCode() );
+        int mask = theKeys.length - 1;
+
+        int i = hash & mask;
+        while( theKeys[i] != null ) {
+            if( theValues[i] == obj ) {
+                return true;
+            }
+            i = ( i+1 ) & mask;
+        }
+        return false;
+    }
+
+    /**
+     * Determine whether a MeshObjectIdentifier equal to this one, or a MeshObject with
+     * such a MeshObjectIdentifier, has been added to this index.
+     *
+     * @param key the identifier
+     * @return true if a matching entry has been added
+     */
+    public boolean containsIdentifier(
+            Identifier key )
+    {
+        int hash = spread( key.hashCode() );
+        int mask = theKeys.length - 1;
+
+        int i = hash & mask;
+        while( theKeys[i] != null ) {
+            if( theHashes[i] == hash && ( theKeys[i] == key || theKeys[i].equals( key ))) {
+                return true;
+            }
+            i = ( i+1 ) & mask;
+        }
+        return false;
+    }
+
+    /**
+     * Determine the number of entries in this index.
+     *
+     * @return the number of entries
+     */
+    public int size()
+    {
+        return theSize;
+    }
+
+    /**
+     * Insert an entry into a free slot, and grow the tables if they become too full.
+     *
+     * @param slot the free slot
+     * @param key the key of the entry
+     * @param value the MeshObject, if any
+     * @param hash the spread hash code of the key
+     */
+    protected void insertAt(
+            int                  slot,
+            MeshObjectIdentifier key,
+            MeshObject           value,
+            int                  hash )
+    {
+        theKeys[slot]   = key;
+        theValues[slot] = value;
+        theHashes[slot] = hash;
+
+        if( ++theSize > theResizeAt && theKeys.length < MAX_CAPACITY ) {
+            rehash( theKeys.length << 1 );
+        }
+    }
+
+    /**
+     * Move all entries into new tables of the given capacity. This does not need to
+     * recalculate the hash codes of the keys.
+     *
+     * @param capacity the new capacity, a power of two
+     */
+    protected void rehash(
+            int capacity )
+    {
+        MeshObjectIdentifier [] oldKeys   = theKeys;
+        MeshObject []           oldValues = theValues;
+        int []                  oldHashes = theHashes;
+
+        allocate( capacity );
+
+        int mask = capacity - 1;
+        for( int j=0 ; j<oldKeys.length ; ++j ) {
+            if( oldKeys[j] != null ) {
+                int i = oldHashes[j] & mask;
+                while( theKeys[i] != null ) {
+                    i = ( i+1 ) & mask;
+                }
+                theKeys[i]   = oldKeys[j];
+                theValues[i] = oldValues[j];
+                theHashes[i] = oldHashes[j];
+            }
+        }
+    }
+
+    /**
+     * Allocate empty tables of the given capacity.
+     *
+     * @param capacity the capacity, a power of two
+     */
+    protected final void allocate(
+            int capacity )
+    {
+        theKeys     = new MeshObjectIdentifier[ capacity ];
+        theValues   = new MeshObject[ capacity ];
+        theHashes   = new int[ capacity ];
+        theResizeAt = capacity >> 1; // keep load factor at or below 0.5
+    }
+
+    /**
+     * Spread the bits of a hash code, so that similar MeshObjectIdentifiers, which
+     * tend to differ only in their last characters, do not cluster in the table.
+     *
+     * @param h the original hash code
+     * @return the spread hash code
+     */
+    protected static int spread(
+            int h )
+    {
+        h *= 0x9E3779B9;
+        return h ^ ( h >>> 16 );
+    }
+
+    /**
+     * The keys, indexed by slot. A null key indicates a free slot.
+     */
+    protected MeshObjectIdentifier [] theKeys;
+
+    /**
+     * The MeshObjects, indexed by slot. This is null for entries that were added as
+     * MeshObjectIdentifiers.
+     */
+    protected MeshObject [] theValues;
+
+    /**
+     * The spread hash codes of the keys, indexed by slot.
+     */
+    protected int [] theHashes;
+
+    /**
+     * The number of entries.
+     */
+    protected int theSize;
+
+    /**
+     * The number of entries beyond which the tables are grown.
+     */
+    protected int theResizeAt;
+
+    /**
+     * The smallest capacity of the tables.
+     */
+    protected static final int MIN_CAPACITY = 8;
+
+    /**
+     * The largest capacity of the tables.
+     */
+    protected static final int MAX_CAPACITY = 1 << 30;
+
+    /**
+     * Our ResourceHelper.
+     */
+    private static final ResourceHelper theResourceHelper = ResourceHelper.getInstance( MeshObjectIdentifierIndex.class );
+
+    /**
+     * The number of members from which on it is worth building a MeshObjectIdentifierIndex
+     * instead of scanning linearly.
+     */
+    public static final int THRESHOLD = theResourceHelper.getResourceIntegerOrDefault( "Threshold", 32 );
+}
@@ -17,15 +17,20 @@ package org.infogrid.mesh.set.m;
 import java.util.ArrayList;
 import org.infogrid.mesh.MeshObject;
 import org.infogrid.mesh.set.ImmutableMeshObjectSet;
+import org.infogrid.mesh.set.MeshObjectIdentifierIndex;
 import org.infogrid.mesh.set.MeshObjectSet;
 import org.infogrid.mesh.set.MeshObjectSetFactory;
+import org.infogrid.meshbase.MeshBase;
+import org.infogrid.meshbase.WrongMeshBaseException;
 import org.infogrid.model.primitives.RoleType;
 import org.infogrid.model.traversal.TraversalSpecification;
 import org.infogrid.util.ArrayHelper;
+import org.infogrid.util.Identifier;
 
 /**
   * A simple implementation of an immutable MeshObjectSet that keeps its content in
-  * memory.
+  * memory. Once the set is large enough to make it worthwhile, membership tests use a
+  * MeshObjectIdentifierIndex that is built on first use.
   */
 public class ImmutableMMeshObjectSet
         extends
@@ -48,18 +53,79 @@ public class ImmutableMMeshObjectSet
         setInitialContent( content );
     }
 
+    /**
+     * Determine whether a certain MeshObject is contained in this set.
+     *
+     * @param testObject the MeshObject we are looking for
+     * @return if true, the MeshObject was found in the set
+     * @throws WrongMeshBaseException thrown if the testObject is contained in a different MeshBase than the MeshObjects in this set
+     */
+    @Override
+    public boolean contains(
+            MeshObject testObject )
+        throws
+            WrongMeshBaseException
+    {
+        MeshObjectIdentifierIndex index = getIndex();
+        if( index == null ) {
+            return super.contains( testObject );
+        }
+
+        MeshBase base = currentContent[0].getMeshBase();
+        if( base != testObject.getMeshBase() ) {
+            throw new WrongMeshBaseException( base, testObject.getMeshBase() );
+        }
+        return index.containsIdentifier( testObject.getIdentifier() );
+    }
+
+    /**
+     * Determine whether this set contains a MeshObject with this identifier.
+     *
+     * @param identifier the identifier of the MeshObject to look for
+     * @return true if this set contains the given MeshObject
+     */
+    @Override
+    public boolean contains(
+            Identifier identifier )
+    {
+        MeshObjectIdentifierIndex index = getIndex();
+        if( index == null ) {
+            return super.contains( identifier );
+        }
+        return index.containsIdentifier( identifier );
+    }
+
+    /**
+     * Obtain the MeshObjectIdentifierIndex over the content of this set, building it if needed.
+     * Returns null if this set is too small for an index to be worthwhile.
+     *
+     * @return the MeshObjectIdentifierIndex, or null
+     */
+    protected MeshObjectIdentifierIndex getIndex()
+    {
+        MeshObjectIdentifierIndex ret = theIndex;
+        if( ret == null && currentContent.length > 0 && currentContent.length >= MeshObjectIdentifierIndex.THRESHOLD ) {
+            // the content does not change, so at worst two threads build the same index
+            ret      = MeshObjectIdentifierIndex.create( currentContent );
+            theIndex = ret;
+        }
+        return ret;
+    }
+
     /**
      * {@inheritDoc}
      */
     public MeshObjectSet traverse(
             RoleType role )
     {
-        ArrayList<MeshObject> almostRet = new ArrayList<>( currentContent.length * 3 ); // fudge
+        ArrayList<MeshObject>     almostRet = new ArrayList<>( currentContent.length * 3 ); // fudge
+        MeshObjectIdentifierIndex seen      = MeshObjectIdentifierIndex.create( currentContent.length * 3 );
+
         for( int i = 0 ; i < currentContent.length ; ++i ) {
             MeshObject [] found = currentContent[i].traverse( role ).getMeshObjects();
 
             for( int j=0 ; j<found.length ; ++j ) {
-                if( ! almostRet.contains( found[j] )) {
+                if( seen.addIdentifier( found[j].getIdentifier() )) {
                     almostRet.add( found[j] );
                 }
             }
@@ -83,4 +149,9 @@ public class ImmutableMMeshObjectSet
             return theSpec.traverse( this );
         }
     }
+
+    /**
+     * The index over the content of this set, once it has been built.
+     */
+    protected volatile MeshObjectIdentifierIndex theIndex;
 }
@@ -19,6 +19,7 @@ import org.infogrid.mesh.MeshObjectIdentifier;
 import org.infogrid.mesh.set.AbstractMeshObjectSetFactory;
 import org.infogrid.mesh.set.CompositeImmutableMeshObjectSet;
 import org.infogrid.mesh.set.ImmutableMeshObjectSet;
+import org.infogrid.mesh.set.MeshObjectIdentifierIndex;
 import org.infogrid.mesh.set.MeshObjectSelector;
 import org.infogrid.mesh.set.MeshObjectSet;
 import org.infogrid.mesh.set.MeshObjectSorter;
@@ -213,20 +214,7 @@ public class ImmutableMMeshObjectSetFactory
             MeshObject []      candidates,
             MeshObjectSelector selector )
     {
-        // check for duplicates first
-        for( int i=0 ; i<candidates.length ; ++i ) {
-            if( candidates[i] == null ) {
-                throw new IllegalArgumentException( "Cannot add a null object to a MeshObjectSet" );
-            }
-            if( candidates[i].getIsDead() ) {
-                throw new IllegalArgumentException( "Cannot add a dead object to a MeshObjectSet: " + candidates[i] );
-            }
-            for( int j=0 ; j<i ; ++j ) {
-                if( candidates[i] == candidates[j] ) {
-                    throw new IllegalArgumentException( "Cannot create a MeshObjectSet with duplicate members: " + candidates[i] );
-                }
-            }
-        }
+        checkCandidates( candidates );
         
         MeshObject [] content;
         
@@ -251,6 +239,41 @@ public class ImmutableMMeshObjectSetFactory
         return ret;
     }
     
+    /**
+     * Check that the candidate members of a MeshObjectSet are neither null, nor dead,
+     * nor contained more than once.
+     *
+     * @param candidates the candidate members
+     * @throws IllegalArgumentException thrown if a candidate was null, dead, or a duplicate
+     */
+    protected void checkCandidates(
+            MeshObject [] candidates )
+        throws
+            IllegalArgumentException
+    {
+        MeshObjectIdentifierIndex seen = candidates.length >= MeshObjectIdentifierIndex.THRESHOLD
+                ? MeshObjectIdentifierIndex.create( candidates.length )
+                : null;
+
+        for( int i=0 ; i<candidates.length ; ++i ) {
+            if( candidates[i] == null ) {
+                throw new IllegalArgumentException( "Cannot add a null object to a MeshObjectSet" );
+            }
+            if( candidates[i].getIsDead() ) {
+                throw new IllegalArgumentException( "Cannot add a dead object to a MeshObjectSet: " + candidates[i] );
+            }
+            boolean duplicate;
+            if( seen != null ) {
+                duplicate = !seen.addMeshObject( candidates[i] );
+            } else {
+                duplicate = ArrayHelper.isIn( candidates[i], candidates, 0, i, false );
+            }
+            if( duplicate ) {
+                throw new IllegalArgumentException( "Cannot create a MeshObjectSet with duplicate members: " + candidates[i] );
+            }
+        }
+    }
+
     /**
      * Factory method to construct a MeshObjectSet with all the members of the provided
      * MeshObjectSets, as long as they are selected by the MeshObjectSelector.
@@ -325,9 +348,21 @@ public class ImmutableMMeshObjectSetFactory
         MeshObject [] oneContent = one.getMeshObjects();
         MeshObject [] result     = ArrayHelper.createArray( theComponentClass, oneContent.length );
 
+        MeshObjectIdentifierIndex twoIndex;
+        if( two instanceof ImmutableMMeshObjectSet ) {
+            twoIndex = ((ImmutableMMeshObjectSet) two).getIndex();
+        } else if( two.size() >= MeshObjectIdentifierIndex.THRESHOLD ) {
+            twoIndex = MeshObjectIdentifierIndex.create( two.getMeshObjects() );
+        } else {
+            twoIndex = null;
+        }
+
         int count = 0;
         for( int i=0 ; i<oneContent.length ; ++i ) {
-            if( !two.contains( oneContent[i] )) {
+            boolean inTwo = twoIndex != null
+                    ? twoIndex.containsIdentifier( oneContent[i].getIdentifier() )
+                    : two.contains( oneContent[i] );
+            if( !inTwo ) {
                 if( selector == null || selector.accepts( oneContent[i] )) {
                     result[ count++ ] = oneContent[i];
                 }
@@ -363,20 +398,7 @@ public class ImmutableMMeshObjectSetFactory
             MeshObject []      candidatesInOrder,
             MeshObjectSelector selector )
     {
-        // check for duplicates first
-        for( int i=0 ; i<candidatesInOrder.length ; ++i ) {
-            if( candidatesInOrder[i] == null ) {
-                throw new IllegalArgumentException( "Cannot add a null object to a MeshObjectSet" );
-            }
-            if( candidatesInOrder[i].getIsDead() ) {
-                throw new IllegalArgumentException( "Cannot add a dead object to a MeshObjectSet: " + candidatesInOrder[i] );
-            }
-            for( int j=0 ; j<i ; ++j ) {
-                if( candidatesInOrder[i] == candidatesInOrder[j] ) {
-                    throw new IllegalArgumentException( "Cannot create a MeshObjectSet with duplicate members: " + candidatesInOrder[i] );
-                }
-            }
-        }
+        checkCandidates( candidatesInOrder );
         
         MeshObject [] content;
         
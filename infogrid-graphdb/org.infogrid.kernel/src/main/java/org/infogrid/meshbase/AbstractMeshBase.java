@@ -16,6 +16,9 @@ package org.infogrid.meshbase;
 
 import java.beans.PropertyChangeListener;
 import java.text.ParseException;
+import java.util.ArrayDeque;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 import org.infogrid.mesh.MeshObject;
 import org.infogrid.mesh.MeshObjectIdentifier;
 import org.infogrid.mesh.MeshObjectIdentifierNotUniqueException;
@@ -33,12 +36,14 @@ import org.infogrid.meshbase.transaction.MeshObjectCreatedEvent;
 import org.infogrid.meshbase.transaction.MeshObjectDeletedEvent;
 import org.infogrid.meshbase.transaction.MeshObjectLifecycleEvent;
 import org.infogrid.meshbase.transaction.MeshObjectLifecycleListener;
+import org.infogrid.meshbase.transaction.MeshObjectLockManager;
 import org.infogrid.meshbase.transaction.NotWithinTransactionBoundariesException;
 import org.infogrid.meshbase.transaction.Transaction;
 import org.infogrid.meshbase.transaction.Transaction.Status;
 import org.infogrid.meshbase.transaction.TransactionAction;
 import org.infogrid.meshbase.transaction.TransactionActionException;
 import org.infogrid.meshbase.transaction.TransactionActiveAlreadyException;
+import org.infogrid.meshbase.transaction.TransactionAsapStatistics;
 import org.infogrid.meshbase.transaction.TransactionAsapTimeoutException;
 import org.infogrid.meshbase.transaction.TransactionException;
 import org.infogrid.meshbase.transaction.TransactionListener;
@@ -589,14 +594,19 @@ public abstract class AbstractMeshBase
         }
 
         // let current transaction finish for no more than 5 seconds
-        int count = 25;
-        while( count> 0 && theCurrentTransaction != null ) {
-            try {
-                Thread.sleep( asapRetryInterval );
-                --count;
+        synchronized( this ) {
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos( DIE_TRANSACTION_TIMEOUT );
+            long remaining;
 
-            } catch( InterruptedException ex ) {
-                // ignore
+            while(    ( theCurrentTransaction != null || !theActiveTransactions.isEmpty() )
+                   && ( remaining = deadline - System.nanoTime() ) > 0 )
+            {
+                try {
+                    TimeUnit.NANOSECONDS.timedWait( this, remaining );
+
+                } catch( InterruptedException ex ) {
+                    // ignore
+                }
             }
         }
 
@@ -739,7 +749,8 @@ public abstract class AbstractMeshBase
 
     /**
      * Create a new Transaction as soon as possible. This means the calling Thread may be suspended
-     * for some amount of time before it can start, or it may time out.
+     * for some amount of time before it can start, or it may time out. Threads waiting for a
+     * Transaction obtain it in the sequence in which they started to wait.
      *
      * @return the created and started Transaction
      * @throws TransactionAsapTimeoutException a Transaction timeout has occurred
@@ -753,28 +764,7 @@ public abstract class AbstractMeshBase
             log.traceMethodCallEntry( this, "createTransactionAsap" );
         }
 
-        Transaction existingTransaction = null;
-        Transaction ret                 = null;
-        int counter = nTries;
-
-        while( ret == null && counter -- > 0 ) {
-            synchronized( this ) {
-                existingTransaction = theCurrentTransaction;
-                if( theCurrentTransaction == null ) {
-                    theCurrentTransaction = createNewTransaction();
-                    ret = theCurrentTransaction;
-                }
-            }
-            if( ret == null ) {
-                try {
-                    Thread.sleep( asapRetryInterval );
-                } catch( InterruptedException ex ) {
-                }
-            }
-        }
-        if( ret == null ) {
-            throw new TransactionAsapTimeoutException( this, existingTransaction );
-        }
+        Transaction ret = obtainTransactionAsap( false );
 
         fireTransactionStartedEvent( ret );
 
@@ -799,7 +789,14 @@ public abstract class AbstractMeshBase
 
         Transaction ret;
         synchronized( this ) {
-            if( theCurrentTransaction == null ) {
+            if( theLockManager != null ) {
+                ret = theActiveTransactions.get( Thread.currentThread() );
+                if( ret != null ) {
+                    throw new TransactionActiveAlreadyException( this, ret );
+                }
+                ret = createConcurrentTransaction();
+
+            } else if( theCurrentTransaction == null ) {
                 theCurrentTransaction = createNewTransaction();
                 ret = theCurrentTransaction;
             } else {
@@ -830,41 +827,94 @@ public abstract class AbstractMeshBase
             log.traceMethodCallEntry( this, "createTransactionAsapIfNeeded" );
         }
 
-        Transaction existingTransaction = null;
-        Transaction ret                 = null;
-        int counter = nTries;
+        Transaction ret = obtainTransactionAsap( true );
+
+        if( ret != null ) {
+            fireTransactionStartedEvent( ret );
+        }
+        return ret;
+    }
 
-        while( ret == null && counter -- > 0 ) {
-            synchronized( this ) {
-                existingTransaction = theCurrentTransaction;
-                if( theCurrentTransaction == null ) {
-                    theCurrentTransaction = createNewTransaction();
-                    ret = theCurrentTransaction;
+    /**
+     * Wait until this Thread is first in line for the next Transaction, and no Transaction
+     * is active, then create the Transaction. Waiting Threads are woken up when a
+     * Transaction is committed or rolled back. If this MeshBase runs several Transactions
+     * concurrently, there is no need to wait.
+     *
+     * @param ifNeeded if true, return null if a Transaction is already open on this Thread
+     * @return the created Transaction, or null
+     * @throws TransactionAsapTimeoutException a Transaction timeout has occurred
+     */
+    protected Transaction obtainTransactionAsap(
+            boolean ifNeeded )
+        throws
+            TransactionAsapTimeoutException
+    {
+        Thread  me       = Thread.currentThread();
+        long    start    = System.nanoTime();
+        long    deadline = start + TimeUnit.MILLISECONDS.toNanos( theAsapTransactionTimeout );
+        boolean queued   = false;
+
+        synchronized( this ) {
+            if( theLockManager != null ) {
+                Transaction already = theActiveTransactions.get( me );
+                if( already == null ) {
+                    theTransactionAsapStatistics.transactionObtained( 0L );
+                    return createConcurrentTransaction();
+                } else if( ifNeeded ) {
+                    return null;
                 } else {
-                    try {
+                    throw new TransactionAsapTimeoutException( this, already );
+                }
+            }
+            try {
+                while( true ) {
+                    if( ifNeeded && theCurrentTransaction != null ) {
+                        try {
+                            theCurrentTransaction.checkThreadIsAllowed();
+                            return null;
+
+                        } catch( IllegalTransactionThreadException ex ) {
+                            // do nothing
+                        }
+                    }
+                    if( theCurrentTransaction == null && ( theTransactionWaiters.isEmpty() || theTransactionWaiters.peekFirst() == me )) {
+                        theCurrentTransaction = createNewTransaction();
+
+                        if( queued ) {
+                            theTransactionAsapStatistics.transactionObtained( System.nanoTime() - start );
+                        } else {
+                            theTransactionAsapStatistics.transactionObtained( 0L );
+                        }
+                        return theCurrentTransaction;
+                    }
 
-                        theCurrentTransaction.checkThreadIsAllowed();
-                        return null;
+                    long remaining = deadline - System.nanoTime();
+                    if( remaining <= 0 ) {
+                        theTransactionAsapStatistics.transactionTimedOut( System.nanoTime() - start );
+                        throw new TransactionAsapTimeoutException( this, theCurrentTransaction );
+                    }
+                    if( !queued ) {
+                        theTransactionWaiters.addLast( me );
+                        theTransactionAsapStatistics.waitStarted();
+                        queued = true;
+                    }
+                    try {
+                        TimeUnit.NANOSECONDS.timedWait( this, remaining );
 
-                    } catch( IllegalTransactionThreadException ex ) {
-                        // do nothing
+                    } catch( InterruptedException ex ) {
+                        // ignore
                     }
                 }
-            }
-            if( ret == null ) {
-                try {
-                    Thread.sleep( asapRetryInterval );
-                } catch( InterruptedException ex ) {
+
+            } finally {
+                if( queued ) {
+                    theTransactionWaiters.remove( me );
+                    theTransactionAsapStatistics.waitEnded();
+                    notifyAll(); // the next Thread in line may be able to go now
                 }
             }
         }
-        if( ret == null ) {
-            throw new TransactionAsapTimeoutException( this, existingTransaction );
-        }
-
-        fireTransactionStartedEvent( ret );
-
-        return ret;
     }
 
     /**
@@ -887,7 +937,14 @@ public abstract class AbstractMeshBase
 
         Transaction ret;
         synchronized( this ) {
-            if( theCurrentTransaction == null ) {
+            if( theLockManager != null ) {
+                if( theActiveTransactions.containsKey( Thread.currentThread() )) {
+                    ret = null;
+                } else {
+                    ret = createConcurrentTransaction();
+                }
+
+            } else if( theCurrentTransaction == null ) {
                 theCurrentTransaction = createNewTransaction();
                 ret = theCurrentTransaction;
             } else {
@@ -917,6 +974,106 @@ public abstract class AbstractMeshBase
         return new DefaultTransaction( this );
     }
 
+    /**
+     * Create a new Transaction for the calling Thread, when several Transactions may run
+     * concurrently. Must be called while holding this object's monitor.
+     *
+     * @return the newly created Transaction
+     */
+    private Transaction createConcurrentTransaction()
+    {
+        Transaction ret = createNewTransaction();
+        theActiveTransactions.put( Thread.currentThread(), ret );
+        return ret;
+    }
+
+    /**
+     * Set the MeshObjectLockManager that permits several Transactions to run on this
+     * MeshBase at the same time, each on its own Thread. Each Transaction locks
+     * the MeshObjects it modifies until it is committed or rolled back. If null, only
+     * one Transaction may be active at any time, which is the default.
+     * This may only be changed while no Transaction is active.
+     *
+     * @param newValue the MeshObjectLockManager, or null
+     * @throws IllegalStateException thrown if a Transaction is active
+     */
+    public synchronized void setMeshObjectLockManager(
+            MeshObjectLockManager newValue )
+        throws
+            IllegalStateException
+    {
+        if( theCurrentTransaction != null || !theActiveTransactions.isEmpty() ) {
+            throw new IllegalStateException( "Cannot change MeshObjectLockManager while a Transaction is active" );
+        }
+        theLockManager = newValue;
+    }
+
+    /**
+     * Obtain the MeshObjectLockManager, if several Transactions may run on this MeshBase
+     * at the same time.
+     *
+     * @return the MeshObjectLockManager, or null
+     */
+    public MeshObjectLockManager getMeshObjectLockManager()
+    {
+        return theLockManager;
+    }
+
+    /**
+     * Obtain the locks on the MeshObjects with the given identifiers for the Transaction
+     * of the calling Thread, prior to modifying them. This does nothing unless several
+     * Transactions may run on this MeshBase at the same time. The calling Thread does
+     * not wait for a lock while it holds the monitor of the MeshBaseLifecycleManager,
+     * as the Transaction holding the lock may need that monitor in order to make progress.
+     *
+     * @param identifiers identifiers of the MeshObjects to lock
+     * @throws TransactionException thrown if the Thread has no Transaction, or a lock could not be obtained
+     */
+    public void lockForUpdate(
+            MeshObjectIdentifier ... identifiers )
+        throws
+            TransactionException
+    {
+        MeshObjectLockManager lockManager = theLockManager;
+        if( lockManager == null ) {
+            return;
+        }
+        Transaction tx = checkTransaction();
+
+        lockManager.lock( tx, !Thread.holdsLock( theMeshBaseLifecycleManager ), identifiers );
+    }
+
+    /**
+     * Set the time after which "asap" Transactions on this MeshBase time out.
+     *
+     * @param newValue the time, in milliseconds
+     */
+    public void setAsapTransactionTimeout(
+            long newValue )
+    {
+        theAsapTransactionTimeout = newValue;
+    }
+
+    /**
+     * Obtain the time after which "asap" Transactions on this MeshBase time out.
+     *
+     * @return the time, in milliseconds
+     */
+    public long getAsapTransactionTimeout()
+    {
+        return theAsapTransactionTimeout;
+    }
+
+    /**
+     * Obtain the statistics about the Threads waiting for "asap" Transactions on this MeshBase.
+     *
+     * @return the statistics
+     */
+    public TransactionAsapStatistics getTransactionAsapStatistics()
+    {
+        return theTransactionAsapStatistics;
+    }
+
     /**
       * Obtain the currently active Transaction (if any).
       *
@@ -925,6 +1082,9 @@ public abstract class AbstractMeshBase
     @Override
     public final Transaction getCurrentTransaction()
     {
+        if( theLockManager != null ) {
+            return theActiveTransactions.get( Thread.currentThread() );
+        }
         return theCurrentTransaction;
     }
 
@@ -936,15 +1096,24 @@ public abstract class AbstractMeshBase
      * @throws TransactionException thrown if there was no valid Transaction
      */
     @Override
-    public synchronized Transaction checkTransaction()
+    public Transaction checkTransaction()
         throws
             TransactionException
     {
-        if( theCurrentTransaction == null ) {
-            throw new NotWithinTransactionBoundariesException( this );
+        if( theLockManager != null ) {
+            Transaction ret = theActiveTransactions.get( Thread.currentThread() );
+            if( ret == null ) {
+                throw new NotWithinTransactionBoundariesException( this );
+            }
+            return ret;
+        }
+        synchronized( this ) {
+            if( theCurrentTransaction == null ) {
+                throw new NotWithinTransactionBoundariesException( this );
+            }
+            theCurrentTransaction.checkThreadIsAllowed();
+            return theCurrentTransaction;
         }
-        theCurrentTransaction.checkThreadIsAllowed();
-        return theCurrentTransaction;
     }
 
     /**
@@ -1582,16 +1751,29 @@ public abstract class AbstractMeshBase
             log.traceMethodCallEntry( this, "transactionCommitted" );
         }
 
-        Transaction oldTransaction;
+        MeshObjectLockManager lockManager = theLockManager;
+        Transaction           oldTransaction;
         synchronized( this ) {
-            oldTransaction = theCurrentTransaction;
+            if( lockManager != null ) {
+                oldTransaction = theActiveTransactions.remove( Thread.currentThread() );
+            } else {
+                oldTransaction = theCurrentTransaction;
+                theCurrentTransaction = null;
+            }
 
             log.assertLog( oldTransaction, "cannot commit empty transaction" );
 
-            theCurrentTransaction = null;
+            notifyAll(); // wake up the Threads waiting for a Transaction
         }
 
-        transactionCommittedHook( oldTransaction );
+        try {
+            transactionCommittedHook( oldTransaction );
+
+        } finally {
+            if( lockManager != null ) {
+                lockManager.unlockAll( oldTransaction ); // only after the changes have been written
+            }
+        }
 
         fireTransactionCommittedEvent( oldTransaction );
     }
@@ -1609,16 +1791,29 @@ public abstract class AbstractMeshBase
             log.traceMethodCallEntry( this, "transactionRolledback", thrown );
         }
 
-        Transaction oldTransaction;
+        MeshObjectLockManager lockManager = theLockManager;
+        Transaction           oldTransaction;
         synchronized( this ) {
-            oldTransaction = theCurrentTransaction;
+            if( lockManager != null ) {
+                oldTransaction = theActiveTransactions.remove( Thread.currentThread() );
+            } else {
+                oldTransaction = theCurrentTransaction;
+                theCurrentTransaction = null;
+            }
 
             log.assertLog( oldTransaction, "cannot roll back empty transaction" );
 
-            theCurrentTransaction = null;
+            notifyAll(); // wake up the Threads waiting for a Transaction
         }
 
-        transactionRolledbackHook( oldTransaction );
+        try {
+            transactionRolledbackHook( oldTransaction );
+
+        } finally {
+            if( lockManager != null ) {
+                lockManager.unlockAll( oldTransaction ); // only after the changes have been written
+            }
+        }
 
         fireTransactionRolledbackEvent( oldTransaction );
     }
@@ -1944,30 +2139,59 @@ public abstract class AbstractMeshBase
       */
     private Transaction theCurrentTransaction;
 
+    /**
+     * The Transactions currently active, keyed by the Thread that owns them. This is
+     * only used if several Transactions may run concurrently.
+     */
+    private final ConcurrentHashMap<Thread,Transaction> theActiveTransactions = new ConcurrentHashMap<>();
+
+    /**
+     * Hands out the MeshObject locks if several Transactions may run concurrently. If
+     * null, only one Transaction may be active at any time.
+     */
+    private volatile MeshObjectLockManager theLockManager;
+
     /**
       * The Context in which we run.
       */
     private Context theContext;
 
     /**
-      * The number of tries before "asap" Transactions time out.
-      */
-    private int nTries = theResourceHelper.getResourceIntegerOrDefault(
-            "NTriesForAsapTransactions",
-            10 );
+     * The Threads waiting for an "asap" Transaction, in the sequence in which they started
+     * waiting. Guarded by this object's monitor.
+     */
+    private final ArrayDeque<Thread> theTransactionWaiters = new ArrayDeque<>();
 
     /**
-      * The interval in milliseconds before an "asap" Transaction is retried.
-      */
-    private int asapRetryInterval = theResourceHelper.getResourceIntegerOrDefault(
-            "AsapTransactionRetryInterval",
-            200 );
+     * Statistics about the Threads waiting for "asap" Transactions.
+     */
+    private final TransactionAsapStatistics theTransactionAsapStatistics = TransactionAsapStatistics.create();
+
+    /**
+     * The time in milliseconds after which an "asap" Transaction times out.
+     */
+    private volatile long theAsapTransactionTimeout = DEFAULT_ASAP_TRANSACTION_TIMEOUT;
 
     /**
      * Our way to find our resources.
      */
     private static final ResourceHelper theResourceHelper = ResourceHelper.getInstance( AbstractMeshBase.class );
 
+    /**
+     * The default time in milliseconds after which an "asap" Transaction times out. For
+     * compatibility, this defaults to the product of the number of tries and the retry interval
+     * that were used before "asap" Transactions were queued.
+     */
+    public static final long DEFAULT_ASAP_TRANSACTION_TIMEOUT = theResourceHelper.getResourceLongOrDefault(
+            "AsapTransactionTimeout",
+            (long) theResourceHelper.getResourceIntegerOrDefault( "NTriesForAsapTransactions", 10 )
+                    * theResourceHelper.getResourceIntegerOrDefault( "AsapTransactionRetryInterval", 200 ));
+
+    /**
+     * The time in milliseconds that die() waits for the current Transaction to finish.
+     */
+    protected static final long DIE_TRANSACTION_TIMEOUT = 5000L;
+
     /**
      * Entry in the resource files, prefixed by the StringRepresentation's prefix.
      */
@@ -131,7 +131,7 @@ public class AMeshBaseLifecycleManager
      * @throws NotPermittedException thrown if the caller is not authorized to perform this operation
      */
     @Override
-    public synchronized AMeshObject createMeshObject(
+    public AMeshObject createMeshObject(
             MeshObjectIdentifier identifier,
             long                 timeCreated,
             long                 timeUpdated,
@@ -142,41 +142,45 @@ public class AMeshBaseLifecycleManager
             TransactionException,
             NotPermittedException
     {
-        checkPermittedCreate( identifier );
+        theMeshBase.lockForUpdate( identifier ); // before synchronizing, so we never wait for a lock while holding our monitor
 
-        AccessManager access = theMeshBase.getAccessManager();
-        if( access != null ) {
-            access.checkPermittedCreate( theMeshBase, identifier );
-        }
+        synchronized( this ) {
+            checkPermittedCreate( identifier );
 
-        long now = determineCreationTime();
-        if( timeCreated < 0 ) {
-            timeCreated = now;
-        }
-        if( timeUpdated < 0 ) {
-            timeUpdated = now;
-        }
-        if( timeRead < 0 ) {
-            timeRead = now;
-        }
-        // don't need to check timeExpires
+            AccessManager access = theMeshBase.getAccessManager();
+            if( access != null ) {
+                access.checkPermittedCreate( theMeshBase, identifier );
+            }
 
-        AMeshBase realBase = (AMeshBase) theMeshBase;
+            long now = determineCreationTime();
+            if( timeCreated < 0 ) {
+                timeCreated = now;
+            }
+            if( timeUpdated < 0 ) {
+                timeUpdated = now;
+            }
+            if( timeRead < 0 ) {
+                timeRead = now;
+            }
+            // don't need to check timeExpires
 
-        Transaction tx = realBase.checkTransaction();
+            AMeshBase realBase = (AMeshBase) theMeshBase;
 
-        AMeshObject ret = instantiateMeshObjectImplementation(
-                identifier,
-                timeCreated,
-                timeUpdated,
-                timeRead,
-                timeExpires );
+            Transaction tx = realBase.checkTransaction();
 
-        putIntoMeshBase( ret, createCreatedEvent( ret ));
+            AMeshObject ret = instantiateMeshObjectImplementation(
+                    identifier,
+                    timeCreated,
+                    timeUpdated,
+                    timeRead,
+                    timeExpires );
 
-        assignOwner( ret );
+            putIntoMeshBase( ret, createCreatedEvent( ret ));
 
-        return ret;
+            assignOwner( ret );
+
+            return ret;
+        }
     }
 
     /**
@@ -221,46 +225,74 @@ public class AMeshBaseLifecycleManager
      * @throws NotPermittedException thrown if the caller is not authorized to perform this operation
      */
     @Override
-    public synchronized void deleteMeshObjects(
+    public void deleteMeshObjects(
             MeshObject [] theObjects )
         throws
             TransactionException,
             NotPermittedException
     {
-        AMeshBase realBase = (AMeshBase) theMeshBase;
-        long      now      = System.currentTimeMillis();
+        lockForDelete( theObjects ); // before synchronizing, so we never wait for a lock while holding our monitor
+
+        synchronized( this ) {
+            AMeshBase realBase = (AMeshBase) theMeshBase;
+            long      now      = System.currentTimeMillis();
 
-        Transaction tx = realBase.checkTransaction();
+            Transaction tx = realBase.checkTransaction();
 
-        MeshObject home = realBase.getHomeObject();
+            MeshObject home = realBase.getHomeObject();
 
-        for( int i=0 ; i<theObjects.length ; ++i ) {
-            if( theObjects[i] == null ) {
-                throw new NullPointerException( "MeshObject at index " + i + " is null" );
+            for( int i=0 ; i<theObjects.length ; ++i ) {
+                if( theObjects[i] == null ) {
+                    throw new NullPointerException( "MeshObject at index " + i + " is null" );
+                }
+                if( theObjects[i].getMeshBase() != realBase ) {
+                    throw new IllegalArgumentException( "cannot delete MeshObjects in a different MeshBases" );
+                }
+                if( theObjects[i] == home ) {
+                    throw new MustNotDeleteHomeObjectException( home );
+                }
             }
-            if( theObjects[i].getMeshBase() != realBase ) {
-                throw new IllegalArgumentException( "cannot delete MeshObjects in a different MeshBases" );
+            for( int i=0 ; i<theObjects.length ; ++i ) {
+                ((AMeshObject)theObjects[i]).checkPermittedDelete(); // this may throw NotPermittedException
             }
-            if( theObjects[i] == home ) {
-                throw new MustNotDeleteHomeObjectException( home );
+            for( int i=0 ; i<theObjects.length ; ++i ) {
+                AMeshObject current = (AMeshObject) theObjects[i];
+                if( !current.getIsDead() ) {
+                    // this may be a loop, or this object was deleted already as part of a cascading delete performed
+                    // earlier in theObjects
+                    MeshObjectIdentifier currentIdentifier = current.getIdentifier();
+
+                    ExternalizedMeshObject currentExternalized = current.asExternalized();
+
+                    current.delete();
+                    removeFromMeshBase(
+                            current.getIdentifier(),
+                            createDeletedEvent( current, currentIdentifier, currentExternalized, now ));
+                }
             }
         }
-        for( int i=0 ; i<theObjects.length ; ++i ) {
-            ((AMeshObject)theObjects[i]).checkPermittedDelete(); // this may throw NotPermittedException
+    }
+
+    /**
+     * If the MeshBase runs several Transactions concurrently, obtain the locks on the
+     * to-be-deleted MeshObjects, and on their neighbors, whose relationships are removed
+     * as part of the delete.
+     *
+     * @param theObjects the MeshObjects to be semantically deleted
+     * @throws TransactionException thrown if the locks could not be obtained
+     */
+    protected void lockForDelete(
+            MeshObject [] theObjects )
+        throws
+            TransactionException
+    {
+        if( theMeshBase.getMeshObjectLockManager() == null ) {
+            return;
         }
-        for( int i=0 ; i<theObjects.length ; ++i ) {
-            AMeshObject current = (AMeshObject) theObjects[i];
-            if( !current.getIsDead() ) {
-                // this may be a loop, or this object was deleted already as part of a cascading delete performed
-                // earlier in theObjects
-                MeshObjectIdentifier currentIdentifier = current.getIdentifier();
-
-                ExternalizedMeshObject currentExternalized = current.asExternalized();
-
-                current.delete();
-                removeFromMeshBase(
-                        current.getIdentifier(),
-                        createDeletedEvent( current, currentIdentifier, currentExternalized, now ));
+        for( MeshObject current : theObjects ) {
+            if( current != null && !current.getIsDead() ) {
+                theMeshBase.lockForUpdate( current.getIdentifier() );
+                theMeshBase.lockForUpdate( current.getNeighborMeshObjectIdentifiers() );
             }
         }
     }
@@ -603,6 +635,8 @@ public class AMeshBaseLifecycleManager
     {
         Transaction tx = theMeshBase.checkTransaction();
 
+        theMeshBase.lockForUpdate( theExternalizedObject.getIdentifier() );
+
         AbstractMeshObject ret = recreateMeshObject( theExternalizedObject );
 
         putIntoMeshBase( ret, createCreatedEvent( ret ));
@@ -88,6 +88,48 @@ public abstract class AbstractMeshObjectNeighborChangeEvent
         theResolver = resolver;
     }
 
+    /**
+     * Constructor for MeshObjects that determine the identifiers of their neighbors before
+     * and after the change only when asked.
+     *
+     * @param meshObject the MeshObject that is the source of the event (optional)
+     * @param meshObjectIdentifier Identifier of the MeshObject that is the source of the event (required)
+     * @param roleTypes the RoleTypes affected on the source MeshObject, with respect to the deltaNeighbors (optional)
+     * @param roleTypeIdentifiers Identifiers of the RoleTypes affected on the source MeshObject, with respect to the deltaNeighbors (required)
+     * @param oldNeighborIdentifiers the Identifiers of the neighbor MeshObjects prior to the event (required)
+     * @param deltaNeighborIdentifiers the Identifiers of the neighbor MeshObjects affected by this event (required)
+     * @param newNeighborIdentifiers the Identifiers of the neighbor MeshObjects after the event (required)
+     * @param timeEventOccurred the time at which the event occurred, in <code>System.currentTimeMillis</code> format
+     * @param resolver the MeshBase against which the MeshObjectIdentifiers are currently resolved, if any
+     */
+    protected AbstractMeshObjectNeighborChangeEvent(
+            MeshObject                  meshObject,
+            MeshObjectIdentifier        meshObjectIdentifier,
+            RoleType []                 roleTypes,
+            MeshTypeIdentifier[]        roleTypeIdentifiers,
+            NeighborIdentifiersSnapshot oldNeighborIdentifiers,
+            MeshObjectIdentifier []     deltaNeighborIdentifiers,
+            NeighborIdentifiersSnapshot newNeighborIdentifiers,
+            long                        timeEventOccurred,
+            MeshBase                    resolver )
+    {
+        this(   meshObject,
+                meshObjectIdentifier,
+                roleTypes,
+                roleTypeIdentifiers,
+                null,
+                null,
+                null,
+                deltaNeighborIdentifiers,
+                null,
+                null,
+                timeEventOccurred,
+                resolver );
+
+        theOldNeighborIdentifiersSnapshot = oldNeighborIdentifiers;
+        theNewNeighborIdentifiersSnapshot = newNeighborIdentifiers;
+    }
+
     /**
      * Obtain the Identifier of the MeshObject affected by this Change.
      *
@@ -160,6 +202,36 @@ public abstract class AbstractMeshObjectNeighborChangeEvent
         return getProperty();
     }
 
+    /**
+     * Obtain the Identifiers of the neighbor MeshObjects prior to the event.
+     *
+     * @return the Identifiers
+     */
+    @Override
+    public MeshObjectIdentifier [] getOldValueIdentifier()
+    {
+        MeshObjectIdentifier [] ret = super.getOldValueIdentifier();
+        if( ret == null && theOldNeighborIdentifiersSnapshot != null ) {
+            ret = theOldNeighborIdentifiersSnapshot.getNeighborIdentifiers();
+        }
+        return ret;
+    }
+
+    /**
+     * Obtain the Identifiers of the neighbor MeshObjects after the event.
+     *
+     * @return the Identifiers
+     */
+    @Override
+    public MeshObjectIdentifier [] getNewValueIdentifier()
+    {
+        MeshObjectIdentifier [] ret = super.getNewValueIdentifier();
+        if( ret == null && theNewNeighborIdentifiersSnapshot != null ) {
+            ret = theNewNeighborIdentifiersSnapshot.getNeighborIdentifiers();
+        }
+        return ret;
+    }
+
     /**
      * Set the MeshBase that can resolve the identifiers carried by this event.
      *
@@ -306,4 +378,14 @@ public abstract class AbstractMeshObjectNeighborChangeEvent
      * The resolver of identifiers carried by this event.
      */
     protected transient MeshBase theResolver;
+
+    /**
+     * The Identifiers of the neighbor MeshObjects prior to the event, if they are only determined when needed.
+     */
+    protected NeighborIdentifiersSnapshot theOldNeighborIdentifiersSnapshot;
+
+    /**
+     * The Identifiers of the neighbor MeshObjects after the event, if they are only determined when needed.
+     */
+    protected NeighborIdentifiersSnapshot theNewNeighborIdentifiersSnapshot;
 }
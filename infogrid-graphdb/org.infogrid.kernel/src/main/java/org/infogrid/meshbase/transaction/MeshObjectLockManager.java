@@ -0,0 +1,337 @@
+//
+// This file is part of InfoGrid(tm). You may not use this file except in
+// compliance with the InfoGrid license. The InfoGrid license and important
+// disclaimers are contained in the file LICENSE.InfoGrid.txt that you should
+// have received with InfoGrid. If you have not received LICENSE.InfoGrid.txt
+// or you do not consent to all aspects of the license and the disclaimers,
+// no license is granted; do not use this file.
+// 
+// For more information about InfoGrid go to http://infogrid.org/
+//
+// Copyright 1998-2015 by Johannes Ernst
+// All rights reserved.
+//
+
+package org.infogrid.meshbase.transaction;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import org.infogrid.mesh.MeshObjectIdentifier;
+import org.infogrid.util.ResourceHelper;
+import org.infogrid.util.logging.CanBeDumped;
+import org.infogrid.util.logging.Dumper;
+import org.infogrid.util.logging.Log;
+
+/**
+ * Hands out exclusive, per-MeshObject locks to Transactions, so several Transactions
+ * can modify disjoint MeshObjects in the same MeshBase at the same time. A Transaction
+ * keeps its locks until it is committed or rolled back. Locks are re-entrant for the
+ * Transaction that holds them.
+ *
+ * A Transaction that needs a lock held by another Transaction waits for it, unless
+ * waiting would close a cycle of waiting Transactions, or the wait exceeds the timeout.
+ * In both cases, a {@link TransactionDeadlockException} is thrown, and the Transaction
+ * should be rolled back.
+ */
+public class MeshObjectLockManager
+        implements
+            CanBeDumped
+{
+    private static final Log log = Log.getLogInstance( MeshObjectLockManager.class ); // our own, private logger
+
+    /**
+     * Factory method with the default timeout.
+     *
+     * @return the created MeshObjectLockManager
+     */
+    public static MeshObjectLockManager create()
+    {
+        return new MeshObjectLockManager( DEFAULT_LOCK_TIMEOUT );
+    }
+
+    /**
+     * Factory method.
+     *
+     * @param timeout the time, in milliseconds, after which a Transaction gives up waiting for a lock
+     * @return the created MeshObjectLockManager
+     */
+    public static MeshObjectLockManager create(
+            long timeout )
+    {
+        return new MeshObjectLockManager( timeout );
+    }
+
+    /**
+     * Constructor, use factory method.
+     *
+     * @param timeout the time, in milliseconds, after which a Transaction gives up waiting for a lock
+     */
+    protected MeshObjectLockManager(
+            long timeout )
+    {
+        theTimeout = timeout;
+    }
+
+    /**
+     * Obtain the locks on the MeshObjects with the given identifiers for a Transaction.
+     * Locks already held by the Transaction are skipped.
+     *
+     * @param tx the Transaction that needs the locks
+     * @param mayWait if false, do not wait for locks held by other Transactions but fail right away
+     * @param identifiers identifiers of the MeshObjects to lock
+     * @throws TransactionDeadlockException thrown if a lock could not be obtained
+     */
+    public synchronized void lock(
+            Transaction              tx,
+            boolean                  mayWait,
+            MeshObjectIdentifier ... identifiers )
+        throws
+            TransactionDeadlockException
+    {
+        for( MeshObjectIdentifier current : identifiers ) {
+            if( current != null ) {
+                lockOne( tx, mayWait, current );
+            }
+        }
+    }
+
+    /**
+     * Obtain the lock on one MeshObject. Must be called while holding this object's monitor.
+     *
+     * @param tx the Transaction that needs the lock
+     * @param mayWait if false, do not wait for a lock held by another Transaction but fail right away
+     * @param identifier identifier of the MeshObject to lock
+     * @throws TransactionDeadlockException thrown if the lock could not be obtained
+     */
+    protected void lockOne(
+            Transaction          tx,
+            boolean              mayWait,
+            MeshObjectIdentifier identifier )
+        throws
+            TransactionDeadlockException
+    {
+        long start    = System.nanoTime();
+        long deadline = start + TimeUnit.MILLISECONDS.toNanos( theTimeout );
+
+        try {
+            while( true ) {
+                Transaction owner = theOwners.get( identifier );
+                if( owner == null ) {
+                    theOwners.put( identifier, tx );
+
+                    Set<MeshObjectIdentifier> held = theHeldLocks.get( tx );
+                    if( held == null ) {
+                        held = new HashSet<>();
+                        theHeldLocks.put( tx, held );
+                    }
+                    held.add( identifier );
+                    return;
+                }
+                if( owner == tx ) {
+                    return;
+                }
+                if( !mayWait ) {
+                    ++theConflictCount;
+                    throw new TransactionDeadlockException( tx.getMeshBase(), tx, identifier, owner );
+                }
+
+                // would we wait for ourselves?
+                for( Transaction waitee = owner ; waitee != null ; waitee = theWaitsFor.get( waitee )) {
+                    if( waitee == tx ) {
+                        ++theDeadlockCount;
+                        if( log.isInfoEnabled() ) {
+                            log.info( "Deadlock detected", tx, identifier, owner );
+                        }
+                        throw new TransactionDeadlockException( tx.getMeshBase(), tx, identifier, owner );
+                    }
+                }
+
+                long remaining = deadline - System.nanoTime();
+                if( remaining <= 0 ) {
+                    ++theTimeoutCount;
+                    throw new TransactionDeadlockException( tx.getMeshBase(), tx, identifier, owner );
+                }
+
+                theWaitsFor.put( tx, owner );
+                ++theWaitCount;
+                try {
+                    TimeUnit.NANOSECONDS.timedWait( this, remaining );
+
+                } catch( InterruptedException ex ) {
+                    // ignore
+                }
+            }
+
+        } finally {
+            theWaitsFor.remove( tx );
+        }
+    }
+
+    /**
+     * Release all locks held by a Transaction, and wake up the Transactions waiting for them.
+     *
+     * @param tx the Transaction
+     */
+    public synchronized void unlockAll(
+            Transaction tx )
+    {
+        Set<MeshObjectIdentifier> held = theHeldLocks.remove( tx );
+        if( held != null ) {
+            for( MeshObjectIdentifier current : held ) {
+                theOwners.remove( current );
+            }
+            notifyAll();
+        }
+    }
+
+    /**
+     * Determine the Transaction that currently holds the lock on a MeshObject, if any.
+     *
+     * @param identifier identifier of the MeshObject
+     * @return the Transaction, or null
+     */
+    public synchronized Transaction getLockOwner(
+            MeshObjectIdentifier identifier )
+    {
+        return theOwners.get( identifier );
+    }
+
+    /**
+     * Determine the number of locks currently held by all Transactions.
+     *
+     * @return the number of locks
+     */
+    public synchronized int getLockCount()
+    {
+        return theOwners.size();
+    }
+
+    /**
+     * Determine how often a Transaction had to wait for a lock.
+     *
+     * @return the number of waits
+     */
+    public synchronized long getWaitCount()
+    {
+        return theWaitCount;
+    }
+
+    /**
+     * Determine how often a deadlock was detected.
+     *
+     * @return the number of deadlocks
+     */
+    public synchronized long getDeadlockCount()
+    {
+        return theDeadlockCount;
+    }
+
+    /**
+     * Determine how often a Transaction gave up waiting for a lock.
+     *
+     * @return the number of timeouts
+     */
+    public synchronized long getTimeoutCount()
+    {
+        return theTimeoutCount;
+    }
+
+    /**
+     * Determine how often a Transaction failed to obtain a lock because it was not permitted to wait.
+     *
+     * @return the number of conflicts
+     */
+    public synchronized long getConflictCount()
+    {
+        return theConflictCount;
+    }
+
+    /**
+     * Obtain the time after which a Transaction gives up waiting for a lock.
+     *
+     * @return the time, in milliseconds
+     */
+    public long getTimeout()
+    {
+        return theTimeout;
+    }
+
+    /**
+     * Dump this object.
+     *
+     * @param d the Dumper to dump to
+     */
+    public synchronized void dump(
+            Dumper d )
+    {
+        d.dump( this,
+                new String[] {
+                    "timeout",
+                    "lockCount",
+                    "waitCount",
+                    "deadlockCount",
+                    "timeoutCount",
+                    "conflictCount"
+                },
+                new Object[] {
+                    theTimeout,
+                    theOwners.size(),
+                    theWaitCount,
+                    theDeadlockCount,
+                    theTimeoutCount,
+                    theConflictCount
+                });
+    }
+
+    /**
+     * The time, in milliseconds, after which a Transaction gives up waiting for a lock.
+     */
+    protected final long theTimeout;
+
+    /**
+     * Maps the identifiers of the locked MeshObjects to the Transactions holding the locks.
+     */
+    protected final HashMap<MeshObjectIdentifier,Transaction> theOwners = new HashMap<>();
+
+    /**
+     * Maps the Transactions to the identifiers of the MeshObjects whose locks they hold.
+     */
+    protected final HashMap<Transaction,Set<MeshObjectIdentifier>> theHeldLocks = new HashMap<>();
+
+    /**
+     * Maps the waiting Transactions to the Transactions they are waiting for.
+     */
+    protected final HashMap<Transaction,Transaction> theWaitsFor = new HashMap<>();
+
+    /**
+     * Number of times a Transaction had to wait.
+     */
+    protected long theWaitCount;
+
+    /**
+     * Number of detected deadlocks.
+     */
+    protected long theDeadlockCount;
+
+    /**
+     * Number of times a Transaction gave up waiting.
+     */
+    protected long theTimeoutCount;
+
+    /**
+     * Number of times a Transaction was not permitted to wait.
+     */
+    protected long theConflictCount;
+
+    /**
+     * Our ResourceHelper.
+     */
+    private static final ResourceHelper theResourceHelper = ResourceHelper.getInstance( MeshObjectLockManager.class );
+
+    /**
+     * The default time, in milliseconds, after which a Transaction gives up waiting for a lock.
+     */
+    public static final long DEFAULT_LOCK_TIMEOUT = theResourceHelper.getResourceLongOrDefault( "LockTimeout", 10000L );
+}
@@ -159,6 +159,64 @@ public class MeshObjectNeighborRemovedEvent
                 resolver );
     }
 
+    /**
+     * Constructor for MeshObjects that determine the identifiers of their neighbors
+     * only when asked.
+     *
+     * @param meshObject the MeshObject that is the source of the event
+     * @param oldNeighborIdentifiers the identifiers of the neighbor MeshObjects prior to the event
+     * @param deltaNeighborIdentifier the identifier of the neighbor MeshObject affected by this event
+     * @param newNeighborIdentifiers the identifiers of the neighbor MeshObjects after the event
+     * @param timeEventOccurred the time at which the event occurred, in <code>System.currentTimeMillis</code> format
+     */
+    public MeshObjectNeighborRemovedEvent(
+            MeshObject                  meshObject,
+            NeighborIdentifiersSnapshot oldNeighborIdentifiers,
+            MeshObjectIdentifier        deltaNeighborIdentifier,
+            NeighborIdentifiersSnapshot newNeighborIdentifiers,
+            long                        timeEventOccurred )
+    {
+        this(   meshObject,
+                meshObject.getIdentifier(),
+                oldNeighborIdentifiers,
+                new MeshObjectIdentifier[] { deltaNeighborIdentifier },
+                newNeighborIdentifiers,
+                timeEventOccurred,
+                meshObject.getMeshBase() );
+    }
+
+    /**
+     * Constructor for MeshObjects that determine the identifiers of their neighbors
+     * only when asked.
+     *
+     * @param meshObject the MeshObject that is the source of the event (optional)
+     * @param meshObjectIdentifier Identifier of the MeshObject that is the source of the event (required)
+     * @param oldNeighborIdentifiers the Identifiers of the neighbor MeshObjects prior to the event (required)
+     * @param deltaNeighborIdentifiers the Identifiers of the neighbor MeshObjects affected by this event (required)
+     * @param newNeighborIdentifiers the Identifiers of the neighbor MeshObjects after the event (required)
+     * @param timeEventOccurred the time at which the event occurred, in <code>System.currentTimeMillis</code> format
+     * @param resolver the MeshBase against which the MeshObjectIdentifiers are currently resolved, if any
+     */
+    protected MeshObjectNeighborRemovedEvent(
+            MeshObject                  meshObject,
+            MeshObjectIdentifier        meshObjectIdentifier,
+            NeighborIdentifiersSnapshot oldNeighborIdentifiers,
+            MeshObjectIdentifier []     deltaNeighborIdentifiers,
+            NeighborIdentifiersSnapshot newNeighborIdentifiers,
+            long                        timeEventOccurred,
+            MeshBase                    resolver )
+    {
+        super(  meshObject,
+                meshObjectIdentifier,
+                null,
+                null,
+                oldNeighborIdentifiers,
+                deltaNeighborIdentifiers,
+                newNeighborIdentifiers,
+                timeEventOccurred,
+                resolver );
+    }
+
     /**
      * <p>Apply this Change to a MeshObject in this MeshBase. This method
      *    is intended to make it easy to reproduce Changes that were made in
@@ -0,0 +1,33 @@
+//
+// This file is part of InfoGrid(tm). You may not use this file except in
+// compliance with the InfoGrid license. The InfoGrid license and important
+// disclaimers are contained in the file LICENSE.InfoGrid.txt that you should
+// have received with InfoGrid. If you have not received LICENSE.InfoGrid.txt
+// or you do not consent to all aspects of the license and the disclaimers,
+// no license is granted; do not use this file.
+//
+// For more information about InfoGrid go to http://infogrid.org/
+//
+// Copyright 1998-2015 by Johannes Ernst
+// All rights reserved.
+//
+
+package org.infogrid.meshbase.transaction;
+
+import org.infogrid.mesh.MeshObjectIdentifier;
+
+/**
+ * The identifiers of the neighbors of a MeshObject at a given point in time. This allows
+ * MeshObjects with many neighbors to create MeshObjectNeighborChangeEvents without
+ * copying all of their neighbors each time; the array is only assembled if somebody asks for it.
+ */
+public interface NeighborIdentifiersSnapshot
+{
+    /**
+     * Obtain the identifiers of the neighbors at the time the snapshot was taken.
+     * The returned array must not be modified.
+     *
+     * @return the identifiers of the neighbors, or null if there were none
+     */
+    public MeshObjectIdentifier [] getNeighborIdentifiers();
+}
@@ -0,0 +1,240 @@
+//
+// This file is part of InfoGrid(tm). You may not use this file except in
+// compliance with the InfoGrid license. The InfoGrid license and important
+// disclaimers are contained in the file LICENSE.InfoGrid.txt that you should
+// have received with InfoGrid. If you have not received LICENSE.InfoGrid.txt
+// or you do not consent to all aspects of the license and the disclaimers,
+// no license is granted; do not use this file.
+// 
+// For more information about InfoGrid go to http://infogrid.org/
+//
+// Copyright 1998-2015 by Johannes Ernst
+// All rights reserved.
+//
+
+
+package org.infogrid.meshbase.transaction;
+
+import org.infogrid.util.logging.CanBeDumped;
+import org.infogrid.util.logging.Dumper;
+
+/**
+ * Collects how long Threads had to wait for their "asap" Transactions on a MeshBase,
+ * and how many Threads were waiting. All times are in nanoseconds.
+ */
+public class TransactionAsapStatistics
+        implements
+            CanBeDumped
+{
+    /**
+     * Factory method.
+     *
+     * @return the created TransactionAsapStatistics
+     */
+    public static TransactionAsapStatistics create()
+    {
+        return new TransactionAsapStatistics();
+    }
+
+    /**
+     * Constructor, use factory method.
+     */
+    protected TransactionAsapStatistics()
+    {
+        // no op
+    }
+
+    /**
+     * Record that a Thread has started to wait for a Transaction.
+     */
+    public synchronized void waitStarted()
+    {
+        ++theQueueDepth;
+        if( theQueueDepth > theMaxQueueDepth ) {
+            theMaxQueueDepth = theQueueDepth;
+        }
+    }
+
+    /**
+     * Record that a Thread has stopped to wait for a Transaction.
+     */
+    public synchronized void waitEnded()
+    {
+        --theQueueDepth;
+    }
+
+    /**
+     * Record that a Thread obtained its Transaction.
+     *
+     * @param waitNanos how long the Thread waited
+     */
+    public synchronized void transactionObtained(
+            long waitNanos )
+    {
+        ++theObtainedCount;
+        theTotalWaitNanos += waitNanos;
+        if( waitNanos > theMaxWaitNanos ) {
+            theMaxWaitNanos = waitNanos;
+        }
+    }
+
+    /**
+     * Record that a Thread gave up waiting for its Transaction.
+     *
+     * @param waitNanos how long the Thread waited
+     */
+    public synchronized void transactionTimedOut(
+            long waitNanos )
+    {
+        ++theTimedOutCount;
+        theTotalWaitNanos += waitNanos;
+        if( waitNanos > theMaxWaitNanos ) {
+            theMaxWaitNanos = waitNanos;
+        }
+    }
+
+    /**
+     * Obtain the number of "asap" Transactions that were obtained.
+     *
+     * @return the number
+     */
+    public synchronized long getObtainedCount()
+    {
+        return theObtainedCount;
+    }
+
+    /**
+     * Obtain the number of "asap" Transactions that timed out.
+     *
+     * @return the number
+     */
+    public synchronized long getTimedOutCount()
+    {
+        return theTimedOutCount;
+    }
+
+    /**
+     * Obtain the total time that Threads waited for "asap" Transactions, whether they
+     * obtained them or not.
+     *
+     * @return the time, in nanoseconds
+     */
+    public synchronized long getTotalWaitNanos()
+    {
+        return theTotalWaitNanos;
+    }
+
+    /**
+     * Obtain the average time that a Thread waited for an "asap" Transaction.
+     *
+     * @return the time, in nanoseconds
+     */
+    public synchronized long getAverageWaitNanos()
+    {
+        long count = theObtainedCount + theTimedOutCount;
+        if( count == 0 ) {
+            return 0L;
+        }
+        return theTotalWaitNanos / count;
+    }
+
+    /**
+     * Obtain the longest time that a Thread waited for an "asap" Transaction.
+     *
+     * @return the time, in nanoseconds
+     */
+    public synchronized long getMaxWaitNanos()
+    {
+        return theMaxWaitNanos;
+    }
+
+    /**
+     * Obtain the number of Threads currently waiting for an "asap" Transaction.
+     *
+     * @return the number
+     */
+    public synchronized int getQueueDepth()
+    {
+        return theQueueDepth;
+    }
+
+    /**
+     * Obtain the largest number of Threads that were waiting for an "asap" Transaction
+     * at the same time.
+     *
+     * @return the number
+     */
+    public synchronized int getMaxQueueDepth()
+    {
+        return theMaxQueueDepth;
+    }
+
+    /**
+     * Reset all statistics, except for the number of Threads currently waiting.
+     */
+    public synchronized void reset()
+    {
+        theObtainedCount  = 0L;
+        theTimedOutCount  = 0L;
+        theTotalWaitNanos = 0L;
+        theMaxWaitNanos   = 0L;
+        theMaxQueueDepth  = theQueueDepth;
+    }
+
+    /**
+     * Dump this object.
+     *
+     * @param d the Dumper to dump to
+     */
+    public synchronized void dump(
+            Dumper d )
+    {
+        d.dump( this,
+                new String[] {
+                    "obtainedCount",
+                    "timedOutCount",
+                    "totalWaitNanos",
+                    "maxWaitNanos",
+                    "queueDepth",
+                    "maxQueueDepth"
+                },
+                new Object[] {
+                    theObtainedCount,
+                    theTimedOutCount,
+                    theTotalWaitNanos,
+                    theMaxWaitNanos,
+                    theQueueDepth,
+                    theMaxQueueDepth
+                });
+    }
+
+    /**
+     * The number of "asap" Transactions that were obtained.
+     */
+    protected long theObtainedCount;
+
+    /**
+     * The number of "asap" Transactions that timed out.
+     */
+    protected long theTimedOutCount;
+
+    /**
+     * The total time that Threads waited.
+     */
+    protected long theTotalWaitNanos;
+
+    /**
+     * The longest time that a Thread waited.
+     */
+    protected long theMaxWaitNanos;
+
+    /**
+     * The number of Threads currently waiting.
+     */
+    protected int theQueueDepth;
+
+    /**
+     * The largest number of Threads waiting at the same time.
+     */
+    protected int theMaxQueueDepth;
+}
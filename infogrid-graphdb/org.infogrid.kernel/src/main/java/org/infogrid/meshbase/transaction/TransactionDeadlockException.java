@@ -0,0 +1,92 @@
+//
+// This file is part of InfoGrid(tm). You may not use this file except in
+// compliance with the InfoGrid license. The InfoGrid license and important
+// disclaimers are contained in the file LICENSE.InfoGrid.txt that you should
+// have received with InfoGrid. If you have not received LICENSE.InfoGrid.txt
+// or you do not consent to all aspects of the license and the disclaimers,
+// no license is granted; do not use this file.
+// 
+// For more information about InfoGrid go to http://infogrid.org/
+//
+// Copyright 1998-2015 by Johannes Ernst
+// All rights reserved.
+//
+
+package org.infogrid.meshbase.transaction;
+
+import org.infogrid.mesh.MeshObjectIdentifier;
+import org.infogrid.meshbase.MeshBase;
+
+/**
+  * This TransactionException is thrown to indicate that a Transaction could not obtain
+  * the lock on a MeshObject because another Transaction held it, and waiting for it would
+  * have led to a deadlock or took too long. The Transaction should be rolled back and
+  * may be retried.
+  */
+public class TransactionDeadlockException
+        extends
+            TransactionException
+{
+    private static final long serialVersionUID = 1L; // helps with serialization
+
+    /**
+     * Constructor.
+     *
+     * @param trans the MeshBase that was affected
+     * @param tx the Transaction that could not obtain the lock
+     * @param identifier identifier of the MeshObject whose lock could not be obtained
+     * @param owner the Transaction that held the lock
+     */
+    public TransactionDeadlockException(
+            MeshBase             trans,
+            Transaction          tx,
+            MeshObjectIdentifier identifier,
+            Transaction          owner )
+    {
+        super( trans, tx );
+
+        theMeshObjectIdentifier = identifier;
+        theOwner                = owner;
+    }
+
+    /**
+     * Obtain the identifier of the MeshObject whose lock could not be obtained.
+     *
+     * @return the MeshObjectIdentifier
+     */
+    public MeshObjectIdentifier getMeshObjectIdentifier()
+    {
+        return theMeshObjectIdentifier;
+    }
+
+    /**
+     * Obtain the Transaction that held the lock.
+     *
+     * @return the Transaction
+     */
+    public Transaction getOwner()
+    {
+        return theOwner;
+    }
+
+    /**
+     * Convert this into a string, for debugging.
+     *
+     * @return this instance as a string
+     */
+    @Override
+    public String toString()
+    {
+        return super.toString() + ", MeshObject: " + theMeshObjectIdentifier;
+    }
+
+    /**
+     * Identifier of the MeshObject whose lock could not be obtained.
+     */
+    protected MeshObjectIdentifier theMeshObjectIdentifier;
+
+    /**
+     * The Transaction that held the lock.
+     */
+    protected transient Transaction theOwner;
+}
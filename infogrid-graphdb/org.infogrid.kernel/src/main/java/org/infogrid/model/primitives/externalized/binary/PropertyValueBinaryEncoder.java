@@ -0,0 +1,669 @@
+//
+// This file is part of InfoGrid(tm). You may not use this file except in
+// compliance with the InfoGrid license. The InfoGrid license and important
+// disclaimers are contained in the file LICENSE.InfoGrid.txt that you should
+// have received with InfoGrid. If you have not received LICENSE.InfoGrid.txt
+// or you do not consent to all aspects of the license and the disclaimers,
+// no license is granted; do not use this file.
+//
+// For more information about InfoGrid go to http://infogrid.org/
+//
+// Copyright 1998-2015 by Johannes Ernst
+// All rights reserved.
+//
+
+package org.infogrid.model.primitives.externalized.binary;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.text.ParseException;
+import org.infogrid.model.primitives.BlobDataType;
+import org.infogrid.model.primitives.BlobValue;
+import org.infogrid.model.primitives.BooleanValue;
+import org.infogrid.model.primitives.ColorValue;
+import org.infogrid.model.primitives.CurrencyValue;
+import org.infogrid.model.primitives.EnumeratedValue;
+import org.infogrid.model.primitives.ExtentValue;
+import org.infogrid.model.primitives.FloatValue;
+import org.infogrid.model.primitives.IntegerValue;
+import org.infogrid.model.primitives.MultiplicityValue;
+import org.infogrid.model.primitives.PointValue;
+import org.infogrid.model.primitives.PropertyValue;
+import org.infogrid.model.primitives.StringValue;
+import org.infogrid.model.primitives.TimePeriodValue;
+import org.infogrid.model.primitives.TimeStampValue;
+import org.infogrid.model.primitives.externalized.DecodingException;
+import org.infogrid.model.primitives.externalized.EncodingException;
+import org.infogrid.model.primitives.externalized.PropertyValueEncoder;
+import org.infogrid.util.Base64;
+
+/**
+ * Utility methods to encode/decode a PropertyValue to/from a compact binary format.
+ * Each PropertyValue is written as a one-byte type tag followed by its payload; integers
+ * and lengths are written as variable-length quantities, Strings as UTF-8.
+ * Unlike its XML counterpart, this class holds no parsing state, so a single instance
+ * may be used by several Threads concurrently.
+ */
+public class PropertyValueBinaryEncoder
+        implements
+            PropertyValueEncoder
+{
+    /**
+     * Constructor.
+     */
+    public PropertyValueBinaryEncoder()
+    {
+        // no op
+    }
+
+    /**
+     * Serialize a PropertyValue to an OutputStream.
+     *
+     * @param value the PropertyValue
+     * @param out the OutputStream to which to append the PropertyValue
+     * @throws EncodingException thrown if a problem occurred during encoding
+     * @throws IOException thrown if an I/O error occurred
+     */
+    public void encodePropertyValue(
+            PropertyValue value,
+            OutputStream  out )
+        throws
+            EncodingException,
+            IOException
+    {
+        DataOutputStream dataOut = new DataOutputStream( out );
+
+        writeHeader( PROPERTY_VALUE_MARKER, dataOut );
+        writePropertyValue( value, dataOut );
+        dataOut.flush();
+    }
+
+    /**
+     * Serialize a PropertyValue to a StringBuilder. As the encoding is binary,
+     * it is appended in Base64 form.
+     *
+     * @param value the PropertyValue
+     * @param buf the StringBuilder to which to append the PropertyValue
+     * @throws EncodingException thrown if a problem occurred during encoding
+     */
+    public void appendPropertyValue(
+            PropertyValue value,
+            StringBuilder buf )
+        throws
+            EncodingException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            encodePropertyValue( value, out );
+
+        } catch( IOException ex ) {
+            throw new EncodingException( ex ); // cannot happen with a ByteArrayOutputStream
+        }
+        buf.append( Base64.base64encode( out.toByteArray() ));
+    }
+
+    /**
+     * Deserialize a PropertyValue from a stream.
+     *
+     * @param contentAsStream the byte [] stream in which the PropertyValue is encoded
+     * @return return the just-instantiated PropertyValue
+     * @throws DecodingException thrown if a problem occurred during decoding
+     * @throws IOException thrown if an I/O error occurred
+     */
+    public PropertyValue decodePropertyValue(
+            InputStream contentAsStream )
+        throws
+            DecodingException,
+            IOException
+    {
+        DataInputStream dataIn = new DataInputStream( contentAsStream );
+
+        readHeader( PROPERTY_VALUE_MARKER, dataIn );
+        return readPropertyValue( dataIn );
+    }
+
+    /**
+     * Obtain the identifier for the encoding performed by this PropertyValueBinaryEncoder.
+     * This also works for all subclasses.
+     *
+     * @return the encodingId.
+     */
+    public String getEncodingId()
+    {
+        return getClass().getName();
+    }
+
+    /**
+     * Write a single PropertyValue, consisting of type tag and payload.
+     *
+     * @param value the PropertyValue, may be null
+     * @param out the DataOutput to write to
+     * @throws EncodingException thrown if the PropertyValue is of an unknown type
+     * @throws IOException thrown if an I/O error occurred
+     */
+    protected void writePropertyValue(
+            PropertyValue value,
+            DataOutput    out )
+        throws
+            EncodingException,
+            IOException
+    {
+        if( value == null ) {
+            out.writeByte( NULL_VALUE_TAG );
+
+        } else if( value instanceof BlobValue ) {
+            BlobValue realValue = (BlobValue) value;
+            String    mt        = realValue.getMimeType();
+            if( mt == null ) {
+                mt = "?/?";
+            }
+
+            if( realValue.delayedLoadingFrom() != null ) {
+                out.writeByte( BLOB_VALUE_LOAD_TAG );
+                writeString( mt, out );
+                writeString( realValue.delayedLoadingFrom(), out );
+
+            } else if( mt.startsWith( "text/" )) {
+                out.writeByte( BLOB_VALUE_TEXT_TAG );
+                writeString( mt, out );
+                writeString( realValue.getAsString(), out );
+
+            } else {
+                out.writeByte( BLOB_VALUE_BYTES_TAG );
+                writeString( mt, out );
+                writeBytes( realValue.value(), out );
+            }
+
+        } else if( value instanceof BooleanValue ) {
+            if( ((BooleanValue)value).value() ) {
+                out.writeByte( BOOLEAN_VALUE_TRUE_TAG );
+            } else {
+                out.writeByte( BOOLEAN_VALUE_FALSE_TAG );
+            }
+
+        } else if( value instanceof ColorValue ) {
+            out.writeByte( COLOR_VALUE_TAG );
+            out.writeInt( ((ColorValue)value).getRGB() );
+
+        } else if( value instanceof CurrencyValue ) {
+            out.writeByte( CURRENCY_VALUE_TAG );
+            writeString( ((CurrencyValue)value).value(), out );
+
+        } else if( value instanceof EnumeratedValue ) {
+            out.writeByte( ENUMERATED_VALUE_TAG );
+            writeString( ((EnumeratedValue)value).value(), out );
+
+        } else if( value instanceof ExtentValue ) {
+            ExtentValue realValue = (ExtentValue) value;
+            out.writeByte( EXTENT_VALUE_TAG );
+            out.writeDouble( realValue.getWidth() );
+            out.writeDouble( realValue.getHeight() );
+
+        } else if( value instanceof FloatValue ) {
+            out.writeByte( FLOAT_VALUE_TAG );
+            out.writeDouble( ((FloatValue)value).value() );
+
+        } else if( value instanceof IntegerValue ) {
+            out.writeByte( INTEGER_VALUE_TAG );
+            writeSignedVarLong( ((IntegerValue)value).value(), out );
+
+        } else if( value instanceof MultiplicityValue ) {
+            MultiplicityValue realValue = (MultiplicityValue) value;
+            out.writeByte( MULTIPLICITY_VALUE_TAG );
+            writeSignedVarLong( realValue.getMinimum(), out );
+            writeSignedVarLong( realValue.getMaximum(), out );
+
+        } else if( value instanceof PointValue ) {
+            PointValue realValue = (PointValue) value;
+            out.writeByte( POINT_VALUE_TAG );
+            out.writeDouble( realValue.getX() );
+            out.writeDouble( realValue.getY() );
+
+        } else if( value instanceof StringValue ) {
+            out.writeByte( STRING_VALUE_TAG );
+            writeString( ((StringValue)value).value(), out );
+
+        } else if( value instanceof TimePeriodValue ) {
+            TimePeriodValue realValue = (TimePeriodValue) value;
+            out.writeByte( TIME_PERIOD_TAG );
+            writeSignedVarLong( realValue.getYear(),   out );
+            writeSignedVarLong( realValue.getMonth(),  out );
+            writeSignedVarLong( realValue.getDay(),    out );
+            writeSignedVarLong( realValue.getHour(),   out );
+            writeSignedVarLong( realValue.getMinute(), out );
+            out.writeFloat( realValue.getSecond() );
+
+        } else if( value instanceof TimeStampValue ) {
+            out.writeByte( TIME_STAMP_TAG );
+            writeSignedVarLong( ((TimeStampValue)value).getAsMillis(), out );
+
+        } else {
+            throw new EncodingException( "Cannot encode PropertyValue of type " + value.getClass().getName() );
+        }
+    }
+
+    /**
+     * Read a single PropertyValue, consisting of type tag and payload.
+     *
+     * @param in the DataInput to read from
+     * @return the PropertyValue, may be null
+     * @throws DecodingException thrown if the data could not be decoded
+     * @throws IOException thrown if an I/O error occurred
+     */
+    protected PropertyValue readPropertyValue(
+            DataInput in )
+        throws
+            DecodingException,
+            IOException
+    {
+        byte tag = in.readByte();
+        switch( tag ) {
+            case NULL_VALUE_TAG:
+                return null;
+
+            case BLOB_VALUE_BYTES_TAG: {
+                String mime = readString( in );
+                return BlobDataType.theAnyType.createBlobValue( readBytes( in ), mime );
+                    // This needs to be patched later once we have the instance of BlobDataType
+            }
+            case BLOB_VALUE_TEXT_TAG: {
+                String mime = readString( in );
+                return BlobDataType.theAnyType.createBlobValue( readString( in ), mime );
+                    // This needs to be patched later once we have the instance of BlobDataType
+            }
+            case BLOB_VALUE_LOAD_TAG: {
+                String mime = readString( in );
+                return BlobDataType.theAnyType.createBlobValueByLoadingFrom( readString( in ), mime );
+            }
+            case BOOLEAN_VALUE_FALSE_TAG:
+                return BooleanValue.FALSE;
+
+            case BOOLEAN_VALUE_TRUE_TAG:
+                return BooleanValue.TRUE;
+
+            case COLOR_VALUE_TAG:
+                return ColorValue.create( in.readInt() );
+
+            case CURRENCY_VALUE_TAG: {
+                String s = readString( in );
+                try {
+                    return CurrencyValue.parseCurrencyValue( s );
+                } catch( ParseException ex ) {
+                    throw new DecodingException( "Failed to parse CurrencyValue " + s, ex );
+                }
+            }
+            case ENUMERATED_VALUE_TAG:
+                return EnumeratedValue.create( null, readString( in ), null, null );
+                    // This needs to be patched later once we have the instance of EnumeratedDataType
+
+            case EXTENT_VALUE_TAG: {
+                double width  = in.readDouble();
+                double height = in.readDouble();
+                return ExtentValue.create( width, height );
+            }
+            case FLOAT_VALUE_TAG:
+                return FloatValue.create( in.readDouble() );
+
+            case INTEGER_VALUE_TAG:
+                return IntegerValue.create( readSignedVarLong( in ));
+
+            case MULTIPLICITY_VALUE_TAG: {
+                int min = (int) readSignedVarLong( in );
+                int max = (int) readSignedVarLong( in );
+                try {
+                    return MultiplicityValue.create( min, max );
+                } catch( IllegalArgumentException ex ) {
+                    throw new DecodingException( "Invalid MultiplicityValue", ex );
+                }
+            }
+            case POINT_VALUE_TAG: {
+                double x = in.readDouble();
+                double y = in.readDouble();
+                return PointValue.create( x, y );
+            }
+            case STRING_VALUE_TAG:
+                return StringValue.create( readString( in ));
+
+            case TIME_PERIOD_TAG: {
+                short yr  = (short) readSignedVarLong( in );
+                short mon = (short) readSignedVarLong( in );
+                short day = (short) readSignedVarLong( in );
+                short hr  = (short) readSignedVarLong( in );
+                short min = (short) readSignedVarLong( in );
+                float sec = in.readFloat();
+                return TimePeriodValue.create( yr, mon, day, hr, min, sec );
+            }
+            case TIME_STAMP_TAG:
+                return TimeStampValue.create( readSignedVarLong( in ));
+
+            default:
+                throw new DecodingException( "Unknown PropertyValue tag: " + tag );
+        }
+    }
+
+    /**
+     * Write the marker byte and format version at the beginning of an encoding.
+     *
+     * @param marker the marker byte identifying the content
+     * @param out the DataOutput to write to
+     * @throws IOException thrown if an I/O error occurred
+     */
+    protected static void writeHeader(
+            byte       marker,
+            DataOutput out )
+        throws
+            IOException
+    {
+        out.writeByte( marker );
+        out.writeByte( FORMAT_VERSION );
+    }
+
+    /**
+     * Read and check the marker byte and format version at the beginning of an encoding.
+     *
+     * @param marker the expected marker byte
+     * @param in the DataInput to read from
+     * @return the format version found
+     * @throws DecodingException thrown if the marker did not match or the version is not supported
+     * @throws IOException thrown if an I/O error occurred
+     */
+    protected static int readHeader(
+            byte      marker,
+            DataInput in )
+        throws
+            DecodingException,
+            IOException
+    {
+        byte foundMarker = in.readByte();
+        if( foundMarker != marker ) {
+            throw new DecodingException( "Unexpected marker: " + foundMarker + " vs. " + marker );
+        }
+        int version = in.readUnsignedByte();
+        if( version < 1 || version > FORMAT_VERSION ) {
+            throw new DecodingException( "Unsupported format version: " + version );
+        }
+        return version;
+    }
+
+    /**
+     * Write a non-negative long as a variable-length quantity: seven bits per byte,
+     * least significant group first, high bit set on all but the last byte.
+     *
+     * @param value the value
+     * @param out the DataOutput to write to
+     * @throws IOException thrown if an I/O error occurred
+     */
+    public static void writeVarLong(
+            long       value,
+            DataOutput out )
+        throws
+            IOException
+    {
+        while( ( value & ~0x7FL ) != 0L ) {
+            out.writeByte( (int) (( value & 0x7F ) | 0x80 ));
+            value >>>= 7;
+        }
+        out.writeByte( (int) value );
+    }
+
+    /**
+     * Read a variable-length quantity written by writeVarLong.
+     *
+     * @param in the DataInput to read from
+     * @return the value
+     * @throws DecodingException thrown if the quantity is longer than a long can hold
+     * @throws IOException thrown if an I/O error occurred
+     */
+    public static long readVarLong(
+            DataInput in )
+        throws
+            DecodingException,
+            IOException
+    {
+        long ret   = 0L;
+        int  shift = 0;
+        while( shift < 64 ) {
+            int b = in.readUnsignedByte();
+            ret |= (long) ( b & 0x7F ) << shift;
+            if( ( b & 0x80 ) == 0 ) {
+                return ret;
+            }
+            shift += 7;
+        }
+        throw new DecodingException( "Malformed variable-length quantity" );
+    }
+
+    /**
+     * Write a long that may be negative as a zig-zag encoded variable-length quantity,
+     * so small negative values such as -1 take up a single byte.
+     *
+     * @param value the value
+     * @param out the DataOutput to write to
+     * @throws IOException thrown if an I/O error occurred
+     */
+    public static void writeSignedVarLong(
+            long       value,
+            DataOutput out )
+        throws
+            IOException
+    {
+        writeVarLong( ( value << 1 ) ^ ( value >> 63 ), out );
+    }
+
+    /**
+     * Read a zig-zag encoded variable-length quantity written by writeSignedVarLong.
+     *
+     * @param in the DataInput to read from
+     * @return the value
+     * @throws DecodingException thrown if the quantity is longer than a long can hold
+     * @throws IOException thrown if an I/O error occurred
+     */
+    public static long readSignedVarLong(
+            DataInput in )
+        throws
+            DecodingException,
+            IOException
+    {
+        long raw = readVarLong( in );
+        return ( raw >>> 1 ) ^ -( raw & 1 );
+    }
+
+    /**
+     * Read a count or index written by writeVarLong, and check that it is in range.
+     *
+     * @param max the largest permitted value, exclusive
+     * @param in the DataInput to read from
+     * @return the value
+     * @throws DecodingException thrown if the value was out of range
+     * @throws IOException thrown if an I/O error occurred
+     */
+    public static int readVarInt(
+            int       max,
+            DataInput in )
+        throws
+            DecodingException,
+            IOException
+    {
+        long ret = readVarLong( in );
+        if( ret < 0 || ret >= max ) {
+            throw new DecodingException( "Value out of range: " + ret + " vs. " + max );
+        }
+        return (int) ret;
+    }
+
+    /**
+     * Write a byte array, prefixed by its length.
+     *
+     * @param value the byte array
+     * @param out the DataOutput to write to
+     * @throws IOException thrown if an I/O error occurred
+     */
+    public static void writeBytes(
+            byte []    value,
+            DataOutput out )
+        throws
+            IOException
+    {
+        writeVarLong( value.length, out );
+        out.write( value );
+    }
+
+    /**
+     * Read a byte array written by writeBytes.
+     *
+     * @param in the DataInput to read from
+     * @return the byte array
+     * @throws DecodingException thrown if the length was invalid
+     * @throws IOException thrown if an I/O error occurred, including premature end of data
+     */
+    public static byte [] readBytes(
+            DataInput in )
+        throws
+            DecodingException,
+            IOException
+    {
+        byte [] ret = new byte[ readVarInt( Integer.MAX_VALUE, in ) ];
+        in.readFully( ret );
+        return ret;
+    }
+
+    /**
+     * Write a String as UTF-8, prefixed by its length in bytes.
+     *
+     * @param value the String
+     * @param out the DataOutput to write to
+     * @throws IOException thrown if an I/O error occurred
+     */
+    public static void writeString(
+            String     value,
+            DataOutput out )
+        throws
+            IOException
+    {
+        writeBytes( value.getBytes( CHARSET ), out );
+    }
+
+    /**
+     * Read a String written by writeString.
+     *
+     * @param in the DataInput to read from
+     * @return the String
+     * @throws DecodingException thrown if the length was invalid
+     * @throws IOException thrown if an I/O error occurred, including premature end of data
+     */
+    public static String readString(
+            DataInput in )
+        throws
+            DecodingException,
+            IOException
+    {
+        return new String( readBytes( in ), CHARSET );
+    }
+
+    /**
+     * The current version of the format. Decoders accept this and all earlier versions.
+     */
+    public static final int FORMAT_VERSION = 1;
+
+    /**
+     * The character set used for Strings.
+     */
+    public static final Charset CHARSET = Charset.forName( "UTF-8" );
+
+    /**
+     * Marker byte at the beginning of an encoded stand-alone PropertyValue.
+     */
+    protected static final byte PROPERTY_VALUE_MARKER = 'V';
+
+    /**
+     * Tag for a null PropertyValue.
+     */
+    protected static final byte NULL_VALUE_TAG = 0;
+
+    /**
+     * Tag for a BlobValue with binary content.
+     */
+    protected static final byte BLOB_VALUE_BYTES_TAG = 1;
+
+    /**
+     * Tag for a BlobValue with text content.
+     */
+    protected static final byte BLOB_VALUE_TEXT_TAG = 2;
+
+    /**
+     * Tag for a BlobValue that is loaded from a resource on demand.
+     */
+    protected static final byte BLOB_VALUE_LOAD_TAG = 3;
+
+    /**
+     * Tag for BooleanValue.FALSE.
+     */
+    protected static final byte BOOLEAN_VALUE_FALSE_TAG = 4;
+
+    /**
+     * Tag for BooleanValue.TRUE.
+     */
+    protected static final byte BOOLEAN_VALUE_TRUE_TAG = 5;
+
+    /**
+     * Tag for a ColorValue.
+     */
+    protected static final byte COLOR_VALUE_TAG = 6;
+
+    /**
+     * Tag for a CurrencyValue.
+     */
+    protected static final byte CURRENCY_VALUE_TAG = 7;
+
+    /**
+     * Tag for an EnumeratedValue.
+     */
+    protected static final byte ENUMERATED_VALUE_TAG = 8;
+
+    /**
+     * Tag for an ExtentValue.
+     */
+    protected static final byte EXTENT_VALUE_TAG = 9;
+
+    /**
+     * Tag for a FloatValue.
+     */
+    protected static final byte FLOAT_VALUE_TAG = 10;
+
+    /**
+     * Tag for an IntegerValue.
+     */
+    protected static final byte INTEGER_VALUE_TAG = 11;
+
+    /**
+     * Tag for a MultiplicityValue.
+     */
+    protected static final byte MULTIPLICITY_VALUE_TAG = 12;
+
+    /**
+     * Tag for a PointValue.
+     */
+    protected static final byte POINT_VALUE_TAG = 13;
+
+    /**
+     * Tag for a StringValue.
+     */
+    protected static final byte STRING_VALUE_TAG = 14;
+
+    /**
+     * Tag for a TimePeriodValue.
+     */
+    protected static final byte TIME_PERIOD_TAG = 15;
+
+    /**
+     * Tag for a TimeStampValue.
+     */
+    protected static final byte TIME_STAMP_TAG = 16;
+}
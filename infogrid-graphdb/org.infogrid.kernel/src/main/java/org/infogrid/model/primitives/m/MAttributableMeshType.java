@@ -15,6 +15,7 @@
 package org.infogrid.model.primitives.m;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Comparator;
 import java.util.Iterator;
 import org.infogrid.mesh.MeshObject;
@@ -570,6 +571,32 @@ public abstract class MAttributableMeshType
     @Override
     public final int getDistanceToSupertype(
             AttributableMeshType other )
+    {
+        if( this == other ) {
+            return 0;
+        }
+        if( other instanceof MAttributableMeshType ) {
+            int [] distances = getSupertypeDistances();
+            int    index     = ((MAttributableMeshType)other).theTypeIndex;
+
+            if( distances != null && index >= 0 ) {
+                return index < distances.length ? distances[index] : -1;
+            }
+        }
+        return computeDistanceToSupertype( other );
+    }
+
+    /**
+     * Determine the distance from this AttributableMeshType to the passed-in (supertype)
+     * AttributableMeshType by walking the inheritance hierarchy. This is used if
+     * the AttributableMeshTypes have not been registered with a ModelBase yet.
+     *
+     * @param other the AttributableMeshType to test against
+     * @return the number of steps between this AttributableMeshType and other. -1 if
+     *         there is no sub-typing relationships between the two
+     */
+    protected final int computeDistanceToSupertype(
+            AttributableMeshType other )
     {
         if( this == other || equals( other ) ) {
             return 0;
@@ -577,7 +604,7 @@ public abstract class MAttributableMeshType
 
         int bestMatch = Integer.MAX_VALUE;
         for( int i=0 ; i<theSupertypes.length ; ++i ) {
-            int current = theSupertypes[i].getDistanceToSupertype( other );
+            int current = ((MAttributableMeshType)theSupertypes[i]).computeDistanceToSupertype( other );
             if( current >= 0 && current < bestMatch ) {
                 bestMatch = current;
             }
@@ -866,6 +893,95 @@ public abstract class MAttributableMeshType
         return ret;        
     }
 
+    /**
+     * Set the index of this AttributableMeshType. This is assigned by the ModelBase
+     * when the AttributableMeshType is registered with it, and is the same for all
+     * MAttributableMeshTypes with the same Identifier in this virtual machine.
+     *
+     * @param newValue the index
+     * @throws IllegalStateException thrown if the index had been assigned already
+     * @see #getTypeIndex
+     */
+    public final void setTypeIndex(
+            int newValue )
+    {
+        if( theTypeIndex >= 0 ) {
+            throw new IllegalStateException( "Index assigned already: " + this );
+        }
+        theTypeIndex = newValue;
+    }
+
+    /**
+     * Obtain the index of this AttributableMeshType.
+     *
+     * @return the index, or -1 if none has been assigned yet
+     * @see #setTypeIndex
+     */
+    public final int getTypeIndex()
+    {
+        return theTypeIndex;
+    }
+
+    /**
+     * Obtain the table of distances to all supertypes, indexed by the supertypes'
+     * type index. Calculates it if needed.
+     *
+     * @return the table, or null if this AttributableMeshType or one of its supertypes has no index yet
+     */
+    protected final int [] getSupertypeDistances()
+    {
+        int [] ret = theSupertypeDistances;
+        if( ret == null ) {
+            ret = computeSupertypeDistances();
+            theSupertypeDistances = ret;
+        }
+        return ret;
+    }
+
+    /**
+     * Calculate the table of distances to all supertypes, by traversing the inheritance
+     * hierarchy breadth-first, so the first time a supertype is found is the shortest distance.
+     *
+     * @return the table, or null if this AttributableMeshType or one of its supertypes has no index yet
+     */
+    protected final int [] computeSupertypeDistances()
+    {
+        if( theTypeIndex < 0 ) {
+            return null;
+        }
+        ArrayList<MAttributableMeshType> found     = new ArrayList<>();
+        ArrayList<Integer>               distances = new ArrayList<>();
+        int                              maxIndex  = theTypeIndex;
+
+        found.add( this );
+        distances.add( 0 );
+
+        for( int i=0 ; i<found.size() ; ++i ) {
+            MAttributableMeshType current  = found.get( i );
+            int                   distance = distances.get( i );
+
+            for( AttributableMeshType superType : current.theSupertypes ) {
+                MAttributableMeshType realSuperType = (MAttributableMeshType) superType;
+
+                if( realSuperType.theTypeIndex < 0 ) {
+                    return null;
+                }
+                if( !found.contains( realSuperType )) {
+                    found.add( realSuperType );
+                    distances.add( distance + 1 );
+                    maxIndex = Math.max( maxIndex, realSuperType.theTypeIndex );
+                }
+            }
+        }
+
+        int [] ret = new int[ maxIndex + 1 ];
+        Arrays.fill( ret, -1 );
+        for( int i=0 ; i<found.size() ; ++i ) {
+            ret[ found.get( i ).theTypeIndex ] = distances.get( i );
+        }
+        return ret;
+    }
+
     /**
      * Obtain transitive closure of all supertypes.
      *
@@ -896,8 +1012,9 @@ public abstract class MAttributableMeshType
      */
     protected final void zeroCaches()
     {
-        allPropertyTypes = null;
-        allSupertypes    = null;
+        allPropertyTypes      = null;
+        allSupertypes         = null;
+        theSupertypeDistances = null;
 
         for( int i=0 ; i<theSubtypes.length ; ++i ) {
             theSubtypes[i].zeroCaches();
@@ -950,6 +1067,19 @@ public abstract class MAttributableMeshType
      */
     private transient AttributableMeshType [] allSupertypes = null;
 
+    /**
+     * The index of this AttributableMeshType, assigned by the ModelBase. -1 if not assigned yet.
+     */
+    private int theTypeIndex = -1;
+
+    /**
+     * This caches the distances to all supertypes, including this AttributableMeshType itself,
+     * indexed by their type index. -1 indicates that the AttributableMeshType with that index
+     * is not a supertype. This makes subtype checks a simple array lookup instead of a walk of
+     * the inheritance hierarchy. This goes with method zeroCaches().
+     */
+    private transient volatile int [] theSupertypeDistances = null;
+
     /**
       * The value of the IsAbstract property.
       */
@@ -16,6 +16,7 @@ package org.infogrid.model.primitives.m;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
 import org.infogrid.mesh.MeshObject;
 import org.infogrid.mesh.MeshObjectIdentifier;
 import org.infogrid.mesh.MultiplicityException;
@@ -170,7 +171,15 @@ public abstract class MRoleType
     public final void setDirectSuperRoleTypes(
             MRoleType [] newValue )
     {
+        for( MRoleType current : theDirectSuperRoleTypes ) {
+            current.theDirectSubRoleTypes = ArrayHelper.removeIfPresent( current.theDirectSubRoleTypes, this, false, MRoleType.class );
+        }
         theDirectSuperRoleTypes = newValue;
+
+        for( MRoleType current : theDirectSuperRoleTypes ) {
+            current.theDirectSubRoleTypes = ArrayHelper.append( current.theDirectSubRoleTypes, this, MRoleType.class );
+        }
+        zeroCaches();
     }
 
     /**
@@ -196,6 +205,31 @@ public abstract class MRoleType
     @Override
     public final boolean isSpecializationOfOrEquals(
             TraversalSpecification other )
+    {
+        if( this == other ) {
+            return true;
+        }
+        if( other instanceof MRoleType ) {
+            BitSet superRoleTypes = getSuperRoleTypes();
+            int    index          = ((MRoleType)other).theRoleTypeIndex;
+
+            if( superRoleTypes != null && index >= 0 ) {
+                return superRoleTypes.get( index );
+            }
+        }
+        return computeIsSpecializationOf( other );
+    }
+
+    /**
+     * Determine whether this RoleType is a specialization of the passed-in TraversalSpecification
+     * by walking the RoleType hierarchy. This is used if the RoleTypes have not been registered
+     * with a ModelBase yet.
+     *
+     * @param other the TraversalSpecification to compare against
+     * @return true if this RoleType is a specialization of the passed-in TraversalSpecification
+     */
+    protected final boolean computeIsSpecializationOf(
+            TraversalSpecification other )
     {
         if( other instanceof RoleType ) {
             if( this == other ) {
@@ -203,7 +237,7 @@ public abstract class MRoleType
             }
 
             for( int i=0 ; i<theDirectSuperRoleTypes.length ; ++i ) {
-                if( theDirectSuperRoleTypes[i].isSpecializationOfOrEquals( other )) {
+                if( theDirectSuperRoleTypes[i].computeIsSpecializationOf( other )) {
                     return true;
                 }
             }
@@ -211,6 +245,73 @@ public abstract class MRoleType
         return false;
     }
 
+    /**
+     * Set the index of this RoleType. This is assigned by the ModelBase when the
+     * RelationshipType of this RoleType is registered with it, and is the same for all
+     * MRoleTypes with the same Identifier in this virtual machine.
+     *
+     * @param newValue the index
+     * @throws IllegalStateException thrown if the index had been assigned already
+     * @see #getRoleTypeIndex
+     */
+    public final void setRoleTypeIndex(
+            int newValue )
+    {
+        if( theRoleTypeIndex >= 0 ) {
+            throw new IllegalStateException( "Index assigned already: " + this );
+        }
+        theRoleTypeIndex = newValue;
+    }
+
+    /**
+     * Obtain the index of this RoleType.
+     *
+     * @return the index, or -1 if none has been assigned yet
+     * @see #setRoleTypeIndex
+     */
+    public final int getRoleTypeIndex()
+    {
+        return theRoleTypeIndex;
+    }
+
+    /**
+     * Obtain the set of indices of all RoleTypes that this RoleType refines, directly or
+     * indirectly, including itself. Calculates it if needed.
+     *
+     * @return the set, or null if this RoleType or one of the RoleTypes it refines has no index yet
+     */
+    protected final BitSet getSuperRoleTypes()
+    {
+        BitSet ret = theSuperRoleTypes;
+        if( ret == null && theRoleTypeIndex >= 0 ) {
+            ret = new BitSet();
+            ret.set( theRoleTypeIndex );
+
+            for( MRoleType current : theDirectSuperRoleTypes ) {
+                BitSet inherited = current.getSuperRoleTypes();
+                if( inherited == null ) {
+                    return null;
+                }
+                ret.or( inherited );
+            }
+            theSuperRoleTypes = ret;
+        }
+        return ret;
+    }
+
+    /**
+     * This internal helper zeros out cached values. It is invoked in case the RoleType
+     * hierarchy changes, such as when loading additional SubjectAreas at run-time.
+     */
+    protected final void zeroCaches()
+    {
+        theSuperRoleTypes = null;
+
+        for( int i=0 ; i<theDirectSubRoleTypes.length ; ++i ) {
+            theDirectSubRoleTypes[i].zeroCaches();
+        }
+    }
+
     /**
      * Use this TraversalSpecification to traverse from the passed-in start MeshObject
      * to related MeshObjects. This method is defined on TraversalSpecification, so
@@ -706,6 +807,24 @@ public abstract class MRoleType
       */
     private MRoleType [] theDirectSuperRoleTypes = new MRoleType[0];
 
+    /**
+      * The RoleTypes that refine this RoleType directly. This is only used to zero the caches
+      * of the refining RoleTypes.
+      */
+    private MRoleType [] theDirectSubRoleTypes = new MRoleType[0];
+
+    /**
+     * The index of this RoleType, assigned by the ModelBase. -1 if not assigned yet.
+     */
+    private int theRoleTypeIndex = -1;
+
+    /**
+     * This caches the indices of all RoleTypes that this RoleType refines, including itself,
+     * so that isSpecializationOfOrEquals is a simple bit lookup instead of a walk of the
+     * RoleType hierarchy. This is allocated when needed, and goes with method zeroCaches().
+     */
+    private transient volatile BitSet theSuperRoleTypes;
+
     /**
      * The set of RoleTypeGroups on this RoleType (not a supertype), expressed as the set of class names.
      */
@@ -24,8 +24,12 @@ import org.infogrid.model.primitives.MeshType;
 import org.infogrid.model.primitives.MeshTypeIdentifier;
 import org.infogrid.model.primitives.PropertyType;
 import org.infogrid.model.primitives.PropertyTypeGroup;
+import org.infogrid.model.primitives.RelationshipType;
+import org.infogrid.model.primitives.RoleType;
 import org.infogrid.model.primitives.StringValue;
 import org.infogrid.model.primitives.SubjectArea;
+import org.infogrid.model.primitives.m.MAttributableMeshType;
+import org.infogrid.model.primitives.m.MRoleType;
 import org.infogrid.modelbase.MeshTypeCreatedEvent;
 import org.infogrid.modelbase.MeshTypeLifecycleEvent;
 import org.infogrid.modelbase.MeshTypeLifecycleEventListener;
@@ -130,9 +134,61 @@ public class MMeshTypeStore
         theAttributableMeshTypes.put( theKey, theObject );
         allMeshTypes.put( theObject.getIdentifier(), theObject );
 
+        assignIndices( theObject );
+
         notifyElementAdded( theObject );
     }
 
+    /**
+     * Assign the indices used for constant-time subtype checks to a newly added
+     * AttributableMeshType and, if it is a RelationshipType, to its RoleTypes.
+     *
+     * @param theObject the newly added AttributableMeshType
+     */
+    protected void assignIndices(
+            AttributableMeshType theObject )
+    {
+        if( theObject instanceof MAttributableMeshType ) {
+            MAttributableMeshType realObject = (MAttributableMeshType) theObject;
+            if( realObject.getTypeIndex() < 0 ) {
+                realObject.setTypeIndex( obtainIndex( theAttributableMeshTypeIndices, realObject.getIdentifier() ));
+            }
+        }
+        if( theObject instanceof RelationshipType ) {
+            RelationshipType realObject = (RelationshipType) theObject;
+
+            for( RoleType current : new RoleType[] { realObject.getSource(), realObject.getDestination() } ) {
+                if( current instanceof MRoleType ) {
+                    MRoleType realCurrent = (MRoleType) current;
+                    if( realCurrent.getRoleTypeIndex() < 0 ) { // source and destination are the same for unary RelationshipTypes
+                        realCurrent.setRoleTypeIndex( obtainIndex( theRoleTypeIndices, realCurrent.getIdentifier() ));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Obtain the index for a MeshTypeIdentifier, allocating a new one if needed. MeshTypes
+     * are equal if their Identifiers are, so the same MeshType loaded into different
+     * ModelBases gets the same index.
+     *
+     * @param indices the indices handed out so far
+     * @param identifier the MeshTypeIdentifier
+     * @return the index
+     */
+    protected static synchronized int obtainIndex(
+            HashMap<MeshTypeIdentifier,Integer> indices,
+            MeshTypeIdentifier                  identifier )
+    {
+        Integer ret = indices.get( identifier );
+        if( ret == null ) {
+            ret = indices.size();
+            indices.put( identifier, ret );
+        }
+        return ret;
+    }
+
     /**
       * Let MMeshTypeLifecycleManager add a PropertyType.
       *
@@ -352,6 +408,19 @@ public class MMeshTypeStore
       */
     protected transient ArrayList<MeshTypeLifecycleEventListener> theLifecycleEventListeners = null;
 
+    /**
+     * The indices handed out to MAttributableMeshTypes, keyed by their Identifier. This is
+     * static, so indices are consistent across all ModelBases in this virtual machine.
+     * Guarded by the class lock, see obtainIndex.
+     */
+    private static final HashMap<MeshTypeIdentifier,Integer> theAttributableMeshTypeIndices = new HashMap<>();
+
+    /**
+     * The indices handed out to MRoleTypes, keyed by their Identifier. This is
+     * static, so indices are consistent across all ModelBases in this virtual machine.
+     */
+    private static final HashMap<MeshTypeIdentifier,Integer> theRoleTypeIndices = new HashMap<>();
+
     /**
       * This implements the Iterator interface for this MMeshTypeStore.
       */
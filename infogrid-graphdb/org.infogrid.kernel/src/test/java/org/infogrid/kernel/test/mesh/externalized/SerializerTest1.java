@@ -46,6 +46,7 @@ import org.infogrid.model.primitives.TimePeriodDataType;
 import org.infogrid.model.primitives.TimePeriodValue;
 import org.infogrid.model.primitives.TimeStampDataType;
 import org.infogrid.model.primitives.TimeStampValue;
+import org.infogrid.model.primitives.externalized.PropertyValueEncoder;
 import org.infogrid.model.primitives.externalized.xml.PropertyValueXmlEncoder;
 import org.infogrid.util.logging.Log;
 import org.junit.Test;
@@ -525,7 +526,7 @@ public class SerializerTest1
     /**
      * The serializer that we are testing
      */
-    protected PropertyValueXmlEncoder theSerializer = new PropertyValueXmlEncoder();
+    protected PropertyValueEncoder theSerializer = new PropertyValueXmlEncoder();
 
     /**
      * Groups together the PropertyValues we are testing with their
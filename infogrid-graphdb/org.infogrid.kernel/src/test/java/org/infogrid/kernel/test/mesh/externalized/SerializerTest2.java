@@ -0,0 +1,34 @@
+//
+// This file is part of InfoGrid(tm). You may not use this file except in
+// compliance with the InfoGrid license. The InfoGrid license and important
+// disclaimers are contained in the file LICENSE.InfoGrid.txt that you should
+// have received with InfoGrid. If you have not received LICENSE.InfoGrid.txt
+// or you do not consent to all aspects of the license and the disclaimers,
+// no license is granted; do not use this file.
+//
+// For more information about InfoGrid go to http://infogrid.org/
+//
+// Copyright 1998-2015 by Johannes Ernst
+// All rights reserved.
+//
+
+package org.infogrid.kernel.test.mesh.externalized;
+
+import org.infogrid.model.primitives.externalized.binary.PropertyValueBinaryEncoder;
+
+/**
+ * Tests PropertyValue serialization and deserialization with the binary encoding,
+ * using the same test data as SerializerTest1.
+ */
+public class SerializerTest2
+        extends
+            SerializerTest1
+{
+    /**
+     * Constructor.
+     */
+    public SerializerTest2()
+    {
+        theSerializer = new PropertyValueBinaryEncoder();
+    }
+}
@@ -39,6 +39,8 @@ import org.infogrid.util.logging.Log;
  * A simple implementation of AccessManager using Access Control List. This simple
  * implementation should only be used in environments where arbitrary clients cannot
  * start calling arbitrary APIs.
+ *
+ * By default, read, update and delete decisions are kept in an AclbasedDecisionCache.
  */
 public class AclbasedAccessManager
         implements
@@ -53,15 +55,44 @@ public class AclbasedAccessManager
      */
     public static AclbasedAccessManager create()
     {
-        return new AclbasedAccessManager();
+        return new AclbasedAccessManager( true );
+    }
+
+    /**
+     * Factory method.
+     *
+     * @param cacheDecisions if true, cache access decisions
+     * @return the created AclbasedAccessManager
+     */
+    public static AclbasedAccessManager create(
+            boolean cacheDecisions )
+    {
+        return new AclbasedAccessManager( cacheDecisions );
     }
 
     /**
      * Constructor for subclasses only, use factory method.
+     *
+     * @param cacheDecisions if true, cache access decisions
      */
-    protected AclbasedAccessManager()
+    protected AclbasedAccessManager(
+            boolean cacheDecisions )
     {
-        // noop
+        if( cacheDecisions ) {
+            theDecisionCache = AclbasedDecisionCache.create( this );
+        } else {
+            theDecisionCache = null;
+        }
+    }
+
+    /**
+     * Obtain the cache of access decisions, if any.
+     *
+     * @return the AclbasedDecisionCache, or null
+     */
+    public AclbasedDecisionCache getDecisionCache()
+    {
+        return theDecisionCache;
     }
 
     /**
@@ -168,37 +199,60 @@ public class AclbasedAccessManager
             return; // root may do anything
         }
 
+        MeshObject caller = ThreadIdentityManager.getCaller();
+        boolean    permitted;
+
+        if( theDecisionCache != null ) {
+            permitted = theDecisionCache.isPermitted( obj, caller, rel );
+        } else {
+            permitted = determineRelationshipToCaller( obj, caller, rel );
+        }
+        if( !permitted ) {
+            throw new CallerHasInsufficientPermissionsException( obj, caller );
+        }
+    }
+
+    /**
+     * Determine, without using the cache, whether the caller is permitted access to a MeshObject
+     * because it owns it, or because it has a particular relationship to its protection domain.
+     *
+     * @param obj the MeshObject
+     * @param caller the caller, or null if anonymous
+     * @param rel the RoleType
+     * @return true if permitted
+     */
+    protected boolean determineRelationshipToCaller(
+            MeshObject obj,
+            MeshObject caller,
+            RoleType   rel )
+    {
         try {
             ThreadIdentityManager.sudo();
-            MeshObject    caller = ThreadIdentityManager.getCaller();
             MeshObjectSet owners = obj.traverse( AclbasedSubjectArea.MESHOBJECT_HASOWNER_MESHOBJECT.getSource());
 
             // if we don't have an owner, it's free for all
             if( owners.isEmpty() ) {
-                return;
+                return true;
             }
 
             // if we don't have a protection domain, it's free for all
             MeshObject protectionDomain = obj.traverse( AclbasedSubjectArea.PROTECTIONDOMAIN_GOVERNS_MESHOBJECT.getDestination()).getSingleMember();
             if( protectionDomain == null ) {
-                return;
+                return true;
             }
 
             // with protection domain, but anonymous: sorry
             if( caller == null ) {
-                throw new CallerHasInsufficientPermissionsException( obj, caller );
+                return false;
             }
 
             // owner always may
             if( owners.contains( caller )) {
-                return;
+                return true;
             }
 
             // if caller has the right right in the protection domain
-            if( caller.isRelated( rel, protectionDomain )) {
-                return;
-            }
-            throw new CallerHasInsufficientPermissionsException( obj, caller );
+            return caller.isRelated( rel, protectionDomain );
 
         } finally {
             ThreadIdentityManager.sudone();
@@ -519,4 +573,9 @@ public class AclbasedAccessManager
             }
         }
     }
+
+    /**
+     * Caches access decisions, if any.
+     */
+    protected final AclbasedDecisionCache theDecisionCache;
 }
@@ -0,0 +1,404 @@
+//
+// This file is part of InfoGrid(tm). You may not use this file except in
+// compliance with the InfoGrid license. The InfoGrid license and important
+// disclaimers are contained in the file LICENSE.InfoGrid.txt that you should
+// have received with InfoGrid. If you have not received LICENSE.InfoGrid.txt
+// or you do not consent to all aspects of the license and the disclaimers,
+// no license is granted; do not use this file.
+//
+// For more information about InfoGrid go to http://infogrid.org/
+//
+// Copyright 1998-2016 by Johannes Ernst
+// All rights reserved.
+//
+
+package org.infogrid.meshbase.security.aclbased.accessmanager;
+
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.util.HashMap;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import org.infogrid.mesh.MeshObject;
+import org.infogrid.meshbase.security.aclbased.AclbasedSubjectArea;
+import org.infogrid.meshbase.transaction.MeshObjectBecameDeadStateEvent;
+import org.infogrid.meshbase.transaction.MeshObjectRoleChangeEvent;
+import org.infogrid.model.primitives.RoleType;
+
+/**
+ * <p>Caches the decisions of an AclbasedAccessManager whether a caller has a certain
+ *    right with respect to a MeshObject, so repeated checks do not need to traverse
+ *    the owner and protection domain relationships every time.</p>
+ *
+ * <p>A decision depends on the owners and the protection domain of the MeshObject, and on
+ *    the relationships of the caller to the protection domain. This cache listens to both
+ *    the MeshObject and the caller, and discards the affected decisions as soon as
+ *    either of them gains or loses a RoleType of the AclbasedSubjectArea, or dies.
+ *    It does not reference MeshObjects strongly.</p>
+ */
+public class AclbasedDecisionCache
+        implements
+            PropertyChangeListener
+{
+    /**
+     * Factory method.
+     *
+     * @param accessManager the AclbasedAccessManager whose decisions are cached
+     * @return the created AclbasedDecisionCache
+     */
+    public static AclbasedDecisionCache create(
+            AclbasedAccessManager accessManager )
+    {
+        return new AclbasedDecisionCache( accessManager );
+    }
+
+    /**
+     * Constructor, use factory method.
+     *
+     * @param accessManager the AclbasedAccessManager whose decisions are cached
+     */
+    protected AclbasedDecisionCache(
+            AclbasedAccessManager accessManager )
+    {
+        theAccessManager = accessManager;
+    }
+
+    /**
+     * Determine whether the caller has the right, expressed as a RoleType towards the protection
+     * domain, with respect to a MeshObject. Uses the cached decision if there is one.
+     *
+     * @param obj the MeshObject
+     * @param caller the caller, or null if anonymous
+     * @param rel the RoleType expressing the right
+     * @return true if permitted
+     */
+    public boolean isPermitted(
+            MeshObject obj,
+            MeshObject caller,
+            RoleType   rel )
+    {
+        ObjectEntry objEntry;
+        CallerEntry callerEntry;
+        boolean     newObjEntry    = false;
+        boolean     newCallerEntry = false;
+        boolean     cacheable;
+        int         objVersion;
+        int         callerVersion;
+
+        synchronized( this ) {
+            objEntry = theObjectEntries.get( obj );
+            if( objEntry == null ) {
+                objEntry    = new ObjectEntry();
+                newObjEntry = true;
+                theObjectEntries.put( obj, objEntry );
+            }
+            if( caller == null ) {
+                callerEntry = ANONYMOUS;
+            } else {
+                callerEntry = theCallerEntries.get( caller );
+                if( callerEntry == null ) {
+                    callerEntry    = new CallerEntry();
+                    newCallerEntry = true;
+                    theCallerEntries.put( caller, callerEntry );
+                }
+            }
+            CallerDecisions decisions = objEntry.theDecisions.get( callerEntry );
+            if( decisions != null && decisions.theCallerVersion == callerEntry.theVersion ) {
+                Boolean ret = decisions.theByRoleType.get( rel );
+                if( ret != null ) {
+                    theHits.incrementAndGet();
+                    return ret;
+                }
+            }
+            // only remember decisions determined while we are certain to hear about changes
+            cacheable     = ( newObjEntry || objEntry.theListening ) && ( newCallerEntry || callerEntry.theListening );
+            objVersion    = objEntry.theVersion;
+            callerVersion = callerEntry.theVersion;
+        }
+        theMisses.incrementAndGet();
+
+        // register outside of our lock: MeshObjects fire events while holding their own lock
+        if( newObjEntry ) {
+            obj.addWeakPropertyChangeListener( this );
+        }
+        if( newCallerEntry ) {
+            caller.addWeakPropertyChangeListener( this );
+        }
+        if( newObjEntry || newCallerEntry ) {
+            synchronized( this ) {
+                objEntry.theListening    = true;
+                callerEntry.theListening = true;
+            }
+        }
+
+        boolean ret = theAccessManager.determineRelationshipToCaller( obj, caller, rel );
+
+        synchronized( this ) {
+            // do not remember the decision if something changed while we were determining it
+            if( cacheable && objEntry.theVersion == objVersion && callerEntry.theVersion == callerVersion ) {
+                CallerDecisions decisions = objEntry.theDecisions.get( callerEntry );
+                if( decisions == null || decisions.theCallerVersion != callerVersion ) {
+                    decisions = new CallerDecisions( callerVersion );
+                    objEntry.theDecisions.put( callerEntry, decisions );
+                }
+                decisions.theByRoleType.put( rel, ret );
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Discard all cached decisions. We keep listening to the MeshObjects we already know.
+     */
+    public synchronized void clear()
+    {
+        for( ObjectEntry current : theObjectEntries.values() ) {
+            current.invalidate();
+        }
+        for( CallerEntry current : theCallerEntries.values() ) {
+            current.invalidate();
+        }
+    }
+
+    /**
+     * Listen to changes of the MeshObjects and callers whose decisions we have cached.
+     *
+     * @param event the event
+     */
+    @Override
+    public void propertyChange(
+            PropertyChangeEvent event )
+    {
+        if( !( event.getSource() instanceof MeshObject )) {
+            return;
+        }
+        MeshObject source = (MeshObject) event.getSource();
+
+        if( event instanceof MeshObjectRoleChangeEvent ) {
+            if( containsAclRoleType( ((MeshObjectRoleChangeEvent) event).getDeltaValue() )) {
+                invalidate( source, false );
+            }
+
+        } else if( event instanceof MeshObjectBecameDeadStateEvent ) {
+            invalidate( source, true );
+        }
+    }
+
+    /**
+     * Discard the decisions that depend on this MeshObject, either as the MeshObject
+     * to which access is requested, or as the caller.
+     *
+     * @param obj the MeshObject
+     * @param forget if true, also stop tracking this MeshObject
+     */
+    protected synchronized void invalidate(
+            MeshObject obj,
+            boolean    forget )
+    {
+        ObjectEntry objEntry = forget ? theObjectEntries.remove( obj ) : theObjectEntries.get( obj );
+        if( objEntry != null ) {
+            objEntry.invalidate();
+        }
+        CallerEntry callerEntry = forget ? theCallerEntries.remove( obj ) : theCallerEntries.get( obj );
+        if( callerEntry != null ) {
+            callerEntry.invalidate();
+        }
+        if( objEntry != null || callerEntry != null ) {
+            theInvalidations.incrementAndGet();
+        }
+    }
+
+    /**
+     * Determine whether any of these RoleTypes is relevant to access control decisions.
+     *
+     * @param roleTypes the RoleTypes
+     * @return true if at least one is
+     */
+    protected boolean containsAclRoleType(
+            RoleType [] roleTypes )
+    {
+        if( roleTypes == null ) {
+            return false;
+        }
+        for( RoleType current : roleTypes ) {
+            if( current.getSubjectArea() == AclbasedSubjectArea._SA ) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Obtain the number of checks that were answered from the cache.
+     *
+     * @return the number of hits
+     */
+    public long getHitCount()
+    {
+        return theHits.get();
+    }
+
+    /**
+     * Obtain the number of checks that had to be determined by traversing.
+     *
+     * @return the number of misses
+     */
+    public long getMissCount()
+    {
+        return theMisses.get();
+    }
+
+    /**
+     * Obtain the number of times cached decisions were discarded because a MeshObject
+     * or caller changed.
+     *
+     * @return the number of invalidations
+     */
+    public long getInvalidationCount()
+    {
+        return theInvalidations.get();
+    }
+
+    /**
+     * Obtain the fraction of checks that were answered from the cache.
+     *
+     * @return the hit rate, between 0 and 1
+     */
+    public double getHitRate()
+    {
+        long hits  = theHits.get();
+        long total = hits + theMisses.get();
+
+        return total > 0 ? ((double) hits) / total : 0.;
+    }
+
+    /**
+     * Convert to String form, for debugging.
+     *
+     * @return String form
+     */
+    @Override
+    public String toString()
+    {
+        return getClass().getName() + "{ hits: " + getHitCount() + ", misses: " + getMissCount() + ", invalidations: " + getInvalidationCount() + " }";
+    }
+
+    /**
+     * The AclbasedAccessManager whose decisions are cached.
+     */
+    protected final AclbasedAccessManager theAccessManager;
+
+    /**
+     * The cached decisions, keyed by the MeshObject to which access is requested.
+     */
+    protected final WeakHashMap<MeshObject,ObjectEntry> theObjectEntries = new WeakHashMap<>();
+
+    /**
+     * The callers for which decisions have been cached.
+     */
+    protected final WeakHashMap<MeshObject,CallerEntry> theCallerEntries = new WeakHashMap<>();
+
+    /**
+     * Number of checks answered from the cache.
+     */
+    protected final AtomicLong theHits = new AtomicLong();
+
+    /**
+     * Number of checks that had to be determined.
+     */
+    protected final AtomicLong theMisses = new AtomicLong();
+
+    /**
+     * Number of invalidations.
+     */
+    protected final AtomicLong theInvalidations = new AtomicLong();
+
+    /**
+     * Stands for the anonymous caller, whose relationships never change.
+     */
+    protected static final CallerEntry ANONYMOUS = new CallerEntry();
+    static {
+        ANONYMOUS.theListening = true;
+    }
+
+    /**
+     * The cached decisions for one MeshObject to which access is requested.
+     */
+    protected static class ObjectEntry
+    {
+        /**
+         * Discard the decisions.
+         */
+        protected void invalidate()
+        {
+            ++theVersion;
+            theDecisions.clear();
+        }
+
+        /**
+         * Incremented every time the owners or the protection domain may have changed.
+         */
+        protected int theVersion;
+
+        /**
+         * True once we listen to the MeshObject.
+         */
+        protected boolean theListening;
+
+        /**
+         * The decisions, by caller.
+         */
+        protected final HashMap<CallerEntry,CallerDecisions> theDecisions = new HashMap<>();
+    }
+
+    /**
+     * Tracks one caller. This does not reference the caller itself.
+     */
+    protected static class CallerEntry
+    {
+        /**
+         * Invalidate all decisions made for this caller.
+         */
+        protected void invalidate()
+        {
+            ++theVersion;
+        }
+
+        /**
+         * Incremented every time the caller's relationships to protection domains may have changed.
+         */
+        protected int theVersion;
+
+        /**
+         * True once we listen to the caller.
+         */
+        protected boolean theListening;
+    }
+
+    /**
+     * The decisions for one MeshObject and one caller.
+     */
+    protected static class CallerDecisions
+    {
+        /**
+         * Constructor.
+         *
+         * @param callerVersion the version of the CallerEntry at the time the decisions were made
+         */
+        protected CallerDecisions(
+                int callerVersion )
+        {
+            theCallerVersion = callerVersion;
+        }
+
+        /**
+         * The version of the CallerEntry at the time the decisions were made.
+         */
+        protected final int theCallerVersion;
+
+        /**
+         * The decisions, by RoleType expressing the right.
+         */
+        protected final HashMap<RoleType,Boolean> theByRoleType = new HashMap<>( 4 );
+    }
+}
@@ -0,0 +1,203 @@
+//
+// This file is part of InfoGrid(tm). You may not use this file except in
+// compliance with the InfoGrid license. The InfoGrid license and important
+// disclaimers are contained in the file LICENSE.InfoGrid.txt that you should
+// have received with InfoGrid. If you have not received LICENSE.InfoGrid.txt
+// or you do not consent to all aspects of the license and the disclaimers,
+// no license is granted; do not use this file.
+//
+// For more information about InfoGrid go to http://infogrid.org/
+//
+// Copyright 1998-2015 by Johannes Ernst
+// All rights reserved.
+//
+
+package org.infogrid.meshbase.security.aclbased.test;
+
+import org.infogrid.mesh.IllegalPropertyTypeException;
+import org.infogrid.mesh.MeshObject;
+import org.infogrid.mesh.NotPermittedException;
+import org.infogrid.mesh.security.ThreadIdentityManager;
+import org.infogrid.meshbase.security.aclbased.AclbasedSubjectArea;
+import org.infogrid.meshbase.security.aclbased.accessmanager.AclbasedAccessManager;
+import org.infogrid.meshbase.security.aclbased.accessmanager.AclbasedDecisionCache;
+import org.infogrid.meshbase.transaction.Transaction;
+import org.infogrid.model.Test.TestSubjectArea;
+import org.infogrid.model.primitives.StringValue;
+import org.infogrid.util.logging.Log;
+import org.junit.Test;
+
+/**
+ * Tests that cached access decisions are reused, and discarded when the owners, the
+ * protection domain or the rights of the caller change.
+ */
+public class AclbasedSecurityTest6
+        extends
+            AbstractAclbasedSecurityTest
+{
+    /**
+     * Run the test.
+     *
+     * @throws Exception thrown if an Exception occurred during the test
+     */
+    @Test
+    public void run()
+        throws
+            Exception
+    {
+        AclbasedDecisionCache cache = ((AclbasedAccessManager) theAccessManager).getDecisionCache();
+        checkObject( cache, "No decision cache" );
+
+        log.info( "Setting up objects to test with" );
+
+        Transaction tx = theMeshBase.createTransactionNow();
+
+        MeshObject reader = life.createMeshObject();
+        MeshObject owner  = life.createMeshObject();
+
+        ThreadIdentityManager.setCaller( owner );
+        MeshObject domain = life.createMeshObject( AclbasedSubjectArea.PROTECTIONDOMAIN );
+
+        MeshObject [] data = new MeshObject[ theTestSize ];
+        for( int i=0 ; i<data.length ; ++i ) {
+            data[i] = life.createMeshObject( TestSubjectArea.AA );
+            data[i].setPropertyValue( TestSubjectArea.A_X, StringValue.create( "value " + i ));
+            domain.relateAndBless( AclbasedSubjectArea.PROTECTIONDOMAIN_GOVERNS_MESHOBJECT.getSource(), data[i] );
+        }
+
+        tx.commitTransaction();
+        ThreadIdentityManager.unsetCaller();
+
+        //
+
+        log.info( "Reader without rights, twice" );
+
+        ThreadIdentityManager.setCaller( reader );
+
+        long misses = cache.getMissCount();
+        long hits   = cache.getHitCount();
+
+        checkReads( data, false, "without rights" );
+        checkEquals( cache.getMissCount() - misses, (long) data.length, "Wrong number of misses" );
+
+        checkReads( data, false, "without rights, again" );
+        checkEquals( cache.getMissCount() - misses, (long) data.length, "Cache not used" );
+        checkEquals( cache.getHitCount() - hits, (long) data.length, "Wrong number of hits" );
+
+        ThreadIdentityManager.unsetCaller();
+
+        //
+
+        log.info( "Granting read right" );
+
+        ThreadIdentityManager.setCaller( owner );
+        tx = theMeshBase.createTransactionNow();
+
+        reader.relateAndBless( AclbasedSubjectArea.MESHOBJECT_HASREADACCESSTO_PROTECTIONDOMAIN.getSource(), domain );
+
+        tx.commitTransaction();
+        ThreadIdentityManager.unsetCaller();
+
+        ThreadIdentityManager.setCaller( reader );
+        checkReads( data, true, "after granting" );
+        checkReads( data, true, "after granting, again" );
+        ThreadIdentityManager.unsetCaller();
+
+        //
+
+        log.info( "Taking read right away within a Transaction" );
+
+        ThreadIdentityManager.setCaller( owner );
+        tx = theMeshBase.createTransactionNow();
+
+        reader.unblessRelationship( AclbasedSubjectArea.MESHOBJECT_HASREADACCESSTO_PROTECTIONDOMAIN.getSource(), domain );
+
+        ThreadIdentityManager.setCaller( reader );
+        checkReads( data, false, "after revoking, before commit" );
+
+        ThreadIdentityManager.setCaller( owner );
+        tx.commitTransaction();
+        ThreadIdentityManager.unsetCaller();
+
+        //
+
+        log.info( "Removing some from the protection domain" );
+
+        ThreadIdentityManager.setCaller( owner );
+        tx = theMeshBase.createTransactionNow();
+
+        for( int i=0 ; i<data.length ; i += 2 ) {
+            domain.unrelate( data[i] );
+        }
+
+        tx.commitTransaction();
+        ThreadIdentityManager.unsetCaller();
+
+        ThreadIdentityManager.setCaller( reader );
+        for( int i=0 ; i<data.length ; ++i ) {
+            checkRead( data[i], i % 2 == 0, "after removal from protection domain: " + i );
+        }
+        ThreadIdentityManager.unsetCaller();
+
+        //
+
+        log.info( "Cache: " + cache + ", hit rate " + cache.getHitRate() );
+        checkCondition( cache.getInvalidationCount() > 0, "No invalidations" );
+    }
+
+    /**
+     * Try to read the property of all data MeshObjects, with the current caller.
+     *
+     * @param data the MeshObjects
+     * @param mayRead true if the caller should be permitted
+     * @param msg message to print when a check fails
+     * @throws IllegalPropertyTypeException thrown if the MeshObjects do not carry the PropertyType
+     */
+    protected void checkReads(
+            MeshObject [] data,
+            boolean       mayRead,
+            String        msg )
+        throws
+            IllegalPropertyTypeException
+    {
+        for( int i=0 ; i<data.length ; ++i ) {
+            checkRead( data[i], mayRead, msg + ": " + i );
+        }
+    }
+
+    /**
+     * Try to read the property of one data MeshObject, with the current caller.
+     *
+     * @param obj the MeshObject
+     * @param mayRead true if the caller should be permitted
+     * @param msg message to print when a check fails
+     * @throws IllegalPropertyTypeException thrown if the MeshObject does not carry the PropertyType
+     */
+    protected void checkRead(
+            MeshObject obj,
+            boolean    mayRead,
+            String     msg )
+        throws
+            IllegalPropertyTypeException
+    {
+        try {
+            obj.getPropertyValue( TestSubjectArea.A_X );
+            if( !mayRead ) {
+                reportError( "Could read " + msg );
+            }
+
+        } catch( NotPermittedException ex ) {
+            if( mayRead ) {
+                reportError( "Could not read " + msg, ex );
+            }
+        }
+    }
+
+    /**
+     * The number of data MeshObjects.
+     */
+    protected int theTestSize = 500;
+
+    // Our Logger
+    private static Log log = Log.getLogInstance( AclbasedSecurityTest6.class );
+}
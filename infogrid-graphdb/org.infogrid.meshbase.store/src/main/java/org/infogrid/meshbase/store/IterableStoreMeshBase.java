@@ -15,9 +15,12 @@
 package org.infogrid.meshbase.store;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import org.infogrid.mesh.MeshObject;
 import org.infogrid.mesh.MeshObjectIdentifier;
 import org.infogrid.mesh.a.DefaultAMeshObjectIdentifierFactory;
+import org.infogrid.mesh.set.MeshObjectSelector;
+import org.infogrid.mesh.set.MeshObjectSet;
 import org.infogrid.mesh.set.MeshObjectSetFactory;
 import org.infogrid.mesh.set.m.ImmutableMMeshObjectSetFactory;
 import org.infogrid.meshbase.DefaultMeshBaseIdentifierFactory;
@@ -27,6 +30,7 @@ import org.infogrid.meshbase.MeshBaseIdentifier;
 import org.infogrid.meshbase.MeshObjectIdentifierFactory;
 import org.infogrid.meshbase.a.AMeshBaseLifecycleManager;
 import org.infogrid.meshbase.security.AccessManager;
+import org.infogrid.meshbase.store.index.StoreMeshBaseIndexer;
 import org.infogrid.modelbase.ModelBase;
 import org.infogrid.modelbase.ModelBaseSingleton;
 import org.infogrid.modelbase.m.MModelBase;
@@ -269,6 +273,49 @@ public class IterableStoreMeshBase
         return size();
     }
 
+    /**
+     * Find all MeshObjects in this IterableStoreMeshBase that are accepted by a MeshObjectSelector,
+     * if none of the secondary indexes can be used. This iterates over all MeshObjects.
+     *
+     * @param selector the MeshObjectSelector
+     * @return the found MeshObjects
+     */
+    @Override
+    protected MeshObjectSet findMeshObjectsWithoutIndex(
+            MeshObjectSelector selector )
+    {
+        if( log.isDebugEnabled() ) {
+            log.debug( this + ": no index for " + selector + ", iterating over all MeshObjects" );
+        }
+
+        ArrayList<MeshObject> found = new ArrayList<>();
+        for( MeshObject current : this ) {
+            if( selector.accepts( current )) {
+                found.add( current );
+            }
+        }
+        return getMeshObjectSetFactory().createImmutableMeshObjectSet( found.toArray( new MeshObject[ found.size() ] ));
+    }
+
+    /**
+     * Discard the content of the secondary indexes maintained by the StoreMeshBaseIndexer,
+     * and index all MeshObjects in this IterableStoreMeshBase from scratch. This needs
+     * to be invoked when indexes are added to an existing IterableStoreMeshBase.
+     *
+     * @throws IllegalStateException thrown if no StoreMeshBaseIndexer has been set
+     * @throws IOException thrown if an I/O error occurred
+     */
+    public void rebuildIndexes()
+        throws
+            IOException
+    {
+        StoreMeshBaseIndexer indexer = theIndexer;
+        if( indexer == null ) {
+            throw new IllegalStateException( "No indexer set" );
+        }
+        indexer.rebuildIndexes( iterator() );
+    }
+
     /**
      * Factory method for a IterableMeshBaseDifferencer, with this IterableMeshBase
      * being the comparison base.
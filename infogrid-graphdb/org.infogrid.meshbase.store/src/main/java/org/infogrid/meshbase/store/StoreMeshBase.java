@@ -14,11 +14,16 @@
 
 package org.infogrid.meshbase.store;
 
+import java.io.IOException;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 import org.infogrid.mesh.MeshObject;
 import org.infogrid.mesh.MeshObjectIdentifier;
 import org.infogrid.mesh.a.DefaultAMeshObjectIdentifierFactory;
+import org.infogrid.mesh.set.MeshObjectSelector;
+import org.infogrid.mesh.set.MeshObjectSet;
 import org.infogrid.mesh.set.MeshObjectSetFactory;
 import org.infogrid.mesh.set.m.ImmutableMMeshObjectSetFactory;
 import org.infogrid.meshbase.DefaultMeshBaseIdentifierFactory;
@@ -27,6 +32,7 @@ import org.infogrid.meshbase.MeshObjectIdentifierFactory;
 import org.infogrid.meshbase.a.AMeshBase;
 import org.infogrid.meshbase.a.AMeshBaseLifecycleManager;
 import org.infogrid.meshbase.security.AccessManager;
+import org.infogrid.meshbase.store.index.StoreMeshBaseIndexer;
 import org.infogrid.meshbase.transaction.AbstractMeshObjectNeighborChangeEvent;
 import org.infogrid.meshbase.transaction.AbstractMeshObjectRoleChangeEvent;
 import org.infogrid.meshbase.transaction.AbstractMeshObjectTypeChangeEvent;
@@ -41,6 +47,8 @@ import org.infogrid.modelbase.ModelBaseSingleton;
 import org.infogrid.modelbase.m.MModelBase;
 import org.infogrid.store.Store;
 import org.infogrid.store.util.StoreBackedSwappingHashMap;
+import org.infogrid.store.writebehind.WriteBehindStore;
+import org.infogrid.util.ArrayHelper;
 import org.infogrid.util.context.Context;
 import org.infogrid.util.context.SimpleContext;
 import org.infogrid.util.logging.Log;
@@ -237,6 +245,159 @@ public class StoreMeshBase
         return (StoreBackedSwappingHashMap<MeshObjectIdentifier,MeshObject>) theCache;
     }
 
+    /**
+     * Set the StoreMeshBaseIndexer that maintains secondary indexes for this StoreMeshBase.
+     * If the indexes are new, they need to be built first, e.g. with
+     * {@link IterableStoreMeshBase#rebuildIndexes IterableStoreMeshBase.rebuildIndexes}.
+     *
+     * @param newValue the StoreMeshBaseIndexer, or null
+     */
+    public void setIndexer(
+            StoreMeshBaseIndexer newValue )
+    {
+        if( newValue != null ) {
+            newValue.setMeshBase( this );
+        }
+        theIndexer = newValue;
+    }
+
+    /**
+     * Obtain the StoreMeshBaseIndexer that maintains secondary indexes for this StoreMeshBase, if any.
+     *
+     * @return the StoreMeshBaseIndexer, or null
+     */
+    public StoreMeshBaseIndexer getIndexer()
+    {
+        return theIndexer;
+    }
+
+    /**
+     * Find all MeshObjects in this StoreMeshBase that are accepted by a MeshObjectSelector,
+     * using one of the secondary indexes maintained by the StoreMeshBaseIndexer. The
+     * ByTypeMeshObjectSelector, ByPropertyValueSelector and ByPropertyValueIntervalSelector
+     * can be answered by the indexes defined in package
+     * {@link org.infogrid.meshbase.store.index org.infogrid.meshbase.store.index}.
+     *
+     * @param selector the MeshObjectSelector
+     * @return the found MeshObjects
+     * @throws IllegalArgumentException thrown if no index can be used for the MeshObjectSelector, and this StoreMeshBase cannot be iterated over
+     */
+    public MeshObjectSet findMeshObjects(
+            MeshObjectSelector selector )
+    {
+        StoreMeshBaseIndexer    indexer    = theIndexer;
+        MeshObjectIdentifier [] candidates = null;
+
+        if( indexer != null ) {
+            try {
+                candidates = indexer.findCandidateIdentifiers( selector );
+
+            } catch( IOException ex ) {
+                log.error( ex );
+            }
+        }
+        if( candidates == null ) {
+            return findMeshObjectsWithoutIndex( selector );
+        }
+
+        MeshObject [] found = findMeshObjectsByIdentifier( candidates );
+        int           count = 0;
+        for( int i=0 ; i<found.length ; ++i ) {
+            if( found[i] != null && selector.accepts( found[i] )) {
+                found[count++] = found[i];
+            }
+        }
+        if( count < found.length ) {
+            found = ArrayHelper.copyIntoNewArray( found, 0, count, MeshObject.class );
+        }
+        return getMeshObjectSetFactory().createImmutableMeshObjectSet( found );
+    }
+
+    /**
+     * Find all MeshObjects in this StoreMeshBase that are accepted by a MeshObjectSelector,
+     * if none of the secondary indexes can be used. This may be overridden by subclasses.
+     *
+     * @param selector the MeshObjectSelector
+     * @return the found MeshObjects
+     * @throws IllegalArgumentException always thrown, as a StoreMeshBase cannot be iterated over
+     */
+    protected MeshObjectSet findMeshObjectsWithoutIndex(
+            MeshObjectSelector selector )
+    {
+        throw new IllegalArgumentException( "No index can be used for " + selector );
+    }
+
+    /**
+     * If this StoreMeshBase, or its StoreMeshBaseIndexer, writes to a
+     * {@link WriteBehindStore}, write all changes of the Transactions committed so far
+     * to the underlying Store, and wait until that is done. Otherwise, the changes
+     * have been written already when the Transaction committed, and this does nothing.
+     *
+     * @throws IOException thrown if the changes could not be written
+     */
+    public void flush()
+        throws
+            IOException
+    {
+        for( Store current : getStores() ) {
+            if( current instanceof WriteBehindStore ) {
+                ((WriteBehindStore)current).flush();
+            }
+        }
+    }
+
+    /**
+     * If this StoreMeshBase, or its StoreMeshBaseIndexer, writes to a
+     * {@link WriteBehindStore}, wait until all changes of the Transactions committed so far
+     * have been written to the underlying Store, without causing them to be written
+     * earlier. Otherwise, this does nothing.
+     *
+     * @throws IOException thrown if the changes could not be written
+     */
+    public void awaitDurable()
+        throws
+            IOException
+    {
+        for( Store current : getStores() ) {
+            if( current instanceof WriteBehindStore ) {
+                ((WriteBehindStore)current).awaitDurable();
+            }
+        }
+    }
+
+    /**
+     * Determine the Stores that this StoreMeshBase writes to.
+     *
+     * @return the Stores
+     */
+    protected Store [] getStores()
+    {
+        StoreMeshBaseIndexer indexer = theIndexer;
+        if( indexer != null ) {
+            return new Store[] { getCachingMap().getStore(), indexer.getIndexStore() };
+        } else {
+            return new Store[] { getCachingMap().getStore() };
+        }
+    }
+
+    /**
+     * Write all queued changes before this StoreMeshBase goes away.
+     *
+     * @param isPermanent if true, this MeshBase will go away permanmently; if false, it may come alive again some time later
+     */
+    @Override
+    protected void internalDie(
+            boolean isPermanent )
+    {
+        try {
+            flush();
+
+        } catch( IOException ex ) {
+            log.error( ex );
+        }
+        super.internalDie( isPermanent );
+    }
+
     /**
      * Update the cache when Transactions are committed.
      *
@@ -251,14 +412,37 @@ public class StoreMeshBase
         Map<MeshObjectIdentifier,MeshObject>                          toWrite = determineObjectsToWriteFromTransaction( tx );
         StoreMeshBaseSwappingHashMap<MeshObjectIdentifier,MeshObject> map     = (StoreMeshBaseSwappingHashMap<MeshObjectIdentifier,MeshObject>) theCache;
 
-        for( Map.Entry<MeshObjectIdentifier,MeshObject> current : toWrite.entrySet() ) {
-            if( current.getValue() != null ) {
-                map.saveValueToStorageUponCommit( current.getKey(), current.getValue() );
-            } else {
-                map.removeValueFromStorageUponCommit( current.getKey() );
+        StoreMeshBaseIndexer indexer = theIndexer;
+        if( indexer == null ) {
+            map.writeToStorageUponCommit( toWrite );
+
+        } else {
+            synchronized( indexer ) { // additions to the indexes before the MeshObjects, removals after
+                StoreMeshBaseIndexer.IndexUpdate update = null;
+                try {
+                    update = indexer.prepareIndexUpdate( toWrite );
+
+                } catch( IOException ex ) {
+                    log.error( ex );
+                }
+
+                map.writeToStorageUponCommit( toWrite );
+
+                if( update != null ) {
+                    try {
+                        indexer.completeIndexUpdate( update );
+
+                    } catch( IOException ex ) {
+                        log.error( ex );
+                    }
+                }
             }
         }
-        map.transactionDone();
+        if( getMeshObjectLockManager() != null ) {
+            map.transactionDone( toWrite.keySet() ); // other Transactions may still be active
+        } else {
+            map.transactionDone();
+        }
     }
 
     /**
@@ -275,7 +459,29 @@ public class StoreMeshBase
 
         StoreMeshBaseSwappingHashMap<MeshObjectIdentifier,MeshObject> map     = (StoreMeshBaseSwappingHashMap<MeshObjectIdentifier,MeshObject>) theCache;
 
-        map.transactionUndone();
+        if( getMeshObjectLockManager() != null ) {
+            map.transactionUndone( determineAffectedIdentifiers( tx )); // other Transactions may still be active
+        } else {
+            map.transactionUndone();
+        }
+    }
+
+    /**
+     * Determine the identifiers of the MeshObjects affected by the changes made during a Transaction.
+     *
+     * @param tx the Transaction
+     * @return the identifiers of the affected MeshObjects
+     */
+    protected static Set<MeshObjectIdentifier> determineAffectedIdentifiers(
+            Transaction tx )
+    {
+        Change [] theChanges = tx.getChangeSet().getChanges();
+
+        HashSet<MeshObjectIdentifier> ret = new HashSet<>( theChanges.length );
+        for( Change current : theChanges ) {
+            ret.add( current.getAffectedMeshObjectIdentifier() );
+        }
+        return ret;
     }
 
     /**
@@ -337,4 +543,9 @@ public class StoreMeshBase
         }
         return ret;
     }
+
+    /**
+     * The StoreMeshBaseIndexer that maintains secondary indexes for this StoreMeshBase, if any.
+     */
+    protected volatile StoreMeshBaseIndexer theIndexer;
 }
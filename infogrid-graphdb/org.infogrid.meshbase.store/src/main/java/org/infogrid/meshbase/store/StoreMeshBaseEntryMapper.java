@@ -15,7 +15,9 @@
 package org.infogrid.meshbase.store;
 
 import org.infogrid.mesh.externalized.ExternalizedMeshObjectEncoder;
+import org.infogrid.mesh.externalized.binary.ExternalizedMeshObjectBinaryEncoder;
 import org.infogrid.mesh.externalized.xml.ExternalizedMeshObjectXmlEncoder;
+import org.infogrid.util.ResourceHelper;
 
 /**
  * Helps to map MeshObjects in and out from and to Stores.
@@ -26,11 +28,27 @@ public class StoreMeshBaseEntryMapper
 {
 
     /**
-     * Constructor.
+     * Constructor, using the default preferred encoding.
      */
     public StoreMeshBaseEntryMapper()
     {
-        // noop
+        this( PREFERRED_ENCODING.getEncodingId() );
+    }
+
+    /**
+     * Constructor with an explicitly selected preferred encoding. MeshObjects are always
+     * written with the preferred encoding, but may be read in any of the known encodings.
+     *
+     * @param preferredEncodingId the encodingId of the encoding to use when writing
+     * @throws IllegalArgumentException thrown if no encoder is known with this encodingId
+     */
+    public StoreMeshBaseEntryMapper(
+            String preferredEncodingId )
+    {
+        thePreferredEncoding = getEncoderFor( preferredEncodingId );
+        if( thePreferredEncoding == null ) {
+            throw new IllegalArgumentException( "Unknown encoding ID: " + preferredEncodingId );
+        }
     }
 
     /**
@@ -40,7 +58,7 @@ public class StoreMeshBaseEntryMapper
      */
     public String getPreferredEncodingId()
     {
-        return PREFERRED_ENCODING.getEncodingId();
+        return thePreferredEncoding.getEncodingId();
     }
 
     /**
@@ -64,11 +82,36 @@ public class StoreMeshBaseEntryMapper
      * The set of encoders / decoders currently known.
      */
     protected static final ExternalizedMeshObjectEncoder[] theEncoders = {
-            new ExternalizedMeshObjectXmlEncoder()
+            new ExternalizedMeshObjectXmlEncoder(),
+            new ExternalizedMeshObjectBinaryEncoder()
     };
 
     /**
-     * Preferred encoding type.
+     * Our ResourceHelper.
+     */
+    private static final ResourceHelper theResourceHelper = ResourceHelper.getInstance( StoreMeshBaseEntryMapper.class );
+
+    /**
+     * Default preferred encoding type. This can be changed to the more compact and faster
+     * binary encoding by setting the PreferredEncodingId resource; existing data in either
+     * encoding can still be read.
+     */
+    protected static final ExternalizedMeshObjectEncoder PREFERRED_ENCODING;
+    static {
+        String                        preferredId = theResourceHelper.getResourceStringOrDefault( "PreferredEncodingId", theEncoders[0].getEncodingId() );
+        ExternalizedMeshObjectEncoder preferred   = theEncoders[0];
+
+        for( ExternalizedMeshObjectEncoder current : theEncoders ) {
+            if( preferredId.equals( current.getEncodingId() )) {
+                preferred = current;
+                break;
+            }
+        }
+        PREFERRED_ENCODING = preferred;
+    }
+
+    /**
+     * The preferred encoding of this instance.
      */
-    protected static final ExternalizedMeshObjectEncoder PREFERRED_ENCODING = theEncoders[0];
+    protected final ExternalizedMeshObjectEncoder thePreferredEncoding;
 }
@@ -14,13 +14,21 @@
 
 package org.infogrid.meshbase.store;
 
+import java.io.IOException;
 import java.lang.ref.Reference;
-import java.util.HashSet;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import org.infogrid.store.IterableStore;
 import org.infogrid.store.IterableStoreCursor;
 import org.infogrid.store.Store;
 import org.infogrid.store.StoreEntryMapper;
+import org.infogrid.store.StoreValue;
+import org.infogrid.store.StoreValueEncodingException;
 import org.infogrid.store.util.IterableStoreBackedSwappingHashMap;
 import org.infogrid.store.util.StoreBackedSwappingHashMap;
 import org.infogrid.store.util.StoreBackedSwappingHashMapKeysIterator;
@@ -152,6 +160,56 @@ public class StoreMeshBaseSwappingHashMap<K,V>
         theRemoved.remove( key );
     }
 
+    /**
+     * Save and remove a number of values to and from storage in one batch. Invoked by Transaction commit.
+     * If the underlying Store supports it, this is performed atomically.
+     *
+     * @param toWrite maps the keys whose values were updated to the new values, and
+     *        the keys whose values have been removed to null
+     */
+    public void writeToStorageUponCommit(
+            Map<K,V> toWrite )
+    {
+        if( log.isTraceEnabled() ) {
+            log.traceMethodCallEntry( this, "writeToStorageUponCommit", toWrite );
+        }
+
+        List<StoreValue> toSave   = new ArrayList<>( toWrite.size() );
+        List<String>     toRemove = new ArrayList<>();
+
+        for( Map.Entry<K,V> current : toWrite.entrySet() ) {
+            K key   = current.getKey();
+            V value = current.getValue();
+
+            if( value != null ) {
+                try {
+                    toSave.add( new StoreValue(
+                            theMapper.keyToString( key ),
+                            theMapper.getPreferredEncodingId(),
+                            theMapper.getTimeCreated( value ),
+                            theMapper.getTimeUpdated( value ),
+                            theMapper.getTimeRead( value ),
+                            theMapper.getTimeExpires( value ),
+                            theMapper.asBytes( value )));
+
+                } catch( StoreValueEncodingException ex ) {
+                    log.error( ex );
+                }
+            } else {
+                toRemove.add( theMapper.keyToString( key ));
+            }
+        }
+
+        try {
+            theStore.putOrUpdateAndDeleteAll( toSave, toRemove );
+
+        } catch( IOException ex ) {
+            log.error( ex );
+        }
+
+        theRemoved.removeAll( toWrite.keySet() );
+    }
+
     /**
      * Returns a set view of the keys contained in this map.
      *
@@ -223,6 +281,30 @@ public class StoreMeshBaseSwappingHashMap<K,V>
         theRemoved.clear();
     }
 
+    /**
+     * One of several concurrent transactions is done. Forget about the keys it affected,
+     * but leave the keys of the other transactions alone.
+     *
+     * @param keys the keys affected by the transaction
+     */
+    public void transactionDone(
+            Collection<K> keys )
+    {
+        theRemoved.removeAll( keys );
+    }
+
+    /**
+     * One of several concurrent transactions has been undone. Forget about the keys it affected,
+     * but leave the keys of the other transactions alone.
+     *
+     * @param keys the keys affected by the transaction
+     */
+    public void transactionUndone(
+            Collection<K> keys )
+    {
+        theRemoved.removeAll( keys );
+    }
+
     /**
      * Set of keys in this IterableStoreBackedSwappingHashMap.
      */
@@ -230,7 +312,8 @@ public class StoreMeshBaseSwappingHashMap<K,V>
 
     /**
      * Keep track of MeshObjects that were removed during a Transaction, to avoid recreating them from the storage
-     * although they were deleted during a transaction.
+     * although they were deleted during a transaction. This is consulted by loads from storage,
+     * which may run concurrently.
      */
-    protected HashSet<Object> theRemoved = new HashSet<Object>();
+    protected Set<Object> theRemoved = Collections.newSetFromMap( new ConcurrentHashMap<Object,Boolean>() );
 }
@@ -0,0 +1,222 @@
+//
+// This file is part of InfoGrid(tm). You may not use this file except in
+// compliance with the InfoGrid license. The InfoGrid license and important
+// disclaimers are contained in the file LICENSE.InfoGrid.txt that you should
+// have received with InfoGrid. If you have not received LICENSE.InfoGrid.txt
+// or you do not consent to all aspects of the license and the disclaimers,
+// no license is granted; do not use this file.
+//
+// For more information about InfoGrid go to http://infogrid.org/
+//
+// Copyright 1998-2015 by Johannes Ernst
+// All rights reserved.
+//
+
+package org.infogrid.meshbase.store.index;
+
+import java.util.NavigableSet;
+import org.infogrid.mesh.IllegalPropertyTypeException;
+import org.infogrid.mesh.MeshObject;
+import org.infogrid.mesh.NotPermittedException;
+import org.infogrid.mesh.set.ByPropertyValueIntervalSelector;
+import org.infogrid.mesh.set.ByPropertyValueSelector;
+import org.infogrid.mesh.set.MeshObjectSelector;
+import org.infogrid.model.primitives.AttributableMeshType;
+import org.infogrid.model.primitives.EntityType;
+import org.infogrid.model.primitives.PropertyType;
+import org.infogrid.model.primitives.PropertyValue;
+import org.infogrid.util.logging.Log;
+
+/**
+ * Indexes MeshObjects by the value of a PropertyType. MeshObjects whose value is null
+ * are not indexed. An unordered index can answer ByPropertyValueSelectors that compare
+ * for equality; an ordered index can also answer ByPropertyValueSelectors that compare
+ * for greater or smaller, and ByPropertyValueIntervalSelectors.
+ */
+public class ByPropertyValueStoreMeshBaseIndex
+        extends
+            StoreMeshBaseIndex
+{
+    private static final Log log = Log.getLogInstance( ByPropertyValueStoreMeshBaseIndex.class ); // our own, private logger
+
+    /**
+     * Factory method for an unordered index.
+     *
+     * @param propertyType the PropertyType
+     * @return the created ByPropertyValueStoreMeshBaseIndex
+     */
+    public static ByPropertyValueStoreMeshBaseIndex create(
+            PropertyType propertyType )
+    {
+        return create( propertyType, false );
+    }
+
+    /**
+     * Factory method.
+     *
+     * @param propertyType the PropertyType
+     * @param ordered if true, the index can answer range queries
+     * @return the created ByPropertyValueStoreMeshBaseIndex
+     */
+    public static ByPropertyValueStoreMeshBaseIndex create(
+            PropertyType propertyType,
+            boolean      ordered )
+    {
+        return new ByPropertyValueStoreMeshBaseIndex( "property:" + propertyType.getIdentifier().toExternalForm(), propertyType, ordered );
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param name the name of the index
+     * @param propertyType the PropertyType
+     * @param ordered if true, the index can answer range queries
+     */
+    protected ByPropertyValueStoreMeshBaseIndex(
+            String       name,
+            PropertyType propertyType,
+            boolean      ordered )
+    {
+        super( name );
+
+        thePropertyType = propertyType;
+        theOrdered      = ordered;
+    }
+
+    /**
+     * Obtain the PropertyType whose values are indexed.
+     *
+     * @return the PropertyType
+     */
+    public PropertyType getPropertyType()
+    {
+        return thePropertyType;
+    }
+
+    /**
+     * Determine whether this index covers the passed-in MeshObject.
+     *
+     * @param candidate the MeshObject
+     * @return true if the MeshObject is covered by this index
+     */
+    public boolean isIndexed(
+            MeshObject candidate )
+    {
+        AttributableMeshType amt = thePropertyType.getAttributableMeshType();
+
+        if( !( amt instanceof EntityType ) || !candidate.isBlessedBy( (EntityType) amt )) {
+            return false;
+        }
+        return determineIndexedValue( candidate ) != null;
+    }
+
+    /**
+     * Determine the value under which a covered MeshObject is indexed.
+     *
+     * @param candidate the MeshObject, which must be covered by this index
+     * @return the indexed value, which may be null
+     */
+    public PropertyValue determineIndexedValue(
+            MeshObject candidate )
+    {
+        try {
+            return candidate.getPropertyValue( thePropertyType );
+
+        } catch( IllegalPropertyTypeException ex ) {
+            log.error( ex );
+        } catch( NotPermittedException ex ) {
+            log.error( ex );
+        }
+        return null;
+    }
+
+    /**
+     * Determine the indexed values under which all MeshObjects are indexed that may be
+     * accepted by the passed-in MeshObjectSelector.
+     *
+     * @param selector the MeshObjectSelector
+     * @param knownValues the indexed values currently in use, or null if this is not an ordered index
+     * @return the indexed values, or null if this index cannot be used for the MeshObjectSelector
+     */
+    public PropertyValue [] determineIndexedValues(
+            MeshObjectSelector          selector,
+            NavigableSet<PropertyValue> knownValues )
+    {
+        NavigableSet<PropertyValue> found;
+
+        if( selector instanceof ByPropertyValueSelector ) {
+            ByPropertyValueSelector realSelector = (ByPropertyValueSelector) selector;
+            if( !thePropertyType.equals( realSelector.getPropertyType() )) {
+                return null;
+            }
+            PropertyValue value = realSelector.getComparisonValue();
+
+            switch( realSelector.getOperator() ) {
+                case EQUAL:
+                    if( value == null ) {
+                        return null; // null values are not indexed
+                    }
+                    return new PropertyValue[] { value };
+
+                case GREATER:
+                case GREATER_OR_EQUALS:
+                    if( knownValues == null || value == null ) {
+                        return null;
+                    }
+                    found = knownValues.tailSet( value, true ); // the selector sorts out the equal ones
+                    break;
+
+                case SMALLER:
+                case SMALLER_OR_EQUALS:
+                    if( knownValues == null || value == null ) {
+                        return null;
+                    }
+                    found = knownValues.headSet( value, true );
+                    break;
+
+                default:
+                    return null;
+            }
+
+        } else if( selector instanceof ByPropertyValueIntervalSelector ) {
+            ByPropertyValueIntervalSelector realSelector = (ByPropertyValueIntervalSelector) selector;
+            if( knownValues == null || !thePropertyType.equals( realSelector.getPropertyType() )) {
+                return null;
+            }
+            PropertyValue lower = realSelector.getLowerValue();
+            PropertyValue upper = realSelector.getUpperValue();
+
+            if( PropertyValue.compare( lower, upper ) > 0 ) {
+                return new PropertyValue[0];
+            }
+            found = knownValues.subSet( lower, realSelector.getLowerMayEqual(), upper, realSelector.getUpperMayEqual() );
+
+        } else {
+            return null;
+        }
+
+        return found.toArray( new PropertyValue[ found.size() ] );
+    }
+
+    /**
+     * Determine whether this index keeps track of its indexed values in order, so it
+     * can answer range queries.
+     *
+     * @return true if this index is ordered
+     */
+    @Override
+    public boolean isOrdered()
+    {
+        return theOrdered;
+    }
+
+    /**
+     * The PropertyType whose values are indexed.
+     */
+    protected final PropertyType thePropertyType;
+
+    /**
+     * If true, the index can answer range queries.
+     */
+    protected final boolean theOrdered;
+}
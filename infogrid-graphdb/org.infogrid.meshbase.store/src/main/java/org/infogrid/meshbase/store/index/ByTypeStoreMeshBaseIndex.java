@@ -0,0 +1,121 @@
+//
+// This file is part of InfoGrid(tm). You may not use this file except in
+// compliance with the InfoGrid license. The InfoGrid license and important
+// disclaimers are contained in the file LICENSE.InfoGrid.txt that you should
+// have received with InfoGrid. If you have not received LICENSE.InfoGrid.txt
+// or you do not consent to all aspects of the license and the disclaimers,
+// no license is granted; do not use this file.
+//
+// For more information about InfoGrid go to http://infogrid.org/
+//
+// Copyright 1998-2015 by Johannes Ernst
+// All rights reserved.
+//
+
+package org.infogrid.meshbase.store.index;
+
+import java.util.NavigableSet;
+import org.infogrid.mesh.MeshObject;
+import org.infogrid.mesh.set.ByTypeMeshObjectSelector;
+import org.infogrid.mesh.set.MeshObjectSelector;
+import org.infogrid.model.primitives.EntityType;
+import org.infogrid.model.primitives.PropertyValue;
+
+/**
+ * Indexes all MeshObjects blessed with an EntityType, or one of its subtypes.
+ * It can answer ByTypeMeshObjectSelectors for this EntityType and its subtypes.
+ */
+public class ByTypeStoreMeshBaseIndex
+        extends
+            StoreMeshBaseIndex
+{
+    /**
+     * Factory method.
+     *
+     * @param type the EntityType
+     * @return the created ByTypeStoreMeshBaseIndex
+     */
+    public static ByTypeStoreMeshBaseIndex create(
+            EntityType type )
+    {
+        return new ByTypeStoreMeshBaseIndex( "type:" + type.getIdentifier().toExternalForm(), type );
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param name the name of the index
+     * @param type the EntityType
+     */
+    protected ByTypeStoreMeshBaseIndex(
+            String     name,
+            EntityType type )
+    {
+        super( name );
+
+        theType = type;
+    }
+
+    /**
+     * Obtain the EntityType whose instances are indexed.
+     *
+     * @return the EntityType
+     */
+    public EntityType getType()
+    {
+        return theType;
+    }
+
+    /**
+     * Determine whether this index covers the passed-in MeshObject.
+     *
+     * @param candidate the MeshObject
+     * @return true if the MeshObject is covered by this index
+     */
+    public boolean isIndexed(
+            MeshObject candidate )
+    {
+        return candidate.isBlessedBy( theType );
+    }
+
+    /**
+     * Determine the value under which a covered MeshObject is indexed. All
+     * MeshObjects are indexed under the same value.
+     *
+     * @param candidate the MeshObject, which must be covered by this index
+     * @return the indexed value, which may be null
+     */
+    public PropertyValue determineIndexedValue(
+            MeshObject candidate )
+    {
+        return null;
+    }
+
+    /**
+     * Determine the indexed values under which all MeshObjects are indexed that may be
+     * accepted by the passed-in MeshObjectSelector.
+     *
+     * @param selector the MeshObjectSelector
+     * @param knownValues the indexed values currently in use, or null if this is not an ordered index
+     * @return the indexed values, or null if this index cannot be used for the MeshObjectSelector
+     */
+    public PropertyValue [] determineIndexedValues(
+            MeshObjectSelector          selector,
+            NavigableSet<PropertyValue> knownValues )
+    {
+        if( !( selector instanceof ByTypeMeshObjectSelector )) {
+            return null;
+        }
+        EntityType filterType = ((ByTypeMeshObjectSelector)selector).getFilterType();
+
+        if( !filterType.isSubtypeOfOrEquals( theType )) {
+            return null;
+        }
+        return new PropertyValue[] { null };
+    }
+
+    /**
+     * The EntityType whose instances are indexed.
+     */
+    protected final EntityType theType;
+}
@@ -0,0 +1,108 @@
+//
+// This file is part of InfoGrid(tm). You may not use this file except in
+// compliance with the InfoGrid license. The InfoGrid license and important
+// disclaimers are contained in the file LICENSE.InfoGrid.txt that you should
+// have received with InfoGrid. If you have not received LICENSE.InfoGrid.txt
+// or you do not consent to all aspects of the license and the disclaimers,
+// no license is granted; do not use this file.
+//
+// For more information about InfoGrid go to http://infogrid.org/
+//
+// Copyright 1998-2015 by Johannes Ernst
+// All rights reserved.
+//
+
+package org.infogrid.meshbase.store.index;
+
+import java.util.NavigableSet;
+import org.infogrid.mesh.MeshObject;
+import org.infogrid.mesh.set.MeshObjectSelector;
+import org.infogrid.model.primitives.PropertyValue;
+
+/**
+ * Declares a secondary index maintained by a StoreMeshBaseIndexer. An index assigns
+ * each MeshObject that it covers an indexed value, and knows which indexed values
+ * contain the candidates for the MeshObjects accepted by a MeshObjectSelector.
+ */
+public abstract class StoreMeshBaseIndex
+{
+    /**
+     * Constructor for subclasses only.
+     *
+     * @param name the name of the index, unique within its StoreMeshBaseIndexer
+     */
+    protected StoreMeshBaseIndex(
+            String name )
+    {
+        theName = name;
+    }
+
+    /**
+     * Obtain the name of this index.
+     *
+     * @return the name
+     */
+    public final String getName()
+    {
+        return theName;
+    }
+
+    /**
+     * Determine whether this index covers the passed-in MeshObject.
+     *
+     * @param candidate the MeshObject
+     * @return true if the MeshObject is covered by this index
+     */
+    public abstract boolean isIndexed(
+            MeshObject candidate );
+
+    /**
+     * Determine the value under which a covered MeshObject is indexed.
+     *
+     * @param candidate the MeshObject, which must be covered by this index
+     * @return the indexed value, which may be null
+     * @see #isIndexed
+     */
+    public abstract PropertyValue determineIndexedValue(
+            MeshObject candidate );
+
+    /**
+     * Determine the indexed values under which all MeshObjects are indexed that may be
+     * accepted by the passed-in MeshObjectSelector. The result may contain more
+     * MeshObjects than the MeshObjectSelector accepts, but never fewer.
+     *
+     * @param selector the MeshObjectSelector
+     * @param knownValues the indexed values currently in use, or null if this is not an ordered index
+     * @return the indexed values, or null if this index cannot be used for the MeshObjectSelector
+     */
+    public abstract PropertyValue [] determineIndexedValues(
+            MeshObjectSelector          selector,
+            NavigableSet<PropertyValue> knownValues );
+
+    /**
+     * Determine whether this index keeps track of its indexed values in order, so it
+     * can answer range queries.
+     *
+     * @return true if this index is ordered
+     */
+    public boolean isOrdered()
+    {
+        return false;
+    }
+
+    /**
+     * Convert to String representation, for debugging.
+     *
+     * @return String representation
+     */
+    @Override
+    public String toString()
+    {
+        return super.toString() + "{ name: " + theName + " }";
+    }
+
+    /**
+     * The name of the index.
+     */
+    protected final String theName;
+}
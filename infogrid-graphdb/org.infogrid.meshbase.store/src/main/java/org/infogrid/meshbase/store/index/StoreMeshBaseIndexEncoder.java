@@ -0,0 +1,539 @@
+//
+// This file is part of InfoGrid(tm). You may not use this file except in
+// compliance with the InfoGrid license. The InfoGrid license and important
+// disclaimers are contained in the file LICENSE.InfoGrid.txt that you should
+// have received with InfoGrid. If you have not received LICENSE.InfoGrid.txt
+// or you do not consent to all aspects of the license and the disclaimers,
+// no license is granted; do not use this file.
+//
+// For more information about InfoGrid go to http://infogrid.org/
+//
+// Copyright 1998-2015 by Johannes Ernst
+// All rights reserved.
+//
+
+package org.infogrid.meshbase.store.index;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.infogrid.model.primitives.PropertyValue;
+import org.infogrid.model.primitives.externalized.DecodingException;
+import org.infogrid.model.primitives.externalized.EncodingException;
+import org.infogrid.model.primitives.externalized.binary.PropertyValueBinaryEncoder;
+
+/**
+ * Encodes and decodes the entries that a StoreMeshBaseIndexer keeps in its Store:
+ * the header entries and pages of posting lists, the per-MeshObject lists of posting
+ * lists that contain the MeshObject, and the header entries and pages of the indexed
+ * values of ordered indexes. All use the binary encoding of PropertyValueBinaryEncoder.
+ */
+public class StoreMeshBaseIndexEncoder
+        extends
+            PropertyValueBinaryEncoder
+{
+    /**
+     * Constructor.
+     */
+    public StoreMeshBaseIndexEncoder()
+    {
+        // no op
+    }
+
+    /**
+     * Determine the key of the posting list for an indexed value in an index. The value
+     * is hashed, so the key is short enough for any Store, regardless of the value.
+     *
+     * @param index the index
+     * @param value the indexed value, may be null
+     * @return the key
+     * @throws EncodingException thrown if the value could not be encoded
+     */
+    public String postingsKey(
+            StoreMeshBaseIndex index,
+            PropertyValue      value )
+        throws
+            EncodingException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            writePropertyValue( value, new DataOutputStream( out ));
+
+        } catch( IOException ex ) {
+            throw new EncodingException( ex ); // cannot happen with a ByteArrayOutputStream
+        }
+
+        byte [] hash;
+        try {
+            hash = MessageDigest.getInstance( DIGEST_ALGORITHM ).digest( out.toByteArray() );
+
+        } catch( NoSuchAlgorithmException ex ) {
+            throw new EncodingException( ex ); // every JVM has it
+        }
+
+        StringBuilder ret = new StringBuilder( index.getName().length() + 1 + 2*hash.length );
+        ret.append( index.getName() );
+        ret.append( SEPARATOR );
+        for( byte b : hash ) {
+            ret.append( HEX_DIGITS[ ( b >> 4 ) & 0x0f ] );
+            ret.append( HEX_DIGITS[ b & 0x0f ] );
+        }
+        return ret.toString();
+    }
+
+    /**
+     * Determine the name of the index from the key of one of its posting lists.
+     *
+     * @param postingsKey the key of the posting list
+     * @return the name of the index
+     */
+    public String indexNameFromPostingsKey(
+            String postingsKey )
+    {
+        return postingsKey.substring( 0, postingsKey.lastIndexOf( SEPARATOR ));
+    }
+
+    /**
+     * Determine the key of a page of a posting list, or of the indexed values of an ordered index.
+     *
+     * @param key the key of the header entry of the posting list, or of the indexed values
+     * @param page the number of the page
+     * @return the key of the page
+     */
+    public String pageKey(
+            String key,
+            int    page )
+    {
+        return key + PAGE_SEPARATOR + page;
+    }
+
+    /**
+     * Encode the header entry of a posting list.
+     *
+     * @param value the indexed value, may be null
+     * @param pages the numbers of the pages of the posting list, in sequence
+     * @return the encoded header entry
+     * @throws EncodingException thrown if the header entry could not be encoded
+     */
+    public byte [] encodePostings(
+            PropertyValue       value,
+            Collection<Integer> pages )
+        throws
+            EncodingException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            DataOutputStream dataOut = new DataOutputStream( out );
+
+            writeHeader( POSTINGS_MARKER, dataOut );
+            writePropertyValue( value, dataOut );
+            writeInts( pages, dataOut );
+            dataOut.flush();
+
+        } catch( IOException ex ) {
+            throw new EncodingException( ex ); // cannot happen with a ByteArrayOutputStream
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Decode the indexed value from the header entry of a posting list.
+     *
+     * @param data the encoded header entry
+     * @return the indexed value, may be null
+     * @throws DecodingException thrown if the header entry could not be decoded
+     */
+    public PropertyValue decodePostingsValue(
+            byte [] data )
+        throws
+            DecodingException
+    {
+        try {
+            DataInputStream in = new DataInputStream( new ByteArrayInputStream( data ));
+
+            readHeader( POSTINGS_MARKER, in );
+            return readPropertyValue( in );
+
+        } catch( IOException ex ) {
+            throw new DecodingException( ex ); // premature end of data
+        }
+    }
+
+    /**
+     * Decode the numbers of the pages from the header entry of a posting list.
+     *
+     * @param data the encoded header entry
+     * @return the numbers of the pages, in sequence
+     * @throws DecodingException thrown if the header entry could not be decoded
+     */
+    public List<Integer> decodePostingsPages(
+            byte [] data )
+        throws
+            DecodingException
+    {
+        try {
+            DataInputStream in = new DataInputStream( new ByteArrayInputStream( data ));
+
+            readHeader( POSTINGS_MARKER, in );
+            readPropertyValue( in );
+            return readInts( in );
+
+        } catch( IOException ex ) {
+            throw new DecodingException( ex ); // premature end of data
+        }
+    }
+
+    /**
+     * Encode a page of a posting list.
+     *
+     * @param identifiers the external forms of the MeshObjectIdentifiers on the page
+     * @return the encoded page
+     * @throws EncodingException thrown if the page could not be encoded
+     */
+    public byte [] encodePostingsPage(
+            Collection<String> identifiers )
+        throws
+            EncodingException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            DataOutputStream dataOut = new DataOutputStream( out );
+
+            writeHeader( POSTINGS_PAGE_MARKER, dataOut );
+            writeStrings( identifiers, dataOut );
+            dataOut.flush();
+
+        } catch( IOException ex ) {
+            throw new EncodingException( ex ); // cannot happen with a ByteArrayOutputStream
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Decode a page of a posting list.
+     *
+     * @param data the encoded page
+     * @return the external forms of the MeshObjectIdentifiers on the page
+     * @throws DecodingException thrown if the page could not be decoded
+     */
+    public List<String> decodePostingsPage(
+            byte [] data )
+        throws
+            DecodingException
+    {
+        try {
+            DataInputStream in = new DataInputStream( new ByteArrayInputStream( data ));
+
+            readHeader( POSTINGS_PAGE_MARKER, in );
+            return readStrings( in );
+
+        } catch( IOException ex ) {
+            throw new DecodingException( ex ); // premature end of data
+        }
+    }
+
+    /**
+     * Encode the keys of the posting lists that contain a MeshObject, together with
+     * the numbers of the pages on which the MeshObject can be found.
+     *
+     * @param postingsKeys maps the keys of the posting lists to the numbers of the pages
+     * @return the encoded keys
+     * @throws EncodingException thrown if the keys could not be encoded
+     */
+    public byte [] encodePostingsKeys(
+            Map<String,Integer> postingsKeys )
+        throws
+            EncodingException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            DataOutputStream dataOut = new DataOutputStream( out );
+
+            writeHeader( POSTINGS_KEYS_MARKER, dataOut );
+            writeVarLong( postingsKeys.size(), dataOut );
+            for( Map.Entry<String,Integer> current : postingsKeys.entrySet() ) {
+                writeString( current.getKey(), dataOut );
+                writeVarLong( current.getValue(), dataOut );
+            }
+            dataOut.flush();
+
+        } catch( IOException ex ) {
+            throw new EncodingException( ex ); // cannot happen with a ByteArrayOutputStream
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Decode the keys of the posting lists that contain a MeshObject, together with
+     * the numbers of the pages on which the MeshObject can be found.
+     *
+     * @param data the encoded keys
+     * @return maps the keys of the posting lists to the numbers of the pages
+     * @throws DecodingException thrown if the keys could not be decoded
+     */
+    public LinkedHashMap<String,Integer> decodePostingsKeys(
+            byte [] data )
+        throws
+            DecodingException
+    {
+        try {
+            DataInputStream in = new DataInputStream( new ByteArrayInputStream( data ));
+
+            readHeader( POSTINGS_KEYS_MARKER, in );
+
+            int                           n   = readVarInt( data.length, in );
+            LinkedHashMap<String,Integer> ret = new LinkedHashMap<>();
+            for( int i=0 ; i<n ; ++i ) {
+                String key = readString( in );
+                ret.put( key, readVarInt( Integer.MAX_VALUE, in ));
+            }
+            return ret;
+
+        } catch( IOException ex ) {
+            throw new DecodingException( ex ); // premature end of data
+        }
+    }
+
+    /**
+     * Encode the header entry of the indexed values of an ordered index.
+     *
+     * @param pages the numbers of the pages holding the indexed values, in sequence
+     * @return the encoded header entry
+     * @throws EncodingException thrown if the header entry could not be encoded
+     */
+    public byte [] encodeIndexedValuesPages(
+            Collection<Integer> pages )
+        throws
+            EncodingException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            DataOutputStream dataOut = new DataOutputStream( out );
+
+            writeHeader( INDEXED_VALUES_PAGES_MARKER, dataOut );
+            writeInts( pages, dataOut );
+            dataOut.flush();
+
+        } catch( IOException ex ) {
+            throw new EncodingException( ex ); // cannot happen with a ByteArrayOutputStream
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Decode the header entry of the indexed values of an ordered index.
+     *
+     * @param data the encoded header entry
+     * @return the numbers of the pages holding the indexed values, in sequence
+     * @throws DecodingException thrown if the header entry could not be decoded
+     */
+    public List<Integer> decodeIndexedValuesPages(
+            byte [] data )
+        throws
+            DecodingException
+    {
+        try {
+            DataInputStream in = new DataInputStream( new ByteArrayInputStream( data ));
+
+            readHeader( INDEXED_VALUES_PAGES_MARKER, in );
+            return readInts( in );
+
+        } catch( IOException ex ) {
+            throw new DecodingException( ex ); // premature end of data
+        }
+    }
+
+    /**
+     * Encode a page of the indexed values of an ordered index.
+     *
+     * @param values the indexed values on the page
+     * @return the encoded page
+     * @throws EncodingException thrown if the page could not be encoded
+     */
+    public byte [] encodeIndexedValues(
+            Collection<PropertyValue> values )
+        throws
+            EncodingException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            DataOutputStream dataOut = new DataOutputStream( out );
+
+            writeHeader( INDEXED_VALUES_MARKER, dataOut );
+            writeVarLong( values.size(), dataOut );
+            for( PropertyValue current : values ) {
+                writePropertyValue( current, dataOut );
+            }
+            dataOut.flush();
+
+        } catch( IOException ex ) {
+            throw new EncodingException( ex ); // cannot happen with a ByteArrayOutputStream
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Decode a page of the indexed values of an ordered index.
+     *
+     * @param data the encoded page
+     * @return the indexed values on the page
+     * @throws DecodingException thrown if the page could not be decoded
+     */
+    public List<PropertyValue> decodeIndexedValues(
+            byte [] data )
+        throws
+            DecodingException
+    {
+        try {
+            DataInputStream in = new DataInputStream( new ByteArrayInputStream( data ));
+
+            readHeader( INDEXED_VALUES_MARKER, in );
+
+            int                 n   = readVarInt( data.length, in );
+            List<PropertyValue> ret = new ArrayList<>( n );
+            for( int i=0 ; i<n ; ++i ) {
+                ret.add( readPropertyValue( in ));
+            }
+            return ret;
+
+        } catch( IOException ex ) {
+            throw new DecodingException( ex ); // premature end of data
+        }
+    }
+
+    /**
+     * Write a collection of ints, preceded by their number.
+     *
+     * @param values the ints
+     * @param out the DataOutputStream to write to
+     * @throws IOException thrown if an I/O error occurred
+     */
+    protected static void writeInts(
+            Collection<Integer> values,
+            DataOutputStream    out )
+        throws
+            IOException
+    {
+        writeVarLong( values.size(), out );
+        for( Integer current : values ) {
+            writeVarLong( current, out );
+        }
+    }
+
+    /**
+     * Read a collection of ints, preceded by their number.
+     *
+     * @param in the DataInputStream to read from
+     * @return the ints
+     * @throws DecodingException thrown if the data could not be decoded
+     * @throws IOException thrown if an I/O error occurred
+     */
+    protected static List<Integer> readInts(
+            DataInputStream in )
+        throws
+            DecodingException,
+            IOException
+    {
+        int           n   = readVarInt( Integer.MAX_VALUE, in );
+        List<Integer> ret = new ArrayList<>( Math.min( n, in.available() ));
+        for( int i=0 ; i<n ; ++i ) {
+            ret.add( readVarInt( Integer.MAX_VALUE, in ));
+        }
+        return ret;
+    }
+
+    /**
+     * Write a collection of Strings, preceded by their number.
+     *
+     * @param values the Strings
+     * @param out the DataOutputStream to write to
+     * @throws IOException thrown if an I/O error occurred
+     */
+    protected static void writeStrings(
+            Collection<String> values,
+            DataOutputStream   out )
+        throws
+            IOException
+    {
+        writeVarLong( values.size(), out );
+        for( String current : values ) {
+            writeString( current, out );
+        }
+    }
+
+    /**
+     * Read a collection of Strings, preceded by their number.
+     *
+     * @param in the DataInputStream to read from
+     * @return the Strings
+     * @throws DecodingException thrown if the data could not be decoded
+     * @throws IOException thrown if an I/O error occurred
+     */
+    protected static List<String> readStrings(
+            DataInputStream in )
+        throws
+            DecodingException,
+            IOException
+    {
+        int          n   = readVarInt( Integer.MAX_VALUE, in );
+        List<String> ret = new ArrayList<>( Math.min( n, in.available() ));
+        for( int i=0 ; i<n ; ++i ) {
+            ret.add( readString( in ));
+        }
+        return ret;
+    }
+
+    /**
+     * Separates the name of the index from the hash of the value in the key of a posting list.
+     */
+    public static final char SEPARATOR = '#';
+
+    /**
+     * Separates the key of a header entry from the number of one of its pages.
+     */
+    public static final char PAGE_SEPARATOR = '/';
+
+    /**
+     * The digest algorithm used to hash indexed values.
+     */
+    protected static final String DIGEST_ALGORITHM = "SHA-256";
+
+    /**
+     * Hex digits.
+     */
+    protected static final char [] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    /**
+     * Marker byte at the beginning of the encoded header entry of a posting list.
+     */
+    protected static final byte POSTINGS_MARKER = 'P';
+
+    /**
+     * Marker byte at the beginning of an encoded page of a posting list.
+     */
+    protected static final byte POSTINGS_PAGE_MARKER = 'G';
+
+    /**
+     * Marker byte at the beginning of the encoded keys of the posting lists containing a MeshObject.
+     */
+    protected static final byte POSTINGS_KEYS_MARKER = 'K';
+
+    /**
+     * Marker byte at the beginning of the encoded header entry of the indexed values of an ordered index.
+     */
+    protected static final byte INDEXED_VALUES_PAGES_MARKER = 'V';
+
+    /**
+     * Marker byte at the beginning of an encoded page of the indexed values of an ordered index.
+     */
+    protected static final byte INDEXED_VALUES_MARKER = 'I';
+}
@@ -0,0 +1,1008 @@
+//
+// This file is part of InfoGrid(tm). You may not use this file except in
+// compliance with the InfoGrid license. The InfoGrid license and important
+// disclaimers are contained in the file LICENSE.InfoGrid.txt that you should
+// have received with InfoGrid. If you have not received LICENSE.InfoGrid.txt
+// or you do not consent to all aspects of the license and the disclaimers,
+// no license is granted; do not use this file.
+//
+// For more information about InfoGrid go to http://infogrid.org/
+//
+// Copyright 1998-2015 by Johannes Ernst
+// All rights reserved.
+//
+
+package org.infogrid.meshbase.store.index;
+
+import java.io.IOException;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import org.infogrid.mesh.MeshObject;
+import org.infogrid.mesh.MeshObjectIdentifier;
+import org.infogrid.mesh.set.MeshObjectSelector;
+import org.infogrid.meshbase.MeshBase;
+import org.infogrid.model.primitives.PropertyValue;
+import org.infogrid.model.primitives.externalized.DecodingException;
+import org.infogrid.model.primitives.externalized.EncodingException;
+import org.infogrid.store.Store;
+import org.infogrid.store.StoreKeyDoesNotExistException;
+import org.infogrid.store.StoreValue;
+import org.infogrid.util.ResourceHelper;
+import org.infogrid.util.logging.Log;
+
+/**
+ * <p>Maintains a set of StoreMeshBaseIndexes for a StoreMeshBase in a companion Store.</p>
+ * <p>For each index and indexed value, the companion Store holds a posting list with the
+ *    MeshObjectIdentifiers of the MeshObjects indexed under that value. A posting list
+ *    consists of a header entry, which lists the numbers of its pages, and of pages that
+ *    hold at most {@link #PAGE_SIZE} MeshObjectIdentifiers each. For each indexed
+ *    MeshObject, the companion Store holds the keys of the posting lists that contain it,
+ *    and the numbers of the pages it is on, so the StoreMeshBaseIndexer can update the
+ *    posting lists when the MeshObject changes without having to know its previous state.
+ *    For each ordered index, it holds the indexed values in use, paged the same way, which
+ *    are kept in memory in order to answer range queries. This way, a Transaction only
+ *    rewrites the pages and header entries that it changes, regardless of how many
+ *    MeshObjects are indexed under the same value.</p>
+ * <p>The indexes are updated in two steps when a Transaction is committed: additions
+ *    are written before the MeshObjects, removals after. The indexes thus never miss
+ *    a MeshObject that has been written, even if writing is interrupted, but may contain
+ *    MeshObjects that no longer qualify. Candidates found through an index are always
+ *    checked against the MeshObjectSelector, so such MeshObjects are never returned
+ *    incorrectly.</p>
+ */
+public class StoreMeshBaseIndexer
+{
+    private static final Log log = Log.getLogInstance( StoreMeshBaseIndexer.class ); // our own, private logger
+
+    /**
+     * Factory method.
+     *
+     * @param indexStore the Store in which to keep the indexes
+     * @param indexes the indexes to maintain
+     * @return the created StoreMeshBaseIndexer
+     * @throws IllegalArgumentException thrown if two indexes have the same name
+     */
+    public static StoreMeshBaseIndexer create(
+            Store                  indexStore,
+            StoreMeshBaseIndex ... indexes )
+    {
+        return new StoreMeshBaseIndexer( indexStore, indexes, new StoreMeshBaseIndexEncoder() );
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param indexStore the Store in which to keep the indexes
+     * @param indexes the indexes to maintain
+     * @param encoder the encoder for the entries in the Store
+     * @throws IllegalArgumentException thrown if two indexes have the same name
+     */
+    protected StoreMeshBaseIndexer(
+            Store                     indexStore,
+            StoreMeshBaseIndex []     indexes,
+            StoreMeshBaseIndexEncoder encoder )
+    {
+        theIndexStore = indexStore;
+        theIndexes    = indexes;
+        theEncoder    = encoder;
+
+        theIndexesByName = new HashMap<>( indexes.length );
+        for( StoreMeshBaseIndex current : indexes ) {
+            if( theIndexesByName.put( current.getName(), current ) != null ) {
+                throw new IllegalArgumentException( "Index name used more than once: " + current.getName() );
+            }
+        }
+    }
+
+    /**
+     * Set the MeshBase whose MeshObjects are indexed. This is invoked by the MeshBase.
+     *
+     * @param mb the MeshBase
+     */
+    public void setMeshBase(
+            MeshBase mb )
+    {
+        theMeshBase = mb;
+    }
+
+    /**
+     * Obtain the Store in which the indexes are kept.
+     *
+     * @return the Store
+     */
+    public Store getIndexStore()
+    {
+        return theIndexStore;
+    }
+
+    /**
+     * Obtain the maintained indexes.
+     *
+     * @return the indexes
+     */
+    public StoreMeshBaseIndex [] getIndexes()
+    {
+        return theIndexes;
+    }
+
+    /**
+     * Find the identifiers of the MeshObjects that may be accepted by a MeshObjectSelector,
+     * using one of the indexes. The result may contain identifiers of MeshObjects that the
+     * MeshObjectSelector does not accept, but never misses one that it does.
+     *
+     * @param selector the MeshObjectSelector
+     * @return the identifiers, or null if none of the indexes can be used for the MeshObjectSelector
+     * @throws IOException thrown if an I/O error occurred
+     */
+    public MeshObjectIdentifier [] findCandidateIdentifiers(
+            MeshObjectSelector selector )
+        throws
+            IOException
+    {
+        for( StoreMeshBaseIndex index : theIndexes ) {
+            NavigableSet<PropertyValue> knownValues = index.isOrdered() ? obtainIndexedValues( index ).theValues.navigableKeySet() : null;
+            PropertyValue []            values      = index.determineIndexedValues( selector, knownValues );
+
+            if( values == null ) {
+                continue;
+            }
+            if( log.isDebugEnabled() ) {
+                log.debug( this + ": using " + index + " for " + selector + ", " + values.length + " values" );
+            }
+
+            Set<String> found = new LinkedHashSet<>();
+            try {
+                for( PropertyValue value : values ) {
+                    String     key    = theEncoder.postingsKey( index, value );
+                    StoreValue header = getOrNull( key );
+                    if( header == null ) {
+                        continue;
+                    }
+                    for( Integer page : theEncoder.decodePostingsPages( header.getData() )) {
+                        StoreValue postings = getOrNull( theEncoder.pageKey( key, page ));
+                        if( postings != null ) { // may just have been removed
+                            found.addAll( theEncoder.decodePostingsPage( postings.getData() ));
+                        }
+                    }
+                }
+            } catch( EncodingException ex ) {
+                log.error( ex );
+                continue;
+            } catch( DecodingException ex ) {
+                log.error( ex );
+                continue;
+            }
+
+            MeshObjectIdentifier [] ret   = new MeshObjectIdentifier[ found.size() ];
+            int                     count = 0;
+            for( String current : found ) {
+                try {
+                    ret[count++] = theMeshBase.getMeshObjectIdentifierFactory().fromExternalForm( current );
+
+                } catch( ParseException ex ) {
+                    log.error( ex );
+                    --count;
+                }
+            }
+            if( count < ret.length ) {
+                MeshObjectIdentifier [] temp = new MeshObjectIdentifier[ count ];
+                System.arraycopy( ret, 0, temp, 0, count );
+                ret = temp;
+            }
+            return ret;
+        }
+        return null;
+    }
+
+    /**
+     * Update the indexes for MeshObjects, in one go.
+     *
+     * @param changed maps the identifiers of the changed MeshObjects to the new MeshObjects,
+     *        and the identifiers of the deleted MeshObjects to null
+     * @throws IOException thrown if an I/O error occurred
+     */
+    public synchronized void updateIndexes(
+            Map<MeshObjectIdentifier,MeshObject> changed )
+        throws
+            IOException
+    {
+        completeIndexUpdate( prepareIndexUpdate( changed ));
+    }
+
+    /**
+     * First step of updating the indexes for MeshObjects that are about to be written to
+     * the MeshBase's Store: determine all changes, and write the additions to the indexes.
+     * This is invoked by the MeshBase when a Transaction is committed, before the
+     * MeshObjects are written. The caller must hold this StoreMeshBaseIndexer's monitor
+     * until {@link #completeIndexUpdate} has returned.
+     *
+     * @param changed maps the identifiers of the changed MeshObjects to the new MeshObjects,
+     *        and the identifiers of the deleted MeshObjects to null
+     * @return the IndexUpdate to pass to completeIndexUpdate
+     * @throws IOException thrown if an I/O error occurred
+     */
+    public synchronized IndexUpdate prepareIndexUpdate(
+            Map<MeshObjectIdentifier,MeshObject> changed )
+        throws
+            IOException
+    {
+        IndexUpdate      ret      = new IndexUpdate();
+        List<StoreValue> toSave   = new ArrayList<>();
+        List<String>     toDelete = new ArrayList<>();
+
+        for( Map.Entry<MeshObjectIdentifier,MeshObject> current : changed.entrySet() ) {
+            String     identifier = current.getKey().toExternalForm();
+            MeshObject obj        = current.getValue();
+            String     keysKey    = POSTINGS_KEYS_PREFIX + identifier;
+
+            Map<String,Integer>  oldKeys = determineOldPostingsKeys( keysKey );
+            Map<String,Postings> newKeys = new LinkedHashMap<>();
+            try {
+                if( obj != null ) {
+                    for( StoreMeshBaseIndex index : theIndexes ) {
+                        if( index.isIndexed( obj )) {
+                            PropertyValue value = index.determineIndexedValue( obj );
+                            String        key   = theEncoder.postingsKey( index, value );
+
+                            newKeys.put( key, new Postings( key, index, value ));
+                        }
+                    }
+                }
+            } catch( EncodingException ex ) {
+                log.error( ex );
+                continue;
+            }
+            if( oldKeys.keySet().equals( newKeys.keySet() )) {
+                continue; // nothing changed
+            }
+
+            LinkedHashMap<String,Integer> addedKeys = new LinkedHashMap<>( oldKeys ); // until the removals are done
+            LinkedHashMap<String,Integer> newPages  = new LinkedHashMap<>();
+
+            for( Postings template : newKeys.values() ) {
+                Integer page = oldKeys.get( template.theKey );
+                if( page == null ) {
+                    page = addToPostings( obtainPostings( template.theKey, template, ret.thePostings ), identifier );
+                    addedKeys.put( template.theKey, page );
+                }
+                newPages.put( template.theKey, page );
+            }
+            for( Map.Entry<String,Integer> old : oldKeys.entrySet() ) {
+                if( !newKeys.containsKey( old.getKey() )) {
+                    ret.theRemovals.add( new Removal( old.getKey(), old.getValue(), identifier ));
+                }
+            }
+
+            try {
+                if( addedKeys.size() > oldKeys.size() ) {
+                    toSave.add( createStoreValue( keysKey, theEncoder.encodePostingsKeys( addedKeys )));
+                }
+                if( newPages.isEmpty() ) {
+                    ret.theKeysToDelete.add( keysKey );
+                } else if( newPages.size() < addedKeys.size() ) {
+                    ret.theKeysToSave.add( createStoreValue( keysKey, theEncoder.encodePostingsKeys( newPages )));
+                }
+
+            } catch( EncodingException ex ) {
+                log.error( ex );
+            }
+        }
+
+        determineChangedEntries( ret, toSave, toDelete );
+
+        if( !toSave.isEmpty() || !toDelete.isEmpty() ) {
+            theIndexStore.putOrUpdateAndDeleteAll( toSave, toDelete );
+        }
+        return ret;
+    }
+
+    /**
+     * Second step of updating the indexes for MeshObjects: write the removals from the
+     * indexes. This is invoked by the MeshBase when a Transaction is committed, after the
+     * MeshObjects have been written.
+     *
+     * @param update the IndexUpdate returned by prepareIndexUpdate
+     * @throws IOException thrown if an I/O error occurred
+     */
+    public synchronized void completeIndexUpdate(
+            IndexUpdate update )
+        throws
+            IOException
+    {
+        List<StoreValue> toSave   = new ArrayList<>( update.theKeysToSave );
+        List<String>     toDelete = new ArrayList<>( update.theKeysToDelete );
+
+        for( Removal current : update.theRemovals ) {
+            removeFromPostings( obtainPostings( current.theKey, null, update.thePostings ), current.thePage, current.theIdentifier );
+        }
+
+        determineChangedEntries( update, toSave, toDelete );
+
+        if( !toSave.isEmpty() || !toDelete.isEmpty() ) {
+            theIndexStore.putOrUpdateAndDeleteAll( toSave, toDelete );
+        }
+    }
+
+    /**
+     * Discard the content of the indexes, and index the passed-in MeshObjects from scratch.
+     * This is needed when indexes are added to an existing MeshBase.
+     *
+     * @param iter iterates over all MeshObjects in the MeshBase
+     * @throws IOException thrown if an I/O error occurred
+     */
+    public synchronized void rebuildIndexes(
+            Iterator<MeshObject> iter )
+        throws
+            IOException
+    {
+        theIndexStore.deleteAll();
+        synchronized( theIndexedValues ) {
+            theIndexedValues.clear();
+        }
+
+        HashMap<MeshObjectIdentifier,MeshObject> batch = new HashMap<>();
+        while( iter.hasNext() ) {
+            MeshObject current = iter.next();
+            batch.put( current.getIdentifier(), current );
+
+            if( batch.size() >= REBUILD_BATCH_SIZE ) {
+                updateIndexes( batch );
+                batch.clear();
+            }
+        }
+        if( !batch.isEmpty() ) {
+            updateIndexes( batch );
+        }
+    }
+
+    /**
+     * Determine the keys of the posting lists that currently contain a MeshObject, and
+     * the numbers of the pages the MeshObject is on.
+     *
+     * @param keysKey the key of the entry holding the keys of the posting lists that contain the MeshObject
+     * @return maps the keys of the posting lists to the numbers of the pages
+     * @throws IOException thrown if an I/O error occurred
+     */
+    protected Map<String,Integer> determineOldPostingsKeys(
+            String keysKey )
+        throws
+            IOException
+    {
+        StoreValue found = getOrNull( keysKey );
+        if( found != null ) {
+            try {
+                return theEncoder.decodePostingsKeys( found.getData() );
+
+            } catch( DecodingException ex ) {
+                log.error( ex );
+            }
+        }
+        return Collections.<String,Integer>emptyMap();
+    }
+
+    /**
+     * Find a posting list that is being updated, or load its header entry from the Store.
+     *
+     * @param key the key of the posting list
+     * @param template if the posting list has not been loaded yet, and cannot be loaded, use this one, if given
+     * @param postings the posting lists that are being updated, keyed by their keys
+     * @return the posting list
+     * @throws IOException thrown if an I/O error occurred
+     */
+    protected Postings obtainPostings(
+            String               key,
+            Postings             template,
+            Map<String,Postings> postings )
+        throws
+            IOException
+    {
+        Postings ret = postings.get( key );
+        if( ret == null ) {
+            StoreMeshBaseIndex index = theIndexesByName.get( theEncoder.indexNameFromPostingsKey( key ));
+            StoreValue         found = getOrNull( key );
+
+            ret = template != null ? template : new Postings( key, index, null );
+            if( found != null ) {
+                try {
+                    ret = new Postings( key, index, theEncoder.decodePostingsValue( found.getData() ));
+                    ret.thePages.addAll( theEncoder.decodePostingsPages( found.getData() ));
+
+                } catch( DecodingException ex ) {
+                    log.error( ex ); // start over with this posting list
+                }
+                ret.theExisted = true;
+            }
+            postings.put( key, ret );
+        }
+        return ret;
+    }
+
+    /**
+     * Obtain a page of a posting list that is being updated. Loads it from the Store if needed.
+     *
+     * @param postings the posting list
+     * @param page the number of the page
+     * @return the external forms of the MeshObjectIdentifiers on the page
+     * @throws IOException thrown if an I/O error occurred
+     */
+    protected Set<String> obtainPage(
+            Postings postings,
+            int      page )
+        throws
+            IOException
+    {
+        LinkedHashSet<String> ret = postings.theLoadedPages.get( page );
+        if( ret == null ) {
+            ret = new LinkedHashSet<>();
+
+            StoreValue found = getOrNull( theEncoder.pageKey( postings.theKey, page ));
+            if( found != null ) {
+                try {
+                    ret.addAll( theEncoder.decodePostingsPage( found.getData() ));
+
+                } catch( DecodingException ex ) {
+                    log.error( ex ); // start over with this page
+                }
+            }
+            postings.theLoadedPages.put( page, ret );
+        }
+        return ret;
+    }
+
+    /**
+     * Add a MeshObject to a posting list. It is added to the last page, unless that
+     * page is full.
+     *
+     * @param postings the posting list
+     * @param identifier the external form of the MeshObjectIdentifier
+     * @return the number of the page the MeshObject was added to
+     * @throws IOException thrown if an I/O error occurred
+     */
+    protected int addToPostings(
+            Postings postings,
+            String   identifier )
+        throws
+            IOException
+    {
+        int         page;
+        Set<String> content;
+
+        if( postings.thePages.isEmpty() ) {
+            page    = 0;
+            content = null;
+        } else {
+            page    = postings.thePages.get( postings.thePages.size()-1 );
+            content = obtainPage( postings, page );
+            if( content.size() >= PAGE_SIZE ) {
+                ++page;
+                content = null;
+            }
+        }
+        if( content == null ) {
+            LinkedHashSet<String> created = new LinkedHashSet<>();
+
+            postings.theLoadedPages.put( page, created );
+            postings.thePages.add( page );
+            content = created;
+            postings.theHeaderChanged = true;
+        }
+        content.add( identifier );
+        postings.theChangedPages.add( page );
+
+        return page;
+    }
+
+    /**
+     * Remove a MeshObject from a page of a posting list. Pages that become empty are
+     * removed from the posting list.
+     *
+     * @param postings the posting list
+     * @param page the number of the page
+     * @param identifier the external form of the MeshObjectIdentifier
+     * @throws IOException thrown if an I/O error occurred
+     */
+    protected void removeFromPostings(
+            Postings postings,
+            int      page,
+            String   identifier )
+        throws
+            IOException
+    {
+        Set<String> content = obtainPage( postings, page );
+        if( !content.remove( identifier )) {
+            return;
+        }
+        postings.theChangedPages.add( page );
+        if( content.isEmpty() && postings.thePages.remove( Integer.valueOf( page ))) {
+            postings.theHeaderChanged = true;
+        }
+    }
+
+    /**
+     * Determine the entries to write for the changed pages and header entries of the
+     * posting lists and indexed values in an IndexUpdate, and mark them as written.
+     *
+     * @param update the IndexUpdate
+     * @param toSave collects the entries to save
+     * @param toDelete collects the keys of the entries to delete
+     * @throws IOException thrown if an I/O error occurred
+     */
+    protected void determineChangedEntries(
+            IndexUpdate      update,
+            List<StoreValue> toSave,
+            List<String>     toDelete )
+        throws
+            IOException
+    {
+        for( Postings current : update.thePostings.values() ) {
+            for( Integer page : current.theChangedPages ) {
+                Set<String> content = current.theLoadedPages.get( page );
+                String      pageKey = theEncoder.pageKey( current.theKey, page );
+
+                if( content.isEmpty() ) {
+                    toDelete.add( pageKey );
+                } else {
+                    try {
+                        toSave.add( createStoreValue( pageKey, theEncoder.encodePostingsPage( content )));
+
+                    } catch( EncodingException ex ) {
+                        log.error( ex );
+                    }
+                }
+            }
+            current.theChangedPages.clear();
+
+            if( !current.theHeaderChanged ) {
+                continue;
+            }
+            current.theHeaderChanged = false;
+
+            boolean ordered = current.theIndex != null && current.theIndex.isOrdered() && current.theValue != null;
+            if( current.thePages.isEmpty() ) {
+                toDelete.add( current.theKey );
+                if( ordered && current.theExisted ) {
+                    IndexedValues values = obtainIndexedValues( current.theIndex );
+                    values.remove( current.theValue );
+                    update.theChangedIndexedValues.add( values );
+                }
+                current.theExisted = false;
+
+            } else {
+                try {
+                    toSave.add( createStoreValue( current.theKey, theEncoder.encodePostings( current.theValue, current.thePages )));
+
+                } catch( EncodingException ex ) {
+                    log.error( ex );
+                    continue;
+                }
+                if( ordered && !current.theExisted ) {
+                    IndexedValues values = obtainIndexedValues( current.theIndex );
+                    values.add( current.theValue );
+                    update.theChangedIndexedValues.add( values );
+                }
+                current.theExisted = true;
+            }
+        }
+
+        for( IndexedValues current : update.theChangedIndexedValues ) {
+            try {
+                for( Integer page : current.theChangedPages ) {
+                    List<PropertyValue> content = current.thePages.get( page );
+                    String              pageKey = theEncoder.pageKey( current.theKey, page );
+
+                    if( content == null ) {
+                        toDelete.add( pageKey );
+                    } else {
+                        toSave.add( createStoreValue( pageKey, theEncoder.encodeIndexedValues( content )));
+                    }
+                }
+                current.theChangedPages.clear();
+
+                if( current.theHeaderChanged ) {
+                    current.theHeaderChanged = false;
+
+                    if( current.thePages.isEmpty() ) {
+                        toDelete.add( current.theKey );
+                    } else {
+                        toSave.add( createStoreValue( current.theKey, theEncoder.encodeIndexedValuesPages( current.thePages.keySet() )));
+                    }
+                }
+            } catch( EncodingException ex ) {
+                log.error( ex );
+            }
+        }
+        update.theChangedIndexedValues.clear();
+    }
+
+    /**
+     * Obtain the indexed values currently in use by an ordered index. Loads them
+     * from the Store if needed.
+     *
+     * @param index the ordered index
+     * @return the indexed values
+     * @throws IOException thrown if an I/O error occurred
+     */
+    protected IndexedValues obtainIndexedValues(
+            StoreMeshBaseIndex index )
+        throws
+            IOException
+    {
+        synchronized( theIndexedValues ) {
+            IndexedValues ret = theIndexedValues.get( index.getName() );
+            if( ret == null ) {
+                ret = new IndexedValues( INDEXED_VALUES_PREFIX + index.getName() );
+
+                StoreValue found = getOrNull( ret.theKey );
+                if( found != null ) {
+                    try {
+                        for( Integer page : theEncoder.decodeIndexedValuesPages( found.getData() )) {
+                            StoreValue          pageFound = getOrNull( theEncoder.pageKey( ret.theKey, page ));
+                            List<PropertyValue> content   = new ArrayList<>();
+
+                            if( pageFound != null ) {
+                                content.addAll( theEncoder.decodeIndexedValues( pageFound.getData() ));
+                            }
+                            ret.thePages.put( page, content );
+                            for( PropertyValue current : content ) {
+                                ret.theValues.put( current, page );
+                            }
+                        }
+
+                    } catch( DecodingException ex ) {
+                        log.error( ex );
+                    }
+                }
+                theIndexedValues.put( index.getName(), ret );
+            }
+            return ret;
+        }
+    }
+
+    /**
+     * Obtain an entry from the Store, or null if there is none.
+     *
+     * @param key the key of the entry
+     * @return the entry, or null
+     * @throws IOException thrown if an I/O error occurred
+     */
+    protected StoreValue getOrNull(
+            String key )
+        throws
+            IOException
+    {
+        try {
+            return theIndexStore.get( key );
+
+        } catch( StoreKeyDoesNotExistException ex ) {
+            return null;
+        }
+    }
+
+    /**
+     * Create a StoreValue for an entry in the Store.
+     *
+     * @param key the key of the entry
+     * @param data the data of the entry
+     * @return the StoreValue
+     */
+    protected StoreValue createStoreValue(
+            String  key,
+            byte [] data )
+    {
+        long now = System.currentTimeMillis();
+
+        return new StoreValue( key, theEncoder.getEncodingId(), now, now, -1L, -1L, data );
+    }
+
+    /**
+     * Convert to String representation, for debugging.
+     *
+     * @return String representation
+     */
+    @Override
+    public String toString()
+    {
+        return super.toString() + "{ store: " + theIndexStore + " }";
+    }
+
+    /**
+     * The Store in which the indexes are kept.
+     */
+    protected final Store theIndexStore;
+
+    /**
+     * The maintained indexes.
+     */
+    protected final StoreMeshBaseIndex [] theIndexes;
+
+    /**
+     * The maintained indexes, keyed by their names.
+     */
+    protected final HashMap<String,StoreMeshBaseIndex> theIndexesByName;
+
+    /**
+     * The encoder for the entries in the Store.
+     */
+    protected final StoreMeshBaseIndexEncoder theEncoder;
+
+    /**
+     * The MeshBase whose MeshObjects are indexed.
+     */
+    protected MeshBase theMeshBase;
+
+    /**
+     * The indexed values in use by the ordered indexes, keyed by the names of the indexes.
+     * This is allocated as needed.
+     */
+    protected final HashMap<String,IndexedValues> theIndexedValues = new HashMap<>();
+
+    /**
+     * Our ResourceHelper.
+     */
+    private static final ResourceHelper theResourceHelper = ResourceHelper.getInstance( StoreMeshBaseIndexer.class );
+
+    /**
+     * Prefix of the keys of the entries that hold the keys of the posting lists containing a MeshObject.
+     */
+    public static final String POSTINGS_KEYS_PREFIX = "@";
+
+    /**
+     * Prefix of the keys of the entries that hold the indexed values of an ordered index.
+     */
+    public static final String INDEXED_VALUES_PREFIX = "!";
+
+    /**
+     * The maximum number of MeshObjectIdentifiers, or of indexed values, on one page.
+     */
+    public static final int PAGE_SIZE = theResourceHelper.getResourceIntegerOrDefault( "PageSize", 256 );
+
+    /**
+     * The number of MeshObjects indexed in one batch when rebuilding the indexes.
+     */
+    protected static final int REBUILD_BATCH_SIZE = 500;
+
+    /**
+     * The state of an update of the indexes between its two steps.
+     */
+    public static class IndexUpdate
+    {
+        /**
+         * Constructor.
+         */
+        protected IndexUpdate()
+        {
+            // no op
+        }
+
+        /**
+         * The posting lists that are being updated, keyed by their keys.
+         */
+        protected final HashMap<String,Postings> thePostings = new HashMap<>();
+
+        /**
+         * The removals from posting lists, to be performed in the second step.
+         */
+        protected final List<Removal> theRemovals = new ArrayList<>();
+
+        /**
+         * The entries holding the keys of the posting lists containing a MeshObject,
+         * to be saved in the second step.
+         */
+        protected final List<StoreValue> theKeysToSave = new ArrayList<>();
+
+        /**
+         * The keys of the entries holding the keys of the posting lists containing a
+         * MeshObject, to be deleted in the second step.
+         */
+        protected final List<String> theKeysToDelete = new ArrayList<>();
+
+        /**
+         * The indexed values of ordered indexes that have changed since they were last written.
+         */
+        protected final Set<IndexedValues> theChangedIndexedValues = new LinkedHashSet<>();
+    }
+
+    /**
+     * A posting list that is being updated.
+     */
+    protected static class Postings
+    {
+        /**
+         * Constructor.
+         *
+         * @param key the key of the posting list
+         * @param index the index to which the posting list belongs, if known
+         * @param value the indexed value
+         */
+        protected Postings(
+                String             key,
+                StoreMeshBaseIndex index,
+                PropertyValue      value )
+        {
+            theKey   = key;
+            theIndex = index;
+            theValue = value;
+        }
+
+        /**
+         * The key of the posting list.
+         */
+        protected final String theKey;
+
+        /**
+         * The index to which the posting list belongs, if known.
+         */
+        protected final StoreMeshBaseIndex theIndex;
+
+        /**
+         * The indexed value.
+         */
+        protected final PropertyValue theValue;
+
+        /**
+         * The numbers of the pages of the posting list, in sequence.
+         */
+        protected final List<Integer> thePages = new ArrayList<>();
+
+        /**
+         * The pages that have been loaded, keyed by their numbers.
+         */
+        protected final HashMap<Integer,LinkedHashSet<String>> theLoadedPages = new HashMap<>();
+
+        /**
+         * The numbers of the pages that have changed since they were last written.
+         */
+        protected final Set<Integer> theChangedPages = new LinkedHashSet<>();
+
+        /**
+         * True if the header entry has changed since it was last written.
+         */
+        protected boolean theHeaderChanged = false;
+
+        /**
+         * True if the posting list exists in the Store already.
+         */
+        protected boolean theExisted = false;
+    }
+
+    /**
+     * The removal of a MeshObject from a posting list.
+     */
+    protected static class Removal
+    {
+        /**
+         * Constructor.
+         *
+         * @param key the key of the posting list
+         * @param page the number of the page the MeshObject is on
+         * @param identifier the external form of the MeshObjectIdentifier
+         */
+        protected Removal(
+                String key,
+                int    page,
+                String identifier )
+        {
+            theKey        = key;
+            thePage       = page;
+            theIdentifier = identifier;
+        }
+
+        /**
+         * The key of the posting list.
+         */
+        protected final String theKey;
+
+        /**
+         * The number of the page the MeshObject is on.
+         */
+        protected final int thePage;
+
+        /**
+         * The external form of the MeshObjectIdentifier.
+         */
+        protected final String theIdentifier;
+    }
+
+    /**
+     * The indexed values in use by an ordered index.
+     */
+    protected static class IndexedValues
+    {
+        /**
+         * Constructor.
+         *
+         * @param key the key of the header entry of the indexed values
+         */
+        protected IndexedValues(
+                String key )
+        {
+            theKey = key;
+        }
+
+        /**
+         * Add an indexed value. It is added to the last page, unless that page is full.
+         *
+         * @param value the indexed value
+         */
+        protected void add(
+                PropertyValue value )
+        {
+            if( theValues.containsKey( value )) {
+                return;
+            }
+            Map.Entry<Integer,List<PropertyValue>> last = thePages.lastEntry();
+            int                                    page;
+            List<PropertyValue>                    content;
+
+            if( last != null && last.getValue().size() < PAGE_SIZE ) {
+                page    = last.getKey();
+                content = last.getValue();
+            } else {
+                page    = last != null ? last.getKey() + 1 : 0;
+                content = new ArrayList<>();
+                thePages.put( page, content );
+                theHeaderChanged = true;
+            }
+            content.add( value );
+            theValues.put( value, page );
+            theChangedPages.add( page );
+        }
+
+        /**
+         * Remove an indexed value. Pages that become empty are removed.
+         *
+         * @param value the indexed value
+         */
+        protected void remove(
+                PropertyValue value )
+        {
+            Integer page = theValues.remove( value );
+            if( page == null ) {
+                return;
+            }
+            List<PropertyValue> content = thePages.get( page );
+            content.removeIf( (PropertyValue current) -> PropertyValue.compare( current, value ) == 0 );
+            theChangedPages.add( page );
+            if( content.isEmpty() ) {
+                thePages.remove( page );
+                theHeaderChanged = true;
+            }
+        }
+
+        /**
+         * The key of the header entry of the indexed values.
+         */
+        protected final String theKey;
+
+        /**
+         * The indexed values, in order, mapped to the numbers of the pages they are on.
+         */
+        protected final ConcurrentSkipListMap<PropertyValue,Integer> theValues = new ConcurrentSkipListMap<>( PropertyValue::compare );
+
+        /**
+         * The pages, keyed by their numbers.
+         */
+        protected final TreeMap<Integer,List<PropertyValue>> thePages = new TreeMap<>();
+
+        /**
+         * The numbers of the pages that have changed since they were last written.
+         */
+        protected final Set<Integer> theChangedPages = new LinkedHashSet<>();
+
+        /**
+         * True if the header entry has changed since it was last written.
+         */
+        protected boolean theHeaderChanged = false;
+    }
+}
@@ -0,0 +1,178 @@
+//
+// This file is part of InfoGrid(tm). You may not use this file except in
+// compliance with the InfoGrid license. The InfoGrid license and important
+// disclaimers are contained in the file LICENSE.InfoGrid.txt that you should
+// have received with InfoGrid. If you have not received LICENSE.InfoGrid.txt
+// or you do not consent to all aspects of the license and the disclaimers,
+// no license is granted; do not use this file.
+//
+// For more information about InfoGrid go to http://infogrid.org/
+//
+// Copyright 1998-2015 by Johannes Ernst
+// All rights reserved.
+//
+
+package org.infogrid.meshbase.store.test;
+
+import java.io.ByteArrayOutputStream;
+import org.infogrid.mesh.MeshObject;
+import org.infogrid.mesh.MeshObjectIdentifier;
+import org.infogrid.mesh.externalized.ExternalizedMeshObject;
+import org.infogrid.mesh.externalized.binary.ExternalizedMeshObjectBinaryEncoder;
+import org.infogrid.mesh.externalized.xml.ExternalizedMeshObjectXmlEncoder;
+import org.infogrid.meshbase.MeshBaseLifecycleManager;
+import org.infogrid.meshbase.store.StoreMeshBase;
+import org.infogrid.meshbase.transaction.Transaction;
+import org.infogrid.model.Test.TestSubjectArea;
+import org.infogrid.model.primitives.BlobValue;
+import org.infogrid.model.primitives.EntityType;
+import org.infogrid.model.primitives.EnumeratedValue;
+import org.infogrid.model.primitives.StringValue;
+import org.infogrid.store.StoreValue;
+import org.infogrid.util.logging.Log;
+import org.junit.Test;
+
+/**
+ * Tests that a StoreMeshBase can read MeshObjects stored in a mix of the XML
+ * and the binary encoding, and that the binary encoding is more compact.
+ */
+public class StoreMeshBaseTest11
+        extends
+            AbstractStoreMeshBaseTest
+{
+    /**
+     * Run the test.
+     *
+     * @throws Exception thrown if an Exception occurred during the test
+     */
+    @Test
+    public void run()
+        throws
+            Exception
+    {
+        EntityType [] abctypes = { TestSubjectArea.AA, TestSubjectArea.B };
+
+        //
+
+        log.info( "Deleting old database and creating new database" );
+
+        theSqlStore.initializeHard();
+
+        //
+
+        log.info( "Creating MeshBase" );
+
+        StoreMeshBase mb = StoreMeshBase.create(
+                theMeshBaseIdentifierFactory.fromExternalForm( "MeshBase" ),
+                theModelBase,
+                null,
+                theSqlStore,
+                rootContext );
+
+        MeshBaseLifecycleManager life = mb.getMeshBaseLifecycleManager();
+
+        //
+
+        final String PROP_VALUE_PREFIX = "This is <b>important&trade;</b>&#33; MeshObject "; // make sure HTML is in it
+        EnumeratedValue [] ptZdomain = TestSubjectArea.B_Z_type.getDomain();
+
+        log.info( "Creating MeshObjects" );
+
+        Transaction tx = mb.createTransactionNow();
+
+        MeshObject []           mesh      = new MeshObject[ theTestSize ];
+        MeshObjectIdentifier [] names     = new MeshObjectIdentifier[ theTestSize ];
+        int []                  neighbors = new int[ theTestSize ];
+        for( int i=0 ; i<mesh.length ; ++i ) {
+            mesh[i] = life.createMeshObject();
+            mesh[i].bless( abctypes[ i % abctypes.length ] );
+
+            if( i>0 ) {
+                mesh[i].relate( mesh[i-1] );
+                if( i % 2 == 0 ) {
+                    mesh[i].blessRelationship( TestSubjectArea.R.getSource(), mesh[i-1] );
+                }
+            }
+            if( mesh[i].isBlessedBy( TestSubjectArea.AA )) {
+                mesh[i].setPropertyValue( TestSubjectArea.A_X,  StringValue.create( PROP_VALUE_PREFIX + i ));
+                mesh[i].setPropertyValue( TestSubjectArea.A_XX, TestSubjectArea.A_XX_type.createBlobValue( PROP_VALUE_PREFIX + i, BlobValue.TEXT_PLAIN_MIME_TYPE ));
+            } else {
+                mesh[i].setPropertyValue( TestSubjectArea.B_Z, ptZdomain[ i % ptZdomain.length ] );
+            }
+            names[i] = mesh[i].getIdentifier();
+        }
+        tx.commitTransaction();
+
+        for( int i=0 ; i<mesh.length ; ++i ) {
+            neighbors[i] = mesh[i].traverseToNeighborMeshObjects().size();
+        }
+
+        //
+
+        log.info( "Re-encoding every other MeshObject in the binary encoding" );
+
+        ExternalizedMeshObjectXmlEncoder    xmlEncoder    = new ExternalizedMeshObjectXmlEncoder();
+        ExternalizedMeshObjectBinaryEncoder binaryEncoder = new ExternalizedMeshObjectBinaryEncoder();
+
+        for( int i=1 ; i<names.length ; i+=2 ) {
+            String     key   = names[i].toExternalForm();
+            StoreValue value = theSqlStore.get( key );
+
+            checkEquals( value.getEncodingId(), xmlEncoder.getEncodingId(), "Not stored in XML encoding" );
+
+            ExternalizedMeshObject externalized = xmlEncoder.decodeExternalizedMeshObject( value.getDataAsStream(), mb );
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            binaryEncoder.encodeExternalizedMeshObject( externalized, out );
+            byte [] binary = out.toByteArray();
+
+            checkCondition( binary.length < value.getData().length, "Binary encoding not smaller: " + binary.length + " vs. " + value.getData().length );
+
+            theSqlStore.update(
+                    key,
+                    binaryEncoder.getEncodingId(),
+                    value.getTimeCreated(),
+                    value.getTimeUpdated(),
+                    value.getTimeRead(),
+                    value.getTimeExpires(),
+                    binary );
+        }
+
+        //
+
+        log.info( "Clearing cache, and loading MeshObjects again" );
+
+        mesh = new MeshObject[ names.length ]; // forget old references
+        mb.clearMemoryCache();
+
+        for( int i=0 ; i<names.length ; ++i ) {
+            mesh[i] = mb.findMeshObjectByIdentifier( names[i] );
+
+            checkObject( mesh[i], "Could not retrieve MeshObject with Identifier " + names[i] );
+            if( mesh[i] == null ) {
+                continue;
+            }
+            checkEquals( mesh[i].getTypes().length, 1, "not the right number of MeshTypes" );
+            checkEquals( mesh[i].getTypes()[0], abctypes[ i % abctypes.length ], "not the right MeshType" );
+            checkEquals( mesh[i].traverseToNeighborMeshObjects().size(), neighbors[i], "wrong number of neighbors" );
+
+            if( mesh[i].isBlessedBy( TestSubjectArea.AA )) {
+                checkEquals( mesh[i].getPropertyValue( TestSubjectArea.A_X ),  StringValue.create( PROP_VALUE_PREFIX + i ), "Wrong ptX value" );
+                checkEquals( mesh[i].getPropertyValue( TestSubjectArea.A_XX ), TestSubjectArea.A_XX_type.createBlobValue( PROP_VALUE_PREFIX + i, BlobValue.TEXT_PLAIN_MIME_TYPE ), "Wrong ptXX value" );
+            } else {
+                checkEquals( mesh[i].getPropertyValue( TestSubjectArea.B_Z ), ptZdomain[ i % ptZdomain.length ], "Wrong ptZ value" );
+            }
+            if( i>0 && i % 2 == 0 ) {
+                checkCondition( mesh[i].isRelated( TestSubjectArea.R.getSource(), mesh[i-1] ), "Relationship not blessed" );
+            }
+        }
+    }
+
+    /**
+     * The number of MeshObjects to create for the test.
+     */
+    protected int theTestSize = 100;
+
+    // Our Logger
+    private static Log log = Log.getLogInstance( StoreMeshBaseTest11.class);
+}
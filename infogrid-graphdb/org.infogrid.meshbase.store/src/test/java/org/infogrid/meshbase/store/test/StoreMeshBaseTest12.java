@@ -0,0 +1,238 @@
+//
+// This file is part of InfoGrid(tm). You may not use this file except in
+// compliance with the InfoGrid license. The InfoGrid license and important
+// disclaimers are contained in the file LICENSE.InfoGrid.txt that you should
+// have received with InfoGrid. If you have not received LICENSE.InfoGrid.txt
+// or you do not consent to all aspects of the license and the disclaimers,
+// no license is granted; do not use this file.
+//
+// For more information about InfoGrid go to http://infogrid.org/
+//
+// Copyright 1998-2015 by Johannes Ernst
+// All rights reserved.
+//
+
+package org.infogrid.meshbase.store.test;
+
+import java.util.ArrayList;
+import org.infogrid.mesh.MeshObject;
+import org.infogrid.mesh.MeshObjectIdentifier;
+import org.infogrid.mesh.set.ByPropertyValueIntervalSelector;
+import org.infogrid.mesh.set.ByPropertyValueSelector;
+import org.infogrid.mesh.set.ByTypeMeshObjectSelector;
+import org.infogrid.mesh.set.MeshObjectSelector;
+import org.infogrid.mesh.set.MeshObjectSet;
+import org.infogrid.meshbase.MeshBaseLifecycleManager;
+import org.infogrid.meshbase.store.IterableStoreMeshBase;
+import org.infogrid.meshbase.store.index.ByPropertyValueStoreMeshBaseIndex;
+import org.infogrid.meshbase.store.index.ByTypeStoreMeshBaseIndex;
+import org.infogrid.meshbase.store.index.StoreMeshBaseIndexer;
+import org.infogrid.meshbase.transaction.Transaction;
+import org.infogrid.model.Test.TestSubjectArea;
+import org.infogrid.model.primitives.EntityType;
+import org.infogrid.model.primitives.EnumeratedValue;
+import org.infogrid.model.primitives.FloatValue;
+import org.infogrid.model.primitives.PropertyComparisonOperator;
+import org.infogrid.store.sql.AbstractSqlStore;
+import org.infogrid.store.sql.mysql.MysqlStore;
+import org.infogrid.util.logging.Log;
+import org.junit.Test;
+
+/**
+ * Tests that the secondary indexes of a StoreMeshBase are maintained across Transactions,
+ * survive a restart, can be rebuilt, and return the same results as a full scan.
+ */
+public class StoreMeshBaseTest12
+        extends
+            AbstractStoreMeshBaseTest
+{
+    /**
+     * Run the test.
+     *
+     * @throws Exception thrown if an Exception occurred during the test
+     */
+    @Test
+    public void run()
+        throws
+            Exception
+    {
+        log.info( "Deleting old databases and creating new databases" );
+
+        AbstractSqlStore indexStore = MysqlStore.create( theDataSource, test_TABLE_NAME + "Index" );
+
+        theSqlStore.initializeHard();
+        indexStore.initializeHard();
+
+        //
+
+        log.info( "Creating MeshBase" );
+
+        IterableStoreMeshBase mb = IterableStoreMeshBase.create(
+                theMeshBaseIdentifierFactory.fromExternalForm( "MeshBase" ),
+                theModelBase,
+                null,
+                theSqlStore,
+                rootContext );
+
+        mb.setIndexer( createIndexer( indexStore ));
+
+        MeshBaseLifecycleManager life = mb.getMeshBaseLifecycleManager();
+
+        //
+
+        log.info( "Creating MeshObjects" );
+
+        EnumeratedValue [] ptZdomain = TestSubjectArea.B_Z_type.getDomain();
+
+        Transaction tx = mb.createTransactionNow();
+
+        MeshObjectIdentifier [] names = new MeshObjectIdentifier[ theTestSize ];
+        for( int i=0 ; i<names.length ; ++i ) {
+            MeshObject current = life.createMeshObject();
+            if( i % 2 == 0 ) {
+                current.bless( TestSubjectArea.AA );
+                current.setPropertyValue( TestSubjectArea.AA_Y, FloatValue.create( i ));
+            } else {
+                current.bless( TestSubjectArea.B );
+                current.setPropertyValue( TestSubjectArea.B_Z, ptZdomain[ i % ptZdomain.length ] );
+            }
+            names[i] = current.getIdentifier();
+        }
+        tx.commitTransaction();
+
+        checkQueries( mb, "after creation" );
+
+        //
+
+        log.info( "Changing, unblessing and deleting MeshObjects" );
+
+        tx = mb.createTransactionNow();
+
+        for( int i=0 ; i<names.length ; i+=3 ) {
+            MeshObject current = mb.findMeshObjectByIdentifier( names[i] );
+            if( i % 2 == 0 ) {
+                current.setPropertyValue( TestSubjectArea.AA_Y, FloatValue.create( -i ));
+            } else {
+                current.setPropertyValue( TestSubjectArea.B_Z, ptZdomain[ ( i+1 ) % ptZdomain.length ] );
+            }
+        }
+        for( int i=4 ; i<names.length ; i+=10 ) {
+            MeshObject current = mb.findMeshObjectByIdentifier( names[i] );
+            current.unbless( TestSubjectArea.AA );
+            current.bless( TestSubjectArea.B );
+        }
+        for( int i=1 ; i<names.length ; i+=7 ) {
+            life.deleteMeshObject( mb.findMeshObjectByIdentifier( names[i] ));
+        }
+        tx.commitTransaction();
+
+        checkQueries( mb, "after change" );
+
+        //
+
+        log.info( "Restarting MeshBase" );
+
+        mb.die();
+
+        mb = IterableStoreMeshBase.create(
+                theMeshBaseIdentifierFactory.fromExternalForm( "MeshBase" ),
+                theModelBase,
+                null,
+                theSqlStore,
+                rootContext );
+
+        mb.setIndexer( createIndexer( indexStore ));
+
+        checkQueries( mb, "after restart" );
+
+        //
+
+        log.info( "Rebuilding indexes" );
+
+        indexStore.initializeHard();
+        mb.rebuildIndexes();
+
+        checkQueries( mb, "after rebuild" );
+
+        mb.die();
+    }
+
+    /**
+     * Create the StoreMeshBaseIndexer used by this test.
+     *
+     * @param indexStore the Store for the indexes
+     * @return the StoreMeshBaseIndexer
+     */
+    protected StoreMeshBaseIndexer createIndexer(
+            AbstractSqlStore indexStore )
+    {
+        return StoreMeshBaseIndexer.create(
+                indexStore,
+                ByTypeStoreMeshBaseIndex.create( TestSubjectArea.A ),
+                ByPropertyValueStoreMeshBaseIndex.create( TestSubjectArea.B_Z ),
+                ByPropertyValueStoreMeshBaseIndex.create( TestSubjectArea.AA_Y, true ));
+    }
+
+    /**
+     * Run a number of queries against the indexes, and compare the results with a full scan.
+     *
+     * @param mb the MeshBase
+     * @param msg message to print when a check fails
+     * @throws Exception thrown if an Exception occurred during the test
+     */
+    protected void checkQueries(
+            IterableStoreMeshBase mb,
+            String                msg )
+        throws
+            Exception
+    {
+        MeshObjectSelector [] selectors = {
+            ByTypeMeshObjectSelector.create( TestSubjectArea.A ),
+            ByTypeMeshObjectSelector.create( TestSubjectArea.AA ),
+            ByPropertyValueSelector.create( TestSubjectArea.B_Z, TestSubjectArea.B_Z_type_VALUE2, PropertyComparisonOperator.EQUAL ),
+            ByPropertyValueSelector.create( TestSubjectArea.AA_Y, FloatValue.create( 16 ), PropertyComparisonOperator.EQUAL ),
+            ByPropertyValueSelector.create( TestSubjectArea.AA_Y, FloatValue.create( 20 ), PropertyComparisonOperator.GREATER ),
+            ByPropertyValueSelector.create( TestSubjectArea.AA_Y, FloatValue.create( 0 ), PropertyComparisonOperator.SMALLER_OR_EQUALS ),
+            ByPropertyValueIntervalSelector.create( TestSubjectArea.AA_Y, FloatValue.create( 10 ), FloatValue.create( 40 ))
+        };
+        EntityType [] candidateTypes = { // the selectors complain about MeshObjects that do not carry their PropertyType
+            TestSubjectArea.A,
+            TestSubjectArea.A,
+            TestSubjectArea.B,
+            TestSubjectArea.AA,
+            TestSubjectArea.AA,
+            TestSubjectArea.AA,
+            TestSubjectArea.AA
+        };
+
+        for( int i=0 ; i<selectors.length ; ++i ) {
+            MeshObjectSelector selector = selectors[i];
+
+            checkCondition( mb.getIndexer().findCandidateIdentifiers( selector ) != null, "Index not used " + msg + " for " + selector );
+
+            ArrayList<MeshObject> candidates = new ArrayList<>();
+            for( MeshObject current : mb ) {
+                if( current.isBlessedBy( candidateTypes[i] )) {
+                    candidates.add( current );
+                }
+            }
+
+            MeshObjectSet found    = mb.findMeshObjects( selector );
+            MeshObjectSet expected = mb.getMeshObjectSetFactory().createImmutableMeshObjectSet(
+                    candidates.toArray( new MeshObject[ candidates.size() ] ),
+                    selector );
+
+            checkCondition( found.size() > 0, "Nothing found " + msg + " for " + selector );
+            checkEquals( found.size(), expected.size(), "Wrong number found " + msg + " for " + selector );
+            checkCondition( found.hasSameContent( expected ), "Wrong content " + msg + " for " + selector );
+        }
+    }
+
+    /**
+     * The number of MeshObjects to create for the test.
+     */
+    protected int theTestSize = 100;
+
+    // Our Logger
+    private static Log log = Log.getLogInstance( StoreMeshBaseTest12.class );
+}
@@ -0,0 +1,145 @@
+//
+// This file is part of InfoGrid(tm). You may not use this file except in
+// compliance with the InfoGrid license. The InfoGrid license and important
+// disclaimers are contained in the file LICENSE.InfoGrid.txt that you should
+// have received with InfoGrid. If you have not received LICENSE.InfoGrid.txt
+// or you do not consent to all aspects of the license and the disclaimers,
+// no license is granted; do not use this file.
+//
+// For more information about InfoGrid go to http://infogrid.org/
+//
+// Copyright 1998-2015 by Johannes Ernst
+// All rights reserved.
+//
+
+
+package org.infogrid.meshbase.store.test;
+
+import org.infogrid.mesh.MeshObject;
+import org.infogrid.mesh.MeshObjectIdentifier;
+import org.infogrid.meshbase.MeshBaseLifecycleManager;
+import org.infogrid.meshbase.store.IterableStoreMeshBase;
+import org.infogrid.meshbase.transaction.Transaction;
+import org.infogrid.model.Test.TestSubjectArea;
+import org.infogrid.model.primitives.FloatValue;
+import org.infogrid.store.writebehind.IterableWriteBehindStore;
+import org.infogrid.util.logging.Log;
+import org.junit.Test;
+
+/**
+ * Tests that a StoreMeshBase writing to a WriteBehindStore coalesces many small Transactions,
+ * reads its own writes, and has written everything after flush.
+ */
+public class StoreMeshBaseTest13
+        extends
+            AbstractStoreMeshBaseTest
+{
+    /**
+     * Run the test.
+     *
+     * @throws Exception thrown if an Exception occurred during the test
+     */
+    @Test
+    public void run()
+        throws
+            Exception
+    {
+        log.info( "Deleting old database and creating new database" );
+
+        theSqlStore.initializeHard();
+
+        IterableWriteBehindStore writeBehindStore = IterableWriteBehindStore.create( theSqlStore, 100000L, 100000, 200000 );
+
+        //
+
+        log.info( "Creating MeshBase" );
+
+        IterableStoreMeshBase mb = IterableStoreMeshBase.create(
+                theMeshBaseIdentifierFactory.fromExternalForm( "MeshBase" ),
+                theModelBase,
+                null,
+                writeBehindStore,
+                rootContext );
+
+        MeshBaseLifecycleManager life = mb.getMeshBaseLifecycleManager();
+
+        //
+
+        log.info( "Creating and changing MeshObjects in many small Transactions" );
+
+        MeshObjectIdentifier [] names = new MeshObjectIdentifier[ theTestSize ];
+        for( int i=0 ; i<names.length ; ++i ) {
+            Transaction tx = mb.createTransactionNow();
+
+            MeshObject current = life.createMeshObject();
+            current.bless( TestSubjectArea.AA );
+            names[i] = current.getIdentifier();
+
+            tx.commitTransaction();
+        }
+        for( int round=0 ; round<theRounds ; ++round ) {
+            for( int i=0 ; i<names.length ; ++i ) {
+                Transaction tx = mb.createTransactionNow();
+
+                mb.findMeshObjectByIdentifier( names[i] ).setPropertyValue( TestSubjectArea.AA_Y, FloatValue.create( round * i ));
+
+                tx.commitTransaction();
+            }
+        }
+        Transaction tx = mb.createTransactionNow();
+        for( int i=0 ; i<names.length ; i+=5 ) {
+            life.deleteMeshObject( mb.findMeshObjectByIdentifier( names[i] ));
+        }
+        tx.commitTransaction();
+
+        checkEquals( theSqlStore.size(), 0, "Written before flush" );
+        checkEquals( writeBehindStore.getPendingCount(), names.length + 1, "Changes not coalesced" ); // deletions are queued, too, plus home object
+
+        //
+
+        log.info( "Flushing" );
+
+        mb.flush();
+
+        checkEquals( writeBehindStore.getPendingCount(), 0, "Still pending" );
+        checkEquals( theSqlStore.size(), names.length - names.length / 5 + 1, "Wrong number of MeshObjects written" );
+
+        //
+
+        log.info( "Restarting MeshBase without write-behind" );
+
+        mb.die();
+
+        mb = IterableStoreMeshBase.create(
+                theMeshBaseIdentifierFactory.fromExternalForm( "MeshBase" ),
+                theModelBase,
+                null,
+                theSqlStore,
+                rootContext );
+
+        for( int i=0 ; i<names.length ; ++i ) {
+            MeshObject current = mb.findMeshObjectByIdentifier( names[i] );
+            if( i % 5 == 0 ) {
+                checkCondition( current == null, "MeshObject not deleted: " + i );
+            } else {
+                checkObject( current, "MeshObject not found: " + i );
+                checkEquals( current.getPropertyValue( TestSubjectArea.AA_Y ), FloatValue.create( ( theRounds-1 ) * i ), "Wrong value: " + i );
+            }
+        }
+
+        mb.die();
+    }
+
+    /**
+     * The number of MeshObjects to create for the test.
+     */
+    protected int theTestSize = 100;
+
+    /**
+     * The number of times each MeshObject is changed.
+     */
+    protected int theRounds = 5;
+
+    // Our Logger
+    private static Log log = Log.getLogInstance( StoreMeshBaseTest13.class );
+}
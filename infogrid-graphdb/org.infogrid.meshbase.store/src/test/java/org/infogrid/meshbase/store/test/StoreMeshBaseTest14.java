@@ -0,0 +1,241 @@
+//
+// This file is part of InfoGrid(tm). You may not use this file except in
+// compliance with the InfoGrid license. The InfoGrid license and important
+// disclaimers are contained in the file LICENSE.InfoGrid.txt that you should
+// have received with InfoGrid. If you have not received LICENSE.InfoGrid.txt
+// or you do not consent to all aspects of the license and the disclaimers,
+// no license is granted; do not use this file.
+//
+// For more information about InfoGrid go to http://infogrid.org/
+//
+// Copyright 1998-2015 by Johannes Ernst
+// All rights reserved.
+//
+
+package org.infogrid.meshbase.store.test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import org.infogrid.mesh.MeshObject;
+import org.infogrid.mesh.MeshObjectIdentifier;
+import org.infogrid.mesh.set.ByPropertyValueSelector;
+import org.infogrid.mesh.set.ByTypeMeshObjectSelector;
+import org.infogrid.mesh.set.MeshObjectSelector;
+import org.infogrid.meshbase.MeshBaseLifecycleManager;
+import org.infogrid.meshbase.store.IterableStoreMeshBase;
+import org.infogrid.meshbase.store.index.ByPropertyValueStoreMeshBaseIndex;
+import org.infogrid.meshbase.store.index.ByTypeStoreMeshBaseIndex;
+import org.infogrid.meshbase.store.index.StoreMeshBaseIndexer;
+import org.infogrid.meshbase.transaction.Transaction;
+import org.infogrid.model.Test.TestSubjectArea;
+import org.infogrid.model.primitives.FloatValue;
+import org.infogrid.model.primitives.PropertyComparisonOperator;
+import org.infogrid.store.StoreValue;
+import org.infogrid.store.m.MStore;
+import org.infogrid.util.logging.Log;
+import org.junit.Test;
+
+/**
+ * Tests that the paged posting lists of the secondary indexes of a StoreMeshBase are
+ * only rewritten where they change, and that they are cleaned up when they become empty.
+ */
+public class StoreMeshBaseTest14
+        extends
+            AbstractStoreMeshBaseTest
+{
+    /**
+     * Run the test.
+     *
+     * @throws Exception thrown if an Exception occurred during the test
+     */
+    @Test
+    public void run()
+        throws
+            Exception
+    {
+        log.info( "Creating MeshBase" );
+
+        MStore          dataStore  = MStore.create();
+        RecordingMStore indexStore = new RecordingMStore();
+
+        IterableStoreMeshBase mb = IterableStoreMeshBase.create(
+                theMeshBaseIdentifierFactory.fromExternalForm( "MeshBase" ),
+                theModelBase,
+                null,
+                dataStore,
+                rootContext );
+
+        mb.setIndexer( createIndexer( indexStore ));
+
+        MeshBaseLifecycleManager life = mb.getMeshBaseLifecycleManager();
+
+        checkCondition( StoreMeshBaseIndexer.PAGE_SIZE < theTestSize / 4, "Page size too large for this test: " + StoreMeshBaseIndexer.PAGE_SIZE );
+
+        //
+
+        log.info( "Creating MeshObjects" );
+
+        Transaction tx = mb.createTransactionNow();
+
+        MeshObjectIdentifier [] names = new MeshObjectIdentifier[ theTestSize ];
+        for( int i=0 ; i<names.length ; ++i ) {
+            MeshObject current = life.createMeshObject();
+            current.bless( TestSubjectArea.AA );
+            current.setPropertyValue( TestSubjectArea.AA_Y, FloatValue.create( i % 2 ));
+            names[i] = current.getIdentifier();
+        }
+        tx.commitTransaction();
+
+        checkCount( mb, theTestSize, theTestSize/2, "after creation" );
+
+        //
+
+        log.info( "Changing one MeshObject" );
+
+        indexStore.theWritten = 0;
+
+        tx = mb.createTransactionNow();
+        mb.findMeshObjectByIdentifier( names[0] ).setPropertyValue( TestSubjectArea.AA_Y, FloatValue.create( 1 ));
+        tx.commitTransaction();
+
+        checkCondition( indexStore.theWritten <= 6, "Too many index entries written for one change: " + indexStore.theWritten );
+        checkCount( mb, theTestSize, theTestSize/2 - 1, "after change" );
+
+        //
+
+        log.info( "Creating one MeshObject" );
+
+        indexStore.theWritten = 0;
+
+        tx = mb.createTransactionNow();
+        MeshObject created = life.createMeshObject();
+        created.bless( TestSubjectArea.AA );
+        created.setPropertyValue( TestSubjectArea.AA_Y, FloatValue.create( 0 ));
+        tx.commitTransaction();
+
+        checkCondition( indexStore.theWritten <= 6, "Too many index entries written for one creation: " + indexStore.theWritten );
+        checkCount( mb, theTestSize+1, theTestSize/2, "after creation of one" );
+
+        //
+
+        log.info( "Restarting MeshBase" );
+
+        mb.die();
+
+        mb = IterableStoreMeshBase.create(
+                theMeshBaseIdentifierFactory.fromExternalForm( "MeshBase" ),
+                theModelBase,
+                null,
+                dataStore,
+                rootContext );
+
+        mb.setIndexer( createIndexer( indexStore ));
+        life = mb.getMeshBaseLifecycleManager();
+
+        checkCount( mb, theTestSize+1, theTestSize/2, "after restart" );
+
+        //
+
+        log.info( "Deleting all MeshObjects" );
+
+        ArrayList<MeshObject> toDelete = new ArrayList<>();
+        for( MeshObject current : mb ) {
+            if( current != mb.getHomeObject() ) {
+                toDelete.add( current );
+            }
+        }
+
+        tx = mb.createTransactionNow();
+        life.deleteMeshObjects( toDelete.toArray( new MeshObject[ toDelete.size() ] ));
+        tx.commitTransaction();
+
+        checkCount( mb, 0, 0, "after deletion" );
+        checkEquals( indexStore.size(), 0, "Index entries left over" );
+
+        mb.die();
+    }
+
+    /**
+     * Create the StoreMeshBaseIndexer used by this test.
+     *
+     * @param indexStore the Store for the indexes
+     * @return the StoreMeshBaseIndexer
+     */
+    protected StoreMeshBaseIndexer createIndexer(
+            MStore indexStore )
+    {
+        return StoreMeshBaseIndexer.create(
+                indexStore,
+                ByTypeStoreMeshBaseIndex.create( TestSubjectArea.AA ),
+                ByPropertyValueStoreMeshBaseIndex.create( TestSubjectArea.AA_Y, true ));
+    }
+
+    /**
+     * Check the number of MeshObjects found through the indexes.
+     *
+     * @param mb the MeshBase
+     * @param expectedByType the expected number of MeshObjects blessed with AA
+     * @param expectedZero the expected number of MeshObjects whose AA_Y is 0
+     * @param msg message to print when a check fails
+     * @throws Exception thrown if an Exception occurred during the test
+     */
+    protected void checkCount(
+            IterableStoreMeshBase mb,
+            int                   expectedByType,
+            int                   expectedZero,
+            String                msg )
+        throws
+            Exception
+    {
+        MeshObjectSelector byType = ByTypeMeshObjectSelector.create( TestSubjectArea.AA );
+        MeshObjectSelector zero   = ByPropertyValueSelector.create( TestSubjectArea.AA_Y, FloatValue.create( 0 ), PropertyComparisonOperator.EQUAL );
+        MeshObjectSelector range  = ByPropertyValueSelector.create( TestSubjectArea.AA_Y, FloatValue.create( 1 ), PropertyComparisonOperator.SMALLER );
+
+        checkEquals( mb.getIndexer().findCandidateIdentifiers( byType ).length, expectedByType, "Wrong number of candidates by type " + msg );
+        checkEquals( mb.getIndexer().findCandidateIdentifiers( zero ).length,   expectedZero,   "Wrong number of candidates by value " + msg );
+        checkEquals( mb.findMeshObjects( byType ).size(), expectedByType, "Wrong number found by type " + msg );
+        checkEquals( mb.findMeshObjects( zero ).size(),   expectedZero,   "Wrong number found by value " + msg );
+        checkEquals( mb.findMeshObjects( range ).size(),  expectedZero,   "Wrong number found by range " + msg );
+    }
+
+    /**
+     * The number of MeshObjects to create for the test.
+     */
+    protected int theTestSize = 100;
+
+    // Our Logger
+    private static Log log = Log.getLogInstance( StoreMeshBaseTest14.class );
+
+    /**
+     * An MStore that counts the entries written to it.
+     */
+    protected static class RecordingMStore
+            extends
+                MStore
+    {
+        /**
+         * Put or update a number of data elements, and delete a number of others.
+         *
+         * @param toStoreOrUpdate the StoreValues to store or update
+         * @param toDelete the keys of the data elements to delete
+         * @return for each StoreValue, in sequence, true if the value was updated, false if it was put
+         * @throws IOException thrown if an I/O error occurred
+         */
+        @Override
+        public boolean [] putOrUpdateAndDeleteAll(
+                Collection<StoreValue> toStoreOrUpdate,
+                Collection<String>     toDelete )
+            throws
+                IOException
+        {
+            theWritten += toStoreOrUpdate.size() + toDelete.size();
+            return super.putOrUpdateAndDeleteAll( toStoreOrUpdate, toDelete );
+        }
+
+        /**
+         * The number of entries written or deleted.
+         */
+        protected int theWritten;
+    }
+}
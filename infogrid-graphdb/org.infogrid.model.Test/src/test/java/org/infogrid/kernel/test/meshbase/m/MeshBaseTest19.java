@@ -0,0 +1,145 @@
+//
+// This file is part of InfoGrid(tm). You may not use this file except in
+// compliance with the InfoGrid license. The InfoGrid license and important
+// disclaimers are contained in the file LICENSE.InfoGrid.txt that you should
+// have received with InfoGrid. If you have not received LICENSE.InfoGrid.txt
+// or you do not consent to all aspects of the license and the disclaimers,
+// no license is granted; do not use this file.
+//
+// For more information about InfoGrid go to http://infogrid.org/
+//
+// Copyright 1998-2015 by Johannes Ernst
+// All rights reserved.
+//
+
+
+package org.infogrid.kernel.test.meshbase.m;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.infogrid.meshbase.AbstractMeshBase;
+import org.infogrid.meshbase.transaction.Transaction;
+import org.infogrid.meshbase.transaction.TransactionAsapStatistics;
+import org.infogrid.meshbase.transaction.TransactionAsapTimeoutException;
+import org.infogrid.util.logging.Log;
+import org.junit.Test;
+
+/**
+ * Tests that Threads waiting for "asap" Transactions obtain them in sequence, that
+ * they time out, and that the statistics are collected.
+ */
+public class MeshBaseTest19
+        extends
+            AbstractSingleMeshBaseTest
+{
+    /**
+     * Run the test.
+     *
+     * @throws Exception all sorts of things may go wrong during a test.
+     */
+    @Test
+    public void run()
+        throws
+            Exception
+    {
+        final AbstractMeshBase    mb         = (AbstractMeshBase) theMeshBase;
+        TransactionAsapStatistics statistics = mb.getTransactionAsapStatistics();
+
+        statistics.reset();
+
+        //
+
+        log.info( "Queueing Threads behind an open Transaction" );
+
+        Transaction tx = mb.createTransactionAsap();
+
+        checkCondition( mb.createTransactionAsapIfNeeded() == null, "Transaction created on same Thread" );
+
+        final List<Integer> sequence = new ArrayList<>();
+        Thread []           threads  = new Thread[ theNumberOfThreads ];
+
+        for( int i=0 ; i<threads.length ; ++i ) {
+            final int index = i;
+            threads[i] = new Thread() {
+                    @Override
+                    public void run()
+                    {
+                        try {
+                            Transaction myTx = mb.createTransactionAsap();
+                            synchronized( sequence ) {
+                                sequence.add( index );
+                            }
+                            myTx.commitTransaction();
+
+                        } catch( Throwable t ) {
+                            log.error( t );
+                        }
+                    }
+            };
+            threads[i].start();
+
+            while( statistics.getQueueDepth() < i+1 ) { // make sure they queue up in sequence
+                Thread.sleep( 10L );
+            }
+        }
+
+        checkEquals( statistics.getMaxQueueDepth(), threads.length, "Wrong queue depth" );
+
+        tx.commitTransaction();
+
+        for( int i=0 ; i<threads.length ; ++i ) {
+            threads[i].join();
+        }
+
+        checkEquals( sequence.size(), threads.length, "Not all Threads obtained a Transaction" );
+        for( int i=0 ; i<sequence.size() ; ++i ) {
+            checkEquals( sequence.get( i ).intValue(), i, "Wrong sequence at index " + i );
+        }
+        checkEquals( statistics.getObtainedCount(), threads.length + 1L, "Wrong number obtained" );
+        checkEquals( statistics.getQueueDepth(), 0, "Threads still queued" );
+        checkCondition( statistics.getMaxWaitNanos() > 0, "No wait time recorded" );
+
+        //
+
+        log.info( "Timing out" );
+
+        mb.setAsapTransactionTimeout( 200L );
+
+        tx = mb.createTransactionAsap();
+
+        final Throwable [] thrown = new Throwable[1];
+        Thread             waiter = new Thread() {
+                @Override
+                public void run()
+                {
+                    try {
+                        Transaction myTx = mb.createTransactionAsap();
+                        myTx.commitTransaction();
+
+                    } catch( Throwable t ) {
+                        thrown[0] = t;
+                    }
+                }
+        };
+
+        long start = System.currentTimeMillis();
+        waiter.start();
+        waiter.join();
+        long delta = System.currentTimeMillis() - start;
+
+        tx.commitTransaction();
+
+        checkCondition( thrown[0] instanceof TransactionAsapTimeoutException, "No timeout: " + thrown[0] );
+        checkInRange( delta, 200L, 5000L, "Wrong time to time out" );
+        checkEquals( statistics.getTimedOutCount(), 1L, "Wrong number timed out" );
+        checkEquals( statistics.getQueueDepth(), 0, "Threads still queued" );
+    }
+
+    /**
+     * The number of Threads to queue up.
+     */
+    protected int theNumberOfThreads = 5;
+
+    // Our Logger
+    private static Log log = Log.getLogInstance( MeshBaseTest19.class );
+}
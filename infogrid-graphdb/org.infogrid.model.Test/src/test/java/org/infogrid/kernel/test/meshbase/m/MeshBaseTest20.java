@@ -0,0 +1,246 @@
+//
+// This file is part of InfoGrid(tm). You may not use this file except in
+// compliance with the InfoGrid license. The InfoGrid license and important
+// disclaimers are contained in the file LICENSE.InfoGrid.txt that you should
+// have received with InfoGrid. If you have not received LICENSE.InfoGrid.txt
+// or you do not consent to all aspects of the license and the disclaimers,
+// no license is granted; do not use this file.
+//
+// For more information about InfoGrid go to http://infogrid.org/
+//
+// Copyright 1998-2015 by Johannes Ernst
+// All rights reserved.
+//
+
+package org.infogrid.kernel.test.meshbase.m;
+
+import org.infogrid.mesh.MeshObject;
+import org.infogrid.meshbase.AbstractMeshBase;
+import org.infogrid.meshbase.IterableMeshBase;
+import org.infogrid.meshbase.MeshBaseLifecycleManager;
+import org.infogrid.meshbase.transaction.MeshObjectLockManager;
+import org.infogrid.meshbase.transaction.Transaction;
+import org.infogrid.meshbase.transaction.TransactionDeadlockException;
+import org.infogrid.model.Test.TestSubjectArea;
+import org.infogrid.model.primitives.FloatValue;
+import org.infogrid.util.logging.Log;
+import org.junit.Test;
+
+/**
+ * Tests that several Transactions can run concurrently on different MeshObjects,
+ * that they wait for each other on the same MeshObject, and that deadlocks are detected.
+ */
+public class MeshBaseTest20
+        extends
+            AbstractSingleMeshBaseTest
+{
+    /**
+     * Run the test.
+     *
+     * @throws Exception all sorts of things may go wrong during a test.
+     */
+    @Test
+    public void run()
+        throws
+            Exception
+    {
+        final AbstractMeshBase         mb   = (AbstractMeshBase) theMeshBase;
+        final MeshBaseLifecycleManager life = mb.getMeshBaseLifecycleManager();
+
+        MeshObjectLockManager lockManager = MeshObjectLockManager.create( 5000L );
+        mb.setMeshObjectLockManager( lockManager );
+
+        //
+
+        log.info( "Creating MeshObjects" );
+
+        Transaction tx = mb.createTransactionNow();
+
+        final MeshObject a = life.createMeshObject( TestSubjectArea.AA );
+        final MeshObject b = life.createMeshObject( TestSubjectArea.AA );
+
+        tx.commitTransaction();
+
+        checkEquals( lockManager.getLockCount(), 0, "Locks not released" );
+
+        //
+
+        log.info( "Changing different MeshObjects concurrently" );
+
+        tx = mb.createTransactionNow();
+        a.setPropertyValue( TestSubjectArea.AA_Y, FloatValue.create( 1. ));
+
+        final Throwable [] thrown = new Throwable[1];
+        Thread             other  = new Thread() {
+                @Override
+                public void run()
+                {
+                    try {
+                        Transaction myTx = mb.createTransactionNow();
+                        b.setPropertyValue( TestSubjectArea.AA_Y, FloatValue.create( 2. ));
+                        myTx.commitTransaction();
+
+                    } catch( Throwable t ) {
+                        thrown[0] = t;
+                    }
+                }
+        };
+        other.start();
+        other.join();
+
+        checkCondition( thrown[0] == null, "Other Thread failed: " + thrown[0] );
+        checkEquals( b.getPropertyValue( TestSubjectArea.AA_Y ), FloatValue.create( 2. ), "Wrong value on b" );
+        checkEquals( lockManager.getWaitCount(), 0L, "Should not have waited" );
+
+        tx.commitTransaction();
+
+        checkEquals( a.getPropertyValue( TestSubjectArea.AA_Y ), FloatValue.create( 1. ), "Wrong value on a" );
+
+        //
+
+        log.info( "Changing the same MeshObject concurrently" );
+
+        tx = mb.createTransactionNow();
+        a.setPropertyValue( TestSubjectArea.AA_Y, FloatValue.create( 3. ));
+
+        other = new Thread() {
+                @Override
+                public void run()
+                {
+                    try {
+                        Transaction myTx = mb.createTransactionNow();
+                        a.setPropertyValue( TestSubjectArea.AA_Y, FloatValue.create( 4. ));
+                        myTx.commitTransaction();
+
+                    } catch( Throwable t ) {
+                        thrown[0] = t;
+                    }
+                }
+        };
+        other.start();
+
+        while( lockManager.getWaitCount() < 1 ) {
+            Thread.sleep( 10L );
+        }
+        checkCondition( other.isAlive(), "Other Thread did not wait" );
+        checkEquals( a.getPropertyValue( TestSubjectArea.AA_Y ), FloatValue.create( 3. ), "Wrong value on a while waiting" );
+
+        tx.commitTransaction();
+        other.join();
+
+        checkCondition( thrown[0] == null, "Other Thread failed: " + thrown[0] );
+        checkEquals( a.getPropertyValue( TestSubjectArea.AA_Y ), FloatValue.create( 4. ), "Wrong value on a after waiting" );
+
+        //
+
+        log.info( "Creating a deadlock" );
+
+        long waitCount = lockManager.getWaitCount();
+
+        tx = mb.createTransactionNow();
+        a.setPropertyValue( TestSubjectArea.AA_Y, FloatValue.create( 5. ));
+
+        other = new Thread() {
+                @Override
+                public void run()
+                {
+                    try {
+                        Transaction myTx = mb.createTransactionNow();
+                        b.setPropertyValue( TestSubjectArea.AA_Y, FloatValue.create( 6. ));
+                        a.setPropertyValue( TestSubjectArea.AA_Y, FloatValue.create( 6. ));
+                        myTx.commitTransaction();
+
+                    } catch( Throwable t ) {
+                        thrown[0] = t;
+                    }
+                }
+        };
+        other.start();
+
+        while( lockManager.getWaitCount() <= waitCount ) {
+            Thread.sleep( 10L );
+        }
+
+        Throwable deadlock = null;
+        try {
+            b.setPropertyValue( TestSubjectArea.AA_Y, FloatValue.create( 5. ));
+
+        } catch( TransactionDeadlockException ex ) {
+            deadlock = ex;
+            tx.rollbackTransaction( ex );
+        }
+        checkCondition( deadlock != null, "Deadlock not detected" );
+        checkEquals( lockManager.getDeadlockCount(), 1L, "Wrong number of deadlocks" );
+
+        other.join();
+
+        checkCondition( thrown[0] == null, "Other Thread failed: " + thrown[0] );
+        checkEquals( a.getPropertyValue( TestSubjectArea.AA_Y ), FloatValue.create( 6. ), "Wrong value on a after deadlock" );
+        checkEquals( b.getPropertyValue( TestSubjectArea.AA_Y ), FloatValue.create( 6. ), "Wrong value on b after deadlock" );
+        checkEquals( lockManager.getLockCount(), 0, "Locks not released" );
+
+        //
+
+        log.info( "Creating and relating MeshObjects on many Threads" );
+
+        Thread [] threads = new Thread[ theNumberOfThreads ];
+        for( int i=0 ; i<threads.length ; ++i ) {
+            threads[i] = new Thread() {
+                    @Override
+                    public void run()
+                    {
+                        try {
+                            Transaction myTx = mb.createTransactionNow();
+                            MeshObject  here = life.createMeshObject( TestSubjectArea.AA );
+                            for( int j=0 ; j<theNumberOfObjects ; ++j ) {
+                                here.relate( life.createMeshObject( TestSubjectArea.B ));
+                            }
+                            myTx.commitTransaction();
+
+                        } catch( Throwable t ) {
+                            thrown[0] = t;
+                        }
+                    }
+            };
+        }
+        for( int i=0 ; i<threads.length ; ++i ) {
+            threads[i].start();
+        }
+        for( int i=0 ; i<threads.length ; ++i ) {
+            threads[i].join();
+        }
+
+        checkCondition( thrown[0] == null, "Thread failed: " + thrown[0] );
+        checkEquals( ((IterableMeshBase) mb).size(), 3 + threads.length * ( theNumberOfObjects + 1 ), "Wrong number of MeshObjects" );
+        checkEquals( lockManager.getLockCount(), 0, "Locks not released" );
+
+        //
+
+        log.info( "Switching back" );
+
+        tx = mb.createTransactionNow();
+        try {
+            mb.setMeshObjectLockManager( null );
+            reportError( "Could switch with active Transaction" );
+
+        } catch( IllegalStateException ex ) {
+            // expected
+        }
+        tx.commitTransaction();
+
+        mb.setMeshObjectLockManager( null );
+    }
+
+    /**
+     * The number of Threads to run concurrently.
+     */
+    protected int theNumberOfThreads = 8;
+
+    /**
+     * The number of MeshObjects each Thread creates.
+     */
+    protected int theNumberOfObjects = 50;
+
+    // Our Logger
+    private static Log log = Log.getLogInstance( MeshBaseTest20.class );
+}
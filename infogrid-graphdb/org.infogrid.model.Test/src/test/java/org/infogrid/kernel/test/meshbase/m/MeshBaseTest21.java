@@ -0,0 +1,231 @@
+//
+// This file is part of InfoGrid(tm). You may not use this file except in
+// compliance with the InfoGrid license. The InfoGrid license and important
+// disclaimers are contained in the file LICENSE.InfoGrid.txt that you should
+// have received with InfoGrid. If you have not received LICENSE.InfoGrid.txt
+// or you do not consent to all aspects of the license and the disclaimers,
+// no license is granted; do not use this file.
+// 
+// For more information about InfoGrid go to http://infogrid.org/
+//
+// Copyright 1998-2015 by Johannes Ernst
+// All rights reserved.
+//
+
+package org.infogrid.kernel.test.meshbase.m;
+
+import org.infogrid.mesh.MeshObject;
+import org.infogrid.mesh.set.MeshObjectSet;
+import org.infogrid.mesh.set.MeshObjectSetFactory;
+import org.infogrid.meshbase.MeshBase;
+import org.infogrid.meshbase.MeshBaseLifecycleManager;
+import org.infogrid.meshbase.MeshObjectIdentifierFactory;
+import org.infogrid.meshbase.m.MMeshBase;
+import org.infogrid.meshbase.transaction.Transaction;
+import org.infogrid.model.Test.TestSubjectArea;
+import org.infogrid.util.ArrayHelper;
+import org.infogrid.util.logging.Log;
+import org.junit.Test;
+
+/**
+ * Tests contains, set algebra and traversal on large MeshObjectSets and high-degree
+ * MeshObjects, and reports how long they take.
+ */
+public class MeshBaseTest21
+        extends
+            AbstractMeshBaseTest
+{
+    /**
+     * Run the test.
+     *
+     * @throws Exception all sorts of things may go wrong during a test.
+     */
+    @Test
+    public void run()
+        throws
+            Exception
+    {
+        for( int i=0 ; i<TEST_SIZES.length ; ++i ) {
+
+            collectGarbage();
+
+            int n = TEST_SIZES[i];
+
+            log.info( "Running test with " + n + " MeshObjects" );
+
+            MeshBase theMeshBase = MMeshBase.create(
+                    theMeshBaseIdentifierFactory.fromExternalForm( "MeshBase" ),
+                    theModelBase,
+                    null,
+                    rootContext );
+
+            MeshObject [] objs = create( theMeshBase, n );
+            algebra(  theMeshBase, objs );
+            traverse( theMeshBase, objs );
+
+            theMeshBase.die();
+        }
+    }
+
+    /**
+     * Create the test MeshObjects.
+     *
+     * @param mb the MeshBase
+     * @param n the number of MeshObjects to create
+     * @return the created MeshObjects
+     * @throws Exception all sorts of things may go wrong during a test.
+     */
+    protected MeshObject [] create(
+            MeshBase mb,
+            int      n )
+        throws
+            Exception
+    {
+        MeshBaseLifecycleManager    life   = mb.getMeshBaseLifecycleManager();
+        MeshObjectIdentifierFactory idFact = mb.getMeshObjectIdentifierFactory();
+
+        MeshObject [] objs = new MeshObject[ n ];
+
+        Transaction tx = mb.createTransactionNow();
+
+        for( int i=0 ; i<n ; ++i ) {
+            objs[i] = life.createMeshObject( idFact.fromExternalForm( "object-" + String.valueOf( i )), TestSubjectArea.AA );
+        }
+
+        tx.commitTransaction();
+
+        return objs;
+    }
+
+    /**
+     * Test contains, unification, intersection and subtraction on two overlapping sets, each with
+     * two thirds of the MeshObjects.
+     *
+     * @param mb the MeshBase
+     * @param objs the test MeshObjects
+     * @throws Exception all sorts of things may go wrong during a test.
+     */
+    protected void algebra(
+            MeshBase      mb,
+            MeshObject [] objs )
+        throws
+            Exception
+    {
+        MeshObjectSetFactory factory = mb.getMeshObjectSetFactory();
+
+        int third = objs.length / 3;
+
+        long start = startClock();
+
+        MeshObjectSet one = factory.createImmutableMeshObjectSet( ArrayHelper.copyIntoNewArray( objs, 0,     2*third,     MeshObject.class ));
+        MeshObjectSet two = factory.createImmutableMeshObjectSet( ArrayHelper.copyIntoNewArray( objs, third, objs.length, MeshObject.class ));
+
+        log.info( "Took " + getRelativeTime() + " msec to create two sets with " + one.size() + " and " + two.size() + " members" );
+
+        //
+
+        start = startClock();
+
+        int found = 0;
+        for( int i=0 ; i<objs.length ; ++i ) {
+            if( one.contains( objs[i] )) {
+                ++found;
+            }
+            if( two.contains( objs[i].getIdentifier() )) {
+                ++found;
+            }
+        }
+        log.info( "Took " + getRelativeTime() + " msec for " + ( 2*objs.length ) + " contains" );
+
+        checkEquals( found, one.size() + two.size(), "wrong number of contains" );
+
+        //
+
+        start = startClock();
+
+        MeshObjectSet union        = factory.createImmutableMeshObjectSetUnification( one, two );
+        MeshObjectSet intersection = factory.createImmutableMeshObjectSetIntersection( one, two );
+        MeshObjectSet minus        = factory.createImmutableMeshObjectSetMinus( one, two );
+
+        log.info( "Took " + getRelativeTime() + " msec for unification, intersection and minus" );
+
+        checkEquals( union.size(),        objs.length,              "wrong unification size" );
+        checkEquals( intersection.size(), 2*third - third,          "wrong intersection size" );
+        checkEquals( minus.size(),        third,                    "wrong minus size" );
+        checkCondition( union.containsAll( one ),                   "unification does not contain one" );
+        checkCondition( union.containsAll( two ),                   "unification does not contain two" );
+        checkCondition( two.containsAll( intersection ),            "two does not contain intersection" );
+        checkCondition( !two.contains( minus.getMeshObjects()[0] ), "minus not subtracted" );
+        checkCondition( union.hasSameContent( factory.createImmutableMeshObjectSet( objs )), "unification has wrong content" );
+
+        //
+
+        try {
+            MeshObject [] withDuplicate = ArrayHelper.append( objs, objs[ objs.length/2 ], MeshObject.class );
+            factory.createImmutableMeshObjectSet( withDuplicate );
+
+            reportError( "Duplicate not detected" );
+
+        } catch( IllegalArgumentException ex ) {
+            // expected
+        }
+    }
+
+    /**
+     * Test traversal from a MeshObject that is related to all other MeshObjects, and back.
+     *
+     * @param mb the MeshBase
+     * @param objs the test MeshObjects
+     * @throws Exception all sorts of things may go wrong during a test.
+     */
+    protected void traverse(
+            MeshBase      mb,
+            MeshObject [] objs )
+        throws
+            Exception
+    {
+        MeshObject hub = objs[0];
+
+        Transaction tx = mb.createTransactionNow();
+
+        for( int i=1 ; i<objs.length ; ++i ) {
+            hub.relateAndBless( TestSubjectArea.AR1A.getSource(), objs[i] );
+        }
+
+        tx.commitTransaction();
+
+        //
+
+        long start = startClock();
+
+        MeshObjectSet neighbors = hub.traverseToNeighborMeshObjects();
+        MeshObjectSet dest      = hub.traverse( TestSubjectArea.AR1A.getSource() );
+
+        log.info( "Took " + getRelativeTime() + " msec to traverse from a MeshObject with " + ( objs.length-1 ) + " neighbors" );
+
+        checkEquals( neighbors.size(), objs.length-1, "wrong number of neighbors" );
+        checkEquals( dest.size(),      objs.length-1, "wrong number of destinations" );
+
+        //
+
+        start = startClock();
+
+        MeshObjectSet back = dest.traverse( TestSubjectArea.AR1A.getDestination() );
+
+        log.info( "Took " + getRelativeTime() + " msec to traverse back from " + dest.size() + " MeshObjects" );
+
+        checkEquals( back.size(), 1,   "wrong number of sources" );
+        checkIdentity( back.getSingleMember(), hub, "wrong source" );
+    }
+
+    /**
+     * The sizes of the tests to run. Add larger sizes, such as 1000000, for benchmarking.
+     */
+    public static final int [] TEST_SIZES = {
+        1000,
+        10000
+    };
+
+    // Our Logger
+    private static Log log = Log.getLogInstance( MeshBaseTest21.class );
+}
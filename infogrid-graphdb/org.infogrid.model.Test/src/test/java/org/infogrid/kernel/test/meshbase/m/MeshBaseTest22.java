@@ -0,0 +1,210 @@
+//
+// This file is part of InfoGrid(tm). You may not use this file except in
+// compliance with the InfoGrid license. The InfoGrid license and important
+// disclaimers are contained in the file LICENSE.InfoGrid.txt that you should
+// have received with InfoGrid. If you have not received LICENSE.InfoGrid.txt
+// or you do not consent to all aspects of the license and the disclaimers,
+// no license is granted; do not use this file.
+// 
+// For more information about InfoGrid go to http://infogrid.org/
+//
+// Copyright 1998-2015 by Johannes Ernst
+// All rights reserved.
+//
+
+package org.infogrid.kernel.test.meshbase.m;
+
+import org.infogrid.mesh.MeshObject;
+import org.infogrid.mesh.MeshObjectIdentifier;
+import org.infogrid.mesh.set.MeshObjectSet;
+import org.infogrid.meshbase.MeshBase;
+import org.infogrid.meshbase.MeshBaseLifecycleManager;
+import org.infogrid.meshbase.m.MMeshBase;
+import org.infogrid.meshbase.transaction.Transaction;
+import org.infogrid.model.Test.TestSubjectArea;
+import org.infogrid.model.primitives.RoleType;
+import org.infogrid.util.logging.Log;
+import org.junit.Test;
+
+/**
+ * Tests relating, blessing, unblessing, unrelating and traversing a MeshObject with
+ * many neighbors, whose neighbors are indexed.
+ */
+public class MeshBaseTest22
+        extends
+            AbstractMeshBaseTest
+{
+    /**
+     * Run the test.
+     *
+     * @throws Exception all sorts of things may go wrong during a test.
+     */
+    @Test
+    public void run()
+        throws
+            Exception
+    {
+        MeshBase theMeshBase = MMeshBase.create(
+                theMeshBaseIdentifierFactory.fromExternalForm( "MeshBase" ),
+                theModelBase,
+                null,
+                rootContext );
+
+        MeshBaseLifecycleManager life = theMeshBase.getMeshBaseLifecycleManager();
+
+        //
+
+        log.info( "Creating and relating " + N + " neighbors" );
+
+        MeshObject    hub   = null;
+        MeshObject [] spoke = new MeshObject[ N ];
+        RoleType   [] role  = new RoleType[ N ]; // null if not related, or related but not blessed
+
+        long start = startClock();
+
+        Transaction tx = theMeshBase.createTransactionNow();
+
+        hub = life.createMeshObject( TestSubjectArea.AA );
+        for( int i=0 ; i<N ; ++i ) {
+            spoke[i] = life.createMeshObject( TestSubjectArea.B );
+            role[i]  = ROLES[ i % ROLES.length ];
+
+            hub.relateAndBless( role[i], spoke[i] );
+        }
+
+        tx.commitTransaction();
+
+        log.info( "Took " + getRelativeTime() + " msec" );
+
+        checkNeighbors( hub, spoke, role, "after relating" );
+
+        //
+
+        log.info( "Unblessing and unrelating some" );
+
+        tx = theMeshBase.createTransactionNow();
+
+        for( int i=0 ; i<N ; i += 2 ) {
+            if( role[i] == TestSubjectArea.RR.getSource() ) {
+                hub.unblessRelationship( role[i], spoke[i] );
+                role[i] = null;
+            }
+        }
+        for( int i=0 ; i<N ; i += 5 ) {
+            hub.unrelate( spoke[i] );
+            role[i] = null;
+            spoke[i] = null;
+        }
+        for( int i=1 ; i<N ; i += 7 ) {
+            if( spoke[i] != null && role[i] == null ) {
+                hub.blessRelationship( TestSubjectArea.S.getSource(), spoke[i] );
+                role[i] = TestSubjectArea.S.getSource();
+            }
+        }
+
+        tx.commitTransaction();
+
+        checkNeighbors( hub, spoke, role, "after changes" );
+
+        //
+
+        log.info( "Blessing with subtypes, and unblessing again" );
+
+        tx = theMeshBase.createTransactionNow();
+
+        for( int i=3 ; i<N ; i += 11 ) {
+            if( spoke[i] != null && role[i] == TestSubjectArea.R.getSource() ) {
+                hub.blessRelationship( TestSubjectArea.RR.getSource(), spoke[i] ); // replaces the supertype
+                role[i] = TestSubjectArea.RR.getSource();
+            }
+        }
+
+        tx.commitTransaction();
+
+        checkNeighbors( hub, spoke, role, "after subtype blessing" );
+
+        tx = theMeshBase.createTransactionNow();
+
+        for( int i=3 ; i<N ; i += 22 ) {
+            if( role[i] == TestSubjectArea.RR.getSource() ) {
+                hub.unblessRelationship( role[i], spoke[i] );
+                role[i] = null;
+            }
+        }
+
+        tx.commitTransaction();
+
+        checkNeighbors( hub, spoke, role, "after subtype unblessing" );
+
+        theMeshBase.die();
+    }
+
+    /**
+     * Compare the neighbors of the hub with what we expect.
+     *
+     * @param hub the hub MeshObject
+     * @param spoke the MeshObjects that the hub may be related to, or null if not related
+     * @param role the RoleType by which the hub is related to each spoke, if any
+     * @param msg message to print when a check fails
+     * @throws Exception all sorts of things may go wrong during a test.
+     */
+    protected void checkNeighbors(
+            MeshObject    hub,
+            MeshObject [] spoke,
+            RoleType   [] role,
+            String        msg )
+        throws
+            Exception
+    {
+        int nRelated = 0;
+        for( int i=0 ; i<spoke.length ; ++i ) {
+            if( spoke[i] != null ) {
+                checkCondition( hub.isRelated( spoke[i] ), "Not related " + msg + ": " + i );
+                ++nRelated;
+            }
+        }
+        checkEquals( hub.getNeighborMeshObjectIdentifiers().length, nRelated, "Wrong number of neighbors " + msg );
+
+        RoleType [] toTraverse = {
+            TestSubjectArea.R.getSource(),
+            TestSubjectArea.RR.getSource(),
+            TestSubjectArea.S.getSource(),
+            TestSubjectArea.AR1A.getSource()
+        };
+        for( RoleType current : toTraverse ) {
+            MeshObjectSet           found          = hub.traverse( current );
+            MeshObjectIdentifier [] foundIds       = hub.traverseToIdentifiers( current );
+            int                     expectedFound  = 0;
+
+            for( int i=0 ; i<spoke.length ; ++i ) {
+                if( spoke[i] == null ) {
+                    continue;
+                }
+                boolean expected = role[i] != null && role[i].isSpecializationOfOrEquals( current );
+                if( expected ) {
+                    ++expectedFound;
+                }
+                checkEquals( found.contains( spoke[i] ), expected, "Wrong traversal " + msg + " via " + current + ": " + i );
+            }
+            checkEquals( found.size(),    expectedFound, "Wrong number traversed " + msg + " via " + current );
+            checkEquals( foundIds.length, expectedFound, "Wrong number of identifiers traversed " + msg + " via " + current );
+        }
+    }
+
+    /**
+     * The number of neighbors. This must be larger than AMeshObjectNeighborManager.NEIGHBOR_INDEX_THRESHOLD.
+     */
+    public static final int N = 1000;
+
+    /**
+     * The RoleTypes with which to relate, round-robin.
+     */
+    protected static final RoleType [] ROLES = {
+        TestSubjectArea.R.getSource(),
+        TestSubjectArea.RR.getSource(),
+        TestSubjectArea.S.getSource()
+    };
+
+    // Our Logger
+    private static Log log = Log.getLogInstance( MeshBaseTest22.class );
+}
@@ -0,0 +1,239 @@
+//
+// This file is part of InfoGrid(tm). You may not use this file except in
+// compliance with the InfoGrid license. The InfoGrid license and important
+// disclaimers are contained in the file LICENSE.InfoGrid.txt that you should
+// have received with InfoGrid. If you have not received LICENSE.InfoGrid.txt
+// or you do not consent to all aspects of the license and the disclaimers,
+// no license is granted; do not use this file.
+//
+// For more information about InfoGrid go to http://infogrid.org/
+//
+// Copyright 1998-2015 by Johannes Ernst
+// All rights reserved.
+//
+
+package org.infogrid.kernel.test.meshbase.m;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import org.infogrid.mesh.MeshObject;
+import org.infogrid.mesh.MeshObjectIdentifier;
+import org.infogrid.meshbase.MeshBase;
+import org.infogrid.meshbase.MeshBaseLifecycleManager;
+import org.infogrid.meshbase.m.MMeshBase;
+import org.infogrid.meshbase.transaction.Change;
+import org.infogrid.meshbase.transaction.MeshObjectNeighborAddedEvent;
+import org.infogrid.meshbase.transaction.MeshObjectNeighborRemovedEvent;
+import org.infogrid.meshbase.transaction.Transaction;
+import org.infogrid.model.Test.TestSubjectArea;
+import org.infogrid.util.logging.Log;
+import org.junit.Test;
+
+/**
+ * Tests that the neighbor events of a MeshObject with many neighbors carry the right
+ * neighbors before and after each change, even if they are only looked at after
+ * many more changes, and that neighbors remain correct when their number shrinks
+ * and grows across the threshold at which they are indexed.
+ */
+public class MeshBaseTest23
+        extends
+            AbstractMeshBaseTest
+{
+    /**
+     * Run the test.
+     *
+     * @throws Exception all sorts of things may go wrong during a test.
+     */
+    @Test
+    public void run()
+        throws
+            Exception
+    {
+        MeshBase theMeshBase = MMeshBase.create(
+                theMeshBaseIdentifierFactory.fromExternalForm( "MeshBase" ),
+                theModelBase,
+                null,
+                rootContext );
+
+        MeshBaseLifecycleManager life = theMeshBase.getMeshBaseLifecycleManager();
+
+        //
+
+        log.info( "Creating and relating " + N + " neighbors" );
+
+        MeshObject    hub   = null;
+        MeshObject [] spoke = new MeshObject[ N ];
+
+        Transaction tx = theMeshBase.createTransactionNow();
+
+        hub = life.createMeshObject( TestSubjectArea.AA );
+        for( int i=0 ; i<N ; ++i ) {
+            spoke[i] = life.createMeshObject( TestSubjectArea.B );
+            hub.relate( spoke[i] );
+        }
+
+        tx.commitTransaction();
+
+        Set<MeshObjectIdentifier> expected = new HashSet<>();
+        checkEvents( hub, tx, expected, "after relating" );
+        checkEquals( expected.size(), N, "Wrong number of neighbors in events after relating" );
+        checkNeighbors( hub, expected, "after relating" );
+
+        //
+
+        log.info( "Unrelating all but " + REMAINING + ", in scattered order" );
+
+        tx = theMeshBase.createTransactionNow();
+
+        for( int i=0 ; i<N-REMAINING ; ++i ) {
+            int index = ( i * STRIDE ) % N;
+            hub.unrelate( spoke[index] );
+            spoke[index] = null;
+        }
+
+        tx.commitTransaction();
+
+        checkEvents( hub, tx, expected, "after unrelating" );
+        checkEquals( expected.size(), REMAINING, "Wrong number of neighbors in events after unrelating" );
+        checkNeighbors( hub, expected, "after unrelating" );
+
+        //
+
+        log.info( "Relating again" );
+
+        tx = theMeshBase.createTransactionNow();
+
+        for( int i=0 ; i<N ; ++i ) {
+            if( spoke[i] == null ) {
+                spoke[i] = life.createMeshObject( TestSubjectArea.B );
+                hub.relate( spoke[i] );
+            }
+        }
+
+        tx.commitTransaction();
+
+        checkEvents( hub, tx, expected, "after relating again" );
+        checkEquals( expected.size(), N, "Wrong number of neighbors in events after relating again" );
+        checkNeighbors( hub, expected, "after relating again" );
+
+        theMeshBase.die();
+    }
+
+    /**
+     * Replay the neighbor events of the hub in a committed Transaction, and check that
+     * each event's neighbors before and after the change are consistent with the replay.
+     *
+     * @param hub the hub MeshObject
+     * @param tx the Transaction
+     * @param expected the identifiers of the neighbors of the hub prior to the Transaction, updated during the replay
+     * @param msg message to print when a check fails
+     */
+    protected void checkEvents(
+            MeshObject                hub,
+            Transaction               tx,
+            Set<MeshObjectIdentifier> expected,
+            String                    msg )
+    {
+        int count = 0;
+        for( Change current : tx.getChangeSet().getChanges() ) {
+            MeshObjectIdentifier [] oldValue;
+            MeshObjectIdentifier [] newValue;
+            MeshObjectIdentifier    delta;
+
+            if( current instanceof MeshObjectNeighborAddedEvent ) {
+                MeshObjectNeighborAddedEvent realCurrent = (MeshObjectNeighborAddedEvent) current;
+                if( !hub.getIdentifier().equals( realCurrent.getSourceIdentifier() )) {
+                    continue;
+                }
+                oldValue = realCurrent.getOldValueIdentifier();
+                newValue = realCurrent.getNewValueIdentifier();
+                delta    = realCurrent.getDeltaValueIdentifier()[0];
+
+                checkCondition( !expected.contains( delta ), "Added again " + msg + ": " + delta );
+                checkEquals( toSet( oldValue ), expected, "Wrong old neighbors " + msg + ", event " + count );
+                expected.add( delta );
+
+            } else if( current instanceof MeshObjectNeighborRemovedEvent ) {
+                MeshObjectNeighborRemovedEvent realCurrent = (MeshObjectNeighborRemovedEvent) current;
+                if( !hub.getIdentifier().equals( realCurrent.getSourceIdentifier() )) {
+                    continue;
+                }
+                oldValue = realCurrent.getOldValueIdentifier();
+                newValue = realCurrent.getNewValueIdentifier();
+                delta    = realCurrent.getDeltaValueIdentifier()[0];
+
+                checkCondition( expected.contains( delta ), "Not a neighbor " + msg + ": " + delta );
+                checkEquals( toSet( oldValue ), expected, "Wrong old neighbors " + msg + ", event " + count );
+                expected.remove( delta );
+
+            } else {
+                continue;
+            }
+            checkEquals( toSet( newValue ), expected, "Wrong new neighbors " + msg + ", event " + count );
+            ++count;
+        }
+    }
+
+    /**
+     * Compare the neighbors of the hub with what we expect.
+     *
+     * @param hub the hub MeshObject
+     * @param expected the identifiers of the neighbors we expect
+     * @param msg message to print when a check fails
+     * @throws Exception all sorts of things may go wrong during a test.
+     */
+    protected void checkNeighbors(
+            MeshObject                hub,
+            Set<MeshObjectIdentifier> expected,
+            String                    msg )
+        throws
+            Exception
+    {
+        MeshObjectIdentifier [] found = hub.getNeighborMeshObjectIdentifiers();
+
+        checkEquals( found.length, expected.size(), "Wrong number of neighbors " + msg );
+        checkEquals( toSet( found ), expected, "Wrong neighbors " + msg );
+        checkEquals( hub.traverseToNeighborMeshObjects().size(), expected.size(), "Wrong number of neighbors traversed " + msg );
+
+        for( MeshObjectIdentifier current : expected ) {
+            checkCondition( hub.isRelated( current ), "Not related " + msg + ": " + current );
+        }
+    }
+
+    /**
+     * Convert an array of identifiers, which may be null, into a Set.
+     *
+     * @param ids the identifiers, or null
+     * @return the Set
+     */
+    protected static Set<MeshObjectIdentifier> toSet(
+            MeshObjectIdentifier [] ids )
+    {
+        Set<MeshObjectIdentifier> ret = new HashSet<>();
+        if( ids != null ) {
+            ret.addAll( Arrays.asList( ids ));
+        }
+        return ret;
+    }
+
+    /**
+     * The number of neighbors. This must be larger than AMeshObjectNeighborManager.NEIGHBOR_INDEX_THRESHOLD.
+     */
+    public static final int N = 1000;
+
+    /**
+     * The number of neighbors that remain after unrelating. This must be smaller than half of
+     * AMeshObjectNeighborManager.NEIGHBOR_INDEX_THRESHOLD.
+     */
+    public static final int REMAINING = 10;
+
+    /**
+     * Unrelate every STRIDE-th neighbor, wrapping around, so neighbors are not removed in sequence.
+     * This must not have a common divisor with N.
+     */
+    public static final int STRIDE = 7;
+
+    // Our Logger
+    private static Log log = Log.getLogInstance( MeshBaseTest23.class );
+}
@@ -0,0 +1,305 @@
+//
+// This file is part of InfoGrid(tm). You may not use this file except in
+// compliance with the InfoGrid license. The InfoGrid license and important
+// disclaimers are contained in the file LICENSE.InfoGrid.txt that you should
+// have received with InfoGrid. If you have not received LICENSE.InfoGrid.txt
+// or you do not consent to all aspects of the license and the disclaimers,
+// no license is granted; do not use this file.
+//
+// For more information about InfoGrid go to http://infogrid.org/
+//
+// Copyright 1998-2015 by Johannes Ernst
+// All rights reserved.
+//
+
+package org.infogrid.kernel.test.modelbase;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import org.infogrid.model.Test.TestSubjectArea;
+import org.infogrid.model.primitives.AttributableMeshType;
+import org.infogrid.model.primitives.BooleanValue;
+import org.infogrid.model.primitives.EntityType;
+import org.infogrid.model.primitives.L10PropertyValueMapImpl;
+import org.infogrid.model.primitives.MeshType;
+import org.infogrid.model.primitives.MeshTypeIdentifier;
+import org.infogrid.model.primitives.MultiplicityValue;
+import org.infogrid.model.primitives.RelationshipType;
+import org.infogrid.model.primitives.RoleType;
+import org.infogrid.model.primitives.StringValue;
+import org.infogrid.model.primitives.SubjectArea;
+import org.infogrid.model.primitives.m.MAttributableMeshType;
+import org.infogrid.model.primitives.m.MRoleType;
+import org.infogrid.modelbase.MeshTypeLifecycleManager;
+import org.infogrid.util.logging.Log;
+import org.junit.Test;
+
+/**
+ * Tests that the supertype tables of AttributableMeshTypes and RoleTypes agree with
+ * the inheritance hierarchy, and that they follow changes to it while a model is loaded.
+ */
+public class ModelBaseTest4
+        extends
+            AbstractModelBaseTest
+{
+    /**
+     * Run the test.
+     *
+     * @throws Exception all sorts of things may go wrong during a test
+     */
+    @Test
+    public void run()
+        throws
+            Exception
+    {
+        log.info( "Loading Subject Areas" );
+
+        populateModelBase();
+
+        ArrayList<AttributableMeshType> amts  = new ArrayList<>();
+        ArrayList<RoleType>             roles = new ArrayList<>();
+
+        Iterator<MeshType> iter = theModelBase.iterator();
+        while( iter.hasNext() ) {
+            MeshType current = iter.next();
+
+            if( current instanceof AttributableMeshType ) {
+                amts.add( (AttributableMeshType) current );
+            }
+            if( current instanceof RelationshipType ) {
+                RelationshipType realCurrent = (RelationshipType) current;
+
+                roles.add( realCurrent.getSource() );
+                if( realCurrent.getDestination() != realCurrent.getSource() ) {
+                    roles.add( realCurrent.getDestination() );
+                }
+            }
+        }
+        checkCondition( !amts.isEmpty(),  "No AttributableMeshTypes found" );
+        checkCondition( !roles.isEmpty(), "No RoleTypes found" );
+
+        //
+
+        log.info( "Comparing distances to supertypes of " + amts.size() + " AttributableMeshTypes" );
+
+        for( AttributableMeshType current : amts ) {
+            checkCondition( ((MAttributableMeshType)current).getTypeIndex() >= 0, "No index assigned: " + current );
+        }
+        for( AttributableMeshType sub : amts ) {
+            for( AttributableMeshType sup : amts ) {
+                int expected = determineDistance( sub, sup );
+
+                checkEquals( sub.getDistanceToSupertype( sup ), expected,      "Wrong distance from " + sub + " to " + sup );
+                checkEquals( sub.isSubtypeOfOrEquals( sup ),    expected >= 0, "Wrong subtype check of " + sub + " against " + sup );
+            }
+        }
+
+        //
+
+        log.info( "Comparing specializations of " + roles.size() + " RoleTypes" );
+
+        for( RoleType current : roles ) {
+            checkCondition( ((MRoleType)current).getRoleTypeIndex() >= 0, "No index assigned: " + current );
+        }
+        for( RoleType sub : roles ) {
+            for( RoleType sup : roles ) {
+                checkEquals( sub.isSpecializationOfOrEquals( sup ), determineSpecialization( sub, sup ), "Wrong specialization check of " + sub + " against " + sup );
+            }
+        }
+
+        checkCondition(  TestSubjectArea.RR.getSource().isSpecializationOfOrEquals( TestSubjectArea.R.getSource() ),      "RR does not refine R" );
+        checkCondition( !TestSubjectArea.R.getSource().isSpecializationOfOrEquals( TestSubjectArea.RR.getSource() ),      "R refines RR" );
+        checkCondition( !TestSubjectArea.RR.getSource().isSpecializationOfOrEquals( TestSubjectArea.RR.getDestination() ), "RR source refines its destination" );
+
+        //
+
+        log.info( "Creating a model" );
+
+        MeshTypeLifecycleManager life = theModelBase.getMeshTypeLifecycleManager();
+
+        SubjectArea sa = life.createSubjectArea(
+                theModelBase.getMeshTypeIdentifierFactory().fromExternalForm( "org.infogrid.kernel.test.modelbase.ModelBaseTest4" ),
+                StringValue.create( "ModelBaseTest4" ),
+                L10PropertyValueMapImpl.create( StringValue.create( "ModelBaseTest4" ) ),
+                null,
+                new SubjectArea[0],
+                getClass().getClassLoader(),
+                BooleanValue.FALSE,
+                BooleanValue.FALSE );
+
+        EntityType a = createEntityType( life, sa, "A" );
+        EntityType b = createEntityType( life, sa, "B", a );
+        EntityType c = createEntityType( life, sa, "C", b );
+        EntityType d = createEntityType( life, sa, "D", a );
+        EntityType e = createEntityType( life, sa, "E", c, d );
+
+        checkEquals( e.getDistanceToSupertype( e ),  0, "Wrong distance to itself" );
+        checkEquals( e.getDistanceToSupertype( c ),  1, "Wrong distance to direct supertype" );
+        checkEquals( e.getDistanceToSupertype( b ),  2, "Wrong distance to indirect supertype" );
+        checkEquals( e.getDistanceToSupertype( a ),  2, "Shortest path to supertype not found" );
+        checkEquals( a.getDistanceToSupertype( e ), -1, "Supertype is subtype" );
+        checkEquals( b.getDistanceToSupertype( d ), -1, "Unrelated types are related" );
+
+        RelationshipType x = createRelationshipType( life, sa, "X", a, null );
+        RelationshipType y = createRelationshipType( life, sa, "Y", a, x );
+        RelationshipType z = createRelationshipType( life, sa, "Z", a, y );
+        RelationshipType w = createRelationshipType( life, sa, "W", a, null );
+
+        checkCondition(  z.getSource().isSpecializationOfOrEquals( z.getSource() ),      "RoleType does not refine itself" );
+        checkCondition(  z.getSource().isSpecializationOfOrEquals( y.getSource() ),      "RoleType does not refine direct super RoleType" );
+        checkCondition(  z.getSource().isSpecializationOfOrEquals( x.getSource() ),      "RoleType does not refine indirect super RoleType" );
+        checkCondition( !z.getSource().isSpecializationOfOrEquals( x.getDestination() ), "Source RoleType refines destination RoleType" );
+        checkCondition( !x.getSource().isSpecializationOfOrEquals( z.getSource() ),      "Super RoleType refines RoleType" );
+        checkCondition( !z.getSource().isSpecializationOfOrEquals( w.getSource() ),      "Unrelated RoleTypes are related" );
+
+        //
+
+        log.info( "Changing the super RoleTypes of an ancestor" );
+
+        ((MRoleType)y.getSource()).setDirectSuperRoleTypes( new MRoleType[] { (MRoleType) x.getSource(), (MRoleType) w.getSource() } );
+
+        checkCondition( y.getSource().isSpecializationOfOrEquals( w.getSource() ), "Changed RoleType not updated" );
+        checkCondition( z.getSource().isSpecializationOfOrEquals( w.getSource() ), "Descendant of changed RoleType not updated" );
+        checkCondition( z.getSource().isSpecializationOfOrEquals( x.getSource() ), "Previous super RoleType lost" );
+
+        ((MRoleType)y.getSource()).setDirectSuperRoleTypes( new MRoleType[] { (MRoleType) x.getSource() } );
+
+        checkCondition( !z.getSource().isSpecializationOfOrEquals( w.getSource() ), "Descendant of changed RoleType not updated after removal" );
+        checkCondition( !((MRoleType)w.getSource()).equals( y.getSource() ),         "RoleTypes confused" );
+    }
+
+    /**
+     * Create an EntityType in the test model.
+     *
+     * @param life the MeshTypeLifecycleManager
+     * @param sa the SubjectArea
+     * @param name the name of the EntityType
+     * @param supertypes the supertypes of the EntityType
+     * @return the created EntityType
+     * @throws Exception all sorts of things may go wrong during a test
+     */
+    protected EntityType createEntityType(
+            MeshTypeLifecycleManager life,
+            SubjectArea              sa,
+            String                   name,
+            AttributableMeshType ... supertypes )
+        throws
+            Exception
+    {
+        return life.createEntityType(
+                theModelBase.getMeshTypeIdentifierFactory().fromExternalForm( sa.getIdentifier().toExternalForm() + "/" + name ),
+                StringValue.create( name ),
+                L10PropertyValueMapImpl.create( StringValue.create( name ) ),
+                null,
+                null,
+                sa,
+                supertypes,
+                new MeshTypeIdentifier[0],
+                null,
+                new String[0],
+                new StringValue[0],
+                new StringValue[0],
+                new String[0],
+                BooleanValue.FALSE,
+                BooleanValue.FALSE,
+                BooleanValue.TRUE,
+                BooleanValue.FALSE,
+                BooleanValue.FALSE );
+    }
+
+    /**
+     * Create a RelationshipType between an EntityType and itself in the test model.
+     *
+     * @param life the MeshTypeLifecycleManager
+     * @param sa the SubjectArea
+     * @param name the name of the RelationshipType
+     * @param entityType the source and destination EntityType
+     * @param supertype the RelationshipType whose RoleTypes are refined, if any
+     * @return the created RelationshipType
+     * @throws Exception all sorts of things may go wrong during a test
+     */
+    protected RelationshipType createRelationshipType(
+            MeshTypeLifecycleManager life,
+            SubjectArea              sa,
+            String                   name,
+            EntityType               entityType,
+            RelationshipType         supertype )
+        throws
+            Exception
+    {
+        return life.createRelationshipType(
+                theModelBase.getMeshTypeIdentifierFactory().fromExternalForm( sa.getIdentifier().toExternalForm() + "/" + name ),
+                StringValue.create( name ),
+                L10PropertyValueMapImpl.create( StringValue.create( name ) ),
+                null,
+                sa,
+                MultiplicityValue.ZERO_N,
+                MultiplicityValue.ZERO_N,
+                entityType,
+                entityType,
+                supertype != null ? supertype.getSource()      : null,
+                supertype != null ? supertype.getDestination() : null,
+                new String[0],
+                new String[0],
+                BooleanValue.FALSE,
+                BooleanValue.FALSE,
+                BooleanValue.FALSE );
+    }
+
+    /**
+     * Determine the distance from one AttributableMeshType to another by walking the
+     * inheritance hierarchy breadth-first.
+     *
+     * @param sub the potential subtype
+     * @param sup the potential supertype
+     * @return the number of steps, or -1 if sup is not a supertype of sub
+     */
+    protected static int determineDistance(
+            AttributableMeshType sub,
+            AttributableMeshType sup )
+    {
+        ArrayList<AttributableMeshType> level    = new ArrayList<>();
+        int                             distance = 0;
+
+        level.add( sub );
+        while( !level.isEmpty() ) {
+            ArrayList<AttributableMeshType> next = new ArrayList<>();
+            for( AttributableMeshType current : level ) {
+                if( current.equals( sup )) {
+                    return distance;
+                }
+                for( AttributableMeshType superType : current.getDirectSupertypes() ) {
+                    next.add( superType );
+                }
+            }
+            level = next;
+            ++distance;
+        }
+        return -1;
+    }
+
+    /**
+     * Determine whether one RoleType refines another by walking the RoleType hierarchy.
+     *
+     * @param sub the potential refining RoleType
+     * @param sup the potentially refined RoleType
+     * @return true if sub refines sup, or is the same
+     */
+    protected static boolean determineSpecialization(
+            RoleType sub,
+            RoleType sup )
+    {
+        if( sub.equals( sup )) {
+            return true;
+        }
+        for( RoleType current : sub.getDirectSuperRoleTypes() ) {
+            if( determineSpecialization( current, sup )) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Our Logger
+    private static Log log = Log.getLogInstance( ModelBaseTest4.class );
+}
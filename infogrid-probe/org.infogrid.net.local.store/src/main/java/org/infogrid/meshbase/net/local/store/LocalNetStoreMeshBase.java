@@ -467,13 +467,7 @@ public class LocalNetStoreMeshBase
         }
         theReplicationChangedObjectsToBeStored.clear();
         
-        for( Map.Entry<MeshObjectIdentifier,MeshObject> current : toWrite.entrySet() ) {
-            if( current.getValue() != null ) {
-                map.saveValueToStorageUponCommit( current.getKey(), current.getValue() );
-            } else {
-                map.removeValueFromStorageUponCommit( current.getKey() );
-            }
-        }
+        map.writeToStorageUponCommit( toWrite );
         map.transactionDone();
     }
 
@@ -0,0 +1,372 @@
+//
+// This file is part of InfoGrid(tm). You may not use this file except in
+// compliance with the InfoGrid license. The InfoGrid license and important
+// disclaimers are contained in the file LICENSE.InfoGrid.txt that you should
+// have received with InfoGrid. If you have not received LICENSE.InfoGrid.txt
+// or you do not consent to all aspects of the license and the disclaimers,
+// no license is granted; do not use this file.
+//
+// For more information about InfoGrid go to http://infogrid.org/
+//
+// Copyright 1998-2015 by Johannes Ernst
+// All rights reserved.
+//
+
+package org.infogrid.probe.store.test;
+
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.net.URISyntaxException;
+import java.text.ParseException;
+import java.util.concurrent.ScheduledExecutorService;
+import org.diet4j.core.ModuleException;
+import org.infogrid.mesh.EntityBlessedAlreadyException;
+import org.infogrid.mesh.EntityNotBlessedException;
+import org.infogrid.mesh.IllegalPropertyTypeException;
+import org.infogrid.mesh.IllegalPropertyValueException;
+import org.infogrid.mesh.IsAbstractException;
+import org.infogrid.mesh.MeshObject;
+import org.infogrid.mesh.MeshObjectIdentifierNotUniqueException;
+import org.infogrid.mesh.NotPermittedException;
+import org.infogrid.mesh.NotRelatedException;
+import org.infogrid.mesh.RelatedAlreadyException;
+import org.infogrid.mesh.RoleTypeBlessedAlreadyException;
+import org.infogrid.meshbase.net.CoherenceSpecification;
+import org.infogrid.meshbase.net.NetMeshBaseIdentifier;
+import org.infogrid.meshbase.net.proxy.m.MPingPongNetMessageEndpointFactory;
+import org.infogrid.meshbase.transaction.TransactionException;
+import org.infogrid.model.Probe.ProbeSubjectArea;
+import org.infogrid.model.Test.TestSubjectArea;
+import org.infogrid.model.primitives.IntegerValue;
+import org.infogrid.model.primitives.StringValue;
+import org.infogrid.probe.ApiProbe;
+import org.infogrid.probe.ProbeDirectory;
+import org.infogrid.probe.ProbeException;
+import org.infogrid.probe.StagingMeshBase;
+import org.infogrid.probe.manager.PassiveProbeManager;
+import org.infogrid.probe.manager.store.StorePassiveProbeManager;
+import org.infogrid.probe.shadow.ShadowMeshBase;
+import org.infogrid.probe.shadow.store.StoreShadowMeshBase;
+import org.infogrid.probe.shadow.store.StoreShadowMeshBaseFactory;
+import org.infogrid.store.Store;
+import org.infogrid.store.StoreValue;
+import org.infogrid.store.prefixing.IterablePrefixingStore;
+import org.infogrid.util.logging.Log;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests that an incremental StoreShadowMeshBase only writes the MeshObjects that changed
+ * in a Probe run, and loads its MeshObjects lazily when re-created.
+ */
+public class StoreShadowMeshBaseTest10
+        extends
+            AbstractStoreProbeTest
+{
+    /**
+     * Run the test.
+     *
+     * @throws Exception all sorts of things may go wrong in tests
+     */
+    @Test
+    public void run()
+        throws
+            Exception
+    {
+        //
+
+        log.info( "accessing test data with meshBase" );
+
+        ShadowMeshBase meshBase1 = theProbeManager1.obtainFor( test_NETWORK_IDENTIFIER, CoherenceSpecification.ONE_TIME_ONLY );
+        checkObject( meshBase1, "MeshBase1 not created" );
+        checkCondition( ((StoreShadowMeshBase) meshBase1).isIncremental(), "MeshBase1 not incremental" );
+
+        MeshObject home1 = meshBase1.getHomeObject();
+        checkObject( home1, "no home object found" );
+        checkCondition( home1.isBlessedBy( TestSubjectArea.AA ), "Home object not blessed" );
+        checkEquals( home1.traverseToNeighborMeshObjects().size(), theTestSize, "wrong number of neighbors" );
+
+        checkEquals( theShadowObjectStore.size(), theTestSize + 1, "wrong number of MeshObjects in the Store" );
+        checkEquals( theListener.theWriteCount, theTestSize + 1, "wrong number of writes for first run" );
+
+        //
+
+        log.info( "running the Probe again, changing one MeshObject" );
+
+        theListener.reset();
+
+        meshBase1.doUpdateNow();
+
+        checkEquals( home1.getPropertyValue( ProbeSubjectArea.PROBEUPDATESPECIFICATION_PROBERUNCOUNTER ), IntegerValue.create( 2 ), "Wrong number of probe runs" );
+        checkEquals( theShadowObjectStore.size(), theTestSize + 1, "wrong number of MeshObjects in the Store" );
+        checkEquals( theListener.theWriteCount, 2, "should only have written the home object and the changed object" );
+
+        //
+
+        log.info( "Checking that Shadow goes away when not referenced" );
+
+        WeakReference<ShadowMeshBase> meshBase1Ref = new WeakReference<ShadowMeshBase>( meshBase1 );
+        meshBase1 = null;
+        home1     = null;
+
+        sleepUntilIsGone( meshBase1Ref, 12000L, "ShadowMeshBase still here, should have been garbage collected" );
+
+        //
+
+        log.info( "Checking that the Shadow gets transparently re-created, and loads lazily" );
+
+        theListener.reset();
+
+        ShadowMeshBase meshBase2 = theProbeManager1.get( test_NETWORK_IDENTIFIER );
+        checkObject( meshBase2, "MeshBase2 not re-created" );
+        checkEquals( theListener.theReadCount, 0, "MeshObjects read eagerly" );
+
+        MeshObject home2 = meshBase2.getHomeObject();
+        checkObject( home2, "no home object found" );
+        checkEquals( home2.getPropertyValue( ProbeSubjectArea.PROBEUPDATESPECIFICATION_PROBERUNCOUNTER ), IntegerValue.create( 2 ), "Wrong number of probe runs" );
+        checkEquals( theListener.theReadCount, 1, "more than the home object read" );
+
+        MeshObject changed2 = meshBase2.findMeshObjectByIdentifier( meshBase2.getMeshObjectIdentifierFactory().fromExternalForm( "obj-0" ));
+        checkObject( changed2, "changed object not found" );
+        checkEquals( changed2.getPropertyValue( TestSubjectArea.B_U ), StringValue.create( "changed" ), "change not persisted" );
+
+        checkEquals( home2.traverseToNeighborMeshObjects().size(), theTestSize, "wrong number of neighbors" );
+        checkEquals( probeRunCounter, 2, "Probe run wrong number of times" ); // this proves that it was recreated from disk
+    }
+
+    /**
+     * Setup.
+     *
+     * @throws Exception all sorts of things may go wrong in tests
+     */
+    @Before
+    @Override
+    public void setup()
+        throws
+            Exception
+    {
+        super.setup();
+
+        probeRunCounter = 0;
+
+        theProbeDirectory.addExactUrlMatch( new ProbeDirectory.ExactMatchDescriptor(
+                test_NETWORK_IDENTIFIER.toExternalForm(),
+                TestApiProbe.class ));
+
+        //
+
+        log.info( "Deleting old database and creating new database" );
+
+        theSqlStore.initializeHard();
+
+        IterablePrefixingStore theShadowStore      = IterablePrefixingStore.create( "Shadow",       theSqlStore );
+        IterablePrefixingStore theShadowProxyStore = IterablePrefixingStore.create( "ShadowProxy",  theSqlStore );
+        theShadowObjectStore                       = IterablePrefixingStore.create( "ShadowObject", theSqlStore );
+
+        theListener = new CountingStoreListener();
+        theShadowObjectStore.addDirectStoreListener( theListener );
+
+        //
+
+        exec = createThreadPool( 1 );
+
+        MPingPongNetMessageEndpointFactory shadowEndpointFactory = MPingPongNetMessageEndpointFactory.create( exec );
+
+        StoreShadowMeshBaseFactory shadowFactory = StoreShadowMeshBaseFactory.create(
+                theMeshBaseIdentifierFactory,
+                shadowEndpointFactory,
+                theModelBase,
+                theShadowStore,
+                theShadowObjectStore,
+                theShadowProxyStore,
+                rootContext );
+
+        theProbeManager1 = StorePassiveProbeManager.create( shadowFactory, theProbeDirectory, theShadowStore );
+        shadowEndpointFactory.setNameServer( theProbeManager1.getNetMeshBaseNameServer() );
+        shadowFactory.setProbeManager( theProbeManager1 );
+    }
+
+    /**
+     * Cleanup.
+     */
+    @After
+    public void cleanup()
+    {
+        theProbeManager1.die( true );
+        theProbeManager1 = null;
+
+        exec.shutdown();
+        exec = null;
+    }
+
+    // Our Logger
+    private static final Log log = Log.getLogInstance( StoreShadowMeshBaseTest10.class );
+
+    /**
+     * Our ThreadPool.
+     */
+    protected ScheduledExecutorService exec;
+
+    /**
+     * The NetMeshBaseIdentifier identifying this Probe.
+     */
+    protected static final NetMeshBaseIdentifier test_NETWORK_IDENTIFIER;
+    static {
+        NetMeshBaseIdentifier temp = null;
+        try {
+            temp = theMeshBaseIdentifierFactory.fromExternalForm( "test://example.local" );
+
+        } catch( Throwable t ) {
+            log.error( t );
+        }
+        test_NETWORK_IDENTIFIER = temp;
+    }
+
+    /**
+     * The ProbeManager that we use for the first Probe.
+     */
+    protected PassiveProbeManager theProbeManager1;
+
+    /**
+     * The Store in which the shadows' MeshObjects are stored.
+     */
+    protected IterablePrefixingStore theShadowObjectStore;
+
+    /**
+     * Counts the operations on theShadowObjectStore.
+     */
+    protected CountingStoreListener theListener;
+
+    /**
+     * The number of MeshObjects, in addition to the home object, that the Probe instantiates.
+     */
+    protected static final int theTestSize = 100;
+
+    /**
+     * Counter for probe runs.
+     */
+    protected static int probeRunCounter = 0;
+
+    /**
+     * The test Probe. All runs after the first change one MeshObject.
+     */
+    public static class TestApiProbe
+            implements
+                ApiProbe
+    {
+        public void readFromApi(
+                NetMeshBaseIdentifier  networkId,
+                CoherenceSpecification coherence,
+                StagingMeshBase        mb )
+            throws
+                IsAbstractException,
+                EntityBlessedAlreadyException,
+                EntityNotBlessedException,
+                RelatedAlreadyException,
+                NotRelatedException,
+                RoleTypeBlessedAlreadyException,
+                MeshObjectIdentifierNotUniqueException,
+                IllegalPropertyTypeException,
+                IllegalPropertyValueException,
+                TransactionException,
+                NotPermittedException,
+                ProbeException,
+                IOException,
+                ModuleException,
+                URISyntaxException,
+                ParseException
+        {
+            ++probeRunCounter;
+
+            MeshObject home = mb.getHomeObject();
+            home.bless( TestSubjectArea.AA );
+            home.setPropertyValue( TestSubjectArea.A_X, StringValue.create( "A_X" ));
+
+            for( int i=0 ; i<theTestSize ; ++i ) {
+                MeshObject other = mb.getMeshBaseLifecycleManager().createMeshObject(
+                        mb.getMeshObjectIdentifierFactory().fromExternalForm( "obj-" + i ),
+                        TestSubjectArea.B );
+
+                if( i == 0 && probeRunCounter > 1 ) {
+                    other.setPropertyValue( TestSubjectArea.B_U, StringValue.create( "changed" ));
+                } else {
+                    other.setPropertyValue( TestSubjectArea.B_U, StringValue.create( "B_U-" + i ));
+                }
+                home.relate( other );
+            }
+        }
+    }
+
+    /**
+     * Counts reads and writes.
+     */
+    public static class CountingStoreListener
+            extends
+                TestStoreListener
+    {
+        /**
+         * A put operation was performed.
+         *
+         * @param store the Store that emitted this event
+         * @param value the StoreValue that was put
+         */
+        @Override
+        public void putPerformed(
+                Store      store,
+                StoreValue value )
+        {
+            super.putPerformed( store, value );
+            ++theWriteCount;
+        }
+
+        /**
+         * An update operation was performed.
+         *
+         * @param store the Store that emitted this event
+         * @param value the StoreValue that was updated
+         */
+        @Override
+        public void updatePerformed(
+                Store      store,
+                StoreValue value )
+        {
+            super.updatePerformed( store, value );
+            ++theWriteCount;
+        }
+
+        /**
+         * A get operation was performed.
+         *
+         * @param store the Store that emitted this event
+         * @param value the StoreValue that was obtained
+         */
+        @Override
+        public void getPerformed(
+                Store      store,
+                StoreValue value )
+        {
+            super.getPerformed( store, value );
+            ++theReadCount;
+        }
+
+        /**
+         * Reset the counters.
+         */
+        public void reset()
+        {
+            theWriteCount = 0;
+            theReadCount  = 0;
+        }
+
+        /**
+         * The number of puts and updates.
+         */
+        protected int theWriteCount;
+
+        /**
+         * The number of gets.
+         */
+        protected int theReadCount;
+    }
+}
@@ -0,0 +1,456 @@
+//
+// This file is part of InfoGrid(tm). You may not use this file except in
+// compliance with the InfoGrid license. The InfoGrid license and important
+// disclaimers are contained in the file LICENSE.InfoGrid.txt that you should
+// have received with InfoGrid. If you have not received LICENSE.InfoGrid.txt
+// or you do not consent to all aspects of the license and the disclaimers,
+// no license is granted; do not use this file.
+//
+// For more information about InfoGrid go to http://infogrid.org/
+//
+// Copyright 1998-2015 by Johannes Ernst
+// All rights reserved.
+//
+
+package org.infogrid.probe.test.shadow;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URISyntaxException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.infogrid.httpd.HttpEntity;
+import org.infogrid.httpd.HttpEntityResponse;
+import org.infogrid.httpd.HttpErrorResponse;
+import org.infogrid.httpd.HttpRequest;
+import org.infogrid.httpd.HttpResponse;
+import org.infogrid.httpd.HttpResponseFactory;
+import org.infogrid.httpd.SnapshotHttpEntity;
+import org.infogrid.mesh.EntityBlessedAlreadyException;
+import org.infogrid.mesh.EntityNotBlessedException;
+import org.infogrid.mesh.IllegalPropertyTypeException;
+import org.infogrid.mesh.IllegalPropertyValueException;
+import org.infogrid.mesh.IsAbstractException;
+import org.infogrid.mesh.MeshObject;
+import org.infogrid.mesh.MeshObjectIdentifierNotUniqueException;
+import org.infogrid.mesh.NotPermittedException;
+import org.infogrid.mesh.NotRelatedException;
+import org.infogrid.mesh.RelatedAlreadyException;
+import org.infogrid.mesh.RoleTypeBlessedAlreadyException;
+import org.infogrid.meshbase.net.CoherenceSpecification;
+import org.infogrid.meshbase.net.NetMeshBaseIdentifier;
+import org.infogrid.meshbase.transaction.TransactionException;
+import org.infogrid.model.Probe.ProbeSubjectArea;
+import org.infogrid.model.primitives.StringValue;
+import org.infogrid.model.primitives.TimeStampValue;
+import org.infogrid.probe.ProbeDirectory;
+import org.infogrid.probe.ProbeException;
+import org.infogrid.probe.StagingMeshBase;
+import org.infogrid.probe.blob.BlobProbe;
+import org.infogrid.probe.shadow.ShadowMeshBase;
+import org.infogrid.probe.shadow.ShadowMeshBaseEvent;
+import org.infogrid.probe.shadow.ShadowMeshBaseListener;
+import org.infogrid.util.logging.Log;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests that a ShadowMeshBase accessing an HTTP data source asks conditionally, using the
+ * ETag and the Last-Modified date it obtained earlier, and that it neither runs the Probe nor
+ * the ProbeDifferencer when the data source responds with 304 Not Modified.
+ */
+public class ConditionalGetTest1
+        extends
+            AbstractRedirectTest
+{
+    private static final Log log = Log.getLogInstance( ConditionalGetTest1.class ); // our own, private logger
+
+    /**
+     * Run the test.
+     *
+     * @throws Exception all sorts of things may happen during a test
+     */
+    @Test
+    public void run()
+        throws
+            Exception
+    {
+        NetMeshBaseIdentifier url = theMeshBase.getMeshBaseIdentifierFactory().fromExternalForm( WEB_SERVER_IDENTIFIER + RESULT );
+
+        //
+
+        log.info( "Accessing the data source first time" );
+
+        MeshObject home = theMeshBase.accessLocally( url, CoherenceSpecification.ONE_TIME_ONLY );
+        checkObject( home, "No home object" );
+
+        ShadowMeshBase shadow = theMeshBase.getShadowMeshBaseFor( url );
+        Listener       events = new Listener();
+        shadow.addDirectShadowListener( events );
+
+        checkEquals( theResponseFactory.theFullCount.get(),        1, "Wrong number of full responses" );
+        checkEquals( theResponseFactory.theNotModifiedCount.get(), 0, "Wrong number of not-modified responses" );
+        checkEquals( theResponseFactory.theLastIfNoneMatch,        null, "Asked conditionally first time" );
+        checkEquals( CountingProbe.theRunCount.get(),              1, "Wrong number of Probe runs" );
+        checkValidators( shadow, ETAG1, "first time" );
+
+        //
+
+        log.info( "Running again, not modified" );
+
+        shadow.doUpdateNow();
+
+        checkEquals( theResponseFactory.theFullCount.get(),        1, "Wrong number of full responses" );
+        checkEquals( theResponseFactory.theNotModifiedCount.get(), 1, "Wrong number of not-modified responses" );
+        checkEquals( theResponseFactory.theLastIfNoneMatch,        ETAG1, "Wrong If-None-Match" );
+        checkCondition( theResponseFactory.theLastIfModifiedSince != null, "No If-Modified-Since" );
+        checkEquals( CountingProbe.theRunCount.get(),              1, "Probe ran although not modified" );
+        checkEquals( events.theSkipped,                            1, "Update not skipped" );
+        checkEquals( events.theFinishedSuccessfully,               0, "ProbeDifferencer ran although not modified" );
+        checkValidators( shadow, ETAG1, "after not modified" );
+
+        //
+
+        log.info( "Running again, modified" );
+
+        theResponseFactory.theETag    = ETAG2;
+        theResponseFactory.theContent = HTML + "<!-- changed -->\n";
+
+        shadow.doUpdateNow();
+
+        checkEquals( theResponseFactory.theFullCount.get(),        2, "Wrong number of full responses" );
+        checkEquals( theResponseFactory.theNotModifiedCount.get(), 1, "Wrong number of not-modified responses" );
+        checkEquals( theResponseFactory.theLastIfNoneMatch,        ETAG1, "Wrong If-None-Match" );
+        checkEquals( CountingProbe.theRunCount.get(),              2, "Probe did not run although modified" );
+        checkEquals( events.theSkipped,                            1, "Update skipped although modified" );
+        checkEquals( events.theFinishedSuccessfully,               1, "ProbeDifferencer did not run although modified" );
+        checkValidators( shadow, ETAG2, "after modified" );
+
+        //
+
+        log.info( "Running again, not modified since the new ETag" );
+
+        shadow.doUpdateNow();
+
+        checkEquals( theResponseFactory.theNotModifiedCount.get(), 2, "Wrong number of not-modified responses" );
+        checkEquals( theResponseFactory.theLastIfNoneMatch,        ETAG2, "Wrong If-None-Match" );
+        checkEquals( CountingProbe.theRunCount.get(),              2, "Probe ran although not modified" );
+        checkEquals( events.theSkipped,                            2, "Update not skipped" );
+        checkEquals( events.theFinishedUnsuccessfully,             0, "Update failed" );
+    }
+
+    /**
+     * Check the ETag and Last-Modified date recorded on the home object of the ShadowMeshBase.
+     *
+     * @param shadow the ShadowMeshBase
+     * @param eTag the expected ETag
+     * @param msg message to print when a check fails
+     * @throws Exception all sorts of things may happen during a test
+     */
+    protected void checkValidators(
+            ShadowMeshBase shadow,
+            String         eTag,
+            String         msg )
+        throws
+            Exception
+    {
+        MeshObject shadowHome = shadow.getHomeObject();
+
+        checkEquals(
+                shadowHome.getPropertyValue( ProbeSubjectArea.PROBEUPDATESPECIFICATION_LASTETAG ),
+                StringValue.create( eTag ),
+                "Wrong LastETag " + msg );
+        checkEquals(
+                shadowHome.getPropertyValue( ProbeSubjectArea.PROBEUPDATESPECIFICATION_LASTMODIFIED ),
+                TimeStampValue.create( LAST_MODIFIED ),
+                "Wrong LastModified " + msg );
+    }
+
+    /**
+     * Setup.
+     *
+     * @throws Exception all sorts of things may go wrong in tests
+     */
+    @Before
+    @Override
+    public void setup()
+        throws
+            Exception
+    {
+        super.setup();
+
+        CountingProbe.theRunCount.set( 0 );
+        theProbeDirectory.addStreamProbe( new ProbeDirectory.StreamProbeDescriptor( MIME_TYPE, CountingProbe.class ));
+
+        theResponseFactory = new ConditionalResponseFactory();
+        theServer.setResponseFactory( theResponseFactory );
+    }
+
+    /**
+     * The HttpResponseFactory of the web server.
+     */
+    protected ConditionalResponseFactory theResponseFactory;
+
+    /**
+     * The MIME type served by the web server.
+     */
+    protected static final String MIME_TYPE = "text/x-conditional";
+
+    /**
+     * The ETag served first.
+     */
+    protected static final String ETAG1 = "\"v1\"";
+
+    /**
+     * The ETag served after the content changed.
+     */
+    protected static final String ETAG2 = "\"v2\"";
+
+    /**
+     * The Last-Modified date served. HTTP dates have a resolution of one second.
+     */
+    protected static final long LAST_MODIFIED = 1420070400000L;
+
+    /**
+     * An HttpResponseFactory that serves the content with an ETag and a Last-Modified date,
+     * and that responds with 304 Not Modified if the request carries the current ETag.
+     */
+    protected static class ConditionalResponseFactory
+            implements
+                HttpResponseFactory
+    {
+        /**
+         * Factory method for a HttpResponse.
+         *
+         * @param request the HttpRequest for which we create a HttpResponse
+         * @return the created HttpResponse
+         */
+        public HttpResponse createResponse(
+                HttpRequest request )
+        {
+            log.debug( "Incoming request", request );
+
+            if( !"GET".equals( request.getMethod() ) || !request.getRelativeBaseUri().equals( "/" + RESULT )) {
+                return HttpErrorResponse.create( request, "500", null );
+            }
+
+            theLastIfNoneMatch     = request.getHttpParameters().get( "if-none-match" );
+            theLastIfModifiedSince = request.getHttpParameters().get( "if-modified-since" );
+
+            HttpResponse ret;
+            if( theETag.equals( theLastIfNoneMatch )) {
+                theNotModifiedCount.incrementAndGet();
+                ret = new NotModifiedResponse( request );
+
+            } else {
+                theFullCount.incrementAndGet();
+
+                HttpEntity entity = new SnapshotHttpEntity( MIME_TYPE, theContent, true );
+                ret = HttpEntityResponse.create( request, true, entity );
+            }
+
+            SimpleDateFormat format = new SimpleDateFormat( "EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US );
+            format.setTimeZone( TimeZone.getTimeZone( "GMT" ));
+
+            ret.addHeader( "ETag",          theETag );
+            ret.addHeader( "Last-Modified", format.format( new Date( LAST_MODIFIED )));
+
+            return ret;
+        }
+
+        /**
+         * The current ETag.
+         */
+        protected volatile String theETag = ETAG1;
+
+        /**
+         * The current content.
+         */
+        protected volatile String theContent = HTML;
+
+        /**
+         * The If-None-Match header of the most recent request, if any.
+         */
+        protected volatile String theLastIfNoneMatch;
+
+        /**
+         * The If-Modified-Since header of the most recent request, if any.
+         */
+        protected volatile String theLastIfModifiedSince;
+
+        /**
+         * The number of responses with content.
+         */
+        protected final AtomicInteger theFullCount = new AtomicInteger();
+
+        /**
+         * The number of 304 responses.
+         */
+        protected final AtomicInteger theNotModifiedCount = new AtomicInteger();
+    }
+
+    /**
+     * A 304 Not Modified HttpResponse, which has no content.
+     */
+    protected static class NotModifiedResponse
+            extends
+                HttpResponse
+    {
+        /**
+         * Constructor.
+         *
+         * @param request the HttpRequest to which this is the HttpResponse
+         */
+        protected NotModifiedResponse(
+                HttpRequest request )
+        {
+            super( request, "304" );
+        }
+
+        /**
+         * Write no content.
+         *
+         * @param theOutStream the OutputStream to write to
+         */
+        protected void writeContent(
+                OutputStream theOutStream )
+        {
+            // no content
+        }
+    }
+
+    /**
+     * A BlobProbe that counts how often it has been run.
+     */
+    public static class CountingProbe
+            extends
+                BlobProbe
+    {
+        /**
+         * Count, and delegate to the BlobProbe.
+         *
+         * @param dataSourceIdentifier identifies the data source that is being accessed
+         * @param coherenceSpecification the type of data coherence that is requested by the application
+         * @param stream the InputStream to read from
+         * @param contentType the content type (MIME) if known
+         * @param freshMeshBase the StagingMeshBase in which the corresponding MeshObjects are to be instantiated by the Probe
+         * @throws EntityBlessedAlreadyException should not be thrown
+         * @throws EntityNotBlessedException should not be thrown
+         * @throws IllegalPropertyTypeException should not be thrown
+         * @throws IllegalPropertyValueException should not be thrown
+         * @throws IOException an input/output error occurred during execution of the Probe
+         * @throws IsAbstractException should not be thrown
+         * @throws MeshObjectIdentifierNotUniqueException should not be thrown
+         * @throws NotPermittedException should not be thrown
+         * @throws NotRelatedException should not be thrown
+         * @throws ProbeException a Probe error occurred
+         * @throws RelatedAlreadyException should not be thrown
+         * @throws RoleTypeBlessedAlreadyException should not be thrown
+         * @throws TransactionException should not be thrown
+         * @throws URISyntaxException should not be thrown
+         */
+        @Override
+        public void readFromStream(
+                NetMeshBaseIdentifier  dataSourceIdentifier,
+                CoherenceSpecification coherenceSpecification,
+                InputStream            stream,
+                String                 contentType,
+                StagingMeshBase        freshMeshBase )
+            throws
+                EntityBlessedAlreadyException,
+                EntityNotBlessedException,
+                IllegalPropertyTypeException,
+                IllegalPropertyValueException,
+                IOException,
+                IsAbstractException,
+                MeshObjectIdentifierNotUniqueException,
+                NotPermittedException,
+                NotRelatedException,
+                ProbeException,
+                RelatedAlreadyException,
+                RoleTypeBlessedAlreadyException,
+                TransactionException,
+                URISyntaxException
+        {
+            theRunCount.incrementAndGet();
+
+            super.readFromStream( dataSourceIdentifier, coherenceSpecification, stream, contentType, freshMeshBase );
+        }
+
+        /**
+         * The number of times the Probe has been run.
+         */
+        protected static final AtomicInteger theRunCount = new AtomicInteger();
+    }
+
+    /**
+     * Counts the events of a ShadowMeshBase.
+     */
+    protected static class Listener
+            implements
+                ShadowMeshBaseListener
+    {
+        /**
+         * An update is about to start.
+         *
+         * @param theEvent the event
+         */
+        public void updateStarting(
+                ShadowMeshBaseEvent theEvent )
+        {
+            // ignore
+        }
+
+        /**
+         * An update was skipped, or found no changes.
+         *
+         * @param theEvent the event
+         */
+        public void updateSkipped(
+                ShadowMeshBaseEvent theEvent )
+        {
+            ++theSkipped;
+        }
+
+        /**
+         * An update found changes and applied them.
+         *
+         * @param theEvent the event
+         */
+        public void updateFinishedSuccessfully(
+                ShadowMeshBaseEvent theEvent )
+        {
+            ++theFinishedSuccessfully;
+        }
+
+        /**
+         * An update failed.
+         *
+         * @param theEvent the event
+         */
+        public void updateFinishedUnsuccessfully(
+                ShadowMeshBaseEvent theEvent )
+        {
+            ++theFinishedUnsuccessfully;
+        }
+
+        /**
+         * The number of skipped updates.
+         */
+        protected int theSkipped;
+
+        /**
+         * The number of updates that found and applied changes.
+         */
+        protected int theFinishedSuccessfully;
+
+        /**
+         * The number of failed updates.
+         */
+        protected int theFinishedUnsuccessfully;
+    }
+}
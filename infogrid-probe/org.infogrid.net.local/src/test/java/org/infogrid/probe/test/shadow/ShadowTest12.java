@@ -0,0 +1,220 @@
+//
+// This file is part of InfoGrid(tm). You may not use this file except in
+// compliance with the InfoGrid license. The InfoGrid license and important
+// disclaimers are contained in the file LICENSE.InfoGrid.txt that you should
+// have received with InfoGrid. If you have not received LICENSE.InfoGrid.txt
+// or you do not consent to all aspects of the license and the disclaimers,
+// no license is granted; do not use this file.
+// 
+// For more information about InfoGrid go to http://infogrid.org/
+//
+// Copyright 1998-2015 by Johannes Ernst
+// All rights reserved.
+//
+
+package org.infogrid.probe.test.shadow;
+
+import java.net.URISyntaxException;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.infogrid.mesh.EntityBlessedAlreadyException;
+import org.infogrid.mesh.EntityNotBlessedException;
+import org.infogrid.mesh.IllegalPropertyTypeException;
+import org.infogrid.mesh.IllegalPropertyValueException;
+import org.infogrid.mesh.IsAbstractException;
+import org.infogrid.mesh.MeshObject;
+import org.infogrid.mesh.MeshObjectIdentifierNotUniqueException;
+import org.infogrid.mesh.NotPermittedException;
+import org.infogrid.mesh.NotRelatedException;
+import org.infogrid.mesh.RelatedAlreadyException;
+import org.infogrid.mesh.RoleTypeBlessedAlreadyException;
+import org.infogrid.meshbase.net.CoherenceSpecification;
+import org.infogrid.meshbase.net.NetMeshBaseIdentifier;
+import org.infogrid.meshbase.transaction.TransactionException;
+import org.infogrid.model.Test.TestSubjectArea;
+import org.infogrid.probe.ApiProbe;
+import org.infogrid.probe.ProbeDirectory;
+import org.infogrid.probe.StagingMeshBase;
+import org.infogrid.probe.manager.ProbeExecutionPool;
+import org.infogrid.probe.manager.ScheduledExecutorProbeManager;
+import org.infogrid.probe.shadow.ShadowMeshBase;
+import org.infogrid.util.logging.Log;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests that background Probe runs against the same host are limited, and that
+ * interactive updates do not queue up behind them.
+ */
+public class ShadowTest12
+        extends
+            AbstractShadowTest
+{
+    /**
+     * Run the test.
+     *
+     * @throws Exception all sorts of things may happen during a test
+     */
+    @Test
+    public void run()
+        throws
+            Exception
+    {
+        long period = 500L;
+
+        ScheduledExecutorProbeManager probeMgr = (ScheduledExecutorProbeManager) base.getProbeManager();
+        ProbeExecutionPool            pool     = probeMgr.getProbeExecutionPool();
+
+        checkObject( pool, "No ProbeExecutionPool" );
+
+        log.info( "Accessing Probes first time" );
+
+        ShadowMeshBase [] shadows = new ShadowMeshBase[ test_URLs.length ];
+        for( int i=0 ; i<test_URLs.length ; ++i ) {
+            MeshObject home = base.accessLocally( test_URLs[i], new CoherenceSpecification.Periodic( period, true ));
+
+            checkObject( home, "home object " + i + " not there" );
+
+            shadows[i] = base.getShadowMeshBaseFor( test_URLs[i] );
+        }
+        checkEquals( pool.getInteractiveRunCount(), 0L, "Unexpected interactive runs" );
+
+        theMaxConcurrentRuns.set( theConcurrentRuns.get() ); // the first runs were not performed by the ProbeExecutionPool
+
+        //
+
+        log.info( "Letting background runs happen" );
+
+        Thread.sleep( 4 * PROBE_DURATION );
+
+        checkCondition( pool.getBackgroundRunCount() > 0, "No background runs" );
+        checkCondition( theMaxConcurrentRuns.get() <= ProbeExecutionPool.DEFAULT_MAX_RUNS_PER_HOST, "Too many concurrent runs: " + theMaxConcurrentRuns.get() );
+
+        //
+
+        log.info( "Updating interactively" );
+
+        startClock();
+
+        probeMgr.doUpdateNow( shadows[0] );
+
+        long delta = getRelativeTime();
+        checkInRange( delta, PROBE_DURATION, 3 * PROBE_DURATION, "Interactive update took wrong amount of time" );
+        checkEquals( pool.getInteractiveRunCount(), 1L, "Wrong number of interactive runs" );
+
+        //
+
+        log.info( "Stopping updates" );
+
+        for( ShadowMeshBase current : shadows ) {
+            probeMgr.disableFutureUpdates( current );
+        }
+    }
+
+    /**
+     * Setup.
+     * 
+     * @throws Exception all sorts of things may go wrong in tests
+     */
+    @Before
+    @Override
+    public void setup()
+        throws
+            Exception
+    {
+        super.setup();
+
+        ScheduledExecutorProbeManager probeMgr = (ScheduledExecutorProbeManager) base.getProbeManager();
+        probeMgr.stop();
+        probeMgr.start( exec, ProbeExecutionPool.create() );
+
+        theConcurrentRuns.set( 0 );
+        theMaxConcurrentRuns.set( 0 );
+
+        for( NetMeshBaseIdentifier current : test_URLs ) {
+            theProbeDirectory.addExactUrlMatch(
+                    new ProbeDirectory.ExactMatchDescriptor(
+                            current.toExternalForm(),
+                            SlowApiProbe.class ));
+        }
+    }
+
+    // Our Logger
+    private static Log log = Log.getLogInstance( ShadowTest12.class );
+
+    /**
+     * The time, in milliseconds, each Probe run takes.
+     */
+    protected static final long PROBE_DURATION = 1000L;
+
+    /**
+     * The number of Probe runs currently in progress.
+     */
+    protected static final AtomicInteger theConcurrentRuns = new AtomicInteger();
+
+    /**
+     * The largest number of Probe runs that were in progress at the same time.
+     */
+    protected static final AtomicInteger theMaxConcurrentRuns = new AtomicInteger();
+
+    /**
+     * The URLs that we are accessing. They all share the same host.
+     */
+    private static NetMeshBaseIdentifier [] test_URLs;
+
+    static {
+        try {
+            test_URLs = new NetMeshBaseIdentifier[] {
+                    theMeshBaseIdentifierFactory.fromExternalForm( PROTOCOL_NAME + "://slow.local/a" ),
+                    theMeshBaseIdentifierFactory.fromExternalForm( PROTOCOL_NAME + "://slow.local/b" ),
+                    theMeshBaseIdentifierFactory.fromExternalForm( PROTOCOL_NAME + "://slow.local/c" ),
+                    theMeshBaseIdentifierFactory.fromExternalForm( PROTOCOL_NAME + "://slow.local/d" )
+            };
+
+        } catch( Exception ex ) {
+            log.error( ex );
+
+            test_URLs = null; // make compiler happy
+        }
+    }
+
+    /**
+     * The test Probe, which takes its time.
+     */
+    public static class SlowApiProbe
+            implements
+                ApiProbe
+    {
+        public void readFromApi(
+                NetMeshBaseIdentifier  dataSourceIdentifier,
+                CoherenceSpecification coherenceSpecification,
+                StagingMeshBase        mb )
+            throws
+                IsAbstractException,
+                EntityBlessedAlreadyException,
+                EntityNotBlessedException,
+                IllegalPropertyTypeException,
+                IllegalPropertyValueException,
+                MeshObjectIdentifierNotUniqueException,
+                NotPermittedException,
+                NotRelatedException,
+                RelatedAlreadyException,
+                TransactionException,
+                URISyntaxException,
+                RoleTypeBlessedAlreadyException
+        {
+            int current = theConcurrentRuns.incrementAndGet();
+            theMaxConcurrentRuns.accumulateAndGet( current, Math::max );
+
+            try {
+                Thread.sleep( PROBE_DURATION );
+            } catch( InterruptedException ex ) {
+                log.error( ex );
+            } finally {
+                theConcurrentRuns.decrementAndGet();
+            }
+
+            MeshObject home = mb.getHomeObject();
+            home.bless( TestSubjectArea.AA );
+        }
+    }
+}
@@ -15,6 +15,9 @@
 package org.infogrid.probe.feeds;
 
 import java.text.ParseException;
+import java.util.ArrayList;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 import org.infogrid.mesh.EntityBlessedAlreadyException;
 import org.infogrid.mesh.EntityNotBlessedException;
 import org.infogrid.mesh.IllegalPropertyTypeException;
@@ -53,20 +56,18 @@ import org.infogrid.modelbase.MeshTypeWithIdentifierNotFoundException;
 import org.infogrid.modelbase.ModelBase;
 import org.infogrid.probe.ProbeException;
 import org.infogrid.probe.StagingMeshBase;
+import org.infogrid.probe.xml.AbstractXmlStreamProbe;
 import org.infogrid.probe.xml.MeshObjectSetProbeTags;
-import org.infogrid.probe.xml.XmlDOMProbe;
 import org.infogrid.util.logging.Log;
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
 
 /**
  * Factors out common functionality for Web feed probes, such as Atom and RSS probes.
+ * Feeds are read as a stream of XML events, so only one feed entry at a time needs
+ * to be held in memory.
  */
 public abstract class AbstractFeedProbe
-        implements
-            XmlDOMProbe
+        extends
+            AbstractXmlStreamProbe
 {
     private static final Log log = Log.getLogInstance( AbstractFeedProbe.class );
 
@@ -76,18 +77,95 @@ public abstract class AbstractFeedProbe
     protected AbstractFeedProbe()
     {
     }
-    
+
     /**
-     * Invoked by subclasses to instantiate the InfoGrid-specific extensions on either the RSS/Atom feeds themselves
-     * or the feed elements.
+     * Invoked by subclasses to read an InfoGrid-specific extension on either the RSS/Atom feeds themselves
+     * or the feed elements. The extension is only remembered; it is instantiated by
+     * {@link #handleInfoGridFeedExtensions handleInfoGridFeedExtensions} once the NetMeshObject exists.
      *
      * @param dataSourceIdentifier identifier of the data source being read
-     * @param theDocument the XML document being read
-     * @param here the current Element
+     * @param reader the reader, positioned at the start of an element in the InfoGrid namespace.
+     *         Upon return, it is positioned at the end of that element
+     * @param modelBase the ModelBase in which to look up MeshTypes
+     * @param extensions collects the found extensions
+     * @throws XMLStreamException thrown if the XML could not be read
+     * @throws org.infogrid.probe.ProbeException.SyntaxError a syntax error was found
+     */
+    protected void readInfoGridFeedExtension(
+            NetMeshBaseIdentifier  dataSourceIdentifier,
+            XMLStreamReader        reader,
+            ModelBase              modelBase,
+            InfoGridFeedExtensions extensions )
+        throws
+            XMLStreamException,
+            ProbeException.SyntaxError
+    {
+        String localName = reader.getLocalName();
+
+        if( MeshObjectSetProbeTags.MESH_TYPE_TAG.equals( localName )) {
+            String typeString = readTextContent( reader ).trim();
+
+            if( typeString.length() == 0 ) {
+                log.warn( "Empty type given" );
+            } else {
+                try {
+                    EntityType type = modelBase.findEntityTypeByIdentifier(
+                            modelBase.getMeshTypeIdentifierFactory().fromExternalForm( typeString ));
+                    extensions.theEntityTypes.add( type );
+                } catch( MeshTypeWithIdentifierNotFoundException ex ) {
+                    log.warn( ex );
+                }
+            }
+
+        } else if( MeshObjectSetProbeTags.PROPERTY_TYPE_TAG.equals( localName )) {
+            String typeString = reader.getAttributeValue( null, MeshObjectSetProbeTags.TYPE_TAG );
+            if( typeString != null ) {
+                typeString = typeString.trim();
+            }
+            if( typeString == null || typeString.length() == 0 ) {
+                log.warn( "Empty type given for property" );
+                skipElement( reader );
+            } else {
+                try {
+                    PropertyType type = modelBase.findPropertyTypeByIdentifier(
+                            modelBase.getMeshTypeIdentifierFactory().fromExternalForm( typeString ));
+
+                    PropertyValue value = determinePropertyValue( dataSourceIdentifier, type, reader );
+
+                    extensions.thePropertyTypes.add( type );
+                    extensions.thePropertyValues.add( value );
+
+                } catch( MeshTypeWithIdentifierNotFoundException ex ) {
+                    throw new ProbeException.SyntaxError( dataSourceIdentifier, ex );
+                }
+            }
+
+        } else if( MeshObjectSetProbeTags.RELATIONSHIP_TAG.equals( localName )) {
+            String idString = reader.getAttributeValue( null, MeshObjectSetProbeTags.IDENTIFIER_TAG );
+            if( idString != null ) {
+                idString = idString.trim();
+            }
+            if( idString == null ) {
+                log.warn( "No ID given for relationship" );
+                skipElement( reader );
+            } else {
+                extensions.theRelationships.add( readRelationship( idString, reader, modelBase ));
+            }
+
+        } else {
+            log.warn( "unexpected tag: " + localName );
+            skipElement( reader );
+        }
+    }
+
+    /**
+     * Instantiate the InfoGrid-specific extensions on either the RSS/Atom feeds themselves
+     * or the feed elements.
+     *
+     * @param extensions the extensions previously read
      * @param current the NetMeshObject for which the InfoGrid-specific extensions are instantiated
      * @throws TransactionException should never be thrown
      * @throws NotPermittedException should never be thrown
-     * @throws org.infogrid.probe.ProbeException.SyntaxError a syntax error was found
      * @throws ParseException thrown if parsing failed
      * @throws IsAbstractException a MeshType was agstract and could not be instantiated
      * @throws EntityBlessedAlreadyException thrown if a NetMeshObject was blessed with an EntityType already
@@ -99,14 +177,11 @@ public abstract class AbstractFeedProbe
      * @throws IllegalPropertyValueException thrown if a PropertyValue could not be used with a NetMeshObject and a PropertyType
      */
     protected void handleInfoGridFeedExtensions(
-            NetMeshBaseIdentifier dataSourceIdentifier,
-            Document              theDocument,
-            Element               here,
-            NetMeshObject         current )
+            InfoGridFeedExtensions extensions,
+            NetMeshObject          current )
         throws
             TransactionException,
             NotPermittedException,
-            ProbeException.SyntaxError,
             ParseException,
             IsAbstractException,
             EntityBlessedAlreadyException,
@@ -117,88 +192,29 @@ public abstract class AbstractFeedProbe
             IllegalPropertyTypeException,
             IllegalPropertyValueException
     {
-        if( here == null ) {
+        if( extensions == null ) {
             return;
         }
         if( current == null ) {
             return;
         }
-        
-        ModelBase modelBase = current.getMeshBase().getModelBase();
-
-        NodeList children = here.getChildNodes();
-        for( int i=0 ; i<children.getLength() ; ++i ) {
-            Node child = children.item( i );
-
-            if( !( child instanceof Element )) {
-                continue;
-            }
-            Element realChild = (Element) child;
-            if( !MeshObjectSetProbeTags.INFOGRID_NAMESPACE.equals( realChild.getNamespaceURI() )) {
-                continue;
-            }
-            
-            if( MeshObjectSetProbeTags.MESH_TYPE_TAG.equals( realChild.getLocalName())) {
-                String typeString = realChild.getTextContent();
-                if( typeString != null ) {
-                    typeString = typeString.trim();
-                }
-                if( typeString == null || typeString.length() == 0 ) {
-                    log.warn( "Empty type given for " + current );
-                } else {
-                    try {
-                        EntityType type = modelBase.findEntityTypeByIdentifier(
-                                modelBase.getMeshTypeIdentifierFactory().fromExternalForm( typeString ));
-                        current.bless( type );
-                    } catch( MeshTypeWithIdentifierNotFoundException ex ) {
-                        log.warn( ex );
-                    }
-                }
-
-            } else if( MeshObjectSetProbeTags.PROPERTY_TYPE_TAG.equals( realChild.getLocalName())) {
-                String typeString = realChild.getAttribute( MeshObjectSetProbeTags.TYPE_TAG );
-                if( typeString != null ) {
-                    typeString = typeString.trim();
-                }
-                if( typeString == null || typeString.length() == 0 ) {
-                    log.warn( "Empty type given for property on " + current );
-                } else {
-                    try {
-                        PropertyType type = modelBase.findPropertyTypeByIdentifier(
-                                modelBase.getMeshTypeIdentifierFactory().fromExternalForm( typeString ));
-
-                        PropertyValue value = determinePropertyValue( dataSourceIdentifier, type, realChild );
-                        
-                        current.setPropertyValue( type, value );
-                        
-                    } catch( MeshTypeWithIdentifierNotFoundException ex ) {
-                        throw new ProbeException.SyntaxError( dataSourceIdentifier, ex );
-                    }
-                }
 
-            } else if( MeshObjectSetProbeTags.RELATIONSHIP_TAG.equals( realChild.getLocalName())) {
-                String idString = realChild.getAttribute( MeshObjectSetProbeTags.IDENTIFIER_TAG );
-                if( idString != null ) {
-                    idString = idString.trim();
-                }
-                if( idString == null) {
-                    log.warn( "No ID given for relationship on " + current );
-                } else {
-                    establishRelationship( current, idString, realChild );
-                }
-            } else {
-                log.warn( "unexpected tag: " + realChild.getLocalName() );
-            }
+        for( EntityType type : extensions.theEntityTypes ) {
+            current.bless( type );
+        }
+        for( int i=0 ; i<extensions.thePropertyTypes.size() ; ++i ) {
+            current.setPropertyValue( extensions.thePropertyTypes.get( i ), extensions.thePropertyValues.get( i ));
+        }
+        for( RelationshipExtension rel : extensions.theRelationships ) {
+            establishRelationship( current, rel.thePartnerId, rel.theRoleTypes );
         }
     }
-    
+
     /**
      * Invoked by subclasses to instantiate a feed object including any InfoGrid-specific extensions on the
      * feed objects.
-     * 
-     * @param dataSourceIdentifier identifier of the data source, for error reporting
-     * @param theDocument the XML Document that is being parsed
-     * @param here the current XML Element
+     *
+     * @param extensions the InfoGrid-specific extensions read for this feed object
      * @param identifier identifier of the NetMeshObject that needs to be created
      * @param type the primary EntityType with which the new NetMeshObject shall be blessed
      * @param freshMeshBase the StagingMeshBase in which to instantiate the NetMeshObject
@@ -206,7 +222,6 @@ public abstract class AbstractFeedProbe
      * @throws TransactionException should never be thrown
      * @throws NotPermittedException should never be thrown
      * @throws MeshObjectIdentifierNotUniqueException thrown if the identifier for the new NetMeshObject was not unique
-     * @throws org.infogrid.probe.ProbeException.SyntaxError a syntax error was found
      * @throws ParseException thrown if parsing failed
      * @throws IsAbstractException a MeshType was agstract and could not be instantiated
      * @throws EntityBlessedAlreadyException thrown if a NetMeshObject was blessed with an EntityType already
@@ -218,9 +233,7 @@ public abstract class AbstractFeedProbe
      * @throws IllegalPropertyValueException thrown if a PropertyValue could not be used with a NetMeshObject and a PropertyType
      */
     protected NetMeshObject createExtendedInfoGridFeedEntryObject(
-            NetMeshBaseIdentifier   dataSourceIdentifier,
-            Document                theDocument,
-            Element                 here,
+            InfoGridFeedExtensions  extensions,
             NetMeshObjectIdentifier identifier,
             EntityType              type,
             StagingMeshBase         freshMeshBase )
@@ -232,7 +245,6 @@ public abstract class AbstractFeedProbe
             NotRelatedException,
             NotPermittedException,
             MeshObjectIdentifierNotUniqueException,
-            ProbeException.SyntaxError,
             ParseException,
             IsAbstractException,
             EntityBlessedAlreadyException,
@@ -240,9 +252,9 @@ public abstract class AbstractFeedProbe
             IllegalPropertyValueException
     {
         NetMeshObject ret = freshMeshBase.getMeshBaseLifecycleManager().createMeshObject( identifier, type );
-        
-        handleInfoGridFeedExtensions( dataSourceIdentifier, theDocument, here, ret );
-        
+
+        handleInfoGridFeedExtensions( extensions, ret );
+
         return ret;
     }
 
@@ -251,46 +263,46 @@ public abstract class AbstractFeedProbe
      *
      * @param dataSourceIdentifier the dataSourceIdentifier of the data source, for error reporting
      * @param type the PropertyType one of whose values is being read
-     * @param here the enclosing DOM element
+     * @param reader the reader, positioned at the start of the enclosing element.
+     *         Upon return, it is positioned at the end of that element
      * @return the instantiated PropertyValue
      * @throws org.infogrid.probe.ProbeException.SyntaxError thrown if a PropertyValue was formatted incorrectly
+     * @throws XMLStreamException thrown if the XML could not be read
      */
     protected PropertyValue determinePropertyValue(
             NetMeshBaseIdentifier dataSourceIdentifier,
             PropertyType          type,
-            Element               here )
+            XMLStreamReader       reader )
         throws
-            ProbeException.SyntaxError
+            ProbeException.SyntaxError,
+            XMLStreamException
     {
-        NodeList children = here.getChildNodes();
-        for( int i=0 ; i<children.getLength() ; ++i ) {
-            Node child = children.item( i );
+        PropertyValue ret   = null;
+        boolean       found = false;
 
-            if( !( child instanceof Element )) {
+        while( nextChildElement( reader )) {
+            if( found || !isInNamespace( reader, MeshObjectSetProbeTags.INFOGRID_NAMESPACE )) {
+                skipElement( reader );
                 continue;
             }
-            Element realChild = (Element) child;
-            if( !MeshObjectSetProbeTags.INFOGRID_NAMESPACE.equals( realChild.getNamespaceURI() )) {
-                continue;
-            }
-            
-            String localName = realChild.getLocalName();
+
+            String localName = reader.getLocalName();
+            found = true;
+
             if( MeshObjectSetProbeTags.BLOB_VALUE_TAG.equals( localName )) {
-                String mime     = realChild.getAttribute( MeshObjectSetProbeTags.BLOB_VALUE_MIME_TAG );
-                String loadFrom = realChild.getAttribute( MeshObjectSetProbeTags.BLOB_VALUE_LOAD_TAG );
+                String mime     = reader.getAttributeValue( null, MeshObjectSetProbeTags.BLOB_VALUE_MIME_TAG );
+                String loadFrom = reader.getAttributeValue( null, MeshObjectSetProbeTags.BLOB_VALUE_LOAD_TAG );
 
                 BlobDataType dataType = (BlobDataType) type.getDataType();
 
-                if( loadFrom != null ) {
-                    PropertyValue ret = dataType.createBlobValueByLoadingFrom( loadFrom, mime );
-                    return ret;
-
-                } else {                
-                    String content = realChild.getTextContent();
+                if( loadFrom != null && loadFrom.length() > 0 ) {
+                    skipElement( reader );
+                    ret = dataType.createBlobValueByLoadingFrom( loadFrom, mime );
 
-                    PropertyValue ret;
-                    if( mime.startsWith( "text/" )) {
+                } else {
+                    String content = readTextContent( reader );
 
+                    if( mime != null && mime.startsWith( "text/" )) {
                         ret = dataType.createBlobValue( content, mime );
                     } else {
                         if( !content.startsWith( "x\'" ) || !content.endsWith( "\'" )) {
@@ -299,38 +311,35 @@ public abstract class AbstractFeedProbe
                         content = content.substring( 2, content.length()-1 );
                         ret = dataType.createBlobValue( BlobValue.decodeHex( content ), mime );
                     }
-                    return ret;
                 }
-                
+
             } else if( MeshObjectSetProbeTags.BOOLEAN_VALUE_TAG.equals( localName )) {
-                String content = realChild.getTextContent();
+                String content = readTextContent( reader );
 
                 if( MeshObjectSetProbeTags.BOOLEAN_VALUE_TRUE_TAG.equals( content )) {
-                    PropertyValue ret = BooleanValue.TRUE;
-                    return ret;
+                    ret = BooleanValue.TRUE;
 
                 } else if( MeshObjectSetProbeTags.BOOLEAN_VALUE_FALSE_TAG.equals( content )) {
-                    PropertyValue ret = BooleanValue.TRUE;
-                    return ret;
+                    ret = BooleanValue.FALSE;
                 } else {
                     log.error( "Wrong value for tag " + localName );
+                    found = false;
                 }
-                
+
             } else if( MeshObjectSetProbeTags.COLOR_VALUE_TAG.equals( localName )) {
-                String red   = realChild.getAttribute( MeshObjectSetProbeTags.COLOR_VALUE_RED_TAG );
-                String green = realChild.getAttribute( MeshObjectSetProbeTags.COLOR_VALUE_GREEN_TAG );
-                String blue  = realChild.getAttribute( MeshObjectSetProbeTags.COLOR_VALUE_BLUE_TAG );
-                String alpha = realChild.getAttribute( MeshObjectSetProbeTags.COLOR_VALUE_ALPHA_TAG );
-
-                PropertyValue ret = ColorValue.create( Integer.parseInt( red ), Integer.parseInt( green ), Integer.parseInt( blue ), Integer.parseInt( alpha ));
-                return ret;
-                
+                String red   = reader.getAttributeValue( null, MeshObjectSetProbeTags.COLOR_VALUE_RED_TAG );
+                String green = reader.getAttributeValue( null, MeshObjectSetProbeTags.COLOR_VALUE_GREEN_TAG );
+                String blue  = reader.getAttributeValue( null, MeshObjectSetProbeTags.COLOR_VALUE_BLUE_TAG );
+                String alpha = reader.getAttributeValue( null, MeshObjectSetProbeTags.COLOR_VALUE_ALPHA_TAG );
+                skipElement( reader );
+
+                ret = ColorValue.create( Integer.parseInt( red ), Integer.parseInt( green ), Integer.parseInt( blue ), Integer.parseInt( alpha ));
+
             } else if( MeshObjectSetProbeTags.CURRENCY_VALUE_TAG.equals( localName )) {
-                String content = realChild.getTextContent();
+                String content = readTextContent( reader );
 
                 try {
-                    PropertyValue ret = CurrencyValue.parseCurrencyValue( content );
-                    return ret;
+                    ret = CurrencyValue.parseCurrencyValue( content );
                 } catch( ParseException ex ) {
                     throw new ProbeException.SyntaxError(  dataSourceIdentifier, "Failed to parse CurrencyValue " + content );
                 }
@@ -340,38 +349,36 @@ public abstract class AbstractFeedProbe
                     throw new ProbeException.SyntaxError( dataSourceIdentifier, "Data type not an EnumeratedDataType: " + type, null    );
                 }
                 EnumeratedDataType realType = (EnumeratedDataType) type.getDataType();
-                
-                String content = realChild.getTextContent();
+
+                String content = readTextContent( reader );
 
                 try {
-                    PropertyValue ret = realType.select( content );
-                    return ret;
+                    ret = realType.select( content );
                 } catch( UnknownEnumeratedValueException ex ) {
                     throw new ProbeException.SyntaxError( dataSourceIdentifier, "Invalid key " + content + " for EnumeratedDataType on PropertyType " + type.getIdentifier(), ex );
                 }
-                            
+
             } else if( MeshObjectSetProbeTags.EXTENT_VALUE_TAG.equals( localName )) {
-                String w = realChild.getAttribute( MeshObjectSetProbeTags.EXTENT_VALUE_WIDTH_TAG );
-                String h = realChild.getAttribute( MeshObjectSetProbeTags.EXTENT_VALUE_HEIGHT_TAG );
+                String w = reader.getAttributeValue( null, MeshObjectSetProbeTags.EXTENT_VALUE_WIDTH_TAG );
+                String h = reader.getAttributeValue( null, MeshObjectSetProbeTags.EXTENT_VALUE_HEIGHT_TAG );
+                skipElement( reader );
+
+                ret = ExtentValue.create( Double.parseDouble( w ), Double.parseDouble( h ));
 
-                PropertyValue ret = ExtentValue.create( Double.parseDouble( w ), Double.parseDouble( h ));
-                return ret;
-                
             } else if( MeshObjectSetProbeTags.INTEGER_VALUE_TAG.equals( localName )) {
-                String content = realChild.getTextContent();
-                
-                PropertyValue ret = IntegerValue.create( Integer.parseInt( content ) );
-                return ret;
-    
+                String content = readTextContent( reader );
+
+                ret = IntegerValue.create( Integer.parseInt( content ) );
+
             } else if( MeshObjectSetProbeTags.FLOAT_VALUE_TAG.equals( localName )) {
-                String content = realChild.getTextContent();
-                
-                PropertyValue ret = FloatValue.create( Double.parseDouble( content ) );
-                return ret;
-    
+                String content = readTextContent( reader );
+
+                ret = FloatValue.create( Double.parseDouble( content ) );
+
             } else if( MeshObjectSetProbeTags.MULTIPLICITY_VALUE_TAG.equals( localName )) {
-                String minString = realChild.getAttribute( MeshObjectSetProbeTags.MULTIPLICITY_VALUE_MIN_TAG );
-                String maxString = realChild.getAttribute( MeshObjectSetProbeTags.MULTIPLICITY_VALUE_MAX_TAG );
+                String minString = reader.getAttributeValue( null, MeshObjectSetProbeTags.MULTIPLICITY_VALUE_MIN_TAG );
+                String maxString = reader.getAttributeValue( null, MeshObjectSetProbeTags.MULTIPLICITY_VALUE_MAX_TAG );
+                skipElement( reader );
 
                 int min;
                 int max;
@@ -386,47 +393,45 @@ public abstract class AbstractFeedProbe
                 } else {
                     max = Integer.parseInt( maxString );
                 }
-                
-                PropertyValue ret = MultiplicityValue.create( min, max );
-                return ret;
-                
+
+                ret = MultiplicityValue.create( min, max );
+
             } else if( MeshObjectSetProbeTags.POINT_VALUE_TAG.equals( localName )) {
-                String x = realChild.getAttribute( MeshObjectSetProbeTags.POINT_VALUE_X_TAG );
-                String y = realChild.getAttribute( MeshObjectSetProbeTags.POINT_VALUE_Y_TAG );
+                String x = reader.getAttributeValue( null, MeshObjectSetProbeTags.POINT_VALUE_X_TAG );
+                String y = reader.getAttributeValue( null, MeshObjectSetProbeTags.POINT_VALUE_Y_TAG );
+                skipElement( reader );
+
+                ret = PointValue.create( Double.parseDouble( x ), Double.parseDouble( y ));
 
-                PropertyValue ret = PointValue.create( Double.parseDouble( x ), Double.parseDouble( y ));
-                return ret;
-                
             } else if( MeshObjectSetProbeTags.STRING_VALUE_TAG.equals( localName )) {
-                String content = realChild.getTextContent();
-                
-                PropertyValue ret = StringValue.create( content );
-                return ret;
-                
+                String content = readTextContent( reader );
+
+                ret = StringValue.create( content );
+
             } else if( MeshObjectSetProbeTags.TIME_PERIOD_TAG.equals( localName )) {
-                String year   = realChild.getAttribute( MeshObjectSetProbeTags.TIME_PERIOD_YEAR_TAG );
-                String month  = realChild.getAttribute( MeshObjectSetProbeTags.TIME_PERIOD_MONTH_TAG );
-                String day    = realChild.getAttribute( MeshObjectSetProbeTags.TIME_PERIOD_DAY_TAG );
-                String hour   = realChild.getAttribute( MeshObjectSetProbeTags.TIME_PERIOD_HOUR_TAG );
-                String minute = realChild.getAttribute( MeshObjectSetProbeTags.TIME_PERIOD_MINUTE_TAG );
-                String second = realChild.getAttribute( MeshObjectSetProbeTags.TIME_PERIOD_SECOND_TAG );
-
-                PropertyValue ret = TimePeriodValue.create(
+                String year   = reader.getAttributeValue( null, MeshObjectSetProbeTags.TIME_PERIOD_YEAR_TAG );
+                String month  = reader.getAttributeValue( null, MeshObjectSetProbeTags.TIME_PERIOD_MONTH_TAG );
+                String day    = reader.getAttributeValue( null, MeshObjectSetProbeTags.TIME_PERIOD_DAY_TAG );
+                String hour   = reader.getAttributeValue( null, MeshObjectSetProbeTags.TIME_PERIOD_HOUR_TAG );
+                String minute = reader.getAttributeValue( null, MeshObjectSetProbeTags.TIME_PERIOD_MINUTE_TAG );
+                String second = reader.getAttributeValue( null, MeshObjectSetProbeTags.TIME_PERIOD_SECOND_TAG );
+                skipElement( reader );
+
+                ret = TimePeriodValue.create(
                         Short.parseShort( year ),
                         Short.parseShort( month ),
                         Short.parseShort( day ),
                         Short.parseShort( hour ),
                         Short.parseShort( minute ),
                         Float.parseFloat( second ));
-                return ret;
-                
+
             } else if( MeshObjectSetProbeTags.TIME_STAMP_TAG.equals( localName )) {
-                String year   = realChild.getAttribute( MeshObjectSetProbeTags.TIME_STAMP_YEAR_TAG );
-                String month  = realChild.getAttribute( MeshObjectSetProbeTags.TIME_STAMP_MONTH_TAG );
-                String day    = realChild.getAttribute( MeshObjectSetProbeTags.TIME_STAMP_DAY_TAG );
-                String hour   = realChild.getAttribute( MeshObjectSetProbeTags.TIME_STAMP_HOUR_TAG );
-                String minute = realChild.getAttribute( MeshObjectSetProbeTags.TIME_STAMP_MINUTE_TAG );
-                String second = realChild.getAttribute( MeshObjectSetProbeTags.TIME_STAMP_SECOND_TAG );
+                String year   = reader.getAttributeValue( null, MeshObjectSetProbeTags.TIME_STAMP_YEAR_TAG );
+                String month  = reader.getAttributeValue( null, MeshObjectSetProbeTags.TIME_STAMP_MONTH_TAG );
+                String day    = reader.getAttributeValue( null, MeshObjectSetProbeTags.TIME_STAMP_DAY_TAG );
+                String hour   = reader.getAttributeValue( null, MeshObjectSetProbeTags.TIME_STAMP_HOUR_TAG );
+                String minute = reader.getAttributeValue( null, MeshObjectSetProbeTags.TIME_STAMP_MINUTE_TAG );
+                String second = reader.getAttributeValue( null, MeshObjectSetProbeTags.TIME_STAMP_SECOND_TAG );
 
                 if(    year   != null && year.length()   > 0
                     && month  != null && month.length()  > 0
@@ -435,19 +440,19 @@ public abstract class AbstractFeedProbe
                     && minute != null && minute.length() > 0
                     && second != null && second.length() > 0 )
                 {
-                    PropertyValue ret = TimeStampValue.create(
+                    skipElement( reader );
+
+                    ret = TimeStampValue.create(
                             Short.parseShort( year ),
                             Short.parseShort( month ),
                             Short.parseShort( day ),
                             Short.parseShort( hour ),
                             Short.parseShort( minute ),
                             Float.parseFloat( second ));
-                    return ret;
                 } else {
-                    String content = realChild.getTextContent();
+                    String content = readTextContent( reader );
                     try {
-                        PropertyValue ret = TimeStampValue.createFromRfc3339( content );
-                        return ret;
+                        ret = TimeStampValue.createFromRfc3339( content );
                     } catch( ParseException ex ) {
                         throw new ProbeException.SyntaxError( dataSourceIdentifier, "Invalid RFC 3339 date " + content, ex );
                     }
@@ -455,18 +460,74 @@ public abstract class AbstractFeedProbe
 
             } else {
                 log.error( "Unexpected tag: " + localName );
+                skipElement( reader );
+                found = false;
             }
         }
-        throw new IllegalArgumentException( "Invalid Property statement" );
+        if( !found ) {
+            throw new IllegalArgumentException( "Invalid Property statement" );
+        }
+        return ret;
+    }
+
+    /**
+     * Helper method to read the description of a relationship encoded in the InfoGrid XML.
+     *
+     * @param partnerId String form of the Identifier for the partner NetMeshObject
+     * @param reader the reader, positioned at the start of the element describing the relationship.
+     *         Upon return, it is positioned at the end of that element
+     * @param modelBase the ModelBase in which to look up RoleTypes
+     * @return the read relationship
+     * @throws XMLStreamException thrown if the XML could not be read
+     */
+    protected RelationshipExtension readRelationship(
+            String          partnerId,
+            XMLStreamReader reader,
+            ModelBase       modelBase )
+        throws
+            XMLStreamException
+    {
+        RelationshipExtension ret = new RelationshipExtension( partnerId );
+
+        while( nextChildElement( reader )) {
+            if( !isInNamespace( reader, MeshObjectSetProbeTags.INFOGRID_NAMESPACE )) {
+                log.warn( "Infogrid XML data must only contain InfoGrid tags" );
+                skipElement( reader );
+                continue;
+            }
+
+            if( MeshObjectSetProbeTags.ROLE_TYPE_TAG.equals( reader.getLocalName() )) {
+                String typeString = reader.getAttributeValue( null, MeshObjectSetProbeTags.TYPE_TAG );
+                if( typeString != null ) {
+                    typeString = typeString.trim();
+                }
+                if( typeString == null || typeString.length() == 0 ) {
+                    log.warn( "Empty type given for relationship with " + partnerId );
+                } else {
+                    try {
+                        RoleType type = modelBase.findRoleTypeByIdentifier(
+                                modelBase.getMeshTypeIdentifierFactory().fromExternalForm( typeString ));
+                        ret.theRoleTypes.add( type );
+
+                    } catch( MeshTypeWithIdentifierNotFoundException ex ) {
+                        log.warn( ex );
+                    }
+                }
+            } else {
+                log.warn( "unexpected tag: " + reader.getLocalName() );
+            }
+            skipElement( reader );
+        }
+        return ret;
     }
 
     /**
      * Establish a relationship between a current NetMeshObject with a partner NetMeshObject, blessed with the appropriate
      * RoleTypes.
-     * 
+     *
      * @param current the current NetMeshObject
      * @param partnerId String form of the Identifier for the partner NetMeshObject
-     * @param here the XML DOM element containing the description of the relationship
+     * @param roleTypes the RoleTypes with which to bless the relationship
      * @throws TransactionException should never be thrown
      * @throws ParseException thrown if parsing failed
      * @throws RelatedAlreadyException thrown if the two NetMeshObjects were related already
@@ -478,9 +539,9 @@ public abstract class AbstractFeedProbe
      * @throws NotPermittedException should never be thrown
      */
     protected void establishRelationship(
-            NetMeshObject current,
-            String        partnerId,
-            Element       here )
+            NetMeshObject       current,
+            String              partnerId,
+            ArrayList<RoleType> roleTypes )
         throws
             TransactionException,
             ParseException,
@@ -492,7 +553,7 @@ public abstract class AbstractFeedProbe
             NotPermittedException
     {
         NetMeshBase base = current.getMeshBase();
-        
+
         NetMeshObject partner = base.findMeshObjectByIdentifier( base.getMeshObjectIdentifierFactory().guessFromExternalForm( partnerId ));
         if( partner == null ) {
             // don't have it (yet?), ignore
@@ -500,111 +561,31 @@ public abstract class AbstractFeedProbe
         }
 
         current.relate( partner );
-        
-        ModelBase modelBase = current.getMeshBase().getModelBase();
-
-        NodeList children = here.getChildNodes();
-        for( int i=0 ; i<children.getLength() ; ++i ) {
-            Node child = children.item( i );
-            
-            if( !( child instanceof Element )) {
-                continue;
-            }
-            
-            Element realChild = (Element) child;
-            if( !MeshObjectSetProbeTags.INFOGRID_NAMESPACE.equals( realChild.getNamespaceURI() )) {
-                log.warn( "Infogrid XML data must only contain InfoGrid tags" );
-                continue;
-            }
-            
-            if( MeshObjectSetProbeTags.ROLE_TYPE_TAG.equals( realChild.getLocalName())) {
-                String typeString = realChild.getAttribute( MeshObjectSetProbeTags.TYPE_TAG );
-                if( typeString != null ) {
-                    typeString = typeString.trim();
-                }
-                if( typeString == null || typeString.length() == 0 ) {
-                    log.warn( "Empty type given for " + current );
-                } else {
-                    try {
-                        RoleType type = modelBase.findRoleTypeByIdentifier(
-                                modelBase.getMeshTypeIdentifierFactory().fromExternalForm( typeString ));
-                        current.blessRelationship( type, partner );
 
-                    } catch( MeshTypeWithIdentifierNotFoundException ex ) {
-                        log.warn( ex );
-                    }
-                }
-            } else {
-                log.warn( "unexpected tag: " + realChild.getLocalName() );
-            }
+        for( RoleType type : roleTypes ) {
+            current.blessRelationship( type, partner );
         }
-        
     }
 
     /**
-     * Helper method to obtain the text contained in a child tag with a particular tag name.
+     * Helper method to obtain the text contained in the current element, if it is not empty.
      *
-     * @param node the DOM node
-     * @param tag the tag name of the child node
-     * @return the found String content, or null if none found
+     * @param reader the reader, positioned at the start of the current element.
+     *         Upon return, it is positioned at the end of that element
+     * @return the found String content, or null if empty
+     * @throws XMLStreamException thrown if the XML could not be read
      */
-    protected String getChildNodeValue(
-            Element node,
-            String  tag )
-    {
-        if( node == null ) {
-            return null;
-        }
-        NodeList children = node.getChildNodes();
-        for( int i=0 ; i<children.getLength() ; ++i ) {
-            Node child = children.item( i );
-            
-            if( tag == null || tag.equals( child.getNodeName() )) {
-                String ret = child.getTextContent();
-                if( ret != null && ret.length() > 0 ) {
-                    return ret;
-                }
-            }
-        }
-        return null;
-    }
- 
-    /**
-     * Helper method to obtain an attribute value in a child tag with a particular tag name.
-     * This uses the same algorithm as {@link #getChildNodeValue} to find the respective node.
-     *
-     * @param node the DOM node
-     * @param tag the tag name of the child node
-     * @param att the attribute name of the child node
-     * @return the found String content, or null if none found
-     * @see #getChildNodeValue
-     */
-    protected String getChildNodeAttribute(
-            Element node,
-            String  tag,
-            String  att )
+    protected String readNonEmptyTextContent(
+            XMLStreamReader reader )
+        throws
+            XMLStreamException
     {
-        if( node == null ) {
+        String ret = readTextContent( reader );
+        if( ret.length() > 0 ) {
+            return ret;
+        } else {
             return null;
         }
-        NodeList children = node.getChildNodes();
-        for( int i=0 ; i<children.getLength() ; ++i ) {
-            Node child = children.item( i );
-            
-            if( tag == null || tag.equals( child.getNodeName() )) {
-                String found = child.getTextContent();
-                if( found != null && found.length() > 0 ) {
-                    Node foundAttNode = child.getAttributes().getNamedItem( att );
-                    if( foundAttNode != null ) {
-                        String ret = foundAttNode.getTextContent();
-                        return ret;
-                    } else {
-                        return null;
-                    }
-                }
-            }
-        }
-        return null;
     }
 
     /**
@@ -641,4 +622,64 @@ public abstract class AbstractFeedProbe
         }
         return ret.toString();
     }
+
+    /**
+     * The InfoGrid-specific extensions found for a feed or feed element, before they are instantiated.
+     */
+    protected static class InfoGridFeedExtensions
+    {
+        /**
+         * Constructor.
+         */
+        public InfoGridFeedExtensions()
+        {
+        }
+
+        /**
+         * The EntityTypes with which to bless.
+         */
+        protected final ArrayList<EntityType> theEntityTypes = new ArrayList<>();
+
+        /**
+         * The PropertyTypes whose values to set. Same sequence as thePropertyValues.
+         */
+        protected final ArrayList<PropertyType> thePropertyTypes = new ArrayList<>();
+
+        /**
+         * The PropertyValues to set. Same sequence as thePropertyTypes.
+         */
+        protected final ArrayList<PropertyValue> thePropertyValues = new ArrayList<>();
+
+        /**
+         * The relationships to establish.
+         */
+        protected final ArrayList<RelationshipExtension> theRelationships = new ArrayList<>();
+    }
+
+    /**
+     * A relationship found in the InfoGrid-specific extensions, before it is instantiated.
+     */
+    protected static class RelationshipExtension
+    {
+        /**
+         * Constructor.
+         *
+         * @param partnerId String form of the Identifier for the partner NetMeshObject
+         */
+        protected RelationshipExtension(
+                String partnerId )
+        {
+            thePartnerId = partnerId;
+        }
+
+        /**
+         * String form of the Identifier for the partner NetMeshObject.
+         */
+        protected final String thePartnerId;
+
+        /**
+         * The RoleTypes with which to bless the relationship.
+         */
+        protected final ArrayList<RoleType> theRoleTypes = new ArrayList<>();
+    }
 }
@@ -17,6 +17,8 @@ package org.infogrid.probe.feeds.atom;
 import java.io.IOException;
 import java.net.URISyntaxException;
 import java.text.ParseException;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 import org.diet4j.core.ModuleException;
 import org.infogrid.mesh.EntityBlessedAlreadyException;
 import org.infogrid.mesh.EntityNotBlessedException;
@@ -33,14 +35,12 @@ import org.infogrid.meshbase.net.CoherenceSpecification;
 import org.infogrid.meshbase.net.NetMeshBaseIdentifier;
 import org.infogrid.meshbase.transaction.TransactionException;
 import org.infogrid.model.Feeds.FeedsSubjectArea;
+import org.infogrid.modelbase.ModelBase;
 import org.infogrid.probe.ProbeException;
 import org.infogrid.probe.StagingMeshBase;
 import org.infogrid.probe.feeds.AbstractFeedProbe;
+import org.infogrid.probe.xml.MeshObjectSetProbeTags;
 import org.infogrid.util.logging.Log;
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
 
 /**
  * A Probe for the Atom file format, with optional InfoGrid extensions.
@@ -59,7 +59,7 @@ public class AtomProbe
     }
 
     /**
-     * <p>Read from the DOM and instantiate corresponding MeshObjects.</p>
+     * <p>Read from the stream of XML events and instantiate corresponding MeshObjects.</p>
      * <p>This method declares
      * many different types of Exceptions; that enables the Probe Framework to handle many
      * possible error conditions out of the box, thereby making Probe programming easier.
@@ -75,9 +75,8 @@ public class AtomProbe
      *         Probe must bless the Probe's HomeObject with a subtype of <code>ProbeUpdateSpecification</code> (defined
      *         in the <code>org.infogrid.model.Probe</code> Subject Area) and suitable Property
      *         values that reflect the policy.
-     * @param documentBytes the raw form of the Document, provided if available only
      * @param documentMime the MIME type of the Document, provided if available only
-     * @param theDocument the DOM document to be interpreted
+     * @param reader the reader for the XML document, positioned at the start of the top-level element
      * @param freshMeshBase the StagingMeshBase in which the corresponding MeshObjects are to be instantiated by the Probe.
      *         This StagingMeshBase is empty when passed into this call, except for the home object which always exists
      * @throws EntityBlessedAlreadyException thrown if a MeshObject was incorrectly blessed twice with the same
@@ -106,13 +105,13 @@ public class AtomProbe
      * @throws TransactionException a Transaction problem occurred. Throwing this typically indicates a programming error.
      * @throws URISyntaxException thrown if a URI was constructed in an invalid way
      * @throws ParseException thrown if parsing failed
+     * @throws XMLStreamException thrown if the XML document was not well-formed, or could not be read
      */
     public void parseDocument(
             NetMeshBaseIdentifier  dataSourceIdentifier,
             CoherenceSpecification coherenceSpecification,
-            byte []                documentBytes,
             String                 documentMime,
-            Document               theDocument,
+            XMLStreamReader        reader,
             StagingMeshBase        freshMeshBase )
         throws
             EntityBlessedAlreadyException,
@@ -130,85 +129,175 @@ public class AtomProbe
             RoleTypeBlessedAlreadyException,
             TransactionException,
             URISyntaxException,
-            ParseException
+            ParseException,
+            XMLStreamException
     {
-        Element atomNode = theDocument.getDocumentElement();
-        if ( !"feed".equals( atomNode.getLocalName())) {
+        if ( !"feed".equals( reader.getLocalName())) {
             throw new ProbeException.SyntaxError( dataSourceIdentifier, "Not an Atom file", null );
         }
 
         NetMeshObject home = freshMeshBase.getHomeObject();
         home.bless( FeedsSubjectArea.ATOMFEED ); // this is an Atpm feed
 
-        String feedTitle       = getChildNodeValue( atomNode, "title" );
-        String feedDescription = getChildNodeValue( atomNode, "description" );
-        
-        home.setPropertyValue( FeedsSubjectArea.FEED_TITLE,       FeedsSubjectArea.FEED_TITLE_type.createBlobValueOrNull(       feedTitle,       "text/plain" ));
-        home.setPropertyValue( FeedsSubjectArea.FEED_DESCRIPTION, FeedsSubjectArea.FEED_DESCRIPTION_type.createBlobValueOrNull( feedDescription, "text/plain" ));
-
-        handleInfoGridFeedExtensions( dataSourceIdentifier, theDocument, atomNode, home );
-        
-        NodeList entryNodes = atomNode.getElementsByTagNameNS( "http://purl.org/atom/ns#", "entry" );
-        if( entryNodes.getLength() == 0 ) {
-            // try without the name space, not all Atom will be well-formatted
-            entryNodes = atomNode.getElementsByTagName( "entry" );
-        }
-        for ( int j=0 ; j<entryNodes.getLength() ; j++ ) {
-            Node entryNode = entryNodes.item( j );
+        ModelBase modelBase        = freshMeshBase.getModelBase();
+        boolean   foundTitle       = false;
+        boolean   foundDescription = false;
+        int       entryCounter     = 0;
 
-            if( !( entryNode instanceof Element )) {
+        while( nextChildElement( reader )) {
+            if( isInNamespace( reader, MeshObjectSetProbeTags.INFOGRID_NAMESPACE )) {
+                InfoGridFeedExtensions extensions = new InfoGridFeedExtensions();
+                readInfoGridFeedExtension( dataSourceIdentifier, reader, modelBase, extensions );
+                handleInfoGridFeedExtensions( extensions, home );
                 continue;
             }
 
-            Element realItemNode = (Element) entryNode;
+            String tag = getQualifiedName( reader );
+
+            if(    "entry".equals( tag )
+                || ( ATOM_03_NAMESPACE.equals( reader.getNamespaceURI() ) && "entry".equals( reader.getLocalName() )))
+            {
+                handleEntry( dataSourceIdentifier, reader, entryCounter++, home, freshMeshBase );
 
-            String entryGuid        = getChildNodeValue(     realItemNode, "id" );
-            String entryTitle       = getChildNodeValue(     realItemNode, "title" );
-            String entryContent     = getChildNodeValue(     realItemNode, "content" );
-            String entryContentMime = getChildNodeAttribute( realItemNode, "content", "type" );
+            } else if( !foundTitle && "title".equals( tag )) {
+                String feedTitle = readNonEmptyTextContent( reader );
+                if( feedTitle != null ) {
+                    home.setPropertyValue( FeedsSubjectArea.FEED_TITLE, FeedsSubjectArea.FEED_TITLE_type.createBlobValueOrNull( feedTitle, "text/plain" ));
+                    foundTitle = true;
+                }
 
-            if( entryGuid == null ) {
-                entryGuid = String.valueOf( j ); // FIXME? Is this a good default?
+            } else if( !foundDescription && "description".equals( tag )) {
+                String feedDescription = readNonEmptyTextContent( reader );
+                if( feedDescription != null ) {
+                    home.setPropertyValue( FeedsSubjectArea.FEED_DESCRIPTION, FeedsSubjectArea.FEED_DESCRIPTION_type.createBlobValueOrNull( feedDescription, "text/plain" ));
+                    foundDescription = true;
+                }
+
+            } else {
+                skipElement( reader );
             }
-            entryGuid = ensureLocalGuid( entryGuid );
-
-            if( entryContentMime == null || entryContentMime.length() == 0 ) {
-                entryContentMime = "text/plain";
-            } else if( "text".equals( entryContentMime )) {
-                entryContentMime = "text/plain";
-            } else if( "html".equals( entryContentMime )) {
-                entryContentMime = "text/html";
-            } else if( "xhtml".equals( entryContentMime )) {
-                entryContentMime = "application/xhtml+xml";
+        }
+    }
+
+    /**
+     * Read one entry of the feed, and instantiate it.
+     *
+     * @param dataSourceIdentifier identifies the data source that is being accessed
+     * @param reader the reader, positioned at the start of the entry. Upon return, it is positioned at its end
+     * @param index index of the entry in the feed
+     * @param home the home object representing the feed
+     * @param freshMeshBase the StagingMeshBase in which the corresponding MeshObjects are to be instantiated
+     * @throws XMLStreamException thrown if the XML document was not well-formed, or could not be read
+     * @throws ProbeException a Probe error occurred per the possible subclasses defined in ProbeException
+     * @throws TransactionException a Transaction problem occurred. Throwing this typically indicates a programming error.
+     * @throws NotPermittedException thrown if an operation performed by the Probe was not permitted
+     * @throws MeshObjectIdentifierNotUniqueException thrown if the entry had the same identifier as another
+     * @throws ParseException thrown if parsing failed
+     * @throws IsAbstractException a MeshType was abstract and could not be instantiated
+     * @throws EntityBlessedAlreadyException thrown if a NetMeshObject was blessed with an EntityType already
+     * @throws EntityNotBlessedException thrown if a NetMeshObject needed to be blessed with an EntityType but was not
+     * @throws RelatedAlreadyException thrown if two NetMeshObjects were related already
+     * @throws RoleTypeBlessedAlreadyException thrown if a relationship between two NetMeshObject was already blessed with a RoleType
+     * @throws NotRelatedException thrown if a two NetMeshObjects were not related
+     * @throws IllegalPropertyTypeException thrown if a PropertyType could not be used with a NetMeshObject
+     * @throws IllegalPropertyValueException thrown if a PropertyValue could not be used with a NetMeshObject and a PropertyType
+     */
+    protected void handleEntry(
+            NetMeshBaseIdentifier dataSourceIdentifier,
+            XMLStreamReader       reader,
+            int                   index,
+            NetMeshObject         home,
+            StagingMeshBase       freshMeshBase )
+        throws
+            XMLStreamException,
+            ProbeException,
+            TransactionException,
+            NotPermittedException,
+            MeshObjectIdentifierNotUniqueException,
+            ParseException,
+            IsAbstractException,
+            EntityBlessedAlreadyException,
+            EntityNotBlessedException,
+            RelatedAlreadyException,
+            RoleTypeBlessedAlreadyException,
+            NotRelatedException,
+            IllegalPropertyTypeException,
+            IllegalPropertyValueException
+    {
+        InfoGridFeedExtensions extensions = new InfoGridFeedExtensions();
+
+        String entryGuid        = null;
+        String entryTitle       = null;
+        String entryContent     = null;
+        String entryContentMime = null;
+
+        while( nextChildElement( reader )) {
+            if( isInNamespace( reader, MeshObjectSetProbeTags.INFOGRID_NAMESPACE )) {
+                readInfoGridFeedExtension( dataSourceIdentifier, reader, freshMeshBase.getModelBase(), extensions );
+                continue;
             }
-            
-            NetMeshObject item = createExtendedInfoGridFeedEntryObject(
-                    dataSourceIdentifier,
-                    theDocument,
-                    realItemNode,
-                    freshMeshBase.getMeshObjectIdentifierFactory().guessFromExternalForm( entryGuid ),
-                    FeedsSubjectArea.ATOMFEEDITEM,
-                    freshMeshBase );
-
-            item.setPropertyValue( FeedsSubjectArea.FEEDITEM_TITLE,   FeedsSubjectArea.FEEDITEM_TITLE_type.createBlobValueOrNull(   entryTitle,   "text/plain" ));
-            item.setPropertyValue( FeedsSubjectArea.FEEDITEM_CONTENT, FeedsSubjectArea.FEEDITEM_CONTENT_type.createBlobValueOrNull( entryContent, "text/plain" ));
-            
-            try {
-                home.relate( item );
-            } catch( RelatedAlreadyException ex ) {
-                // ignore
-                if( log.isDebugEnabled() ) {
-                    log.info( ex );
-                }
+
+            String tag = getQualifiedName( reader );
+
+            if( entryGuid == null && "id".equals( tag )) {
+                entryGuid = readNonEmptyTextContent( reader );
+
+            } else if( entryTitle == null && "title".equals( tag )) {
+                entryTitle = readNonEmptyTextContent( reader );
+
+            } else if( entryContent == null && "content".equals( tag )) {
+                entryContentMime = reader.getAttributeValue( null, "type" );
+                entryContent     = readNonEmptyTextContent( reader );
+
+            } else {
+                skipElement( reader );
             }
-            try {
-                home.blessRelationship( FeedsSubjectArea.FEED_CONTAINS_FEEDITEM.getSource(), item );
-            } catch( RoleTypeBlessedAlreadyException ex ) {
-                // ignore
-                if( log.isDebugEnabled() ) {
-                    log.info( ex );
-                }
+        }
+
+        if( entryGuid == null ) {
+            entryGuid = String.valueOf( index ); // no id given: use the position in the feed
+        }
+        entryGuid = ensureLocalGuid( entryGuid );
+
+        if( entryContentMime == null || entryContentMime.length() == 0 ) {
+            entryContentMime = "text/plain";
+        } else if( "text".equals( entryContentMime )) {
+            entryContentMime = "text/plain";
+        } else if( "html".equals( entryContentMime )) {
+            entryContentMime = "text/html";
+        } else if( "xhtml".equals( entryContentMime )) {
+            entryContentMime = "application/xhtml+xml";
+        }
+
+        NetMeshObject item = createExtendedInfoGridFeedEntryObject(
+                extensions,
+                freshMeshBase.getMeshObjectIdentifierFactory().guessFromExternalForm( entryGuid ),
+                FeedsSubjectArea.ATOMFEEDITEM,
+                freshMeshBase );
+
+        item.setPropertyValue( FeedsSubjectArea.FEEDITEM_TITLE,   FeedsSubjectArea.FEEDITEM_TITLE_type.createBlobValueOrNull(   entryTitle,   "text/plain" ));
+        item.setPropertyValue( FeedsSubjectArea.FEEDITEM_CONTENT, FeedsSubjectArea.FEEDITEM_CONTENT_type.createBlobValueOrNull( entryContent, "text/plain" ));
+
+        try {
+            home.relate( item );
+        } catch( RelatedAlreadyException ex ) {
+            // ignore
+            if( log.isDebugEnabled() ) {
+                log.info( ex );
+            }
+        }
+        try {
+            home.blessRelationship( FeedsSubjectArea.FEED_CONTAINS_FEEDITEM.getSource(), item );
+        } catch( RoleTypeBlessedAlreadyException ex ) {
+            // ignore
+            if( log.isDebugEnabled() ) {
+                log.info( ex );
             }
         }
     }
+
+    /**
+     * The namespace of Atom 0.3.
+     */
+    public static final String ATOM_03_NAMESPACE = "http://purl.org/atom/ns#";
 }
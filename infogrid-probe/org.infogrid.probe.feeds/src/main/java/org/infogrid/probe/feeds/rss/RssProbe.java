@@ -17,6 +17,8 @@ package org.infogrid.probe.feeds.rss;
 import java.io.IOException;
 import java.net.URISyntaxException;
 import java.text.ParseException;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 import org.diet4j.core.ModuleException;
 import org.infogrid.mesh.EntityBlessedAlreadyException;
 import org.infogrid.mesh.EntityNotBlessedException;
@@ -33,14 +35,12 @@ import org.infogrid.meshbase.net.CoherenceSpecification;
 import org.infogrid.meshbase.net.NetMeshBaseIdentifier;
 import org.infogrid.meshbase.transaction.TransactionException;
 import org.infogrid.model.Feeds.FeedsSubjectArea;
+import org.infogrid.modelbase.ModelBase;
 import org.infogrid.probe.ProbeException;
 import org.infogrid.probe.StagingMeshBase;
 import org.infogrid.probe.feeds.AbstractFeedProbe;
+import org.infogrid.probe.xml.MeshObjectSetProbeTags;
 import org.infogrid.util.logging.Log;
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
 
 /**
  * A Probe for the RSS file format, with optional InfoGrid extensions.
@@ -59,7 +59,7 @@ public class RssProbe
     }
 
     /**
-     * <p>Read from the DOM and instantiate corresponding MeshObjects.</p>
+     * <p>Read from the stream of XML events and instantiate corresponding MeshObjects.</p>
      * <p>This method declares
      * many different types of Exceptions; that enables the Probe Framework to handle many
      * possible error conditions out of the box, thereby making Probe programming easier.
@@ -75,9 +75,8 @@ public class RssProbe
      *         Probe must bless the Probe's HomeObject with a subtype of <code>ProbeUpdateSpecification</code> (defined
      *         in the <code>org.infogrid.model.Probe</code> Subject Area) and suitable Property
      *         values that reflect the policy.
-     * @param documentBytes the raw form of the Document, provided if available only
      * @param documentMime the MIME type of the Document, provided if available only
-     * @param theDocument the DOM document to be interpreted
+     * @param reader the reader for the XML document, positioned at the start of the top-level element
      * @param freshMeshBase the StagingMeshBase in which the corresponding MeshObjects are to be instantiated by the Probe.
      *         This StagingMeshBase is empty when passed into this call, except for the home object which always exists
      * @throws EntityBlessedAlreadyException thrown if a MeshObject was incorrectly blessed twice with the same
@@ -106,13 +105,13 @@ public class RssProbe
      * @throws TransactionException a Transaction problem occurred. Throwing this typically indicates a programming error.
      * @throws URISyntaxException thrown if a URI was constructed in an invalid way
      * @throws ParseException thrown if parsing failed
+     * @throws XMLStreamException thrown if the XML document was not well-formed, or could not be read
      */
     public void parseDocument(
             NetMeshBaseIdentifier  dataSourceIdentifier,
             CoherenceSpecification coherenceSpecification,
-            byte []                documentBytes,
             String                 documentMime,
-            Document               theDocument,
+            XMLStreamReader        reader,
             StagingMeshBase        freshMeshBase )
         throws
             EntityBlessedAlreadyException,
@@ -130,15 +129,16 @@ public class RssProbe
             RoleTypeBlessedAlreadyException,
             TransactionException,
             URISyntaxException,
-            ParseException
+            ParseException,
+            XMLStreamException
     {
-        Element rssNode = theDocument.getDocumentElement();
-        if ( !"rss".equals( rssNode.getLocalName())) {
+        if ( !"rss".equals( reader.getLocalName())) {
             throw new ProbeException.SyntaxError( dataSourceIdentifier, "Not an RSS file", null );
         }
 
-        if (    !"0.91".equals( rssNode.getAttribute( "version" ))
-             && !"2.0".equals( rssNode.getAttribute( "version" )) )
+        String version = reader.getAttributeValue( null, "version" );
+        if (    !"0.91".equals( version )
+             && !"2.0".equals( version ) )
         {
             log.warn( "RssProbe.parseDocument() failed version check, continuing anyway" );
         }
@@ -146,73 +146,206 @@ public class RssProbe
         NetMeshObject home = freshMeshBase.getHomeObject();
         home.bless( FeedsSubjectArea.RSSFEED ); // this is an RSS feed
 
-        NodeList channelNodes = rssNode.getElementsByTagName( "channel" );
-        
-        for ( int i=0 ; i<channelNodes.getLength() ; i++ ) {
-            Node channelNode = channelNodes.item( i );
+        boolean foundChannel = false;
 
-            if( !( channelNode instanceof Element )) {
+        while( nextChildElement( reader )) {
+            if( !foundChannel && "channel".equals( getQualifiedName( reader ))) {
+                handleChannel( dataSourceIdentifier, reader, 0, home, freshMeshBase );
+                foundChannel = true; // only do first channel in the feed for now
+
+            } else {
+                skipElement( reader );
+            }
+        }
+    }
+
+    /**
+     * Read one channel of the feed, and instantiate it.
+     *
+     * @param dataSourceIdentifier identifies the data source that is being accessed
+     * @param reader the reader, positioned at the start of the channel. Upon return, it is positioned at its end
+     * @param index index of the channel in the feed
+     * @param home the home object representing the feed
+     * @param freshMeshBase the StagingMeshBase in which the corresponding MeshObjects are to be instantiated
+     * @throws XMLStreamException thrown if the XML document was not well-formed, or could not be read
+     * @throws ProbeException a Probe error occurred per the possible subclasses defined in ProbeException
+     * @throws TransactionException a Transaction problem occurred. Throwing this typically indicates a programming error.
+     * @throws NotPermittedException thrown if an operation performed by the Probe was not permitted
+     * @throws MeshObjectIdentifierNotUniqueException thrown if an item had the same identifier as another
+     * @throws ParseException thrown if parsing failed
+     * @throws IsAbstractException a MeshType was abstract and could not be instantiated
+     * @throws EntityBlessedAlreadyException thrown if a NetMeshObject was blessed with an EntityType already
+     * @throws EntityNotBlessedException thrown if a NetMeshObject needed to be blessed with an EntityType but was not
+     * @throws RelatedAlreadyException thrown if two NetMeshObjects were related already
+     * @throws RoleTypeBlessedAlreadyException thrown if a relationship between two NetMeshObject was already blessed with a RoleType
+     * @throws NotRelatedException thrown if a two NetMeshObjects were not related
+     * @throws IllegalPropertyTypeException thrown if a PropertyType could not be used with a NetMeshObject
+     * @throws IllegalPropertyValueException thrown if a PropertyValue could not be used with a NetMeshObject and a PropertyType
+     */
+    protected void handleChannel(
+            NetMeshBaseIdentifier dataSourceIdentifier,
+            XMLStreamReader       reader,
+            int                   index,
+            NetMeshObject         home,
+            StagingMeshBase       freshMeshBase )
+        throws
+            XMLStreamException,
+            ProbeException,
+            TransactionException,
+            NotPermittedException,
+            MeshObjectIdentifierNotUniqueException,
+            ParseException,
+            IsAbstractException,
+            EntityBlessedAlreadyException,
+            EntityNotBlessedException,
+            RelatedAlreadyException,
+            RoleTypeBlessedAlreadyException,
+            NotRelatedException,
+            IllegalPropertyTypeException,
+            IllegalPropertyValueException
+    {
+        ModelBase modelBase        = freshMeshBase.getModelBase();
+        boolean   foundTitle       = false;
+        boolean   foundDescription = false;
+        int       itemCounter      = 0;
+
+        while( nextChildElement( reader )) {
+            if( isInNamespace( reader, MeshObjectSetProbeTags.INFOGRID_NAMESPACE )) {
+                InfoGridFeedExtensions extensions = new InfoGridFeedExtensions();
+                readInfoGridFeedExtension( dataSourceIdentifier, reader, modelBase, extensions );
+                handleInfoGridFeedExtensions( extensions, home );
                 continue;
             }
-            
-            Element realChannelNode = (Element) channelNode;
 
-            handleInfoGridFeedExtensions( dataSourceIdentifier, theDocument, realChannelNode, home );
+            String tag = getQualifiedName( reader );
 
-            String channelTitleTitle  = getChildNodeValue( realChannelNode, "title" );
-            String channelDescription = getChildNodeValue( realChannelNode, "description" );
+            if( "item".equals( tag )) {
+                handleItem( dataSourceIdentifier, reader, index, itemCounter++, home, freshMeshBase );
 
-            home.setPropertyValue( FeedsSubjectArea.FEED_TITLE,       FeedsSubjectArea.FEED_TITLE_type.createBlobValueOrNull(       channelTitleTitle,       "text/plain" ));
-            home.setPropertyValue( FeedsSubjectArea.FEED_DESCRIPTION, FeedsSubjectArea.FEED_DESCRIPTION_type.createBlobValueOrNull( channelDescription, "text/plain" ));
-            
-            NodeList itemNodes = realChannelNode.getElementsByTagName( "item" );
-            for ( int j=0 ; j<itemNodes.getLength() ; j++ ) {
-                Node itemNode = itemNodes.item( j );
+            } else if( !foundTitle && "title".equals( tag )) {
+                String channelTitle = readNonEmptyTextContent( reader );
+                if( channelTitle != null ) {
+                    home.setPropertyValue( FeedsSubjectArea.FEED_TITLE, FeedsSubjectArea.FEED_TITLE_type.createBlobValueOrNull( channelTitle, "text/plain" ));
+                    foundTitle = true;
+                }
 
-                if( !( itemNode instanceof Element )) {
-                    continue;
+            } else if( !foundDescription && "description".equals( tag )) {
+                String channelDescription = readNonEmptyTextContent( reader );
+                if( channelDescription != null ) {
+                    home.setPropertyValue( FeedsSubjectArea.FEED_DESCRIPTION, FeedsSubjectArea.FEED_DESCRIPTION_type.createBlobValueOrNull( channelDescription, "text/plain" ));
+                    foundDescription = true;
                 }
 
-                Element realItemNode = (Element) itemNode;
+            } else {
+                skipElement( reader );
+            }
+        }
+    }
 
-                String itemGuid        = getChildNodeValue(     realItemNode, "guid" );
-                String itemTitle       = getChildNodeValue(     realItemNode, "title" );
-                String itemDescription = getChildNodeValue(     realItemNode, "description" );
-                
-                if( itemGuid == null || itemGuid.length() == 0 ) {
-                    itemGuid = String.valueOf( i ) + "-" + String.valueOf( j ); // FIXME? Is this a good default?
-                }
-                itemGuid = ensureLocalGuid( itemGuid );
-
-                NetMeshObject item = createExtendedInfoGridFeedEntryObject(
-                        dataSourceIdentifier,
-                        theDocument,
-                        realItemNode,
-                        freshMeshBase.getMeshObjectIdentifierFactory().guessFromExternalForm( itemGuid ),
-                        FeedsSubjectArea.RSSFEEDITEM,
-                        freshMeshBase );
-                
-                item.setPropertyValue( FeedsSubjectArea.FEEDITEM_TITLE,   FeedsSubjectArea.FEEDITEM_TITLE_type.createBlobValueOrNull(   itemTitle,       "text/plain" ));
-                item.setPropertyValue( FeedsSubjectArea.FEEDITEM_CONTENT, FeedsSubjectArea.FEEDITEM_CONTENT_type.createBlobValueOrNull( itemDescription, "text/plain" ));
-
-                try {
-                    home.relate( item );
-                } catch( RelatedAlreadyException ex ) {
-                    // ignore
-                    if( log.isDebugEnabled() ) {
-                        log.info( ex );
-                    }
-                }
-                try {
-                    home.blessRelationship( FeedsSubjectArea.FEED_CONTAINS_FEEDITEM.getSource(), item );
-                } catch( RoleTypeBlessedAlreadyException ex ) {
-                    // ignore
-                    if( log.isDebugEnabled() ) {
-                        log.info( ex );
-                    }
-                }
+    /**
+     * Read one item of a channel, and instantiate it.
+     *
+     * @param dataSourceIdentifier identifies the data source that is being accessed
+     * @param reader the reader, positioned at the start of the item. Upon return, it is positioned at its end
+     * @param channelIndex index of the channel in the feed
+     * @param index index of the item in the channel
+     * @param home the home object representing the feed
+     * @param freshMeshBase the StagingMeshBase in which the corresponding MeshObjects are to be instantiated
+     * @throws XMLStreamException thrown if the XML document was not well-formed, or could not be read
+     * @throws ProbeException a Probe error occurred per the possible subclasses defined in ProbeException
+     * @throws TransactionException a Transaction problem occurred. Throwing this typically indicates a programming error.
+     * @throws NotPermittedException thrown if an operation performed by the Probe was not permitted
+     * @throws MeshObjectIdentifierNotUniqueException thrown if the item had the same identifier as another
+     * @throws ParseException thrown if parsing failed
+     * @throws IsAbstractException a MeshType was abstract and could not be instantiated
+     * @throws EntityBlessedAlreadyException thrown if a NetMeshObject was blessed with an EntityType already
+     * @throws EntityNotBlessedException thrown if a NetMeshObject needed to be blessed with an EntityType but was not
+     * @throws RelatedAlreadyException thrown if two NetMeshObjects were related already
+     * @throws RoleTypeBlessedAlreadyException thrown if a relationship between two NetMeshObject was already blessed with a RoleType
+     * @throws NotRelatedException thrown if a two NetMeshObjects were not related
+     * @throws IllegalPropertyTypeException thrown if a PropertyType could not be used with a NetMeshObject
+     * @throws IllegalPropertyValueException thrown if a PropertyValue could not be used with a NetMeshObject and a PropertyType
+     */
+    protected void handleItem(
+            NetMeshBaseIdentifier dataSourceIdentifier,
+            XMLStreamReader       reader,
+            int                   channelIndex,
+            int                   index,
+            NetMeshObject         home,
+            StagingMeshBase       freshMeshBase )
+        throws
+            XMLStreamException,
+            ProbeException,
+            TransactionException,
+            NotPermittedException,
+            MeshObjectIdentifierNotUniqueException,
+            ParseException,
+            IsAbstractException,
+            EntityBlessedAlreadyException,
+            EntityNotBlessedException,
+            RelatedAlreadyException,
+            RoleTypeBlessedAlreadyException,
+            NotRelatedException,
+            IllegalPropertyTypeException,
+            IllegalPropertyValueException
+    {
+        InfoGridFeedExtensions extensions = new InfoGridFeedExtensions();
+
+        String itemGuid        = null;
+        String itemTitle       = null;
+        String itemDescription = null;
+
+        while( nextChildElement( reader )) {
+            if( isInNamespace( reader, MeshObjectSetProbeTags.INFOGRID_NAMESPACE )) {
+                readInfoGridFeedExtension( dataSourceIdentifier, reader, freshMeshBase.getModelBase(), extensions );
+                continue;
+            }
+
+            String tag = getQualifiedName( reader );
+
+            if( itemGuid == null && "guid".equals( tag )) {
+                itemGuid = readNonEmptyTextContent( reader );
+
+            } else if( itemTitle == null && "title".equals( tag )) {
+                itemTitle = readNonEmptyTextContent( reader );
+
+            } else if( itemDescription == null && "description".equals( tag )) {
+                itemDescription = readNonEmptyTextContent( reader );
+
+            } else {
+                skipElement( reader );
+            }
+        }
+
+        if( itemGuid == null || itemGuid.length() == 0 ) {
+            itemGuid = String.valueOf( channelIndex ) + "-" + String.valueOf( index ); // no guid given: use the position in the feed
+        }
+        itemGuid = ensureLocalGuid( itemGuid );
+
+        NetMeshObject item = createExtendedInfoGridFeedEntryObject(
+                extensions,
+                freshMeshBase.getMeshObjectIdentifierFactory().guessFromExternalForm( itemGuid ),
+                FeedsSubjectArea.RSSFEEDITEM,
+                freshMeshBase );
+
+        item.setPropertyValue( FeedsSubjectArea.FEEDITEM_TITLE,   FeedsSubjectArea.FEEDITEM_TITLE_type.createBlobValueOrNull(   itemTitle,       "text/plain" ));
+        item.setPropertyValue( FeedsSubjectArea.FEEDITEM_CONTENT, FeedsSubjectArea.FEEDITEM_CONTENT_type.createBlobValueOrNull( itemDescription, "text/plain" ));
+
+        try {
+            home.relate( item );
+        } catch( RelatedAlreadyException ex ) {
+            // ignore
+            if( log.isDebugEnabled() ) {
+                log.info( ex );
+            }
+        }
+        try {
+            home.blessRelationship( FeedsSubjectArea.FEED_CONTAINS_FEEDITEM.getSource(), item );
+        } catch( RoleTypeBlessedAlreadyException ex ) {
+            // ignore
+            if( log.isDebugEnabled() ) {
+                log.info( ex );
             }
-            break; // only do first channel in the feed for now
         }
     }
 }
@@ -0,0 +1,126 @@
+//
+// This file is part of InfoGrid(tm). You may not use this file except in
+// compliance with the InfoGrid license. The InfoGrid license and important
+// disclaimers are contained in the file LICENSE.InfoGrid.txt that you should
+// have received with InfoGrid. If you have not received LICENSE.InfoGrid.txt
+// or you do not consent to all aspects of the license and the disclaimers,
+// no license is granted; do not use this file.
+//
+// For more information about InfoGrid go to http://infogrid.org/
+//
+// Copyright 1998-2015 by Johannes Ernst
+// All rights reserved.
+//
+
+package org.infogrid.probe.feeds.test.atom;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collection;
+import org.infogrid.mesh.MeshObject;
+import org.infogrid.meshbase.net.CoherenceSpecification;
+import org.infogrid.meshbase.net.NetMeshBaseIdentifier;
+import org.infogrid.model.Feeds.FeedsSubjectArea;
+import org.infogrid.probe.ProbeDirectory;
+import org.infogrid.probe.feeds.atom.AtomProbe;
+import org.infogrid.probe.feeds.test.AbstractFeedTest;
+import org.infogrid.probe.shadow.ShadowMeshBase;
+import org.infogrid.util.logging.Log;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+/**
+ * Tests the Atom Probe when registered as a Probe that reads a stream of XML events.
+ */
+@RunWith(Parameterized.class)
+public class AtomTest3
+        extends
+            AbstractFeedTest
+{
+    /**
+     * Test parameters.
+     *
+     * @return test parameters
+     */
+    @Parameterized.Parameters
+    public static Collection<Object[]> parameters()
+    {
+        return Arrays.asList( new Object[][] {
+                 { "src/test/resources/org/infogrid/probe/feeds/test/atom/AtomTest1.xml", 2 },
+                 { "src/test/resources/org/infogrid/probe/feeds/test/atom/AtomTest2.xml", 3 }
+        });
+    }
+
+    /**
+     * Run the test.
+     *
+     * @throws Exception all sorts of things may go wrong during a test
+     */
+    @Test
+    public void run()
+        throws
+            Exception
+    {
+        log.info( "accessing test file with meshBase" );
+
+        ShadowMeshBase meshBase1 = theProbeManager1.obtainFor( theTestFileId, CoherenceSpecification.ONE_TIME_ONLY );
+
+        checkObject( meshBase1, "could not find meshBase1" );
+        dumpMeshBase( meshBase1, "meshBase1", log );
+
+        MeshObject home1 = meshBase1.getHomeObject();
+
+        checkCondition( home1.isBlessedBy( FeedsSubjectArea.ATOMFEED ), "home object has wrong type" );
+        checkEquals( home1.traverse( FeedsSubjectArea.FEED_CONTAINS_FEEDITEM.getSource() ).size(), theExpectedNumberMeshObjects-1, "wrong number of items" );
+        checkEquals( meshBase1.size(), theExpectedNumberMeshObjects, "Wrong number of MeshObjects found" );
+    }
+
+    /**
+     * Constructor that takes parameters.
+     *
+     * @param fileName the feed file to read
+     * @param expectedNumberMeshObjects the number of MeshObjects in the file
+     * @throws Exception all sorts of things may happen during a test
+     */
+    public AtomTest3(
+            String fileName,
+            int    expectedNumberMeshObjects )
+        throws
+            Exception
+    {
+        theTestFileId = theMeshBaseIdentifierFactory.obtain( new File( fileName ));
+
+        theExpectedNumberMeshObjects = expectedNumberMeshObjects;
+    }
+
+    /**
+     * Setup.
+     *
+     * @throws Exception all sorts of things may happen during a test
+     */
+    @Before
+    @Override
+    public void setup()
+        throws
+            Exception
+    {
+        super.setup();
+
+        theProbeDirectory.addXmlStreamProbe( new ProbeDirectory.XmlStreamProbeDescriptor( null, "http://www.w3.org/2005/Atom", "feed", AtomProbe.class ));
+    }
+
+    /**
+     * The expected number of MeshObjects in the test file.
+     */
+    protected int theExpectedNumberMeshObjects;
+
+    /**
+     * The NetworkIdentifer of the test file.
+     */
+    protected NetMeshBaseIdentifier theTestFileId;
+
+    // Our Logger
+    private static Log log = Log.getLogInstance( AtomTest3.class );
+}
@@ -193,7 +193,7 @@ public class StoreProbeManagerMapper
         ByteArrayOutputStream out = new ByteArrayOutputStream();
 
         try {
-            theEncoder.encodeShadowMeshBase( realBase.asExternalized(), false, out ); // don't encode Proxies here
+            theEncoder.encodeShadowMeshBase( realBase.asExternalizedForStore(), false, out ); // don't encode Proxies here
 
             byte [] data = out.toByteArray();
 
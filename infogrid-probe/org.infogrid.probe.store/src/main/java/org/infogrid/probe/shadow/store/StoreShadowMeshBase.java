@@ -14,10 +14,15 @@
 
 package org.infogrid.probe.shadow.store;
 
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
 import org.infogrid.mesh.MeshObject;
 import org.infogrid.mesh.MeshObjectIdentifier;
 import org.infogrid.mesh.net.NetMeshObject;
 import org.infogrid.mesh.net.NetMeshObjectIdentifier;
+import org.infogrid.mesh.net.a.AnetMeshObject;
 import org.infogrid.mesh.net.externalized.ExternalizedNetMeshObject;
 import org.infogrid.mesh.set.MeshObjectSetFactory;
 import org.infogrid.mesh.set.m.ImmutableMMeshObjectSetFactory;
@@ -30,25 +35,35 @@ import org.infogrid.meshbase.net.proxy.Proxy;
 import org.infogrid.meshbase.net.proxy.ProxyMessageEndpointFactory;
 import org.infogrid.meshbase.net.proxy.ProxyPolicyFactory;
 import org.infogrid.meshbase.net.security.NetAccessManager;
+import org.infogrid.meshbase.store.StoreMeshBase;
+import org.infogrid.meshbase.store.StoreMeshBaseSwappingHashMap;
+import org.infogrid.meshbase.store.net.NetStoreMeshBaseEntryMapper;
 import org.infogrid.meshbase.store.net.StoreProxyManager;
+import org.infogrid.meshbase.transaction.Transaction;
 import org.infogrid.modelbase.ModelBase;
 import org.infogrid.probe.ProbeDirectory;
 import org.infogrid.probe.httpmapping.HttpMappingPolicy;
 import org.infogrid.probe.shadow.a.AShadowMeshBase;
 import org.infogrid.probe.shadow.externalized.ExternalizedShadowMeshBase;
+import org.infogrid.probe.shadow.externalized.SimpleExternalizedShadowMeshBase;
 import org.infogrid.probe.shadow.proxy.DefaultShadowProxyFactory;
 import org.infogrid.probe.shadow.proxy.DefaultShadowProxyPolicyFactory;
 import org.infogrid.store.IterableStore;
 import org.infogrid.store.util.IterableStoreBackedSwappingHashMap;
 import org.infogrid.util.CachingMap;
+import org.infogrid.util.CursorIterator;
 import org.infogrid.util.MCachingHashMap;
 import org.infogrid.util.context.Context;
 import org.infogrid.util.logging.Log;
 
 /**
- * A ShadowMeshBase whose content is stored in a Store. Unlike other Store implementations
- * of MeshBase, this implementation writes the entire content into the Store in bulk using a single StoreValue.
- * This avoid unnecessary network operations and for example, makes Differencer operations faster.
+ * <p>A ShadowMeshBase whose content is stored in a Store. Unlike other Store implementations
+ * of MeshBase, this implementation by default writes the entire content into the Store in bulk using a single StoreValue.
+ * This avoid unnecessary network operations and for example, makes Differencer operations faster.</p>
+ * <p>If created with a separate Store for its MeshObjects, this StoreShadowMeshBase instead operates
+ * incrementally like a StoreMeshBase: each MeshObject is stored in its own StoreValue, only the MeshObjects
+ * affected by a committed Transaction (such as the ChangeSet applied after a Probe run) are written, and
+ * MeshObjects are loaded from the Store only when accessed. This is preferable for large ShadowMeshBases.</p>
  */
 public class StoreShadowMeshBase
         extends
@@ -86,6 +101,55 @@ public class StoreShadowMeshBase
             HttpMappingPolicy                       mappingPolicy,
             IterableStore                           proxyStore,
             Context                                 context )
+    {
+        return create(
+                identifier,
+                meshBaseIdentifierFactory,
+                netMeshObjectAccessSpecificationFactory,
+                endpointFactory,
+                modelBase,
+                accessMgr,
+                directory,
+                timeNotNeededTillExpires,
+                mappingPolicy,
+                null,
+                proxyStore,
+                context );
+    }
+
+    /**
+     * Factory method.
+     *
+     * @param identifier the NetMeshBaseIdentifier of this NetMeshBase
+     * @param meshBaseIdentifierFactory the factory for NetMeshBaseIdentifiers
+     * @param netMeshObjectAccessSpecificationFactory the factory for NetMeshObjectAccessSpecifications
+     * @param endpointFactory the factory for communications endpoints
+     * @param modelBase the ModelBase containing type information
+     * @param accessMgr the AccessManager that controls access to this NetMeshBase
+     * @param directory the ProbeDirectory to use
+     * @param timeNotNeededTillExpires the time, in milliseconds, that this MShadowMeshBase will continue operating
+     *         even if none of its MeshObjects are replicated to another NetMeshBase. If this is negative, it means "forever".
+     *         If this is 0, it will expire immediately after the first Probe run, before the caller returns, which is probably
+     *         not very useful.
+     * @param objectStore the IterableStore in which to store the StoreShadowMeshBase's MeshObjects individually,
+     *         or null if the MeshObjects are written in bulk together with the StoreShadowMeshBase
+     * @param proxyStore the IterableStore in which to store the StoreShadowMeshBase's Proxies
+     * @param context the Context in which this NetMeshBase runs.
+     * @return the created StoreShadowMeshBase
+     */
+    public static StoreShadowMeshBase create(
+            NetMeshBaseIdentifier                   identifier,
+            NetMeshBaseIdentifierFactory            meshBaseIdentifierFactory,
+            NetMeshObjectAccessSpecificationFactory netMeshObjectAccessSpecificationFactory,
+            ProxyMessageEndpointFactory             endpointFactory,
+            ModelBase                               modelBase,
+            NetAccessManager                        accessMgr,
+            ProbeDirectory                          directory,
+            long                                    timeNotNeededTillExpires,
+            HttpMappingPolicy                       mappingPolicy,
+            IterableStore                           objectStore,
+            IterableStore                           proxyStore,
+            Context                                 context )
     {
         DefaultShadowProxyPolicyFactory proxyPolicyFactory = DefaultShadowProxyPolicyFactory.create();
 
@@ -100,6 +164,7 @@ public class StoreShadowMeshBase
                 directory,
                 timeNotNeededTillExpires,
                 mappingPolicy,
+                objectStore,
                 proxyStore,
                 context );
         return ret;
@@ -120,6 +185,8 @@ public class StoreShadowMeshBase
      *         even if none of its MeshObjects are replicated to another NetMeshBase. If this is negative, it means "forever".
      *         If this is 0, it will expire immediately after the first Probe run, before the caller returns, which is probably
      *         not very useful.
+     * @param objectStore the IterableStore in which to store the StoreShadowMeshBase's MeshObjects individually,
+     *         or null if the MeshObjects are written in bulk together with the StoreShadowMeshBase
      * @param proxyStore the IterableStore in which to store the StoreShadowMeshBase's Proxies
      * @param context the Context in which this NetMeshBase runs.
      * @return the created StoreShadowMeshBase
@@ -135,13 +202,22 @@ public class StoreShadowMeshBase
             ProbeDirectory                          directory,
             long                                    timeNotNeededTillExpires,
             HttpMappingPolicy                       mappingPolicy,
+            IterableStore                           objectStore,
             IterableStore                           proxyStore,
             Context                                 context )
     {
         DefaultShadowProxyFactory   proxyFactory   = DefaultShadowProxyFactory.create( endpointFactory, proxyPolicyFactory );
         ShadowStoreProxyEntryMapper theProxyMapper = new ShadowStoreProxyEntryMapper( proxyFactory );
-        
-        MCachingHashMap<MeshObjectIdentifier,MeshObject>    objectStorage = MCachingHashMap.create();
+
+        NetStoreMeshBaseEntryMapper                 objectMapper;
+        CachingMap<MeshObjectIdentifier,MeshObject> objectStorage;
+        if( objectStore != null ) {
+            objectMapper  = new NetStoreMeshBaseEntryMapper();
+            objectStorage = new StoreMeshBaseSwappingHashMap<>( objectMapper, objectStore );
+        } else {
+            objectMapper  = null;
+            objectStorage = MCachingHashMap.create();
+        }
         IterableStoreBackedSwappingHashMap<NetMeshBaseIdentifier,Proxy> proxyStorage  = IterableStoreBackedSwappingHashMap.createWeak( theProxyMapper, proxyStore );
 
         StoreProxyManager proxyManager = StoreProxyManager.create( proxyFactory, proxyStorage );
@@ -170,6 +246,9 @@ public class StoreShadowMeshBase
         setFactory.setMeshBase( ret );
         proxyFactory.setNetMeshBase( ret );
         theProxyMapper.setMeshBase( ret );
+        if( objectMapper != null ) {
+            objectMapper.setMeshBase( ret );
+        }
 
         // do not initialize home object here -- this is a ShadowMeshBase
 
@@ -244,6 +323,154 @@ public class StoreShadowMeshBase
     {
         return (StoreShadowMeshBaseLifecycleManager) theMeshBaseLifecycleManager;
     }
+
+    /**
+     * Determine whether this StoreShadowMeshBase stores its MeshObjects individually and incrementally,
+     * rather than in bulk together with the StoreShadowMeshBase.
+     *
+     * @return true if incremental
+     */
+    public boolean isIncremental()
+    {
+        return theCache instanceof StoreMeshBaseSwappingHashMap;
+    }
+
+    /**
+     * Helper method for typecasting to the right subtype of CachingMap. Only call if this
+     * StoreShadowMeshBase is incremental.
+     *
+     * @return the right subtype of CachingMap
+     */
+    @SuppressWarnings( "unchecked" )
+    protected StoreMeshBaseSwappingHashMap<MeshObjectIdentifier,MeshObject> getCachingMap()
+    {
+        return (StoreMeshBaseSwappingHashMap<MeshObjectIdentifier,MeshObject>) theCache;
+    }
+
+    /**
+     * Returns a CursorIterator over the content of this MeshBase. If incremental, this
+     * iterates over the Store, not just over the MeshObjects currently in memory.
+     *
+     * @return a CursorIterator.
+     */
+    @Override
+    public CursorIterator<MeshObject> iterator()
+    {
+        if( isIncremental() ) {
+            return getCachingMap().valuesIterator( MeshObjectIdentifier.class, MeshObject.class );
+        } else {
+            return super.iterator();
+        }
+    }
+
+    /**
+     * Obtain this ShadowMeshBase as ExternalizedShadowMeshBase for storage in the Store. If incremental,
+     * the MeshObjects are stored elsewhere and thus are not included.
+     *
+     * @return this ShadowMeshBase as ExternalizedShadowMeshBase
+     */
+    public ExternalizedShadowMeshBase asExternalizedForStore()
+    {
+        if( isIncremental() ) {
+            return SimpleExternalizedShadowMeshBase.create(
+                    (NetMeshBaseIdentifier) theMeshBaseIdentifier,
+                    theProxyManager.externalizedProxies(),
+                    new ExternalizedNetMeshObject[0] );
+        } else {
+            return asExternalized();
+        }
+    }
+
+    /**
+     * Update the Store when Transactions are committed. If incremental, only the MeshObjects
+     * affected by the Transaction are written.
+     *
+     * @param tx Transaction the Transaction that was committed
+     */
+    @Override
+    protected void transactionCommittedHook(
+            Transaction tx )
+    {
+        super.transactionCommittedHook( tx );
+
+        if( !isIncremental() ) {
+            return;
+        }
+        Map<MeshObjectIdentifier,MeshObject>                          toWrite = StoreMeshBase.determineObjectsToWriteFromTransaction( tx );
+        StoreMeshBaseSwappingHashMap<MeshObjectIdentifier,MeshObject> map     = getCachingMap();
+
+        synchronized( this ) {
+            for( AnetMeshObject current : theReplicationChangedObjectsToBeStored ) {
+                if( !toWrite.containsKey( current.getIdentifier() ) ) {
+                    // otherwise we might write an object that was deleted
+                    toWrite.put( current.getIdentifier(), current );
+                }
+            }
+            theReplicationChangedObjectsToBeStored.clear();
+        }
+
+        map.writeToStorageUponCommit( toWrite );
+        map.transactionDone();
+    }
+
+    /**
+     * Discard MeshObjects remembered as removed when a Transaction was rolled back.
+     *
+     * @param tx Transaction the Transaction that was rolled back
+     */
+    @Override
+    protected void transactionRolledbackHook(
+            Transaction tx )
+    {
+        super.transactionRolledbackHook( tx );
+
+        if( isIncremental() ) {
+            getCachingMap().transactionUndone();
+        }
+    }
+
+    /**
+     * Tell the MeshBase that this AMeshObject needs to be saved into persistent
+     * storage (if applicable per AMeshBase implementation).
+     *
+     * @param obj the AbstractMeshObject to be saved
+     */
+    @Override
+    public synchronized void addReplicationChangedObject(
+            AnetMeshObject obj )
+    {
+        if( !isIncremental() ) {
+            return; // written in bulk, see flushMeshBase
+        }
+        theReplicationChangedObjectsToBeStored.add( obj );
+        if( getCurrentTransaction() == null ) {
+            StoreMeshBaseSwappingHashMap<MeshObjectIdentifier,MeshObject> map = getCachingMap();
+
+            for( AnetMeshObject current : theReplicationChangedObjectsToBeStored ) {
+                map.saveValueToStorageUponCommit( current.getIdentifier(), current );
+            }
+            theReplicationChangedObjectsToBeStored.clear();
+        }
+    }
+
+    /**
+     * This StoreShadowMeshBase has been removed from its ProbeManager. If incremental, delete
+     * the individually stored MeshObjects, as they are not going to be needed any more.
+     */
+    @Override
+    protected void removedFromProbeManager()
+    {
+        super.removedFromProbeManager();
+
+        if( isIncremental() ) {
+            try {
+                getCachingMap().getStore().deleteAll();
+
+            } catch( IOException ex ) {
+                log.error( ex );
+            }
+        }
+    }
     
     /**
      * Allow a Proxy to tell this StagingMeshBase that it performed an operation that
@@ -267,18 +494,35 @@ public class StoreShadowMeshBase
     {
         // cannot restore the Proxies here, we don't have the data (FIXME? tbd?)
         StoreShadowMeshBaseLifecycleManager life = (StoreShadowMeshBaseLifecycleManager) theMeshBaseLifecycleManager;
-        
-        for( ExternalizedNetMeshObject current : externalized.getExternalizedNetMeshObjects() ) {
+
+        ExternalizedNetMeshObject []         toRestore = externalized.getExternalizedNetMeshObjects();
+        Map<MeshObjectIdentifier,MeshObject> restored  = new HashMap<>( toRestore.length );
+
+        for( ExternalizedNetMeshObject current : toRestore ) {
             try {
-                life.restore( current );
+                NetMeshObject found = life.restore( current );
+                if( found != null ) {
+                    restored.put( found.getIdentifier(), found );
+                }
 
             } catch( Throwable ex ) {
                 // just in case
                 log.error( ex );
             }
-        }        
+        }
+        if( isIncremental() && !restored.isEmpty() ) {
+            // stored in bulk earlier: from now on, store them individually
+            getCachingMap().writeToStorageUponCommit( restored );
+        }
     }
 
+    /**
+     * If incremental, the NetMeshObjects that need to be written to storage because their replication status changed.
+     * This queue gets immediately worked down if there is no current transaction. When there is a current
+     * transaction, it grows.
+     */
+    protected HashSet<AnetMeshObject> theReplicationChangedObjectsToBeStored = new HashSet<>();
+
     /**
      * The currently only encoding ID.
      */
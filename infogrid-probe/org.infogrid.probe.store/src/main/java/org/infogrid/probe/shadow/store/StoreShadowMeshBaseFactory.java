@@ -65,6 +65,39 @@ public class StoreShadowMeshBaseFactory
                 endpointFactory,
                 modelBase,
                 shadowStore,
+                null,
+                shadowProxyStore,
+                context );
+    }
+
+    /**
+     * Factory method for the StoreShadowMeshBaseFactory itself, whose created StoreShadowMeshBases
+     * store their MeshObjects individually and incrementally.
+     * 
+     * @param meshBaseIdentifierFactory the factory for NetMeshBaseIdentifiers
+     * @param endpointFactory factory for communications endpoints, to be used by all created StoreShadowMeshBase
+     * @param modelBase the ModelBase containing type information to be used by all created StoreShadowMeshBases
+     * @param shadowStore the Store in which the ShadowMeshBases will be stored
+     * @param shadowObjectStore the Store in which the ShadowMeshBases' MeshObjects will be stored
+     * @param shadowProxyStore the Store in which the ShadowMeshBases' Proxies will be stored
+     * @param context the Context in which this all created MShadowMeshBases will run.
+     * @return the created StoreShadowMeshBaseFactory
+     */
+    public static StoreShadowMeshBaseFactory create(
+            NetMeshBaseIdentifierFactory            meshBaseIdentifierFactory,
+            ProxyMessageEndpointFactory             endpointFactory,
+            ModelBase                               modelBase,
+            IterableStore                           shadowStore,
+            IterableStore                           shadowObjectStore,
+            IterableStore                           shadowProxyStore,
+            Context                                 context )
+    {
+        return new StoreShadowMeshBaseFactory(
+                meshBaseIdentifierFactory,
+                endpointFactory,
+                modelBase,
+                shadowStore,
+                shadowObjectStore,
                 shadowProxyStore,
                 context );
     }
@@ -76,6 +109,8 @@ public class StoreShadowMeshBaseFactory
      * @param modelBase the ModelBase containing type information to be used by all created StoreShadowMeshBases
      * @param endpointFactory factory for communications endpoints, to be used by all created StoreShadowMeshBase
      * @param shadowStore the Store in which the ShadowMeshBases will be stored
+     * @param shadowObjectStore the Store in which the ShadowMeshBases' MeshObjects will be stored, or null
+     *        if they are stored in bulk together with the ShadowMeshBases
      * @param shadowProxyStore the Store in which the ShadowMeshBases' Proxies will be stored
      * @param context the Context in which this all created MShadowMeshBases will run.
      */
@@ -84,6 +119,7 @@ public class StoreShadowMeshBaseFactory
             ProxyMessageEndpointFactory             endpointFactory,
             ModelBase                               modelBase,
             IterableStore                           shadowStore,
+            IterableStore                           shadowObjectStore,
             IterableStore                           shadowProxyStore,
             Context                                 context )
     {
@@ -94,8 +130,9 @@ public class StoreShadowMeshBaseFactory
         
         theMeshBaseIdentifierFactory = meshBaseIdentifierFactory;
         
-        theShadowStore      = shadowStore;
-        theShadowProxyStore = shadowProxyStore;
+        theShadowStore       = shadowStore;
+        theShadowObjectStore = shadowObjectStore;
+        theShadowProxyStore  = shadowProxyStore;
     }
 
     /**
@@ -120,7 +157,8 @@ public class StoreShadowMeshBaseFactory
                 key,
                 theMeshBaseIdentifierFactory );
 
-        IterablePrefixingStore thisProxyStore = IterablePrefixingStore.create( key.toExternalForm(), theShadowProxyStore );
+        IterablePrefixingStore thisObjectStore = theShadowObjectStore != null ? IterablePrefixingStore.create( key.toExternalForm(), theShadowObjectStore ) : null;
+        IterablePrefixingStore thisProxyStore  = IterablePrefixingStore.create( key.toExternalForm(), theShadowProxyStore );
 
         StoreShadowMeshBase ret = StoreShadowMeshBase.create(
                 key,
@@ -132,6 +170,7 @@ public class StoreShadowMeshBaseFactory
                 theProbeManager.getProbeDirectory(),
                 theTimeNotNeededTillExpires,
                 mappingPolicy,
+                thisObjectStore,
                 thisProxyStore,
                 theMeshBaseContext );
         
@@ -161,7 +200,8 @@ public class StoreShadowMeshBaseFactory
                 key,
                 theMeshBaseIdentifierFactory );
 
-        IterablePrefixingStore thisProxyStore = IterablePrefixingStore.create( key.toExternalForm(), theShadowProxyStore );
+        IterablePrefixingStore thisObjectStore = theShadowObjectStore != null ? IterablePrefixingStore.create( key.toExternalForm(), theShadowObjectStore ) : null;
+        IterablePrefixingStore thisProxyStore  = IterablePrefixingStore.create( key.toExternalForm(), theShadowProxyStore );
 
         StoreShadowMeshBase ret = StoreShadowMeshBase.create(
                 key,
@@ -173,6 +213,7 @@ public class StoreShadowMeshBaseFactory
                 theProbeManager.getProbeDirectory(),
                 theTimeNotNeededTillExpires,
                 theProbeManager.getProbeDirectory().getHttpMappingPolicy(),
+                thisObjectStore,
                 thisProxyStore,
                 theMeshBaseContext );
         
@@ -191,6 +232,16 @@ public class StoreShadowMeshBaseFactory
         return theMeshBaseIdentifierFactory;
     }
 
+    /**
+     * Determine whether the created StoreShadowMeshBases store their MeshObjects individually and incrementally.
+     *
+     * @return true if incremental
+     */
+    public boolean isIncremental()
+    {
+        return theShadowObjectStore != null;
+    }
+
     /**
      * Factory for MeshBaseIdentifiers.
      */
@@ -201,6 +252,11 @@ public class StoreShadowMeshBaseFactory
      */
     protected IterableStore theShadowStore;
     
+    /**
+     * The Store in which the MeshObjects of the ShadowMeshBases are stored individually, if any.
+     */
+    protected IterableStore theShadowObjectStore;
+
     /**
      * The Store in which Shadow proxy data is stored.
      */
@@ -17,6 +17,8 @@ package org.infogrid.probe.xrd;
 import java.io.IOException;
 import java.net.URISyntaxException;
 import java.text.ParseException;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 import org.diet4j.core.ModuleException;
 import org.infogrid.lid.model.xrd.XrdSubjectArea;
 import org.infogrid.mesh.BlessedAlreadyException;
@@ -44,20 +46,16 @@ import org.infogrid.model.primitives.StringValue;
 import org.infogrid.model.primitives.TimeStampValue;
 import org.infogrid.probe.ProbeException;
 import org.infogrid.probe.StagingMeshBase;
-import org.infogrid.probe.xml.XmlDOMProbe;
+import org.infogrid.probe.xml.AbstractXmlStreamProbe;
 import org.infogrid.util.logging.Log;
-import org.w3c.dom.Document;
-import org.w3c.dom.NamedNodeMap;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
-import org.w3c.dom.Text;
 
 /**
  * A Probe for XRD files.
  */
 public class XrdProbe
+        extends
+            AbstractXmlStreamProbe
         implements
-            XmlDOMProbe,
             XrdXmlConstants
 {
     private static final Log log = Log.getLogInstance( XrdProbe.class ); // our own, private logger
@@ -68,9 +66,8 @@ public class XrdProbe
     public void parseDocument(
             NetMeshBaseIdentifier  dataSourceIdentifier,
             CoherenceSpecification coherenceSpecification,
-            byte []                documentBytes,
             String                 documentMime,
-            Document               theDocument,
+            XMLStreamReader        reader,
             StagingMeshBase        freshMeshBase )
         throws
             EntityBlessedAlreadyException,
@@ -88,7 +85,8 @@ public class XrdProbe
             RoleTypeBlessedAlreadyException,
             TransactionException,
             URISyntaxException,
-            ParseException
+            ParseException,
+            XMLStreamException
     {
         NetMeshObject home = freshMeshBase.getHomeObject();
 
@@ -104,39 +102,35 @@ public class XrdProbe
 
         int nodeCounter = 0;
 
-        NodeList rootList = theDocument.getChildNodes();
-        for( int h=0 ; h<rootList.getLength() ; ++h ) {
-            Node rootNode = rootList.item( h );
-            if( !XRD_XML_NAMESPACE.equals( rootNode.getNamespaceURI()) || !"XRD".equals( rootNode.getLocalName() )) {
+        if( !isInNamespace( reader, XRD_XML_NAMESPACE ) || !"XRD".equals( reader.getLocalName() )) {
+            return;
+        }
+        while( nextChildElement( reader )) {
+            if( !isInNamespace( reader, XRD_XML_NAMESPACE )) {
+                skipElement( reader );
                 continue;
             }
-            NodeList mainNodeList = rootNode.getChildNodes();
-            for( int i=0 ; i<mainNodeList.getLength() ; ++i ) {
-                Node mainNode = mainNodeList.item( i );
-                if( !XRD_XML_NAMESPACE.equals( mainNode.getNamespaceURI() )) {
-                    continue;
-                }
 
-                String elementName = mainNode.getLocalName();
+            String elementName = reader.getLocalName();
 
-                if( EXPIRES.equals( elementName )) {
-                    handleExpiresNode( mainNode, ++nodeCounter, home );
+            if( EXPIRES.equals( elementName )) {
+                handleExpiresNode( reader, ++nodeCounter, home );
 
-                } else if( SUBJECT.equals( elementName )) {
-                    handleSubjectNode( mainNode, ++nodeCounter, home );
+            } else if( SUBJECT.equals( elementName )) {
+                handleSubjectNode( reader, ++nodeCounter, home );
 
-                } else if( ALIAS.equals( elementName )) {
-                    handleAliasNode( mainNode, ++nodeCounter, home );
+            } else if( ALIAS.equals( elementName )) {
+                handleAliasNode( reader, ++nodeCounter, home );
 
-                } else if( PROPERTY.equals( elementName )) {
-                    handlePropertyNode( mainNode, ++nodeCounter, home );
+            } else if( PROPERTY.equals( elementName )) {
+                handlePropertyNode( reader, ++nodeCounter, home );
 
-                } else if( LINK.equals( elementName )) {
-                    handleLinkNode( mainNode, ++nodeCounter, home );
+            } else if( LINK.equals( elementName )) {
+                handleLinkNode( reader, ++nodeCounter, home );
 
-                } else {
-                   log.error( "Unexpected element", elementName, mainNode );
-                }
+            } else {
+                log.error( "Unexpected element", elementName, reader.getLocation() );
+                skipElement( reader );
             }
         }
     }
@@ -144,37 +138,39 @@ public class XrdProbe
     /**
      * Handle a discovered Exoires Node.
      *
-     * @param current the current Node
+     * @param reader the reader, positioned at the start of the element. Upon return, it is positioned at its end
      * @param index unique index that can be used to generate identifiers
      * @param home the Probe's home object
      */
     protected void handleExpiresNode(
-            Node          current,
-            int           index,
-            NetMeshObject home )
+            XMLStreamReader reader,
+            int             index,
+            NetMeshObject   home )
         throws
+            XMLStreamException,
             IllegalPropertyTypeException,
             IllegalPropertyValueException,
             NotPermittedException,
             TransactionException,
             ParseException
     {
-        String text = getTextContentOf( current );
+        String text = getTextContentOf( reader );
         home.setPropertyValue( XrdSubjectArea.XRD_EXPIRES, TimeStampValue.createFromW3c( text ));
     }
 
     /**
      * Handle a discovered Subject Node.
      *
-     * @param current the current Node
+     * @param reader the reader, positioned at the start of the element. Upon return, it is positioned at its end
      * @param index unique index that can be used to generate identifiers
      * @param home the Probe's home object
      */
     protected void handleSubjectNode(
-            Node          current,
-            int           index,
-            NetMeshObject home )
+            XMLStreamReader reader,
+            int             index,
+            NetMeshObject   home )
         throws
+            XMLStreamException,
             EntityNotBlessedException,
             RelatedAlreadyException,
             IsAbstractException,
@@ -185,7 +181,7 @@ public class XrdProbe
             ParseException
     {
         NetMeshBase base = home.getMeshBase();
-        String      text = getTextContentOf( current );
+        String      text = getTextContentOf( reader );
 
         NetMeshObjectIdentifier subjectIdentifier = base.getMeshObjectIdentifierFactory().guessFromExternalForm( text );
 
@@ -200,15 +196,16 @@ public class XrdProbe
     /**
      * Handle a discovered Alias Node.
      *
-     * @param current the current Node
+     * @param reader the reader, positioned at the start of the element. Upon return, it is positioned at its end
      * @param index unique index that can be used to generate identifiers
      * @param home the Probe's home object
      */
     protected void handleAliasNode(
-            Node          current,
-            int           index,
-            NetMeshObject home )
+            XMLStreamReader reader,
+            int             index,
+            NetMeshObject   home )
         throws
+            XMLStreamException,
             EntityNotBlessedException,
             RelatedAlreadyException,
             IsAbstractException,
@@ -219,7 +216,7 @@ public class XrdProbe
             ParseException
     {
         NetMeshBase base = home.getMeshBase();
-        String      text = getTextContentOf( current );
+        String      text = getTextContentOf( reader );
 
         NetMeshObjectIdentifier aliasIdentifier = base.getMeshObjectIdentifierFactory().guessFromExternalForm( text );
 
@@ -234,15 +231,19 @@ public class XrdProbe
     /**
      * Handle a discovered Property Node.
      *
-     * @param current the current Node
+     * @param reader the reader, positioned at the start of the element. Upon return, it is positioned at its end
      * @param index unique index that can be used to generate identifiers
      * @param home the Probe's home object
      */
     protected void handlePropertyNode(
-            Node          current,
-            int           index,
-            NetMeshObject home )
+            XMLStreamReader reader,
+            int             index,
+            NetMeshObject   home )
+        throws
+            XMLStreamException
     {
+        skipElement( reader );
+
         // currently we don't do anything about them. The plan is to instantiate subclasses of Xrd,
         // or something like that, and set properties on them.
     }
@@ -250,15 +251,16 @@ public class XrdProbe
     /**
      * Handle a discovered Link Node.
      *
-     * @param current the current Node
+     * @param reader the reader, positioned at the start of the element. Upon return, it is positioned at its end
      * @param index unique index that can be used to generate identifiers
      * @param home the Probe's home object
      */
     protected void handleLinkNode(
-            Node          current,
-            int           index,
-            NetMeshObject home )
+            XMLStreamReader reader,
+            int             index,
+            NetMeshObject   home )
         throws
+            XMLStreamException,
             MeshObjectIdentifierNotUniqueException,
             EntityNotBlessedException,
             RelatedAlreadyException,
@@ -274,42 +276,29 @@ public class XrdProbe
         NetMeshBaseLifecycleManager    life   = base.getMeshBaseLifecycleManager();
         NetMeshObjectIdentifierFactory idFact = base.getMeshObjectIdentifierFactory();
 
-        NamedNodeMap attributes = current.getAttributes();
-
-        Node relNode      = attributes.getNamedItemNS( XRD_XML_NAMESPACE, REL );
-        Node typeNode     = attributes.getNamedItemNS( XRD_XML_NAMESPACE, TYPE );
-        Node hrefNode     = attributes.getNamedItemNS( XRD_XML_NAMESPACE, HREF );
-        Node templateNode = attributes.getNamedItemNS( XRD_XML_NAMESPACE, TEMPLATE );
+        String rel      = getAttributeOf( reader, REL );
+        String type     = getAttributeOf( reader, TYPE );
+        String href     = getAttributeOf( reader, HREF );
+        String template = getAttributeOf( reader, TEMPLATE );
 
-        if( relNode == null ) {
-            relNode = attributes.getNamedItem( REL );
-        }
-        if( typeNode == null ) {
-            typeNode = attributes.getNamedItem( TYPE );
-        }
-        if( hrefNode == null ) {
-            hrefNode = attributes.getNamedItem( HREF );
-        }
-        if( templateNode == null ) {
-            templateNode = attributes.getNamedItem( TEMPLATE );
-        }
+        skipElement( reader );
 
         NetMeshObject link = life.createMeshObject(
                 idFact.guessFromExternalForm( "link-" + index ),
-                templateNode != null ? XrdSubjectArea.LINKTEMPLATE : XrdSubjectArea.LINK );
+                template != null ? XrdSubjectArea.LINKTEMPLATE : XrdSubjectArea.LINK );
 
-        if( relNode != null ) {
-            link.setPropertyValue( XrdSubjectArea.ABSTRACTLINK_REL, StringValue.create( getTextContentOf( relNode )));
+        if( rel != null ) {
+            link.setPropertyValue( XrdSubjectArea.ABSTRACTLINK_REL, StringValue.create( rel ));
         }
-        if( typeNode != null ) {
-            link.setPropertyValue( XrdSubjectArea.ABSTRACTLINK_TYPE, StringValue.create( getTextContentOf( typeNode )));
+        if( type != null ) {
+            link.setPropertyValue( XrdSubjectArea.ABSTRACTLINK_TYPE, StringValue.create( type ));
         }
 
-        if( templateNode != null ) {
-            link.setPropertyValue( XrdSubjectArea.LINKTEMPLATE_TEMPLATE, StringValue.create( getTextContentOf( templateNode )));
+        if( template != null ) {
+            link.setPropertyValue( XrdSubjectArea.LINKTEMPLATE_TEMPLATE, StringValue.create( template ));
 
-        } else if( hrefNode != null ) {
-            NetMeshObjectIdentifier destIdentifier = idFact.guessFromExternalForm( getTextContentOf( hrefNode ));
+        } else if( href != null ) {
+            NetMeshObjectIdentifier destIdentifier = idFact.guessFromExternalForm( href );
 
             NetMeshObject dest = findOrCreateForwardReferenceAndBless(
                     destIdentifier,
@@ -326,24 +315,40 @@ public class XrdProbe
     }
 
     /**
-     * Helper method to get the trimmed text content of a node.
+     * Helper method to get the trimmed text content of an element.
      *
-     * @param current the Node
+     * @param reader the reader, positioned at the start of the element. Upon return, it is positioned at its end
      * @return the text content
+     * @throws XMLStreamException thrown if the XML could not be read
      */
     protected String getTextContentOf(
-            Node current )
+            XMLStreamReader reader )
+        throws
+            XMLStreamException
     {
-        NodeList childList = current.getChildNodes();
+        return readTextContent( reader ).trim();
+    }
 
-        StringBuilder found     = new StringBuilder();
-        for( int l=0 ; l<childList.getLength() ; ++l ) {
-            Node child = childList.item( l );
-            if( child instanceof Text ) {
-                found.append( ((Text)child).getData() );
-            }
+    /**
+     * Helper method to get the trimmed value of an attribute of the current element.
+     * An attribute in the XRD namespace takes precedence over one without namespace.
+     *
+     * @param reader the reader, positioned at the start of the element
+     * @param name the local name of the attribute
+     * @return the value of the attribute, or null if not given
+     */
+    protected String getAttributeOf(
+            XMLStreamReader reader,
+            String          name )
+    {
+        String ret = reader.getAttributeValue( XRD_XML_NAMESPACE, name );
+        if( ret == null ) {
+            ret = reader.getAttributeValue( null, name );
         }
-        return found.toString().trim();
+        if( ret != null ) {
+            ret = ret.trim();
+        }
+        return ret;
     }
 
     /**
@@ -14,6 +14,7 @@
 
 package org.infogrid.probe;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import org.infogrid.probe.httpmapping.HttpMappingPolicy;
 import org.infogrid.util.StringHelper;
@@ -129,8 +130,29 @@ public abstract class AbstractProbeDirectory
         throws
             IllegalArgumentException
     {
-        // check the XML Dom probes
-        for( XmlDomProbeDescriptor current : theXmlDomProbes ) {
+        ensureNoXmlOverlap( docTypes, namespaces, localNames, theXmlDomProbes );
+        ensureNoXmlOverlap( docTypes, namespaces, localNames, theXmlStreamProbes );
+    }
+
+    /**
+     * Internal helper to check that there is no overlap in handling XML
+     * document types with one set of XML Probes.
+     *
+     * @param docTypes the potential new XML document types
+     * @param namespaces the namespaces of the potential new XML root tags
+     * @param localNames the local names of the potential new XML root tags
+     * @param existing the already known XML Probes
+     * @throws IllegalArgumentException thrown if an XML document type is handled already
+     */
+    protected void ensureNoXmlOverlap(
+            String []                                 docTypes,
+            String []                                 namespaces,
+            String []                                 localNames,
+            Collection<? extends XmlProbeDescriptor> existing )
+        throws
+            IllegalArgumentException
+    {
+        for( XmlProbeDescriptor current : existing ) {
 
             // check the document types
             for( int j=current.theDocumentTypes.length-1 ; j>=0 ; --j ) {
@@ -169,6 +191,22 @@ public abstract class AbstractProbeDirectory
         theXmlDomProbes.add( desc );
     }
 
+    /**
+     * Add a Probe to this ProbeDirectory that expects a stream of XML events as input.
+     *
+     * @param desc the descriptor describing the Probe
+     * @throws IllegalArgumentException thrown if an XML document type is handled already
+     */
+    public synchronized void addXmlStreamProbe(
+            XmlStreamProbeDescriptor desc )
+        throws
+            IllegalArgumentException
+    {
+        ensureNoXmlOverlap( desc.theDocumentTypes, desc.theToplevelElementNamespaces, desc.theToplevelElementLocalNames );
+
+        theXmlStreamProbes.add( desc );
+    }
+
     /**
      * Add a Probe to this ProbeDirectory that will access an API to determine its input.
      *
@@ -295,6 +333,42 @@ public abstract class AbstractProbeDirectory
         }
         return null;
     }
+
+    /**
+     * Find an XML stream Probe by document type.
+     *
+     * @param documentType the found XML document type
+     * @return the descriptor for the Probe that can parse this document type
+     */
+    public XmlStreamProbeDescriptor getXmlStreamProbeDescriptorByDocumentType(
+            String documentType )
+    {
+        for( XmlStreamProbeDescriptor current : theXmlStreamProbes ) {
+            if( current.canProcessDocumentType( documentType )) {
+                return current;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Find an XML stream Probe by tag type.
+     *
+     * @param toplevelElementNamespace namespace URI of the top-level tag, if any
+     * @param toplevelElementLocalName local name of the top-level tag
+     * @return the descriptor for the Probe that can parse this tag type
+     */
+    public XmlStreamProbeDescriptor getXmlStreamProbeDescriptorByTagType(
+            String toplevelElementNamespace,
+            String toplevelElementLocalName )
+    {
+        for( XmlStreamProbeDescriptor current : theXmlStreamProbes ) {
+            if( current.canProcessTagType( toplevelElementNamespace, toplevelElementLocalName )) {
+                return current;
+            }
+        }
+        return null;
+    }
     
     /**
      * Find an API Probe class name by URL.
@@ -465,6 +539,18 @@ public abstract class AbstractProbeDirectory
         return isIn( className, theXmlDomProbes );
     }
 
+    /**
+     * Determine whether a Probe class by this name is an XmlStreamProbe.
+     *
+     * @param className name of the class
+     * @return return true if this is an XmlStreamProbe
+     */
+    public boolean isXmlStreamProbe(
+            String className )
+    {
+        return isIn( className, theXmlStreamProbes );
+    }
+
     /**
      * Internal helper method to look up a Probe by its class name in an ArrayList.
      *
@@ -499,6 +585,11 @@ public abstract class AbstractProbeDirectory
       */
     protected Collection<XmlDomProbeDescriptor> theXmlDomProbes;
 
+    /**
+      * The Probes that we know of that are based on XML and read a stream of XML events.
+      */
+    protected Collection<XmlStreamProbeDescriptor> theXmlStreamProbes = new ArrayList<>();
+
     /**
       * The Probes that we know of that are not based on XML but read a stream.
       */
@@ -21,7 +21,7 @@ import java.util.regex.Pattern;
 import org.diet4j.core.ModuleRequirement;
 import org.infogrid.probe.httpmapping.HttpMappingPolicy;
 import org.infogrid.probe.xml.XmlProbe;
-import org.infogrid.probe.xml.XmlDOMProbe;
+import org.infogrid.probe.xml.XmlStreamProbe;
 import org.infogrid.util.StringHelper;
 import org.infogrid.util.logging.CanBeDumped;
 import org.infogrid.util.logging.Dumper;
@@ -95,6 +95,26 @@ public interface ProbeDirectory
             String toplevelElementNamespace,
             String toplevelElementLocalName );
     
+    /**
+     * Find an XML stream Probe by document type.
+     *
+     * @param documentType the found XML document type
+     * @return the descriptor for the Probe that can parse this document type
+     */
+    public XmlStreamProbeDescriptor getXmlStreamProbeDescriptorByDocumentType(
+            String documentType );
+
+    /**
+     * Find an XML stream Probe by the type of top-level tag.
+     *
+     * @param toplevelElementNamespace namespace URI of the top-level tag, if any
+     * @param toplevelElementLocalName local name of the top-level tag
+     * @return the descriptor for the Probe that can parse this tag type
+     */
+    public XmlStreamProbeDescriptor getXmlStreamProbeDescriptorByTagType(
+            String toplevelElementNamespace,
+            String toplevelElementLocalName );
+
     /**
      * Find an API Probe class name by URL.
      *
@@ -416,7 +436,9 @@ public interface ProbeDirectory
     }
 
     /**
-     * This is an entry in the set of XML DOM Probes.
+     * This is an entry in the set of XML DOM Probes. Probes that were converted to
+     * XmlStreamProbes may continue to be registered here; the ProbeDispatcher passes
+     * them a stream of XML events regardless.
      */
     public static class XmlDomProbeDescriptor
             extends
@@ -483,10 +505,10 @@ public interface ProbeDirectory
          * @param clazz the actual Probe class
          */
         public XmlDomProbeDescriptor(
-                String                       documentType,
-                String                       toplevelElementNamespace,
-                String                       toplevelElementLocalName,
-                Class<? extends XmlDOMProbe> clazz )
+                String                    documentType,
+                String                    toplevelElementNamespace,
+                String                    toplevelElementLocalName,
+                Class<? extends XmlProbe> clazz )
         {
             this(   new String[] { documentType },
                     new String[] { toplevelElementNamespace },
@@ -506,10 +528,10 @@ public interface ProbeDirectory
          * @param clazz the actual Probe class
          */
         public XmlDomProbeDescriptor(
-                String []                    documentTypes,
-                String []                    toplevelElementNamespaces,
-                String []                    toplevelElementLocalNames,
-                Class<? extends XmlDOMProbe> clazz )
+                String []                 documentTypes,
+                String []                 toplevelElementNamespaces,
+                String []                 toplevelElementLocalNames,
+                Class<? extends XmlProbe> clazz )
         {
             this(   documentTypes,
                     toplevelElementNamespaces,
@@ -532,13 +554,148 @@ public interface ProbeDirectory
          * @param req specifies the Module in which the Probe class can be found, if not provided
          */
         public XmlDomProbeDescriptor(
-                String []                    documentTypes,
-                String []                    toplevelElementNamespaces,
-                String []                    toplevelElementLocalNames,
-                String                       className,
-                Class<? extends XmlDOMProbe> clazz,
-                Map<String,Object>           parameters,
-                ModuleRequirement            req )
+                String []                 documentTypes,
+                String []                 toplevelElementNamespaces,
+                String []                 toplevelElementLocalNames,
+                String                    className,
+                Class<? extends XmlProbe> clazz,
+                Map<String,Object>        parameters,
+                ModuleRequirement         req )
+        {
+            super(  documentTypes,
+                    toplevelElementNamespaces,
+                    toplevelElementLocalNames,
+                    className,
+                    clazz,
+                    parameters,
+                    req );
+        }
+    }
+
+    /**
+     * This is an entry in the set of XML Probes that read a stream of StAX events.
+     */
+    public static class XmlStreamProbeDescriptor
+            extends
+                XmlProbeDescriptor
+    {
+        private static final long serialVersionUID = 1L; // helps with serialization
+
+        /**
+         * Convenience constructor.
+         *
+         * @param documentType the XML document type that this Probe can access
+         * @param toplevelElementNamespace the namespace component of the top-level element that this Probe can access. Same sequence as toplevelElementLocalName.
+         * @param toplevelElementLocalName the local name component of the top-level element that this Probe can access. Same sequence as toplevelElementNamespace.
+         * @param className name of the Probe class
+         * @param req specifies the Module in which the Probe class can be found, if not provided
+         */
+        public XmlStreamProbeDescriptor(
+                String            documentType,
+                String            toplevelElementNamespace,
+                String            toplevelElementLocalName,
+                String            className,
+                ModuleRequirement req )
+        {
+            this(   new String[] { documentType },
+                    new String[] { toplevelElementNamespace },
+                    new String[] { toplevelElementLocalName },
+                    className,
+                    null,
+                    null,
+                    req );
+        }
+
+        /**
+         * Convenience constructor.
+         *
+         * @param documentTypes the XML document types that this Probe can access
+         * @param toplevelElementNamespaces the namespace components of the top-level element that this Probe can access. Same sequence as toplevelElementLocalNames.
+         * @param toplevelElementLocalNames the local name components of the top-level element that this Probe can access. Same sequence as toplevelElementNamespaces.
+         * @param className name of the Probe class
+         * @param req specifies the Module in which the Probe class can be found, if not provided
+         */
+        public XmlStreamProbeDescriptor(
+                String []         documentTypes,
+                String []         toplevelElementNamespaces,
+                String []         toplevelElementLocalNames,
+                String            className,
+                ModuleRequirement req )
+        {
+            this(   documentTypes,
+                    toplevelElementNamespaces,
+                    toplevelElementLocalNames,
+                    className,
+                    null,
+                    null,
+                    req );
+        }
+
+        /**
+         * Convenience constructor.
+         *
+         * @param documentType the XML document type that this Probe can access
+         * @param toplevelElementNamespace the namespace component of the top-level element that this Probe can access. Same sequence as toplevelElementLocalName.
+         * @param toplevelElementLocalName the local name component of the top-level element that this Probe can access. Same sequence as toplevelElementNamespace.
+         * @param clazz the actual Probe class
+         */
+        public XmlStreamProbeDescriptor(
+                String                          documentType,
+                String                          toplevelElementNamespace,
+                String                          toplevelElementLocalName,
+                Class<? extends XmlStreamProbe> clazz )
+        {
+            this(   new String[] { documentType },
+                    new String[] { toplevelElementNamespace },
+                    new String[] { toplevelElementLocalName },
+                    clazz.getName(),
+                    clazz,
+                    null,
+                    null );
+        }
+
+        /**
+         * Convenience constructor.
+         *
+         * @param documentTypes the XML document types that this Probe can access
+         * @param toplevelElementNamespaces the namespace components of the top-level element that this Probe can access. Same sequence as toplevelElementLocalNames.
+         * @param toplevelElementLocalNames the local name components of the top-level element that this Probe can access. Same sequence as toplevelElementNamespaces.
+         * @param clazz the actual Probe class
+         */
+        public XmlStreamProbeDescriptor(
+                String []                       documentTypes,
+                String []                       toplevelElementNamespaces,
+                String []                       toplevelElementLocalNames,
+                Class<? extends XmlStreamProbe> clazz )
+        {
+            this(   documentTypes,
+                    toplevelElementNamespaces,
+                    toplevelElementLocalNames,
+                    clazz.getName(),
+                    clazz,
+                    null,
+                    null );
+        }
+
+        /**
+         * Constructor.
+         *
+         * @param documentTypes the XML document types that this Probe can access
+         * @param toplevelElementNamespaces the namespace components of the top-level element that this Probe can access. Same sequence as toplevelElementLocalNames.
+         * @param toplevelElementLocalNames the local name components of the top-level element that this Probe can access. Same sequence as toplevelElementNamespaces.
+         * @param className name of the Probe class
+         * @param clazz the actual Probe class (optional)
+         * @param parameters the parameters for the Probe, if any
+         * @param req specifies the Module in which the Probe class can be found, if not provided
+         */
+        public XmlStreamProbeDescriptor(
+                String []                       documentTypes,
+                String []                       toplevelElementNamespaces,
+                String []                       toplevelElementLocalNames,
+                String                          className,
+                Class<? extends XmlStreamProbe> clazz,
+                Map<String,Object>              parameters,
+                ModuleRequirement               req )
         {
             super(  documentTypes,
                     toplevelElementNamespaces,
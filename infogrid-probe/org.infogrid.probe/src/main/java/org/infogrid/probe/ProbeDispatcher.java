@@ -14,6 +14,7 @@
 
 package org.infogrid.probe;
 
+import java.io.BufferedInputStream;
 import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileInputStream;
@@ -28,9 +29,14 @@ import java.text.ParseException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 import org.diet4j.core.Module;
 import org.diet4j.core.ModuleActivationException;
 import org.diet4j.core.ModuleException;
@@ -85,16 +91,17 @@ import org.infogrid.probe.xml.DomMeshObjectSetProbe;
 import org.infogrid.probe.xml.MeshObjectSetProbeTags;
 import org.infogrid.probe.xml.XmlDOMProbe;
 import org.infogrid.probe.xml.XmlErrorHandler;
-import org.infogrid.probe.xml.XmlProbeException;
+import org.infogrid.probe.xml.XmlProbe;
+import org.infogrid.probe.xml.XmlStreamProbe;
 import org.infogrid.probe.yadis.YadisServiceFactory;
 import org.infogrid.util.ArrayHelper;
 import org.infogrid.util.FlexibleListenerSet;
+import org.infogrid.util.ResourceHelper;
 import org.infogrid.util.ReturnSynchronizerException;
 import org.infogrid.util.StreamUtils;
 import org.infogrid.util.http.HTTP;
 import org.infogrid.util.logging.Log;
 import org.w3c.dom.Document;
-import org.w3c.dom.DocumentType;
 import org.xml.sax.SAXException;
 
 /**
@@ -309,12 +316,21 @@ public class ProbeDispatcher
                             tx2 = theShadowMeshBase.createTransactionAsap();
                         }
                         try {
+                            if( probeResult.getUpdated() ) {
+                                // otherwise no Probe ran, and what we recorded last time still applies
+                                home.setPropertyValue(
+                                        ProbeSubjectArea.PROBEUPDATESPECIFICATION_LASTRUNUSEDWRITABLEPROBE,
+                                        BooleanValue.create( probeResult.getUsedWritableProbe() ));
+                                home.setPropertyValue(
+                                        ProbeSubjectArea.PROBEUPDATESPECIFICATION_LASTRUNUSEDPROBECLASS,
+                                        StringValue.createOrNull( probeResult.getUsedProbeClass() != null ? probeResult.getUsedProbeClass().getName() : null ));
+                            }
                             home.setPropertyValue(
-                                    ProbeSubjectArea.PROBEUPDATESPECIFICATION_LASTRUNUSEDWRITABLEPROBE,
-                                    BooleanValue.create( probeResult.getUsedWritableProbe() ));
+                                    ProbeSubjectArea.PROBEUPDATESPECIFICATION_LASTETAG,
+                                    StringValue.createOrNull( probeResult.getETag() ));
                             home.setPropertyValue(
-                                    ProbeSubjectArea.PROBEUPDATESPECIFICATION_LASTRUNUSEDPROBECLASS,
-                                    StringValue.createOrNull( probeResult.getUsedProbeClass() != null ? probeResult.getUsedProbeClass().getName() : null ));
+                                    ProbeSubjectArea.PROBEUPDATESPECIFICATION_LASTMODIFIED,
+                                    probeResult.getLastModified() > 0L ? TimeStampValue.create( probeResult.getLastModified() ) : null );
 
                         } catch( IllegalPropertyTypeException ex3 ) {
                             log.error( ex3 );
@@ -526,8 +542,32 @@ public class ProbeDispatcher
         String  yadisServicesHtml = null;
         String  yadisUrl          = null;
 
-        long streamDataCreated      = 0L;
-        long streamDataLastModified = 0L;
+        long   streamDataCreated      = 0L;
+        long   streamDataLastModified = 0L;
+        String streamDataETag         = null;
+
+        String previousETag         = null;
+        long   previousLastModified = theMostRecentModificationDate;
+
+        if( oldBase != null ) {
+            // persisted with the ShadowMeshBase, so unlike theMostRecentModificationDate this survives restarts
+            MeshObject oldHome = oldBase.getHomeObject();
+            if( oldHome.isBlessedBy( ProbeSubjectArea.PROBEUPDATESPECIFICATION )) {
+                try {
+                    StringValue    eTagValue         = (StringValue)    oldHome.getPropertyValue( ProbeSubjectArea.PROBEUPDATESPECIFICATION_LASTETAG );
+                    TimeStampValue lastModifiedValue = (TimeStampValue) oldHome.getPropertyValue( ProbeSubjectArea.PROBEUPDATESPECIFICATION_LASTMODIFIED );
+
+                    if( eTagValue != null ) {
+                        previousETag = eTagValue.value();
+                    }
+                    if( previousLastModified == 0L && lastModifiedValue != null ) {
+                        previousLastModified = lastModifiedValue.getAsMillis();
+                    }
+                } catch( IllegalPropertyTypeException ex ) {
+                    log.error( ex );
+                }
+            }
+        }
 
         NetMeshObject newHome = newBase.getHomeObject();
         HTTP.Response httpResponse = null;
@@ -542,15 +582,31 @@ public class ProbeDispatcher
 
         } else if( "http".equals( protocol ) || "https".equals( protocol ) ) {
 
+            // only ask conditionally if we have something to keep
             httpResponse = HTTP.http_get(
                     url,
                     XRDS_MIME_TYPE + "," + HTTP_GET_ACCEPT_HEADER,
                     false,
                     null, // no cookies
+                    oldBase != null ? previousETag         : null,
+                    oldBase != null ? previousLastModified : 0L,
                     HTTP.HTTP_CONNECT_TIMEOUT,
                     HTTP.HTTP_READ_TIMEOUT,
                     theShadowMeshBase.getHostnameVerifier() );
 
+            if( httpResponse.isNotModified() ) {
+                if( log.isDebugEnabled() ) {
+                    log.debug( this + " -- handleStream() not modified ( " + previousETag + ", " + previousLastModified + " )" );
+                }
+                // neither parse nor run the ProbeDifferencer
+                return new ProbeResult(
+                        false,
+                        false,
+                        null,
+                        previousETag,
+                        previousLastModified );
+            }
+
             if( httpResponse.isSuccess() && XRDS_MIME_TYPE.equals( httpResponse.getContentType() )) {
                 // found XRDS content via MIME type
 
@@ -585,6 +641,7 @@ public class ProbeDispatcher
 
             streamDataCreated      = httpResponse.getLastModified(); // FIXME? No API for that ...
             streamDataLastModified = httpResponse.getLastModified();
+            streamDataETag         = httpResponse.getETag();
 
             content     = httpResponse.getContent();
             contentType = httpResponse.getContentType();
@@ -598,14 +655,16 @@ public class ProbeDispatcher
             contentType = null;
         }
 
-        if( streamDataLastModified != theMostRecentModificationDate ) {
+        if( streamDataLastModified != previousLastModified ) {
             updated = true;
         } else if( streamDataLastModified == 0 ) { // that seems to occur
             updated = true;
+        } else if( streamDataETag != null && !streamDataETag.equals( previousETag )) {
+            updated = true;
         }
 
         if( log.isDebugEnabled() ) {
-            log.debug( this + " -- handleStream() date changed: " + updated + " ( " + theMostRecentModificationDate + ", " + streamDataLastModified + " )" );
+            log.debug( this + " -- handleStream() date changed: " + updated + " ( " + previousLastModified + ", " + streamDataLastModified + " )" );
         }
 
         theMostRecentModificationDate = streamDataLastModified;
@@ -725,7 +784,9 @@ public class ProbeDispatcher
         return new ProbeResult(
                 updated, // we don't know, we always say we might have been updated because that's safer
                 probe instanceof WritableProbe,
-                probe != null ? probe.getClass() : null );
+                probe != null ? probe.getClass() : null,
+                streamDataETag,
+                streamDataLastModified );
     }
 
     /**
@@ -937,206 +998,292 @@ public class ProbeDispatcher
         }
 
         NetMeshBaseIdentifier sourceIdentifier = theShadowMeshBase.getIdentifier();
-        XmlErrorHandler       errorListener    = new XmlErrorHandler( sourceIdentifier, log );
 
-        DocumentBuilder theDocumentBuilder = getDocumentBuilder();
-
-        theDocumentBuilder.setErrorHandler( errorListener );
+        // we look at the beginning of the document only to find the right Probe. Only if that
+        // turns out to be a DOM Probe, we go back and parse the entire document into a DOM
+        if( !inStream.markSupported() ) {
+            inStream = new BufferedInputStream( inStream );
+        }
+        inStream.mark( XML_PROLOG_READ_LIMIT );
 
-        Document doc;
+        XMLStreamReader reader;
+        String          docType   = null;
+        String          namespace;
+        String          localName;
 
         try {
-            doc = theDocumentBuilder.parse( inStream );
-        } catch( SAXException ex ) {
+            reader = XML_INPUT_FACTORY.createXMLStreamReader( inStream );
+
+            int event = reader.getEventType();
+            while( event != XMLStreamConstants.START_ELEMENT ) {
+                if( event == XMLStreamConstants.DTD ) {
+                    docType = determineDocumentTypeName( reader.getText() );
+
+                } else if( event == XMLStreamConstants.END_DOCUMENT ) {
+                    throw new ProbeException.EmptyDataSource( sourceIdentifier );
+                }
+                event = reader.next();
+            }
+            namespace = reader.getNamespaceURI();
+            localName = reader.getLocalName();
+
+            if( namespace != null && namespace.length() == 0 ) {
+                namespace = null; // same as DOM
+            }
+
+        } catch( XMLStreamException ex ) {
             throw new ProbeException.SyntaxError( sourceIdentifier, ex );
         }
 
-        if( errorListener.numberOfErrors() > 0 ) {
-            throw new ProbeException.SyntaxError( sourceIdentifier, errorListener.getAsException() );
-        }
+        try {
+            if( log.isDebugEnabled() ) {
+                if( docType != null ) {
+                    log.debug( this + ": parsed XML input, found document type \"" + docType + "\"" );
+                } else {
+                    log.debug( this + ": parsed XML input, found null document type, namespace " + namespace + ", localName " + localName );
+                }
+            }
 
-        if( !doc.hasChildNodes() ) {
-            throw new ProbeException.EmptyDataSource( sourceIdentifier );
-        }
+            XmlProbe               probe            = null;
+            String                 foundClassName   = null;
+            Class<? extends Probe> foundClass       = null;
+            ClassLoader            foundClassLoader = null;
+            ModuleRequirement      foundModuleReq   = null;
 
-        DocumentType docType   = doc.getDoctype();
-        String       namespace = doc.getDocumentElement().getNamespaceURI();
-        String       localName = doc.getDocumentElement().getLocalName();
+            ProbeDirectory.XmlProbeDescriptor desc;
 
-        if( log.isDebugEnabled() ) {
             if( docType != null ) {
-                log.debug( this + ": parsed XML input, found document type \"" + docType.getName() + "\"" );
-            } else {
-                log.debug( this + ": parsed XML input, found null document type, namespace " + namespace + ", localName " + localName );
-            }
-        }
+                if( MeshObjectSetProbeTags.MESHOBJECT_SET_TAG.equalsIgnoreCase( docType )) {
+                    Document doc = parseDocumentFromStart( sourceIdentifier, inStream );
+                    Probe    ret = handleNativeFormat( newBase, coherence, doc );
+                    return ret;
+                }
 
-        XmlDOMProbe            probe            = null;
-        String                 foundClassName   = null;
-        Class<? extends Probe> foundClass       = null;
-        ClassLoader            foundClassLoader = null;
-        Map<String,Object>     foundParameters  = null; // FIXME not used
-        ModuleRequirement      foundModuleReq   = null;
+                desc = theProbeDirectory.getXmlStreamProbeDescriptorByDocumentType( docType );
+                if( desc == null ) {
+                    desc = theProbeDirectory.getXmlDomProbeDescriptorByDocumentType( docType );
+                }
+                if( desc != null && log.isDebugEnabled() ) {
+                    log.debug( this + ": based on doctype, found name for probe class: " + desc.getProbeClassName() );
+                }
 
-        if( docType != null ) {
-            if( MeshObjectSetProbeTags.MESHOBJECT_SET_TAG.equalsIgnoreCase( docType.getName() )) {
-                Probe ret = handleNativeFormat( newBase, coherence, doc );
-                return ret;
+            } else {
+                desc = theProbeDirectory.getXmlStreamProbeDescriptorByTagType( namespace, localName );
+                if( desc == null ) {
+                    desc = theProbeDirectory.getXmlDomProbeDescriptorByTagType( namespace, localName );
+                }
+                if( desc != null && log.isDebugEnabled() ) {
+                    log.debug( this + ": based on tagtype, found name for probe class: " + desc.getProbeClassName() );
+                }
             }
 
-            ProbeDirectory.XmlDomProbeDescriptor desc = theProbeDirectory.getXmlDomProbeDescriptorByDocumentType( docType.getName() );
             if( desc != null ) {
-                foundClass      = desc.getProbeClass();
-                foundClassName  = desc.getProbeClassName();
-                foundParameters = desc.getParameters();
-                foundModuleReq  = desc.getModuleRequirement();
+                foundClass     = desc.getProbeClass();
+                foundClassName = desc.getProbeClassName();
+                foundModuleReq = desc.getModuleRequirement();
+            }
 
-                if( log.isDebugEnabled() ) {
-                    log.debug( this + ": based on doctype, found name for probe class: " + foundClassName );
+            if( foundClass == null && foundClassName != null ) {
+                if( theModuleRegistry != null && foundModuleReq != null ) {
+                    // we take the first module that supports this interface/class
+                    ModuleMeta [] candidates = theModuleRegistry.determineResolutionCandidates( foundModuleReq );
+                    if( candidates.length >= 1 ) {
+                        // if more than one, pick the most recent (i.e. first)
+                        if( candidates.length > 1 ) {
+                            log.info( "More than one Module found for ModuleRequirement", foundModuleReq, candidates );
+                        }
+                        try {
+                            Module foundModule = theModuleRegistry.resolve( candidates[0], true );
+                            foundModule.activateRecursively();
+                            foundClassLoader = foundModule.getClassLoader();
+                        } catch( ModuleResolutionException ex ) {
+                            log.warn( "Module could not be resolved for meta: " + candidates[0], ex );
+                        } catch( MalformedURLException ex ) {
+                            log.warn( "Module could not be resolved for meta: " + candidates[0], ex );
+                        } catch( ModuleNotFoundException ex ) {
+                            log.warn( "Module not found for meta: " + candidates[0], ex );
+                        } catch( ModuleActivationException ex ) {
+                            log.warn( "Module failed to activate for meta: " + candidates[0], ex );
+                        }
+                    }
+                }
+                if( foundClassLoader == null ) { // attempt default loader
+                    foundClassLoader = getClass().getClassLoader();
+                }
+
+                try {
+                    foundClass = (Class<? extends Probe>) Class.forName( foundClassName, true, foundClassLoader );
+
+                } catch( ClassNotFoundException ex ) {
+                    throw new ProbeException.DontHaveXmlStreamProbe( sourceIdentifier, docType, namespace, localName, ex );
                 }
             }
 
-        } else {
-            if ( localName != null ) {
-                ProbeDirectory.XmlDomProbeDescriptor desc = theProbeDirectory.getXmlDomProbeDescriptorByTagType( namespace, localName );
-                if( desc != null ) {
-                    foundClass      = desc.getProbeClass();
-                    foundClassName  = desc.getProbeClassName();
-                    foundParameters = desc.getParameters();
-                    foundModuleReq  = desc.getModuleRequirement();
-
-                    if( log.isDebugEnabled() ) {
-                        log.debug( this + ": based on tagtype, found name for probe class: " + foundClassName );
-                    }
+            if( foundClass != null ) {
+                try {
+                    probe = (XmlProbe) foundClass.newInstance();
+
+                } catch( IllegalAccessException ex ) {
+                    throw new ProbeException.ErrorInProbe( sourceIdentifier, ex, foundClass );
+                } catch( InstantiationException ex ) {
+                    throw new ProbeException.ErrorInProbe( sourceIdentifier, ex, foundClass );
+                } catch( ClassCastException ex ) {
+                    throw new ProbeException.ErrorInProbe( sourceIdentifier, ex, foundClass );
                 }
+            }
 
-            } else {
+            if( probe != null ) {
                 if( log.isDebugEnabled() ) {
-                  log.info( this + ".handleXml - localName is null - no probe found" );
+                    log.debug( this + ": invoking the probe" );
                 }
 
-                throw new ProbeException.CannotDetermineContentType(
-                        sourceIdentifier,
-                        new XmlProbeException.CannotDetermineDtd( sourceIdentifier, docType, null ));
-            }
-        }
+                ChangeSet changesToWriteBack;
+                synchronized( this ) {
+                    changesToWriteBack    = theChangesToWriteBack;
+                    theChangesToWriteBack = null;
+                }
 
-        if( foundClass == null && foundClassName != null ) {
-            if( theModuleRegistry != null && foundModuleReq != null ) {
-                // we take the first module that supports this interface/class
-                ModuleMeta [] candidates = theModuleRegistry.determineResolutionCandidates( foundModuleReq );
-                if( candidates.length >= 1 ) {
-                    // if more than one, pick the most recent (i.e. first)
-                    if( candidates.length > 1 ) {
-                        log.info( "More than one Module found for ModuleRequirement", foundModuleReq, candidates );
+                try {
+                    if( probe instanceof WritableProbe ) {
+                        ((WritableProbe) probe).write( sourceIdentifier, changesToWriteBack, oldBase );
                     }
-                    try {
-                        Module foundModule = theModuleRegistry.resolve( candidates[0], true );
-                        foundModule.activateRecursively();
-                        foundClassLoader = foundModule.getClassLoader();
-                    } catch( ModuleResolutionException ex ) {
-                        log.warn( "Module could not be resolved for meta: " + candidates[0], ex );
-                    } catch( MalformedURLException ex ) {
-                        log.warn( "Module could not be resolved for meta: " + candidates[0], ex );
-                    } catch( ModuleNotFoundException ex ) {
-                        log.warn( "Module not found for meta: " + candidates[0], ex );
-                    } catch( ModuleActivationException ex ) {
-                        log.warn( "Module failed to activate for meta: " + candidates[0], ex );
+
+                    if( probe instanceof XmlStreamProbe ) {
+                        ((XmlStreamProbe) probe).parseDocument( sourceIdentifier, coherence, contentType, reader, newBase );
+
+                    } else {
+                        Document doc = parseDocumentFromStart( sourceIdentifier, inStream );
+
+                        ((XmlDOMProbe) probe).parseDocument( sourceIdentifier, coherence, content, contentType, doc, newBase );
                     }
-                }
-            }
-            if( foundClassLoader == null ) { // attempt default loader
-                foundClassLoader = getClass().getClassLoader();
-            }
 
-            try {
-                foundClass = (Class<? extends Probe>) Class.forName( foundClassName, true, foundClassLoader );
+                } catch( XMLStreamException ex ) {
+                    throw new ProbeException.SyntaxError( sourceIdentifier, ex );
 
-            } catch( ClassNotFoundException ex ) {
-                throw new ProbeException.DontHaveXmlStreamProbe( sourceIdentifier, docType != null ? docType.getName() : null, namespace, localName, ex );
-            }
-        }
+                } catch( IsAbstractException ex ) {
+                    throw new ProbeException.ErrorInProbe( sourceIdentifier, ex, foundClass );
 
-        if( foundClass != null ) {
-            try {
-                probe = (XmlDOMProbe) foundClass.newInstance();
+                } catch( EntityBlessedAlreadyException ex ) {
+                    throw new ProbeException.ErrorInProbe( sourceIdentifier, ex, foundClass );
 
-            } catch( IllegalAccessException ex ) {
-                throw new ProbeException.ErrorInProbe( sourceIdentifier, ex, foundClass );
-            } catch( InstantiationException ex ) {
-                throw new ProbeException.ErrorInProbe( sourceIdentifier, ex, foundClass );
-            }
-        }
+                } catch( EntityNotBlessedException ex ) {
+                    throw new ProbeException.ErrorInProbe( sourceIdentifier, ex, foundClass );
 
-        if( probe != null ) {
-            if( log.isDebugEnabled() ) {
-                log.debug( this + ": invoking the probe" );
-            }
+                } catch( NotPermittedException ex ) {
+                    throw new ProbeException.ErrorInProbe( sourceIdentifier, ex, foundClass );
 
-            ChangeSet changesToWriteBack;
-            synchronized( this ) {
-                changesToWriteBack    = theChangesToWriteBack;
-                theChangesToWriteBack = null;
-            }
+                } catch( MeshObjectIdentifierNotUniqueException ex ) {
+                    throw new ProbeException.ErrorInProbe( sourceIdentifier, ex, foundClass );
 
-            try {
-                if( probe instanceof WritableProbe ) {
-                    ((WritableProbe) probe).write( sourceIdentifier, changesToWriteBack, oldBase );
-                }
+                } catch( RelatedAlreadyException ex ) {
+                    throw new ProbeException.ErrorInProbe( sourceIdentifier, ex, foundClass );
 
-                probe.parseDocument( sourceIdentifier, coherence, content, contentType, doc, newBase );
+                } catch( NotRelatedException ex ) {
+                    throw new ProbeException.ErrorInProbe( sourceIdentifier, ex, foundClass );
 
-            } catch( IsAbstractException ex ) {
-                throw new ProbeException.ErrorInProbe( sourceIdentifier, ex, foundClass );
+                } catch( RoleTypeBlessedAlreadyException ex ) {
+                    throw new ProbeException.ErrorInProbe( sourceIdentifier, ex, foundClass );
 
-            } catch( EntityBlessedAlreadyException ex ) {
-                throw new ProbeException.ErrorInProbe( sourceIdentifier, ex, foundClass );
+                } catch( IllegalPropertyTypeException ex ) {
+                    throw new ProbeException.ErrorInProbe( sourceIdentifier, ex, foundClass );
 
-            } catch( EntityNotBlessedException ex ) {
-                throw new ProbeException.ErrorInProbe( sourceIdentifier, ex, foundClass );
+                } catch( IllegalPropertyValueException ex ) {
+                    throw new ProbeException.ErrorInProbe( sourceIdentifier, ex, foundClass );
 
-            } catch( NotPermittedException ex ) {
-                throw new ProbeException.ErrorInProbe( sourceIdentifier, ex, foundClass );
+                } catch( URISyntaxException ex ) {
+                    throw new ProbeException.ErrorInProbe( sourceIdentifier, ex, foundClass );
 
-            } catch( MeshObjectIdentifierNotUniqueException ex ) {
-                throw new ProbeException.ErrorInProbe( sourceIdentifier, ex, foundClass );
+                } catch( ParseException ex ) {
+                    throw new ProbeException.ErrorInProbe( sourceIdentifier, ex, foundClass );
 
-            } catch( RelatedAlreadyException ex ) {
-                throw new ProbeException.ErrorInProbe( sourceIdentifier, ex, foundClass );
+                } catch( ModuleException ex ) {
+                    throw new ProbeException.ErrorInProbe( sourceIdentifier, ex, foundClass );
 
-            } catch( NotRelatedException ex ) {
-                throw new ProbeException.ErrorInProbe( sourceIdentifier, ex, foundClass );
+                } catch( RuntimeException ex ) {
+                    throw new ProbeException.ErrorInProbe( sourceIdentifier, ex, foundClass );
+                }
+                if( log.isDebugEnabled() ) {
+                    log.debug( this + ": probe came back without exception" );
+                }
 
-            } catch( RoleTypeBlessedAlreadyException ex ) {
-                throw new ProbeException.ErrorInProbe( sourceIdentifier, ex, foundClass );
+            } else {
+                throw new ProbeException.DontHaveXmlStreamProbe( sourceIdentifier, docType, namespace, localName, null );
+            }
 
-            } catch( IllegalPropertyTypeException ex ) {
-                throw new ProbeException.ErrorInProbe( sourceIdentifier, ex, foundClass );
+            return probe;
 
-            } catch( IllegalPropertyValueException ex ) {
-                throw new ProbeException.ErrorInProbe( sourceIdentifier, ex, foundClass );
+        } finally {
+            try {
+                reader.close(); // does not close the underlying InputStream
+            } catch( XMLStreamException ex ) {
+                log.error( ex );
+            }
+        }
+    }
 
-            } catch( URISyntaxException ex ) {
-                throw new ProbeException.ErrorInProbe( sourceIdentifier, ex, foundClass );
+    /**
+     * Parse the XML document into a DOM, starting again at the beginning of the incoming
+     * data stream.
+     *
+     * @param sourceIdentifier identifies the data source, for error reporting
+     * @param inStream the incoming data stream, marked at the beginning of the document
+     * @return the parsed Document
+     * @throws ProbeException thrown if the XML document could not be parsed
+     * @throws IOException thrown if an I/O error occurred
+     */
+    protected Document parseDocumentFromStart(
+            NetMeshBaseIdentifier sourceIdentifier,
+            InputStream           inStream )
+        throws
+            ProbeException,
+            IOException
+    {
+        inStream.reset();
 
-            } catch( ParseException ex ) {
-                throw new ProbeException.ErrorInProbe( sourceIdentifier, ex, foundClass );
+        XmlErrorHandler errorListener      = new XmlErrorHandler( sourceIdentifier, log );
+        DocumentBuilder theDocumentBuilder = getDocumentBuilder();
 
-            } catch( ModuleException ex ) {
-                throw new ProbeException.ErrorInProbe( sourceIdentifier, ex, foundClass );
+        Document doc;
 
-            } catch( RuntimeException ex ) {
-                throw new ProbeException.ErrorInProbe( sourceIdentifier, ex, foundClass );
-            }
-            if( log.isDebugEnabled() ) {
-                log.debug( this + ": probe came back without exception" );
+        // DocumentBuilders are not thread-safe, but they are shared
+        synchronized( theDocumentBuilder ) {
+            theDocumentBuilder.setErrorHandler( errorListener );
+
+            try {
+                doc = theDocumentBuilder.parse( inStream );
+            } catch( SAXException ex ) {
+                throw new ProbeException.SyntaxError( sourceIdentifier, ex );
             }
+        }
 
-        } else {
-            throw new ProbeException.DontHaveXmlStreamProbe( sourceIdentifier, docType != null ? docType.getName() : null, namespace, localName, null );
+        if( errorListener.numberOfErrors() > 0 ) {
+            throw new ProbeException.SyntaxError( sourceIdentifier, errorListener.getAsException() );
         }
 
-        return probe;
+        if( !doc.hasChildNodes() ) {
+            throw new ProbeException.EmptyDataSource( sourceIdentifier );
+        }
+        return doc;
+    }
+
+    /**
+     * Determine the name of the document type from the text of a document type declaration.
+     *
+     * @param declaration the document type declaration, e.g. <code>&lt;!DOCTYPE html&gt;</code>
+     * @return the name of the document type, or null if it could not be determined
+     */
+    protected static String determineDocumentTypeName(
+            String declaration )
+    {
+        if( declaration == null ) {
+            return null;
+        }
+        Matcher m = DOCTYPE_NAME_PATTERN.matcher( declaration );
+        if( m.find() ) {
+            return m.group( 1 );
+        } else {
+            return null;
+        }
     }
 
     /**
@@ -1873,6 +2020,38 @@ public class ProbeDispatcher
         return ret;
     }
 
+    /**
+     * Create the XMLInputFactory from which all ProbeDispatchers create their XMLStreamReaders.
+     * Once configured, it can be used by many threads at the same time.
+     *
+     * @return the XMLInputFactory
+     */
+    protected static XMLInputFactory createXmlInputFactory()
+    {
+        // same ClassLoader workaround as for the DocumentBuilderFactory
+        ClassLoader ctxt = Thread.currentThread().getContextClassLoader();
+
+        try {
+            Thread.currentThread().setContextClassLoader( ProbeDispatcher.class.getClassLoader() );
+
+            XMLInputFactory ret = XMLInputFactory.newInstance();
+            ret.setProperty( XMLInputFactory.IS_NAMESPACE_AWARE,              Boolean.TRUE );
+            ret.setProperty( XMLInputFactory.IS_COALESCING,                   Boolean.TRUE );
+            ret.setProperty( XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE );
+
+            // Never fetch external DTDs. If one cannot be fetched, the JDK's parser reports the
+            // DTD event as a comment, and the document type can no longer be determined. DTDs
+            // remain supported, otherwise the name is lost if there is an internal subset.
+            ret.setXMLResolver( ( String publicId, String systemId, String baseUri, String namespace )
+                    -> new ByteArrayInputStream( new byte[0] ));
+
+            return ret;
+
+        } finally {
+            Thread.currentThread().setContextClassLoader( ctxt );
+        }
+    }
+
     /**
      * Helper method to guess a MIME content type from a URL. We leverage the JDK.
      * Basically we look at the extension.
@@ -2153,6 +2332,26 @@ public class ProbeDispatcher
      */
     public static final Pattern XML_MIME_TYPE_PATTERN = Pattern.compile( ".*application/(.+\\+)?xml.*" );
 
+    /**
+     * Finds the name of the document type in a document type declaration.
+     */
+    protected static final Pattern DOCTYPE_NAME_PATTERN = Pattern.compile( "<!DOCTYPE\\s+([^\\s\\[>]+)" );
+
+    /**
+     * Creates the XMLStreamReaders for all ProbeDispatchers.
+     */
+    protected static final XMLInputFactory XML_INPUT_FACTORY = createXmlInputFactory();
+
+    /**
+     * The maximum number of bytes at the beginning of an XML document that may be read to find
+     * the right Probe, so the document can be parsed again from the beginning for XmlDOMProbes.
+     * Only relevant if the incoming data stream is not held in memory already.
+     */
+    public static final int XML_PROLOG_READ_LIMIT
+            = ResourceHelper.getInstance( ProbeDispatcher.class ).getResourceIntegerOrDefault(
+                    "XmlPrologReadLimit",
+                    64 * 1024 );
+
     /**
      * This MIME type indicates that a stream is unknown.
      */
@@ -30,10 +30,31 @@ public class ProbeResult
             boolean                updated,
             boolean                usedWritableProbe,
             Class<? extends Probe> usedProbeClass )
+    {
+        this( updated, usedWritableProbe, usedProbeClass, null, 0L );
+    }
+
+    /**
+     * Constructor for subclasses only, use factory method.
+     * 
+     * @param updated if true, the Shadow was updated during the probe run
+     * @param usedWritableProbe if true, the probe run used a WritableProbe
+     * @param usedProbeClass the Probe class that was used, or null
+     * @param eTag the ETag of the data source, if any
+     * @param lastModified the time the data source was last modified, or 0 if not known
+     */
+    public ProbeResult(
+            boolean                updated,
+            boolean                usedWritableProbe,
+            Class<? extends Probe> usedProbeClass,
+            String                 eTag,
+            long                   lastModified )
     {
         theUpdated           = updated;
         theUsedWritableProbe = usedWritableProbe;
         theUsedProbeClass    = usedProbeClass;
+        theETag              = eTag;
+        theLastModified      = lastModified;
     }
     
     /**
@@ -67,6 +88,26 @@ public class ProbeResult
         return theUsedProbeClass;
     }
 
+    /**
+     * Obtain the ETag of the data source, if any.
+     *
+     * @return the ETag, or null
+     */
+    public String getETag()
+    {
+        return theETag;
+    }
+
+    /**
+     * Obtain the time the data source was last modified, if known.
+     *
+     * @return the time, in System.currentTimeMillis() format, or 0 if not known
+     */
+    public long getLastModified()
+    {
+        return theLastModified;
+    }
+
     /**
      * If true, the Shadow was updated during the Probe run.
      */
@@ -81,4 +122,14 @@ public class ProbeResult
      * The Probe class that was used in this run.
      */
     protected Class<? extends Probe> theUsedProbeClass;
+
+    /**
+     * The ETag of the data source, if any.
+     */
+    protected String theETag;
+
+    /**
+     * The time the data source was last modified, or 0 if not known.
+     */
+    protected long theLastModified;
 }
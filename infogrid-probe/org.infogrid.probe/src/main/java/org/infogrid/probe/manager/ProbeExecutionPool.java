@@ -0,0 +1,679 @@
+//
+// This file is part of InfoGrid(tm). You may not use this file except in
+// compliance with the InfoGrid license. The InfoGrid license and important
+// disclaimers are contained in the file LICENSE.InfoGrid.txt that you should
+// have received with InfoGrid. If you have not received LICENSE.InfoGrid.txt
+// or you do not consent to all aspects of the license and the disclaimers,
+// no license is granted; do not use this file.
+// 
+// For more information about InfoGrid go to http://infogrid.org/
+//
+// Copyright 1998-2015 by Johannes Ernst
+// All rights reserved.
+//
+
+package org.infogrid.probe.manager;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeSet;
+import org.infogrid.meshbase.net.NetMeshBaseIdentifier;
+import org.infogrid.util.NamedThreadFactory;
+import org.infogrid.util.ResourceHelper;
+import org.infogrid.util.logging.CanBeDumped;
+import org.infogrid.util.logging.Dumper;
+import org.infogrid.util.logging.Log;
+
+/**
+ * Runs Probes on behalf of a ScheduledExecutorProbeManager, in two lanes.
+ *
+ * Background runs are the regularly scheduled updates. They are queued in the order in which
+ * they became due, and executed by a fixed number of worker Threads. No more than a configurable
+ * number of background runs is performed against the same host at the same time, and no background
+ * run starts against a host for which an interactive run is in progress. If too many background runs
+ * are waiting already, new ones are shed, and the submitter needs to try again later.
+ *
+ * Interactive runs are performed on the Thread of the caller who is waiting for a fresh
+ * ShadowMeshBase. They are never queued and never held back by background runs.
+ */
+public class ProbeExecutionPool
+        implements
+            CanBeDumped
+{
+    private static final Log log = Log.getLogInstance( ProbeExecutionPool.class ); // our own, private logger
+
+    /**
+     * Factory method, using the configured defaults.
+     *
+     * @return the created ProbeExecutionPool
+     */
+    public static ProbeExecutionPool create()
+    {
+        return create(
+                theResourceHelper.getResourceIntegerOrDefault( "BackgroundThreads", DEFAULT_BACKGROUND_THREADS ),
+                theResourceHelper.getResourceIntegerOrDefault( "MaxRunsPerHost",    DEFAULT_MAX_RUNS_PER_HOST ),
+                theResourceHelper.getResourceIntegerOrDefault( "MaxQueueLength",    DEFAULT_MAX_QUEUE_LENGTH ));
+    }
+
+    /**
+     * Factory method.
+     *
+     * @param backgroundThreads the number of Threads performing background runs
+     * @param maxRunsPerHost the maximum number of simultaneous background runs against the same host
+     * @param maxQueueLength the maximum number of background runs waiting to be performed
+     * @return the created ProbeExecutionPool
+     */
+    public static ProbeExecutionPool create(
+            int backgroundThreads,
+            int maxRunsPerHost,
+            int maxQueueLength )
+    {
+        if( backgroundThreads <= 0 ) {
+            throw new IllegalArgumentException( "backgroundThreads must be positive: " + backgroundThreads );
+        }
+        if( maxRunsPerHost <= 0 ) {
+            throw new IllegalArgumentException( "maxRunsPerHost must be positive: " + maxRunsPerHost );
+        }
+        if( maxQueueLength <= 0 ) {
+            throw new IllegalArgumentException( "maxQueueLength must be positive: " + maxQueueLength );
+        }
+
+        ProbeExecutionPool ret = new ProbeExecutionPool( backgroundThreads, maxRunsPerHost, maxQueueLength );
+        ret.startWorkers();
+
+        return ret;
+    }
+
+    /**
+     * Constructor, use factory method.
+     *
+     * @param backgroundThreads the number of Threads performing background runs
+     * @param maxRunsPerHost the maximum number of simultaneous background runs against the same host
+     * @param maxQueueLength the maximum number of background runs waiting to be performed
+     */
+    protected ProbeExecutionPool(
+            int backgroundThreads,
+            int maxRunsPerHost,
+            int maxQueueLength )
+    {
+        theWorkers        = new Thread[ backgroundThreads ];
+        theMaxRunsPerHost = maxRunsPerHost;
+        theMaxQueueLength = maxQueueLength;
+    }
+
+    /**
+     * Start the worker Threads.
+     */
+    protected void startWorkers()
+    {
+        NamedThreadFactory factory = new NamedThreadFactory( ProbeExecutionPool.class.getName() );
+
+        for( int i=0 ; i<theWorkers.length ; ++i ) {
+            theWorkers[i] = factory.newThread( this::work );
+            theWorkers[i].setDaemon( true ); // must not keep the VM from exiting
+            theWorkers[i].start();
+        }
+    }
+
+    /**
+     * Submit a background run. If a background run for the same ShadowMeshBase is queued already,
+     * only the one that is due first is kept.
+     *
+     * @param key identifier of the ShadowMeshBase to be updated
+     * @param due the time, in System.currentTimeMillis() format, when the run became due
+     * @param task the run
+     * @return true if the run was queued or already was, false if it was shed
+     */
+    public synchronized boolean submitBackground(
+            NetMeshBaseIdentifier key,
+            long                  due,
+            Runnable              task )
+    {
+        if( theIsDead ) {
+            return false;
+        }
+        Queued already = theQueuedByKey.get( key );
+        if( already != null ) {
+            if( already.theDue <= due ) {
+                return true;
+            }
+            theQueue.remove( already );
+
+        } else if( theQueue.size() >= theMaxQueueLength ) {
+            ++theShedCount;
+            if( log.isInfoEnabled() ) {
+                log.info( this + ": shedding background run for " + key );
+            }
+            return false;
+        }
+
+        Queued toAdd = new Queued( key, hostOf( key ), due, theSequenceCounter++, task );
+        theQueue.add( toAdd );
+        theQueuedByKey.put( key, toAdd );
+
+        if( theQueue.size() > theMaxObservedQueueDepth ) {
+            theMaxObservedQueueDepth = theQueue.size();
+        }
+        notifyAll();
+
+        return true;
+    }
+
+    /**
+     * Remove a queued background run, if any. A run that has started already is not affected.
+     *
+     * @param key identifier of the ShadowMeshBase
+     * @return true if a queued run was removed
+     */
+    public synchronized boolean cancel(
+            NetMeshBaseIdentifier key )
+    {
+        Queued found = theQueuedByKey.remove( key );
+        if( found != null ) {
+            theQueue.remove( found );
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Indicate that the caller is about to perform an interactive run on its own Thread.
+     * Must be paired with endInteractiveRun.
+     *
+     * @param key identifier of the ShadowMeshBase to be updated
+     * @return the start time, to be passed into endInteractiveRun
+     */
+    public synchronized long startInteractiveRun(
+            NetMeshBaseIdentifier key )
+    {
+        increment( theInteractiveRunsByHost, hostOf( key ));
+
+        return System.currentTimeMillis();
+    }
+
+    /**
+     * Indicate that the caller has completed an interactive run.
+     *
+     * @param key identifier of the ShadowMeshBase that was updated
+     * @param started the value returned by the corresponding startInteractiveRun
+     */
+    public synchronized void endInteractiveRun(
+            NetMeshBaseIdentifier key,
+            long                  started )
+    {
+        decrement( theInteractiveRunsByHost, hostOf( key ));
+
+        ++theInteractiveRunCount;
+        theInteractiveRunDuration += System.currentTimeMillis() - started;
+
+        notifyAll(); // background runs for this host may proceed
+    }
+
+    /**
+     * The main loop of the worker Threads.
+     */
+    protected void work()
+    {
+        while( true ) {
+            Queued current;
+            long   started;
+
+            synchronized( this ) {
+                while( true ) {
+                    if( theIsDead ) {
+                        return;
+                    }
+                    current = findRunnable();
+                    if( current != null ) {
+                        break;
+                    }
+                    try {
+                        wait();
+                    } catch( InterruptedException ex ) {
+                        // check again
+                    }
+                }
+                theQueue.remove( current );
+                theQueuedByKey.remove( current.theKey );
+                increment( theBackgroundRunsByHost, current.theHost );
+
+                started = System.currentTimeMillis();
+                if( started > current.theDue ) {
+                    theQueueLatency += started - current.theDue;
+                }
+            }
+
+            try {
+                current.theTask.run();
+
+            } catch( Throwable t ) {
+                log.error( this, current.theKey, t );
+
+            } finally {
+                synchronized( this ) {
+                    decrement( theBackgroundRunsByHost, current.theHost );
+
+                    ++theBackgroundRunCount;
+                    theBackgroundRunDuration += System.currentTimeMillis() - started;
+
+                    notifyAll(); // another run for this host may proceed
+                }
+            }
+        }
+    }
+
+    /**
+     * Find the queued background run that has been due the longest, and whose host is
+     * available. Must be invoked while holding the monitor.
+     *
+     * @return the run, or null if none can proceed right now
+     */
+    protected Queued findRunnable()
+    {
+        for( Queued current : theQueue ) {
+            if(    count( theInteractiveRunsByHost, current.theHost ) == 0
+                && count( theBackgroundRunsByHost,  current.theHost ) < theMaxRunsPerHost )
+            {
+                return current;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Stop this ProbeExecutionPool. Queued background runs are discarded, runs in progress complete.
+     */
+    public synchronized void die()
+    {
+        theIsDead = true;
+        theQueue.clear();
+        theQueuedByKey.clear();
+
+        notifyAll();
+    }
+
+    /**
+     * Determine whether this ProbeExecutionPool has been stopped.
+     *
+     * @return true if it has been stopped
+     */
+    public synchronized boolean isDead()
+    {
+        return theIsDead;
+    }
+
+    /**
+     * Obtain the number of background runs currently waiting.
+     *
+     * @return the number of background runs
+     */
+    public synchronized int getQueueDepth()
+    {
+        return theQueue.size();
+    }
+
+    /**
+     * Obtain the largest number of background runs that have been waiting at the same time.
+     *
+     * @return the number of background runs
+     */
+    public synchronized int getMaxObservedQueueDepth()
+    {
+        return theMaxObservedQueueDepth;
+    }
+
+    /**
+     * Obtain the number of runs currently in progress, in both lanes.
+     *
+     * @return the number of runs
+     */
+    public synchronized int getRunningCount()
+    {
+        int ret = getRunningBackgroundCount();
+        for( int [] current : theInteractiveRunsByHost.values() ) {
+            ret += current[0];
+        }
+        return ret;
+    }
+
+    /**
+     * Obtain the number of completed background runs.
+     *
+     * @return the number of runs
+     */
+    public synchronized long getBackgroundRunCount()
+    {
+        return theBackgroundRunCount;
+    }
+
+    /**
+     * Obtain the number of completed interactive runs.
+     *
+     * @return the number of runs
+     */
+    public synchronized long getInteractiveRunCount()
+    {
+        return theInteractiveRunCount;
+    }
+
+    /**
+     * Obtain the number of background runs that were shed because too many were waiting.
+     *
+     * @return the number of runs
+     */
+    public synchronized long getShedCount()
+    {
+        return theShedCount;
+    }
+
+    /**
+     * Obtain the average time, in milliseconds, that started background runs had to wait after they became due.
+     *
+     * @return the average time, or 0 if none has started
+     */
+    public synchronized long getAverageQueueLatency()
+    {
+        long started = theBackgroundRunCount + getRunningBackgroundCount();
+        return started > 0 ? theQueueLatency / started : 0L;
+    }
+
+    /**
+     * Obtain the average duration, in milliseconds, of completed background runs.
+     *
+     * @return the average duration, or 0 if none has completed
+     */
+    public synchronized long getAverageBackgroundRunDuration()
+    {
+        return theBackgroundRunCount > 0 ? theBackgroundRunDuration / theBackgroundRunCount : 0L;
+    }
+
+    /**
+     * Obtain the average duration, in milliseconds, of completed interactive runs.
+     *
+     * @return the average duration, or 0 if none has completed
+     */
+    public synchronized long getAverageInteractiveRunDuration()
+    {
+        return theInteractiveRunCount > 0 ? theInteractiveRunDuration / theInteractiveRunCount : 0L;
+    }
+
+    /**
+     * Obtain the number of background runs currently in progress. Must be invoked while holding the monitor.
+     *
+     * @return the number of runs
+     */
+    protected int getRunningBackgroundCount()
+    {
+        int ret = 0;
+        for( int [] current : theBackgroundRunsByHost.values() ) {
+            ret += current[0];
+        }
+        return ret;
+    }
+
+    /**
+     * Determine the host against which runs for this ShadowMeshBase are counted.
+     * Data sources without a host, such as local files, are not limited together.
+     *
+     * @param key identifier of the ShadowMeshBase
+     * @return the host
+     */
+    protected static String hostOf(
+            NetMeshBaseIdentifier key )
+    {
+        String ret = key.toUri().getHost();
+        if( ret == null ) {
+            ret = key.getUriString();
+        }
+        return ret;
+    }
+
+    /**
+     * Obtain the number of runs for a host in one of the tables.
+     *
+     * @param table the table
+     * @param host the host
+     * @return the number of runs
+     */
+    protected static int count(
+            Map<String,int[]> table,
+            String            host )
+    {
+        int [] found = table.get( host );
+        return found != null ? found[0] : 0;
+    }
+
+    /**
+     * Increment the number of runs for a host in one of the tables.
+     *
+     * @param table the table
+     * @param host the host
+     */
+    protected static void increment(
+            Map<String,int[]> table,
+            String            host )
+    {
+        int [] found = table.get( host );
+        if( found == null ) {
+            table.put( host, new int[] { 1 } );
+        } else {
+            ++found[0];
+        }
+    }
+
+    /**
+     * Decrement the number of runs for a host in one of the tables.
+     *
+     * @param table the table
+     * @param host the host
+     */
+    protected static void decrement(
+            Map<String,int[]> table,
+            String            host )
+    {
+        int [] found = table.get( host );
+        if( found != null && --found[0] <= 0 ) {
+            table.remove( host );
+        }
+    }
+
+    /**
+     * Dump this object.
+     *
+     * @param d the Dumper to dump to
+     */
+    public void dump(
+            Dumper d )
+    {
+        synchronized( this ) {
+            d.dump( this,
+                    new String[] {
+                        "queueDepth",
+                        "backgroundRuns",
+                        "interactiveRuns",
+                        "backgroundRunCount",
+                        "interactiveRunCount",
+                        "shedCount"
+                    },
+                    new Object[] {
+                        theQueue.size(),
+                        theBackgroundRunsByHost.keySet(),
+                        theInteractiveRunsByHost.keySet(),
+                        theBackgroundRunCount,
+                        theInteractiveRunCount,
+                        theShedCount
+                    });
+        }
+    }
+
+    /**
+     * The worker Threads performing background runs.
+     */
+    protected Thread [] theWorkers;
+
+    /**
+     * The maximum number of simultaneous background runs against the same host.
+     */
+    protected int theMaxRunsPerHost;
+
+    /**
+     * The maximum number of background runs waiting to be performed.
+     */
+    protected int theMaxQueueLength;
+
+    /**
+     * The waiting background runs, ordered by the time they became due.
+     */
+    protected TreeSet<Queued> theQueue = new TreeSet<>();
+
+    /**
+     * The waiting background runs, keyed by the identifier of their ShadowMeshBase.
+     */
+    protected HashMap<NetMeshBaseIdentifier,Queued> theQueuedByKey = new HashMap<>();
+
+    /**
+     * The number of background runs in progress, keyed by host.
+     */
+    protected HashMap<String,int[]> theBackgroundRunsByHost = new HashMap<>();
+
+    /**
+     * The number of interactive runs in progress, keyed by host.
+     */
+    protected HashMap<String,int[]> theInteractiveRunsByHost = new HashMap<>();
+
+    /**
+     * Breaks ties between background runs that became due at the same time.
+     */
+    protected long theSequenceCounter;
+
+    /**
+     * True once this ProbeExecutionPool has been stopped.
+     */
+    protected boolean theIsDead;
+
+    /**
+     * The largest number of background runs that have been waiting at the same time.
+     */
+    protected int theMaxObservedQueueDepth;
+
+    /**
+     * The number of completed background runs.
+     */
+    protected long theBackgroundRunCount;
+
+    /**
+     * The number of completed interactive runs.
+     */
+    protected long theInteractiveRunCount;
+
+    /**
+     * The number of shed background runs.
+     */
+    protected long theShedCount;
+
+    /**
+     * The sum of the times started background runs had to wait after they became due.
+     */
+    protected long theQueueLatency;
+
+    /**
+     * The sum of the durations of completed background runs.
+     */
+    protected long theBackgroundRunDuration;
+
+    /**
+     * The sum of the durations of completed interactive runs.
+     */
+    protected long theInteractiveRunDuration;
+
+    /**
+     * Our ResourceHelper.
+     */
+    private static final ResourceHelper theResourceHelper = ResourceHelper.getInstance( ProbeExecutionPool.class );
+
+    /**
+     * The default number of Threads performing background runs.
+     */
+    public static final int DEFAULT_BACKGROUND_THREADS = 2;
+
+    /**
+     * The default maximum number of simultaneous background runs against the same host.
+     */
+    public static final int DEFAULT_MAX_RUNS_PER_HOST = 2;
+
+    /**
+     * The default maximum number of background runs waiting to be performed.
+     */
+    public static final int DEFAULT_MAX_QUEUE_LENGTH = 1000;
+
+    /**
+     * A waiting background run.
+     */
+    protected static class Queued
+            implements
+                Comparable<Queued>
+    {
+        /**
+         * Constructor.
+         *
+         * @param key identifier of the ShadowMeshBase to be updated
+         * @param host the host against which the run is counted
+         * @param due the time when the run became due
+         * @param sequence breaks ties between runs that became due at the same time
+         * @param task the run
+         */
+        protected Queued(
+                NetMeshBaseIdentifier key,
+                String                host,
+                long                  due,
+                long                  sequence,
+                Runnable              task )
+        {
+            theKey      = key;
+            theHost     = host;
+            theDue      = due;
+            theSequence = sequence;
+            theTask     = task;
+        }
+
+        /**
+         * Order by due time, then by submission order.
+         *
+         * @param other the Queued to compare with
+         * @return the comparison result
+         */
+        public int compareTo(
+                Queued other )
+        {
+            if( theDue != other.theDue ) {
+                return theDue < other.theDue ? -1 : 1;
+            }
+            return Long.compare( theSequence, other.theSequence );
+        }
+
+        /**
+         * Identifier of the ShadowMeshBase to be updated.
+         */
+        protected final NetMeshBaseIdentifier theKey;
+
+        /**
+         * The host against which the run is counted.
+         */
+        protected final String theHost;
+
+        /**
+         * The time when the run became due.
+         */
+        protected final long theDue;
+
+        /**
+         * Breaks ties between runs that became due at the same time.
+         */
+        protected final long theSequence;
+
+        /**
+         * The run.
+         */
+        protected final Runnable theTask;
+    }
+}
@@ -25,6 +25,7 @@ import java.util.concurrent.Callable;
 import java.util.concurrent.Future;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
 import org.infogrid.mesh.MeshObject;
 import org.infogrid.meshbase.net.NetMeshBaseIdentifier;
@@ -39,13 +40,16 @@ import org.infogrid.probe.shadow.ShadowMeshBase;
 import org.infogrid.probe.shadow.ShadowMeshBaseFactory;
 import org.infogrid.util.CachingMap;
 import org.infogrid.util.IsDeadException;
+import org.infogrid.util.ResourceHelper;
 import org.infogrid.util.logging.CanBeDumped;
 import org.infogrid.util.logging.Dumper;
 import org.infogrid.util.logging.Log;
 
 /**
  * A ProbeManager implementation that uses a ScheduledExecutorService to schedule
- * updates.
+ * updates. If a ProbeExecutionPool is given, the ScheduledExecutorService only
+ * keeps time: the runs themselves are handed to the ProbeExecutionPool, so slow data sources
+ * neither tie up the ScheduledExecutorService nor hold back updates requested interactively.
  */
 public abstract class ScheduledExecutorProbeManager
         extends
@@ -70,6 +74,7 @@ public abstract class ScheduledExecutorProbeManager
         super( delegateFactory, storage, dir );
 
         theExecutorService = null; // must invoke start() to start
+        theExecutionPool   = null;
     }
     
     /**
@@ -81,22 +86,48 @@ public abstract class ScheduledExecutorProbeManager
     {
         return theExecutorService;
     }
-    
+
+    /**
+     * Obtain the ProbeExecutionPool that performs the runs, if any.
+     *
+     * @return the ProbeExecutionPool, or null
+     */
+    public ProbeExecutionPool getProbeExecutionPool()
+    {
+        return theExecutionPool;
+    }
+
+    /**
+     * Start this ScheduledExecutorProbeManager without a ProbeExecutionPool. Runs are performed
+     * by the ScheduledExecutorService.
+     * 
+     * @param exec the ScheduledExecutorService to use
+     */
+    public void start(
+            ScheduledExecutorService exec )
+    {
+        start( exec, null );
+    }
+
     /**
      * Start this ScheduledExecutorProbeManager.
      * 
      * @param exec the ScheduledExecutorService to use
+     * @param pool the ProbeExecutionPool to use, if any. If null, runs are performed by the ScheduledExecutorService.
+     *        The ProbeExecutionPool is stopped when this ScheduledExecutorProbeManager is stopped.
      */
     public synchronized void start(
-            ScheduledExecutorService exec )
+            ScheduledExecutorService exec,
+            ProbeExecutionPool       pool )
     {
         if( log.isTraceEnabled() ) {
-            log.traceMethodCallEntry( this, "start", exec );
+            log.traceMethodCallEntry( this, "start", exec, pool );
         }
         if( theExecutorService != null ) {
             throw new IllegalStateException( "Already started" );
         }
         theExecutorService = exec;
+        theExecutionPool   = pool;
 
         // re-initialize
         Iterator<NetMeshBaseIdentifier> keyIter = theKeyValueMap.keysIterator( NetMeshBaseIdentifier.class, ShadowMeshBase.class );
@@ -109,14 +140,7 @@ public abstract class ScheduledExecutorProbeManager
 
                 ShadowMeshBase value = theKeyValueMap.get( key );
                 if( value != null ) {
-                    long nextTime = value.getDelayUntilNextUpdate();
-                    if( nextTime >= 0 ) {  // allow 0 for immediate execution
-                        ScheduledFuture<Long> newFuture = theExecutorService.schedule(
-                                new ExecutorAdapter( new WeakReference<ScheduledExecutorProbeManager>( this ), key, nextTime ),
-                                nextTime,
-                                TimeUnit.MILLISECONDS );
-                        theFutures.put( key, newFuture );
-                    }
+                    scheduleUpdate( key, value.getDelayUntilNextUpdate() );
                 } else {
                     log.error( this, "Failed to load ShadowMeshBase with key ", key );
                 }
@@ -138,10 +162,16 @@ public abstract class ScheduledExecutorProbeManager
             throw new IllegalStateException( "Already stopped" );
         }
 
-        for( ScheduledFuture<Long> current : theFutures.values() ) {
-            current.cancel( false );
+        synchronized( theFutures ) {
+            for( ScheduledFuture<Long> current : theFutures.values() ) {
+                current.cancel( false );
+            }
+            theFutures.clear();
+        }
+        if( theExecutionPool != null ) {
+            theExecutionPool.die();
+            theExecutionPool = null;
         }
-        theFutures.clear();
         
         theExecutorService = null;
     }
@@ -159,20 +189,25 @@ public abstract class ScheduledExecutorProbeManager
             ProbeException,
             IsDeadException
     {
-        Future<Long> f = theFutures.remove( shadow.getIdentifier() );
-        if( f != null && !f.isCancelled() ) {
-            f.cancel( false );
-        }
+        NetMeshBaseIdentifier key = shadow.getIdentifier();
+
+        cancelScheduledUpdate( key );
 
-        long nextTime = shadow.doUpdateNow();
+        long               nextTime;
+        ProbeExecutionPool pool = theExecutionPool;
 
-        if( nextTime >= 0 ) {  // allow 0 for immediate execution
-            ScheduledFuture<Long> newFuture = theExecutorService.schedule(
-                    new ExecutorAdapter( new WeakReference<ScheduledExecutorProbeManager>( this ), shadow.getIdentifier(), nextTime ),
-                    nextTime,
-                    TimeUnit.MILLISECONDS );
-            theFutures.put( shadow.getIdentifier(), newFuture );
+        if( pool != null ) {
+            long started = pool.startInteractiveRun( key );
+            try {
+                nextTime = shadow.doUpdateNow();
+            } finally {
+                pool.endInteractiveRun( key, started );
+            }
+        } else {
+            nextTime = shadow.doUpdateNow();
         }
+
+        scheduleUpdate( key, nextTime );
     }
 
     /**
@@ -183,10 +218,7 @@ public abstract class ScheduledExecutorProbeManager
     public void disableFutureUpdates(
             final ShadowMeshBase shadow )
     {
-        Future<Long> f = theFutures.remove( shadow.getIdentifier() );
-        if( f != null && !f.isCancelled() ) {
-            f.cancel( false );
-        }
+        cancelScheduledUpdate( shadow.getIdentifier() );
 
         try {
             shadow.executeAsap( new TransactionAction<ProbeUpdateSpecification>() {
@@ -224,18 +256,64 @@ public abstract class ScheduledExecutorProbeManager
             ProxyParameters       argument )
     {
         if( value != null ) {
-            long nextTime = value.getDelayUntilNextUpdate();
-            if( nextTime >= 0 && theExecutorService != null ) { // allow 0 for immediate execution
-                ScheduledFuture<Long> newFuture = theExecutorService.schedule(
-                        new ExecutorAdapter( new WeakReference<ScheduledExecutorProbeManager>( this ), key, nextTime ),
-                        nextTime,
-                        TimeUnit.MILLISECONDS );
-                theFutures.put( key, newFuture );
-            }
+            scheduleUpdate( key, value.getDelayUntilNextUpdate() );
         }
         super.createdHook( key, value, argument );
     }
 
+    /**
+     * Schedule the next update of a ShadowMeshBase. Positive delays are stretched by a random
+     * amount, so ShadowMeshBases that were updated at the same time do not stay in lock-step
+     * and hit the ScheduledExecutorService, and their data sources, all at once.
+     *
+     * @param key the identifier of the ShadowMeshBase
+     * @param nextTime the desired delay until the next update, in milliseconds. -1 indicates never.
+     */
+    protected void scheduleUpdate(
+            NetMeshBaseIdentifier key,
+            long                  nextTime )
+    {
+        ScheduledExecutorService exec = theExecutorService;
+
+        if( nextTime < 0 || exec == null ) { // allow 0 for immediate execution
+            return;
+        }
+        if( nextTime > 0 && RESCHEDULE_JITTER > 0.f ) {
+            nextTime += (long) ( nextTime * RESCHEDULE_JITTER * ThreadLocalRandom.current().nextDouble() );
+        }
+
+        ScheduledFuture<Long> newFuture = exec.schedule(
+                new ExecutorAdapter( new WeakReference<ScheduledExecutorProbeManager>( this ), key, nextTime ),
+                nextTime,
+                TimeUnit.MILLISECONDS );
+
+        synchronized( theFutures ) {
+            theFutures.put( key, newFuture );
+        }
+    }
+
+    /**
+     * Cancel the scheduled, or queued, next update of a ShadowMeshBase, if any.
+     *
+     * @param key the identifier of the ShadowMeshBase
+     */
+    protected void cancelScheduledUpdate(
+            NetMeshBaseIdentifier key )
+    {
+        Future<Long> f;
+        synchronized( theFutures ) {
+            f = theFutures.remove( key );
+        }
+        if( f != null && !f.isCancelled() ) {
+            f.cancel( false );
+        }
+
+        ProbeExecutionPool pool = theExecutionPool;
+        if( pool != null ) {
+            pool.cancel( key );
+        }
+    }
+
     /**
      * We are not needed any more.
      * 
@@ -271,6 +349,11 @@ public abstract class ScheduledExecutorProbeManager
      * The ScheduledExecutorService that executes our Probe runs.
      */
     protected ScheduledExecutorService theExecutorService;
+
+    /**
+     * The ProbeExecutionPool that performs our Probe runs, if any.
+     */
+    protected ProbeExecutionPool theExecutionPool;
     
     /**
      * The Futures currently waiting to be executed on behalf of this ScheduledExecutorProbeManager.
@@ -292,6 +375,21 @@ public abstract class ScheduledExecutorProbeManager
      * The default thread-pool size.
      */
     protected static int DEFAULT_THREAD_POOL_SIZE = 1;
+
+    /**
+     * Our ResourceHelper.
+     */
+    private static final ResourceHelper theResourceHelper = ResourceHelper.getInstance( ScheduledExecutorProbeManager.class );
+
+    /**
+     * The maximum fraction by which the delay until the next update is randomly stretched.
+     */
+    protected static final float RESCHEDULE_JITTER = theResourceHelper.getResourceFloatOrDefault( "RescheduleJitter", 0.1f );
+
+    /**
+     * The delay, in milliseconds, after which a background run that was shed is attempted again.
+     */
+    protected static final long SHED_RETRY_DELAY = theResourceHelper.getResourceLongOrDefault( "ShedRetryDelay", 10000L );
     
     /**
      * Helper class to be able to reschedule the ShadowMeshBase. This is a static class, so the ProbeManager
@@ -325,16 +423,43 @@ public abstract class ScheduledExecutorProbeManager
         }
 
         /**
-         * The main call when invoked by a background Thread.
+         * The main call when invoked by the ScheduledExecutorService. If the ScheduledExecutorProbeManager
+         * has a ProbeExecutionPool, the run is only queued there.
          * 
          * @throws Exception catch-all Exception
-         * @return desired time of the next update, in milliseconds. -1 indicates never.
+         * @return desired time of the next update, in milliseconds. -1 indicates never, or that the run was queued.
          */
         public Long call()
             throws
                 Exception
         {
-            return call( null );
+            ScheduledExecutorProbeManager belongsTo = theBelongsTo.get();
+            if( belongsTo == null ) {
+                return -1L;
+            }
+            ProbeExecutionPool pool = belongsTo.theExecutionPool;
+            if( pool == null ) {
+                return call( null );
+            }
+
+            if( !pool.submitBackground( theShadowIdentifier, theWillBeCalledAt.getTime(), this::runInBackground )) {
+                // overloaded: try again later
+                belongsTo.scheduleUpdate( theShadowIdentifier, SHED_RETRY_DELAY );
+            }
+            return -1L;
+        }
+
+        /**
+         * The main call when invoked by the ProbeExecutionPool.
+         */
+        protected void runInBackground()
+        {
+            try {
+                call( null );
+
+            } catch( Throwable t ) {
+                log.error( this, t );
+            }
         }
 
         /**
@@ -375,8 +500,7 @@ public abstract class ScheduledExecutorProbeManager
                         if( log.isDebugEnabled() ) {
                             log.debug( this + ".call ... schedule in " + nextTime.longValue() );
                         }
-                        ScheduledFuture<Long> f = belongsTo.theExecutorService.schedule( this, nextTime.longValue(), TimeUnit.MILLISECONDS );
-                        belongsTo.theFutures.put( theShadowIdentifier, f );
+                        belongsTo.scheduleUpdate( theShadowIdentifier, nextTime.longValue() );
 
                         removeOld = false; // otherwise we remove what we just added, the old one was removed as a side effect of put
                     }
@@ -389,7 +513,9 @@ public abstract class ScheduledExecutorProbeManager
 
             } finally {
                 if( belongsTo != null && removeOld ) {
-                    belongsTo.theFutures.remove( theShadowIdentifier );
+                    synchronized( belongsTo.theFutures ) {
+                        belongsTo.theFutures.remove( theShadowIdentifier );
+                    }
                 }
             }
         }
@@ -301,6 +301,7 @@ public abstract class AShadowMeshBase
 
                                 current.die( true );
                             }
+                            removedFromProbeManager();
                             return null;
                         }
                 });
@@ -310,6 +311,16 @@ public abstract class AShadowMeshBase
         }
     }
 
+    /**
+     * Invoked after this ShadowMeshBase has been removed from its ProbeManager because it is
+     * not needed any more. Subclasses may override this to delete data that they keep outside
+     * of the ProbeManager.
+     */
+    protected void removedFromProbeManager()
+    {
+        // no op
+    }
+
     /**
      * Obtain the time at which this ShadowMeshBase was created.
      *
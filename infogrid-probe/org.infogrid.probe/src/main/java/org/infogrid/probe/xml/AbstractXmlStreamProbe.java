@@ -0,0 +1,167 @@
+//
+// This file is part of InfoGrid(tm). You may not use this file except in
+// compliance with the InfoGrid license. The InfoGrid license and important
+// disclaimers are contained in the file LICENSE.InfoGrid.txt that you should
+// have received with InfoGrid. If you have not received LICENSE.InfoGrid.txt
+// or you do not consent to all aspects of the license and the disclaimers,
+// no license is granted; do not use this file.
+//
+// For more information about InfoGrid go to http://infogrid.org/
+//
+// Copyright 1998-2015 by Johannes Ernst
+// All rights reserved.
+//
+
+package org.infogrid.probe.xml;
+
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Factors out functionality common to XmlStreamProbes, in particular walking the
+ * XML document one element at a time.
+ */
+public abstract class AbstractXmlStreamProbe
+        implements
+            XmlStreamProbe
+{
+    /**
+     * Constructor for subclasses only.
+     */
+    protected AbstractXmlStreamProbe()
+    {
+    }
+
+    /**
+     * Advance to the next child element of the current element. The reader must be positioned
+     * at the start of the current element, or at the end of the previous child element.
+     *
+     * @param reader the reader
+     * @return true if the reader is now positioned at the start of the next child element,
+     *         false if it is positioned at the end of the current element
+     * @throws XMLStreamException thrown if the XML could not be read
+     */
+    protected boolean nextChildElement(
+            XMLStreamReader reader )
+        throws
+            XMLStreamException
+    {
+        while( reader.hasNext() ) {
+            int event = reader.next();
+
+            if( event == XMLStreamConstants.START_ELEMENT ) {
+                return true;
+            } else if( event == XMLStreamConstants.END_ELEMENT ) {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Obtain the text contained in the current element and all of its child elements,
+     * like the DOM's <code>getTextContent</code>. Upon return, the reader is positioned
+     * at the end of the current element.
+     *
+     * @param reader the reader, positioned at the start of the current element
+     * @return the text content
+     * @throws XMLStreamException thrown if the XML could not be read
+     */
+    protected String readTextContent(
+            XMLStreamReader reader )
+        throws
+            XMLStreamException
+    {
+        StringBuilder ret   = new StringBuilder();
+        int           depth = 1;
+
+        while( depth > 0 && reader.hasNext() ) {
+            switch( reader.next() ) {
+                case XMLStreamConstants.START_ELEMENT:
+                    ++depth;
+                    break;
+
+                case XMLStreamConstants.END_ELEMENT:
+                    --depth;
+                    break;
+
+                case XMLStreamConstants.CHARACTERS:
+                case XMLStreamConstants.CDATA:
+                case XMLStreamConstants.SPACE:
+                case XMLStreamConstants.ENTITY_REFERENCE:
+                    ret.append( reader.getText() );
+                    break;
+
+                default:
+                    break;
+            }
+        }
+        return ret.toString();
+    }
+
+    /**
+     * Skip the current element and all of its child elements. Upon return, the reader is
+     * positioned at the end of the current element.
+     *
+     * @param reader the reader, positioned at the start of the current element
+     * @throws XMLStreamException thrown if the XML could not be read
+     */
+    protected void skipElement(
+            XMLStreamReader reader )
+        throws
+            XMLStreamException
+    {
+        int depth = 1;
+
+        while( depth > 0 && reader.hasNext() ) {
+            int event = reader.next();
+
+            if( event == XMLStreamConstants.START_ELEMENT ) {
+                ++depth;
+            } else if( event == XMLStreamConstants.END_ELEMENT ) {
+                --depth;
+            }
+        }
+    }
+
+    /**
+     * Obtain the qualified name of the current element, including its prefix if any,
+     * like the DOM's <code>getNodeName</code>.
+     *
+     * @param reader the reader, positioned at the start of the current element
+     * @return the qualified name
+     */
+    protected String getQualifiedName(
+            XMLStreamReader reader )
+    {
+        String prefix = reader.getPrefix();
+        if( prefix == null || prefix.length() == 0 ) {
+            return reader.getLocalName();
+        } else {
+            return prefix + ":" + reader.getLocalName();
+        }
+    }
+
+    /**
+     * Determine whether the current element is in this namespace.
+     *
+     * @param reader the reader, positioned at the start of the current element
+     * @param namespace the namespace URI, or null for no namespace
+     * @return true if the current element is in this namespace
+     */
+    protected boolean isInNamespace(
+            XMLStreamReader reader,
+            String          namespace )
+    {
+        String found = reader.getNamespaceURI();
+        if( found != null && found.length() == 0 ) {
+            found = null;
+        }
+        if( namespace == null ) {
+            return found == null;
+        } else {
+            return namespace.equals( found );
+        }
+    }
+}
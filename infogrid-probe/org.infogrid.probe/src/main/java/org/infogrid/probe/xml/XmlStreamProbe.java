@@ -0,0 +1,130 @@
+//
+// This file is part of InfoGrid(tm). You may not use this file except in
+// compliance with the InfoGrid license. The InfoGrid license and important
+// disclaimers are contained in the file LICENSE.InfoGrid.txt that you should
+// have received with InfoGrid. If you have not received LICENSE.InfoGrid.txt
+// or you do not consent to all aspects of the license and the disclaimers,
+// no license is granted; do not use this file.
+// 
+// For more information about InfoGrid go to http://infogrid.org/
+//
+// Copyright 1998-2015 by Johannes Ernst
+// All rights reserved.
+//
+
+package org.infogrid.probe.xml;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.text.ParseException;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import org.diet4j.core.ModuleException;
+import org.infogrid.mesh.EntityBlessedAlreadyException;
+import org.infogrid.mesh.EntityNotBlessedException;
+import org.infogrid.mesh.IllegalPropertyTypeException;
+import org.infogrid.mesh.IllegalPropertyValueException;
+import org.infogrid.mesh.IsAbstractException;
+import org.infogrid.mesh.MeshObjectIdentifierNotUniqueException;
+import org.infogrid.mesh.NotPermittedException;
+import org.infogrid.mesh.NotRelatedException;
+import org.infogrid.mesh.RelatedAlreadyException;
+import org.infogrid.mesh.RoleTypeBlessedAlreadyException;
+import org.infogrid.meshbase.net.CoherenceSpecification;
+import org.infogrid.meshbase.net.NetMeshBaseIdentifier;
+import org.infogrid.meshbase.transaction.TransactionException;
+import org.infogrid.probe.ProbeException;
+import org.infogrid.probe.StagingMeshBase;
+
+/**
+ * <p>This interface is supported by all Probes that can
+ * interpret XML as a stream of StAX events. Unlike an {@link XmlDOMProbe}, such
+ * a Probe never requires the entire document to be held in memory as a DOM, and
+ * it does not share a parser with other Probes, so many can run at the same time.</p>
+ *
+ * <p>Classes supporting this interface need to have a constructor
+ *    that does not take any parameters.</p>
+ *
+ * <p>The sequence of invocations is the same as for {@link XmlDOMProbe}.</p>
+ * <p>Note: Probes <b>must not</b> store persistent data in any place other than the
+ * MeshObjects that they instantiate.</p>
+ */
+public interface XmlStreamProbe
+        extends
+            XmlProbe
+{
+    /**
+     * <p>Read from the stream of XML events and instantiate corresponding MeshObjects.</p>
+     * <p>This method declares
+     * many different types of Exceptions; that enables the Probe Framework to handle many
+     * possible error conditions out of the box, thereby making Probe programming easier.
+     * Note that many of the declared Exceptions, if actually thrown, indicate a programming
+     * error in the Probe implementation (e.g. IsAbstractException).</p>
+     * <p>The Probe framework invokes this method with an open Transaction on the current Thread;
+     * the Probe developer does not have to worry about Transactions.</p>
+     * 
+     * @param dataSourceIdentifier identifies the data source that is being accessed
+     * @param coherenceSpecification the type of data coherence that is requested by the application. Probe
+     *         implementors may ignore this parameter, letting the Probe framework choose its own policy.
+     *         If the Probe chooses to define its own policy (considering or ignoring this parameter), the
+     *         Probe must bless the Probe's HomeObject with a subtype of <code>ProbeUpdateSpecification</code> (defined
+     *         in the <code>org.infogrid.model.Probe</code> Subject Area) and suitable Property
+     *         values that reflect the policy.
+     * @param documentMime the MIME type of the Document, provided if available only
+     * @param reader the reader for the XML document, positioned at the start of the top-level element.
+     *         The Probe may stop reading before the end of the document. It must not close the reader.
+     * @param freshMeshBase the StagingMeshBase in which the corresponding MeshObjects are to be instantiated by the Probe.
+     *         This StagingMeshBase is empty when passed into this call, except for the home object which always exists
+     * @throws EntityBlessedAlreadyException thrown if a MeshObject was incorrectly blessed twice with the same
+     *         EntityType. Throwing this typically indicates a programming error.
+     * @throws EntityNotBlessedException thrown if a MeshObject was not blessed with a required EntityType.
+     *         Throwing this typically indicates a programming error.
+     * @throws IllegalPropertyTypeException thrown if a MeshObject did not carry a PropertyType that it needed
+     *         to carry. Throwing this typically indicates a programming error.
+     * @throws IllegalPropertyValueException thrown if a PropertyValue was assigned to a property that was
+     *         outside of the allowed range. Throwing this typically indicates a programming error.
+     * @throws IOException an input/output error occurred during execution of the Probe
+     * @throws IsAbstractException thrown if an EntityType or a Relationship could not be instantiated because
+     *         it was abstract. Throwing this typically indicates a programming error.
+     * @throws MeshObjectIdentifierNotUniqueException thrown if the Probe developer incorrectly
+     *         assigned duplicate MeshObjectsIdentifiers to created MeshObjects.
+     *         Throwing this typically indicates a programming error.
+     * @throws ModuleException thrown if a Module required by the Probe could not be loaded
+     * @throws NotPermittedException thrown if an operation performed by the Probe was not permitted
+     * @throws NotRelatedException thrown if a relationship was supposed to become blessed, but the relationship
+     *         did not exist. Throwing this typically indicates a programming error.
+     * @throws ProbeException a Probe error occurred per the possible subclasses defined in ProbeException
+     * @throws RelatedAlreadyException thrown if the Probe developer incorrectly attempted to
+     *         relate two already-related MeshObjects. Throwing this typically indicates a programming error.
+     * @throws RoleTypeBlessedAlreadyException thrown if a relationship was incorrectly blessed twice with the same
+     *         RelationshipType, in the same direction. Throwing this typically indicates a programming error.
+     * @throws TransactionException a Transaction problem occurred. Throwing this typically indicates a programming error.
+     * @throws URISyntaxException thrown if a URI was constructed in an invalid way
+     * @throws ParseException thrown if parsing failed
+     * @throws XMLStreamException thrown if the XML document was not well-formed, or could not be read
+     */
+    public void parseDocument(
+            NetMeshBaseIdentifier  dataSourceIdentifier,
+            CoherenceSpecification coherenceSpecification,
+            String                 documentMime,
+            XMLStreamReader        reader,
+            StagingMeshBase        freshMeshBase )
+        throws
+            EntityBlessedAlreadyException,
+            EntityNotBlessedException,
+            IllegalPropertyTypeException,
+            IllegalPropertyValueException,
+            IOException,
+            IsAbstractException,
+            MeshObjectIdentifierNotUniqueException,
+            ModuleException,
+            NotPermittedException,
+            NotRelatedException,
+            ProbeException,
+            RelatedAlreadyException,
+            RoleTypeBlessedAlreadyException,
+            TransactionException,
+            URISyntaxException,
+            ParseException,
+            XMLStreamException;
+}
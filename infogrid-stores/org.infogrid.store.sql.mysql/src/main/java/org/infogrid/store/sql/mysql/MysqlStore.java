@@ -545,6 +545,81 @@ public class MysqlStore
         }        
     }
     
+    /**
+     * Put or update these StoreValues using JDBC batches, without committing.
+     *
+     * @param conn the Connection
+     * @param values the StoreValues
+     * @return for each StoreValue, in sequence, true if the value was updated, false if it was put
+     * @throws SQLException thrown if the database could not be written
+     */
+    protected boolean [] putOrUpdateBatch(
+            Connection    conn,
+            StoreValue [] values )
+        throws
+            SQLException
+    {
+        boolean []        ret = new boolean[ values.length ];
+        PreparedStatement stm = thePutOrUpdatePreparedStatement.obtain( conn );
+
+        for( int start=0 ; start<values.length ; start += MAX_BATCH_SIZE ) {
+            int end = Math.min( start + MAX_BATCH_SIZE, values.length );
+
+            for( int i=start ; i<end ; ++i ) {
+                StoreValue current = values[i];
+
+                stm.setString(  1, current.getKey() );
+                stm.setString(  2, current.getEncodingId() );
+                stm.setString( 12, current.getEncodingId() );
+                setTime( stm,  3,  4, current.getTimeCreated() );
+                setTime( stm, 13, 14, current.getTimeCreated() );
+                setTime( stm,  5,  6, current.getTimeUpdated() );
+                setTime( stm, 15, 16, current.getTimeUpdated() );
+                setTime( stm,  7,  8, current.getTimeRead() );
+                setTime( stm, 17, 18, current.getTimeRead() );
+                setTime( stm,  9, 10, current.getTimeExpires() );
+                setTime( stm, 19, 20, current.getTimeExpires() );
+                stm.setBytes(  11, current.getData() );
+                stm.setBytes(  21, current.getData() );
+
+                stm.addBatch();
+            }
+
+            int [] counts = stm.executeBatch();
+            for( int i=start ; i<end ; ++i ) {
+                ret[i] = counts[ i-start ] > 1; // the "duplicate key" seems to trigger two, instead of one
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Delete the data elements with these keys using JDBC batches, without committing.
+     * Keys that do not exist are ignored.
+     *
+     * @param conn the Connection
+     * @param keys the keys
+     * @throws SQLException thrown if the database could not be written
+     */
+    protected void deleteBatch(
+            Connection conn,
+            String []  keys )
+        throws
+            SQLException
+    {
+        PreparedStatement stm = theDeletePreparedStatement.obtain( conn );
+
+        for( int start=0 ; start<keys.length ; start += MAX_BATCH_SIZE ) {
+            int end = Math.min( start + MAX_BATCH_SIZE, keys.length );
+
+            for( int i=start ; i<end ; ++i ) {
+                stm.setString( 1, keys[i] );
+                stm.addBatch();
+            }
+            stm.executeBatch();
+        }
+    }
+
     /**
      * Obtain a data element and associated meta-data from the Store, given a key.
      *
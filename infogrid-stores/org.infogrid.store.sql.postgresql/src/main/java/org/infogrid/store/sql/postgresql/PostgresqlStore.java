@@ -19,6 +19,7 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.sql.Timestamp;
 import java.sql.Types;
 import java.util.NoSuchElementException;
@@ -457,8 +458,11 @@ public class PostgresqlStore
         checkEncoding( encodingId );
         checkData(     data );
 
-        boolean updated = false;
+        Connection held   = null;
+        boolean    updated = false;
         try {
+            held = theDatabase.acquireConnection(); // perform all steps on the same Connection
+
             updated = new SqlExecutionAction<Boolean>( theUpdatePreparedStatement ) {
                 protected Boolean perform(
                         PreparedStatement stm,
@@ -581,6 +585,10 @@ public class PostgresqlStore
             throw new SqlStoreIOException( this, "putOrUpdate", key, encodingId, data, ex );
 
         } finally {
+            if( held != null ) {
+                theDatabase.releaseConnection( held );
+            }
+
             StoreValue value = new StoreValue( key, encodingId, timeCreated, timeUpdated, timeRead, timeExpires, data );
 
             if( updated ) {
@@ -591,6 +599,112 @@ public class PostgresqlStore
         }        
     }
     
+    /**
+     * Put or update these StoreValues using JDBC batches, without committing.
+     * All values are first updated in batches; those that did not exist yet are then
+     * inserted in batches.
+     *
+     * @param conn the Connection
+     * @param values the StoreValues
+     * @return for each StoreValue, in sequence, true if the value was updated, false if it was put
+     * @throws SQLException thrown if the database could not be written
+     */
+    protected boolean [] putOrUpdateBatch(
+            Connection    conn,
+            StoreValue [] values )
+        throws
+            SQLException
+    {
+        boolean []        ret       = new boolean[ values.length ];
+        int               toPut     = 0;
+        PreparedStatement updateStm = theUpdatePreparedStatement.obtain( conn );
+
+        for( int start=0 ; start<values.length ; start += MAX_BATCH_SIZE ) {
+            int end = Math.min( start + MAX_BATCH_SIZE, values.length );
+
+            for( int i=start ; i<end ; ++i ) {
+                StoreValue current = values[i];
+
+                updateStm.setString(  1, current.getEncodingId() );
+                setTime( updateStm,   2,  3, current.getTimeCreated() );
+                setTime( updateStm,   4,  5, current.getTimeUpdated() );
+                setTime( updateStm,   6,  7, current.getTimeRead() );
+                setTime( updateStm,   8,  9, current.getTimeExpires() );
+                updateStm.setBytes(  10, current.getData() );
+                updateStm.setString( 11, current.getKey() );
+
+                updateStm.addBatch();
+            }
+
+            int [] counts = updateStm.executeBatch();
+            for( int i=start ; i<end ; ++i ) {
+                int count = counts[ i-start ];
+                ret[i] = count > 0 || count == Statement.SUCCESS_NO_INFO;
+                if( !ret[i] ) {
+                    ++toPut;
+                }
+            }
+        }
+
+        if( toPut > 0 ) {
+            PreparedStatement putStm  = thePutPreparedStatement.obtain( conn );
+            int               inBatch = 0;
+
+            for( int i=0 ; i<values.length ; ++i ) {
+                if( ret[i] ) {
+                    continue;
+                }
+                StoreValue current = values[i];
+
+                putStm.setString(  1, current.getKey() );
+                putStm.setString(  2, current.getEncodingId() );
+                setTime( putStm,   3,  4, current.getTimeCreated() );
+                setTime( putStm,   5,  6, current.getTimeUpdated() );
+                setTime( putStm,   7,  8, current.getTimeRead() );
+                setTime( putStm,   9, 10, current.getTimeExpires() );
+                putStm.setBytes(  11, current.getData() );
+
+                putStm.addBatch();
+
+                if( ++inBatch == MAX_BATCH_SIZE ) {
+                    putStm.executeBatch();
+                    inBatch = 0;
+                }
+            }
+            if( inBatch > 0 ) {
+                putStm.executeBatch();
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Delete the data elements with these keys using JDBC batches, without committing.
+     * Keys that do not exist are ignored.
+     *
+     * @param conn the Connection
+     * @param keys the keys
+     * @throws SQLException thrown if the database could not be written
+     */
+    protected void deleteBatch(
+            Connection conn,
+            String []  keys )
+        throws
+            SQLException
+    {
+        PreparedStatement stm = theDeletePreparedStatement.obtain( conn );
+
+        for( int start=0 ; start<keys.length ; start += MAX_BATCH_SIZE ) {
+            int end = Math.min( start + MAX_BATCH_SIZE, keys.length );
+
+            for( int i=start ; i<end ; ++i ) {
+                stm.setString( 1, keys[i] );
+                stm.addBatch();
+            }
+            stm.executeBatch();
+        }
+    }
+
     /**
      * Obtain a data element and associated meta-data from the Store, given a key.
      *
@@ -15,7 +15,12 @@
 package org.infogrid.store.sql;
 
 import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
 import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.Collection;
 import java.util.NoSuchElementException;
 import org.infogrid.store.AbstractIterableStore;
 import org.infogrid.store.IterableStoreCursor;
@@ -199,6 +204,156 @@ public abstract class AbstractSqlStore
                 toStoreOrUpdate.getData() );
     }
     
+    /**
+     * Put or update a number of data elements, and delete a number of others, in a
+     * single database transaction. The statements are sent to the database using
+     * JDBC batches of up to {@link #MAX_BATCH_SIZE} statements each.
+     *
+     * @param toStoreOrUpdate the StoreValues to store or update
+     * @param toDelete the keys of the data elements to delete
+     * @return for each StoreValue, in sequence, true if the value was updated, false if it was put
+     * @throws IOException thrown if an I/O error occurred
+     */
+    @Override
+    public boolean [] putOrUpdateAndDeleteAll(
+            Collection<StoreValue> toStoreOrUpdate,
+            Collection<String>     toDelete )
+        throws
+            IOException
+    {
+        if( log.isInfoEnabled() ) {
+            log.info( this + ".putOrUpdateAndDeleteAll( " + toStoreOrUpdate.size() + ", " + toDelete.size() + " )" );
+        }
+
+        StoreValue [] values = toStoreOrUpdate.toArray( new StoreValue[ toStoreOrUpdate.size() ] );
+        String []     keys   = toDelete.toArray( new String[ toDelete.size() ] );
+
+        for( StoreValue current : values ) {
+            checkKey(      current.getKey() );
+            checkEncoding( current.getEncodingId() );
+            checkData(     current.getData() );
+        }
+        for( String current : keys ) {
+            checkKey( current );
+        }
+        if( values.length == 0 && keys.length == 0 ) {
+            return new boolean[0];
+        }
+
+        boolean [] ret;
+        try {
+            Connection conn = theDatabase.acquireConnection();
+            try {
+                try {
+                    ret = performBatch( conn, values, keys );
+
+                } catch( SQLException ex ) {
+                    // the Connection may have gone stale: get a new one and try again, passing on any Exceptions
+                    log.info( ex );
+
+                    conn = theDatabase.obtainNewConnection();
+                    ret  = performBatch( conn, values, keys );
+                }
+            } finally {
+                theDatabase.releaseConnection( conn );
+            }
+
+        } catch( SQLException ex ) {
+            throw new SqlStoreIOException( this, "putOrUpdateAndDeleteAll", ex );
+        }
+
+        for( int i=0 ; i<values.length ; ++i ) {
+            if( ret[i] ) {
+                fireUpdatePerformed( values[i] );
+            } else {
+                firePutPerformed( values[i] );
+            }
+        }
+        for( String current : keys ) {
+            fireDeletePerformed( current );
+        }
+        return ret;
+    }
+
+    /**
+     * Perform the batched puts, updates and deletes on this Connection, and commit.
+     * Roll back if anything goes wrong.
+     *
+     * @param conn the Connection
+     * @param values the StoreValues to store or update
+     * @param keys the keys of the data elements to delete
+     * @return for each StoreValue, in sequence, true if the value was updated, false if it was put
+     * @throws SQLException thrown if the database could not be written
+     */
+    protected boolean [] performBatch(
+            Connection    conn,
+            StoreValue [] values,
+            String []     keys )
+        throws
+            SQLException
+    {
+        synchronized( conn ) {
+            boolean autoCommit = conn.getAutoCommit();
+            boolean error      = true;
+            try {
+                if( autoCommit ) {
+                    conn.setAutoCommit( false );
+                }
+                boolean [] ret = putOrUpdateBatch( conn, values );
+                deleteBatch( conn, keys );
+
+                conn.commit();
+                error = false;
+
+                return ret;
+
+            } finally {
+                if( error ) {
+                    try {
+                        conn.rollback();
+                    } catch( SQLException ex ) {
+                        // do nothing
+                    }
+                }
+                if( autoCommit ) {
+                    try {
+                        conn.setAutoCommit( true );
+                    } catch( SQLException ex ) {
+                        log.error( ex );
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Put or update these StoreValues using JDBC batches, without committing.
+     *
+     * @param conn the Connection
+     * @param values the StoreValues
+     * @return for each StoreValue, in sequence, true if the value was updated, false if it was put
+     * @throws SQLException thrown if the database could not be written
+     */
+    protected abstract boolean [] putOrUpdateBatch(
+            Connection    conn,
+            StoreValue [] values )
+        throws
+            SQLException;
+
+    /**
+     * Delete the data elements with these keys using JDBC batches, without committing.
+     * Keys that do not exist are ignored.
+     *
+     * @param conn the Connection
+     * @param keys the keys
+     * @throws SQLException thrown if the database could not be written
+     */
+    protected abstract void deleteBatch(
+            Connection conn,
+            String []  keys )
+        throws
+            SQLException;
+
     /**
      * Obtain an Iterator over the content of this Store.
      *
@@ -355,6 +510,34 @@ public abstract class AbstractSqlStore
         return ret;
     }
 
+    /**
+     * Helper method to set a time in System.currentTimeMillis() format as a pair of
+     * SQL timestamp and milli-seconds parameters. This is the inverse of {@link #reconstructTime}.
+     *
+     * @param stm the PreparedStatement
+     * @param stampIndex the index of the timestamp parameter
+     * @param millisIndex the index of the milli-seconds parameter
+     * @param time Java time, or negative if not given
+     * @throws SQLException thrown if the parameters could not be set
+     */
+    protected static void setTime(
+            PreparedStatement stm,
+            int               stampIndex,
+            int               millisIndex,
+            long              time )
+        throws
+            SQLException
+    {
+        if( time >= 0 ) {
+            int millis = (int) ( time % 1000 );
+            stm.setTimestamp( stampIndex,  new Timestamp( time - millis ));
+            stm.setInt(       millisIndex, millis );
+        } else {
+            stm.setNull(      stampIndex,  Types.TIMESTAMP );
+            stm.setNull(      millisIndex, Types.INTEGER );
+        }
+    }
+
     /**
      * Dump this object.
      *
@@ -374,6 +557,11 @@ public abstract class AbstractSqlStore
                 });
     }
 
+    /**
+     * The maximum number of statements sent to the database in one JDBC batch.
+     */
+    public static final int MAX_BATCH_SIZE = 500;
+
     /**
      * The Database that this AbstractSqlStore stores data in.
      */
@@ -0,0 +1,253 @@
+//
+// This file is part of InfoGrid(tm). You may not use this file except in
+// compliance with the InfoGrid license. The InfoGrid license and important
+// disclaimers are contained in the file LICENSE.InfoGrid.txt that you should
+// have received with InfoGrid. If you have not received LICENSE.InfoGrid.txt
+// or you do not consent to all aspects of the license and the disclaimers,
+// no license is granted; do not use this file.
+//
+// For more information about InfoGrid go to http://infogrid.org/
+//
+// Copyright 1998-2015 by Johannes Ernst
+// All rights reserved.
+//
+
+package org.infogrid.store.sql.test;
+
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.logging.Logger;
+import javax.sql.DataSource;
+import org.infogrid.testharness.AbstractTest;
+
+/**
+ * Factors out common functionality of PooledSqlDatabaseTests. The tests run against
+ * a FakeDataSource, so they do not need a database.
+ */
+public abstract class AbstractPooledSqlDatabaseTest
+        extends
+            AbstractTest
+{
+    /**
+     * Obtain the FakeConnection behind a Connection handed out by the FakeDataSource.
+     *
+     * @param conn the Connection
+     * @return the FakeConnection
+     */
+    protected static FakeConnection fake(
+            Connection conn )
+    {
+        return (FakeConnection) Proxy.getInvocationHandler( conn );
+    }
+
+    /**
+     * A DataSource that hands out FakeConnections, and that fails on request.
+     */
+    protected static class FakeDataSource
+            implements
+                DataSource
+    {
+        /**
+         * Obtain a new Connection.
+         *
+         * @return the Connection
+         * @throws SQLException thrown if this FakeDataSource has been asked to fail
+         */
+        public Connection getConnection()
+            throws
+                SQLException
+        {
+            if( theFail ) {
+                throw new SQLException( "Failing on purpose" );
+            }
+            synchronized( this ) {
+                ++theOpenedCount;
+            }
+            return (Connection) Proxy.newProxyInstance(
+                    Connection.class.getClassLoader(),
+                    new Class<?>[] { Connection.class },
+                    new FakeConnection() );
+        }
+
+        /**
+         * Obtain a new Connection.
+         *
+         * @param username ignored
+         * @param password ignored
+         * @return the Connection
+         * @throws SQLException thrown if this FakeDataSource has been asked to fail
+         */
+        public Connection getConnection(
+                String username,
+                String password )
+            throws
+                SQLException
+        {
+            return getConnection();
+        }
+
+        /**
+         * Not supported.
+         *
+         * @return null
+         */
+        public PrintWriter getLogWriter()
+        {
+            return null;
+        }
+
+        /**
+         * Not supported.
+         *
+         * @param out ignored
+         */
+        public void setLogWriter(
+                PrintWriter out )
+        {
+        }
+
+        /**
+         * Not supported.
+         *
+         * @param seconds ignored
+         */
+        public void setLoginTimeout(
+                int seconds )
+        {
+        }
+
+        /**
+         * Not supported.
+         *
+         * @return 0
+         */
+        public int getLoginTimeout()
+        {
+            return 0;
+        }
+
+        /**
+         * Not supported.
+         *
+         * @return never returns
+         * @throws SQLFeatureNotSupportedException always thrown
+         */
+        public Logger getParentLogger()
+            throws
+                SQLFeatureNotSupportedException
+        {
+            throw new SQLFeatureNotSupportedException();
+        }
+
+        /**
+         * Not supported.
+         *
+         * @param iface the interface
+         * @param <T> the type of the interface
+         * @return never returns
+         * @throws SQLException always thrown
+         */
+        public <T> T unwrap(
+                Class<T> iface )
+            throws
+                SQLException
+        {
+            throw new SQLException( "Not a wrapper" );
+        }
+
+        /**
+         * Not supported.
+         *
+         * @param iface the interface
+         * @return false
+         */
+        public boolean isWrapperFor(
+                Class<?> iface )
+        {
+            return false;
+        }
+
+        /**
+         * If true, no Connections can be obtained.
+         */
+        protected volatile boolean theFail;
+
+        /**
+         * The number of Connections handed out so far.
+         */
+        protected int theOpenedCount;
+    }
+
+    /**
+     * Implements the few methods of Connection that PooledSqlDatabase invokes.
+     */
+    protected static class FakeConnection
+            implements
+                InvocationHandler
+    {
+        /**
+         * Invoke a method on the Connection.
+         *
+         * @param proxy the Connection
+         * @param method the invoked method
+         * @param args the arguments
+         * @return the result
+         */
+        public Object invoke(
+                Object    proxy,
+                Method    method,
+                Object [] args )
+        {
+            switch( method.getName() ) {
+                case "close":
+                    theIsClosed = true;
+                    return null;
+
+                case "isClosed":
+                    return theIsClosed;
+
+                case "isValid":
+                    return theIsValid && !theIsClosed;
+
+                case "setAutoCommit":
+                    theAutoCommit = (Boolean) args[0];
+                    return null;
+
+                case "getAutoCommit":
+                    return theAutoCommit != null ? theAutoCommit : Boolean.TRUE;
+
+                case "hashCode":
+                    return System.identityHashCode( proxy );
+
+                case "equals":
+                    return proxy == args[0];
+
+                case "toString":
+                    return "FakeConnection@" + Integer.toHexString( System.identityHashCode( proxy ));
+
+                default:
+                    throw new UnsupportedOperationException( method.getName() );
+            }
+        }
+
+        /**
+         * True once the Connection has been closed.
+         */
+        protected volatile boolean theIsClosed;
+
+        /**
+         * If false, the Connection fails validation.
+         */
+        protected volatile boolean theIsValid = true;
+
+        /**
+         * The auto-commit value set on the Connection, if any.
+         */
+        protected volatile Boolean theAutoCommit;
+    }
+}
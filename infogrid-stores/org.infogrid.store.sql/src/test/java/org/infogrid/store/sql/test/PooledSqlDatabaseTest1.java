@@ -0,0 +1,144 @@
+//
+// This file is part of InfoGrid(tm). You may not use this file except in
+// compliance with the InfoGrid license. The InfoGrid license and important
+// disclaimers are contained in the file LICENSE.InfoGrid.txt that you should
+// have received with InfoGrid. If you have not received LICENSE.InfoGrid.txt
+// or you do not consent to all aspects of the license and the disclaimers,
+// no license is granted; do not use this file.
+//
+// For more information about InfoGrid go to http://infogrid.org/
+//
+// Copyright 1998-2015 by Johannes Ernst
+// All rights reserved.
+//
+
+package org.infogrid.store.sql.test;
+
+import java.sql.Connection;
+import org.infogrid.util.logging.Log;
+import org.infogrid.util.sql.PooledSqlDatabase;
+import org.junit.Test;
+
+/**
+ * Tests acquiring and releasing Connections from a PooledSqlDatabase, and that
+ * Connections are bound to the acquiring Thread.
+ */
+public class PooledSqlDatabaseTest1
+        extends
+            AbstractPooledSqlDatabaseTest
+{
+    /**
+     * Run the test.
+     *
+     * @throws Exception all sorts of things may go wrong during a test
+     */
+    @Test
+    public void run()
+        throws
+            Exception
+    {
+        FakeDataSource    ds = new FakeDataSource();
+        PooledSqlDatabase db = PooledSqlDatabase.create( "test", ds, Boolean.FALSE, 2 );
+
+        //
+
+        log.info( "Obtaining without acquiring" );
+
+        try {
+            db.obtainConnection();
+            reportError( "No IllegalStateException without acquiring" );
+        } catch( IllegalStateException ex ) {
+            // expected
+        }
+
+        //
+
+        log.info( "Acquiring and releasing" );
+
+        Connection first = db.acquireConnection();
+
+        checkEquals( fake( first ).theAutoCommit, Boolean.FALSE, "Auto-commit not set" );
+        checkCondition( db.obtainConnection() == first, "Wrong Connection obtained" );
+        checkEquals( db.getOpenCount(), 1, "Wrong open count after acquiring" );
+        checkEquals( db.getIdleCount(), 0, "Wrong idle count after acquiring" );
+
+        checkCondition( db.acquireConnection() == first, "Nested acquisition returned different Connection" );
+        db.releaseConnection( first );
+        checkCondition( db.obtainConnection() == first, "Connection unbound after nested release" );
+        checkEquals( db.getIdleCount(), 0, "Returned to pool after nested release" );
+
+        db.releaseConnection( first );
+        checkEquals( db.getOpenCount(), 1, "Wrong open count after releasing" );
+        checkEquals( db.getIdleCount(), 1, "Wrong idle count after releasing" );
+        checkCondition( !fake( first ).theIsClosed, "Connection closed upon release" );
+
+        try {
+            db.obtainConnection();
+            reportError( "No IllegalStateException after releasing" );
+        } catch( IllegalStateException ex ) {
+            // expected
+        }
+
+        db.releaseConnection( first ); // logs an error, but does not throw
+        checkEquals( db.getIdleCount(), 1, "Wrong idle count after superfluous release" );
+
+        //
+
+        log.info( "Reusing" );
+
+        checkCondition( db.acquireConnection() == first, "Idle Connection not reused" );
+        db.releaseConnection( first );
+        checkEquals( db.getCreatedCount(),     1L, "Wrong created count" );
+        checkEquals( db.getAcquisitionCount(), 2L, "Wrong acquisition count" );
+        checkEquals( ds.theOpenedCount,        1,  "Wrong number of Connections opened" );
+
+        //
+
+        log.info( "Thread affinity" );
+
+        Connection mine = db.acquireConnection();
+
+        final PooledSqlDatabase finalDb = db;
+        final Connection []     theirs  = new Connection[2];
+        final Throwable  []     problem = new Throwable[1];
+
+        Thread other = new Thread( "PooledSqlDatabaseTest1" ) {
+                @Override
+                public void run()
+                {
+                    try {
+                        theirs[0] = finalDb.acquireConnection();
+                        theirs[1] = finalDb.obtainConnection();
+                        finalDb.releaseConnection( theirs[0] );
+
+                    } catch( Throwable t ) {
+                        problem[0] = t;
+                    }
+                }
+        };
+        other.start();
+        other.join( 10000L );
+
+        checkCondition( !other.isAlive(), "Other Thread did not finish" );
+        checkEquals( problem[0], null, "Other Thread failed" );
+        checkCondition( theirs[0] != null && theirs[0] != mine, "Other Thread obtained the same Connection" );
+        checkCondition( theirs[1] == theirs[0], "Other Thread obtained a Connection it had not acquired" );
+        checkCondition( db.obtainConnection() == mine, "Connection of this Thread changed" );
+        checkEquals( db.getOpenCount(), 2, "Wrong open count with two Threads" );
+
+        db.releaseConnection( mine );
+        checkEquals( db.getIdleCount(), 2, "Wrong idle count after both Threads released" );
+
+        //
+
+        log.info( "Closing" );
+
+        db.closeConnection();
+        checkEquals( db.getOpenCount(), 0, "Wrong open count after closing" );
+        checkCondition( fake( mine ).theIsClosed,      "Connection not closed" );
+        checkCondition( fake( theirs[0] ).theIsClosed, "Other Connection not closed" );
+    }
+
+    // Our Logger
+    private static Log log = Log.getLogInstance( PooledSqlDatabaseTest1.class );
+}
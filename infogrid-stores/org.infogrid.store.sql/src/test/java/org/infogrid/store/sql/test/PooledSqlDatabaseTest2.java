@@ -0,0 +1,205 @@
+//
+// This file is part of InfoGrid(tm). You may not use this file except in
+// compliance with the InfoGrid license. The InfoGrid license and important
+// disclaimers are contained in the file LICENSE.InfoGrid.txt that you should
+// have received with InfoGrid. If you have not received LICENSE.InfoGrid.txt
+// or you do not consent to all aspects of the license and the disclaimers,
+// no license is granted; do not use this file.
+//
+// For more information about InfoGrid go to http://infogrid.org/
+//
+// Copyright 1998-2015 by Johannes Ernst
+// All rights reserved.
+//
+
+package org.infogrid.store.sql.test;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import org.infogrid.util.logging.Log;
+import org.infogrid.util.sql.PooledSqlDatabase;
+import org.junit.Test;
+
+/**
+ * Tests exhausting a PooledSqlDatabase, and recovering from broken Connections.
+ */
+public class PooledSqlDatabaseTest2
+        extends
+            AbstractPooledSqlDatabaseTest
+{
+    /**
+     * Run the test.
+     *
+     * @throws Exception all sorts of things may go wrong during a test
+     */
+    @Test
+    public void run()
+        throws
+            Exception
+    {
+        FakeDataSource    ds = new FakeDataSource();
+        PooledSqlDatabase db = PooledSqlDatabase.create( "test", ds, null, 1, 60000L, 200L, 0L ); // always validate
+
+        //
+
+        log.info( "Exhausting the pool" );
+
+        Connection held = db.acquireConnection();
+
+        Holder waiter = new Holder( db );
+        waiter.start();
+        waiter.join( 10000L );
+
+        checkCondition( !waiter.isAlive(), "Waiting Thread did not time out" );
+        checkCondition( waiter.theProblem instanceof SQLTransientConnectionException, "Wrong problem: " + waiter.theProblem );
+        checkEquals( db.getAcquisitionTimeoutCount(), 1L, "Wrong timeout count" );
+        checkEquals( db.getOpenCount(), 1, "Pool grew beyond its maximum" );
+
+        //
+
+        log.info( "Waiting for a Connection to be released" );
+
+        db = PooledSqlDatabase.create( "test", ds, null, 1, 60000L, 10000L, 0L );
+
+        held   = db.acquireConnection();
+        waiter = new Holder( db );
+        waiter.start();
+
+        sleepFor( 200L );
+        checkCondition( waiter.isAlive(), "Waiting Thread did not wait" );
+
+        db.releaseConnection( held );
+        waiter.join( 10000L );
+
+        checkCondition( !waiter.isAlive(), "Waiting Thread did not obtain a Connection" );
+        checkEquals( waiter.theProblem, null, "Waiting Thread failed" );
+        checkCondition( waiter.theConnection == held, "Released Connection not handed to waiting Thread" );
+
+        //
+
+        log.info( "Replacing a Connection that failed validation" );
+
+        fake( held ).theIsValid = false;
+
+        Connection replacement = db.acquireConnection();
+
+        checkCondition( replacement != held, "Invalid Connection handed out" );
+        checkCondition( fake( held ).theIsClosed, "Invalid Connection not closed" );
+        checkEquals( db.getDiscardedCount(), 1L, "Wrong discarded count" );
+        checkEquals( db.getOpenCount(), 1, "Wrong open count after validation failure" );
+
+        //
+
+        log.info( "Replacing a broken Connection in use" );
+
+        Connection renewed = db.obtainNewConnection();
+
+        checkCondition( renewed != replacement, "Broken Connection not replaced" );
+        checkCondition( fake( replacement ).theIsClosed, "Broken Connection not closed" );
+        checkCondition( db.obtainConnection() == renewed, "Replacement not bound to Thread" );
+        checkEquals( db.getOpenCount(), 1, "Wrong open count after replacing" );
+
+        db.releaseConnection( renewed );
+        checkEquals( db.getIdleCount(), 1, "Replacement not returned to pool" );
+
+        //
+
+        log.info( "Failing to replace a broken Connection" );
+
+        Connection broken = db.acquireConnection();
+        ds.theFail = true;
+
+        try {
+            db.obtainNewConnection();
+            reportError( "No SQLException when DataSource fails" );
+        } catch( SQLException ex ) {
+            // expected
+        }
+        db.releaseConnection( broken );
+
+        checkEquals( db.getOpenCount(), 0, "Slot of broken Connection not given up" );
+        checkEquals( db.getIdleCount(), 0, "Broken Connection returned to pool" );
+
+        try {
+            db.acquireConnection();
+            reportError( "No SQLException when DataSource fails" );
+        } catch( SQLException ex ) {
+            // expected
+        }
+        checkEquals( db.getOpenCount(), 0, "Slot not given up after failed open" );
+
+        ds.theFail = false;
+
+        Connection recovered = db.acquireConnection();
+        checkCondition( !fake( recovered ).theIsClosed, "Recovered Connection closed" );
+        db.releaseConnection( recovered );
+        checkEquals( db.getOpenCount(), 1, "Wrong open count after recovering" );
+
+        //
+
+        log.info( "Closing while in use" );
+
+        Connection inUse = db.acquireConnection();
+        db.closeConnection();
+
+        checkCondition( !fake( inUse ).theIsClosed, "Connection in use closed" );
+        db.releaseConnection( inUse );
+        checkCondition( fake( inUse ).theIsClosed, "Connection in use not closed upon release" );
+        checkEquals( db.getOpenCount(), 0, "Wrong open count after closing" );
+    }
+
+    // Our Logger
+    private static Log log = Log.getLogInstance( PooledSqlDatabaseTest2.class );
+
+    /**
+     * A Thread that acquires a Connection and releases it again.
+     */
+    protected static class Holder
+            extends
+                Thread
+    {
+        /**
+         * Constructor.
+         *
+         * @param db the PooledSqlDatabase
+         */
+        public Holder(
+                PooledSqlDatabase db )
+        {
+            super( "PooledSqlDatabaseTest2" );
+
+            theDb = db;
+        }
+
+        /**
+         * Acquire and release.
+         */
+        @Override
+        public void run()
+        {
+            try {
+                theConnection = theDb.acquireConnection();
+                theDb.releaseConnection( theConnection );
+
+            } catch( Throwable t ) {
+                theProblem = t;
+            }
+        }
+
+        /**
+         * The PooledSqlDatabase.
+         */
+        protected final PooledSqlDatabase theDb;
+
+        /**
+         * The acquired Connection, if any.
+         */
+        protected volatile Connection theConnection;
+
+        /**
+         * The problem that occurred, if any.
+         */
+        protected volatile Throwable theProblem;
+    }
+}
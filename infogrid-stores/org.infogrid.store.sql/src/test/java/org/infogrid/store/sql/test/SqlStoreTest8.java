@@ -0,0 +1,124 @@
+//
+// This file is part of InfoGrid(tm). You may not use this file except in
+// compliance with the InfoGrid license. The InfoGrid license and important
+// disclaimers are contained in the file LICENSE.InfoGrid.txt that you should
+// have received with InfoGrid. If you have not received LICENSE.InfoGrid.txt
+// or you do not consent to all aspects of the license and the disclaimers,
+// no license is granted; do not use this file.
+//
+// For more information about InfoGrid go to http://infogrid.org/
+//
+// Copyright 1998-2015 by Johannes Ernst
+// All rights reserved.
+//
+
+package org.infogrid.store.sql.test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.infogrid.store.StoreKeyDoesNotExistException;
+import org.infogrid.store.StoreValue;
+import org.infogrid.util.logging.Log;
+import org.junit.Test;
+
+/**
+ * Tests batched puts, updates and deletes.
+ */
+public abstract class SqlStoreTest8
+        extends
+            AbstractSqlStoreTest
+{
+    /**
+     * Run the test.
+     *
+     * @throws Exception thrown if an Exception occurred during the test
+     */
+    @Test
+    @Override
+    public void run()
+        throws
+            Exception
+    {
+        long now = System.currentTimeMillis();
+
+        //
+
+        log.info( "Deleting old database and creating new database" );
+
+        theSqlStore.initializeHard();
+
+        checkEquals( theSqlStore.size(), 0, "Store not empty" );
+
+        //
+
+        log.info( "Putting a batch larger than the JDBC batch size" );
+
+        List<StoreValue> firstSet = new ArrayList<StoreValue>();
+        for( int i=0 ; i<N ; ++i ) {
+            firstSet.add( new StoreValue( "key-" + i, ENCODING_ID, now, now, now, -1L, bytes( "first " + i )));
+        }
+
+        boolean [] updated = theTestStore.putOrUpdateAll( firstSet );
+
+        checkEquals( updated.length, N, "Wrong number of results" );
+        for( int i=0 ; i<N ; ++i ) {
+            checkCondition( !updated[i], "Reported as updated: " + i );
+        }
+        checkEquals( theSqlStore.size(), N, "Wrong number of elements in store" );
+
+        //
+
+        log.info( "Updating every other element, adding new ones, and deleting some in the same batch" );
+
+        List<StoreValue> secondSet = new ArrayList<StoreValue>();
+        for( int i=0 ; i<N+10 ; i += 2 ) {
+            secondSet.add( new StoreValue( "key-" + i, ENCODING_ID, now, now+1, now+1, -1L, bytes( "second " + i )));
+        }
+        List<String> toDelete = new ArrayList<String>();
+        for( int i=1 ; i<N ; i += 4 ) {
+            toDelete.add( "key-" + i );
+        }
+        toDelete.add( "key-does-not-exist" );
+
+        updated = theTestStore.putOrUpdateAndDeleteAll( secondSet, toDelete );
+
+        int i = 0;
+        for( StoreValue current : secondSet ) {
+            int index = Integer.parseInt( current.getKey().substring( "key-".length() ));
+            checkEquals( updated[i++], index < N, "Wrong put/update result for " + current.getKey() );
+
+            StoreValue found = theTestStore.get( current.getKey() );
+            checkEqualByteArrays( found.getData(), current.getData(), "Wrong data for " + current.getKey() );
+            checkEquals( found.getTimeUpdated(), now+1, "Wrong timeUpdated for " + current.getKey() );
+        }
+        for( String current : toDelete ) {
+            try {
+                StoreValue found = theTestStore.get( current );
+                reportError( "Not deleted", found );
+
+            } catch( StoreKeyDoesNotExistException ex ) {
+                // ok
+            }
+        }
+        checkEquals( theSqlStore.size(), N + 5 - ( toDelete.size() - 1 ), "Wrong number of elements in store" );
+
+        //
+
+        log.info( "Empty batches" );
+
+        updated = theTestStore.putOrUpdateAll( Collections.<StoreValue>emptyList() );
+        checkEquals( updated.length, 0, "Wrong number of results" );
+
+        theTestStore.deleteAll( Collections.<String>emptyList() );
+        checkEquals( theSqlStore.size(), N + 5 - ( toDelete.size() - 1 ), "Wrong number of elements in store" );
+    }
+
+    /**
+     * Number of elements in the first batch.
+     */
+    protected static final int N = 1234;
+
+    // Our Logger
+    private static Log log = Log.getLogInstance( SqlStoreTest8.class );
+}
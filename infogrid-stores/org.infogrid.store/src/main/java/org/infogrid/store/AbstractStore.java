@@ -15,6 +15,8 @@
 package org.infogrid.store;
 
 import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
 import org.infogrid.util.FlexibleListenerSet;
 
 /**
@@ -139,6 +141,71 @@ public abstract class AbstractStore
         return ret;
     }
     
+    /**
+     * Put (if does not exist already) or update (if it does exist) a number of data elements
+     * in the Store.
+     *
+     * @param toStoreOrUpdate the StoreValues to store or update
+     * @return for each StoreValue, in sequence, true if the value was updated, false if it was put
+     * @throws IOException thrown if an I/O error occurred
+     */
+    public boolean [] putOrUpdateAll(
+            Collection<StoreValue> toStoreOrUpdate )
+        throws
+            IOException
+    {
+        boolean [] ret = putOrUpdateAndDeleteAll( toStoreOrUpdate, Collections.<String>emptyList() );
+        return ret;
+    }
+
+    /**
+     * Delete the data elements that are stored using these keys. Keys that do not
+     * exist in the Store are ignored.
+     *
+     * @param keys the keys to the data elements in the Store
+     * @throws IOException thrown if an I/O error occurred
+     */
+    public void deleteAll(
+            Collection<String> keys )
+        throws
+            IOException
+    {
+        putOrUpdateAndDeleteAll( Collections.<StoreValue>emptyList(), keys );
+    }
+
+    /**
+     * Put or update a number of data elements, and delete a number of others.
+     * This default implementation performs the operations one at a time, and thus
+     * is not atomic. Subclasses that can do better should override.
+     *
+     * @param toStoreOrUpdate the StoreValues to store or update
+     * @param toDelete the keys of the data elements to delete
+     * @return for each StoreValue, in sequence, true if the value was updated, false if it was put
+     * @throws IOException thrown if an I/O error occurred
+     */
+    public boolean [] putOrUpdateAndDeleteAll(
+            Collection<StoreValue> toStoreOrUpdate,
+            Collection<String>     toDelete )
+        throws
+            IOException
+    {
+        boolean [] ret = new boolean[ toStoreOrUpdate.size() ];
+        int        i   = 0;
+
+        for( StoreValue current : toStoreOrUpdate ) {
+            ret[i++] = putOrUpdate( current );
+        }
+        for( String current : toDelete ) {
+            try {
+                delete( current );
+
+            } catch( StoreKeyDoesNotExistException ex ) {
+                // ignore
+            }
+        }
+        return ret;
+    }
+
     /**
      * Remove all data in this Store.
      *
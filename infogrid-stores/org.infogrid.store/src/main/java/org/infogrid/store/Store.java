@@ -15,6 +15,7 @@
 package org.infogrid.store;
 
 import java.io.IOException;
+import java.util.Collection;
 
 /**
  * <p>A <code>Store</code> is an abstraction for a data store that behaves like a persistent
@@ -219,6 +220,39 @@ public interface Store
         throws
             IOException;
 
+    /**
+     * Put (if does not exist already) or update (if it does exist) a number of data elements
+     * in the Store. Implementations may perform this in a single round trip and as a single
+     * transaction on the underlying storage.
+     *
+     * @param toStoreOrUpdate the StoreValues to store or update
+     * @return for each StoreValue, in sequence, true if the value was updated, false if it was put
+     * @throws IOException thrown if an I/O error occurred
+     *
+     * @see #putOrUpdateAndDeleteAll
+     */
+    public boolean [] putOrUpdateAll(
+            Collection<StoreValue> toStoreOrUpdate )
+        throws
+            IOException;
+
+    /**
+     * Put or update a number of data elements, and delete a number of others.
+     * Implementations may perform this in a single round trip and as a single transaction
+     * on the underlying storage, so either all or none of the changes are made.
+     * Keys to be deleted that do not exist in the Store are ignored.
+     *
+     * @param toStoreOrUpdate the StoreValues to store or update
+     * @param toDelete the keys of the data elements to delete
+     * @return for each StoreValue, in sequence, true if the value was updated, false if it was put
+     * @throws IOException thrown if an I/O error occurred
+     */
+    public boolean [] putOrUpdateAndDeleteAll(
+            Collection<StoreValue> toStoreOrUpdate,
+            Collection<String>     toDelete )
+        throws
+            IOException;
+
     /**
      * Obtain a data element and associated meta-data from the Store, given a key.
      *
@@ -248,6 +282,20 @@ public interface Store
             StoreKeyDoesNotExistException,
             IOException;
 
+    /**
+     * Delete the data elements that are stored using these keys. Keys that do not
+     * exist in the Store are ignored.
+     *
+     * @param keys the keys to the data elements in the Store
+     * @throws IOException thrown if an I/O error occurred
+     *
+     * @see #putOrUpdateAndDeleteAll
+     */
+    public void deleteAll(
+            Collection<String> keys )
+        throws
+            IOException;
+
     /**
      * Remove all data elements in this Store.
      *
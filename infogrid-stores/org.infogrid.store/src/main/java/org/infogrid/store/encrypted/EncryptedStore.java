@@ -17,6 +17,9 @@ package org.infogrid.store.encrypted;
 import java.io.IOException;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 import javax.crypto.Cipher;
 import javax.crypto.NoSuchPaddingException;
 import javax.crypto.SecretKey;
@@ -320,6 +323,50 @@ public class EncryptedStore
                 toStoreOrUpdate.getData() );
     }
 
+    /**
+     * Put or update a number of data elements, and delete a number of others.
+     * The data elements are encrypted and handed to the underlying Store in a single call.
+     *
+     * @param toStoreOrUpdate the StoreValues to store or update
+     * @param toDelete the keys of the data elements to delete
+     * @return for each StoreValue, in sequence, true if the value was updated, false if it was put
+     * @throws IOException thrown if an I/O error occurred
+     */
+    @Override
+    public boolean [] putOrUpdateAndDeleteAll(
+            Collection<StoreValue> toStoreOrUpdate,
+            Collection<String>     toDelete )
+        throws
+            IOException
+    {
+        List<StoreValue> encrypted = new ArrayList<>( toStoreOrUpdate.size() );
+        for( StoreValue current : toStoreOrUpdate ) {
+            encrypted.add( new StoreValue(
+                    current.getKey(),
+                    constructEncodingId( current.getEncodingId() ),
+                    current.getTimeCreated(),
+                    current.getTimeUpdated(),
+                    current.getTimeRead(),
+                    current.getTimeExpires(),
+                    encrypt( current.getData() )));
+        }
+
+        boolean [] ret = theDelegate.putOrUpdateAndDeleteAll( encrypted, toDelete );
+
+        int i = 0;
+        for( StoreValue current : toStoreOrUpdate ) {
+            if( ret[i++] ) {
+                fireUpdatePerformed( current );
+            } else {
+                firePutPerformed( current );
+            }
+        }
+        for( String current : toDelete ) {
+            fireDeletePerformed( current );
+        }
+        return ret;
+    }
+
     /**
      * Obtain a data element and associated meta-data from the Store, given a key.
      *
@@ -15,6 +15,9 @@
 package org.infogrid.store.prefixing;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 import org.infogrid.store.AbstractStore;
 import org.infogrid.store.Store;
 import org.infogrid.store.StoreKeyDoesNotExistException;
@@ -331,6 +334,54 @@ public class PrefixingStore
     }
 
 
+    /**
+     * Put or update a number of data elements, and delete a number of others.
+     * This is handed to the underlying Store in a single call.
+     *
+     * @param toStoreOrUpdate the StoreValues to store or update
+     * @param toDelete the keys of the data elements to delete
+     * @return for each StoreValue, in sequence, true if the value was updated, false if it was put
+     * @throws IOException thrown if an I/O error occurred
+     */
+    @Override
+    public boolean [] putOrUpdateAndDeleteAll(
+            Collection<StoreValue> toStoreOrUpdate,
+            Collection<String>     toDelete )
+        throws
+            IOException
+    {
+        List<StoreValue> delegatedValues = new ArrayList<>( toStoreOrUpdate.size() );
+        for( StoreValue current : toStoreOrUpdate ) {
+            delegatedValues.add( new StoreValue(
+                    constructDelegatedKey( current.getKey() ),
+                    current.getEncodingId(),
+                    current.getTimeCreated(),
+                    current.getTimeUpdated(),
+                    current.getTimeRead(),
+                    current.getTimeExpires(),
+                    current.getData() ));
+        }
+        List<String> delegatedKeys = new ArrayList<>( toDelete.size() );
+        for( String current : toDelete ) {
+            delegatedKeys.add( constructDelegatedKey( current ));
+        }
+
+        boolean [] ret = theDelegate.putOrUpdateAndDeleteAll( delegatedValues, delegatedKeys );
+
+        int i = 0;
+        for( StoreValue current : toStoreOrUpdate ) {
+            if( ret[i++] ) {
+                fireUpdatePerformed( current );
+            } else {
+                firePutPerformed( current );
+            }
+        }
+        for( String current : toDelete ) {
+            fireDeletePerformed( current );
+        }
+        return ret;
+    }
+
     /**
      * Obtain a data element and associated meta-data from the Store, given a key.
      *
@@ -195,7 +195,17 @@ public abstract class StoreBackedSwappingHashMap<K,V>
                 log.error( ex );
             }
             if( ret != null ) {
-                theDelegate.put( key, createReference( key, ret ));
+                synchronized( this ) {
+                    // somebody else may have put or loaded the value while we were decoding
+                    found = theDelegate.get( key );
+                    V current = found != null ? found.get() : null;
+
+                    if( current != null ) {
+                        ret = current;
+                    } else {
+                        theDelegate.put( key, createReference( key, ret ));
+                    }
+                }
             }
         }
         return ret;        
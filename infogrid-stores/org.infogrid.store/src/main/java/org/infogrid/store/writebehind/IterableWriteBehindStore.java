@@ -0,0 +1,149 @@
+//
+// This file is part of InfoGrid(tm). You may not use this file except in
+// compliance with the InfoGrid license. The InfoGrid license and important
+// disclaimers are contained in the file LICENSE.InfoGrid.txt that you should
+// have received with InfoGrid. If you have not received LICENSE.InfoGrid.txt
+// or you do not consent to all aspects of the license and the disclaimers,
+// no license is granted; do not use this file.
+//
+// For more information about InfoGrid go to http://infogrid.org/
+//
+// Copyright 1998-2015 by Johannes Ernst
+// All rights reserved.
+//
+
+
+package org.infogrid.store.writebehind;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import org.infogrid.store.IterableStore;
+import org.infogrid.store.IterableStoreCursor;
+
+/**
+ * A {@link WriteBehindStore} that is also an {@link IterableStore}. All queued changes
+ * are written before the delegate <code>IterableStore</code> is iterated over or counted.
+ */
+public class IterableWriteBehindStore
+        extends
+            WriteBehindStore
+        implements
+            IterableStore
+{
+    /**
+     * Factory method, using the default thresholds.
+     *
+     * @param delegate the IterableStore that this IterableWriteBehindStore delegates to
+     * @return the created IterableWriteBehindStore
+     */
+    public static IterableWriteBehindStore create(
+            IterableStore delegate )
+    {
+        return new IterableWriteBehindStore( delegate, DEFAULT_MAX_DELAY, DEFAULT_MAX_BATCH_SIZE, DEFAULT_MAX_PENDING );
+    }
+
+    /**
+     * Factory method.
+     *
+     * @param delegate the IterableStore that this IterableWriteBehindStore delegates to
+     * @param maxDelay the maximum time, in milliseconds, that a queued value waits before it is written
+     * @param maxBatchSize the number of queued values that causes a batch to be written without further delay
+     * @param maxPending the maximum number of queued values before writers block
+     * @return the created IterableWriteBehindStore
+     */
+    public static IterableWriteBehindStore create(
+            IterableStore delegate,
+            long          maxDelay,
+            int           maxBatchSize,
+            int           maxPending )
+    {
+        return new IterableWriteBehindStore( delegate, maxDelay, maxBatchSize, maxPending );
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param delegate the IterableStore that this IterableWriteBehindStore delegates to
+     * @param maxDelay the maximum time, in milliseconds, that a queued value waits before it is written
+     * @param maxBatchSize the number of queued values that causes a batch to be written without further delay
+     * @param maxPending the maximum number of queued values before writers block
+     */
+    protected IterableWriteBehindStore(
+            IterableStore delegate,
+            long          maxDelay,
+            int           maxBatchSize,
+            int           maxPending )
+    {
+        super( delegate, maxDelay, maxBatchSize, maxPending );
+    }
+
+    /**
+     * Obtain an Iterator over the content of this Store. All queued changes are written first.
+     *
+     * @return the Iterator
+     * @throws UncheckedIOException thrown if the queued changes could not be written
+     */
+    public IterableStoreCursor iterator()
+    {
+        try {
+            flush();
+
+        } catch( IOException ex ) {
+            throw new UncheckedIOException( ex ); // don't iterate over stale data
+        }
+        return ((IterableStore)theDelegate).iterator();
+    }
+
+    /**
+     * Obtain an Iterator over the content of this Store.
+     *
+     * @return the Iterator
+     */
+    public IterableStoreCursor getIterator()
+    {
+        return iterator();
+    }
+
+    /**
+     * Determine the number of StoreValues in this Store.
+     *
+     * @return the number of StoreValues in this Store
+     * @throws IOException thrown if an I/O error occurred
+     */
+    public int size()
+        throws
+            IOException
+    {
+        flush();
+        return ((IterableStore)theDelegate).size();
+    }
+
+    /**
+     * Determine the number of StoreValues in this Store whose key starts with this String.
+     *
+     * @param startsWith the String the key starts with
+     * @return the number of StoreValues in this Store whose key starts with this String
+     * @throws IOException thrown if an I/O error occurred
+     */
+    public int size(
+            String startsWith )
+        throws
+            IOException
+    {
+        flush();
+        return ((IterableStore)theDelegate).size( startsWith );
+    }
+
+    /**
+     * Determine whether this Store is empty.
+     *
+     * @return true if this Store is empty
+     * @throws IOException thrown if an I/O error occurred
+     */
+    public boolean isEmpty()
+        throws
+            IOException
+    {
+        return size() == 0;
+    }
+}
@@ -0,0 +1,829 @@
+//
+// This file is part of InfoGrid(tm). You may not use this file except in
+// compliance with the InfoGrid license. The InfoGrid license and important
+// disclaimers are contained in the file LICENSE.InfoGrid.txt that you should
+// have received with InfoGrid. If you have not received LICENSE.InfoGrid.txt
+// or you do not consent to all aspects of the license and the disclaimers,
+// no license is granted; do not use this file.
+//
+// For more information about InfoGrid go to http://infogrid.org/
+//
+// Copyright 1998-2015 by Johannes Ernst
+// All rights reserved.
+//
+
+package org.infogrid.store.writebehind;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import org.infogrid.store.AbstractStore;
+import org.infogrid.store.Store;
+import org.infogrid.store.StoreKeyDoesNotExistException;
+import org.infogrid.store.StoreKeyExistsAlreadyException;
+import org.infogrid.store.StoreValue;
+import org.infogrid.util.NamedThreadFactory;
+import org.infogrid.util.ResourceHelper;
+import org.infogrid.util.logging.CanBeDumped;
+import org.infogrid.util.logging.Dumper;
+import org.infogrid.util.logging.Log;
+
+/**
+ * <p>This {@link Store} delegates to another <code>Store</code>, but does not wait for
+ * writes to complete. Instead, the values passed to {@link #putOrUpdate putOrUpdate}
+ * and {@link #putOrUpdateAndDeleteAll putOrUpdateAndDeleteAll} are queued, and written
+ * to the delegate <code>Store</code> by a background Thread in a single
+ * <code>putOrUpdateAndDeleteAll</code> call per batch. If a key is written several times
+ * before its batch is written, only the most recent value is written.</p>
+ * <p>Batches are written in the sequence in which they were queued. A batch is written
+ * once it is <code>maxDelay</code> milliseconds old, or once it has
+ * <code>maxBatchSize</code> entries, whichever comes first. If <code>maxPending</code>
+ * entries are queued, writers block until the background Thread has caught up.</p>
+ * <p>Queuing a value never reads the delegate <code>Store</code>. Whether a queued value is
+ * put or updated there is only known once it has been written; StoreListeners are notified
+ * then, on the writing Thread.</p>
+ * <p>Reads are answered from the queue if possible, so clients always see their own writes.
+ * {@link #put put}, {@link #update update} and {@link #delete delete}, which need to know
+ * the state of the delegate <code>Store</code>, first write the queue, as do all operations
+ * on more than one key.</p>
+ * <p>Changes queued in the same call are written in the same batch, unless there are
+ * more than <code>maxPending</code> of them.</p>
+ * <p>If a batch cannot be written, it stays at the head of the queue, and its writing is
+ * retried with increasing delays until it succeeds. Later batches are not written before.
+ * Meanwhile, and after the batch has been written until the failure has been reported
+ * at least once, all writes to this <code>WriteBehindStore</code>, and {@link #flush flush},
+ * throw an <code>IOException</code>. Reads are not affected.</p>
+ */
+public class WriteBehindStore
+        extends
+            AbstractStore
+        implements
+            CanBeDumped
+{
+    private static final Log log = Log.getLogInstance( WriteBehindStore.class ); // our own, private logger
+
+    /**
+     * Factory method, using the default thresholds.
+     *
+     * @param delegate the Store that this WriteBehindStore delegates to
+     * @return the created WriteBehindStore
+     */
+    public static WriteBehindStore create(
+            Store delegate )
+    {
+        return new WriteBehindStore( delegate, DEFAULT_MAX_DELAY, DEFAULT_MAX_BATCH_SIZE, DEFAULT_MAX_PENDING );
+    }
+
+    /**
+     * Factory method.
+     *
+     * @param delegate the Store that this WriteBehindStore delegates to
+     * @param maxDelay the maximum time, in milliseconds, that a queued value waits before it is written
+     * @param maxBatchSize the number of queued values that causes a batch to be written without further delay
+     * @param maxPending the maximum number of queued values before writers block
+     * @return the created WriteBehindStore
+     */
+    public static WriteBehindStore create(
+            Store delegate,
+            long  maxDelay,
+            int   maxBatchSize,
+            int   maxPending )
+    {
+        return new WriteBehindStore( delegate, maxDelay, maxBatchSize, maxPending );
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param delegate the Store that this WriteBehindStore delegates to
+     * @param maxDelay the maximum time, in milliseconds, that a queued value waits before it is written
+     * @param maxBatchSize the number of queued values that causes a batch to be written without further delay
+     * @param maxPending the maximum number of queued values before writers block
+     */
+    protected WriteBehindStore(
+            Store delegate,
+            long  maxDelay,
+            int   maxBatchSize,
+            int   maxPending )
+    {
+        if( maxBatchSize < 1 || maxPending < maxBatchSize ) {
+            throw new IllegalArgumentException( "Invalid thresholds: maxBatchSize " + maxBatchSize + ", maxPending " + maxPending );
+        }
+        theDelegate     = delegate;
+        theMaxDelay     = maxDelay;
+        theMaxBatchSize = maxBatchSize;
+        theMaxPending   = maxPending;
+    }
+
+    /**
+     * Obtain the Store that this WriteBehindStore delegates to.
+     *
+     * @return the delegate Store
+     */
+    public Store getDelegate()
+    {
+        return theDelegate;
+    }
+
+    /**
+     * Initialize the Store. If the Store was initialized earlier, this will delete all
+     * contained information. This operation is similar to unconditionally formatting a hard drive.
+     *
+     * @throws IOException thrown if an I/O error occurred
+     */
+    public void initializeHard()
+            throws
+                IOException
+    {
+        flush();
+        theDelegate.initializeHard();
+    }
+
+    /**
+     * Initialize the Store if needed. If the Store was initialized earlier, this will do
+     * nothing. This operation is equivalent to {@link #initializeHard} if and only if
+     * the Store had not been initialized earlier.
+     *
+     * @throws IOException thrown if an I/O error occurred
+     */
+    public void initializeIfNecessary()
+            throws
+                IOException
+    {
+        flush();
+        theDelegate.initializeIfNecessary();
+    }
+
+    /**
+     * Put a data element into the Store for the first time. Throw an Exception if a data
+     * element has already been store using the same key. This writes through to the
+     * delegate Store.
+     *
+     * @param toStore the StoreValue to store
+     * @throws StoreKeyExistsAlreadyException thrown if a data element is already stored in the Store using this key
+     * @throws IOException thrown if an I/O error occurred
+     *
+     * @see #update if a data element with this key exists already
+     * @see #putOrUpdate if a data element with this key may exist already
+     */
+    public void put(
+            StoreValue toStore )
+        throws
+            StoreKeyExistsAlreadyException,
+            IOException
+    {
+        flush();
+        try {
+            theDelegate.put( toStore );
+
+        } finally {
+            firePutPerformed( toStore );
+        }
+    }
+
+    /**
+     * Update a data element that already exists in the Store, by overwriting it with a new value. Throw an
+     * Exception if a data element with this key does not exist already. This writes through to the
+     * delegate Store.
+     *
+     * @param toUpdate the StoreValue to update
+     * @throws StoreKeyDoesNotExistException thrown if no data element exists in the Store using this key
+     * @throws IOException thrown if an I/O error occurred
+     *
+     * @see #put if a data element with this key does not exist already
+     * @see #putOrUpdate if a data element with this key may exist already
+     */
+    public void update(
+            StoreValue toUpdate )
+        throws
+            StoreKeyDoesNotExistException,
+            IOException
+    {
+        flush();
+        try {
+            theDelegate.update( toUpdate );
+
+        } finally {
+            fireUpdatePerformed( toUpdate );
+        }
+    }
+
+    /**
+     * Put (if does not exist already) or update (if it does exist) a data element in the Store.
+     * The data element is queued, and written later. The delegate Store is not consulted, so
+     * the returned value only reflects the queue; StoreListeners learn whether the value was
+     * put or updated once it has been written.
+     *
+     * @param toStoreOrUpdate the StoreValue to store or update
+     * @return true if a value for this key was queued already, false otherwise
+     * @throws IOException thrown if writing previously queued changes failed
+     *
+     * @see #put if a data element with this key does not exist already
+     * @see #update if a data element with this key exists already
+     */
+    public boolean putOrUpdate(
+            StoreValue toStoreOrUpdate )
+        throws
+            IOException
+    {
+        Map<String,StoreValue> toQueue = new LinkedHashMap<>( 1 );
+        toQueue.put( toStoreOrUpdate.getKey(), toStoreOrUpdate );
+
+        return enqueue( toQueue )[0];
+    }
+
+    /**
+     * Put or update a number of data elements, and delete a number of others.
+     * The changes are queued, and written later in a single call to the delegate Store,
+     * possibly together with other changes. The delegate Store is not consulted, so the
+     * returned values only reflect the queue.
+     *
+     * @param toStoreOrUpdate the StoreValues to store or update
+     * @param toDelete the keys of the data elements to delete
+     * @return for each StoreValue, in sequence, true if a value for this key was queued already, false otherwise
+     * @throws IOException thrown if writing previously queued changes failed
+     */
+    @Override
+    public boolean [] putOrUpdateAndDeleteAll(
+            Collection<StoreValue> toStoreOrUpdate,
+            Collection<String>     toDelete )
+        throws
+            IOException
+    {
+        Map<String,StoreValue> toQueue = new LinkedHashMap<>( toStoreOrUpdate.size() + toDelete.size() );
+        for( StoreValue current : toStoreOrUpdate ) {
+            toQueue.put( current.getKey(), current );
+        }
+        for( String current : toDelete ) {
+            toQueue.put( current, null );
+        }
+
+        boolean [] queued = enqueue( toQueue );
+        boolean [] ret    = new boolean[ toStoreOrUpdate.size() ];
+
+        System.arraycopy( queued, 0, ret, 0, ret.length );
+        return ret;
+    }
+
+    /**
+     * Obtain a data element and associated meta-data from the Store, given a key.
+     * If a value for this key is queued, it is returned without consulting the delegate Store.
+     * A failure to write queued changes is not reported here.
+     *
+     * @param key the key to the data element in the Store
+     * @return the StoreValue stored in the Store for this key; this encapsulates data element and meta-data
+     * @throws StoreKeyDoesNotExistException thrown if currently there is no data element in the Store using this key
+     * @throws IOException thrown if an I/O error occurred
+     *
+     * @see #put to initially store a data element
+     */
+    public StoreValue get(
+            String key )
+        throws
+            StoreKeyDoesNotExistException,
+            IOException
+    {
+        StoreValue ret = null;
+        try {
+            boolean queued = false;
+
+            theLock.lock();
+            try {
+                if( thePending.containsKey( key )) {
+                    ret    = thePending.get( key );
+                    queued = true;
+
+                } else if( theWriting != null && theWriting.containsKey( key )) {
+                    ret    = theWriting.get( key );
+                    queued = true;
+                }
+            } finally {
+                theLock.unlock();
+            }
+
+            if( !queued ) {
+                ret = theDelegate.get( key );
+
+            } else if( ret == null ) {
+                throw new StoreKeyDoesNotExistException( this, key ); // queued for deletion
+            }
+            return ret;
+
+        } finally {
+            if( ret != null ) {
+                fireGetPerformed( ret );
+            } else {
+                fireGetFailed( key );
+            }
+        }
+    }
+
+    /**
+     * Delete the data element that is stored using this key. This writes through to
+     * the delegate Store.
+     *
+     * @param key the key to the data element in the Store
+     * @throws StoreKeyDoesNotExistException thrown if currently there is no data element in the Store using this key
+     * @throws IOException thrown if an I/O error occurred
+     */
+    public void delete(
+            String key )
+        throws
+            StoreKeyDoesNotExistException,
+            IOException
+    {
+        flush();
+        try {
+            theDelegate.delete( key );
+
+        } finally {
+            fireDeletePerformed( key );
+        }
+    }
+
+    /**
+     * Remove all data in this Store whose keys start with this string.
+     *
+     * @param prefix the String the key starts with
+     * @throws IOException thrown if an I/O error occurred
+     */
+    public void deleteAll(
+            String prefix )
+        throws
+            IOException
+    {
+        flush();
+        theDelegate.deleteAll( prefix );
+    }
+
+    /**
+     * Write all changes queued so far to the delegate Store, and wait until that is done.
+     *
+     * @throws IOException thrown if writing the changes queued so far failed
+     */
+    public void flush()
+        throws
+            IOException
+    {
+        waitFor( true );
+    }
+
+    /**
+     * Wait until all changes queued so far have been written to the delegate Store,
+     * without causing them to be written earlier than they would otherwise be.
+     *
+     * @throws IOException thrown if writing the changes queued so far failed
+     */
+    public void awaitDurable()
+        throws
+            IOException
+    {
+        waitFor( false );
+    }
+
+    /**
+     * Determine the number of changes that have been queued but not been written yet.
+     *
+     * @return the number of changes
+     */
+    public int getPendingCount()
+    {
+        theLock.lock();
+        try {
+            return thePending.size() + ( theWriting != null ? theWriting.size() : 0 );
+
+        } finally {
+            theLock.unlock();
+        }
+    }
+
+    /**
+     * Queue a number of changes, blocking while the queue is full.
+     *
+     * @param toQueue the changes, keyed by key, with null meaning delete
+     * @return for each change, in sequence, true if a value for this key was queued already
+     * @throws IOException thrown if writing previously queued changes failed
+     */
+    protected boolean [] enqueue(
+            Map<String,StoreValue> toQueue )
+        throws
+            IOException
+    {
+        boolean [] ret = new boolean[ toQueue.size() ];
+        int        i   = 0;
+
+        if( toQueue.isEmpty() ) {
+            return ret;
+        }
+
+        theLock.lock();
+        try {
+            checkFailure();
+
+            for( Map.Entry<String,StoreValue> current : toQueue.entrySet() ) {
+                String key = current.getKey();
+
+                if( !thePending.containsKey( key )) {
+                    while( thePending.size() >= theMaxPending ) {
+                        // back-pressure: wait for the Thread to take the current batch
+                        checkFailure();
+                        startWriterIfNeeded();
+                        theWritingRequested = true;
+                        theWorkAvailable.signal();
+                        theBatchDone.awaitUninterruptibly();
+                    }
+                    if( thePending.isEmpty() ) {
+                        theBatchStarted = System.currentTimeMillis();
+                    }
+                    ret[i] = theWriting != null && theWriting.get( key ) != null;
+                } else {
+                    ret[i] = thePending.get( key ) != null;
+                }
+                thePending.put( key, current.getValue() ); // last writer wins
+                ++i;
+            }
+            ++theQueuedSequence;
+
+            startWriterIfNeeded();
+            theWorkAvailable.signal();
+
+        } finally {
+            theLock.unlock();
+        }
+        return ret;
+    }
+
+    /**
+     * Wait until the changes queued so far have been written.
+     *
+     * @param force if true, write them right away
+     * @throws IOException thrown if writing the changes failed
+     */
+    protected void waitFor(
+            boolean force )
+        throws
+            IOException
+    {
+        theLock.lock();
+        try {
+            long target = theQueuedSequence;
+
+            checkFailure();
+
+            while( theWrittenSequence < target ) {
+                startWriterIfNeeded();
+                if( force ) {
+                    theWritingRequested = true;
+                    theWorkAvailable.signal();
+                }
+                theBatchDone.awaitUninterruptibly();
+
+                checkFailure();
+            }
+
+        } finally {
+            theLock.unlock();
+        }
+    }
+
+    /**
+     * Report the failure to write a batch, if there is one. The failure is forgotten once
+     * it has been reported and the batch has been written after all. This must be invoked
+     * while holding the lock.
+     *
+     * @throws IOException thrown if writing a batch failed
+     */
+    protected void checkFailure()
+        throws
+            IOException
+    {
+        if( theFailure == null ) {
+            return;
+        }
+        IOException cause = theFailure;
+
+        theFailureReported = true;
+        if( !theWritingFailed ) {
+            theFailure = null;
+        }
+        throw new IOException( "Failed to write queued changes to " + theDelegate, cause );
+    }
+
+    /**
+     * Start the writing Thread, unless it is running already. This must be invoked
+     * while holding the lock.
+     */
+    protected void startWriterIfNeeded()
+    {
+        if( theWriter == null ) {
+            theWriter = theThreadFactory.newThread( this::writeBatches );
+            theWriter.setDaemon( true );
+            theWriter.start();
+        }
+    }
+
+    /**
+     * Write batches to the delegate Store until there is nothing left to do. This
+     * runs on the writing Thread.
+     */
+    protected void writeBatches()
+    {
+        while( true ) {
+            Map<String,StoreValue> batch;
+            long                   sequence;
+
+            theLock.lock();
+            try {
+                long idleSince = System.currentTimeMillis();
+
+                while( true ) {
+                    long now = System.currentTimeMillis();
+                    long wait;
+
+                    if( thePending.isEmpty() ) {
+                        theWritingRequested = false;
+                        wait = idleSince + MAX_IDLE - now;
+                        if( wait <= 0 ) {
+                            theWriter = null;
+                            return; // started again when needed
+                        }
+
+                    } else if( theWritingRequested || thePending.size() >= theMaxBatchSize ) {
+                        break;
+
+                    } else {
+                        wait = theBatchStarted + theMaxDelay - now;
+                        if( wait <= 0 ) {
+                            break;
+                        }
+                    }
+                    try {
+                        theWorkAvailable.await( wait, TimeUnit.MILLISECONDS );
+
+                    } catch( InterruptedException ex ) {
+                        log.warn( ex );
+                    }
+                }
+
+                batch               = thePending;
+                sequence            = theQueuedSequence;
+                thePending          = new LinkedHashMap<>();
+                theWriting          = batch;
+                theWritingRequested = false;
+
+                theBatchDone.signalAll(); // there is room again
+
+            } finally {
+                theLock.unlock();
+            }
+
+            long retryDelay = RETRY_DELAY;
+
+            while( true ) {
+                IOException failure = writeBatch( batch );
+
+                theLock.lock();
+                try {
+                    if( failure == null ) {
+                        if( theFailureReported ) {
+                            theFailure         = null;
+                            theFailureReported = false;
+                        }
+                        theWritingFailed   = false;
+                        theWriting         = null;
+                        theWrittenSequence = sequence;
+
+                        theBatchDone.signalAll();
+                        break;
+                    }
+
+                    // keep the batch at the head of the queue, and try again later
+                    if( theFailure == null ) {
+                        theFailureReported = false;
+                    }
+                    theFailure       = failure;
+                    theWritingFailed = true;
+
+                    theBatchDone.signalAll(); // so waiting clients learn about it
+
+                    try {
+                        theWorkAvailable.await( retryDelay, TimeUnit.MILLISECONDS );
+
+                    } catch( InterruptedException ex ) {
+                        log.warn( ex );
+                    }
+                } finally {
+                    theLock.unlock();
+                }
+                retryDelay = Math.min( 2 * retryDelay, MAX_RETRY_DELAY );
+            }
+        }
+    }
+
+    /**
+     * Write one batch to the delegate Store, and notify StoreListeners of what has been written.
+     *
+     * @param batch the changes, keyed by key, with null meaning delete
+     * @return the IOException that occurred, if any
+     */
+    protected IOException writeBatch(
+            Map<String,StoreValue> batch )
+    {
+        List<StoreValue> toStoreOrUpdate = new ArrayList<>( batch.size() );
+        List<String>     toDelete        = new ArrayList<>();
+
+        for( Map.Entry<String,StoreValue> current : batch.entrySet() ) {
+            if( current.getValue() != null ) {
+                toStoreOrUpdate.add( current.getValue() );
+            } else {
+                toDelete.add( current.getKey() );
+            }
+        }
+        boolean [] updated;
+        try {
+            updated = theDelegate.putOrUpdateAndDeleteAll( toStoreOrUpdate, toDelete );
+
+        } catch( IOException ex ) {
+            log.error( ex );
+            return ex;
+
+        } catch( RuntimeException ex ) {
+            log.error( ex );
+            return new IOException( ex );
+        }
+
+        for( int i=0 ; i<toStoreOrUpdate.size() ; ++i ) {
+            if( updated[i] ) {
+                fireUpdatePerformed( toStoreOrUpdate.get( i ));
+            } else {
+                firePutPerformed( toStoreOrUpdate.get( i ));
+            }
+        }
+        for( String current : toDelete ) {
+            fireDeletePerformed( current );
+        }
+        return null;
+    }
+
+    /**
+     * Dump this object.
+     *
+     * @param d the Dumper to dump to
+     */
+    public void dump(
+            Dumper d )
+    {
+        d.dump( this,
+                new String[] {
+                    "delegate",
+                    "maxDelay",
+                    "maxBatchSize",
+                    "maxPending",
+                    "pending",
+                    "failure"
+                },
+                new Object[] {
+                    theDelegate,
+                    theMaxDelay,
+                    theMaxBatchSize,
+                    theMaxPending,
+                    getPendingCount(),
+                    theFailure
+                });
+    }
+
+    /**
+     * The delegate Store.
+     */
+    protected final Store theDelegate;
+
+    /**
+     * The maximum time, in milliseconds, that a queued value waits before it is written.
+     */
+    protected final long theMaxDelay;
+
+    /**
+     * The number of queued values that causes a batch to be written without further delay.
+     */
+    protected final int theMaxBatchSize;
+
+    /**
+     * The maximum number of queued values before writers block.
+     */
+    protected final int theMaxPending;
+
+    /**
+     * Guards all of the following fields.
+     */
+    protected final ReentrantLock theLock = new ReentrantLock();
+
+    /**
+     * Signaled when changes have been queued, or writing has been requested.
+     */
+    protected final Condition theWorkAvailable = theLock.newCondition();
+
+    /**
+     * Signaled when the writing Thread has taken, or finished writing, a batch.
+     */
+    protected final Condition theBatchDone = theLock.newCondition();
+
+    /**
+     * The queued changes that have not been taken by the writing Thread yet, keyed by key.
+     * A null value means delete.
+     */
+    protected LinkedHashMap<String,StoreValue> thePending = new LinkedHashMap<>();
+
+    /**
+     * The batch currently being written by the writing Thread, if any. If writing it
+     * failed, it stays here until it has been written successfully.
+     */
+    protected Map<String,StoreValue> theWriting;
+
+    /**
+     * The time at which the oldest change in thePending was queued.
+     */
+    protected long theBatchStarted;
+
+    /**
+     * If true, the next batch is to be written without waiting.
+     */
+    protected boolean theWritingRequested;
+
+    /**
+     * Incremented every time changes are queued.
+     */
+    protected long theQueuedSequence;
+
+    /**
+     * All changes queued up to this sequence number have been written.
+     */
+    protected long theWrittenSequence;
+
+    /**
+     * The most recent failure to write a batch, if it has not been reported yet, or if
+     * the batch has not been written yet.
+     */
+    protected IOException theFailure;
+
+    /**
+     * True if theFailure has been reported to a client at least once.
+     */
+    protected boolean theFailureReported;
+
+    /**
+     * True if writing theWriting failed, and is being retried.
+     */
+    protected boolean theWritingFailed;
+
+    /**
+     * The writing Thread, if it is currently running.
+     */
+    protected Thread theWriter;
+
+    /**
+     * Creates the writing Threads.
+     */
+    protected static final NamedThreadFactory theThreadFactory = new NamedThreadFactory( WriteBehindStore.class.getName() );
+
+    /**
+     * Our ResourceHelper.
+     */
+    private static final ResourceHelper theResourceHelper = ResourceHelper.getInstance( WriteBehindStore.class );
+
+    /**
+     * The default maximum time, in milliseconds, that a queued value waits before it is written.
+     */
+    public static final long DEFAULT_MAX_DELAY = theResourceHelper.getResourceLongOrDefault( "MaxDelay", 50L );
+
+    /**
+     * The default number of queued values that causes a batch to be written without further delay.
+     */
+    public static final int DEFAULT_MAX_BATCH_SIZE = theResourceHelper.getResourceIntegerOrDefault( "MaxBatchSize", 500 );
+
+    /**
+     * The default maximum number of queued values before writers block.
+     */
+    public static final int DEFAULT_MAX_PENDING = theResourceHelper.getResourceIntegerOrDefault( "MaxPending", 5000 );
+
+    /**
+     * The time, in milliseconds, that the writing Thread stays around without anything to do.
+     */
+    public static final long MAX_IDLE = theResourceHelper.getResourceLongOrDefault( "MaxIdle", 10000L );
+
+    /**
+     * The time, in milliseconds, after which writing a batch is retried for the first time
+     * after it failed. The delay doubles with each further failure.
+     */
+    public static final long RETRY_DELAY = theResourceHelper.getResourceLongOrDefault( "RetryDelay", 100L );
+
+    /**
+     * The maximum time, in milliseconds, between two attempts to write a batch.
+     */
+    public static final long MAX_RETRY_DELAY = theResourceHelper.getResourceLongOrDefault( "MaxRetryDelay", 10000L );
+}
@@ -0,0 +1,202 @@
+//
+// This file is part of InfoGrid(tm). You may not use this file except in
+// compliance with the InfoGrid license. The InfoGrid license and important
+// disclaimers are contained in the file LICENSE.InfoGrid.txt that you should
+// have received with InfoGrid. If you have not received LICENSE.InfoGrid.txt
+// or you do not consent to all aspects of the license and the disclaimers,
+// no license is granted; do not use this file.
+// 
+// For more information about InfoGrid go to http://infogrid.org/
+//
+// Copyright 1998-2015 by Johannes Ernst
+// All rights reserved.
+//
+
+
+package org.infogrid.store.test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.CountDownLatch;
+import org.infogrid.store.StoreKeyDoesNotExistException;
+import org.infogrid.store.StoreValue;
+import org.infogrid.store.m.MStore;
+import org.infogrid.store.writebehind.IterableWriteBehindStore;
+import org.infogrid.util.logging.Log;
+import org.junit.Test;
+
+/**
+ * Tests the WriteBehindStore: coalescing, read-your-writes, the size and delay thresholds,
+ * and back-pressure.
+ */
+public class WriteBehindStoreTest1
+        extends
+            AbstractStoreTest
+{
+    /**
+     * Run the test.
+     *
+     * @throws Exception all sorts of things may go wrong during a test
+     */
+    @Test
+    public void run()
+        throws
+            Exception
+    {
+        log.info( "Coalescing" );
+
+        CountingStore            delegate = new CountingStore();
+        IterableWriteBehindStore store    = IterableWriteBehindStore.create( delegate, 100000L, 1000, 2000 );
+
+        for( int i=0 ; i<10 ; ++i ) {
+            store.putOrUpdate( createValue( "a", i ));
+        }
+        store.putOrUpdate( createValue( "b", 0 ));
+        store.deleteAll( Arrays.asList( "b" ));
+
+        checkEquals( store.getPendingCount(), 2, "Wrong number of pending changes" );
+        checkEquals( store.get( "a" ).getData()[0], (byte) 9, "Wrong value read from queue" );
+        try {
+            store.get( "b" );
+            reportError( "Deleted value found" );
+        } catch( StoreKeyDoesNotExistException ex ) {
+            // expected
+        }
+        checkEquals( delegate.size(), 0, "Written too early" );
+
+        store.flush();
+
+        checkEquals( delegate.theBatches, 1, "Wrong number of batches" );
+        checkEquals( delegate.get( "a" ).getData()[0], (byte) 9, "Wrong value written" );
+        checkEquals( delegate.size(), 1, "Wrong number of values written" );
+        checkEquals( store.size(), 1, "Wrong size" );
+
+        //
+
+        log.info( "Size threshold" );
+
+        delegate = new CountingStore();
+        store    = IterableWriteBehindStore.create( delegate, 100000L, 10, 20 );
+
+        long start = System.currentTimeMillis();
+        for( int i=0 ; i<10 ; ++i ) {
+            store.putOrUpdate( createValue( "key-" + i, i ));
+        }
+        store.awaitDurable();
+
+        checkCondition( System.currentTimeMillis() - start < 10000L, "Size threshold not honored" );
+        checkEquals( delegate.size(), 10, "Wrong number of values written" );
+
+        //
+
+        log.info( "Delay threshold" );
+
+        delegate = new CountingStore();
+        store    = IterableWriteBehindStore.create( delegate, 200L, 1000, 2000 );
+
+        start = System.currentTimeMillis();
+        store.putOrUpdate( createValue( "c", 3 ));
+        store.awaitDurable();
+
+        long delta = System.currentTimeMillis() - start;
+        checkInRange( delta, 200L, 10000L, "Delay threshold not honored" );
+        checkEquals( delegate.size(), 1, "Value not written" );
+
+        //
+
+        log.info( "Back-pressure" );
+
+        final CountingStore            blockedDelegate = new CountingStore();
+        final IterableWriteBehindStore blockedStore    = IterableWriteBehindStore.create( blockedDelegate, 10L, 1, 5 );
+
+        blockedDelegate.theGate = new CountDownLatch( 1 );
+
+        Thread writer = new Thread() {
+                @Override
+                public void run()
+                {
+                    try {
+                        for( int i=0 ; i<50 ; ++i ) {
+                            blockedStore.putOrUpdate( createValue( "key-" + i, i ));
+                        }
+                    } catch( IOException ex ) {
+                        log.error( ex );
+                    }
+                }
+        };
+        writer.start();
+        writer.join( 1000L );
+
+        checkCondition( writer.isAlive(), "Writer not blocked" );
+        checkCondition( blockedStore.getPendingCount() <= 10, "Too many pending: " + blockedStore.getPendingCount() );
+
+        blockedDelegate.theGate.countDown();
+        writer.join();
+        blockedStore.flush();
+
+        checkEquals( blockedDelegate.size(), 50, "Wrong number of values written" );
+        checkEquals( blockedStore.getPendingCount(), 0, "Still pending" );
+    }
+
+    /**
+     * Create a test StoreValue.
+     *
+     * @param key the key
+     * @param value the single-byte data
+     * @return the StoreValue
+     */
+    protected static StoreValue createValue(
+            String key,
+            int    value )
+    {
+        return new StoreValue( key, ENCODING_ID, 1L, 2L, 3L, -1L, new byte[] { (byte) value } );
+    }
+
+    /**
+     * An MStore that counts the batches written to it, and that can be blocked.
+     */
+    protected static class CountingStore
+            extends
+                MStore
+    {
+        /**
+         * Put or update a number of data elements, and delete a number of others.
+         *
+         * @param toStoreOrUpdate the StoreValues to store or update
+         * @param toDelete the keys of the data elements to delete
+         * @return for each StoreValue, in sequence, true if the value was updated, false if it was put
+         * @throws IOException thrown if an I/O error occurred
+         */
+        @Override
+        public boolean [] putOrUpdateAndDeleteAll(
+                Collection<StoreValue> toStoreOrUpdate,
+                Collection<String>     toDelete )
+            throws
+                IOException
+        {
+            if( theGate != null ) {
+                try {
+                    theGate.await();
+                } catch( InterruptedException ex ) {
+                    throw new IOException( ex );
+                }
+            }
+            ++theBatches;
+            return super.putOrUpdateAndDeleteAll( toStoreOrUpdate, toDelete );
+        }
+
+        /**
+         * If given, writes wait for this to open.
+         */
+        protected volatile CountDownLatch theGate;
+
+        /**
+         * The number of batches written.
+         */
+        protected volatile int theBatches;
+    }
+
+    // Our Logger
+    private static Log log = Log.getLogInstance( WriteBehindStoreTest1.class );
+}
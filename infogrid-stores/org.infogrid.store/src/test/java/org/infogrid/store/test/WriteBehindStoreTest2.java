@@ -0,0 +1,338 @@
+//
+// This file is part of InfoGrid(tm). You may not use this file except in
+// compliance with the InfoGrid license. The InfoGrid license and important
+// disclaimers are contained in the file LICENSE.InfoGrid.txt that you should
+// have received with InfoGrid. If you have not received LICENSE.InfoGrid.txt
+// or you do not consent to all aspects of the license and the disclaimers,
+// no license is granted; do not use this file.
+//
+// For more information about InfoGrid go to http://infogrid.org/
+//
+// Copyright 1998-2015 by Johannes Ernst
+// All rights reserved.
+//
+
+
+package org.infogrid.store.test;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import org.infogrid.store.Store;
+import org.infogrid.store.StoreKeyDoesNotExistException;
+import org.infogrid.store.StoreListener;
+import org.infogrid.store.StoreValue;
+import org.infogrid.store.m.MStore;
+import org.infogrid.store.writebehind.IterableWriteBehindStore;
+import org.infogrid.util.logging.Log;
+import org.junit.Test;
+
+/**
+ * Tests the WriteBehindStore: put vs. update against the delegate Store, and
+ * retrying and reporting batches that could not be written.
+ */
+public class WriteBehindStoreTest2
+        extends
+            AbstractStoreTest
+{
+    /**
+     * Run the test.
+     *
+     * @throws Exception all sorts of things may go wrong during a test
+     */
+    @Test
+    public void run()
+        throws
+            Exception
+    {
+        log.info( "Put vs. update" );
+
+        FailingStore             delegate = new FailingStore();
+        IterableWriteBehindStore store    = IterableWriteBehindStore.create( delegate, 100000L, 1000, 2000 );
+
+        RecordingListener listener = new RecordingListener();
+        store.addDirectStoreListener( listener );
+
+        delegate.put( WriteBehindStoreTest1.createValue( "existing", 1 ));
+        delegate.theGetCount = 0;
+
+        checkCondition( !store.putOrUpdate( WriteBehindStoreTest1.createValue( "existing", 2 )), "Value reported as queued" );
+        checkCondition( !store.putOrUpdate( WriteBehindStoreTest1.createValue( "new",      3 )), "Value reported as queued" );
+        checkCondition(  store.putOrUpdate( WriteBehindStoreTest1.createValue( "new",      4 )), "Queued value not reported" );
+        checkEquals( delegate.theGetCount, 0, "Delegate read while queuing" );
+        checkEquals( listener.theUpdated.size() + listener.thePut.size(), 0, "Listener notified before writing" );
+
+        store.flush();
+
+        checkEquals( listener.theUpdated.toString(), "[existing]", "Wrong values updated" );
+        checkEquals( listener.thePut.toString(),     "[new]",      "Wrong values put" );
+
+        store.putOrUpdate( WriteBehindStoreTest1.createValue( "new", 5 ));
+        store.flush();
+
+        checkEquals( listener.theUpdated.toString(), "[existing, new]", "Written value not updated" );
+        checkEquals( delegate.theGetCount, 0, "Delegate read while queuing" );
+        store.removeStoreListener( listener );
+
+        //
+
+        log.info( "Failure is retried and reported" );
+
+        delegate.theFail = true;
+        store.putOrUpdate( WriteBehindStoreTest1.createValue( "a", 1 ));
+
+        try {
+            store.flush();
+            reportError( "Failure not reported by flush" );
+        } catch( IOException ex ) {
+            // expected
+        }
+        try {
+            checkEquals( store.get( "a" ).getData()[0], (byte) 1, "Wrong value read from failed batch" );
+        } catch( StoreKeyDoesNotExistException ex ) {
+            reportError( "Failed batch dropped" );
+        } catch( IOException ex ) {
+            reportError( "Failure reported by get" );
+        }
+        try {
+            store.putOrUpdate( WriteBehindStoreTest1.createValue( "b", 2 ));
+            reportError( "Failure not reported by putOrUpdate" );
+        } catch( IOException ex ) {
+            // expected
+        }
+        try {
+            store.iterator();
+            reportError( "Failure not reported by iterator" );
+        } catch( UncheckedIOException ex ) {
+            // expected
+        }
+        sleepFor( 500L );
+        checkCondition( delegate.theAttempts > 1, "Not retried" );
+        checkEquals( store.getPendingCount(), 1, "Failed batch not kept" );
+
+        delegate.theFail = false;
+        waitForWritten( delegate, "a" );
+
+        store.flush(); // reported already, and written now
+        checkEquals( store.get( "a" ).getData()[0], (byte) 1, "Wrong value" );
+        checkEquals( store.getPendingCount(), 0, "Still pending" );
+
+        //
+
+        log.info( "Failure is sticky until reported" );
+
+        delegate = new FailingStore();
+        store    = IterableWriteBehindStore.create( delegate, 10L, 1000, 2000 );
+
+        delegate.theFail = true;
+        store.putOrUpdate( WriteBehindStoreTest1.createValue( "c", 3 ));
+        store.putOrUpdate( WriteBehindStoreTest1.createValue( "d", 4 ));
+
+        while( delegate.theAttempts == 0 ) {
+            sleepFor( 20L );
+        }
+        delegate.theFail = false;
+        waitForWritten( delegate, "d" );
+
+        checkEquals( store.get( "c" ).getData()[0], (byte) 3, "Wrong value read after retry succeeded" );
+        try {
+            store.flush();
+            reportError( "Failure not reported after retry succeeded" );
+        } catch( IOException ex ) {
+            // expected
+        }
+        store.putOrUpdate( WriteBehindStoreTest1.createValue( "e", 5 ));
+        store.flush();
+    }
+
+    /**
+     * Wait until the delegate has a value for this key.
+     *
+     * @param delegate the delegate Store
+     * @param key the key
+     * @throws Exception all sorts of things may go wrong during a test
+     */
+    protected void waitForWritten(
+            FailingStore delegate,
+            String       key )
+        throws
+            Exception
+    {
+        long until = System.currentTimeMillis() + 30000L;
+
+        while( System.currentTimeMillis() < until ) {
+            try {
+                delegate.get( key );
+                return;
+
+            } catch( StoreKeyDoesNotExistException ex ) {
+                sleepFor( 50L );
+            }
+        }
+        reportError( "Not written: " + key );
+    }
+
+    /**
+     * An MStore whose writes fail on request.
+     */
+    protected static class FailingStore
+            extends
+                MStore
+    {
+        /**
+         * Put or update a number of data elements, and delete a number of others.
+         *
+         * @param toStoreOrUpdate the StoreValues to store or update
+         * @param toDelete the keys of the data elements to delete
+         * @return for each StoreValue, in sequence, true if the value was updated, false if it was put
+         * @throws IOException thrown if an I/O error occurred
+         */
+        @Override
+        public boolean [] putOrUpdateAndDeleteAll(
+                Collection<StoreValue> toStoreOrUpdate,
+                Collection<String>     toDelete )
+            throws
+                IOException
+        {
+            ++theAttempts;
+            if( theFail ) {
+                throw new IOException( "Failing on purpose" );
+            }
+            return super.putOrUpdateAndDeleteAll( toStoreOrUpdate, toDelete );
+        }
+
+        /**
+         * Obtain a data element, and count.
+         *
+         * @param key the key
+         * @return the StoreValue
+         * @throws StoreKeyDoesNotExistException thrown if there is no data element with this key
+         * @throws IOException thrown if an I/O error occurred
+         */
+        @Override
+        public StoreValue get(
+                String key )
+            throws
+                StoreKeyDoesNotExistException,
+                IOException
+        {
+            ++theGetCount;
+            return super.get( key );
+        }
+
+        /**
+         * If true, writes fail.
+         */
+        protected volatile boolean theFail;
+
+        /**
+         * The number of attempts to write a batch.
+         */
+        protected volatile int theAttempts;
+
+        /**
+         * The number of reads.
+         */
+        protected volatile int theGetCount;
+    }
+
+    /**
+     * Records which keys were put and updated.
+     */
+    protected static class RecordingListener
+            implements
+                StoreListener
+    {
+        /**
+         * A put operation was performed.
+         *
+         * @param store the Store that emitted this event
+         * @param value the StoreValue that was put
+         */
+        @Override
+        public void putPerformed(
+                Store      store,
+                StoreValue value )
+        {
+            thePut.add( value.getKey() );
+        }
+
+        /**
+         * An update operation was performed.
+         *
+         * @param store the Store that emitted this event
+         * @param value the StoreValue that was updated
+         */
+        @Override
+        public void updatePerformed(
+                Store      store,
+                StoreValue value )
+        {
+            theUpdated.add( value.getKey() );
+        }
+
+        /**
+         * Ignored.
+         *
+         * @param store the Store that emitted this event
+         * @param value the StoreValue that was read
+         */
+        @Override
+        public void getPerformed(
+                Store      store,
+                StoreValue value )
+        {}
+
+        /**
+         * Ignored.
+         *
+         * @param store the Store that emitted this event
+         * @param key the key that was not found
+         */
+        @Override
+        public void getFailed(
+                Store  store,
+                String key )
+        {}
+
+        /**
+         * Ignored.
+         *
+         * @param store the Store that emitted this event
+         * @param key the key that was deleted
+         */
+        @Override
+        public void deletePerformed(
+                Store  store,
+                String key )
+        {}
+
+        /**
+         * Ignored.
+         *
+         * @param store the Store that emitted this event
+         * @param prefix the prefix of the deleted keys
+         */
+        @Override
+        public void deleteAllPerformed(
+                Store  store,
+                String prefix )
+        {}
+
+        /**
+         * The keys that were put.
+         */
+        protected final List<String> thePut = Collections.synchronizedList( new ArrayList<>() );
+
+        /**
+         * The keys that were updated.
+         */
+        protected final List<String> theUpdated = Collections.synchronizedList( new ArrayList<>() );
+    }
+
+    // Our Logger
+    private static Log log = Log.getLogInstance( WriteBehindStoreTest2.class );
+}
@@ -264,6 +264,30 @@ public abstract class AbstractStructuredResponseTemplate
         }
     }
 
+    /**
+     * Default implementation for how to emit the headers that allow the client to validate
+     * its copy of the response later.
+     *
+     * @param delegate the underlying HttpServletResponse
+     * @param structured the StructuredResponse that contains the response
+     * @throws IOException thrown if an I/O error occurred
+     */
+    protected void outputValidators(
+            HttpServletResponse delegate,
+            StructuredResponse  structured )
+        throws
+            IOException
+    {
+        String entityTag = structured.getEntityTag();
+        if( entityTag != null ) {
+            delegate.setHeader( "ETag", entityTag );
+        }
+        long lastModified = structured.getLastModified();
+        if( lastModified > 0 ) {
+            delegate.setDateHeader( "Last-Modified", lastModified );
+        }
+    }
+
     /**
      * Dump this object.
      *
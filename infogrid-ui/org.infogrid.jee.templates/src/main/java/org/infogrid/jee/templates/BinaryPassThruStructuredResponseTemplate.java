@@ -86,6 +86,7 @@ public class BinaryPassThruStructuredResponseTemplate
         outputMimeType(          delegate, structured );
         outputLocation(          delegate, structured );
         outputAdditionalHeaders( delegate, structured );
+        outputValidators( delegate, structured );
         
         byte [] binaryContent = structured.getDefaultBinarySection().getContent();
         if( binaryContent != null ) {
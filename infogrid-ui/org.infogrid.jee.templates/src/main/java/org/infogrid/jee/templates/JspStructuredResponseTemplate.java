@@ -109,6 +109,7 @@ public class JspStructuredResponseTemplate
         outputMimeType(    delegate, structured );
         outputLocation(    delegate, structured );
         outputAdditionalHeaders( delegate, structured );
+        outputValidators( delegate, structured );
 
         Object oldStructured = theRequest.getAttribute( StructuredResponse.STRUCTURED_RESPONSE_ATTRIBUTE_NAME );
         try {
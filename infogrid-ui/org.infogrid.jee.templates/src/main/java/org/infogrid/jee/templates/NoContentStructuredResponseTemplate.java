@@ -96,6 +96,7 @@ public class NoContentStructuredResponseTemplate
         outputMimeType(    delegate, structured );
         outputLocation(    delegate, structured );
         outputAdditionalHeaders( delegate, structured );
+        outputValidators( delegate, structured );
         
         // stream nothing
     }
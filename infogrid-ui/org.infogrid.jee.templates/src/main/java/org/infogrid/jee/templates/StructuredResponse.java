@@ -14,6 +14,11 @@
 
 package org.infogrid.jee.templates;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
@@ -24,8 +29,10 @@ import java.util.Map;
 import javax.servlet.ServletContext;
 import javax.servlet.ServletException;
 import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import org.infogrid.jee.ProblemReporter;
+import org.infogrid.jee.servlet.BufferedServletResponse;
 import org.infogrid.util.ArrayHelper;
 import org.infogrid.util.ResourceHelper;
 import org.infogrid.util.http.SaneRequestUtils;
@@ -805,6 +812,247 @@ public class StructuredResponse
         return theOutgoingHeaders;
     }
 
+    /**
+     * Obtain the entity tag that validates this StructuredResponse, if any.
+     *
+     * @return the entity tag, in the format of the ETag HTTP header, or null
+     */
+    public String getEntityTag()
+    {
+        return theEntityTag;
+    }
+
+    /**
+     * Set the entity tag that validates this StructuredResponse. This must change whenever
+     * the content of the StructuredResponse would change.
+     *
+     * @param newValue the new value, in the format of the ETag HTTP header, or null
+     * @see #createEntityTag
+     */
+    public void setEntityTag(
+            String newValue )
+    {
+        theEntityTag = newValue;
+    }
+
+    /**
+     * Obtain the time at which the content of this StructuredResponse was last modified, if known.
+     *
+     * @return the time, in System.currentTimeMillis() format, or -1 if not known
+     */
+    public long getLastModified()
+    {
+        return theLastModified;
+    }
+
+    /**
+     * Set the time at which the content of this StructuredResponse was last modified.
+     *
+     * @param newValue the time, in System.currentTimeMillis() format, or -1 if not known
+     */
+    public void setLastModified(
+            long newValue )
+    {
+        theLastModified = newValue;
+    }
+
+    /**
+     * Determine whether the client already has the current content of this StructuredResponse,
+     * given the entity tag set previously. If so, the StructuredResponse turns into a
+     * 304 Not Modified response, and does not need to be rendered.
+     *
+     * @param request the incoming request
+     * @return true if the client already has the current content
+     */
+    public boolean checkNotModified(
+            HttpServletRequest request )
+    {
+        if( theEntityTag == null ) {
+            return false;
+        }
+        if( haveProblemsBeenReported() || haveInfoMessagesBeenReported() ) {
+            return false; // those need to be shown
+        }
+        String ifNoneMatch = request.getHeader( "If-None-Match" );
+        if( ifNoneMatch == null ) {
+            return false;
+        }
+
+        String opaque = stripWeak( theEntityTag );
+        for( String candidate : ifNoneMatch.split( "," )) {
+            candidate = stripWeak( candidate.trim() ); // If-None-Match uses the weak comparison
+            if( "*".equals( candidate ) || opaque.equals( candidate )) {
+                theIsNotModified    = true;
+                theHttpResponseCode = HttpServletResponse.SC_NOT_MODIFIED;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Remove the weakness indicator from an entity tag, if present.
+     *
+     * @param tag the entity tag
+     * @return the opaque part of the entity tag
+     */
+    protected static String stripWeak(
+            String tag )
+    {
+        if( tag.startsWith( "W/" )) {
+            return tag.substring( 2 );
+        }
+        return tag;
+    }
+
+    /**
+     * Determine whether this StructuredResponse is a 304 Not Modified response that
+     * does not need to be rendered.
+     *
+     * @return true if it is
+     * @see #checkNotModified
+     */
+    public boolean isNotModified()
+    {
+        return theIsNotModified;
+    }
+
+    /**
+     * Determine whether all content of this StructuredResponse is text.
+     *
+     * @return true if no binary section has any content
+     */
+    public boolean isText()
+    {
+        for( BinaryStructuredResponseSection current : theBinarySections.values() ) {
+            if( !current.isEmpty() ) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Create a weak entity tag from the things that determine the content of a StructuredResponse.
+     * Entity tags created by different instances of the application never match, so
+     * changed templates take effect after a restart.
+     *
+     * @param components the things that determine the content, such as identifiers and time stamps
+     * @return the entity tag, in the format of the ETag HTTP header
+     */
+    public static String createEntityTag(
+            Object... components )
+    {
+        try {
+            MessageDigest digest = MessageDigest.getInstance( "SHA-1" );
+            digest.update( INSTANCE_NONCE.getBytes( StandardCharsets.UTF_8 ));
+
+            for( Object current : components ) {
+                digest.update( (byte) 0 ); // separator, so "ab","c" differs from "a","bc"
+                if( current != null ) {
+                    digest.update( current.toString().getBytes( StandardCharsets.UTF_8 ));
+                }
+            }
+
+            StringBuilder ret = new StringBuilder();
+            ret.append( "W/\"" );
+            for( byte b : digest.digest() ) {
+                ret.append( Character.forDigit( ( b >> 4 ) & 0xf, 16 ));
+                ret.append( Character.forDigit( b & 0xf, 16 ));
+            }
+            ret.append( '"' );
+            return ret.toString();
+
+        } catch( NoSuchAlgorithmException ex ) {
+            log.error( ex ); // every Java platform is required to support SHA-1
+            return null;
+        }
+    }
+
+    /**
+     * Set the BufferedServletResponse through which the content of this StructuredResponse
+     * is streamed if {@link #startStreaming} is invoked.
+     *
+     * @param newValue the BufferedServletResponse
+     */
+    public void setBufferedResponse(
+            BufferedServletResponse newValue )
+    {
+        theBufferedResponse = newValue;
+    }
+
+    /**
+     * Stop assembling this StructuredResponse in memory, and stream the content instead.
+     * The status code, MIME type, cookies and headers set on this StructuredResponse so far are
+     * sent right away, and the returned OutputStream writes to the client
+     * through a buffer of bounded size. Problems reported after this call cannot be shown to the user
+     * any more, and the sections of this StructuredResponse are ignored.
+     * This is meant for Viewlets that emit large documents, such as exports of an entire MeshBase.
+     * Invoking this more than once returns the same OutputStream.
+     *
+     * @return the OutputStream to write the content to
+     * @throws IOException thrown if an I/O error occurred
+     */
+    public OutputStream startStreaming()
+        throws
+            IOException
+    {
+        if( theStreamingOutputStream != null ) {
+            return theStreamingOutputStream;
+        }
+
+        HttpServletResponse target = theBufferedResponse != null ? theBufferedResponse : theDelegate;
+
+        if( theHttpResponseCode > 0 ) {
+            target.setStatus( theHttpResponseCode );
+        }
+        if( theMimeType != null ) {
+            target.setContentType( theMimeType );
+        }
+        if( theCharacterEncoding != null ) {
+            target.setCharacterEncoding( theCharacterEncoding );
+        }
+        if( theLocale != null ) {
+            target.setLocale( theLocale );
+        }
+        if( theLocation != null ) {
+            target.setHeader( "Location", theLocation );
+        }
+        for( Cookie current : theCookies ) {
+            target.addCookie( current );
+        }
+        for( Map.Entry<String,String[]> current : theOutgoingHeaders.entrySet() ) {
+            for( String value : current.getValue() ) {
+                target.addHeader( current.getKey(), value );
+            }
+        }
+        if( theEntityTag != null ) {
+            target.setHeader( "ETag", theEntityTag );
+        }
+        if( theLastModified > 0 ) {
+            target.setDateHeader( "Last-Modified", theLastModified );
+        }
+
+        if( theBufferedResponse != null ) {
+            theBufferedResponse.startStreaming( STREAMING_BUFFER_SIZE );
+        } else if( !theDelegate.isCommitted() ) {
+            theDelegate.setBufferSize( STREAMING_BUFFER_SIZE );
+        }
+        theStreamingOutputStream = target.getOutputStream();
+
+        return theStreamingOutputStream;
+    }
+
+    /**
+     * Determine whether the content of this StructuredResponse is being streamed.
+     *
+     * @return true if {@link #startStreaming} has been invoked
+     */
+    public boolean isStreaming()
+    {
+        return theStreamingOutputStream != null;
+    }
+
     /**
      * Determine whether this StructuredResponse is empty.
      * 
@@ -855,7 +1103,10 @@ public class StructuredResponse
                     "theHttpResponseCode",
                     "theLocale",
                     "theCharacterEncoding",
-                    "theOutgoingHeaders"
+                    "theOutgoingHeaders",
+                    "theEntityTag",
+                    "theLastModified",
+                    "isStreaming()"
                 },
                 new Object [] {
                     theRequestedTemplateName,
@@ -867,7 +1118,10 @@ public class StructuredResponse
                     theHttpResponseCode,
                     theLocale,
                     theCharacterEncoding,
-                    theOutgoingHeaders
+                    theOutgoingHeaders,
+                    theEntityTag,
+                    theLastModified,
+                    isStreaming()
                 });
     }
 
@@ -953,6 +1207,31 @@ public class StructuredResponse
      */
     protected HashMap<String,String[]> theOutgoingHeaders = new HashMap<String,String[]>();
 
+    /**
+     * The entity tag that validates this StructuredResponse, if any.
+     */
+    protected String theEntityTag;
+
+    /**
+     * The time at which the content of this StructuredResponse was last modified, or -1 if not known.
+     */
+    protected long theLastModified = -1L;
+
+    /**
+     * True if the client already has the current content of this StructuredResponse.
+     */
+    protected boolean theIsNotModified;
+
+    /**
+     * The BufferedServletResponse through which content is streamed, if any.
+     */
+    protected BufferedServletResponse theBufferedResponse;
+
+    /**
+     * The OutputStream to which content is streamed, once streaming has started.
+     */
+    protected OutputStream theStreamingOutputStream;
+
     /**
      * Name of the request attribute that contains the StructuredResponse. Make sure
      * this constant does not contain any characters that might make some processor
@@ -976,6 +1255,16 @@ public class StructuredResponse
      */
     public static final int DEFAULT_MAX_INFO_MESSAGES = theResourceHelper.getResourceIntegerOrDefault( "DefaultMaxInfoMessages", 20 );
 
+    /**
+     * The size of the buffer, in bytes, used when streaming content.
+     */
+    public static final int STREAMING_BUFFER_SIZE = theResourceHelper.getResourceIntegerOrDefault( "StreamingBufferSize", 8192 );
+
+    /**
+     * Mixed into all entity tags, so they do not survive a restart of the application.
+     */
+    private static final String INSTANCE_NONCE = String.valueOf( System.currentTimeMillis() );
+
 
     /**
      * The single default section for text content. Output will be written into this section
@@ -105,6 +105,7 @@ public class VerbatimStructuredResponseTemplate
         outputMimeType(    delegate, structured );
         outputLocation(    delegate, structured );
         outputAdditionalHeaders( delegate, structured );
+        outputValidators( delegate, structured );
         
         // stream default section(s)
         
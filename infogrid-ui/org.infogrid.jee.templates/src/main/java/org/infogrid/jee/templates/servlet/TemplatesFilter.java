@@ -15,6 +15,7 @@
 package org.infogrid.jee.templates.servlet;
 
 import java.io.IOException;
+import java.util.Iterator;
 import javax.servlet.FilterChain;
 import javax.servlet.ServletContext;
 import javax.servlet.ServletException;
@@ -28,10 +29,12 @@ import org.infogrid.jee.app.InfoGridWebApp;
 import org.infogrid.jee.sane.SaneServletRequest;
 import org.infogrid.jee.servlet.AbstractInfoGridWebAppFilter;
 import org.infogrid.jee.servlet.BufferedServletResponse;
+import org.infogrid.jee.servlet.GzipServletResponse;
 import org.infogrid.jee.templates.StructuredResponse;
 import org.infogrid.jee.templates.StructuredResponseTemplate;
 import org.infogrid.jee.templates.StructuredResponseTemplateFactory;
 import org.infogrid.util.FactoryException;
+import org.infogrid.util.ResourceHelper;
 import org.infogrid.util.context.Context;
 import org.infogrid.util.context.ContextDirectory;
 import org.infogrid.util.http.SaneRequest;
@@ -95,6 +98,8 @@ public class TemplatesFilter
 
         BufferedServletResponse bufferedResponse = new BufferedServletResponse( realResponse );
         Throwable               lastException    = null;
+
+        structured.setBufferedResponse( bufferedResponse );
         try {
             chain.doFilter( request, bufferedResponse );
 
@@ -112,6 +117,16 @@ public class TemplatesFilter
             request.removeAttribute( StructuredResponse.STRUCTURED_RESPONSE_ATTRIBUTE_NAME );
         }
 
+        if( bufferedResponse.isStreaming() ) {
+            // content has been sent already, it is too late to render problems; lastException has been logged above
+            Iterator<Throwable> problemIter = structured.problemsAggregate();
+            while( problemIter.hasNext() ) {
+                getLog().error( "Problem reported after streaming started", problemIter.next() );
+            }
+            bufferedResponse.copyTo( realResponse );
+            return;
+        }
+
         if( lastException != null ) {
             structured.reportProblem( lastException );
         }
@@ -137,17 +152,73 @@ public class TemplatesFilter
                 realResponse.addCookie( current );
             }
 
+            if( structured.isNotModified() ) {
+                // the client has it already, no need to render
+                realResponse.setStatus( HttpServletResponse.SC_NOT_MODIFIED );
+                realResponse.setHeader( "ETag", structured.getEntityTag() );
+                return;
+            }
+
+            GzipServletResponse gzipResponse = null;
+            if( GZIP_TEXT && structured.isText() ) {
+                realResponse.addHeader( "Vary", "Accept-Encoding" );
+
+                if( acceptsGzip( realRequest )) {
+                    gzipResponse = GzipServletResponse.create( realResponse );
+                }
+            }
+
             try {
                 StructuredResponseTemplateFactory templateFactory = c.findContextObjectOrThrow( StructuredResponseTemplateFactory.class );
                 StructuredResponseTemplate        template        = templateFactory.obtainFor( saneRequest, structured );
 
-                template.doOutput( realResponse, structured );
+                if( gzipResponse != null ) {
+                    template.doOutput( gzipResponse, structured );
+                    gzipResponse.finish();
+                } else {
+                    template.doOutput( realResponse, structured );
+                }
 
             } catch( FactoryException ex ) {
                 throw new ServletException( ex );
             }
         }
     }
+
+    /**
+     * Determine whether the client accepts gzip-compressed responses.
+     *
+     * @param request the incoming request
+     * @return true if the client accepts gzip-compressed responses
+     */
+    protected boolean acceptsGzip(
+            HttpServletRequest request )
+    {
+        String acceptEncoding = request.getHeader( "Accept-Encoding" );
+        if( acceptEncoding == null ) {
+            return false;
+        }
+        for( String current : acceptEncoding.split( "," )) {
+            String [] parts = current.trim().split( ";" );
+            String    name  = parts[0].trim();
+
+            if( !"gzip".equalsIgnoreCase( name ) && !"x-gzip".equalsIgnoreCase( name )) {
+                continue;
+            }
+            for( int i=1 ; i<parts.length ; ++i ) {
+                String par = parts[i].trim();
+                if( par.startsWith( "q=" )) {
+                    try {
+                        return Float.parseFloat( par.substring( 2 )) > 0.f;
+                    } catch( NumberFormatException ex ) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+        return false;
+    }
     
     /**
      * Overridable method to create a structured response.
@@ -196,4 +267,14 @@ public class TemplatesFilter
      * </ol>
      */
     public static final String LID_APPLICATION_CONTEXT_PARAMETER_NAME = "lid-appcontext";
+
+    /**
+     * Our ResourceHelper.
+     */
+    private static final ResourceHelper theResourceHelper = ResourceHelper.getInstance( TemplatesFilter.class );
+
+    /**
+     * If true, text responses are gzip-compressed for clients that accept it.
+     */
+    public static final boolean GZIP_TEXT = theResourceHelper.getResourceBooleanOrDefault( "GzipText", true );
 }
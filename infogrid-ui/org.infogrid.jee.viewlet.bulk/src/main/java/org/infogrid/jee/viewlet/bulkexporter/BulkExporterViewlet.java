@@ -95,9 +95,9 @@ public class BulkExporterViewlet
     }
 
     /**
-     * Process the incoming request. 
-     * Set the mime type in the real response so the structured response remains empty.
-     * Stream out the XML.
+     * Process the incoming request.
+     * Switch the structured response into streaming mode and stream out the XML,
+     * so the size of the MeshBase does not determine the amount of memory needed.
      *
      * @param request the incoming request
      * @param structured the StructuredResponse into which to write the result
@@ -112,10 +112,10 @@ public class BulkExporterViewlet
             ServletException,
             IOException
     {
-        HttpServletResponse response = structured.getDelegate();
-        response.setContentType(MIME_TYPE);
+        structured.setHttpResponseCode(HttpServletResponse.SC_OK);
+        structured.setMimeType(MIME_TYPE);
         BulkExternalizedMeshObjectXmlEncoder theParser = new BulkExternalizedMeshObjectXmlEncoder();
-        OutputStream outStream = response.getOutputStream();
+        OutputStream outStream = structured.startStreaming();
         outStream.write(XML.getBytes( "UTF-8" ));
         IterableMeshBase meshBase = (IterableMeshBase) getSubject().getMeshBase(); // derive from the subject, so we can do any MeshBase
         CursorIterator<MeshObject> ret = meshBase.iterator();
@@ -124,6 +124,7 @@ public class BulkExporterViewlet
         } catch (EncodingException ex) {
             log.error(ex);
         }
+        outStream.flush();
     }
 
     /**
@@ -106,8 +106,8 @@ public class JsonViewlet
 
     /**
      * Process the incoming request.
-     * Set the mime type in the real response so the structured response remains empty.
-     * Stream out the json.
+     * Switch the structured response into streaming mode and stream out the json,
+     * so the size of the graph does not determine the amount of memory needed.
      *
      * @param request the incoming request
      * @param structured the StructuredResponse into which to write the result
@@ -121,9 +121,8 @@ public class JsonViewlet
             throws
             ServletException,
             IOException {
-        HttpServletResponse response = structured.getDelegate();
-        response.setStatus(HttpServletResponse.SC_OK);
-        response.setContentType(MIME_TYPE);
+        structured.setHttpResponseCode(HttpServletResponse.SC_OK);
+        structured.setMimeType(MIME_TYPE);
         MeshObjectJsonEncoder theParser = MeshObjectJsonEncoder.create(structured, request, getContext());
         theParser.write(getViewedMeshObjects().getSubject());
     }
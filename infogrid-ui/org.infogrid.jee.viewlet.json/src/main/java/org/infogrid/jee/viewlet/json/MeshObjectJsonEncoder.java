@@ -96,8 +96,7 @@ public class MeshObjectJsonEncoder
             Context ctxt)
             throws IOException {
         super(ctxt);
-        HttpServletResponse response = structured.getDelegate();
-        OutputStream theOutputStream = response.getOutputStream();
+        OutputStream theOutputStream = structured.startStreaming();
         this.theSaneRequest = saneRequest;
         this.theJsonFactory = new JsonFactory();
         this.theJsonGenerator = theJsonFactory.createJsonGenerator(theOutputStream, JsonEncoding.UTF8);
@@ -106,7 +105,7 @@ public class MeshObjectJsonEncoder
             getAttributes();
             theVisitedMeshObjects = new HashSet<MeshObject>();
         } catch (AttributeValueException ex) {
-            response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+            structured.getDelegate().setStatus(HttpServletResponse.SC_BAD_REQUEST); // not committed yet, nothing has been written
             errorOut(ex);
         }
     }
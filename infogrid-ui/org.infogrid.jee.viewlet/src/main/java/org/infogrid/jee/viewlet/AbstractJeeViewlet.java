@@ -24,6 +24,7 @@ import org.infogrid.jee.taglib.viewlet.IncludeViewletTag;
 import org.infogrid.jee.templates.StructuredResponse;
 import org.infogrid.jee.templates.TextStructuredResponseSection;
 import org.infogrid.jee.templates.utils.JeeTemplateUtils;
+import org.infogrid.mesh.MeshObject;
 import org.infogrid.util.ResourceHelper;
 import org.infogrid.util.context.Context;
 import org.infogrid.util.http.HTTP;
@@ -103,6 +104,18 @@ public abstract class AbstractJeeViewlet
         return ret;
     }
 
+    /**
+     * Determine the MeshObjects whose state, together with the request, completely determines
+     * the output of this JeeViewlet. By default, the output cannot be validated: most Viewlets
+     * show more than their subject, so subclasses need to opt in.
+     *
+     * @return the MeshObjects, or null if the output cannot be validated this way
+     */
+    public MeshObject [] getValidatingMeshObjects()
+    {
+        return null;
+    }
+
     /**
      * <p>Invoked prior to the execution of the Servlet if the GET method has been requested.
      *    It is the hook by which the JeeViewlet can perform whatever operations needed prior to
@@ -19,6 +19,7 @@ import java.util.Deque;
 import javax.servlet.ServletException;
 import org.infogrid.jee.security.UnsafePostException;
 import org.infogrid.jee.templates.StructuredResponse;
+import org.infogrid.mesh.MeshObject;
 import org.infogrid.util.http.SaneRequest;
 import org.infogrid.viewlet.Viewlet;
 
@@ -72,6 +73,16 @@ public interface JeeViewlet
      */
     public String getHtmlClass();
 
+    /**
+     * Determine the MeshObjects whose state, together with the request, completely determines
+     * the output of this JeeViewlet. If given, the output is validated by the time these
+     * MeshObjects were last updated, and a GET by a client who has the current output already
+     * is answered without processing the request.
+     *
+     * @return the MeshObjects, or null if the output cannot be validated this way
+     */
+    public MeshObject [] getValidatingMeshObjects();
+
     /**
      * <p>Invoked prior to the execution of the Servlet if the GET method has been requested.
      *    It is the hook by which the JeeViewlet can perform whatever operations needed prior to
@@ -103,6 +103,17 @@ public class BlobViewlet
         super( viewed, c );
     }
 
+    /**
+     * The image is held by the subject, so the subject validates the output.
+     *
+     * @return the MeshObjects
+     */
+    @Override
+    public MeshObject [] getValidatingMeshObjects()
+    {
+        return new MeshObject[] { theViewedMeshObjects.getSubject() };
+    }
+
     /**
      * Process the incoming request. Default implementation that can be
      * overridden by subclasses.
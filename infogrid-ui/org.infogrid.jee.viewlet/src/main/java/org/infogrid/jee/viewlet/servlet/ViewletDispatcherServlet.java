@@ -34,6 +34,7 @@ import org.infogrid.jee.templates.servlet.TemplatesFilter;
 import org.infogrid.jee.viewlet.JeeMeshObjectsToViewFactory;
 import org.infogrid.jee.viewlet.JeeViewlet;
 import org.infogrid.jee.viewlet.lidmetaformats.LidMetaFormatsViewlet;
+import org.infogrid.mesh.MeshObject;
 import org.infogrid.mesh.NotPermittedException;
 import org.infogrid.meshbase.MeshBase;
 import org.infogrid.meshbase.MeshObjectAccessException;
@@ -136,6 +137,9 @@ public class ViewletDispatcherServlet
                     } else if( SafeUnsafePostFilter.mayBeSafeOrUnsafePost( servletRequest ) ) {
                         done = viewlet.performBeforeMaybeSafeOrUnsafePost( saneRequest, structured );
 
+                    } else if( checkNotModified( viewlet, servletRequest, structured )) {
+                        done = true;
+
                     } else {
                         done = viewlet.performBeforeGet( saneRequest, structured );
                     }
@@ -171,6 +175,49 @@ public class ViewletDispatcherServlet
         }
     }
 
+    /**
+     * Determine the validator of the JeeViewlet's output for this request, and whether the
+     * client has the current output already. This method is factored out so subclasses can
+     * easily add to the validator.
+     *
+     * @param viewlet the JeeViewlet
+     * @param request the incoming request
+     * @param structured the StructuredResponse into which the JeeViewlet would write its output
+     * @return true if the client has the current output already, and the JeeViewlet does not need to be invoked
+     */
+    protected boolean checkNotModified(
+            JeeViewlet         viewlet,
+            HttpServletRequest request,
+            StructuredResponse structured )
+    {
+        MeshObject [] validating = viewlet.getValidatingMeshObjects();
+        if( validating == null ) {
+            return false;
+        }
+
+        // the URL is implied; the rest of the request that may influence the output is not
+        Object [] components = new Object[ 4 + 2 * validating.length ];
+        components[0] = viewlet.getName();
+        components[1] = structured.getRequestedTemplateName();
+        components[2] = request.getHeader( "Cookie" );
+        components[3] = request.getHeader( "Accept-Language" );
+
+        long lastModified = -1L;
+        for( int i=0 ; i<validating.length ; ++i ) {
+            long timeUpdated = validating[i].getTimeUpdated();
+
+            components[ 4 + 2*i     ] = validating[i].getIdentifier().toExternalForm();
+            components[ 4 + 2*i + 1 ] = timeUpdated;
+
+            lastModified = Math.max( lastModified, timeUpdated );
+        }
+
+        structured.setEntityTag( StructuredResponse.createEntityTag( components ));
+        structured.setLastModified( lastModified );
+
+        return structured.checkNotModified( request );
+    }
+
     /**
      * Handle exceptions thrown when attempting to create a MeshObjectsToView. This method is
      * factored out so subclasses can easily override.
@@ -42,6 +42,10 @@ import org.infogrid.util.logging.Log;
  *    to and from String and byte [] all the time.</p>
  * <p>This used to inherit from HttpServletResponseWrapper, but that turned out to be
  *    more trouble than it was worth.</p>
+ * <p>Once {@link #startStreaming} has been invoked, the headers collected so far are
+ *    written to the delegate, and all subsequent content is passed through to the
+ *    delegate instead of being buffered. This allows large responses to be produced
+ *    with bounded memory.</p>
  */
 public class BufferedServletResponse
         implements
@@ -77,6 +81,9 @@ public class BufferedServletResponse
             throws
                 IOException
     {
+        if( theIsStreaming ) {
+            return theDelegate.getOutputStream();
+        }
         if( theServletOutputStream == null ) {
             if( theOutputStream == null ) {
                 theOutputStream = new ByteArrayOutputStream( 2048 );
@@ -91,6 +98,9 @@ public class BufferedServletResponse
             throws
                 IOException
     {
+        if( theIsStreaming ) {
+            return theDelegate.getWriter();
+        }
         if( thePrintWriter == null ) {
             if( theWriter == null ) {
                 theWriter = new StringWriter( 2048 );
@@ -126,6 +136,10 @@ public class BufferedServletResponse
             String type )
     {
         theContentType = type;
+
+        if( theIsStreaming ) {
+            theDelegate.setContentType( type );
+        }
     }
 
     // use comment from supertype
@@ -146,6 +160,10 @@ public class BufferedServletResponse
             throws
                 IOException
     {
+        if( theIsStreaming ) {
+            theDelegate.flushBuffer();
+            return;
+        }
         if( thePrintWriter != null ) {
             thePrintWriter.flush();
         }
@@ -157,12 +175,19 @@ public class BufferedServletResponse
     // use comment from supertype
     public void resetBuffer()
     {
-        resetCache();
+        if( theIsStreaming ) {
+            theDelegate.resetBuffer();
+        } else {
+            resetCache();
+        }
     }
 
     // use comment from supertype
     public boolean isCommitted()
     {
+        if( theIsStreaming ) {
+            return theDelegate.isCommitted();
+        }
         return false; // this is always false as this is buffer
     }
 
@@ -192,6 +217,10 @@ public class BufferedServletResponse
             Cookie cookie )
     {
         theCookies.add( cookie );
+
+        if( theIsStreaming ) {
+            theDelegate.addCookie( cookie );
+        }
     }
 
     // use comment from supertype
@@ -346,6 +375,10 @@ public class BufferedServletResponse
             String value )
     {
         Object already = theHeaders.put( name, value ); // return value for debugging only
+
+        if( theIsStreaming ) {
+            theDelegate.setHeader( name, value );
+        }
     }
 
     // use comment from supertype
@@ -369,6 +402,10 @@ public class BufferedServletResponse
         } else {
             log.error( "Unexpected type: " + already );
         }
+
+        if( theIsStreaming ) {
+            theDelegate.addHeader( name, value );
+        }
     }
 
     // use comment from supertype
@@ -416,6 +453,10 @@ public class BufferedServletResponse
     {
         theStatusCode    = sc;
         theStatusMessage = sm;
+
+        if( theIsStreaming ) {
+            theDelegate.setStatus( sc );
+        }
     }
 
     /**
@@ -585,16 +626,80 @@ public class BufferedServletResponse
     }
 
     /**
-     * Copy the buffer into this HttpServletResponse.
+     * Switch this BufferedServletResponse into streaming mode. The status code, headers
+     * and cookies collected so far are written to the delegate, any content buffered so far
+     * is sent, and from now on all content is written through to the delegate.
+     * Invoking this more than once has no effect.
+     *
+     * @param bufferSize the size of the delegate's buffer to request, or -1 to leave it unchanged
+     * @throws IOException thown if an input/output error occurred
+     */
+    public void startStreaming(
+            int bufferSize )
+        throws
+            IOException
+    {
+        if( theIsStreaming ) {
+            return;
+        }
+        if( bufferSize > 0 && isEmpty() && !theDelegate.isCommitted() ) {
+            theDelegate.setBufferSize( bufferSize );
+        }
+        copyTo( theDelegate );
+        resetCache();
+
+        theIsStreaming = true;
+    }
+
+    /**
+     * Determine whether this BufferedServletResponse has been switched into streaming mode.
+     *
+     * @return true if content is written through to the delegate
+     */
+    public boolean isStreaming()
+    {
+        return theIsStreaming;
+    }
+
+    /**
+     * Copy the buffer into this HttpServletResponse. If this BufferedServletResponse
+     * is in streaming mode, everything has been written already and the delegate
+     * is only flushed.
      * 
      * @param destination the HttpServletResponse to copy to
      * @throws IOException thown if an input/output error occurred
      */
-    @SuppressWarnings( "unchecked" )
     public void copyTo(
             HttpServletResponse destination )
         throws
             IOException
+    {
+        if( theIsStreaming ) {
+            theDelegate.flushBuffer();
+            return;
+        }
+        copyHeadersTo( destination );
+
+        String  stringContent = getBufferedPrintWriterOutput();
+        byte [] byteContent   = getBufferedServletOutputStreamOutput();
+        
+        if( stringContent != null ) {
+            destination.getOutputStream().print( stringContent );
+        } else if( byteContent != null ) {
+            destination.getOutputStream().write( byteContent );
+        } else {
+            // do nothing
+        }
+    }
+
+    /**
+     * Copy the status code, headers and cookies, but not the content, into this HttpServletResponse.
+     *
+     * @param destination the HttpServletResponse to copy to
+     */
+    @SuppressWarnings( "unchecked" )
+    protected void copyHeadersTo(
+            HttpServletResponse destination )
     {
         if( theStatusCode > 0 ) {
             destination.setStatus( theStatusCode ); // FIXME? Status code
@@ -627,17 +732,6 @@ public class BufferedServletResponse
         for( Cookie c : theCookies ) {
             destination.addCookie( c );
         }
-        
-        String  stringContent = getBufferedPrintWriterOutput();
-        byte [] byteContent   = getBufferedServletOutputStreamOutput();
-        
-        if( stringContent != null ) {
-            destination.getOutputStream().print( stringContent );
-        } else if( byteContent != null ) {
-            destination.getOutputStream().write( byteContent );
-        } else {
-            // do nothing
-        }
     }
 
     /**
@@ -704,6 +798,11 @@ public class BufferedServletResponse
      * PrintWriter on top of the theWriter.
      */
     protected PrintWriter thePrintWriter;
+
+    /**
+     * True if this BufferedServletResponse has been switched into streaming mode.
+     */
+    protected boolean theIsStreaming;
     
     /**
      * The key of the location header.
@@ -0,0 +1,367 @@
+//
+// This file is part of InfoGrid(tm). You may not use this file except in
+// compliance with the InfoGrid license. The InfoGrid license and important
+// disclaimers are contained in the file LICENSE.InfoGrid.txt that you should
+// have received with InfoGrid. If you have not received LICENSE.InfoGrid.txt
+// or you do not consent to all aspects of the license and the disclaimers,
+// no license is granted; do not use this file.
+// 
+// For more information about InfoGrid go to http://infogrid.org/
+//
+// Copyright 1998-2015 by Johannes Ernst
+// All rights reserved.
+//
+
+package org.infogrid.jee.servlet;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.zip.GZIPOutputStream;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+
+/**
+ * A ServletResponse that gzip-compresses all content written to it before passing it on
+ * to the delegate. The Content-Encoding header is only set once content is written, so
+ * responses without a body remain unchanged. {@link #finish} must be invoked when done.
+ */
+public class GzipServletResponse
+        extends
+            HttpServletResponseWrapper
+{
+    /**
+     * Factory method.
+     *
+     * @param delegate the underlying HttpServletResponse
+     * @return the created GzipServletResponse
+     */
+    public static GzipServletResponse create(
+            HttpServletResponse delegate )
+    {
+        return new GzipServletResponse( delegate );
+    }
+
+    /**
+     * Constructor, use factory method.
+     *
+     * @param delegate the underlying HttpServletResponse
+     */
+    protected GzipServletResponse(
+            HttpServletResponse delegate )
+    {
+        super( delegate );
+    }
+
+    // use comment from supertype
+    @Override
+    public ServletOutputStream getOutputStream()
+        throws
+            IOException
+    {
+        if( thePrintWriter != null ) {
+            throw new IllegalStateException( "getWriter() has been called already" );
+        }
+        return obtainStream();
+    }
+
+    // use comment from supertype
+    @Override
+    public PrintWriter getWriter()
+        throws
+            IOException
+    {
+        if( thePrintWriter == null ) {
+            if( theStream != null ) {
+                throw new IllegalStateException( "getOutputStream() has been called already" );
+            }
+            thePrintWriter = new PrintWriter( new OutputStreamWriter( obtainStream(), getCharacterEncoding() ));
+        }
+        return thePrintWriter;
+    }
+
+    // use comment from supertype
+    @Override
+    public void setContentLength(
+            int len )
+    {
+        // ignored, the compressed length is different
+    }
+
+    // use comment from supertype
+    @Override
+    public void setContentLengthLong(
+            long len )
+    {
+        // ignored, the compressed length is different
+    }
+
+    // use comment from supertype
+    @Override
+    public void setHeader(
+            String name,
+            String value )
+    {
+        if( !CONTENT_LENGTH_HEADER.equalsIgnoreCase( name )) {
+            super.setHeader( name, value );
+        }
+    }
+
+    // use comment from supertype
+    @Override
+    public void addHeader(
+            String name,
+            String value )
+    {
+        if( !CONTENT_LENGTH_HEADER.equalsIgnoreCase( name )) {
+            super.addHeader( name, value );
+        }
+    }
+
+    // use comment from supertype
+    @Override
+    public void setIntHeader(
+            String name,
+            int    value )
+    {
+        if( !CONTENT_LENGTH_HEADER.equalsIgnoreCase( name )) {
+            super.setIntHeader( name, value );
+        }
+    }
+
+    // use comment from supertype
+    @Override
+    public void addIntHeader(
+            String name,
+            int    value )
+    {
+        if( !CONTENT_LENGTH_HEADER.equalsIgnoreCase( name )) {
+            super.addIntHeader( name, value );
+        }
+    }
+
+    // use comment from supertype
+    @Override
+    public void flushBuffer()
+        throws
+            IOException
+    {
+        if( thePrintWriter != null ) {
+            thePrintWriter.flush();
+        }
+        if( theStream != null ) {
+            theStream.flush();
+        }
+        super.flushBuffer();
+    }
+
+    // use comment from supertype
+    @Override
+    public void resetBuffer()
+    {
+        if( theStream != null ) {
+            throw new IllegalStateException( "Compressed content has been written already" );
+        }
+        super.resetBuffer();
+    }
+
+    /**
+     * Write the remaining compressed content to the delegate. This must be invoked once
+     * all content has been written; it does nothing if no content has been written.
+     *
+     * @throws IOException thrown if an I/O error occurred
+     */
+    public void finish()
+        throws
+            IOException
+    {
+        if( thePrintWriter != null ) {
+            thePrintWriter.flush();
+        }
+        if( theStream != null ) {
+            theStream.finish();
+        }
+    }
+
+    /**
+     * Smart factory method for the compressing stream.
+     *
+     * @return the compressing stream
+     * @throws IOException thrown if an I/O error occurred
+     */
+    protected GzipServletOutputStream obtainStream()
+        throws
+            IOException
+    {
+        if( theStream == null ) {
+            HttpServletResponse delegate = (HttpServletResponse) getResponse();
+
+            delegate.setHeader( "Content-Encoding", "gzip" );
+            theStream = new GzipServletOutputStream( delegate.getOutputStream() );
+        }
+        return theStream;
+    }
+
+    /**
+     * The compressing stream, once content has been written.
+     */
+    protected GzipServletOutputStream theStream;
+
+    /**
+     * The PrintWriter on top of theStream, if getWriter() was called.
+     */
+    protected PrintWriter thePrintWriter;
+
+    /**
+     * Name of the Content-Length header.
+     */
+    public static final String CONTENT_LENGTH_HEADER = "Content-Length";
+
+    /**
+     * The ServletOutputStream that compresses.
+     */
+    protected static class GzipServletOutputStream
+            extends
+                ServletOutputStream
+    {
+        /**
+         * Constructor.
+         *
+         * @param delegate the ServletOutputStream to write the compressed content to
+         * @throws IOException thrown if an I/O error occurred
+         */
+        public GzipServletOutputStream(
+                ServletOutputStream delegate )
+            throws
+                IOException
+        {
+            theDelegate   = delegate;
+            theGzipStream = new GZIPOutputStream( delegate, BUFFER_SIZE );
+        }
+
+        /**
+         * Write a byte.
+         *
+         * @param b the byte
+         * @throws IOException thrown if an I/O error occurred
+         */
+        @Override
+        public void write(
+                int b )
+            throws
+                IOException
+        {
+            theGzipStream.write( b );
+        }
+
+        /**
+         * Write a number of bytes.
+         *
+         * @param b the bytes
+         * @param off the offset into the bytes
+         * @param len the number of bytes
+         * @throws IOException thrown if an I/O error occurred
+         */
+        @Override
+        public void write(
+                byte [] b,
+                int     off,
+                int     len )
+            throws
+                IOException
+        {
+            theGzipStream.write( b, off, len );
+        }
+
+        /**
+         * Flush what has been compressed so far.
+         *
+         * @throws IOException thrown if an I/O error occurred
+         */
+        @Override
+        public void flush()
+            throws
+                IOException
+        {
+            if( !theIsFinished ) {
+                theGzipStream.flush();
+            }
+        }
+
+        /**
+         * Write the remaining compressed content, but do not close the delegate.
+         *
+         * @throws IOException thrown if an I/O error occurred
+         */
+        public void finish()
+            throws
+                IOException
+        {
+            if( !theIsFinished ) {
+                theIsFinished = true;
+                theGzipStream.finish();
+                theDelegate.flush();
+            }
+        }
+
+        /**
+         * Write the remaining compressed content, and close the delegate. The
+         * servlet container may do this at the end of a forward.
+         *
+         * @throws IOException thrown if an I/O error occurred
+         */
+        @Override
+        public void close()
+            throws
+                IOException
+        {
+            finish();
+            theDelegate.close();
+        }
+
+        /**
+         * Determine whether data can be written without blocking.
+         *
+         * @return true if data can be written without blocking
+         */
+        @Override
+        public boolean isReady()
+        {
+            return theDelegate.isReady();
+        }
+
+        /**
+         * Set the WriteListener for non-blocking writes.
+         *
+         * @param writeListener the WriteListener
+         */
+        @Override
+        public void setWriteListener(
+                WriteListener writeListener )
+        {
+            theDelegate.setWriteListener( writeListener );
+        }
+
+        /**
+         * The ServletOutputStream to write the compressed content to.
+         */
+        protected ServletOutputStream theDelegate;
+
+        /**
+         * The compressing stream on top of theDelegate.
+         */
+        protected GZIPOutputStream theGzipStream;
+
+        /**
+         * True once all compressed content has been written.
+         */
+        protected boolean theIsFinished;
+
+        /**
+         * Size of the compression buffer.
+         */
+        protected static final int BUFFER_SIZE = 8192;
+    }
+}
@@ -0,0 +1,36 @@
+//
+// This file is part of InfoGrid(tm). You may not use this file except in
+// compliance with the InfoGrid license. The InfoGrid license and important
+// disclaimers are contained in the file LICENSE.InfoGrid.txt that you should
+// have received with InfoGrid. If you have not received LICENSE.InfoGrid.txt
+// or you do not consent to all aspects of the license and the disclaimers,
+// no license is granted; do not use this file.
+// 
+// For more information about InfoGrid go to http://infogrid.org/
+//
+// Copyright 1998-2015 by Johannes Ernst
+// All rights reserved.
+//
+
+package org.infogrid.comm.pingpong;
+
+import java.util.List;
+
+/**
+ * Knows how to combine the messages waiting in the queue of a PingPongMessageEndpoint
+ * into fewer, semantically equivalent messages before they are sent.
+ *
+ * @param <T> the message type
+ */
+public interface MessageCoalescer<T>
+{
+    /**
+     * Combine messages. The order of the messages must be preserved as far as it matters
+     * to the receiver. If nothing can be combined, the argument may be returned.
+     *
+     * @param candidates the messages to be sent, in sequence
+     * @return the messages to send instead
+     */
+    public List<T> coalesce(
+            List<T> candidates );
+}
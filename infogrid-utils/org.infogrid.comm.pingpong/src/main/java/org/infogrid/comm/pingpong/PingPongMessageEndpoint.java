@@ -35,6 +35,9 @@ import org.infogrid.util.logging.Log;
  *    a slight, random delta.</p>
  * <p>This class supports a regular and a low-level logger, which reflect application-developer
  *    vs. protocol-developer-centric views of logging.</p>
+ * <p>Optionally, this class can operate in an adaptive mode: a MessageCoalescer combines the
+ *    queued messages into fewer messages before they are sent, and once a threshold of queued
+ *    messages has been reached, the token is returned immediately instead of waiting for the timer.</p>
  * 
  * @param <T> the message type
  */
@@ -84,9 +87,54 @@ public abstract class PingPongMessageEndpoint<T>
         theDeltaResend             = deltaResend;
         theDeltaRecover            = deltaRecover;
 
-        theLastSentToken     = lastSentToken;
-        theLastReceivedToken = lastReceivedToken;
-        theMessagesSentLast  = messagesSentLast;
+        theLastSentToken            = lastSentToken;
+        theLastReceivedToken        = lastReceivedToken;
+        theMessagesSentLast         = messagesSentLast;
+        theOriginalMessagesSentLast = messagesSentLast;
+    }
+
+    /**
+     * Set the MessageCoalescer that combines queued messages before they are sent.
+     *
+     * @param newValue the new MessageCoalescer, or null to send the queued messages as they are
+     */
+    public void setMessageCoalescer(
+            MessageCoalescer<T> newValue )
+    {
+        theMessageCoalescer = newValue;
+    }
+
+    /**
+     * Obtain the MessageCoalescer that combines queued messages before they are sent.
+     *
+     * @return the MessageCoalescer, if any
+     */
+    public MessageCoalescer<T> getMessageCoalescer()
+    {
+        return theMessageCoalescer;
+    }
+
+    /**
+     * Set the number of queued messages at which this PingPongMessageEndpoint returns the
+     * token immediately, instead of waiting for the timer.
+     *
+     * @param newValue the number of messages, or 0 to always wait for the timer
+     */
+    public void setSendThreshold(
+            int newValue )
+    {
+        theSendThreshold = newValue;
+    }
+
+    /**
+     * Obtain the number of queued messages at which this PingPongMessageEndpoint returns the
+     * token immediately.
+     *
+     * @return the number of messages, or 0 if it always waits for the timer
+     */
+    public int getSendThreshold()
+    {
+        return theSendThreshold;
     }
 
     /**
@@ -128,8 +176,16 @@ public abstract class PingPongMessageEndpoint<T>
         
         long    tokenToSend = -1L;
         List<T> toBeSent    = null; // send nothing unless something is set
+        List<T> originals   = null; // the queued messages that toBeSent represents
 
         synchronized( this ) {
+            if( task instanceof RespondTask && theLastReceivedToken >= 0 && theLastSentToken == theLastReceivedToken + 1 ) {
+                // responded already, e.g. because the send threshold was reached while this task was waiting
+                if( logLow.isDebugEnabled() ) {
+                    logLow.debug( this + " skipping obsolete respond task" );
+                }
+                return;
+            }
             if( theLastReceivedToken < 0 ) {
                 // never received anything
                 if( theLastReceivedToken < 0 ) {
@@ -154,20 +210,36 @@ public abstract class PingPongMessageEndpoint<T>
 
             if( tokenToSend == theLastSentToken ) {
                 // resend
-                toBeSent = theMessagesSentLast;
+                toBeSent  = theMessagesSentLast;
+                originals = theOriginalMessagesSentLast;
 
             } else {
                 // regular response
                 synchronized( theMessagesToBeSent ) {
                     if( !theMessagesToBeSent.isEmpty() ) {
-                        toBeSent = new LinkedList<T>();
-                        toBeSent.addAll( theMessagesToBeSent );
+                        originals = new LinkedList<T>();
+                        originals.addAll( theMessagesToBeSent );
+                    }
+                }
+                toBeSent = originals;
+
+                MessageCoalescer<T> coalescer = theMessageCoalescer;
+                if( coalescer != null && originals != null && originals.size() > 1 ) {
+                    try {
+                        toBeSent = coalescer.coalesce( originals );
+                        theMessagesCoalesced += originals.size() - toBeSent.size();
+
+                    } catch( Throwable t ) {
+                        logHigh.error( this, t );
+                        toBeSent = originals;
                     }
                 }
             }
 
-            theLastSentToken    = tokenToSend;
-            theMessagesSentLast = toBeSent;
+            theLastSentToken            = tokenToSend;
+            theMessagesSentLast         = toBeSent;
+            theOriginalMessagesSentLast = originals;
+            theLastSentTime             = System.currentTimeMillis();
         }
 
         // make sure we use local variables here, not member variables, in order to support concurrency
@@ -205,15 +277,15 @@ public abstract class PingPongMessageEndpoint<T>
                 logHigh.debug( this + " sent message (" + tokenToSend + ") successfully: " + ( toBeSent != null ? toBeSent : "<empty>" ));
             }
 
-            if( toBeSent != null ) {
+            if( originals != null ) {
                 synchronized( theMessagesToBeSent ) {
-                    theMessagesToBeSent.removeAll( toBeSent );
+                    theMessagesToBeSent.removeAll( originals );
                 }
             }
 
             theListeners.fireEvent( tokenToSend, TOKEN_SENT );
-            if( toBeSent != null ) {
-                for( T current : toBeSent ) {
+            if( originals != null ) {
+                for( T current : originals ) {
                     theListeners.fireEvent( current, MESSAGE_SENT );
                 }
             }
@@ -252,8 +324,8 @@ public abstract class PingPongMessageEndpoint<T>
             schedule( new ResendTask( this ), theDeltaResend );
                 // schedule a resend event prior to firing events to listeners
 
-            if( toBeSent != null ) { // can happen when endpoint is killed off
-                for( T t : toBeSent ) {
+            if( originals != null ) { // can happen when endpoint is killed off
+                for( T t : originals ) {
                     theListeners.fireEvent( t, MESSAGE_SENDING_FAILED );
                 }
             }
@@ -310,6 +382,9 @@ public abstract class PingPongMessageEndpoint<T>
                     }
                     theFutureTask.cancel();
                 }
+                if( token == theLastSentToken + 1 && theLastSentTime > 0 ) {
+                    recordRoundTrip( System.currentTimeMillis() - theLastSentTime );
+                }
                 theLastReceivedToken = token;
                 fireEvents = true;
 
@@ -322,7 +397,11 @@ public abstract class PingPongMessageEndpoint<T>
 
         } finally {
             boolean slow;
-            if( !theMessagesToBeSent.isEmpty() ) {
+            if( isSendThresholdReached() ) {
+                schedule( new RespondTask( this ), 0L );
+                slow = false;
+
+            } else if( !theMessagesToBeSent.isEmpty() ) {
                 schedule( new RespondTask( this ), theDeltaRespondWithMessage );
                 slow = false;
 
@@ -348,11 +427,72 @@ public abstract class PingPongMessageEndpoint<T>
                 if( t != null ) {
                     t.cancel();
                 }
-                schedule( new RespondTask( this ), theDeltaRespondWithMessage );
+                schedule( new RespondTask( this ), isSendThresholdReached() ? 0L : theDeltaRespondWithMessage );
             }
         }
     }
 
+    /**
+     * Send a message via the next ping or pong. If this makes the queue reach the
+     * send threshold, return the token, or ask for it, right away.
+     *
+     * @param msg the Message to send.
+     */
+    @Override
+    public void enqueueMessageForSend(
+            T msg )
+    {
+        super.enqueueMessageForSend( msg );
+
+        respondIfSendThresholdReached();
+    }
+
+    /**
+     * Invoked after a message has been enqueued. If this made the queue reach the send
+     * threshold, return the token, or ask for it, right away.
+     */
+    protected void respondIfSendThresholdReached()
+    {
+        if( theSendThreshold <= 0 || getQueueDepth() != theSendThreshold ) {
+            return; // only act when crossing the threshold, not for every message thereafter
+        }
+        TimedTask t = theFutureTask;
+        if( t instanceof RespondTask ) {
+            t.cancel();
+            schedule( new RespondTask( this ), 0L );
+
+        } else if( t != null ) {
+            sendGrabTokenMessage();
+        }
+    }
+
+    /**
+     * Determine whether enough messages are queued to return the token right away.
+     *
+     * @return true if the send threshold has been reached
+     */
+    protected boolean isSendThresholdReached()
+    {
+        return theSendThreshold > 0 && getQueueDepth() >= theSendThreshold;
+    }
+
+    /**
+     * Record a measured round trip. Tokens arrive one at a time, so this does not need to be synchronized.
+     *
+     * @param duration the time from sending the token to receiving it back, in milliseconds
+     */
+    protected void recordRoundTrip(
+            long duration )
+    {
+        theLastRoundTripTime = duration;
+        if( theRoundTripCount == 0 ) {
+            theAverageRoundTripTime = duration;
+        } else {
+            theAverageRoundTripTime += ( duration - theAverageRoundTripTime ) * ROUND_TRIP_WEIGHT;
+        }
+        ++theRoundTripCount;
+    }
+
     /**
      * Send a message as quickly as possible.
      *
@@ -373,6 +513,59 @@ public abstract class PingPongMessageEndpoint<T>
      */
     protected abstract void sendGrabTokenMessage();
 
+    /**
+     * Determine the number of messages waiting to be sent.
+     *
+     * @return the number of messages
+     */
+    public int getQueueDepth()
+    {
+        synchronized( theMessagesToBeSent ) {
+            return theMessagesToBeSent.size();
+        }
+    }
+
+    /**
+     * Determine the duration of the most recent round trip, from sending the token to
+     * receiving it back.
+     *
+     * @return the duration in milliseconds, or -1 if no round trip has completed yet
+     */
+    public long getLastRoundTripTime()
+    {
+        return theRoundTripCount > 0 ? theLastRoundTripTime : -1L;
+    }
+
+    /**
+     * Determine the moving average of the round trip durations.
+     *
+     * @return the average duration in milliseconds, or -1 if no round trip has completed yet
+     */
+    public double getAverageRoundTripTime()
+    {
+        return theRoundTripCount > 0 ? theAverageRoundTripTime : -1.;
+    }
+
+    /**
+     * Determine the number of completed round trips.
+     *
+     * @return the number of round trips
+     */
+    public long getRoundTripCount()
+    {
+        return theRoundTripCount;
+    }
+
+    /**
+     * Determine by how many messages the MessageCoalescer has reduced the messages sent.
+     *
+     * @return the number of messages saved
+     */
+    public long getMessagesCoalescedCount()
+    {
+        return theMessagesCoalesced;
+    }
+
     /**
      * Obtain the token that was last sent.
      *
@@ -425,14 +618,18 @@ public abstract class PingPongMessageEndpoint<T>
                     "theLastReceivedToken",
                     "theLastSentToken",
                     "theFutureTask",
-                    "theMessagesToBeSent"
+                    "theMessagesToBeSent",
+                    "theAverageRoundTripTime",
+                    "theMessagesCoalesced"
                 },
                 new Object[] {
                     theName,
                     theLastReceivedToken,
                     theLastSentToken,
                     theFutureTask,
-                    theMessagesToBeSent
+                    theMessagesToBeSent,
+                    theAverageRoundTripTime,
+                    theMessagesCoalesced
                 });
     }
 
@@ -474,6 +671,52 @@ public abstract class PingPongMessageEndpoint<T>
      */
     protected long theLastReceivedToken;
 
+    /**
+     * The queued messages that were coalesced into theMessagesSentLast. Without a
+     * MessageCoalescer, this is the same as theMessagesSentLast.
+     */
+    protected List<T> theOriginalMessagesSentLast;
+
+    /**
+     * Combines queued messages before they are sent, if any.
+     */
+    protected MessageCoalescer<T> theMessageCoalescer;
+
+    /**
+     * The number of queued messages at which the token is returned immediately. 0 means never.
+     */
+    protected volatile int theSendThreshold;
+
+    /**
+     * The time when the token was last sent.
+     */
+    protected volatile long theLastSentTime;
+
+    /**
+     * The duration of the most recent round trip.
+     */
+    protected volatile long theLastRoundTripTime;
+
+    /**
+     * The moving average of the round trip durations.
+     */
+    protected volatile double theAverageRoundTripTime;
+
+    /**
+     * The number of completed round trips.
+     */
+    protected volatile long theRoundTripCount;
+
+    /**
+     * The number of messages saved by the MessageCoalescer.
+     */
+    protected volatile long theMessagesCoalesced;
+
+    /**
+     * The weight of a new measurement in the moving average of the round trip durations.
+     */
+    protected static final double ROUND_TRIP_WEIGHT = 0.125;
+
     /**
      * Indicates that a token was sent.
      */
@@ -302,6 +302,8 @@ public class MPingPongMessageEndpoint<T>
         }
 
         theListeners.fireEvent( msg, MESSAGE_ENQUEUED );
+
+        respondIfSendThresholdReached();
     }
 
     /**
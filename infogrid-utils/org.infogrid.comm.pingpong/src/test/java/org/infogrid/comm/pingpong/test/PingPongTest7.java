@@ -0,0 +1,223 @@
+//
+// This file is part of InfoGrid(tm). You may not use this file except in
+// compliance with the InfoGrid license. The InfoGrid license and important
+// disclaimers are contained in the file LICENSE.InfoGrid.txt that you should
+// have received with InfoGrid. If you have not received LICENSE.InfoGrid.txt
+// or you do not consent to all aspects of the license and the disclaimers,
+// no license is granted; do not use this file.
+// 
+// For more information about InfoGrid go to http://infogrid.org/
+//
+// Copyright 1998-2015 by Johannes Ernst
+// All rights reserved.
+//
+
+package org.infogrid.comm.pingpong.test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import org.infogrid.comm.MessageEndpoint;
+import org.infogrid.comm.MessageEndpointListener;
+import org.infogrid.comm.ReceivingMessageEndpoint;
+import org.infogrid.comm.SendingMessageEndpoint;
+import org.infogrid.comm.pingpong.m.MPingPongMessageEndpoint;
+import org.infogrid.util.logging.Log;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the adaptive mode: queued messages are coalesced, and the token is returned
+ * right away once the send threshold has been reached.
+ */
+public class PingPongTest7
+        extends
+            AbstractPingPongTest
+{
+    @Test
+    public void run()
+            throws
+                Exception
+    {
+        MPingPongMessageEndpoint<String> ep1 = MPingPongMessageEndpoint.create( "ep1", 2000L,   10L, 500L, 10000L, 0.f, exec );
+        MPingPongMessageEndpoint<String> ep2 = MPingPongMessageEndpoint.create( "ep2", 2000L,   10L, 500L, 10000L, 0.f, exec );
+
+        ep1.setMessageCoalescer( ( List<String> candidates ) -> Collections.singletonList( String.join( " ", candidates )));
+        ep1.setSendThreshold( 3 );
+
+        MyListener l2 = new MyListener();
+        ep2.addDirectMessageEndpointListener( l2 );
+
+        log.info( "Starting to ping-pong" );
+
+        ep1.setPartnerAndInitiateCommunications( ep2 );
+
+        Thread.sleep( 500L ); // let the first tokens pass
+
+        //
+
+        log.info( "Enqueuing messages below the threshold: they wait for the timer" );
+
+        ep1.enqueueMessageForSend( "a" );
+        ep1.enqueueMessageForSend( "b" );
+
+        Thread.sleep( 500L );
+
+        Assert.assertEquals( "Sent too early", 0, l2.getReceived().size() );
+        Assert.assertEquals( "Wrong queue depth", 2, ep1.getQueueDepth() );
+
+        //
+
+        log.info( "Reaching the threshold: sent right away" );
+
+        long start = System.currentTimeMillis();
+        ep1.enqueueMessageForSend( "c" );
+
+        while( l2.getReceived().isEmpty() && System.currentTimeMillis() - start < 5000L ) {
+            Thread.sleep( 10L );
+        }
+        long duration = System.currentTimeMillis() - start;
+
+        Assert.assertTrue( "Took too long: " + duration, duration < 1000L );
+        Assert.assertEquals( "Not coalesced", Collections.singletonList( "a b c" ), l2.getReceived() );
+        Assert.assertEquals( "Wrong coalesced count", 2L, ep1.getMessagesCoalescedCount() );
+        Assert.assertEquals( "Queue not empty", 0, ep1.getQueueDepth() );
+
+        //
+
+        log.info( "Checking round trips" );
+
+        Thread.sleep( 4500L ); // at least one more full round trip
+
+        Assert.assertTrue( "No round trips", ep1.getRoundTripCount() > 0 );
+        Assert.assertTrue( "No round trip time", ep1.getLastRoundTripTime() >= 0 );
+        Assert.assertTrue( "No average round trip time", ep1.getAverageRoundTripTime() >= 0 );
+
+        ep1.stopCommunicating();
+        ep2.stopCommunicating();
+    }
+
+    @Before
+    public void setup()
+    {
+        exec = createThreadPool( 2 );
+    }
+
+    @After
+    public void cleanup()
+    {
+        done = true;
+
+        exec.shutdown();
+    }
+
+    // Our Logger
+    private static Log log = Log.getLogInstance( PingPongTest7.class );
+
+    /**
+     * Our ThreadPool
+     */
+    protected ScheduledExecutorService exec;
+
+    /**
+     * Set to true if the test is done, so listeners won't report an error.
+     */
+    protected boolean done = false;
+
+    /**
+     * Listener that collects the received messages.
+     */
+    class MyListener
+            implements
+                MessageEndpointListener<String>
+    {
+        /**
+         * Called when one more more incoming messages have arrived.
+         *
+         * @param endpoint the MessageEndpoint that sent this event
+         * @param msgs the received messages
+         */
+        public synchronized void messageReceived(
+                ReceivingMessageEndpoint<String> endpoint,
+                List<String>                     msgs )
+        {
+            log.traceMethodCallEntry( this, "messageReceived", msgs );
+
+            theReceived.addAll( msgs );
+        }
+
+        /**
+         * Called when an outgoing message has been sent.
+         *
+         * @param endpoint the MessageEndpoint that sent this event
+         * @param msg the sent message
+         */
+        public void messageSent(
+                SendingMessageEndpoint<String> endpoint,
+                String                         msg )
+        {
+            log.traceMethodCallEntry( this, "messageSent", endpoint, msg );
+        }
+
+        /**
+         * Called when an outgoing message has enqueued for sending.
+         *
+         * @param endpoint the MessageEndpoint that sent this event
+         * @param msg the enqueued message
+         */
+        public void messageEnqueued(
+                SendingMessageEndpoint<String> endpoint,
+                String                         msg )
+        {
+            log.traceMethodCallEntry( this, "messageEnqueued", endpoint, msg );
+        }
+
+        /**
+         * Called when an outoing message failed to be sent.
+         *
+         * @param endpoint the MessageEndpoint that sent this event
+         * @param msg the outgoing message
+         */
+        public void messageSendingFailed(
+                SendingMessageEndpoint<String> endpoint,
+                String                         msg )
+        {
+            Assert.fail( "Message sending failed: " + msg );
+        }
+
+        /**
+         * Called when the receiving endpoint threw the EndpointIsDeadException.
+         *
+         * @param endpoint the MessageEndpoint that sent this event
+         * @param msg the status of the outgoing queue
+         * @param t the error
+         */
+        public void disablingError(
+                MessageEndpoint<String> endpoint,
+                List<String>            msg,
+                Throwable               t )
+        {
+            if( !done ) {
+                Assert.fail( "Receiving endpoint is dead: " + msg );
+            }
+        }
+
+        /**
+         * Obtain the messages received so far.
+         *
+         * @return the messages
+         */
+        public synchronized List<String> getReceived()
+        {
+            return new ArrayList<>( theReceived );
+        }
+
+        /**
+         * The messages received so far.
+         */
+        protected final List<String> theReceived = new ArrayList<>();
+    }
+}
@@ -0,0 +1,723 @@
+//
+// This file is part of InfoGrid(tm). You may not use this file except in
+// compliance with the InfoGrid license. The InfoGrid license and important
+// disclaimers are contained in the file LICENSE.InfoGrid.txt that you should
+// have received with InfoGrid. If you have not received LICENSE.InfoGrid.txt
+// or you do not consent to all aspects of the license and the disclaimers,
+// no license is granted; do not use this file.
+//
+// For more information about InfoGrid go to http://infogrid.org/
+//
+// Copyright 1998-2015 by Johannes Ernst
+// All rights reserved.
+//
+
+package org.infogrid.util.sql;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import javax.sql.DataSource;
+import org.infogrid.util.logging.Log;
+
+/**
+ * <p>A SqlDatabase that maintains a bounded pool of Connections, instead of funneling
+ * all traffic through a single Connection. This allows concurrent threads to
+ * access the database in parallel.</p>
+ *
+ * <p>A Connection is bound to the acquiring Thread between
+ * {@link #acquireConnection acquireConnection} and the matching
+ * {@link #releaseConnection releaseConnection}. Nested acquisitions by the same Thread
+ * return the same Connection, so several SqlExecutionActions can share one transaction.
+ * While bound, {@link #obtainConnection obtainConnection} returns the Thread's Connection.</p>
+ *
+ * <p>Idle Connections are validated before they are handed out again, if they have not been
+ * validated for a while, and are closed once they have been idle for too long. Eviction
+ * happens lazily during acquisition; there is no background Thread.</p>
+ */
+public class PooledSqlDatabase
+        extends
+            SqlDatabase
+{
+    private static final Log log = Log.getLogInstance( PooledSqlDatabase.class ); // our own, private logger
+
+    /**
+     * Factory method, using default values for idle time, wait time and validation interval.
+     *
+     * @param name the name of the SqlDatabase, for debugging purposes
+     * @param ds the DataSource to the database
+     * @param autoCommit set auto-commit on the Connections, don't set it, or leave default
+     * @param maxConnections the maximum number of Connections open at the same time
+     * @return the created PooledSqlDatabase
+     */
+    public static PooledSqlDatabase create(
+            String     name,
+            DataSource ds,
+            Boolean    autoCommit,
+            int        maxConnections )
+    {
+        return create( name, ds, autoCommit, maxConnections, DEFAULT_MAX_IDLE_TIME, DEFAULT_MAX_WAIT, DEFAULT_VALIDATION_INTERVAL );
+    }
+
+    /**
+     * Factory method.
+     *
+     * @param name the name of the SqlDatabase, for debugging purposes
+     * @param ds the DataSource to the database
+     * @param autoCommit set auto-commit on the Connections, don't set it, or leave default
+     * @param maxConnections the maximum number of Connections open at the same time
+     * @param maxIdleTime the time, in milliseconds, after which an idle Connection is closed
+     * @param maxWait the maximum time, in milliseconds, a Thread waits for a Connection to become available
+     * @param validationInterval the time, in milliseconds, after which an idle Connection is validated before it is handed out
+     * @return the created PooledSqlDatabase
+     */
+    public static PooledSqlDatabase create(
+            String     name,
+            DataSource ds,
+            Boolean    autoCommit,
+            int        maxConnections,
+            long       maxIdleTime,
+            long       maxWait,
+            long       validationInterval )
+    {
+        if( maxConnections <= 0 ) {
+            throw new IllegalArgumentException( "maxConnections must be positive: " + maxConnections );
+        }
+        return new PooledSqlDatabase( name, ds, autoCommit, maxConnections, maxIdleTime, maxWait, validationInterval );
+    }
+
+    /**
+     * Constructor for subclasses only, use factory method.
+     *
+     * @param name the name of the SqlDatabase, for debugging purposes
+     * @param ds the DataSource to the database
+     * @param autoCommit set auto-commit on the Connections, don't set it, or leave default
+     * @param maxConnections the maximum number of Connections open at the same time
+     * @param maxIdleTime the time, in milliseconds, after which an idle Connection is closed
+     * @param maxWait the maximum time, in milliseconds, a Thread waits for a Connection to become available
+     * @param validationInterval the time, in milliseconds, after which an idle Connection is validated before it is handed out
+     */
+    protected PooledSqlDatabase(
+            String     name,
+            DataSource ds,
+            Boolean    autoCommit,
+            int        maxConnections,
+            long       maxIdleTime,
+            long       maxWait,
+            long       validationInterval )
+    {
+        super( name, ds, autoCommit );
+
+        theMaxConnections     = maxConnections;
+        theMaxIdleTime        = maxIdleTime;
+        theMaxWait            = maxWait;
+        theValidationInterval = validationInterval;
+    }
+
+    /**
+     * Obtain the Connection currently bound to the calling Thread.
+     *
+     * @return the Connection
+     * @throws IllegalStateException thrown if the calling Thread has not acquired a Connection
+     */
+    @Override
+    public Connection obtainConnection()
+    {
+        Binding binding = theBindings.get();
+        if( binding == null ) {
+            throw new IllegalStateException( "Thread has not acquired a Connection from " + theName );
+        }
+        return binding.thePooled.theConnection;
+    }
+
+    /**
+     * Acquire a Connection from the pool, and bind it to the calling Thread.
+     * If the calling Thread has acquired a Connection already, return that one.
+     *
+     * @return the Connection
+     * @throws SQLException thrown if the database could not be contacted, or no Connection became available in time
+     */
+    @Override
+    public Connection acquireConnection()
+        throws
+            SQLException
+    {
+        Binding binding = theBindings.get();
+        if( binding != null ) {
+            ++binding.theDepth;
+            return binding.thePooled.theConnection;
+        }
+
+        long             start  = System.nanoTime();
+        PooledConnection pooled = borrow( start );
+        recordAcquisition( System.nanoTime() - start );
+
+        theBindings.set( new Binding( pooled ));
+        return pooled.theConnection;
+    }
+
+    /**
+     * Release a Connection acquired earlier. Once the outermost acquisition of the
+     * calling Thread has been released, the Connection returns to the pool.
+     *
+     * @param conn the Connection
+     */
+    @Override
+    public void releaseConnection(
+            Connection conn )
+    {
+        Binding binding = theBindings.get();
+        if( binding == null ) {
+            log.error( "Releasing Connection that was never acquired", this, conn );
+            return;
+        }
+        if( --binding.theDepth > 0 ) {
+            return;
+        }
+        theBindings.remove();
+
+        PooledConnection pooled = binding.thePooled;
+        boolean          keep;
+
+        synchronized( this ) {
+            keep = !pooled.theIsBroken && pooled.theGeneration == theGeneration;
+            if( keep ) {
+                pooled.theLastUsed = System.currentTimeMillis();
+                theIdle.addFirst( pooled ); // most-recently used first, so the tail ages out
+                notify();
+            }
+        }
+        if( !keep ) {
+            discard( pooled );
+        }
+    }
+
+    /**
+     * Replace the Connection bound to the calling Thread with a new one, for example
+     * after the old one failed. The old Connection is closed.
+     *
+     * @return the new Connection
+     * @throws SQLException thrown if the database could not be contacted
+     * @throws IllegalStateException thrown if the calling Thread has not acquired a Connection
+     */
+    @Override
+    public Connection obtainNewConnection()
+        throws
+            SQLException
+    {
+        Binding binding = theBindings.get();
+        if( binding == null ) {
+            throw new IllegalStateException( "Thread has not acquired a Connection from " + theName );
+        }
+
+        PooledConnection old = binding.thePooled;
+        closeQuietly( old.theConnection );
+
+        // the slot stays allocated to us
+        Connection conn;
+        try {
+            conn = openConnection();
+
+        } catch( SQLException ex ) {
+            old.theIsBroken = true; // give up the slot upon release
+            throw ex;
+        }
+        synchronized( this ) {
+            ++theCreatedCount;
+            ++theDiscardedCount;
+            binding.thePooled = new PooledConnection( conn, theGeneration );
+        }
+        return conn;
+    }
+
+    /**
+     * Close all idle Connections. Connections currently in use are closed
+     * when they are released.
+     */
+    @Override
+    public void closeConnection()
+    {
+        List<PooledConnection> toClose;
+        synchronized( this ) {
+            ++theGeneration;
+            toClose = new ArrayList<>( theIdle );
+            theIdle.clear();
+        }
+        for( PooledConnection current : toClose ) {
+            discard( current );
+        }
+    }
+
+    /**
+     * Obtain a PooledConnection, creating one if needed and permitted, and waiting
+     * if the pool is exhausted.
+     *
+     * @param start the time, from System.nanoTime(), at which the acquisition started
+     * @return the PooledConnection
+     * @throws SQLException thrown if the database could not be contacted, or no Connection became available in time
+     */
+    protected PooledConnection borrow(
+            long start )
+        throws
+            SQLException
+    {
+        long deadline = start + TimeUnit.MILLISECONDS.toNanos( theMaxWait );
+
+        while( true ) {
+            List<PooledConnection> evicted;
+            PooledConnection       candidate = null;
+            boolean                create    = false;
+            boolean                timedOut  = false;
+
+            synchronized( this ) {
+                evicted = evictIdle( System.currentTimeMillis() );
+
+                if( !theIdle.isEmpty() ) {
+                    candidate = theIdle.pollFirst();
+
+                } else if( theOpenCount < theMaxConnections ) {
+                    ++theOpenCount;
+                    create = true;
+
+                } else {
+                    long remaining = deadline - System.nanoTime();
+                    if( remaining <= 0 ) {
+                        ++theAcquisitionTimeoutCount;
+                        timedOut = true;
+                    } else {
+                        try {
+                            TimeUnit.NANOSECONDS.timedWait( this, remaining );
+                        } catch( InterruptedException ex ) {
+                            Thread.currentThread().interrupt();
+                            throw new SQLTransientConnectionException( "Interrupted while waiting for a Connection from " + theName, ex );
+                        }
+                    }
+                }
+            }
+            if( evicted != null ) {
+                for( PooledConnection current : evicted ) {
+                    closeQuietly( current.theConnection );
+                }
+            }
+
+            if( create ) {
+                Connection conn;
+                try {
+                    conn = openConnection();
+
+                } catch( SQLException | RuntimeException ex ) {
+                    synchronized( this ) {
+                        --theOpenCount;
+                        notify();
+                    }
+                    throw ex;
+                }
+                synchronized( this ) {
+                    ++theCreatedCount;
+                    return new PooledConnection( conn, theGeneration );
+                }
+            }
+            if( candidate != null ) {
+                if( validate( candidate )) {
+                    return candidate;
+                }
+                discard( candidate );
+
+            } else if( timedOut ) {
+                throw new SQLTransientConnectionException(
+                        "No Connection available from " + theName + " within " + theMaxWait + " msec" );
+            }
+        }
+    }
+
+    /**
+     * Remove idle Connections that have been idle for too long. Must be invoked
+     * while holding the lock; the returned Connections must be closed afterwards.
+     *
+     * @param now the current time
+     * @return the removed Connections, or null
+     */
+    protected List<PooledConnection> evictIdle(
+            long now )
+    {
+        List<PooledConnection> ret = null;
+        while( !theIdle.isEmpty() && now - theIdle.peekLast().theLastUsed > theMaxIdleTime ) {
+            if( ret == null ) {
+                ret = new ArrayList<>();
+            }
+            ret.add( theIdle.pollLast() );
+            --theOpenCount;
+            ++theEvictedCount;
+        }
+        return ret;
+    }
+
+    /**
+     * Determine whether this idle PooledConnection is still usable.
+     *
+     * @param candidate the PooledConnection
+     * @return true if it is usable
+     */
+    protected boolean validate(
+            PooledConnection candidate )
+    {
+        long now = System.currentTimeMillis();
+        if( now - candidate.theLastValidated < theValidationInterval ) {
+            return true;
+        }
+        try {
+            if( candidate.theConnection.isValid( VALIDATION_TIMEOUT )) {
+                candidate.theLastValidated = now;
+                return true;
+            }
+        } catch( SQLException ex ) {
+            log.info( ex );
+        }
+        return false;
+    }
+
+    /**
+     * Close a PooledConnection and give up its slot in the pool.
+     *
+     * @param pooled the PooledConnection
+     */
+    protected void discard(
+            PooledConnection pooled )
+    {
+        closeQuietly( pooled.theConnection );
+
+        synchronized( this ) {
+            --theOpenCount;
+            ++theDiscardedCount;
+            notify();
+        }
+    }
+
+    /**
+     * Open a new Connection from the DataSource and configure it.
+     *
+     * @return the Connection
+     * @throws SQLException thrown if the database could not be contacted
+     */
+    protected Connection openConnection()
+        throws
+            SQLException
+    {
+        Connection ret = theDataSource.getConnection();
+        if( ret == null ) {
+            throw new SQLException( "DataSource of " + theName + " returned no Connection" );
+        }
+        if( theAutoCommit != null ) {
+            ret.setAutoCommit( theAutoCommit.booleanValue() );
+        }
+        return ret;
+    }
+
+    /**
+     * Close a Connection, ignoring any problems.
+     *
+     * @param conn the Connection
+     */
+    protected static void closeQuietly(
+            Connection conn )
+    {
+        try {
+            conn.close();
+        } catch( Throwable t ) {
+            // might be closed already -- ignore
+        }
+    }
+
+    /**
+     * Record the time it took to acquire a Connection.
+     *
+     * @param nanos the time, in nanoseconds
+     */
+    protected synchronized void recordAcquisition(
+            long nanos )
+    {
+        ++theAcquisitionCount;
+        theTotalAcquisitionNanos += nanos;
+        if( nanos > theMaxAcquisitionNanos ) {
+            theMaxAcquisitionNanos = nanos;
+        }
+    }
+
+    /**
+     * Obtain the maximum number of Connections open at the same time.
+     *
+     * @return the maximum number
+     */
+    public int getMaxConnections()
+    {
+        return theMaxConnections;
+    }
+
+    /**
+     * Obtain the number of currently open Connections, idle or in use.
+     *
+     * @return the number
+     */
+    public synchronized int getOpenCount()
+    {
+        return theOpenCount;
+    }
+
+    /**
+     * Obtain the number of currently idle Connections.
+     *
+     * @return the number
+     */
+    public synchronized int getIdleCount()
+    {
+        return theIdle.size();
+    }
+
+    /**
+     * Obtain the number of successful acquisitions from the pool so far.
+     *
+     * @return the number
+     */
+    public synchronized long getAcquisitionCount()
+    {
+        return theAcquisitionCount;
+    }
+
+    /**
+     * Obtain the average time it took to acquire a Connection, in nanoseconds.
+     *
+     * @return the average time, or 0 if no Connection has been acquired yet
+     */
+    public synchronized long getAverageAcquisitionNanos()
+    {
+        if( theAcquisitionCount == 0 ) {
+            return 0L;
+        }
+        return theTotalAcquisitionNanos / theAcquisitionCount;
+    }
+
+    /**
+     * Obtain the longest time it took to acquire a Connection, in nanoseconds.
+     *
+     * @return the longest time
+     */
+    public synchronized long getMaxAcquisitionNanos()
+    {
+        return theMaxAcquisitionNanos;
+    }
+
+    /**
+     * Obtain the number of acquisitions that timed out.
+     *
+     * @return the number
+     */
+    public synchronized long getAcquisitionTimeoutCount()
+    {
+        return theAcquisitionTimeoutCount;
+    }
+
+    /**
+     * Obtain the number of Connections created so far.
+     *
+     * @return the number
+     */
+    public synchronized long getCreatedCount()
+    {
+        return theCreatedCount;
+    }
+
+    /**
+     * Obtain the number of Connections closed because they were idle for too long.
+     *
+     * @return the number
+     */
+    public synchronized long getEvictedCount()
+    {
+        return theEvictedCount;
+    }
+
+    /**
+     * Obtain the number of Connections closed because they failed, failed validation,
+     * or were closed explicitly.
+     *
+     * @return the number
+     */
+    public synchronized long getDiscardedCount()
+    {
+        return theDiscardedCount;
+    }
+
+    /**
+     * Default maximum idle time, in milliseconds.
+     */
+    public static final long DEFAULT_MAX_IDLE_TIME = 5L * 60L * 1000L;
+
+    /**
+     * Default maximum wait time for a Connection, in milliseconds.
+     */
+    public static final long DEFAULT_MAX_WAIT = 30L * 1000L;
+
+    /**
+     * Default interval after which idle Connections are validated, in milliseconds.
+     */
+    public static final long DEFAULT_VALIDATION_INTERVAL = 5L * 1000L;
+
+    /**
+     * Timeout for validating a Connection, in seconds.
+     */
+    protected static final int VALIDATION_TIMEOUT = 5;
+
+    /**
+     * The maximum number of Connections open at the same time.
+     */
+    protected final int theMaxConnections;
+
+    /**
+     * The time, in milliseconds, after which an idle Connection is closed.
+     */
+    protected final long theMaxIdleTime;
+
+    /**
+     * The maximum time, in milliseconds, a Thread waits for a Connection.
+     */
+    protected final long theMaxWait;
+
+    /**
+     * The time, in milliseconds, after which an idle Connection is validated before it is handed out.
+     */
+    protected final long theValidationInterval;
+
+    /**
+     * The idle Connections, most-recently used first.
+     */
+    protected final ArrayDeque<PooledConnection> theIdle = new ArrayDeque<>();
+
+    /**
+     * The number of open Connections, idle or in use, plus those being opened.
+     */
+    protected int theOpenCount;
+
+    /**
+     * Incremented by closeConnection, so Connections in use at that time are closed upon release.
+     */
+    protected int theGeneration;
+
+    /**
+     * The Connection bound to each Thread, if any.
+     */
+    protected final ThreadLocal<Binding> theBindings = new ThreadLocal<>();
+
+    /**
+     * Number of successful acquisitions.
+     */
+    protected long theAcquisitionCount;
+
+    /**
+     * Total time spent acquiring Connections, in nanoseconds.
+     */
+    protected long theTotalAcquisitionNanos;
+
+    /**
+     * Longest time spent acquiring a Connection, in nanoseconds.
+     */
+    protected long theMaxAcquisitionNanos;
+
+    /**
+     * Number of acquisitions that timed out.
+     */
+    protected long theAcquisitionTimeoutCount;
+
+    /**
+     * Number of Connections created.
+     */
+    protected long theCreatedCount;
+
+    /**
+     * Number of Connections closed because they were idle for too long.
+     */
+    protected long theEvictedCount;
+
+    /**
+     * Number of Connections closed for other reasons.
+     */
+    protected long theDiscardedCount;
+
+    /**
+     * A Connection in the pool, with its meta-data.
+     */
+    protected static class PooledConnection
+    {
+        /**
+         * Constructor.
+         *
+         * @param conn the Connection
+         * @param generation the generation of the pool at the time the Connection was opened
+         */
+        protected PooledConnection(
+                Connection conn,
+                int        generation )
+        {
+            theConnection    = conn;
+            theGeneration    = generation;
+            theLastUsed      = System.currentTimeMillis();
+            theLastValidated = theLastUsed;
+        }
+
+        /**
+         * The Connection.
+         */
+        protected final Connection theConnection;
+
+        /**
+         * The generation of the pool at the time the Connection was opened.
+         */
+        protected final int theGeneration;
+
+        /**
+         * Time the Connection was last returned to the pool.
+         */
+        protected long theLastUsed;
+
+        /**
+         * Time the Connection was last known to be valid.
+         */
+        protected long theLastValidated;
+
+        /**
+         * True if the Connection has been closed after a failure, and could not be replaced.
+         */
+        protected boolean theIsBroken;
+    }
+
+    /**
+     * Binds a PooledConnection to a Thread, counting nested acquisitions.
+     */
+    protected static class Binding
+    {
+        /**
+         * Constructor.
+         *
+         * @param pooled the PooledConnection
+         */
+        protected Binding(
+                PooledConnection pooled )
+        {
+            thePooled = pooled;
+            theDepth  = 1;
+        }
+
+        /**
+         * The PooledConnection.
+         */
+        protected PooledConnection thePooled;
+
+        /**
+         * The number of not-yet-released acquisitions.
+         */
+        protected int theDepth;
+    }
+}
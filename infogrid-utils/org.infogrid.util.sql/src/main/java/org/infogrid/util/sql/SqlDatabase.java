@@ -112,6 +112,37 @@ public class SqlDatabase
         return theConnection;
     }
 
+    /**
+     * Acquire a connection to the database for the duration of one unit of work.
+     * Every call to this method must be matched by a call to
+     * {@link #releaseConnection releaseConnection}. This implementation returns
+     * the single, shared Connection; subclasses may hand out Connections from a pool.
+     *
+     * @return the Connection
+     * @throws SQLException thrown if the database could not be contacted
+     * @see #releaseConnection
+     */
+    public Connection acquireConnection()
+        throws
+            SQLException
+    {
+        return obtainConnection();
+    }
+
+    /**
+     * Release a connection previously obtained through
+     * {@link #acquireConnection acquireConnection}. This implementation does nothing,
+     * as the single Connection is shared.
+     *
+     * @param conn the Connection
+     * @see #acquireConnection
+     */
+    public void releaseConnection(
+            Connection conn )
+    {
+        // noop
+    }
+
     /**
      * Obtain a new connection to the database. This discards whatever old
      * Connection there may be already.
@@ -19,6 +19,9 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.text.MessageFormat;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Map;
 
 /**
  * Smart factory class for PreparedStatements, taking the current Connection into account.
@@ -42,7 +45,9 @@ public class SqlPreparedStatement
     }
 
     /**
-     * Obtain a PreparedStatement for this Connection.
+     * Obtain a PreparedStatement for this Connection. PreparedStatements are cached
+     * per Connection, so Threads using different Connections of a pooled SqlDatabase
+     * do not invalidate each other's PreparedStatements.
      *
      * @param conn the Connection
      * @return the PreparedStatement
@@ -53,16 +58,40 @@ public class SqlPreparedStatement
         throws
             SQLException
     {
-        if( conn != theConnection || thePreparedStatement == null ) {
-            theConnection        = conn;
-            thePreparedStatement = theConnection.prepareStatement(
+        PreparedStatement ret = thePreparedStatements.get( conn );
+        if( ret == null ) {
+            purgeClosed();
+
+            ret = conn.prepareStatement(
                     theSql,
                     ResultSet.TYPE_SCROLL_INSENSITIVE,
                     ResultSet.CONCUR_READ_ONLY );
+            thePreparedStatements.put( conn, ret );
         }
-        return thePreparedStatement;
+        return ret;
     }
-    
+
+    /**
+     * Forget the PreparedStatements of Connections that have been closed since.
+     * This keeps the cache bounded by the number of open Connections.
+     */
+    protected void purgeClosed()
+    {
+        Iterator<Map.Entry<Connection,PreparedStatement>> iter = thePreparedStatements.entrySet().iterator();
+        while( iter.hasNext() ) {
+            Map.Entry<Connection,PreparedStatement> current = iter.next();
+            boolean closed;
+            try {
+                closed = current.getKey().isClosed();
+            } catch( SQLException ex ) {
+                closed = true;
+            }
+            if( closed ) {
+                iter.remove();
+            }
+        }
+    }
+
     /**
      * Obtain the Database that this belongs to.
      *
@@ -74,17 +103,43 @@ public class SqlPreparedStatement
     }
 
     /**
-     * Close this PreparedStatement.
+     * Close the PreparedStatements for all Connections.
+     *
+     * @throws SQLException thrown when a database problem occurs
+     */
+    public synchronized void close()
+        throws
+            SQLException
+    {
+        SQLException thrown = null;
+        for( PreparedStatement current : thePreparedStatements.values() ) {
+            try {
+                current.close();
+            } catch( SQLException ex ) {
+                thrown = ex;
+            }
+        }
+        thePreparedStatements.clear();
+
+        if( thrown != null ) {
+            throw thrown;
+        }
+    }
+
+    /**
+     * Close the PreparedStatement for this Connection, if any.
      *
+     * @param conn the Connection
      * @throws SQLException thrown when a database problem occurs
      */
-    public void close()
+    public synchronized void close(
+            Connection conn )
         throws
             SQLException
     {
-        if( thePreparedStatement != null ) {
-            thePreparedStatement.close();
-            thePreparedStatement = null;
+        PreparedStatement found = thePreparedStatements.remove( conn );
+        if( found != null ) {
+            found.close();
         }
     }
 
@@ -109,12 +164,7 @@ public class SqlPreparedStatement
     protected String theSql;
     
     /**
-     * The most-recently used Connection.
-     */
-    protected Connection theConnection;
-    
-    /**
-     * The PreparedStatement for theConnection.
+     * The PreparedStatements, keyed by the Connection they were prepared on.
      */
-    protected PreparedStatement thePreparedStatement;
+    protected final Map<Connection,PreparedStatement> thePreparedStatements = new IdentityHashMap<>();
 }
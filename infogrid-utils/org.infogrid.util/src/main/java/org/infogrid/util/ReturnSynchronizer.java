@@ -16,6 +16,7 @@ package org.infogrid.util;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import org.infogrid.util.logging.CanBeDumped;
 import org.infogrid.util.logging.Dumper;
 import org.infogrid.util.logging.Log;
@@ -37,6 +38,9 @@ import org.infogrid.util.logging.Log;
  *  <li><code>Object result1 = r.getResultFor( key1 );</code> (repeated as many times as needed)</li>
  *  <li><code>r.endTransaction();</code></li>
  * </ol>
+ * <p>Instead of calling <code>join</code>, the calling thread may also <code>detachTransaction</code>
+ * after it has added its queries, and move on. The returned <code>CompletableFuture</code> completes
+ * when all queries have produced results; <code>endDetachedTransaction</code> then ends the transaction.</p>
  * <p>The purpose of the <code>beginTransaction</code> and <code>endTransaction</code> calls is
  * largely to make debugging easier and fail faster in case of programming errors.</p>
  * <p>FIXME? There is a chance this can be implemented more efficiently.</p>
@@ -173,6 +177,62 @@ public class ReturnSynchronizer<K,R>
         }
     }
 
+    /**
+     * <p>Detach the open transaction from this thread, so this thread may move on
+     * without waiting for the results of the queries in the transaction. This thread
+     * may then begin another transaction.</p>
+     * <p>The returned CompletableFuture completes with true once all queries of the
+     * transaction have produced results, and with false if the transaction was
+     * abandoned because of a disabling error. It also identifies the detached
+     * transaction in subsequent calls to {@link #endDetachedTransaction endDetachedTransaction}.
+     * Note that it may complete on whatever Thread deposits the last result.</p>
+     *
+     * @return the CompletableFuture
+     * @throws ReturnSynchronizerException.NoTransactionOpen thrown if no transaction is active on this Thread
+     */
+    public CompletableFuture<Boolean> detachTransaction()
+        throws
+            ReturnSynchronizerException.NoTransactionOpen
+    {
+        Thread t = Thread.currentThread();
+
+        if( log.isTraceEnabled() ) {
+            log.traceMethodCallEntry( this, "detachTransaction", t );
+        }
+
+        synchronized( this ) {
+            CS<K,R> found = threadToMonitorTable.remove( t );
+            if( found == null ) {
+                throw new ReturnSynchronizerException.NoTransactionOpen( this, t );
+            }
+            CompletableFuture<Boolean> ret = found.detach();
+            threadToMonitorTable.put( ret, found );
+
+            return ret;
+        }
+    }
+
+    /**
+     * End a transaction previously detached from its thread. This may be invoked
+     * before all queries of the transaction have produced results, e.g. because the
+     * caller is not interested in them any more.
+     *
+     * @param detached the CompletableFuture returned by detachTransaction
+     * @return true if the transaction was still open, false if it had been ended already
+     */
+    public boolean endDetachedTransaction(
+            CompletableFuture<Boolean> detached )
+    {
+        if( log.isTraceEnabled() ) {
+            log.traceMethodCallEntry( this, "endDetachedTransaction", detached );
+        }
+
+        synchronized( this ) {
+            CS<K,R> found = threadToMonitorTable.remove( detached );
+            return found != null;
+        }
+    }
+
     /**
      * Add one more outstanding query for the open transaction on this thread.
      *
@@ -567,9 +627,9 @@ public class ReturnSynchronizer<K,R>
     protected Object theName;
 
     /**
-     * This table maps waiting Threads to their monitors.
+     * This table maps waiting Threads, and the CompletableFutures of detached transactions, to their monitors.
      */
-    protected HashMap<Thread,CS<K,R>> threadToMonitorTable = new HashMap<Thread,CS<K,R>>();
+    protected HashMap<Object,CS<K,R>> threadToMonitorTable = new HashMap<Object,CS<K,R>>();
 
     /**
      * This is some version of a counting semaphore.
@@ -658,6 +718,9 @@ public class ReturnSynchronizer<K,R>
                     synchronized( this ) {
                         notifyAll();
                     }
+                    if( theFuture != null ) {
+                        theFuture.complete( Boolean.TRUE );
+                    }
                 }
                 return true;
             } else {
@@ -688,6 +751,24 @@ public class ReturnSynchronizer<K,R>
         public synchronized void abandon()
         {
             this.notifyAll();
+
+            if( theFuture != null ) {
+                theFuture.complete( Boolean.FALSE );
+            }
+        }
+
+        /**
+         * Detach this monitor from its Thread.
+         *
+         * @return the CompletableFuture that completes when all queries have produced results
+         */
+        public synchronized CompletableFuture<Boolean> detach()
+        {
+            theFuture = new CompletableFuture<>();
+            if( counter <= 0 ) {
+                theFuture.complete( Boolean.TRUE );
+            }
+            return theFuture;
         }
 
         /**
@@ -718,5 +799,10 @@ public class ReturnSynchronizer<K,R>
          * The results table associated with this semaphore.
          */
         protected Map<K,Object> theResults;
+
+        /**
+         * The CompletableFuture to complete once all results are in, if this monitor has been detached from its Thread.
+         */
+        protected CompletableFuture<Boolean> theFuture;
     }
 }
@@ -20,10 +20,12 @@ import java.lang.ref.SoftReference;
 import java.lang.ref.WeakReference;
 import java.util.AbstractCollection;
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
 import org.infogrid.util.logging.Log;
 
 /**
@@ -35,6 +37,13 @@ import org.infogrid.util.logging.Log;
  * other place (outside of the scope of this class) a previously deallocated value.
  * In the comments to this class, and in some of the method calls, this other place
  * is called "storage".
+ *
+ * <p>This class may be used concurrently by many threads. Looking up a value that is
+ * in the cache does not acquire a lock. Values that need to be loaded from storage are
+ * loaded without holding a lock; if several threads miss on the same key at the same
+ * time, only one of them loads the value, and the others wait for its result.
+ * Modifications are serialized with respect to each other, and supersede loads for the
+ * same key that are still in progress.</p>
  * 
  * @param <K> the type of key
  * @param <V> the type of value
@@ -53,7 +62,7 @@ public abstract class SwappingHashMap<K,V>
     protected SwappingHashMap(
             int initialSize )
     {
-        theDelegate = new HashMap<K,Reference<V>>( initialSize );
+        theDelegate = new ConcurrentHashMap<K,Reference<V>>( initialSize );
     }
 
     /**
@@ -82,7 +91,10 @@ public abstract class SwappingHashMap<K,V>
             // we know that this queue only contains things that implement this interface, so this cast is safe
             EntryReference<K> realCurrent = (EntryReference<K>) current;
             K key = realCurrent.getKey();
-            theDelegate.remove( key );
+
+            if( !theDelegate.remove( key, current )) {
+                continue; // has been replaced in the meantime
+            }
 
             if( log.isDebugEnabled() ) {
                 log.debug( this + ".cleanup() of object with key " + key );
@@ -100,7 +112,7 @@ public abstract class SwappingHashMap<K,V>
      *
      * @return the number of key-value mappings in this SwappingHashMap.
      */
-    public synchronized int size()
+    public int size()
     {
         cleanup();
         return theDelegate.size();
@@ -111,7 +123,7 @@ public abstract class SwappingHashMap<K,V>
      *
      * @return true if this is empty
      */
-    public synchronized boolean isEmpty()
+    public boolean isEmpty()
     {
         cleanup();
         return theDelegate.isEmpty();
@@ -125,22 +137,18 @@ public abstract class SwappingHashMap<K,V>
      * @return true if this SwappingHashMap contains a mapping for this key
      */
     @Override
-    @SuppressWarnings(value={"unchecked"})
-    public synchronized boolean containsKey(
+    public boolean containsKey(
             Object key )
     {
         cleanup();
 
-        Reference<V> ref = theDelegate.get( key );
+        Reference<V> ref = key != null ? theDelegate.get( key ) : null; // the cache cannot hold null keys
         V found = ref != null ? ref.get() : null;
 
-        boolean ret = found != null;
         if( found == null ) {
-            found = loadValueFromStorage( key );
-            theSwappingListeners.fireEvent( new Pair<K,V>( (K) key, found ), 0 );
-            ret = found != null;
+            found = loadValueFromStorageOnce( key );
         }
-        return ret;
+        return found != null;
     }
 
     /**
@@ -179,22 +187,106 @@ public abstract class SwappingHashMap<K,V>
      * @param key the key
      * @return the value, if any
      */
-    @SuppressWarnings(value={"unchecked"})
-    public synchronized V get(
+    public V get(
             Object key )
     {
         cleanup();
         @SuppressWarnings("element-type-mismatch")
-        Reference<V> found = theDelegate.get( key );
+        Reference<V> found = key != null ? theDelegate.get( key ) : null; // the cache cannot hold null keys
         V ret = found != null ? found.get() : null;
         
         if( ret == null ) {
-            ret = loadValueFromStorage( key );
+            ret = loadValueFromStorageOnce( key );
+        }
+        return ret;
+    }
+
+    /**
+     * Load a value from storage that was not found in the local cache, and put it
+     * into the local cache. If another thread is loading the value for the same key
+     * already, wait for its result instead of loading it a second time. If the current
+     * thread is loading the value for the same key already, further up the call stack,
+     * load it again without caching it, as waiting would never end.
+     *
+     * @param key the key whose value should be loaded
+     * @return the value that was loaded, or null if none.
+     */
+    @SuppressWarnings(value={"unchecked"})
+    protected V loadValueFromStorageOnce(
+            Object key )
+    {
+        if( key == null ) {
+            return loadValueFromStorage( key ); // the cache cannot hold null keys
+        }
+
+        LoadInProgress<V> newLoad      = new LoadInProgress<V>();
+        LoadInProgress<V> existingLoad = theLoadsInProgress.putIfAbsent( key, newLoad );
+
+        if( existingLoad != null ) {
+            if( existingLoad.theLoadingThread == Thread.currentThread() ) {
+                return loadValueFromStorage( key );
+            }
+            try {
+                return existingLoad.join();
+
+            } catch( CompletionException ex ) {
+                Throwable cause = ex.getCause();
+                if( cause instanceof RuntimeException ) {
+                    throw (RuntimeException) cause;
+                } else if( cause instanceof Error ) {
+                    throw (Error) cause;
+                }
+                throw ex;
+            }
+        }
+
+        V ret;
+        try {
+            // somebody else's load may have completed between our cache miss and registering our load
+            Reference<V> found = theDelegate.get( key );
+            ret = found != null ? found.get() : null;
             if( ret != null ) {
-                theDelegate.put( (K) key, createReference( (K) key, ret ));
+                theLoadsInProgress.remove( key, newLoad );
+                newLoad.complete( ret );
+                return ret;
+            }
+
+            ret = loadValueFromStorage( key );
+
+        } catch( RuntimeException ex ) {
+            theLoadsInProgress.remove( key, newLoad );
+            newLoad.completeExceptionally( ex );
+            throw ex;
+
+        } catch( Error ex ) {
+            theLoadsInProgress.remove( key, newLoad );
+            newLoad.completeExceptionally( ex );
+            throw ex;
+        }
+
+        synchronized( this ) {
+            if( theLoadsInProgress.get( key ) == newLoad ) {
+                Reference<V> found        = theDelegate.get( key );
+                V            currentValue = found != null ? found.get() : null;
+
+                if( currentValue != null ) {
+                    ret = currentValue;
+                } else if( ret != null ) {
+                    theDelegate.put( (K) key, createReference( (K) key, ret ));
+                }
+                // only deregister after the value is in the cache, so later misses find it
+                theLoadsInProgress.remove( key, newLoad );
+
+            } else {
+                // a modification for this key has superseded our load; its result is authoritative
+                Reference<V> found = theDelegate.get( key );
+                ret = found != null ? found.get() : null;
             }
-            theSwappingListeners.fireEvent( new Pair<K,V>( (K) key, ret ), 0 ); // this is here, not in the method, in order to allow for easy subclassing
         }
+        newLoad.complete( ret );
+
+        theSwappingListeners.fireEvent( new Pair<K,V>( (K) key, ret ), 0 ); // this is here, not in the method, in order to allow for easy subclassing
+
         return ret;
     }
 
@@ -245,6 +337,8 @@ public abstract class SwappingHashMap<K,V>
             boolean attemptLoad )
     {
         cleanup();
+        theLoadsInProgress.remove( key );
+
         Reference<V> found = theDelegate.put( key, createReference( key, value ));
         V ret = found != null ? found.get() : null;
 
@@ -292,7 +386,12 @@ public abstract class SwappingHashMap<K,V>
             Object key )
     {
         cleanup();
-        Reference<V> found = theDelegate.remove( key );
+
+        Reference<V> found = null;
+        if( key != null ) { // the cache cannot hold null keys
+            theLoadsInProgress.remove( key );
+            found = theDelegate.remove( key );
+        }
         V ret = found != null ? found.get() : null;
         
         if( ret == null ) {
@@ -341,6 +440,7 @@ public abstract class SwappingHashMap<K,V>
      */
     public synchronized void clear()
     {
+        theLoadsInProgress.clear();
         theDelegate.clear();
         clearStorage();
     }
@@ -351,6 +451,7 @@ public abstract class SwappingHashMap<K,V>
      */
     public synchronized void clearLocalCache()
     {
+        theLoadsInProgress.clear();
         theDelegate.clear();
     }
 
@@ -381,7 +482,7 @@ public abstract class SwappingHashMap<K,V>
      *
      * @return the Set of keys
      */
-    public synchronized Set<K> keySet()
+    public Set<K> keySet()
     {
         cleanup();
         return theDelegate.keySet();
@@ -415,7 +516,7 @@ public abstract class SwappingHashMap<K,V>
      *
      * @return the underlying cache
      */
-    protected HashMap<K,Reference<V>> getUnderlyingCache()
+    protected Map<K,Reference<V>> getUnderlyingCache()
     {
         return theDelegate;
     }
@@ -467,7 +568,13 @@ public abstract class SwappingHashMap<K,V>
     /**
      * The underlying store.
      */
-    protected HashMap<K,Reference<V>> theDelegate;
+    protected ConcurrentHashMap<K,Reference<V>> theDelegate;
+
+    /**
+     * The loads from storage that are currently in progress, keyed by the key whose value
+     * is being loaded. This allows concurrent misses on the same key to share one load.
+     */
+    protected ConcurrentHashMap<Object,LoadInProgress<V>> theLoadsInProgress = new ConcurrentHashMap<Object,LoadInProgress<V>>();
 
     /**
      * A "projection" of the referenced values in the collection.
@@ -511,6 +618,21 @@ public abstract class SwappingHashMap<K,V>
             }
     };
 
+    /**
+     * A load from storage that is currently in progress.
+     *
+     * @param <V> the type of value
+     */
+    protected static class LoadInProgress<V>
+            extends
+                CompletableFuture<V>
+    {
+        /**
+         * The Thread that performs the load.
+         */
+        protected final Thread theLoadingThread = Thread.currentThread();
+    }
+
     /**
      * Common for SoftEntryReference and WeakEntryReference.
      * 
@@ -278,9 +278,46 @@ public abstract class HTTP
             HostnameVerifier                   hostnameVerifier )
         throws
             IOException
+    {
+        return http_get( url, acceptHeader, followRedirects, cookies, null, 0L, connectTimeout, readTimeout, hostnameVerifier );
+    }
+
+    /**
+     * Perform a conditional HTTP GET. Specify which content types
+     * are acceptable, whether to follow redirects, which Cookies to convey, and the
+     * validators obtained from an earlier Response. If the resource has not changed
+     * since, the server may respond with a 304 status code and no content.
+     * For simplicity, this can also open non-HTTP URLs although redirects,
+     * acceptable content types, cookies and validators are then ignored.
+     *
+     * @param url the URL on which to perform the HTTP GET
+     * @param acceptHeader value of the accept header, if any
+     * @param followRedirects if true, automatically follow redirects.
+     * @param cookies map of cookies to send
+     * @param ifNoneMatch the ETag obtained from an earlier Response, if any
+     * @param ifModifiedSince the last-modified time obtained from an earlier Response, or 0 if none
+     * @param connectTimeout the timeout, in milliseconds, for HTTP connect attempts
+     * @param readTimeout the timeout, in milliseconds, for attempts to read from an HTTP connection
+     * @param hostnameVerifier a custom hostname verifier, if any, to deal with non-standard SSL certs
+     * @return the Response obtained from that URL
+     * @throws IOException thrown if the content could not be obtained
+     * @see Response#isNotModified
+     */
+    public static GetResponse http_get(
+            URL                                url,
+            String                             acceptHeader,
+            boolean                            followRedirects,
+            Map<String,? extends CharSequence> cookies,
+            String                             ifNoneMatch,
+            long                               ifModifiedSince,
+            int                                connectTimeout,
+            int                                readTimeout,
+            HostnameVerifier                   hostnameVerifier )
+        throws
+            IOException
     {
         if( log.isTraceEnabled() ) {
-            log.traceMethodCallEntry( HTTP.class.getName(), "http_get", url, acceptHeader, followRedirects, cookies, connectTimeout, readTimeout );
+            log.traceMethodCallEntry( HTTP.class.getName(), "http_get", url, acceptHeader, followRedirects, cookies, ifNoneMatch, ifModifiedSince, connectTimeout, readTimeout );
         }
 
         URLConnection conn = url.openConnection();
@@ -319,6 +356,12 @@ public abstract class HTTP
         if( acceptHeader != null && acceptHeader.length() > 0 ) {
             conn.setRequestProperty( "Accept", acceptHeader );
         }
+        if( ifNoneMatch != null && ifNoneMatch.length() > 0 ) {
+            conn.setRequestProperty( "If-None-Match", ifNoneMatch );
+        }
+        if( ifModifiedSince > 0L ) {
+            conn.setIfModifiedSince( ifModifiedSince );
+        }
 
         InputStream input;
         try {
@@ -1447,6 +1490,32 @@ public abstract class HTTP
             return ret;
         }
 
+        /**
+         * Does this response indicate that the resource has not been modified since
+         * the time, or the ETag, given in a conditional request.
+         *
+         * @return true for the HTTP 304 status code
+         */
+        public boolean isNotModified()
+        {
+            boolean ret = theResponseCode.startsWith( "304" );
+            return ret;
+        }
+
+        /**
+         * Obtain the ETag of the resource, if any.
+         *
+         * @return the ETag, or null
+         */
+        public String getETag()
+        {
+            List<String> ret = getHttpHeaderField( "etag" );
+            if( ret == null || ret.isEmpty() ) {
+                return null;
+            }
+            return ret.get( 0 );
+        }
+
         /**
          * Is this response a redirect.
          *
@@ -16,6 +16,8 @@ package org.infogrid.util.text;
 
 import java.text.ParseException;
 import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
 import org.infogrid.util.ArrayFacade;
 import org.infogrid.util.DelegatingMap;
 import org.infogrid.util.ResourceHelper;
@@ -151,22 +153,16 @@ public class SimpleStringRepresentation
         throws
             StringifierException
     {
-        String formatString = (String) pars.get( StringRepresentationParameters.FORMAT_STRING );
-        if( formatString == null ) {
-            ResourceHelper rh = ResourceHelper.getInstance( classOfFormattedObject, true );
-            formatString      = rh.getResourceStringOrDefault( theName + entry, null );
-        }
-
-        if( formatString != null ) {
-            String addText = (String) pars.get( StringRepresentationParameters.ADD_TEXT );
-            if( addText != null ) {
-                formatString += addText;
-            }
-            AnyMessageStringifier stringifier = AnyMessageStringifier.create( formatString, getRecursiveStringifierMap() );
+        CompiledFormat compiled = obtainCompiledFormat(
+                classOfFormattedObject,
+                entry,
+                (String) pars.get( StringRepresentationParameters.FORMAT_STRING ),
+                (String) pars.get( StringRepresentationParameters.ADD_TEXT ));
 
+        if( compiled != CompiledFormat.NOT_FOUND ) {
             String ret;
             try {
-                ret = stringifier.format( null, ArrayFacade.<Object>create( args ), pars );
+                ret = compiled.theStringifier.format( null, ArrayFacade.<Object>create( args ), pars );
             } catch( RuntimeException ex ) {
                 ret = theResourceHelper.getResourceString( "FormatError" );
             }
@@ -207,24 +203,26 @@ public class SimpleStringRepresentation
         throws
             ParseException
     {
-        String formatString = (String) pars.get( StringRepresentationParameters.FORMAT_STRING );
-        if( formatString == null ) {
-            ResourceHelper rh = ResourceHelper.getInstance( classOfFormattedObject, true );
-            formatString      = rh.getResourceStringOrDefault( theName + entry, null );
+        CompiledFormat compiled;
+        try {
+            compiled = obtainCompiledFormat(
+                    classOfFormattedObject,
+                    entry,
+                    (String) pars.get( StringRepresentationParameters.FORMAT_STRING ),
+                    null );
+
+        } catch( CompoundStringifierCompileException ex ) {
+            log.error( ex );
+            compiled = CompiledFormat.NOT_FOUND;
         }
 
-        if( formatString != null ) {
+        if( compiled != CompiledFormat.NOT_FOUND ) {
             try {
-                AnyMessageStringifier stringifier = AnyMessageStringifier.create( formatString, getRecursiveStringifierMap() );
-
-                Object [] ret = stringifier.unformat( s, factory ).getArray();
+                Object [] ret = compiled.theStringifier.unformat( s, factory ).getArray();
                 return ret;
 
             } catch( StringifierParseException ex ) {
-                throw new StringRepresentationParseException( s, formatString, ex );
-
-            } catch( CompoundStringifierCompileException ex ) {
-                log.error( ex );
+                throw new StringRepresentationParseException( s, compiled.theFormatString, ex );
             }
         }
         if( theDelegate != null ) {
@@ -237,6 +235,66 @@ public class SimpleStringRepresentation
         throw new StringRepresentationParseException( s, null, null );
     }
 
+    /**
+     * Find the compiled AnyMessageStringifier for an entry, compiling it if it has not been
+     * compiled before. Compiling is far more expensive than formatting, and the same few entries
+     * are formatted over and over again when rendering pages.
+     *
+     * @param classOfFormattedObject the class of the to-be-formatted object
+     * @param entry the entry in the ResourceHelper (but qualified by the prefix of this StringRepresentation)
+     * @param formatString the format String to use instead of the entry in the ResourceHelper, if any
+     * @param addText text to append to the format String, if any
+     * @return the CompiledFormat, or CompiledFormat.NOT_FOUND if there is no format String for this entry
+     * @throws CompoundStringifierCompileException thrown if the format String could not be compiled
+     */
+    protected CompiledFormat obtainCompiledFormat(
+            Class<? extends HasStringRepresentation> classOfFormattedObject,
+            String                                   entry,
+            String                                   formatString,
+            String                                   addText )
+        throws
+            CompoundStringifierCompileException
+    {
+        FormatKey key;
+        if( formatString != null ) {
+            key = new FormatKey( null, formatString, addText );
+        } else {
+            key = new FormatKey( classOfFormattedObject, entry, addText );
+        }
+
+        CompiledFormat ret = theFormatCache.get( key );
+        if( ret == null ) {
+            if( formatString == null ) {
+                ResourceHelper rh = ResourceHelper.getInstance( classOfFormattedObject, true );
+                formatString      = rh.getResourceStringOrDefault( theName + entry, null );
+            }
+            if( formatString != null ) {
+                if( addText != null ) {
+                    formatString += addText;
+                }
+                ret = new CompiledFormat( formatString, AnyMessageStringifier.create( formatString, getRecursiveStringifierMap() ));
+            } else {
+                ret = CompiledFormat.NOT_FOUND;
+            }
+
+            if( theFormatCache.size() >= MAX_FORMAT_CACHE_SIZE ) {
+                // only happens with an unusual number of ad-hoc format Strings; start over rather than track usage
+                theFormatCache.clear();
+            }
+            theFormatCache.put( key, ret );
+        }
+        return ret;
+    }
+
+    /**
+     * Discard all compiled format Strings. This must be invoked after the StringifierMap
+     * has been modified, so the modifications take effect.
+     */
+    public void clearFormatCache()
+    {
+        theFormatCache.clear();
+    }
+
     /**
      * Format a Throwable about which nothing else is known.
      * 
@@ -404,8 +462,122 @@ public class SimpleStringRepresentation
      */
     protected StringRepresentation theDelegate;
 
+    /**
+     * The compiled format Strings, keyed by what determines them.
+     */
+    protected final ConcurrentHashMap<FormatKey,CompiledFormat> theFormatCache = new ConcurrentHashMap<>();
+
     /**
      * Our ResourceHelper.
      */
     private static final ResourceHelper theResourceHelper = ResourceHelper.getInstance( SimpleStringRepresentation.class );
+
+    /**
+     * The maximum number of compiled format Strings kept by each SimpleStringRepresentation.
+     */
+    public static final int MAX_FORMAT_CACHE_SIZE = theResourceHelper.getResourceIntegerOrDefault( "MaxFormatCacheSize", 1000 );
+
+    /**
+     * Key in the cache of compiled format Strings.
+     */
+    protected static final class FormatKey
+    {
+        /**
+         * Constructor.
+         *
+         * @param classOfFormattedObject the class of the to-be-formatted object, or null if an explicit format String was given
+         * @param entryOrFormatString the entry in the ResourceHelper, or the explicit format String
+         * @param addText text appended to the format String, if any
+         */
+        protected FormatKey(
+                Class<?> classOfFormattedObject,
+                String   entryOrFormatString,
+                String   addText )
+        {
+            theClass               = classOfFormattedObject;
+            theEntryOrFormatString = entryOrFormatString;
+            theAddText             = addText;
+        }
+
+        /**
+         * Determine equality.
+         *
+         * @param other the Object to compare against
+         * @return true if the objects are equal
+         */
+        @Override
+        public boolean equals(
+                Object other )
+        {
+            if( !( other instanceof FormatKey )) {
+                return false;
+            }
+            FormatKey realOther = (FormatKey) other;
+
+            return theClass == realOther.theClass
+                    && theEntryOrFormatString.equals( realOther.theEntryOrFormatString )
+                    && Objects.equals( theAddText, realOther.theAddText );
+        }
+
+        /**
+         * Hash code.
+         *
+         * @return hash code
+         */
+        @Override
+        public int hashCode()
+        {
+            return Objects.hash( theClass, theEntryOrFormatString, theAddText );
+        }
+
+        /**
+         * The class of the to-be-formatted object, or null.
+         */
+        protected final Class<?> theClass;
+
+        /**
+         * The entry in the ResourceHelper, or the explicit format String.
+         */
+        protected final String theEntryOrFormatString;
+
+        /**
+         * The appended text, if any.
+         */
+        protected final String theAddText;
+    }
+
+    /**
+     * A compiled format String.
+     */
+    protected static final class CompiledFormat
+    {
+        /**
+         * Constructor.
+         *
+         * @param formatString the format String
+         * @param stringifier the compiled AnyMessageStringifier
+         */
+        protected CompiledFormat(
+                String                formatString,
+                AnyMessageStringifier stringifier )
+        {
+            theFormatString = formatString;
+            theStringifier  = stringifier;
+        }
+
+        /**
+         * The format String.
+         */
+        protected final String theFormatString;
+
+        /**
+         * The compiled AnyMessageStringifier.
+         */
+        protected final AnyMessageStringifier theStringifier;
+
+        /**
+         * Marks entries that have no format String, so the lookup is not repeated.
+         */
+        protected static final CompiledFormat NOT_FOUND = new CompiledFormat( null, null );
+    }
 }
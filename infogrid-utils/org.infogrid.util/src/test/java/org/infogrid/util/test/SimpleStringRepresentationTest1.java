@@ -0,0 +1,163 @@
+//
+// This file is part of InfoGrid(tm). You may not use this file except in
+// compliance with the InfoGrid license. The InfoGrid license and important
+// disclaimers are contained in the file LICENSE.InfoGrid.txt that you should
+// have received with InfoGrid. If you have not received LICENSE.InfoGrid.txt
+// or you do not consent to all aspects of the license and the disclaimers,
+// no license is granted; do not use this file.
+//
+// For more information about InfoGrid go to http://infogrid.org/
+//
+// Copyright 1998-2015 by Johannes Ernst
+// All rights reserved.
+//
+
+package org.infogrid.util.test;
+
+import java.util.HashMap;
+import java.util.Map;
+import org.infogrid.util.logging.Log;
+import org.infogrid.util.text.IntegerStringifier;
+import org.infogrid.util.text.SimpleStringRepresentation;
+import org.infogrid.util.text.SimpleStringRepresentationParameters;
+import org.infogrid.util.text.StringRepresentationParameters;
+import org.infogrid.util.text.StringStringifier;
+import org.infogrid.util.text.Stringifier;
+import org.infogrid.util.text.StringifierException;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests the cache of compiled format Strings in SimpleStringRepresentation.
+ */
+public class SimpleStringRepresentationTest1
+        extends
+            AbstractTest
+{
+    @Test
+    public void run()
+        throws
+            Exception
+    {
+        HashMap<String,Stringifier<? extends Object>> map = new HashMap<String,Stringifier<? extends Object>>();
+        map.put( "int",    IntegerStringifier.create() );
+        map.put( "string", StringStringifier.create() );
+
+        TestStringRepresentation rep = new TestStringRepresentation( map );
+
+        //
+
+        log.info( "Compiling and reusing" );
+
+        Assert.assertEquals( "Wrong result", "a-1", rep.format( "{0,string}-{1,int}", null, "a", 1 ));
+        Assert.assertEquals( "Wrong cache size", 1, rep.getFormatCacheSize() );
+
+        Object compiled = rep.getCompiled( "{0,string}-{1,int}", null );
+
+        Assert.assertEquals( "Wrong result", "b-2", rep.format( "{0,string}-{1,int}", null, "b", 2 ));
+        Assert.assertEquals( "Cache grew on a hit", 1, rep.getFormatCacheSize() );
+        Assert.assertSame( "Not compiled only once", compiled, rep.getCompiled( "{0,string}-{1,int}", null ));
+
+        //
+
+        log.info( "Distinguishing appended text" );
+
+        Assert.assertEquals( "Wrong result", "c-3!", rep.format( "{0,string}-{1,int}", "!", "c", 3 ));
+        Assert.assertEquals( "Appended text not part of key", 2, rep.getFormatCacheSize() );
+        Assert.assertNotSame( "Appended text not part of key", compiled, rep.getCompiled( "{0,string}-{1,int}", "!" ));
+
+        //
+
+        log.info( "Filling the cache" );
+
+        for( int i=rep.getFormatCacheSize() ; i<SimpleStringRepresentation.MAX_FORMAT_CACHE_SIZE ; ++i ) {
+            Assert.assertEquals( "Wrong result", i + ":4", rep.format( i + ":{0,int}", null, 4 ));
+        }
+        Assert.assertEquals( "Cache not full", SimpleStringRepresentation.MAX_FORMAT_CACHE_SIZE, rep.getFormatCacheSize() );
+        Assert.assertSame( "Entry lost before cache was full", compiled, rep.getCompiled( "{0,string}-{1,int}", null ));
+
+        //
+
+        log.info( "Overflowing the cache" );
+
+        Assert.assertEquals( "Wrong result", "overflow:5", rep.format( "overflow:{0,int}", null, 5 ));
+        Assert.assertEquals( "Cache not cleared when full", 1, rep.getFormatCacheSize() );
+
+        Assert.assertEquals( "Wrong result after clearing", "d-6", rep.format( "{0,string}-{1,int}", null, "d", 6 ));
+        Assert.assertNotSame( "Cleared entry not recompiled", compiled, rep.getCompiled( "{0,string}-{1,int}", null ));
+        Assert.assertEquals( "Wrong cache size after clearing", 2, rep.getFormatCacheSize() );
+    }
+
+    // Our Logger
+    private static Log log = Log.getLogInstance( SimpleStringRepresentationTest1.class );
+
+    /**
+     * Gives the test access to the cache of compiled format Strings.
+     */
+    protected static class TestStringRepresentation
+            extends
+                SimpleStringRepresentation
+    {
+        /**
+         * Constructor.
+         *
+         * @param map the map of Stringifiers
+         */
+        public TestStringRepresentation(
+                Map<String,Stringifier<? extends Object>> map )
+        {
+            super( null, "Test", map, null );
+        }
+
+        /**
+         * Format the arguments with an explicit format String.
+         *
+         * @param formatString the format String
+         * @param addText text to append to the format String, if any
+         * @param args the arguments
+         * @return the formatted String
+         * @throws StringifierException thrown if formatting failed
+         */
+        public String format(
+                String    formatString,
+                String    addText,
+                Object... args )
+            throws
+                StringifierException
+        {
+            SimpleStringRepresentationParameters pars = SimpleStringRepresentationParameters.create();
+            pars.put( StringRepresentationParameters.FORMAT_STRING, formatString );
+            if( addText != null ) {
+                pars.put( StringRepresentationParameters.ADD_TEXT, addText );
+            }
+            return formatEntry( null, "Unused", pars, args );
+        }
+
+        /**
+         * Obtain the compiled form of an explicit format String.
+         *
+         * @param formatString the format String
+         * @param addText text appended to the format String, if any
+         * @return the compiled form
+         * @throws StringifierException thrown if the format String could not be compiled
+         */
+        public Object getCompiled(
+                String formatString,
+                String addText )
+            throws
+                StringifierException
+        {
+            return obtainCompiledFormat( null, "Unused", formatString, addText );
+        }
+
+        /**
+         * Obtain the number of compiled format Strings in the cache.
+         *
+         * @return the number
+         */
+        public int getFormatCacheSize()
+        {
+            return theFormatCache.size();
+        }
+    }
+}
@@ -0,0 +1,174 @@
+//
+// This file is part of InfoGrid(tm). You may not use this file except in
+// compliance with the InfoGrid license. The InfoGrid license and important
+// disclaimers are contained in the file LICENSE.InfoGrid.txt that you should
+// have received with InfoGrid. If you have not received LICENSE.InfoGrid.txt
+// or you do not consent to all aspects of the license and the disclaimers,
+// no license is granted; do not use this file.
+// 
+// For more information about InfoGrid go to http://infogrid.org/
+//
+// Copyright 1998-2015 by Johannes Ernst
+// All rights reserved.
+//
+
+package org.infogrid.util.test;
+
+import java.lang.ref.Reference;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.infogrid.util.MSwappingHashMap;
+import org.infogrid.util.logging.Log;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests that concurrent misses on the same key in a SwappingHashMap are collapsed into
+ * one load from storage, that hits do not wait for a slow load of a different key, and
+ * that a put supersedes a load in progress.
+ */
+public class SwappingHashMapTest1
+        extends
+            AbstractTest
+{
+    @Test
+    public void run()
+        throws
+            Exception
+    {
+        final SlowSwappingHashMap map = new SlowSwappingHashMap();
+
+        //
+
+        log.info( "Concurrent misses on the same key" );
+
+        Thread [] threads = new Thread[ N_THREADS ];
+        final String [] results = new String[ N_THREADS ];
+
+        for( int i=0 ; i<N_THREADS ; ++i ) {
+            final int index = i;
+            threads[i] = new Thread() {
+                @Override
+                public void run() {
+                    results[index] = map.get( "slow" );
+                }
+            };
+            threads[i].start();
+        }
+        Assert.assertTrue( "load did not start", map.theLoadStarted.await( 10, TimeUnit.SECONDS ));
+
+        //
+
+        log.info( "Hits are not blocked by the slow load" );
+
+        map.put( "cached", "cached-value" );
+        Assert.assertEquals( "wrong cached value", "cached-value", map.get( "cached" ));
+
+        map.theLoadMayFinish.countDown();
+        for( int i=0 ; i<N_THREADS ; ++i ) {
+            threads[i].join( 10000L );
+            Assert.assertEquals( "wrong loaded value", "loaded-slow", results[i] );
+        }
+        Assert.assertEquals( "wrong number of loads", 1, map.theLoadCounter.get() );
+
+        //
+
+        log.info( "Put supersedes a load in progress" );
+
+        final SlowSwappingHashMap map2 = new SlowSwappingHashMap();
+        final String [] result2 = new String[1];
+
+        Thread t = new Thread() {
+            @Override
+            public void run() {
+                result2[0] = map2.get( "slow" );
+            }
+        };
+        t.start();
+        Assert.assertTrue( "load did not start", map2.theLoadStarted.await( 10, TimeUnit.SECONDS ));
+
+        map2.putIgnorePrevious( "slow", "put-value" );
+        map2.theLoadMayFinish.countDown();
+        t.join( 10000L );
+
+        Assert.assertEquals( "load overrode put", "put-value", result2[0] );
+        Assert.assertEquals( "load overrode put", "put-value", map2.get( "slow" ));
+    }
+
+    /**
+     * Number of threads to use.
+     */
+    protected static final int N_THREADS = 8;
+
+    private static final Log log = Log.getLogInstance( SwappingHashMapTest1.class ); // our own, private logger
+
+    /**
+     * A SwappingHashMap whose storage is slow for one particular key.
+     */
+    static class SlowSwappingHashMap
+            extends
+                MSwappingHashMap<String,String,Void>
+    {
+        /**
+         * Constructor.
+         */
+        public SlowSwappingHashMap()
+        {
+            super( 16 );
+        }
+
+        /**
+         * Create a SoftReference, so nothing is garbage collected during the test.
+         *
+         * @param key the key
+         * @param value the value
+         * @return the Reference to the value
+         */
+        @Override
+        protected Reference<String> createReference(
+                String key,
+                String value )
+        {
+            return new SoftEntryReference<String,String>( key, value, theQueue );
+        }
+
+        /**
+         * Load slowly for the key "slow", and return nothing for all others.
+         *
+         * @param key the key whose value should be loaded
+         * @return the value that was loaded, or null if none.
+         */
+        @Override
+        protected String loadValueFromStorage(
+                Object key )
+        {
+            if( !"slow".equals( key )) {
+                return null;
+            }
+            theLoadCounter.incrementAndGet();
+            theLoadStarted.countDown();
+            try {
+                theLoadMayFinish.await( 10, TimeUnit.SECONDS );
+            } catch( InterruptedException ex ) {
+                log.error( ex );
+            }
+            return "loaded-" + key;
+        }
+
+        /**
+         * Counts the number of loads.
+         */
+        final AtomicInteger theLoadCounter = new AtomicInteger();
+
+        /**
+         * Released when the slow load has started.
+         */
+        final CountDownLatch theLoadStarted = new CountDownLatch( 1 );
+
+        /**
+         * Released when the slow load may finish.
+         */
+        final CountDownLatch theLoadMayFinish = new CountDownLatch( 1 );
+    }
+}
@@ -0,0 +1,128 @@
+//
+// This file is part of InfoGrid(tm). You may not use this file except in
+// compliance with the InfoGrid license. The InfoGrid license and important
+// disclaimers are contained in the file LICENSE.InfoGrid.txt that you should
+// have received with InfoGrid. If you have not received LICENSE.InfoGrid.txt
+// or you do not consent to all aspects of the license and the disclaimers,
+// no license is granted; do not use this file.
+//
+// For more information about InfoGrid go to http://infogrid.org/
+//
+// Copyright 1998-2015 by Johannes Ernst
+// All rights reserved.
+//
+
+package org.infogrid.util.test;
+
+import java.lang.ref.Reference;
+import org.infogrid.util.MSwappingHashMap;
+import org.infogrid.util.logging.Log;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests that a load from storage that asks the SwappingHashMap for the same key on the
+ * same thread does not wait for itself, and that null keys are still accepted.
+ */
+public class SwappingHashMapTest2
+        extends
+            AbstractTest
+{
+    @Test
+    public void run()
+        throws
+            Exception
+    {
+        final ReentrantSwappingHashMap map = new ReentrantSwappingHashMap();
+
+        //
+
+        log.info( "Reentrant load of the same key" );
+
+        final String [] result = new String[1];
+
+        Thread t = new Thread() {
+            @Override
+            public void run() {
+                result[0] = map.get( "outer" );
+            }
+        };
+        t.start();
+        t.join( 10000L );
+
+        Assert.assertFalse( "reentrant load deadlocked", t.isAlive() );
+        Assert.assertEquals( "wrong loaded value", "loaded-outer(loaded-outer)", result[0] );
+        Assert.assertEquals( "wrong cached value", "loaded-outer(loaded-outer)", map.get( "outer" ));
+
+        //
+
+        log.info( "Null keys" );
+
+        Assert.assertNull( "found value for null key", map.get( null ));
+        Assert.assertFalse( "contains null key", map.containsKey( null ));
+        Assert.assertNull( "removed value for null key", map.remove( null ));
+    }
+
+    private static final Log log = Log.getLogInstance( SwappingHashMapTest2.class ); // our own, private logger
+
+    /**
+     * A SwappingHashMap whose storage, while loading one value, looks up the same
+     * value again.
+     */
+    static class ReentrantSwappingHashMap
+            extends
+                MSwappingHashMap<String,String,Void>
+    {
+        /**
+         * Constructor.
+         */
+        public ReentrantSwappingHashMap()
+        {
+            super( 16 );
+        }
+
+        /**
+         * Create a SoftReference, so nothing is garbage collected during the test.
+         *
+         * @param key the key
+         * @param value the value
+         * @return the Reference to the value
+         */
+        @Override
+        protected Reference<String> createReference(
+                String key,
+                String value )
+        {
+            return new SoftEntryReference<String,String>( key, value, theQueue );
+        }
+
+        /**
+         * For the key "outer", look up the same key once more while loading.
+         *
+         * @param key the key whose value should be loaded
+         * @return the value that was loaded, or null if none.
+         */
+        @Override
+        protected String loadValueFromStorage(
+                Object key )
+        {
+            if( !"outer".equals( key )) {
+                return null;
+            }
+            if( theDepth == 0 ) {
+                ++theDepth;
+                try {
+                    return "loaded-outer(" + get( "outer" ) + ")";
+                } finally {
+                    --theDepth;
+                }
+            }
+            return "loaded-outer";
+        }
+
+        /**
+         * How many loads of "outer" are on the call stack.
+         */
+        int theDepth;
+    }
+}